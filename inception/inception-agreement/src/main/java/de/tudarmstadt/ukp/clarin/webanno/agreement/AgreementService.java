@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.agreement;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.cas.CAS;
+
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.IncrementalAgreementMeasure;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+
+public interface AgreementService
+{
+    /**
+     * Calculates the agreement between the given annotators on the given documents. If the
+     * measure is an {@link IncrementalAgreementMeasure}, the documents are processed one at a time
+     * (independent documents in parallel) and only the CASes of the documents currently being
+     * processed are held in memory. The per-document results are cached until the annotations of
+     * the document change.
+     * 
+     * @param aMeasure
+     *            the agreement measure.
+     * @param aAnnotators
+     *            the annotators.
+     * @param aDocuments
+     *            the documents.
+     * @return the agreement.
+     */
+    <R extends Serializable> R getAgreement(AgreementMeasure<R> aMeasure, List<User> aAnnotators,
+            List<SourceDocument> aDocuments);
+
+    /**
+     * Loads the CASes of all given annotators for all given documents. If an annotator did not
+     * work on a document yet, the initial CAS of the document is loaded. If a document is to be
+     * skipped for an annotator, the list contains a {@code null} value at the respective position.
+     * 
+     * @param aAnnotators
+     *            the annotators.
+     * @param aDocuments
+     *            the documents.
+     * @param aLimitToFinishedDocuments
+     *            whether to skip documents which the annotator has not marked as finished yet.
+     * @return the CASes by annotator.
+     */
+    Map<String, List<CAS>> getCasMap(List<User> aAnnotators, List<SourceDocument> aDocuments,
+            boolean aLimitToFinishedDocuments);
+}
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.agreement;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.CasUpgradeMode.AUTO_CAS_UPGRADE;
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.SHARED_READ_ONLY_ACCESS;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.FINISHED;
+import static de.tudarmstadt.ukp.clarin.webanno.support.logging.MDCContext.withCallerContext;
+import static java.util.Collections.emptyMap;
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.fit.util.FSUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.IncrementalAgreementMeasure;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterCasWrittenEvent;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
+
+@Component
+public class AgreementServiceImpl
+    implements AgreementService, DisposableBean
+{
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private static final String STATE_SKIPPED = "skipped";
+    private static final String STATE_INITIAL = "initial";
+
+    private final DocumentService documentService;
+    private final ExecutorService executor;
+
+    // Per-document results by source document ID. The key of the inner map identifies the measure
+    // configuration and the state of the annotators' CASes from which the result was obtained.
+    private final Cache<Long, Map<String, Serializable>> documentResultCache;
+
+    @Autowired
+    public AgreementServiceImpl(DocumentService aDocumentService)
+    {
+        this(aDocumentService, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public AgreementServiceImpl(DocumentService aDocumentService, int aThreads)
+    {
+        documentService = aDocumentService;
+
+        executor = Executors.newFixedThreadPool(aThreads, new BasicThreadFactory.Builder()
+                .daemon(true).namingPattern("agreement-%d").build());
+
+        documentResultCache = Caffeine.newBuilder() //
+                .expireAfterAccess(Duration.ofMinutes(30)) //
+                .softValues() //
+                .build();
+    }
+
+    @Override
+    public void destroy()
+    {
+        executor.shutdownNow();
+    }
+
+    @EventListener
+    public void onAfterCasWritten(AfterCasWrittenEvent aEvent)
+    {
+        documentResultCache.invalidate(aEvent.getDocument().getDocument().getId());
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Override
+    public <R extends Serializable> R getAgreement(AgreementMeasure<R> aMeasure,
+            List<User> aAnnotators, List<SourceDocument> aDocuments)
+    {
+        if (aMeasure instanceof IncrementalAgreementMeasure) {
+            return (R) getIncrementalAgreement((IncrementalAgreementMeasure) aMeasure, aAnnotators,
+                    aDocuments);
+        }
+
+        return aMeasure.getAgreement(getCasMap(aAnnotators, aDocuments,
+                aMeasure.getTraits().isLimitToFinishedDocuments()));
+    }
+
+    private <R extends Serializable, D extends Serializable> R getIncrementalAgreement(
+            IncrementalAgreementMeasure<R, D> aMeasure, List<User> aAnnotators,
+            List<SourceDocument> aDocuments)
+    {
+        long start = System.currentTimeMillis();
+
+        String measureKey = getMeasureKey(aMeasure);
+        Map<Long, Map<String, AnnotationDocument>> annotationDocuments = getAnnotationDocuments(
+                aAnnotators, aDocuments);
+
+        List<Future<D>> futures = new ArrayList<>();
+        for (int i = 0; i < aDocuments.size(); i++) {
+            int documentIndex = i;
+            SourceDocument document = aDocuments.get(i);
+            futures.add(executor.submit(withCallerContext(() -> analyzeDocument(aMeasure,
+                    measureKey, documentIndex, document, aAnnotators,
+                    annotationDocuments.getOrDefault(document.getId(), emptyMap())))));
+        }
+
+        List<D> documentResults = new ArrayList<>();
+        try {
+            for (Future<D> future : futures) {
+                documentResults.add(future.get());
+            }
+        }
+        catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Agreement calculation was interrupted", e);
+        }
+        catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Agreement calculation failed", e.getCause());
+        }
+
+        List<String> annotators = aAnnotators.stream().map(User::getUsername).collect(toList());
+        R result = aMeasure.getAgreement(annotators, documentResults);
+
+        log.debug("Calculated agreement over [{}] documents and [{}] annotators in {}ms",
+                aDocuments.size(), aAnnotators.size(), System.currentTimeMillis() - start);
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <D extends Serializable> D analyzeDocument(IncrementalAgreementMeasure<?, D> aMeasure,
+            String aMeasureKey, int aDocumentIndex, SourceDocument aDocument,
+            List<User> aAnnotators, Map<String, AnnotationDocument> aAnnotationDocuments)
+        throws IOException
+    {
+        boolean limitToFinished = aMeasure.getTraits().isLimitToFinishedDocuments();
+
+        // The positions in the per-document results refer to the document index, so it is part of
+        // the key as well as the state of the CAS of each annotator
+        Map<String, String> states = new LinkedHashMap<>();
+        for (User annotator : aAnnotators) {
+            String username = annotator.getUsername();
+            if (isSkipped(aAnnotationDocuments.get(username), limitToFinished)) {
+                states.put(username, STATE_SKIPPED);
+            }
+            else {
+                states.put(username, documentService
+                        .getAnnotationCasTimestamp(aDocument, username).map(String::valueOf)
+                        .orElse(STATE_INITIAL));
+            }
+        }
+        String key = aMeasureKey + "|" + aDocumentIndex + "|" + states;
+
+        Map<String, Serializable> cachedResults = documentResultCache.get(aDocument.getId(),
+                id -> new ConcurrentHashMap<>());
+        D result = (D) cachedResults.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        boolean complete = true;
+        try (CasStorageSession session = CasStorageSession.open()) {
+            Map<String, CAS> casMap = new LinkedHashMap<>();
+            for (User annotator : aAnnotators) {
+                String username = annotator.getUsername();
+                if (STATE_SKIPPED.equals(states.get(username))) {
+                    casMap.put(username, null);
+                    continue;
+                }
+
+                CAS cas = loadCas(aDocument, username);
+                complete &= cas != null;
+                casMap.put(username, cas);
+            }
+
+            result = aMeasure.analyzeDocument(aDocumentIndex, casMap);
+        }
+
+        // Do not cache results that are missing data due to errors
+        if (complete) {
+            cachedResults.put(key, result);
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<String, List<CAS>> getCasMap(List<User> aAnnotators,
+            List<SourceDocument> aDocuments, boolean aLimitToFinishedDocuments)
+    {
+        Map<Long, Map<String, AnnotationDocument>> annotationDocuments = getAnnotationDocuments(
+                aAnnotators, aDocuments);
+
+        Map<String, List<CAS>> casMap = new LinkedHashMap<>();
+        for (User annotator : aAnnotators) {
+            List<CAS> cases = new ArrayList<>();
+
+            for (SourceDocument document : aDocuments) {
+                AnnotationDocument annotationDocument = annotationDocuments
+                        .getOrDefault(document.getId(), emptyMap()).get(annotator.getUsername());
+
+                // Add a skip marker (null) for the current CAS to the CAS list - this is necessary
+                // because we expect the CAS lists for all users to have the same size
+                if (isSkipped(annotationDocument, aLimitToFinishedDocuments)) {
+                    cases.add(null);
+                    continue;
+                }
+
+                // The next line can enter null values into the list if the CAS cannot be loaded
+                cases.add(loadCas(document, annotator.getUsername()));
+            }
+
+            casMap.put(annotator.getUsername(), cases);
+        }
+
+        return casMap;
+    }
+
+    /**
+     * Reads the user's annotation document or the initial source document - depending on what is
+     * available.
+     */
+    private CAS loadCas(SourceDocument aDocument, String aUsername)
+    {
+        CAS cas;
+        try {
+            cas = documentService.readAnnotationCas(aDocument, aUsername, AUTO_CAS_UPGRADE,
+                    SHARED_READ_ONLY_ACCESS);
+        }
+        catch (Exception e) {
+            log.error("Unable to load data of user [{}] for document {}", aUsername, aDocument,
+                    e);
+            return null;
+        }
+
+        // Set the CAS name in the DocumentMetaData so that we can pick it up in the Diff position
+        // for the purpose of debugging / transparency.
+        FeatureStructure dmd = WebAnnoCasUtil.getDocumentMetadata(cas);
+        FSUtil.setFeature(dmd, "documentId", aDocument.getName());
+        FSUtil.setFeature(dmd, "collectionId", aDocument.getProject().getName());
+
+        return cas;
+    }
+
+    private boolean isSkipped(AnnotationDocument aAnnotationDocument,
+            boolean aLimitToFinishedDocuments)
+    {
+        return aAnnotationDocument != null && aLimitToFinishedDocuments
+                && !FINISHED.equals(aAnnotationDocument.getState());
+    }
+
+    /**
+     * Bulk-fetch the annotation documents which is faster than fetching them individually.
+     */
+    private Map<Long, Map<String, AnnotationDocument>> getAnnotationDocuments(
+            List<User> aAnnotators, List<SourceDocument> aDocuments)
+    {
+        Map<Long, Map<String, AnnotationDocument>> result = new HashMap<>();
+        if (aDocuments.isEmpty()) {
+            return result;
+        }
+
+        for (AnnotationDocument annDoc : documentService
+                .listAnnotationDocuments(aDocuments.get(0).getProject())) {
+            result.computeIfAbsent(annDoc.getDocument().getId(), id -> new HashMap<>())
+                    .put(annDoc.getUser(), annDoc);
+        }
+        return result;
+    }
+
+    private String getMeasureKey(AgreementMeasure<?> aMeasure)
+    {
+        try {
+            return aMeasure.getClass().getName() + "|" + aMeasure.getFeature().getId() + "|"
+                    + JSONUtil.toJsonString(aMeasure.getTraits());
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize agreement traits", e);
+        }
+    }
+}
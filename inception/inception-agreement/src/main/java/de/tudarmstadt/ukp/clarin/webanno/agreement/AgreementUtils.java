@@ -53,6 +53,7 @@ import de.tudarmstadt.ukp.clarin.webanno.agreement.results.coding.CodingAgreemen
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.Configuration;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.ConfigurationSet;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.DiffResult;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.Position;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.relation.RelationDiffAdapter;
@@ -65,7 +66,99 @@ public class AgreementUtils
             Map<String, List<CAS>> aCasMap)
     {
         return makeCodingStudy(aDiff, aCasMap.keySet(), aType, aFeature, aTagSet,
-                aExcludeIncomplete, true, aCasMap);
+                aExcludeIncomplete, true, aCasMap, findSomeCas(aCasMap));
+    }
+
+    /**
+     * Creates a coding study from a diff that was calculated for a single document via
+     * {@link CasDiff#doDiffDocument}. The results for the different documents of a collection can
+     * be combined using {@link #mergeCodingStudies}.
+     * 
+     * @param aDiff
+     *            the diff of the document.
+     * @param aType
+     *            the type to calculate the agreement on.
+     * @param aFeature
+     *            the feature to calculate the agreement on.
+     * @param aTagSet
+     *            the tags that are known to be valid categories or {@code null}.
+     * @param aExcludeIncomplete
+     *            whether to exclude incomplete positions.
+     * @param aReferenceCas
+     *            any of the CASes of the document from which the type system can be obtained or
+     *            {@code null} if none of the CAS groups has a CAS for the document.
+     * @return the study for the document.
+     */
+    public static CodingAgreementResult makeCodingStudy(CasDiff aDiff, String aType,
+            String aFeature, Set<String> aTagSet, boolean aExcludeIncomplete, CAS aReferenceCas)
+    {
+        Map<String, List<CAS>> casMap = aDiff.getCasMap();
+        return makeCodingStudy(aDiff, casMap.keySet(), aType, aFeature, aTagSet,
+                aExcludeIncomplete, true, casMap, aReferenceCas);
+    }
+
+    /**
+     * Combines the studies obtained for the individual documents of a collection into a single
+     * study. The items appear in the order of the given studies.
+     * 
+     * @param aType
+     *            the type the agreement is calculated on.
+     * @param aFeature
+     *            the feature the agreement is calculated on.
+     * @param aCasGroupIds
+     *            the CAS groups (users) participating in the study.
+     * @param aTagSet
+     *            the tags that are known to be valid categories or {@code null}.
+     * @param aExcludeIncomplete
+     *            whether incomplete positions were excluded.
+     * @param aResults
+     *            the per-document studies.
+     * @return the combined study.
+     */
+    public static CodingAgreementResult mergeCodingStudies(String aType, String aFeature,
+            Collection<String> aCasGroupIds, Set<String> aTagSet, boolean aExcludeIncomplete,
+            List<CodingAgreementResult> aResults)
+    {
+        List<String> users = new ArrayList<>(aCasGroupIds);
+        Collections.sort(users);
+
+        List<DiffResult> diffs = new ArrayList<>();
+        List<ConfigurationSet> completeSets = new ArrayList<>();
+        List<ConfigurationSet> setsWithDifferences = new ArrayList<>();
+        List<ConfigurationSet> incompleteSetsByPosition = new ArrayList<>();
+        List<ConfigurationSet> incompleteSetsByLabel = new ArrayList<>();
+        List<ConfigurationSet> pluralitySets = new ArrayList<>();
+        List<ConfigurationSet> irrelevantSets = new ArrayList<>();
+        CodingAnnotationStudy study = new CodingAnnotationStudy(users.size());
+
+        if (aTagSet != null) {
+            aTagSet.forEach(study::addCategory);
+        }
+
+        for (CodingAgreementResult result : aResults) {
+            assert result.getCasGroupIds().equals(users);
+
+            diffs.add(result.getDiff());
+            completeSets.addAll(result.getCompleteSets());
+            setsWithDifferences.addAll(result.getSetsWithDifferences());
+            incompleteSetsByPosition.addAll(result.getIncompleteSetsByPosition());
+            incompleteSetsByLabel.addAll(result.getIncompleteSetsByLabel());
+            pluralitySets.addAll(result.getPluralitySets());
+            irrelevantSets.addAll(result.getIrrelevantSets());
+
+            result.getStudy().getCategories().forEach(study::addCategory);
+            for (ICodingAnnotationItem item : result.getStudy().getItems()) {
+                Object[] values = new Object[users.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = item.getUnit(i).getCategory();
+                }
+                study.addItemAsArray(values);
+            }
+        }
+
+        return new CodingAgreementResult(aType, aFeature, DiffResult.merge(diffs), study, users,
+                completeSets, irrelevantSets, setsWithDifferences, incompleteSetsByPosition,
+                incompleteSetsByLabel, pluralitySets, aExcludeIncomplete);
     }
 
     private static CAS findSomeCas(Map<String, List<CAS>> aCasMap)
@@ -85,7 +178,7 @@ public class AgreementUtils
 
     private static CodingAgreementResult makeCodingStudy(CasDiff aDiff, Collection<String> aUsers,
             String aType, String aFeature, Set<String> aTagSet, boolean aExcludeIncomplete,
-            boolean aNullLabelsAsEmpty, Map<String, List<CAS>> aCasMap)
+            boolean aNullLabelsAsEmpty, Map<String, List<CAS>> aCasMap, CAS aReferenceCas)
     {
         List<String> users = new ArrayList<>(aUsers);
         Collections.sort(users);
@@ -105,7 +198,7 @@ public class AgreementUtils
         // Check if the feature we are looking at is a primitive feature or a link feature
         // We do this by looking it up in the first available CAS. Mind that at this point all
         // CASes should have exactly the same typesystem.
-        CAS someCas = findSomeCas(aCasMap);
+        CAS someCas = aReferenceCas;
         if (someCas == null) {
             // Well... there is NOTHING here!
             // All positions are irrelevant
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.agreement.measures;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.cas.CAS;
+
+/**
+ * Agreement measure which can be calculated one document at a time. The information relevant to
+ * the agreement is first extracted from the annotations of each document separately. The
+ * per-document results no longer refer to the CASes, so the CASes can be released immediately and
+ * the results can be cached. Finally, the per-document results are combined into the agreement
+ * over the whole document collection.
+ *
+ * @param <R>
+ *            the result type.
+ * @param <D>
+ *            the per-document result type.
+ */
+public interface IncrementalAgreementMeasure<R extends Serializable, D extends Serializable>
+    extends AgreementMeasure<R>
+{
+    /**
+     * Extracts the information relevant to the agreement from a single document.
+     * 
+     * @param aDocumentIndex
+     *            the index of the document within the document collection.
+     * @param aCasMap
+     *            the CASes of the document by user. A {@code null} value indicates that the user
+     *            has no CAS for the document.
+     * @return the per-document result.
+     */
+    D analyzeDocument(int aDocumentIndex, Map<String, CAS> aCasMap);
+
+    /**
+     * Combines the per-document results into the agreement over the whole document collection.
+     * 
+     * @param aCasGroupIds
+     *            the users participating in the study.
+     * @param aDocumentResults
+     *            the per-document results in the order of the document indexes.
+     * @return the agreement.
+     */
+    R getAgreement(List<String> aCasGroupIds, List<D> aDocumentResults);
+}
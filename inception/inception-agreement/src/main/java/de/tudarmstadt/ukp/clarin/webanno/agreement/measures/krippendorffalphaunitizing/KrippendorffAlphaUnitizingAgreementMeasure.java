@@ -17,6 +17,9 @@
  */
 package de.tudarmstadt.ukp.clarin.webanno.agreement.measures.krippendorffalphaunitizing;
 
+import static java.util.Arrays.asList;
+
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -35,6 +38,7 @@ import org.dkpro.statistics.agreement.unitizing.UnitizingAnnotationStudy;
 
 import de.tudarmstadt.ukp.clarin.webanno.agreement.PairwiseAnnotationResult;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure_ImplBase;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.IncrementalAgreementMeasure;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.results.unitizing.UnitizingAgreementResult;
 import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
@@ -43,6 +47,9 @@ public class KrippendorffAlphaUnitizingAgreementMeasure
     extends AgreementMeasure_ImplBase<//
             PairwiseAnnotationResult<UnitizingAgreementResult>, //
             KrippendorffAlphaUnitizingAgreementTraits>
+    implements IncrementalAgreementMeasure<//
+            PairwiseAnnotationResult<UnitizingAgreementResult>, //
+            KrippendorffAlphaUnitizingAgreementMeasure.DocumentUnits>
 {
     private final AnnotationSchemaService annotationService;
 
@@ -57,45 +64,86 @@ public class KrippendorffAlphaUnitizingAgreementMeasure
     @Override
     public PairwiseAnnotationResult<UnitizingAgreementResult> getAgreement(
             Map<String, List<CAS>> aCasMap)
+    {
+        List<String> users = new ArrayList<>(aCasMap.keySet());
+        int documentCount = aCasMap.isEmpty() ? 0 : aCasMap.values().iterator().next().size();
+
+        List<DocumentUnits> documentResults = new ArrayList<>();
+        for (int i = 0; i < documentCount; i++) {
+            Map<String, CAS> documentCasMap = new LinkedHashMap<>();
+            for (String user : users) {
+                documentCasMap.put(user, aCasMap.get(user).get(i));
+            }
+            documentResults.add(analyzeDocument(i, documentCasMap));
+        }
+
+        return getAgreement(users, documentResults);
+    }
+
+    @Override
+    public DocumentUnits analyzeDocument(int aDocumentIndex, Map<String, CAS> aCasMap)
+    {
+        String typeName = getFeature().getLayer().getName();
+
+        DocumentUnits result = new DocumentUnits();
+        for (Entry<String, CAS> e : aCasMap.entrySet()) {
+            CAS cas = e.getValue();
+
+            // If a user has never worked on a source document, its CAS is null here - we
+            // skip it.
+            if (cas == null) {
+                continue;
+            }
+
+            // We assume here that the documents all have the same size - since the users cannot
+            // change the document sizes, this should be an universally true assumption.
+            assert result.documentSize == 0
+                    || result.documentSize == cas.getDocumentText().length();
+            result.documentSize = cas.getDocumentText().length();
+
+            Type t = cas.getTypeSystem().getType(typeName);
+            Feature f = t.getFeatureByBaseName(getFeature().getName());
+            List<Unit> units = new ArrayList<>();
+            cas.select(t).map(fs -> (AnnotationFS) fs).forEach(fs -> {
+                units.add(new Unit(fs.getBegin(), fs.getEnd() - fs.getBegin(),
+                        FSUtil.getFeature(fs, f, Object.class)));
+            });
+            result.units.put(e.getKey(), units);
+        }
+
+        return result;
+    }
+
+    @Override
+    public PairwiseAnnotationResult<UnitizingAgreementResult> getAgreement(
+            List<String> aCasGroupIds, List<DocumentUnits> aDocumentResults)
     {
         PairwiseAnnotationResult<UnitizingAgreementResult> result = new PairwiseAnnotationResult<>(
                 getFeature(), getTraits());
-        List<Entry<String, List<CAS>>> entryList = new ArrayList<>(aCasMap.entrySet());
-        for (int m = 0; m < entryList.size(); m++) {
-            for (int n = 0; n < entryList.size(); n++) {
+        for (int m = 0; m < aCasGroupIds.size(); m++) {
+            for (int n = 0; n < m; n++) {
                 // Triangle matrix mirrored
-                if (n < m) {
-                    Map<String, List<CAS>> pairwiseCasMap = new LinkedHashMap<>();
-                    pairwiseCasMap.put(entryList.get(m).getKey(), entryList.get(m).getValue());
-                    pairwiseCasMap.put(entryList.get(n).getKey(), entryList.get(n).getValue());
-                    UnitizingAgreementResult res = calculatePairAgreement(pairwiseCasMap);
-                    result.add(entryList.get(m).getKey(), entryList.get(n).getKey(), res);
-                }
+                String user1 = aCasGroupIds.get(m);
+                String user2 = aCasGroupIds.get(n);
+                UnitizingAgreementResult res = calculatePairAgreement(asList(user1, user2),
+                        aDocumentResults);
+                result.add(user1, user2, res);
             }
         }
         return result;
     }
 
-    public UnitizingAgreementResult calculatePairAgreement(Map<String, List<CAS>> aCasMap)
+    public UnitizingAgreementResult calculatePairAgreement(List<String> aCasGroupIds,
+            List<DocumentUnits> aDocumentResults)
     {
         String typeName = getFeature().getLayer().getName();
 
-        // Calculate a character offset continuum over all CASses. We assume here that the documents
-        // all have the same size - since the users cannot change the document sizes, this should be
-        // an universally true assumption.
-        List<CAS> firstUserCasses = aCasMap.values().stream().findFirst().get();
-        int docCount = firstUserCasses.size();
-        int[] docSizes = new int[docCount];
-        Arrays.fill(docSizes, 0);
-        for (Entry<String, List<CAS>> set : aCasMap.entrySet()) {
-            int i = 0;
-            for (CAS cas : set.getValue()) {
-                if (cas != null) {
-                    assert docSizes[i] == 0 || docSizes[i] == cas.getDocumentText().length();
-
-                    docSizes[i] = cas.getDocumentText().length();
-                }
-                i++;
+        // Calculate a character offset continuum over all documents seen by the given users.
+        int[] docSizes = new int[aDocumentResults.size()];
+        for (int i = 0; i < docSizes.length; i++) {
+            DocumentUnits doc = aDocumentResults.get(i);
+            if (aCasGroupIds.stream().anyMatch(doc.units::containsKey)) {
+                docSizes[i] = doc.documentSize;
             }
         }
         int continuumSize = Arrays.stream(docSizes).sum();
@@ -103,33 +151,26 @@ public class KrippendorffAlphaUnitizingAgreementMeasure
         // Create a unitizing study for that continuum.
         UnitizingAnnotationStudy study = new UnitizingAnnotationStudy(continuumSize);
 
-        // For each annotator, extract the feature values from all the annotator's CASses and add
-        // them to the unitizing study based on character offsets.
-        for (Entry<String, List<CAS>> set : aCasMap.entrySet()) {
-            int raterIdx = study.addRater(set.getKey());
+        // For each annotator, add the feature values from all the annotator's documents to the
+        // unitizing study based on character offsets.
+        for (String user : aCasGroupIds) {
+            int raterIdx = study.addRater(user);
             int docOffset = 0;
-            int i = 0;
-            for (CAS cas : set.getValue()) {
-                // If a user has never worked on a source document, its CAS is null here - we
-                // skip it.
-                if (cas != null) {
-                    Type t = cas.getTypeSystem().getType(typeName);
-                    Feature f = t.getFeatureByBaseName(getFeature().getName());
-                    int currentDocOffset = docOffset;
-                    cas.select(t).map(fs -> (AnnotationFS) fs).forEach(fs -> {
-                        study.addUnit(currentDocOffset + fs.getBegin(), fs.getEnd() - fs.getBegin(),
-                                raterIdx, FSUtil.getFeature(fs, f, Object.class));
-                    });
+            for (int i = 0; i < docSizes.length; i++) {
+                List<Unit> units = aDocumentResults.get(i).units.get(user);
+                if (units != null) {
+                    for (Unit unit : units) {
+                        study.addUnit(docOffset + unit.offset, unit.length, raterIdx,
+                                unit.category);
+                    }
                 }
 
                 docOffset += docSizes[i];
-                i++;
             }
         }
 
         UnitizingAgreementResult result = new UnitizingAgreementResult(typeName,
-                getFeature().getName(), study, new ArrayList<>(aCasMap.keySet()),
-                getTraits().isExcludeIncomplete());
+                getFeature().getName(), study, aCasGroupIds, getTraits().isExcludeIncomplete());
 
         IAgreementMeasure agreement = new KrippendorffAlphaUnitizingAgreement(study);
 
@@ -142,4 +183,34 @@ public class KrippendorffAlphaUnitizingAgreementMeasure
 
         return result;
     }
+
+    /**
+     * The units annotated by the users in a single document. Users who have no CAS for the
+     * document are not contained in the map.
+     */
+    public static class DocumentUnits
+        implements Serializable
+    {
+        private static final long serialVersionUID = 2807418838937870553L;
+
+        private final Map<String, List<Unit>> units = new LinkedHashMap<>();
+        private int documentSize;
+    }
+
+    private static class Unit
+        implements Serializable
+    {
+        private static final long serialVersionUID = -6392604632146318624L;
+
+        private final int offset;
+        private final int length;
+        private final Object category;
+
+        public Unit(int aOffset, int aLength, Object aCategory)
+        {
+            offset = aOffset;
+            length = aLength;
+            category = aCategory;
+        }
+    }
 }
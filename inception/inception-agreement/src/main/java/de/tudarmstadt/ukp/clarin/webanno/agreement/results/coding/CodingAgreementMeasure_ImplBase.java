@@ -17,48 +17,160 @@
  */
 package de.tudarmstadt.ukp.clarin.webanno.agreement.results.coding;
 
+import static de.tudarmstadt.ukp.clarin.webanno.agreement.AgreementUtils.makeCodingStudy;
+import static de.tudarmstadt.ukp.clarin.webanno.agreement.AgreementUtils.mergeCodingStudies;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.doDiffDocument;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.getDiffAdapters;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
+
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
 
 import org.apache.uima.cas.CAS;
 
 import de.tudarmstadt.ukp.clarin.webanno.agreement.PairwiseAnnotationResult;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure_ImplBase;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.DefaultAgreementTraits;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.IncrementalAgreementMeasure;
+import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.Tag;
 
 public abstract class CodingAgreementMeasure_ImplBase<T extends DefaultAgreementTraits>
     extends AgreementMeasure_ImplBase<PairwiseAnnotationResult<CodingAgreementResult>, T>
+    implements IncrementalAgreementMeasure<//
+            PairwiseAnnotationResult<CodingAgreementResult>, //
+            PairwiseAnnotationResult<CodingAgreementResult>>
 {
-    public CodingAgreementMeasure_ImplBase(AnnotationFeature aFeature, T aTraits)
+    private final AnnotationSchemaService annotationService;
+
+    private List<DiffAdapter> adapters;
+    private Set<String> tagset;
+
+    public CodingAgreementMeasure_ImplBase(AnnotationFeature aFeature, T aTraits,
+            AnnotationSchemaService aAnnotationService)
     {
         super(aFeature, aTraits);
+        annotationService = aAnnotationService;
     }
 
     @Override
     public PairwiseAnnotationResult<CodingAgreementResult> getAgreement(
             Map<String, List<CAS>> aCasMap)
     {
+        List<String> users = new ArrayList<>(aCasMap.keySet());
+        int documentCount = aCasMap.isEmpty() ? 0 : aCasMap.values().iterator().next().size();
+
+        List<PairwiseAnnotationResult<CodingAgreementResult>> documentResults = new ArrayList<>();
+        for (int i = 0; i < documentCount; i++) {
+            Map<String, CAS> documentCasMap = new LinkedHashMap<>();
+            for (String user : users) {
+                documentCasMap.put(user, aCasMap.get(user).get(i));
+            }
+            documentResults.add(analyzeDocument(i, documentCasMap));
+        }
+
+        return getAgreement(users, documentResults);
+    }
+
+    @Override
+    public PairwiseAnnotationResult<CodingAgreementResult> analyzeDocument(int aDocumentIndex,
+            Map<String, CAS> aCasMap)
+    {
+        AnnotationFeature feature = getFeature();
+
+        PairwiseAnnotationResult<CodingAgreementResult> result = new PairwiseAnnotationResult<>(
+                feature, getTraits());
+        List<String> users = new ArrayList<>(aCasMap.keySet());
+        for (int m = 0; m < users.size(); m++) {
+            for (int n = 0; n < m; n++) {
+                // Triangle matrix mirrored
+                Map<String, CAS> pairwiseCasMap = new LinkedHashMap<>();
+                pairwiseCasMap.put(users.get(m), aCasMap.get(users.get(m)));
+                pairwiseCasMap.put(users.get(n), aCasMap.get(users.get(n)));
+
+                CasDiff diff = doDiffDocument(getAdapters(), getTraits().getLinkCompareBehavior(),
+                        pairwiseCasMap, aDocumentIndex);
+
+                CAS referenceCas = pairwiseCasMap.values().stream().filter(Objects::nonNull)
+                        .findFirst().orElse(null);
+
+                CodingAgreementResult res = makeCodingStudy(diff, feature.getLayer().getName(),
+                        feature.getName(), getTagset(), isExcludeIncomplete(), referenceCas);
+                result.add(users.get(m), users.get(n), res);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public PairwiseAnnotationResult<CodingAgreementResult> getAgreement(List<String> aCasGroupIds,
+            List<PairwiseAnnotationResult<CodingAgreementResult>> aDocumentResults)
+    {
+        AnnotationFeature feature = getFeature();
+
         PairwiseAnnotationResult<CodingAgreementResult> result = new PairwiseAnnotationResult<>(
-                getFeature(), getTraits());
-        List<Entry<String, List<CAS>>> entryList = new ArrayList<>(aCasMap.entrySet());
-        for (int m = 0; m < entryList.size(); m++) {
-            for (int n = 0; n < entryList.size(); n++) {
+                feature, getTraits());
+        for (int m = 0; m < aCasGroupIds.size(); m++) {
+            for (int n = 0; n < m; n++) {
                 // Triangle matrix mirrored
-                if (n < m) {
-                    Map<String, List<CAS>> pairwiseCasMap = new LinkedHashMap<>();
-                    pairwiseCasMap.put(entryList.get(m).getKey(), entryList.get(m).getValue());
-                    pairwiseCasMap.put(entryList.get(n).getKey(), entryList.get(n).getValue());
-                    CodingAgreementResult res = calculatePairAgreement(pairwiseCasMap);
-                    result.add(entryList.get(m).getKey(), entryList.get(n).getKey(), res);
-                }
+                String user1 = aCasGroupIds.get(m);
+                String user2 = aCasGroupIds.get(n);
+
+                List<CodingAgreementResult> documentResults = aDocumentResults.stream()
+                        .map(documentResult -> documentResult.getStudy(user1, user2))
+                        .collect(toList());
+
+                CodingAgreementResult res = mergeCodingStudies(feature.getLayer().getName(),
+                        feature.getName(), asList(user1, user2), getTagset(),
+                        isExcludeIncomplete(), documentResults);
+                calculateAgreement(res);
+                result.add(user1, user2, res);
             }
         }
         return result;
     }
 
-    public abstract CodingAgreementResult calculatePairAgreement(Map<String, List<CAS>> aCasMap);
+    /**
+     * @return whether positions which have not been annotated by all users or which have no label
+     *         are excluded from the study.
+     */
+    protected boolean isExcludeIncomplete()
+    {
+        return true;
+    }
+
+    /**
+     * Calculates the agreement on the given study and stores it in the study.
+     * 
+     * @param aResult
+     *            the study.
+     */
+    protected abstract void calculateAgreement(CodingAgreementResult aResult);
+
+    private synchronized List<DiffAdapter> getAdapters()
+    {
+        if (adapters == null) {
+            adapters = getDiffAdapters(annotationService, asList(getFeature().getLayer()));
+        }
+        return adapters;
+    }
+
+    private synchronized Set<String> getTagset()
+    {
+        if (tagset == null) {
+            tagset = annotationService.listTags(getFeature().getTagset()).stream()
+                    .map(Tag::getName).collect(toCollection(LinkedHashSet::new));
+        }
+        return tagset;
+    }
 }
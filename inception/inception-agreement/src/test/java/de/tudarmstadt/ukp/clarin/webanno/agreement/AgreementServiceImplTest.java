@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.agreement;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.SPAN_TYPE;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnchoringMode.SINGLE_TOKEN;
+import static de.tudarmstadt.ukp.clarin.webanno.model.OverlapMode.NO_OVERLAP;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasureTestSuite_ImplBase;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.DefaultAgreementTraits;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.cohenkappa.CohenKappaAgreementMeasureSupport;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.results.coding.CodingAgreementResult;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterCasWrittenEvent;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+
+public class AgreementServiceImplTest
+    extends AgreementMeasureTestSuite_ImplBase
+{
+    private @Mock DocumentService documentService;
+
+    private AgreementServiceImpl sut;
+
+    private AgreementMeasure<PairwiseAnnotationResult<CodingAgreementResult>> measure;
+    private List<User> annotators;
+    private List<SourceDocument> documents;
+    private Map<String, List<CAS>> casByUser;
+
+    @Override
+    @BeforeEach
+    public void setup()
+    {
+        super.setup();
+
+        sut = new AgreementServiceImpl(documentService, 2);
+
+        project.setName("project");
+
+        AnnotationLayer layer = new AnnotationLayer(POS.class.getName(), POS.class.getSimpleName(),
+                SPAN_TYPE, project, false, SINGLE_TOKEN, NO_OVERLAP);
+        layer.setId(1l);
+        layers.add(layer);
+
+        AnnotationFeature feature = new AnnotationFeature(project, layer, "PosValue", "PosValue",
+                CAS.TYPE_NAME_STRING);
+        feature.setId(1l);
+        features.add(feature);
+
+        CohenKappaAgreementMeasureSupport support = new CohenKappaAgreementMeasureSupport(
+                annotationService);
+        DefaultAgreementTraits traits = support.createTraits();
+        traits.setLimitToFinishedDocuments(false);
+        measure = support.createMeasure(feature, traits);
+
+        annotators = asList(new User("user1"), new User("user2"));
+        documents = asList(new SourceDocument("doc1", project, null),
+                new SourceDocument("doc2", project, null));
+        documents.get(0).setId(1l);
+        documents.get(1).setId(2l);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        sut.destroy();
+    }
+
+    @Test
+    public void thatAgreementIsCalculatedDocumentByDocument() throws Exception
+    {
+        casByUser = new HashMap<>();
+        casByUser.put("user1", asList( //
+                createCas("This is a test .", "DT", "VBZ"), //
+                createCas("Another test .", "DT")));
+        casByUser.put("user2", asList( //
+                createCas("This is a test .", "DT", "NN"), //
+                createCas("Another test .", "DT")));
+        when(documentService.listAnnotationDocuments(project)).thenReturn(asList());
+        when(documentService.getAnnotationCasTimestamp(any(), anyString()))
+                .thenReturn(Optional.of(1l));
+        when(documentService.readAnnotationCas(any(SourceDocument.class), anyString(), any(),
+                any())).then(call -> casByUser.get(call.getArgument(1, String.class))
+                        .get(documents.indexOf(call.getArgument(0))));
+
+        CodingAgreementResult result = sut.getAgreement(measure, annotators, documents)
+                .getStudy("user1", "user2");
+
+        CodingAgreementResult expected = measure
+                .getAgreement(sut.getCasMap(annotators, documents, false))
+                .getStudy("user1", "user2");
+
+        assertThat(result.getStudy().getItemCount()).isEqualTo(3);
+        assertThat(result.getDiffSetCount()).isEqualTo(1);
+        assertThat(result.getTotalSetCount()).isEqualTo(expected.getTotalSetCount());
+        assertThat(result.getAgreement()).isEqualTo(expected.getAgreement());
+        assertThat(result.getCompleteSets()) //
+                .extracting(set -> set.getPosition().getDocumentId()) //
+                .containsExactly("doc1", "doc1", "doc2");
+    }
+
+    @Test
+    public void thatDocumentResultsAreCachedUntilCasIsWritten() throws Exception
+    {
+        casByUser = new HashMap<>();
+        casByUser.put("user1", asList( //
+                createCas("This is a test .", "DT"), //
+                createCas("Another test .", "DT")));
+        casByUser.put("user2", asList( //
+                createCas("This is a test .", "DT"), //
+                createCas("Another test .", "DT")));
+        when(documentService.listAnnotationDocuments(project)).thenReturn(asList());
+        when(documentService.getAnnotationCasTimestamp(any(), anyString()))
+                .thenReturn(Optional.of(1l));
+        when(documentService.readAnnotationCas(any(SourceDocument.class), anyString(), any(),
+                any())).then(call -> casByUser.get(call.getArgument(1, String.class))
+                        .get(documents.indexOf(call.getArgument(0))));
+
+        sut.getAgreement(measure, annotators, documents);
+        verify(documentService, times(4)).readAnnotationCas(any(SourceDocument.class),
+                anyString(), any(), any());
+
+        clearInvocations(documentService);
+        sut.getAgreement(measure, annotators, documents);
+        verify(documentService, times(0)).readAnnotationCas(any(SourceDocument.class),
+                anyString(), any(), any());
+
+        AnnotationDocument annDoc = new AnnotationDocument("user1", documents.get(1));
+        sut.onAfterCasWritten(new AfterCasWrittenEvent(this, annDoc, null));
+
+        clearInvocations(documentService);
+        sut.getAgreement(measure, annotators, documents);
+        verify(documentService, times(2)).readAnnotationCas(any(SourceDocument.class),
+                anyString(), any(), any());
+    }
+
+    private CAS createCas(String aText, String... aTags) throws Exception
+    {
+        JCas jcas = JCasFactory.createText(aText);
+        String[] tokens = aText.split(" ");
+        int begin = 0;
+        for (int i = 0; i < aTags.length; i++) {
+            POS pos = new POS(jcas, begin, begin + tokens[i].length());
+            pos.setPosValue(aTags[i]);
+            pos.addToIndexes();
+            begin += tokens[i].length() + 1;
+        }
+        return jcas.getCas();
+    }
+}
@@ -24,6 +24,7 @@ import java.util.Optional;
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.TypeSystem;
 import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
@@ -34,6 +35,7 @@ import de.tudarmstadt.ukp.clarin.webanno.api.annotation.feature.FeatureSupport;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.feature.FeatureSupportRegistry;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.layer.LayerSupport;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.layer.LayerSupportRegistry;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.LayerConfigurationChangedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.api.type.CASMetadata;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
@@ -493,6 +495,22 @@ public interface AnnotationSchemaService
     TypeSystemDescription getFullProjectTypeSystem(Project aProject, boolean aIncludeInternalTypes)
         throws ResourceInitializationException;
 
+    /**
+     * Returns the compiled full project type system (including internal types) for the current
+     * layer configuration version of the project. The type system is shared by all CASes using it
+     * and must not be modified.
+     */
+    TypeSystem getCompiledProjectTypeSystem(Project aProject)
+        throws ResourceInitializationException;
+
+    /**
+     * Returns the layer configuration version of the project. The version changes whenever a layer
+     * or feature of the project is changed or a {@link LayerConfigurationChangedEvent} is
+     * published for the project. It is not persistent and only meaningful for comparing with
+     * another version obtained from the same running instance.
+     */
+    long getLayerConfigurationVersion(Project aProject);
+
     /**
      * Upgrade the CAS to the current project type system. This also compacts the CAS and removes
      * any unreachable feature structures. This should be called at key points such as when the user
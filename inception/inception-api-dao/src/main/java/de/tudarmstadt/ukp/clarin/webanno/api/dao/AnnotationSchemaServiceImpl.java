@@ -45,8 +45,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -73,8 +76,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 
@@ -94,6 +101,8 @@ import de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.TypeSystemAnalysis.
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.annotationservice.config.AnnotationSchemaServiceAutoConfiguration;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasMetadataUtils;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeProjectRemovedEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.LayerConfigurationChangedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.api.event.TagCreatedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.api.event.TagDeletedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.api.event.TagUpdatedEvent;
@@ -129,6 +138,18 @@ public class AnnotationSchemaServiceImpl
     private final LoadingCache<TagSet, List<ImmutableTag>> immutableTagsCache;
     private final TypeSystemDescription builtInTypes;
 
+    /**
+     * Layer configuration version by project ID. The version is incremented whenever the layers or
+     * features of a project change and is used to tell whether a cached project type system is
+     * still up-to-date.
+     */
+    private final Map<Long, AtomicLong> layerConfigurationVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Compiled full project type systems by project ID.
+     */
+    private final Cache<Long, ProjectTypeSystem> projectTypeSystems;
+
     @Autowired
     public AnnotationSchemaServiceImpl(LayerSupportRegistry aLayerSupportRegistry,
             FeatureSupportRegistry aFeatureSupportRegistry,
@@ -141,6 +162,9 @@ public class AnnotationSchemaServiceImpl
 
         immutableTagsCache = Caffeine.newBuilder().expireAfterAccess(5, MINUTES)
                 .maximumSize(10 * 1024).build(this::loadImmutableTags);
+        projectTypeSystems = Caffeine.newBuilder() //
+                .expireAfterAccess(30, MINUTES) //
+                .build();
 
         try {
             builtInTypes = createTypeSystemDescription();
@@ -159,6 +183,9 @@ public class AnnotationSchemaServiceImpl
 
         immutableTagsCache = Caffeine.newBuilder().expireAfterAccess(5, MINUTES)
                 .maximumSize(10 * 1024).build(this::loadImmutableTags);
+        projectTypeSystems = Caffeine.newBuilder() //
+                .expireAfterAccess(30, MINUTES) //
+                .build();
 
         try {
             builtInTypes = createTypeSystemDescription();
@@ -262,6 +289,8 @@ public class AnnotationSchemaServiceImpl
                 entityManager.merge(aLayer);
                 log.info("Updated layer {} in project {}", aLayer, aLayer.getProject());
             }
+
+            layerConfigurationChanged(aLayer.getProject());
         }
     }
 
@@ -278,6 +307,8 @@ public class AnnotationSchemaServiceImpl
                 entityManager.merge(aFeature);
                 log.info("Updated feature {} in project {}", aFeature, aFeature.getProject());
             }
+
+            layerConfigurationChanged(aFeature.getProject());
         }
     }
 
@@ -878,6 +909,8 @@ public class AnnotationSchemaServiceImpl
                     entityManager.contains(aFeature) ? aFeature : entityManager.merge(aFeature));
 
             log.info("Removed feature {} from project {}", aFeature, aFeature.getProject());
+
+            layerConfigurationChanged(aFeature.getProject());
         }
     }
 
@@ -908,6 +941,8 @@ public class AnnotationSchemaServiceImpl
 
             Project project = aLayer.getProject();
             log.info("Removed layer {} from project {}", aLayer, project);
+
+            layerConfigurationChanged(project);
         }
     }
 
@@ -1094,6 +1129,145 @@ public class AnnotationSchemaServiceImpl
     public TypeSystemDescription getFullProjectTypeSystem(Project aProject,
             boolean aIncludeInternalTypes)
         throws ResourceInitializationException
+    {
+        if (aIncludeInternalTypes) {
+            // Callers may modify the returned description, so they must get their own copy
+            return (TypeSystemDescription) getProjectTypeSystem(aProject).description.clone();
+        }
+
+        return buildFullProjectTypeSystem(aProject, false);
+    }
+
+    @Override
+    public TypeSystem getCompiledProjectTypeSystem(Project aProject)
+        throws ResourceInitializationException
+    {
+        return getProjectTypeSystem(aProject).typeSystem;
+    }
+
+    @Override
+    public long getLayerConfigurationVersion(Project aProject)
+    {
+        if (aProject.getId() == null) {
+            return 0;
+        }
+
+        AtomicLong version = layerConfigurationVersions.get(aProject.getId());
+        return version != null ? version.get() : 0;
+    }
+
+    @EventListener
+    public void onLayerConfigurationChanged(LayerConfigurationChangedEvent aEvent)
+    {
+        layerConfigurationChanged(aEvent.getProject());
+    }
+
+    private void layerConfigurationChanged(Project aProject)
+    {
+        if (aProject == null || aProject.getId() == null) {
+            return;
+        }
+
+        long projectId = aProject.getId();
+        incrementLayerConfigurationVersion(projectId);
+
+        // A type system compiled while the transaction making the change is still running would
+        // not include the change, so the version needs to be incremented again after the commit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+            {
+                @Override
+                public void afterCompletion(int aStatus)
+                {
+                    // If the project has been removed in the meantime, do not bring back its
+                    // version
+                    layerConfigurationVersions.computeIfPresent(projectId, (id, version) -> {
+                        version.incrementAndGet();
+                        return version;
+                    });
+                }
+            });
+        }
+    }
+
+    private void incrementLayerConfigurationVersion(long aProjectId)
+    {
+        layerConfigurationVersions.computeIfAbsent(aProjectId, id -> new AtomicLong())
+                .incrementAndGet();
+    }
+
+    @EventListener
+    public void onBeforeProjectRemoved(BeforeProjectRemovedEvent aEvent)
+    {
+        Project project = aEvent.getProject();
+        if (project.getId() == null) {
+            return;
+        }
+
+        long projectId = project.getId();
+
+        // Only forget the project once its removal has been committed - if the removal is rolled
+        // back, the project continues to be used with its current version
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+            {
+                @Override
+                public void afterCompletion(int aStatus)
+                {
+                    if (aStatus == STATUS_COMMITTED) {
+                        forgetProject(projectId);
+                    }
+                }
+            });
+        }
+        else {
+            forgetProject(projectId);
+        }
+    }
+
+    private void forgetProject(long aProjectId)
+    {
+        layerConfigurationVersions.remove(aProjectId);
+        projectTypeSystems.invalidate(aProjectId);
+    }
+
+    /**
+     * Gets the compiled full project type system for the current layer configuration version of
+     * the project, compiling it if necessary.
+     */
+    private ProjectTypeSystem getProjectTypeSystem(Project aProject)
+        throws ResourceInitializationException
+    {
+        // Projects that have not been saved yet cannot be versioned
+        if (aProject.getId() == null) {
+            return new ProjectTypeSystem(0, buildFullProjectTypeSystem(aProject, true));
+        }
+
+        long version = getLayerConfigurationVersion(aProject);
+        ProjectTypeSystem pts = projectTypeSystems.getIfPresent(aProject.getId());
+        if (pts != null && pts.version == version) {
+            return pts;
+        }
+
+        long start = System.currentTimeMillis();
+        pts = new ProjectTypeSystem(version, buildFullProjectTypeSystem(aProject, true));
+
+        // Only cache the result if the layer configuration did not change in the meantime
+        if (getLayerConfigurationVersion(aProject) == version) {
+            projectTypeSystems.put(aProject.getId(), pts);
+        }
+
+        try (var logCtx = withProjectLogger(aProject)) {
+            log.debug("Compiled type system for project {} at layer configuration version {} "
+                    + "in {}ms", aProject, version, System.currentTimeMillis() - start);
+        }
+
+        return pts;
+    }
+
+    private TypeSystemDescription buildFullProjectTypeSystem(Project aProject,
+            boolean aIncludeInternalTypes)
+        throws ResourceInitializationException
     {
         List<TypeSystemDescription> typeSystems = new ArrayList<>();
 
@@ -1161,8 +1335,7 @@ public class AnnotationSchemaServiceImpl
     @Override
     public void upgradeCas(CAS aCas, Project aProject) throws UIMAException, IOException
     {
-        TypeSystemDescription ts = getFullProjectTypeSystem(aProject);
-        upgradeCas(aCas, ts);
+        upgradeCas(aCas, aCas, getProjectTypeSystem(aProject).typeSystem);
     }
 
     @Override
@@ -1183,7 +1356,7 @@ public class AnnotationSchemaServiceImpl
     public boolean upgradeCasIfRequired(Iterable<CAS> aCasIter, Project aProject)
         throws UIMAException, IOException
     {
-        TypeSystemDescription ts = getFullProjectTypeSystem(aProject);
+        ProjectTypeSystem pts = getProjectTypeSystem(aProject);
 
         // Check if the current CAS already contains the required type system
         boolean upgradePerformed = false;
@@ -1196,8 +1369,15 @@ public class AnnotationSchemaServiceImpl
             // eventually figure out that no upgrade is required.
             CasStorageSession.get().assertWritingPermitted(cas);
 
-            if (isUpgradeRequired(cas, ts)) {
-                upgradeCas(cas, ts);
+            // CASes using the compiled type system of the current layer configuration version are
+            // up-to-date. Since UIMA consolidates equal type systems into a single instance, this
+            // also holds for most CASes loaded from storage.
+            if (getRealCas(cas).getTypeSystem() == pts.typeSystem) {
+                continue nextCas;
+            }
+
+            if (isUpgradeRequired(cas, pts.description)) {
+                upgradeCas(cas, cas, pts.typeSystem);
                 upgradePerformed = true;
             }
         }
@@ -1240,6 +1420,23 @@ public class AnnotationSchemaServiceImpl
     @Override
     public void upgradeCas(CAS aSourceCas, CAS aTargetCas, TypeSystemDescription aTargetTypeSystem)
         throws UIMAException, IOException
+    {
+        upgradeCas(aSourceCas, aTargetCas, null, aTargetTypeSystem);
+    }
+
+    private void upgradeCas(CAS aSourceCas, CAS aTargetCas, TypeSystem aTargetTypeSystem)
+        throws UIMAException, IOException
+    {
+        upgradeCas(aSourceCas, aTargetCas, aTargetTypeSystem, null);
+    }
+
+    /**
+     * Upgrades to the given compiled type system if available, otherwise to the given type system
+     * description.
+     */
+    private void upgradeCas(CAS aSourceCas, CAS aTargetCas, TypeSystem aTargetTypeSystem,
+            TypeSystemDescription aTargetTypeSystemDescription)
+        throws UIMAException, IOException
     {
         CasStorageSession.get().assertWritingPermitted(aTargetCas);
 
@@ -1258,7 +1455,9 @@ public class AnnotationSchemaServiceImpl
         CAS realTargetCas = getRealCas(aTargetCas);
         // UIMA-6162 Workaround: synchronize CAS during de/serialization
         synchronized (((CASImpl) realTargetCas).getBaseCAS()) {
-            CAS tempCas = CasFactory.createCas(aTargetTypeSystem);
+            CAS tempCas = aTargetTypeSystem != null
+                    ? CasCreationUtils.createCas(aTargetTypeSystem, null, null, null)
+                    : CasFactory.createCas(aTargetTypeSystemDescription);
             CASCompleteSerializer serializer = serializeCASComplete((CASImpl) tempCas);
             deserializeCASComplete(serializer, (CASImpl) realTargetCas);
 
@@ -1534,4 +1733,25 @@ public class AnnotationSchemaServiceImpl
         }
         return result;
     }
+
+    /**
+     * The full project type system compiled for a particular layer configuration version. The
+     * compiled type system is shared by all CASes upgraded to this version and must not be
+     * modified.
+     */
+    private static class ProjectTypeSystem
+    {
+        private final long version;
+        private final TypeSystemDescription description;
+        private final TypeSystem typeSystem;
+
+        public ProjectTypeSystem(long aVersion, TypeSystemDescription aDescription)
+            throws ResourceInitializationException
+        {
+            version = aVersion;
+            description = aDescription;
+            typeSystem = CasCreationUtils.createCas(aDescription, null, null, null)
+                    .getTypeSystem();
+        }
+    }
 }
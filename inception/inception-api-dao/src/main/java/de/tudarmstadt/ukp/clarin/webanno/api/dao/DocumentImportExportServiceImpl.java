@@ -29,6 +29,8 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUt
 import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getRealCas;
 import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.selectSentences;
 import static de.tudarmstadt.ukp.clarin.webanno.support.ZipUtils.zipFolder;
+import static de.tudarmstadt.ukp.clarin.webanno.support.concurrent.FutureUtils.getResult;
+import static de.tudarmstadt.ukp.clarin.webanno.support.logging.MDCContext.withCallerContext;
 import static java.io.File.createTempFile;
 import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableMap;
@@ -42,18 +44,37 @@ import static org.apache.uima.fit.util.CasUtil.select;
 import static org.apache.uima.fit.util.LifeCycleUtil.collectionProcessComplete;
 import static org.apache.uima.fit.util.LifeCycleUtil.destroy;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.text.BreakIterator;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngine;
@@ -66,7 +87,9 @@ import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.collection.CollectionReaderDescription;
 import org.apache.uima.fit.factory.CasFactory;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
 import org.dkpro.core.api.io.JCasFileWriter_ImplBase;
 import org.dkpro.core.api.io.ResourceCollectionReaderBase;
 import org.slf4j.Logger;
@@ -87,7 +110,9 @@ import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.docimexport.config.DocumentImportExportServiceAutoConfiguration;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.docimexport.config.DocumentImportExportServiceProperties;
+import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatCodec;
 import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatSupport;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.Mode;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
@@ -213,18 +238,7 @@ public class DocumentImportExportServiceImpl
                 bulkOperationContext = new HashMap<>();
             }
 
-            String username;
-            switch (aMode) {
-            case ANNOTATION:
-                username = aUser;
-                break;
-            case CURATION:
-                // The merge result will be exported
-                username = CURATION_USER;
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown mode [" + aMode + "]");
-            }
+            String username = getExportUser(aUser, aMode);
 
             // Read file
             File exportFile;
@@ -241,6 +255,120 @@ public class DocumentImportExportServiceImpl
         }
     }
 
+    @Override
+    @Transactional
+    public String exportAnnotationDocumentToStream(SourceDocument aDocument, String aUser,
+            FormatSupport aFormat, String aFileName, Mode aMode, boolean aStripExtension,
+            OutputStream aOutputStream, Map<Pair<Project, String>, Object> aBulkOperationContext)
+        throws UIMAException, IOException
+    {
+        return doExportAnnotationDocumentToStream(aDocument, aUser, aFormat, aFileName, aMode,
+                aStripExtension, aOutputStream, aBulkOperationContext);
+    }
+
+    private String doExportAnnotationDocumentToStream(SourceDocument aDocument, String aUser,
+            FormatSupport aFormat, String aFileName, Mode aMode, boolean aStripExtension,
+            OutputStream aOutputStream, Map<Pair<Project, String>, Object> aBulkOperationContext)
+        throws UIMAException, IOException
+    {
+        try (var logCtx = withProjectLogger(aDocument.getProject())) {
+            String username = getExportUser(aUser, aMode);
+
+            String exportFileName;
+            try (CasStorageSession session = CasStorageSession.openNested()) {
+                CAS cas = casStorageService.readCas(aDocument, username);
+                exportFileName = exportCasToStream(cas, aDocument, aFileName, aFormat,
+                        aStripExtension, aOutputStream, aBulkOperationContext);
+            }
+
+            log.info("Exported annotations {} for user [{}] from project {} " + "using format [{}]",
+                    aDocument, aUser, aDocument.getProject(), aFormat.getId());
+
+            return exportFileName;
+        }
+    }
+
+    @Override
+    public void exportAnnotationDocumentsToStream(List<AnnotationDocument> aDocuments,
+            Function<SourceDocument, FormatSupport> aFormat, ExportedAnnotationDocumentSink aSink)
+        throws UIMAException, IOException
+    {
+        int threads = Math.max(1, properties.getBulkExportThreads());
+        int maxPending = 2 * threads;
+
+        // The bulk operation context is shared by the conversion threads
+        Map<Pair<Project, String>, Object> bulkOperationContext = new ConcurrentHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Pair<AnnotationDocument, Future<Pair<String, byte[]>>>> pending = new ArrayDeque<>();
+        try {
+            for (AnnotationDocument annDoc : aDocuments) {
+                FormatSupport format = aFormat.apply(annDoc.getDocument());
+
+                // The conversion threads run outside of any transaction, so the project data
+                // they need is fetched from the database here and passed on via the bulk
+                // operation context
+                Project project = annDoc.getProject();
+                getExportTypeSystem(project, bulkOperationContext);
+                getExportFeatures(project, bulkOperationContext);
+
+                // The conversion threads need the logging context of the caller, e.g. for the
+                // repository path
+                pending.add(Pair.of(annDoc, executor.submit(withCallerContext(() -> {
+                    try (CasStorageSession session = CasStorageSession.openNested()) {
+                        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                        String fileName = doExportAnnotationDocumentToStream(annDoc.getDocument(),
+                                annDoc.getUser(), format, annDoc.getDocument().getName(),
+                                Mode.ANNOTATION, true, buffer, bulkOperationContext);
+                        return Pair.of(fileName, buffer.toByteArray());
+                    }
+                }))));
+
+                // Do not convert too far ahead of the sink
+                while (pending.size() >= maxPending) {
+                    writeExportedAnnotationDocument(pending.poll(), aSink);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                writeExportedAnnotationDocument(pending.poll(), aSink);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeExportedAnnotationDocument(
+            Pair<AnnotationDocument, Future<Pair<String, byte[]>>> aPending,
+            ExportedAnnotationDocumentSink aSink)
+        throws UIMAException, IOException
+    {
+        Pair<String, byte[]> exported;
+        try {
+            exported = getResult(aPending.getValue());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export has been interrupted");
+        }
+
+        aSink.write(aPending.getKey(), exported.getKey(), exported.getValue());
+    }
+
+    private static String getExportUser(String aUser, Mode aMode)
+    {
+        switch (aMode) {
+        case ANNOTATION:
+            return aUser;
+        case CURATION:
+            // The merge result will be exported
+            return CURATION_USER;
+        default:
+            throw new IllegalArgumentException("Unknown mode [" + aMode + "]");
+        }
+    }
+
     @Override
     public CAS importCasFromFile(File aFile, Project aProject, String aFormatId)
         throws UIMAException, IOException
@@ -253,6 +381,18 @@ public class DocumentImportExportServiceImpl
             TypeSystemDescription aFullProjectTypeSystem)
         throws UIMAException, IOException
     {
+        // Convert the source document to CAS
+        FormatSupport format = getReadableFormatById(aFormatId).orElseThrow(
+                () -> new IOException("No reader available for format [" + aFormatId + "]"));
+
+        // If the format can be read from a stream, we do not need to set up a reader
+        if (getReadCodec(format).isPresent()) {
+            try (InputStream is = new BufferedInputStream(new FileInputStream(aFile))) {
+                return importCasFromStream(is, aFile.getName(), aProject, aFormatId,
+                        aFullProjectTypeSystem);
+            }
+        }
+
         TypeSystemDescription tsd = aFullProjectTypeSystem;
 
         if (tsd == null) {
@@ -262,10 +402,6 @@ public class DocumentImportExportServiceImpl
         // Prepare a CAS with the project type system
         CAS cas = CasFactory.createCas(tsd);
 
-        // Convert the source document to CAS
-        FormatSupport format = getReadableFormatById(aFormatId).orElseThrow(
-                () -> new IOException("No reader available for format [" + aFormatId + "]"));
-
         CollectionReaderDescription readerDescription = format.getReaderDescription(tsd);
         addConfigurationParameters(readerDescription,
                 ResourceCollectionReaderBase.PARAM_SOURCE_LOCATION,
@@ -291,6 +427,85 @@ public class DocumentImportExportServiceImpl
         return cas;
     }
 
+    @Override
+    public CAS importCasFromStream(InputStream aInputStream, String aDocumentName,
+            Project aProject, String aFormatId, TypeSystemDescription aFullProjectTypeSystem)
+        throws UIMAException, IOException
+    {
+        FormatSupport format = getReadableFormatById(aFormatId).orElseThrow(
+                () -> new IOException("No reader available for format [" + aFormatId + "]"));
+
+        Optional<FormatCodec> codec = getReadCodec(format);
+        if (!codec.isPresent()) {
+            // The UIMA readers can only read from files, so we have to spool the data to disk
+            return importCasViaTemporaryFile(aInputStream, aDocumentName, aProject, aFormatId,
+                    aFullProjectTypeSystem);
+        }
+
+        // Prepare a CAS with the project type system - if we do not have a type system
+        // description, we can use the compiled project type system and save compiling it
+        CAS cas;
+        if (aFullProjectTypeSystem != null) {
+            cas = CasFactory.createCas(aFullProjectTypeSystem);
+        }
+        else {
+            cas = CasCreationUtils.createCas(
+                    annotationService.getCompiledProjectTypeSystem(aProject), null, null, null);
+        }
+
+        CountingInputStream is = new CountingInputStream(aInputStream);
+        codec.get().read(cas, is);
+
+        // The UIMA readers add the document metadata - so we have to do it here ourselves
+        if (!exists(cas, getType(cas, DocumentMetaData.class))) {
+            DocumentMetaData dmd = DocumentMetaData.create(cas);
+            dmd.setDocumentId(aDocumentName);
+            dmd.setDocumentTitle(aDocumentName);
+        }
+
+        // Create sentence / token annotations if they are missing - sentences first because
+        // tokens are then generated inside the sentences
+        splitSenencesIfNecssaryAndCheckQuota(cas, format);
+        splitTokensIfNecssaryAndCheckQuota(cas, format);
+
+        log.info("Imported CAS with [{}] tokens and [{}] sentences from stream [{}] (size: {} "
+                + "bytes)", cas.getAnnotationIndex(getType(cas, Token.class)).size(),
+                cas.getAnnotationIndex(getType(cas, Sentence.class)).size(), aDocumentName,
+                is.getByteCount());
+
+        return cas;
+    }
+
+    private CAS importCasViaTemporaryFile(InputStream aInputStream, String aDocumentName,
+            Project aProject, String aFormatId, TypeSystemDescription aFullProjectTypeSystem)
+        throws UIMAException, IOException
+    {
+        String fileName = FilenameUtils.getName(aDocumentName);
+        if (StringUtils.isBlank(fileName)) {
+            fileName = "document";
+        }
+
+        File tmpDir = Files.createTempDirectory("webanno-import").toFile();
+        try {
+            File tmpFile = new File(tmpDir, fileName);
+            Files.copy(aInputStream, tmpFile.toPath());
+            return importCasFromFile(tmpFile, aProject, aFormatId, aFullProjectTypeSystem);
+        }
+        finally {
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
+
+    private static Optional<FormatCodec> getReadCodec(FormatSupport aFormat)
+    {
+        return aFormat.getCodec().filter(FormatCodec::isReadable);
+    }
+
+    private static Optional<FormatCodec> getWriteCodec(FormatSupport aFormat)
+    {
+        return aFormat.getCodec().filter(FormatCodec::isWritable);
+    }
+
     private void splitTokensIfNecssaryAndCheckQuota(CAS cas, FormatSupport aFormat)
         throws IOException
     {
@@ -450,64 +665,17 @@ public class DocumentImportExportServiceImpl
         throws IOException, UIMAException
     {
         try (var logCtx = withProjectLogger(aDocument.getProject())) {
-            Project project = aDocument.getProject();
-
             Map<Pair<Project, String>, Object> bulkOperationContext = aBulkOperationContext;
             if (bulkOperationContext == null) {
                 bulkOperationContext = new HashMap<>();
             }
 
-            // Either fetch the type system from the bulk-context or fetch it from the DB and store
-            // it
-            // in the bulk-context to avoid further lookups in the same bulk operation
-            Pair<Project, String> exportTypeSystemKey = Pair.of(project, "exportTypeSystem");
-            TypeSystemDescription exportTypeSystem = (TypeSystemDescription) bulkOperationContext
-                    .get(exportTypeSystemKey);
-            if (exportTypeSystem == null) {
-                exportTypeSystem = annotationService.getTypeSystemForExport(project);
-                bulkOperationContext.put(exportTypeSystemKey, exportTypeSystem);
-            }
+            TypeSystemDescription exportTypeSystem = getExportTypeSystem(aDocument.getProject(),
+                    bulkOperationContext);
 
             try (CasStorageSession session = CasStorageSession.openNested()) {
-                // Update type system the CAS, compact it (remove all non-reachable feature
-                // structures) and remove all internal feature structures in the process
-                CAS exportCas = WebAnnoCasUtil.createCas();
-                session.add(EXPORT_CAS, CasAccessMode.EXCLUSIVE_WRITE_ACCESS, exportCas);
-                annotationService.prepareCasForExport(aCas, exportCas, aDocument, exportTypeSystem);
-
-                // Update the source file name in case it is changed for some reason. This is
-                // necessary
-                // for the writers to create the files under the correct names.
-                File currentDocumentUri = new File(repositoryProperties.getPath().getAbsolutePath()
-                        + "/" + PROJECT_FOLDER + "/" + project.getId() + "/" + DOCUMENT_FOLDER + "/"
-                        + aDocument.getId() + "/" + SOURCE_FOLDER);
-                DocumentMetaData documentMetadata = DocumentMetaData.get(exportCas.getJCas());
-                documentMetadata
-                        .setDocumentBaseUri(currentDocumentUri.toURI().toURL().toExternalForm());
-                documentMetadata.setDocumentUri(
-                        new File(currentDocumentUri, aFileName).toURI().toURL().toExternalForm());
-                documentMetadata
-                        .setCollectionId(currentDocumentUri.toURI().toURL().toExternalForm());
-                documentMetadata.setDocumentId(aFileName);
-
-                // update with the correct tagset name
-                Pair<Project, String> annotationFeaturesKey = Pair.of(project,
-                        "annotationFeatures");
-                @SuppressWarnings("unchecked")
-                List<AnnotationFeature> features = (List<AnnotationFeature>) bulkOperationContext
-                        .get(annotationFeaturesKey);
-                if (features == null) {
-                    features = annotationService.listAnnotationFeature(project);
-                    bulkOperationContext.put(annotationFeaturesKey, features);
-                }
-                for (AnnotationFeature feature : features) {
-                    TagSet tagSet = feature.getTagset();
-                    if (tagSet == null || CHAIN_TYPE.equals(feature.getLayer().getType())) {
-                        continue;
-                    }
-
-                    updateCasWithTagSet(exportCas, feature.getLayer().getName(), tagSet.getName());
-                }
+                CAS exportCas = prepareExportCas(session, aCas, aDocument, aFileName,
+                        exportTypeSystem, bulkOperationContext);
 
                 File exportTempDir = createTempFile("webanno", "export");
                 try {
@@ -563,6 +731,115 @@ public class DocumentImportExportServiceImpl
         }
     }
 
+    @Override
+    public String exportCasToStream(CAS aCas, SourceDocument aDocument, String aFileName,
+            FormatSupport aFormat, boolean aStripExtension, OutputStream aOutputStream,
+            Map<Pair<Project, String>, Object> aBulkOperationContext)
+        throws IOException, UIMAException
+    {
+        Optional<FormatCodec> codec = getWriteCodec(aFormat);
+        if (!codec.isPresent()) {
+            // The UIMA writers can only write to files, so we have to go through the file system
+            File exportFile = exportCasToFile(aCas, aDocument, aFileName, aFormat,
+                    aStripExtension, aBulkOperationContext);
+            try {
+                Files.copy(exportFile.toPath(), aOutputStream);
+                return exportFile.getName();
+            }
+            finally {
+                forceDelete(exportFile);
+            }
+        }
+
+        try (var logCtx = withProjectLogger(aDocument.getProject())) {
+            Map<Pair<Project, String>, Object> bulkOperationContext = aBulkOperationContext;
+            if (bulkOperationContext == null) {
+                bulkOperationContext = new HashMap<>();
+            }
+
+            TypeSystemDescription exportTypeSystem = getExportTypeSystem(aDocument.getProject(),
+                    bulkOperationContext);
+
+            try (CasStorageSession session = CasStorageSession.openNested()) {
+                CAS exportCas = prepareExportCas(session, aCas, aDocument, aFileName,
+                        exportTypeSystem, bulkOperationContext);
+
+                String baseName = aStripExtension ? FilenameUtils.removeExtension(aFileName)
+                        : aFileName;
+                codec.get().write(getRealCas(exportCas), baseName, aOutputStream);
+                return codec.get().getFileName(baseName);
+            }
+        }
+    }
+
+    private TypeSystemDescription getExportTypeSystem(Project aProject,
+            Map<Pair<Project, String>, Object> aBulkOperationContext)
+        throws ResourceInitializationException
+    {
+        // Either fetch the type system from the bulk-context or fetch it from the DB and store it
+        // in the bulk-context to avoid further lookups in the same bulk operation
+        Pair<Project, String> exportTypeSystemKey = Pair.of(aProject, "exportTypeSystem");
+        TypeSystemDescription exportTypeSystem = (TypeSystemDescription) aBulkOperationContext
+                .get(exportTypeSystemKey);
+        if (exportTypeSystem == null) {
+            exportTypeSystem = annotationService.getTypeSystemForExport(aProject);
+            aBulkOperationContext.put(exportTypeSystemKey, exportTypeSystem);
+        }
+        return exportTypeSystem;
+    }
+
+    private CAS prepareExportCas(CasStorageSession aSession, CAS aCas, SourceDocument aDocument,
+            String aFileName, TypeSystemDescription aExportTypeSystem,
+            Map<Pair<Project, String>, Object> aBulkOperationContext)
+        throws IOException, UIMAException
+    {
+        Project project = aDocument.getProject();
+
+        // Update type system the CAS, compact it (remove all non-reachable feature
+        // structures) and remove all internal feature structures in the process
+        CAS exportCas = WebAnnoCasUtil.createCas();
+        aSession.add(EXPORT_CAS, CasAccessMode.EXCLUSIVE_WRITE_ACCESS, exportCas);
+        annotationService.prepareCasForExport(aCas, exportCas, aDocument, aExportTypeSystem);
+
+        // Update the source file name in case it is changed for some reason. This is necessary
+        // for the writers to create the files under the correct names.
+        File currentDocumentUri = new File(repositoryProperties.getPath().getAbsolutePath() + "/"
+                + PROJECT_FOLDER + "/" + project.getId() + "/" + DOCUMENT_FOLDER + "/"
+                + aDocument.getId() + "/" + SOURCE_FOLDER);
+        DocumentMetaData documentMetadata = DocumentMetaData.get(exportCas.getJCas());
+        documentMetadata.setDocumentBaseUri(currentDocumentUri.toURI().toURL().toExternalForm());
+        documentMetadata.setDocumentUri(
+                new File(currentDocumentUri, aFileName).toURI().toURL().toExternalForm());
+        documentMetadata.setCollectionId(currentDocumentUri.toURI().toURL().toExternalForm());
+        documentMetadata.setDocumentId(aFileName);
+
+        // update with the correct tagset name
+        for (AnnotationFeature feature : getExportFeatures(project, aBulkOperationContext)) {
+            TagSet tagSet = feature.getTagset();
+            if (tagSet == null || CHAIN_TYPE.equals(feature.getLayer().getType())) {
+                continue;
+            }
+
+            updateCasWithTagSet(exportCas, feature.getLayer().getName(), tagSet.getName());
+        }
+
+        return exportCas;
+    }
+
+    private List<AnnotationFeature> getExportFeatures(Project aProject,
+            Map<Pair<Project, String>, Object> aBulkOperationContext)
+    {
+        Pair<Project, String> annotationFeaturesKey = Pair.of(aProject, "annotationFeatures");
+        @SuppressWarnings("unchecked")
+        List<AnnotationFeature> features = (List<AnnotationFeature>) aBulkOperationContext
+                .get(annotationFeaturesKey);
+        if (features == null) {
+            features = annotationService.listAnnotationFeature(aProject);
+            aBulkOperationContext.put(annotationFeaturesKey, features);
+        }
+        return features;
+    }
+
     /**
      * A Helper method to add {@link TagsetDescription} to {@link CAS}
      *
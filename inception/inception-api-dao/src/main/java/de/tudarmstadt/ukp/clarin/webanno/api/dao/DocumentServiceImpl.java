@@ -49,6 +49,7 @@ import java.io.OutputStream;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -64,6 +65,7 @@ import java.util.stream.Collectors;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.Validate;
@@ -115,6 +117,8 @@ public class DocumentServiceImpl
 {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
+    private static final int BULK_UPDATE_BATCH_SIZE = 1000;
+
     private final EntityManager entityManager;
     private final CasStorageService casStorageService;
     private final DocumentImportExportService importExportService;
@@ -390,6 +394,64 @@ public class DocumentServiceImpl
         return oldState;
     }
 
+    @Override
+    @Transactional
+    public void bulkSetSourceDocumentState(Map<SourceDocument, SourceDocumentState> aStates)
+    {
+        Validate.notNull(aStates, "States must be specified");
+
+        Map<SourceDocumentState, List<SourceDocument>> changes = new LinkedHashMap<>();
+        for (Entry<SourceDocument, SourceDocumentState> e : aStates.entrySet()) {
+            if (!Objects.equals(e.getKey().getState(), e.getValue())) {
+                changes.computeIfAbsent(e.getValue(), _key -> new ArrayList<>()).add(e.getKey());
+            }
+        }
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // The bulk updates bypass the persistence context, so pending changes need to be written
+        // first
+        entityManager.flush();
+
+        String query = String.join("\n", //
+                "UPDATE SourceDocument", //
+                "SET state = :state, updated = :updated", //
+                "WHERE id IN (:ids)");
+
+        Date now = new Date();
+        for (Entry<SourceDocumentState, List<SourceDocument>> e : changes.entrySet()) {
+            List<Long> ids = e.getValue().stream() //
+                    .map(SourceDocument::getId) //
+                    .collect(Collectors.toList());
+            for (List<Long> batch : ListUtils.partition(ids, BULK_UPDATE_BATCH_SIZE)) {
+                entityManager.createQuery(query) //
+                        .setParameter("state", e.getKey()) //
+                        .setParameter("updated", now) //
+                        .setParameter("ids", batch) //
+                        .executeUpdate();
+            }
+        }
+
+        for (Entry<SourceDocumentState, List<SourceDocument>> e : changes.entrySet()) {
+            for (SourceDocument doc : e.getValue()) {
+                // Detach the document so that updating its state below does not cause it to be
+                // written once more when the persistence context is flushed
+                if (entityManager.contains(doc)) {
+                    entityManager.detach(doc);
+                }
+
+                SourceDocumentState oldState = doc.getState();
+                doc.setState(e.getKey());
+                doc.setUpdated(now);
+
+                applicationEventPublisher
+                        .publishEvent(new DocumentStateChangedEvent(this, doc, oldState));
+            }
+        }
+    }
+
     @Override
     @Transactional
     public SourceDocumentState transitionSourceDocumentState(SourceDocument aDocument,
@@ -1077,6 +1139,59 @@ public class DocumentServiceImpl
         return finalCounts;
     }
 
+    @Override
+    @Transactional
+    public Map<SourceDocument, Map<AnnotationDocumentState, Long>> getAnnotationDocumentStats(
+            Project aProject)
+    {
+        long userCount = projectService.listProjectUsersWithPermissions(aProject).size();
+
+        String query = String.join("\n", //
+                "SELECT doc.document.id, doc.state, COUNT(*)", //
+                " FROM AnnotationDocument AS doc", //
+                " JOIN ProjectPermission AS perm", //
+                "   ON doc.project = perm.project AND doc.user = perm.user", //
+                " JOIN User as u", //
+                "   ON doc.user = u.username", //
+                "WHERE doc.project = :project", //
+                "  AND perm.level = :level", //
+                "GROUP BY doc.document.id, doc.state");
+
+        List<Object[]> rows = entityManager.createQuery(query, Object[].class) //
+                .setParameter("project", aProject) //
+                .setParameter("level", ANNOTATOR) //
+                .getResultList();
+
+        Map<Long, Map<AnnotationDocumentState, Long>> countsByDocument = new HashMap<>();
+        for (Object[] row : rows) {
+            countsByDocument.computeIfAbsent((Long) row[0], _key -> initialAnnotationStateCounts())
+                    .merge((AnnotationDocumentState) row[1], (Long) row[2], Long::sum);
+        }
+
+        Map<SourceDocument, Map<AnnotationDocumentState, Long>> stats = new LinkedHashMap<>();
+        for (SourceDocument doc : listSourceDocuments(aProject)) {
+            Map<AnnotationDocumentState, Long> counts = countsByDocument.getOrDefault(doc.getId(),
+                    initialAnnotationStateCounts());
+
+            // Users that do not have an annotation document yet are implicitly in state NEW
+            long total = counts.values().stream().mapToLong(Long::longValue).sum();
+            counts.merge(AnnotationDocumentState.NEW, userCount - total, Long::sum);
+
+            stats.put(doc, counts);
+        }
+
+        return stats;
+    }
+
+    private static Map<AnnotationDocumentState, Long> initialAnnotationStateCounts()
+    {
+        Map<AnnotationDocumentState, Long> counts = new LinkedHashMap<>();
+        for (AnnotationDocumentState state : AnnotationDocumentState.values()) {
+            counts.put(state, 0l);
+        }
+        return counts;
+    }
+
     @Override
     public SourceDocumentStateStats getSourceDocumentStats(Project aProject)
     {
@@ -25,8 +25,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.uima.cas.CAS;
@@ -34,6 +36,7 @@ import org.apache.uima.cas.SerialFormat;
 import org.apache.uima.cas.impl.CASCompleteSerializer;
 import org.apache.uima.cas.impl.CASImpl;
 import org.apache.uima.util.CasIOUtils;
+import org.apache.uima.util.CasLoadMode;
 import org.apache.uima.util.TypeSystemUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -122,19 +125,66 @@ public final class CasPersistenceUtils
                 CASCompleteSerializer serializer = (CASCompleteSerializer) is.readObject();
                 deserializeCASComplete(serializer, (CASImpl) realCas);
 
-                // Workaround for UIMA adding back deleted DocumentAnnotations
-                // https://issues.apache.org/jira/browse/UIMA-6199
-                // If there is a DocumentMetaData annotation, then we can drop any of the default
-                // UIMA DocumentAnnotation instances (excluding the DocumentMetaData of course)
-                if (!aCas.select(DocumentMetaData.class.getName()).isEmpty()) {
-                    aCas.select(CAS.TYPE_NAME_DOCUMENT_ANNOTATION).filter(
-                            fs -> !DocumentMetaData.class.getName().equals(fs.getType().getName()))
-                            .forEach(aCas::removeFsFromIndexes);
-                }
+                removeSpuriousDocumentAnnotations(aCas);
             }
             catch (ClassNotFoundException e) {
                 throw new IOException(e);
             }
         }
     }
+
+    /**
+     * Writes the CAS in the compressed binary form 6 without its type system. The type system must
+     * be stored separately (see {@link #writeTypeSystem}) and passed to
+     * {@link #readCompactCas(CAS, InputStream, InputStream)} when the CAS is loaded again.
+     */
+    public static void writeCompactCas(CAS aCas, OutputStream aStream) throws IOException
+    {
+        CAS realCas = getRealCas(aCas);
+        // UIMA-6162 Workaround: synchronize CAS during de/serialization
+        synchronized (((CASImpl) realCas).getBaseCAS()) {
+            CasIOUtils.save(realCas, aStream, SerialFormat.COMPRESSED_FILTERED);
+        }
+    }
+
+    /**
+     * Reads a CAS previously written using {@link #writeCompactCas(CAS, OutputStream)}. The given
+     * CAS is re-initialized with the type system and index definitions read from the type system
+     * stream.
+     */
+    public static void readCompactCas(CAS aCas, InputStream aStream,
+            InputStream aTypeSystemStream)
+        throws IOException
+    {
+        CAS realCas = getRealCas(aCas);
+        // UIMA-6162 Workaround: synchronize CAS during de/serialization
+        synchronized (((CASImpl) realCas).getBaseCAS()) {
+            CasIOUtils.load(aStream, aTypeSystemStream, realCas, CasLoadMode.REINIT);
+
+            removeSpuriousDocumentAnnotations(aCas);
+        }
+    }
+
+    /**
+     * Writes the type system and index definitions of the given CAS in the UIMA TSI format which
+     * is understood by {@link #readCompactCas(CAS, InputStream, InputStream)}.
+     */
+    public static void writeTypeSystem(CAS aCas, OutputStream aStream) throws IOException
+    {
+        CasIOUtils.writeTypeSystem(getRealCas(aCas), aStream, true);
+    }
+
+    private static void removeSpuriousDocumentAnnotations(CAS aCas)
+    {
+        // Workaround for UIMA adding back deleted DocumentAnnotations
+        // https://issues.apache.org/jira/browse/UIMA-6199
+        // If there is a DocumentMetaData annotation, then we can drop any of the default
+        // UIMA DocumentAnnotation instances (excluding the DocumentMetaData of course)
+        if (!aCas.select(DocumentMetaData.class.getName()).isEmpty()) {
+            aCas.select(CAS.TYPE_NAME_DOCUMENT_ANNOTATION)
+                    .filter(fs -> !DocumentMetaData.class.getName()
+                            .equals(fs.getType().getName()))
+                    .forEach(aCas::removeFsFromIndexes);
+        }
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage;
+
+public enum CasStorageFormat
+{
+    /**
+     * Each annotation file is a Java-serialized {@code CASCompleteSerializer} which includes a
+     * full copy of the type system.
+     */
+    SERIALIZED(".ser"),
+
+    /**
+     * Each annotation file only contains the CAS body in the UIMA compressed binary form 6. The
+     * type system is stored only once per project and type system version.
+     */
+    COMPACT(".bcas");
+
+    private final String extension;
+
+    private CasStorageFormat(String aExtension)
+    {
+        extension = aExtension;
+    }
+
+    public String getExtension()
+    {
+        return extension;
+    }
+}
@@ -96,6 +96,7 @@ public class CasStorageServiceImpl
     private final Set<CasHolder> exclusiveAccessHolders = synchronizedSet(
             newSetFromMap(new WeakHashMap<>()));
     private final Cache<CasKey, CasHolder> sharedAccessCache;
+    private final OffHeapCasCache sharedAccessOffHeapCache;
 
     private final CasStorageDriver driver;
 
@@ -159,11 +160,26 @@ public class CasStorageServiceImpl
                 .recordStats() //
                 .build();
 
+        if (casStorageProperties.getSharedCasOffHeapCacheSize().toBytes() > 0) {
+            sharedAccessOffHeapCache = new OffHeapCasCache(
+                    casStorageProperties.getSharedCasOffHeapCacheSize().toBytes(),
+                    casStorageProperties.getIdleCasEvictionDelay());
+        }
+        else {
+            sharedAccessOffHeapCache = null;
+        }
+
         if (casDoctor == null) {
             log.info("CAS doctor not available - unable to check/repair CASes");
         }
 
-        log.info("CAS cache size: {} instances", casStorageProperties.getSharedCasCacheSize());
+        if (sharedAccessOffHeapCache != null) {
+            log.info("CAS cache size: {} off-heap",
+                    casStorageProperties.getSharedCasOffHeapCacheSize());
+        }
+        else {
+            log.info("CAS cache size: {} instances", casStorageProperties.getSharedCasCacheSize());
+        }
     }
 
     public long getSharedAccessCacheSize()
@@ -176,6 +192,27 @@ public class CasStorageServiceImpl
         return sharedAccessCache.stats();
     }
 
+    public boolean isSharedAccessOffHeapCacheEnabled()
+    {
+        return sharedAccessOffHeapCache != null;
+    }
+
+    public long getSharedAccessOffHeapCacheSize()
+    {
+        return sharedAccessOffHeapCache != null ? sharedAccessOffHeapCache.getEntryCount() : 0;
+    }
+
+    public long getSharedAccessOffHeapCacheBytes()
+    {
+        return sharedAccessOffHeapCache != null ? sharedAccessOffHeapCache.getSizeInBytes() : 0;
+    }
+
+    public CacheStats getSharedAccessOffHeapCacheStats()
+    {
+        return sharedAccessOffHeapCache != null ? sharedAccessOffHeapCache.getStats()
+                : CacheStats.empty();
+    }
+
     @Override
     public void writeCas(SourceDocument aDocument, CAS aCas, String aUserName)
         throws IOException, CasSessionException
@@ -244,6 +281,9 @@ public class CasStorageServiceImpl
             // Drop the CAS from the shared CAS it gets re-loaded on the next access - no effect if
             // the CAS is not present in the shared cache
             sharedAccessCache.invalidate(new CasKey(aDocument, aUserName));
+            if (sharedAccessOffHeapCache != null) {
+                sharedAccessOffHeapCache.invalidate(new CasKey(aDocument, aUserName));
+            }
 
             session.getManagedState(aCas).ifPresent(SessionManagedCas::incrementWriteCount);
         }
@@ -391,12 +431,24 @@ public class CasStorageServiceImpl
                 // Ensure that the CAS is not being re-written and temporarily unavailable while we
                 // check for its existence
                 try (WithExclusiveAccess access = new WithExclusiveAccess(aDocument, aUsername)) {
-                    // Since we promise to only read the CAS, we don't have to worry about it being
-                    // locked to a particular thread...
-                    casHolder = sharedAccessCache.get(new CasKey(aDocument, aUsername),
-                            (key) -> CasHolder.of(key,
-                                    () -> getRealCas(readOrCreateUnmanagedCas(aDocument, aUsername,
-                                            aSupplier, aUpgradeMode))));
+                    // If the off-heap cache is enabled, we materialize a new CAS instance from
+                    // its serialized form on every access instead of keeping CAS instances in
+                    // memory
+                    if (sharedAccessOffHeapCache != null) {
+                        CasKey key = new CasKey(aDocument, aUsername);
+                        casHolder = CasHolder.of(key,
+                                () -> getRealCas(sharedAccessOffHeapCache.get(key,
+                                        () -> readOrCreateUnmanagedCas(aDocument, aUsername,
+                                                aSupplier, aUpgradeMode))));
+                    }
+                    else {
+                        // Since we promise to only read the CAS, we don't have to worry about it
+                        // being locked to a particular thread...
+                        casHolder = sharedAccessCache.get(new CasKey(aDocument, aUsername),
+                                (key) -> CasHolder.of(key,
+                                        () -> getRealCas(readOrCreateUnmanagedCas(aDocument,
+                                                aUsername, aSupplier, aUpgradeMode))));
+                    }
                 }
             }
             // else if the special bypass mode is requested, then we fetch directly from disk
@@ -585,6 +637,9 @@ public class CasStorageServiceImpl
                 sharedCasHolder.setDeleted(true);
             }
             sharedAccessCache.invalidate(key);
+            if (sharedAccessOffHeapCache != null) {
+                sharedAccessOffHeapCache.invalidate(key);
+            }
 
             // Drop the CAS from the exclusive access pool. This is done my marking it as deleted
             // and then releasing it (returning it to the pool). Upon return, the deleted flag
@@ -1003,6 +1058,9 @@ public class CasStorageServiceImpl
         // with an updated type system on next access
         sharedAccessCache.asMap().keySet()
                 .removeIf(key -> Objects.equals(key.getProjectId(), aEvent.getProject().getId()));
+        if (sharedAccessOffHeapCache != null) {
+            sharedAccessOffHeapCache.invalidateProject(aEvent.getProject().getId());
+        }
     }
 
     private void realWriteCas(SourceDocument aDocument, String aUserName, CAS aCas)
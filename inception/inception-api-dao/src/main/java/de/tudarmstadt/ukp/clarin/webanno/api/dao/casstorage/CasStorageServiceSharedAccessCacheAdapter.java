@@ -128,4 +128,52 @@ public class CasStorageServiceSharedAccessCacheAdapter
 
         return getActiveCount() / max;
     }
+
+    @ManagedAttribute
+    public boolean isOffHeapEnabled()
+    {
+        return casStorageService.isSharedAccessOffHeapCacheEnabled();
+    }
+
+    @ManagedAttribute
+    public long getOffHeapHitCount()
+    {
+        return casStorageService.getSharedAccessOffHeapCacheStats().hitCount();
+    }
+
+    @ManagedAttribute
+    public long getOffHeapMissCount()
+    {
+        return casStorageService.getSharedAccessOffHeapCacheStats().missCount();
+    }
+
+    @ManagedAttribute
+    public double getOffHeapHitRate()
+    {
+        return casStorageService.getSharedAccessOffHeapCacheStats().hitRate();
+    }
+
+    @ManagedAttribute
+    public long getOffHeapEvictionCount()
+    {
+        return casStorageService.getSharedAccessOffHeapCacheStats().evictionCount();
+    }
+
+    @ManagedAttribute
+    public long getOffHeapActiveCount()
+    {
+        return casStorageService.getSharedAccessOffHeapCacheSize();
+    }
+
+    @ManagedAttribute
+    public long getOffHeapActiveBytes()
+    {
+        return casStorageService.getSharedAccessOffHeapCacheBytes();
+    }
+
+    @ManagedAttribute
+    public long getOffHeapMaxBytes()
+    {
+        return casStorageProperties.getSharedCasOffHeapCacheSize().toBytes();
+    }
 }
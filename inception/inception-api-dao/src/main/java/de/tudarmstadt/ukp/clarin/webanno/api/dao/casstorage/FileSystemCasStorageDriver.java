@@ -20,19 +20,35 @@ package de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage;
 import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.ANNOTATION_FOLDER;
 import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.DOCUMENT_FOLDER;
 import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.PROJECT_FOLDER;
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getRealCas;
 import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.setDocumentId;
 import static de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasMetadataUtils.failOnConcurrentModification;
 import static java.lang.System.currentTimeMillis;
 import static java.nio.file.Files.move;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-
+import static java.util.stream.Collectors.joining;
+import static org.apache.uima.cas.impl.Serialization.serializeCASComplete;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.regex.Matcher;
@@ -44,31 +60,69 @@ import org.apache.commons.io.comparator.LastModifiedFileComparator;
 import org.apache.commons.lang3.Validate;
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.impl.CASImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil;
 import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.config.BackupProperties;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.config.CasStorageDriverProperties;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
 import de.tudarmstadt.ukp.clarin.webanno.support.wicket.WicketUtil;
 
 public class FileSystemCasStorageDriver
     implements CasStorageDriver
 {
-    public static final String SER_CAS_EXTENSION = ".ser";
+    public static final String SER_CAS_EXTENSION = CasStorageFormat.SERIALIZED.getExtension();
+    public static final String COMPACT_CAS_EXTENSION = CasStorageFormat.COMPACT.getExtension();
     public static final String OLD_EXTENSION = ".old";
+    public static final String TYPE_SYSTEM_FOLDER = "typesystem";
+    public static final String TYPE_SYSTEM_EXTENSION = ".tsi";
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final RepositoryProperties repositoryProperties;
     private final BackupProperties backupProperties;
+    private final CasStorageFormat format;
+
+    /**
+     * Type system hashes by type system instance. UIMA consolidates equal type systems into the
+     * same instance, so this avoids re-hashing the type system on every write.
+     */
+    private final Cache<TypeSystem, String> typeSystemHashes;
+
+    /**
+     * Serialized type systems by project and hash so they do not need to be read from disk on
+     * every read.
+     */
+    private final Cache<String, byte[]> typeSystems;
 
     public FileSystemCasStorageDriver(RepositoryProperties aRepositoryProperties,
             BackupProperties aBackupProperties)
+    {
+        this(aRepositoryProperties, aBackupProperties, new CasStorageDriverProperties());
+    }
+
+    public FileSystemCasStorageDriver(RepositoryProperties aRepositoryProperties,
+            BackupProperties aBackupProperties, CasStorageDriverProperties aDriverProperties)
     {
         repositoryProperties = aRepositoryProperties;
         backupProperties = aBackupProperties;
+        format = aDriverProperties.getFormat();
+
+        typeSystemHashes = Caffeine.newBuilder() //
+                .weakKeys() //
+                .build();
+        typeSystems = Caffeine.newBuilder() //
+                .maximumSize(100) //
+                .build();
+
+        log.info("CAS storage format: {}", format);
 
         if (backupProperties.getInterval() > 0) {
             log.info("CAS backups enabled - interval: {}sec  max-backups: {}  max-age: {}sec",
@@ -84,6 +138,7 @@ public class FileSystemCasStorageDriver
     public CAS readCas(SourceDocument aDocument, String aUser) throws IOException
     {
         File casFile = getCasFile(aDocument.getProject().getId(), aDocument.getId(), aUser);
+        String extension = getExtension(casFile);
         File oldCasFile = new File(casFile.getPath() + OLD_EXTENSION);
 
         String msgOldExists = "";
@@ -92,10 +147,10 @@ public class FileSystemCasStorageDriver
                     "Existance of temporary annotation file [%s] indicates that a previous "
                             + "annotation storage process did not successfully complete. Contact "
                             + "your server administator and request renaming the '%s%s' file "
-                            + "to '.ser' manually on the command line. Advise the administrator to "
+                            + "to '%s' manually on the command line. Advise the administrator to "
                             + "check for sufficient disk space and that the application has the "
                             + "necessary permissions to save files in its data folder.",
-                    oldCasFile, SER_CAS_EXTENSION, OLD_EXTENSION);
+                    oldCasFile, extension, OLD_EXTENSION, extension);
         }
 
         CAS cas;
@@ -114,7 +169,18 @@ public class FileSystemCasStorageDriver
         }
 
         try {
-            CasPersistenceUtils.readSerializedCas(cas, casFile);
+            if (COMPACT_CAS_EXTENSION.equals(extension)) {
+                readCompactCas(aDocument.getProject().getId(), cas, casFile);
+            }
+            else {
+                CasPersistenceUtils.readSerializedCas(cas, casFile);
+            }
+
+            // If the file is not yet in the configured format, convert it now
+            if (!format.getExtension().equals(extension)) {
+                casFile = migrateCas(aDocument, aUser, cas, casFile);
+            }
+
             // Add/update the CAS metadata
             CasMetadataUtils.addOrUpdateCasMetadata(cas, casFile.lastModified(), aDocument, aUser);
         }
@@ -139,25 +205,29 @@ public class FileSystemCasStorageDriver
                 aDocument.getProject().getName(), aDocument.getProject().getId());
 
         File annotationFolder = getAnnotationFolder(aDocument);
-        File currentVersion = new File(annotationFolder, aUserName + SER_CAS_EXTENSION);
-        File oldVersion = new File(annotationFolder, aUserName + SER_CAS_EXTENSION + OLD_EXTENSION);
+        // If the annotations are still stored in a different format, then the file in that format
+        // is the one that gets replaced
+        File existingVersion = getCasFile(aDocument, aUserName);
+        File currentVersion = new File(annotationFolder, aUserName + format.getExtension());
+        File oldVersion = new File(existingVersion.getPath() + OLD_EXTENSION);
 
         // Check if there was a concurrent change to the file on disk
-        if (currentVersion.exists()) {
-            failOnConcurrentModification(aCas, currentVersion, aDocument, aUserName);
+        if (existingVersion.exists()) {
+            failOnConcurrentModification(aCas, existingVersion, aDocument, aUserName);
         }
 
         // Save current version
         try {
             // Make a backup of the current version of the file before overwriting
-            if (currentVersion.exists()) {
-                move(currentVersion.toPath(), oldVersion.toPath());
+            if (existingVersion.exists()) {
+                move(existingVersion.toPath(), oldVersion.toPath());
             }
 
-            // Now write the new version to "<username>.ser" or CURATION_USER.ser
+            // Now write the new version to "<username>.<ext>" or "CURATION_USER.<ext>" where the
+            // extension depends on the configured storage format
             long start = currentTimeMillis();
             setDocumentId(aCas, aUserName);
-            writeSerializedCas(aCas, currentVersion);
+            writeCas(aDocument.getProject().getId(), aCas, currentVersion);
             long duration = currentTimeMillis() - start;
 
             log.debug(
@@ -181,7 +251,10 @@ public class FileSystemCasStorageDriver
                     + "annotations: [{}]", aUserName, aDocument.getName(), aDocument.getId(),
                     aDocument.getProject().getName(), aDocument.getProject().getId(), oldVersion);
             try {
-                move(oldVersion.toPath(), currentVersion.toPath(), REPLACE_EXISTING);
+                if (!currentVersion.equals(existingVersion)) {
+                    Files.deleteIfExists(currentVersion.toPath());
+                }
+                move(oldVersion.toPath(), existingVersion.toPath(), REPLACE_EXISTING);
             }
             catch (Exception ex) {
                 log.error("Unable to restore previous annotations: [{}]", oldVersion, ex);
@@ -250,11 +323,16 @@ public class FileSystemCasStorageDriver
         // Determine the reference point in time based on the current version
         long now = aCurrentVersion.lastModified();
 
-        // Get all history files for the current user
+        // Get all history files for the current user. History files written in another storage
+        // format before the format was changed are included, so they are rotated out as well.
+        String extensions = Arrays.stream(CasStorageFormat.values())
+                .map(f -> Pattern.quote(f.getExtension())) //
+                .collect(joining("|"));
         File[] history = annotationFolder.listFiles(new FileFilter()
         {
             private final Matcher matcher = Pattern
-                    .compile(Pattern.quote(aUserName) + "\\.ser\\.[0-9]+\\.bak").matcher("");
+                    .compile(Pattern.quote(aUserName) + "(" + extensions + ")\\.[0-9]+\\.bak")
+                    .matcher("");
 
             @Override
             public boolean accept(File aFile)
@@ -269,7 +347,8 @@ public class FileSystemCasStorageDriver
 
         // Check if we need to make a new history file
         boolean historyFileCreated = false;
-        File historyFile = new File(annotationFolder, aUserName + ".ser." + now + ".bak");
+        File historyFile = new File(annotationFolder,
+                aUserName + format.getExtension() + "." + now + ".bak");
         if (history.length == 0) {
             // If there is no history yet but we should keep history, then we create a
             // history file in any case.
@@ -348,7 +427,31 @@ public class FileSystemCasStorageDriver
         Validate.notNull(aDocument, "Source document must be specified");
         Validate.notBlank(aUser, "User must be specified");
 
-        try (InputStream is = Files.newInputStream(getCasFile(aDocument, aUser).toPath())) {
+        File casFile = getCasFile(aDocument, aUser);
+
+        // Exported annotations always use the serialized format which is also understood by
+        // older versions
+        if (COMPACT_CAS_EXTENSION.equals(getExtension(casFile))) {
+            CAS cas;
+            try {
+                cas = WebAnnoCasUtil.createCas();
+            }
+            catch (UIMAException e) {
+                throw new IOException("Unable to create empty CAS", e);
+            }
+
+            readCompactCas(aDocument.getProject().getId(), cas, casFile);
+
+            CAS realCas = getRealCas(cas);
+            synchronized (((CASImpl) realCas).getBaseCAS()) {
+                ObjectOutputStream os = new ObjectOutputStream(aStream);
+                os.writeObject(serializeCASComplete((CASImpl) realCas));
+                os.flush();
+            }
+            return;
+        }
+
+        try (InputStream is = Files.newInputStream(casFile.toPath())) {
             IOUtils.copyLarge(is, aStream);
         }
     }
@@ -360,25 +463,217 @@ public class FileSystemCasStorageDriver
         Validate.notNull(aDocument, "Source document must be specified");
         Validate.notBlank(aUser, "User must be specified");
 
-        try (OutputStream os = Files.newOutputStream(getCasFile(aDocument, aUser).toPath())) {
+        // Imported annotations are always in the serialized format. If a different format is
+        // configured, the file is migrated when it is read for the first time.
+        File annotationFolder = getAnnotationFolder(aDocument);
+        try (OutputStream os = Files
+                .newOutputStream(new File(annotationFolder, aUser + SER_CAS_EXTENSION).toPath())) {
             IOUtils.copyLarge(aStream, os);
         }
+        Files.deleteIfExists(new File(annotationFolder, aUser + COMPACT_CAS_EXTENSION).toPath());
     }
 
+    /**
+     * @return the file in which the annotations of the given user are currently stored. If the
+     *         annotations exist in the configured storage format, that file is returned. Otherwise,
+     *         if they exist in another format, that file is returned. If they do not exist at all,
+     *         the file in the configured storage format is returned.
+     */
     private File getCasFile(long aProjectId, long aDocumentId, String aUser) throws IOException
     {
-        return new File(getAnnotationFolder(aProjectId, aDocumentId), aUser + SER_CAS_EXTENSION);
+        File annotationFolder = getAnnotationFolder(aProjectId, aDocumentId);
+
+        File casFile = new File(annotationFolder, aUser + format.getExtension());
+        if (casFile.exists()) {
+            return casFile;
+        }
+
+        for (CasStorageFormat f : CasStorageFormat.values()) {
+            File otherFile = new File(annotationFolder, aUser + f.getExtension());
+            if (f != format && otherFile.exists()) {
+                return otherFile;
+            }
+        }
+
+        return casFile;
+    }
+
+    private static String getExtension(File aCasFile)
+    {
+        return aCasFile.getName().substring(aCasFile.getName().lastIndexOf('.'));
     }
 
-    private void writeSerializedCas(CAS aCas, File aFile) throws IOException
+    private void writeCas(long aProjectId, CAS aCas, File aFile) throws IOException
     {
-        CasPersistenceUtils.writeSerializedCas(aCas, aFile);
+        switch (format) {
+        case COMPACT:
+            writeCompactCas(aProjectId, aCas, aFile);
+            break;
+        case SERIALIZED:
+            CasPersistenceUtils.writeSerializedCas(aCas, aFile);
+            break;
+        default:
+            throw new IllegalStateException("Unsupported CAS storage format [" + format + "]");
+        }
+    }
+
+    /**
+     * Writes the given CAS (which has been read from a file in another format) to a file in the
+     * configured format and removes the original file. The timestamp of the original file is
+     * retained so that the conversion is not mistaken for a concurrent modification.
+     * 
+     * @return the file the CAS has been migrated to or the original file if the migration has
+     *         been taken care of by another thread in the meantime.
+     */
+    private File migrateCas(SourceDocument aDocument, String aUser, CAS aCas, File aCasFile)
+        throws IOException
+    {
+        File annotationFolder = aCasFile.getParentFile();
+        File targetFile = new File(annotationFolder, aUser + format.getExtension());
+        long originalSize = aCasFile.length();
+        File tempFile = File.createTempFile(aUser + format.getExtension(), ".tmp",
+                annotationFolder);
+
+        try {
+            writeCas(aDocument.getProject().getId(), aCas, tempFile);
+            tempFile.setLastModified(aCasFile.lastModified());
+
+            // Never replace an existing file here - if there is one, it has been written after
+            // we started reading and it is more recent than what we would put there
+            move(tempFile.toPath(), targetFile.toPath());
+        }
+        catch (FileAlreadyExistsException e) {
+            return targetFile;
+        }
+        finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+
+        Files.deleteIfExists(aCasFile.toPath());
+
+        log.info("Migrated annotations of user [{}] on document [{}]({}) in project [{}]({}) "
+                + "to {} format: {} -> {} bytes", aUser, aDocument.getName(), aDocument.getId(),
+                aDocument.getProject().getName(), aDocument.getProject().getId(), format,
+                originalSize, targetFile.length());
+
+        return targetFile;
+    }
+
+    private void writeCompactCas(long aProjectId, CAS aCas, File aFile) throws IOException
+    {
+        FileUtils.forceMkdir(aFile.getParentFile());
+
+        String typeSystemHash = writeTypeSystemIfMissing(aProjectId, aCas);
+
+        try (DataOutputStream os = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(aFile.toPath())))) {
+            os.writeUTF(typeSystemHash);
+            CasPersistenceUtils.writeCompactCas(aCas, os);
+        }
+    }
+
+    private void readCompactCas(long aProjectId, CAS aCas, File aFile) throws IOException
+    {
+        try (DataInputStream is = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(aFile.toPath())))) {
+            String typeSystemHash = is.readUTF();
+            byte[] typeSystem = readTypeSystem(aProjectId, typeSystemHash);
+            CasPersistenceUtils.readCompactCas(aCas, is, new ByteArrayInputStream(typeSystem));
+        }
+    }
+
+    /**
+     * Stores the type system of the given CAS in the type system folder of the project unless a
+     * type system with the same hash has already been stored there.
+     * 
+     * @return the hash of the type system.
+     */
+    private String writeTypeSystemIfMissing(long aProjectId, CAS aCas) throws IOException
+    {
+        TypeSystem ts = getRealCas(aCas).getTypeSystem();
+
+        String hash = typeSystemHashes.getIfPresent(ts);
+        byte[] serializedTypeSystem = null;
+        if (hash == null) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            CasPersistenceUtils.writeTypeSystem(aCas, bos);
+            serializedTypeSystem = bos.toByteArray();
+            hash = sha256(serializedTypeSystem);
+        }
+
+        File typeSystemFile = getTypeSystemFile(aProjectId, hash);
+        if (!typeSystemFile.exists()) {
+            if (serializedTypeSystem == null) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                CasPersistenceUtils.writeTypeSystem(aCas, bos);
+                serializedTypeSystem = bos.toByteArray();
+            }
+
+            FileUtils.forceMkdir(typeSystemFile.getParentFile());
+            Path tempFile = Files.createTempFile(typeSystemFile.getParentFile().toPath(), hash,
+                    ".tmp");
+            try {
+                Files.write(tempFile, serializedTypeSystem);
+                // If another thread stored the same type system in the meantime, it does not
+                // matter which of the two copies ends up being used
+                move(tempFile, typeSystemFile.toPath(), ATOMIC_MOVE);
+                log.debug("Stored type system [{}] for project [{}]", hash, aProjectId);
+            }
+            finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+
+        typeSystemHashes.put(ts, hash);
+
+        return hash;
+    }
+
+    private byte[] readTypeSystem(long aProjectId, String aHash) throws IOException
+    {
+        byte[] typeSystem = typeSystems.getIfPresent(aProjectId + "/" + aHash);
+        if (typeSystem != null) {
+            return typeSystem;
+        }
+
+        File typeSystemFile = getTypeSystemFile(aProjectId, aHash);
+        if (!typeSystemFile.exists()) {
+            throw new FileNotFoundException(
+                    "Type system [" + aHash + "] not found in project [" + aProjectId + "]");
+        }
+
+        typeSystem = Files.readAllBytes(typeSystemFile.toPath());
+        typeSystems.put(aProjectId + "/" + aHash, typeSystem);
+        return typeSystem;
+    }
+
+    private File getTypeSystemFile(long aProjectId, String aHash)
+    {
+        return new File(repositoryProperties.getPath(), "/" + PROJECT_FOLDER + "/" + aProjectId
+                + "/" + TYPE_SYSTEM_FOLDER + "/" + aHash + TYPE_SYSTEM_EXTENSION);
+    }
+
+    private static String sha256(byte[] aData)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return String.format("%064x", new BigInteger(1, digest.digest(aData)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     @Override
     public boolean deleteCas(SourceDocument aDocument, String aUser) throws IOException
     {
-        return new File(getAnnotationFolder(aDocument), aUser + SER_CAS_EXTENSION).delete();
+        File annotationFolder = getAnnotationFolder(aDocument);
+
+        boolean deleted = false;
+        for (CasStorageFormat f : CasStorageFormat.values()) {
+            deleted |= new File(annotationFolder, aUser + f.getExtension()).delete();
+        }
+        return deleted;
     }
 
     @Override
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getRealCas;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Objects;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.TypeSystem;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasHolder.SupplierThrowingException;
+
+/**
+ * Cache for shared read-only CASes which keeps the CASes in serialized form in direct (off-heap)
+ * buffers. The cache is bounded by the number of bytes used by the serialized CASes. A new CAS
+ * instance is materialized from the serialized form on every access. This keeps long-lived CAS
+ * data out of the heap while still avoiding to load, repair and upgrade the CAS from storage on
+ * every access.
+ * <p>
+ * <b>Note:</b> direct buffers count against the {@code -XX:MaxDirectMemorySize} limit of the JVM
+ * which must be larger than the maximum size of this cache.
+ */
+public class OffHeapCasCache
+{
+    private final long maximumSize;
+    private final Cache<CasKey, Entry> cache;
+
+    /**
+     * Serialized type systems by type system instance. UIMA consolidates equal type systems into
+     * the same instance, so all CASes of a project usually share a single serialized type system.
+     */
+    private final Cache<TypeSystem, byte[]> typeSystems;
+
+    public OffHeapCasCache(long aMaximumSize, Duration aExpireAfterAccess)
+    {
+        maximumSize = aMaximumSize;
+
+        cache = Caffeine.newBuilder() //
+                .maximumWeight(aMaximumSize) //
+                .weigher((CasKey key, Entry entry) -> entry.size()) //
+                .expireAfterAccess(aExpireAfterAccess) //
+                .recordStats() //
+                .build();
+
+        typeSystems = Caffeine.newBuilder() //
+                .weakKeys() //
+                .build();
+    }
+
+    /**
+     * Materializes the CAS for the given key from the cache. If the CAS is not in the cache, it is
+     * obtained from the given loader and added to the cache.
+     */
+    public CAS get(CasKey aKey, SupplierThrowingException<CAS> aLoader) throws Exception
+    {
+        Entry entry = cache.getIfPresent(aKey);
+        if (entry != null) {
+            return entry.materialize();
+        }
+
+        CAS cas = aLoader.get();
+        cache.put(aKey, serialize(cas));
+        return cas;
+    }
+
+    public void invalidate(CasKey aKey)
+    {
+        cache.invalidate(aKey);
+    }
+
+    public void invalidateProject(long aProjectId)
+    {
+        cache.asMap().keySet().removeIf(key -> Objects.equals(key.getProjectId(), aProjectId));
+    }
+
+    public CacheStats getStats()
+    {
+        return cache.stats();
+    }
+
+    public long getEntryCount()
+    {
+        return cache.estimatedSize();
+    }
+
+    public long getSizeInBytes()
+    {
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0l);
+    }
+
+    public long getMaximumSizeInBytes()
+    {
+        return maximumSize;
+    }
+
+    private Entry serialize(CAS aCas) throws IOException
+    {
+        CAS realCas = getRealCas(aCas);
+
+        byte[] typeSystem = typeSystems.get(realCas.getTypeSystem(), ts -> {
+            try {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                CasPersistenceUtils.writeTypeSystem(realCas, bos);
+                return bos.toByteArray();
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        CasPersistenceUtils.writeCompactCas(realCas, bos);
+
+        ByteBuffer data = ByteBuffer.allocateDirect(bos.size());
+        data.put(bos.toByteArray());
+        data.flip();
+
+        return new Entry(data.asReadOnlyBuffer(), typeSystem);
+    }
+
+    private static class Entry
+    {
+        private final ByteBuffer data;
+        private final byte[] typeSystem;
+
+        public Entry(ByteBuffer aData, byte[] aTypeSystem)
+        {
+            data = aData;
+            typeSystem = aTypeSystem;
+        }
+
+        public int size()
+        {
+            return data.capacity();
+        }
+
+        public CAS materialize() throws IOException
+        {
+            CAS cas;
+            try {
+                cas = WebAnnoCasUtil.createCas();
+            }
+            catch (UIMAException e) {
+                throw new IOException("Unable to create empty CAS", e);
+            }
+
+            CasPersistenceUtils.readCompactCas(cas, new ByteBufferInputStream(data.duplicate()),
+                    new ByteArrayInputStream(typeSystem));
+
+            return cas;
+        }
+    }
+
+    private static class ByteBufferInputStream
+        extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer aBuffer)
+        {
+            buffer = aBuffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] aBytes, int aOffset, int aLength)
+        {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int length = Math.min(aLength, buffer.remaining());
+            buffer.get(aBytes, aOffset, length);
+            return length;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
@@ -19,6 +19,8 @@ package de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.config;
 
 import java.time.Duration;
 
+import org.springframework.util.unit.DataSize;
+
 public interface CasStorageProperties
 {
     /**
@@ -37,4 +39,11 @@ public interface CasStorageProperties
      * @return number of CAS instances that should be kept in memory for shared-read-only access.
      */
     long getSharedCasCacheSize();
+
+    /**
+     * @return maximum amount of memory used for keeping shared read-only CASes in serialized form
+     *         outside the heap. If this is larger than zero, shared read-only CASes are kept in
+     *         this off-heap cache instead of being kept in memory as CAS instances.
+     */
+    DataSize getSharedCasOffHeapCacheSize();
 }
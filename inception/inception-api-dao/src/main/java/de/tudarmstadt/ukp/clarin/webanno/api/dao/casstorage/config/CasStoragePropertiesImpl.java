@@ -20,6 +20,7 @@ package de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.config;
 import java.time.Duration;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 /**
  * <p>
@@ -36,6 +37,8 @@ public class CasStoragePropertiesImpl
 
     private long sharedCasCacheSize = getDefaultCasCacheSize();
 
+    private DataSize sharedCasOffHeapCacheSize = DataSize.ofBytes(0);
+
     @Override
     public Duration getIdleCasEvictionDelay()
     {
@@ -69,6 +72,17 @@ public class CasStoragePropertiesImpl
         sharedCasCacheSize = aSharedCasCacheSize;
     }
 
+    @Override
+    public DataSize getSharedCasOffHeapCacheSize()
+    {
+        return sharedCasOffHeapCacheSize;
+    }
+
+    public void setSharedCasOffHeapCacheSize(DataSize aSharedCasOffHeapCacheSize)
+    {
+        sharedCasOffHeapCacheSize = aSharedCasOffHeapCacheSize;
+    }
+
     private static final long MB = 1024 * 1024;
 
     public static long getDefaultCasCacheSize()
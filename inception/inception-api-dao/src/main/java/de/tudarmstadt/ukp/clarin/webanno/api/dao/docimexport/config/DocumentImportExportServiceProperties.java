@@ -22,4 +22,6 @@ public interface DocumentImportExportServiceProperties
     int getMaxTokens();
 
     int getMaxSentences();
+
+    int getBulkExportThreads();
 }
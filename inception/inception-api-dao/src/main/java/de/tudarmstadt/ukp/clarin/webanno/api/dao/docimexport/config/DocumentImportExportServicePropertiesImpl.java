@@ -25,6 +25,8 @@ public class DocumentImportExportServicePropertiesImpl
 {
     private int maxTokens = 2_000_000;
     private int maxSentences = 20_000;
+    private int bulkExportThreads = Math.max(1,
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
 
     @Override
     public int getMaxTokens()
@@ -47,4 +49,15 @@ public class DocumentImportExportServicePropertiesImpl
     {
         maxSentences = aMaxSentences;
     }
+
+    @Override
+    public int getBulkExportThreads()
+    {
+        return bulkExportThreads;
+    }
+
+    public void setBulkExportThreads(int aBulkExportThreads)
+    {
+        bulkExportThreads = aBulkExportThreads;
+    }
 }
@@ -21,13 +21,17 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.withProjectLo
 import static de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectExportTaskState.NOT_STARTED;
 import static de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectExportTaskState.RUNNING;
 import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
 import static org.apache.commons.lang3.time.DurationFormatUtils.formatDurationWords;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -45,6 +49,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.collections4.SetUtils;
 import org.apache.commons.io.FileUtils;
@@ -75,7 +80,6 @@ import de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectImportRequest;
 import de.tudarmstadt.ukp.clarin.webanno.export.model.ExportedProject;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
-import de.tudarmstadt.ukp.clarin.webanno.support.ZipUtils;
 import de.tudarmstadt.ukp.clarin.webanno.support.logging.LogMessage;
 
 /**
@@ -161,30 +165,14 @@ public class ProjectExportServiceImpl
         throws ProjectExportException, IOException
     {
         boolean success = false;
-        File exportTempDir = null;
+        File projectZipFile = null;
         try (var logCtx = withProjectLogger(aRequest.getProject())) {
-            // Directory to store source documents and annotation documents
-            exportTempDir = File.createTempFile("webanno-project", "export");
-            exportTempDir.delete();
-            exportTempDir.mkdirs();
-
             // Target file
-            File projectZipFile = new File(exportTempDir.getAbsolutePath() + ".zip");
-
-            ExportedProject exProjekt = exportProject(aRequest, aMonitor, exportTempDir);
+            projectZipFile = File.createTempFile("webanno-project", "export.zip");
 
-            // all metadata and project settings data from the database as JSON file
-            File projectSettings = File.createTempFile(EXPORTED_PROJECT, ".json");
-            JSONUtil.generatePrettyJson(exProjekt, projectSettings);
-            FileUtils.copyFileToDirectory(projectSettings, exportTempDir);
-
-            try {
-                ZipUtils.zipFolder(exportTempDir, projectZipFile);
-            }
-            finally {
-                FileUtils.forceDelete(projectSettings);
-                System.gc();
-                FileUtils.forceDelete(exportTempDir);
+            try (OutputStream os = new BufferedOutputStream(
+                    new FileOutputStream(projectZipFile))) {
+                exportProject(aRequest, aMonitor, os);
             }
 
             success = true;
@@ -192,21 +180,42 @@ public class ProjectExportServiceImpl
             return projectZipFile;
         }
         finally {
-            if (!success && exportTempDir != null) {
+            if (!success && projectZipFile != null) {
                 try {
-                    FileUtils.forceDelete(exportTempDir);
+                    FileUtils.forceDelete(projectZipFile);
                 }
                 catch (IOException e) {
                     aMonitor.addMessage(LogMessage.error(this,
-                            "Unable to delete temporary export directory [%s]", exportTempDir));
-                    log.error("Unable to delete temporary export directory [{}]", exportTempDir);
+                            "Unable to delete incomplete export file [%s]", projectZipFile));
+                    log.error("Unable to delete incomplete export file [{}]", projectZipFile);
                 }
             }
         }
     }
 
+    @Override
+    @Transactional
+    public void exportProject(ProjectExportRequest aRequest, ProjectExportTaskMonitor aMonitor,
+            OutputStream aOutputStream)
+        throws ProjectExportException, IOException
+    {
+        try (var logCtx = withProjectLogger(aRequest.getProject())) {
+            // The exporters write their data directly into the ZIP file
+            ZipOutputStream zip = new ZipOutputStream(aOutputStream);
+
+            ExportedProject exProjekt = exportProject(aRequest, aMonitor, zip);
+
+            // all metadata and project settings data from the database as JSON file
+            zip.putNextEntry(new ZipEntry(EXPORTED_PROJECT + ".json"));
+            zip.write(JSONUtil.toPrettyJsonString(exProjekt).getBytes(UTF_8));
+            zip.closeEntry();
+
+            zip.finish();
+        }
+    }
+
     private ExportedProject exportProject(ProjectExportRequest aRequest,
-            ProjectExportTaskMonitor aMonitor, File aStage)
+            ProjectExportTaskMonitor aMonitor, ZipOutputStream aStage)
         throws ProjectExportException, IOException
     {
         Deque<ProjectExporter> deque = new LinkedList<>(exporters);
@@ -23,7 +23,9 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.PROJECT_FOLDE
 import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.INITIAL_CAS_PSEUDO_USER;
 import static de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectExportRequest.FORMAT_AUTO;
 import static de.tudarmstadt.ukp.clarin.webanno.model.Mode.ANNOTATION;
+import static de.tudarmstadt.ukp.clarin.webanno.support.concurrent.FutureUtils.getResult;
 import static de.tudarmstadt.ukp.clarin.webanno.support.io.FastIOUtils.copy;
+import static de.tudarmstadt.ukp.clarin.webanno.support.logging.MDCContext.withCallerContext;
 import static java.lang.Math.ceil;
 import static java.lang.System.currentTimeMillis;
 import static java.util.Arrays.asList;
@@ -32,25 +34,29 @@ import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
-import static org.apache.commons.io.FileUtils.copyFileToDirectory;
-import static org.apache.commons.io.FileUtils.forceDelete;
 import static org.apache.commons.io.FileUtils.forceMkdir;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.time.DurationFormatUtils;
@@ -88,9 +94,20 @@ import de.tudarmstadt.ukp.clarin.webanno.tsv.WebAnnoTsv3FormatSupport;
 public class AnnotationDocumentExporter
     implements ProjectExporter
 {
-    private static final String ANNOTATION_ORIGINAL_FOLDER = "/annotation/";
+    private static final String ANNOTATION_ORIGINAL = "annotation";
     private static final String ANNOTATION_AS_SERIALISED_CAS = "annotation_ser";
-    private static final String ANNOTATION_CAS_FOLDER = "/" + ANNOTATION_AS_SERIALISED_CAS + "/";
+
+    /**
+     * Number of threads converting documents in parallel during export.
+     */
+    private static final int EXPORT_THREADS = Math.max(1,
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Maximum number of converted documents waiting to be written. If the writing falls behind,
+     * no further documents are submitted for conversion until the backlog has been written.
+     */
+    private static final int MAX_PENDING_DOCUMENTS = 2 * EXPORT_THREADS;
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -125,10 +142,27 @@ public class AnnotationDocumentExporter
     @Override
     public void exportData(ProjectExportRequest aRequest, ProjectExportTaskMonitor aMonitor,
             ExportedProject aExProject, File aStage)
-        throws UIMAException, ClassNotFoundException, IOException
+        throws UIMAException, IOException
+    {
+        exportAnnotationDocuments(aMonitor, aRequest.getProject(), aExProject);
+        exportAnnotationDocumentContents(aRequest, aMonitor, aExProject, (aName, aData) -> {
+            File file = new File(aStage, aName);
+            forceMkdir(file.getParentFile());
+            Files.write(file.toPath(), aData);
+        });
+    }
+
+    @Override
+    public void exportData(ProjectExportRequest aRequest, ProjectExportTaskMonitor aMonitor,
+            ExportedProject aExProject, ZipOutputStream aStage)
+        throws UIMAException, IOException
     {
         exportAnnotationDocuments(aMonitor, aRequest.getProject(), aExProject);
-        exportAnnotationDocumentContents(aRequest, aMonitor, aExProject, aStage);
+        exportAnnotationDocumentContents(aRequest, aMonitor, aExProject, (aName, aData) -> {
+            aStage.putNextEntry(new ZipEntry(aName));
+            aStage.write(aData);
+            aStage.closeEntry();
+        });
     }
 
     private void exportAnnotationDocuments(ProjectExportTaskMonitor aMonitor, Project aProject,
@@ -153,15 +187,21 @@ public class AnnotationDocumentExporter
         aExProject.setAnnotationDocuments(annotationDocuments);
     }
 
+    /**
+     * Converts the annotations of the documents on a bounded pool of threads. The converted data is
+     * written in the order of the documents by the calling thread. At most
+     * {@link #MAX_PENDING_DOCUMENTS} documents are converted ahead of the writing.
+     */
     private void exportAnnotationDocumentContents(ProjectExportRequest aRequest,
-            ProjectExportTaskMonitor aMonitor, ExportedProject aExProject, File aStage)
-        throws UIMAException, ClassNotFoundException, IOException
+            ProjectExportTaskMonitor aMonitor, ExportedProject aExProject, EntryWriter aWriter)
+        throws UIMAException, IOException
     {
         Project project = aRequest.getProject();
 
         // The export process may store project-related information in this context to ensure it
-        // is looked up only once during the bulk operation and the DB is not hit too often.
-        Map<Pair<Project, String>, Object> bulkOperationContext = new HashMap<>();
+        // is looked up only once during the bulk operation and the DB is not hit too often. The
+        // context is shared by the conversion threads.
+        Map<Pair<Project, String>, Object> bulkOperationContext = new ConcurrentHashMap<>();
 
         List<SourceDocument> documents = documentService.listSourceDocuments(project);
         int i = 1;
@@ -178,40 +218,10 @@ public class AnnotationDocumentExporter
         LoadingCache<String, User> usersCache = Caffeine.newBuilder()
                 .build(key -> userRepository.get(key));
 
-        for (SourceDocument srcDoc : documents) {
-            try (CasStorageSession session = CasStorageSession.openNested()) {
-                //
-                // Export initial CASes
-                //
-
-                // The initial CAS must always be exported to ensure that the converted source
-                // document will *always* have the state it had at the time of the initial import.
-                // We we do have a reliably initial CAS and instead lazily convert whenever an
-                // annotator starts annotating, then we could end up with two annotators having two
-                // different versions of their CAS e.g. if there was a code change in the reader
-                // component that affects its output.
-
-                // If the initial CAS does not exist yet, it must be created before export.
-                if (!documentService.existsInitialCas(srcDoc)) {
-                    documentService.createOrReadInitialCas(srcDoc);
-                }
-
-                File targetDir = new File(aStage, ANNOTATION_CAS_FOLDER + srcDoc.getName());
-                forceMkdir(targetDir);
-
-                try (OutputStream os = new FileOutputStream(
-                        new File(targetDir, INITIAL_CAS_PSEUDO_USER + ".ser"))) {
-                    documentService.exportCas(srcDoc, INITIAL_CAS_PSEUDO_USER, os);
-                }
-
-                log.info("Exported annotation document content for user [" + INITIAL_CAS_PSEUDO_USER
-                        + "] for source document [" + srcDoc.getId() + "] in project ["
-                        + project.getName() + "] with id [" + project.getId() + "]");
-
-                //
-                // Export per-user annotation document
-                //
-
+        ExecutorService executor = Executors.newFixedThreadPool(EXPORT_THREADS);
+        Deque<Future<List<Pair<String, byte[]>>>> pending = new ArrayDeque<>();
+        try {
+            for (SourceDocument srcDoc : documents) {
                 // Determine which format to use for export
                 String formatId = FORMAT_AUTO.equals(aRequest.getFormat()) ? srcDoc.getFormat()
                         : aRequest.getFormat();
@@ -227,49 +237,117 @@ public class AnnotationDocumentExporter
                             return fallbackFormat;
                         });
 
-                // Export annotations from regular users
+                // copy annotation document only for existing users and the state of the
+                // annotation document is not NEW/IGNORE
+                List<AnnotationDocument> annDocs = new ArrayList<>();
                 for (AnnotationDocument annDoc : srcToAnnIdx.computeIfAbsent(srcDoc,
                         key -> emptyList())) {
-
-                    // copy annotation document only for existing users and the state of the
-                    // annotation document is not NEW/IGNORE
                     if (usersCache.get(annDoc.getUser()) != null
                             && documentService.existsCas(annDoc)
                             && !annDoc.getState().equals(AnnotationDocumentState.NEW)
                             && !annDoc.getState().equals(AnnotationDocumentState.IGNORE)) {
-
-                        File annSerDir = new File(aStage.getAbsolutePath() + ANNOTATION_CAS_FOLDER
-                                + srcDoc.getName());
-                        forceMkdir(annSerDir);
-                        try (OutputStream os = new FileOutputStream(
-                                new File(annSerDir, annDoc.getUser() + ".ser"))) {
-                            documentService.exportCas(srcDoc, annDoc.getUser(), os);
-                        }
-
-                        File annDocDir = new File(aStage.getAbsolutePath()
-                                + ANNOTATION_ORIGINAL_FOLDER + srcDoc.getName());
-                        File annFile = null;
-                        try {
-                            annFile = importExportService.exportAnnotationDocument(srcDoc,
-                                    annDoc.getUser(), format, annDoc.getUser(), ANNOTATION, false,
-                                    bulkOperationContext);
-                            forceMkdir(annDocDir);
-                            copyFileToDirectory(annFile, annDocDir);
-                        }
-                        finally {
-                            forceDelete(annFile);
-                        }
-
-                        log.info("Exported annotation document content for user ["
-                                + annDoc.getUser() + "] for source document [" + srcDoc.getId()
-                                + "] in project [" + project.getName() + "] with id ["
-                                + project.getId() + "]");
+                        annDocs.add(annDoc);
                     }
                 }
+
+                // The conversion threads need the logging context of the caller, e.g. for the
+                // repository path
+                pending.add(executor.submit(withCallerContext(
+                        () -> exportAnnotationDocumentContents(project, srcDoc, annDocs, format,
+                                bulkOperationContext))));
+
+                while (pending.size() >= MAX_PENDING_DOCUMENTS) {
+                    writeEntries(pending.poll(), aWriter);
+                    aMonitor.setProgress(
+                            initProgress + (int) ceil(((double) i) / documents.size() * 80.0));
+                    i++;
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                writeEntries(pending.poll(), aWriter);
+                aMonitor.setProgress(
+                        initProgress + (int) ceil(((double) i) / documents.size() * 80.0));
+                i++;
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Pair<String, byte[]>> exportAnnotationDocumentContents(Project aProject,
+            SourceDocument aSrcDoc, List<AnnotationDocument> aAnnDocs, FormatSupport aFormat,
+            Map<Pair<Project, String>, Object> aBulkOperationContext)
+        throws UIMAException, IOException
+    {
+        List<Pair<String, byte[]>> entries = new ArrayList<>();
+        String serDir = ANNOTATION_AS_SERIALISED_CAS + "/" + aSrcDoc.getName() + "/";
+        String annDocDir = ANNOTATION_ORIGINAL + "/" + aSrcDoc.getName() + "/";
+
+        try (CasStorageSession session = CasStorageSession.openNested()) {
+            //
+            // Export initial CASes
+            //
+
+            // The initial CAS must always be exported to ensure that the converted source
+            // document will *always* have the state it had at the time of the initial import.
+            // We we do have a reliably initial CAS and instead lazily convert whenever an
+            // annotator starts annotating, then we could end up with two annotators having two
+            // different versions of their CAS e.g. if there was a code change in the reader
+            // component that affects its output.
+
+            // If the initial CAS does not exist yet, it must be created before export.
+            if (!documentService.existsInitialCas(aSrcDoc)) {
+                documentService.createOrReadInitialCas(aSrcDoc);
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            documentService.exportCas(aSrcDoc, INITIAL_CAS_PSEUDO_USER, buffer);
+            entries.add(Pair.of(serDir + INITIAL_CAS_PSEUDO_USER + ".ser", buffer.toByteArray()));
+
+            log.info("Exported annotation document content for user [" + INITIAL_CAS_PSEUDO_USER
+                    + "] for source document [" + aSrcDoc.getId() + "] in project ["
+                    + aProject.getName() + "] with id [" + aProject.getId() + "]");
+
+            //
+            // Export per-user annotation document
+            //
+            for (AnnotationDocument annDoc : aAnnDocs) {
+                buffer = new ByteArrayOutputStream();
+                documentService.exportCas(aSrcDoc, annDoc.getUser(), buffer);
+                entries.add(Pair.of(serDir + annDoc.getUser() + ".ser", buffer.toByteArray()));
+
+                buffer = new ByteArrayOutputStream();
+                String fileName = importExportService.exportAnnotationDocumentToStream(aSrcDoc,
+                        annDoc.getUser(), aFormat, annDoc.getUser(), ANNOTATION, false, buffer,
+                        aBulkOperationContext);
+                entries.add(Pair.of(annDocDir + fileName, buffer.toByteArray()));
+
+                log.info("Exported annotation document content for user [" + annDoc.getUser()
+                        + "] for source document [" + aSrcDoc.getId() + "] in project ["
+                        + aProject.getName() + "] with id [" + aProject.getId() + "]");
             }
+        }
+
+        return entries;
+    }
 
-            aMonitor.setProgress(initProgress + (int) ceil(((double) i) / documents.size() * 80.0));
-            i++;
+    private void writeEntries(Future<List<Pair<String, byte[]>>> aEntries, EntryWriter aWriter)
+        throws UIMAException, IOException
+    {
+        List<Pair<String, byte[]>> entries;
+        try {
+            entries = getResult(aEntries);
+        }
+        catch (InterruptedException e) {
+            // Cancelling the export interrupts the export thread
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export has been interrupted");
+        }
+
+        for (Pair<String, byte[]> entry : entries) {
+            aWriter.write(entry.getKey(), entry.getValue());
         }
     }
 
@@ -390,4 +468,10 @@ public class AnnotationDocumentExporter
                     aProject.getName(), aProject.getId());
         }
     }
+
+    @FunctionalInterface
+    private static interface EntryWriter
+    {
+        void write(String aName, byte[] aData) throws IOException;
+    }
 }
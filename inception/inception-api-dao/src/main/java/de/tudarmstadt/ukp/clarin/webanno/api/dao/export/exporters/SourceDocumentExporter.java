@@ -37,6 +37,7 @@ import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -80,6 +81,19 @@ public class SourceDocumentExporter
         exportSourceDocumentContents(aRequest, aMonitor, aExProject, aStage);
     }
 
+    @Override
+    public void exportData(ProjectExportRequest aRequest, ProjectExportTaskMonitor aMonitor,
+            ExportedProject aExProject, ZipOutputStream aStage)
+        throws IOException, ProjectExportException
+    {
+        exportSourceDocuments(aRequest.getProject(), aExProject);
+        exportSourceDocumentContents(aRequest, aMonitor, aExProject, (aFile) -> {
+            aStage.putNextEntry(new ZipEntry(SOURCE_FOLDER + "/" + aFile.getName()));
+            Files.copy(aFile.toPath(), aStage);
+            aStage.closeEntry();
+        });
+    }
+
     private void exportSourceDocuments(Project aProject, ExportedProject exProject)
     {
         List<ExportedSourceDocument> sourceDocuments = new ArrayList<>();
@@ -105,16 +119,24 @@ public class SourceDocumentExporter
             ProjectExportTaskMonitor aMonitor, ExportedProject aExProject, File aStage)
         throws IOException, ProjectExportException
     {
-        Project project = aRequest.getProject();
         File sourceDocumentDir = new File(aStage, SOURCE_FOLDER);
         FileUtils.forceMkdir(sourceDocumentDir);
+        exportSourceDocumentContents(aRequest, aMonitor, aExProject,
+                (aFile) -> FileUtils.copyFileToDirectory(aFile, sourceDocumentDir));
+    }
+
+    private void exportSourceDocumentContents(ProjectExportRequest aRequest,
+            ProjectExportTaskMonitor aMonitor, ExportedProject aExProject,
+            SourceFileWriter aWriter)
+        throws IOException, ProjectExportException
+    {
+        Project project = aRequest.getProject();
         // Get all the source documents from the project
         List<SourceDocument> documents = documentService.listSourceDocuments(project);
         int i = 1;
         for (SourceDocument sourceDocument : documents) {
             try {
-                FileUtils.copyFileToDirectory(documentService.getSourceDocumentFile(sourceDocument),
-                        sourceDocumentDir);
+                aWriter.write(documentService.getSourceDocumentFile(sourceDocument));
                 aMonitor.setProgress((int) Math.ceil(((double) i) / documents.size() * 10.0));
                 i++;
                 log.info("Exported content for source document [" + sourceDocument.getId()
@@ -230,4 +252,10 @@ public class SourceDocumentExporter
             }
         }
     }
+
+    @FunctionalInterface
+    private static interface SourceFileWriter
+    {
+        void write(File aFile) throws IOException;
+    }
 }
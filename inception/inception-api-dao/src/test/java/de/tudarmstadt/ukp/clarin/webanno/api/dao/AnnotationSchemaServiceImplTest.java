@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.api.dao;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.EXCLUSIVE_WRITE_ACCESS;
+import static java.util.Collections.emptyList;
+import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.fit.factory.CasFactory;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.MDC;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeProjectRemovedEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.LayerConfigurationChangedEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.type.CASMetadata;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.support.logging.Logging;
+
+public class AnnotationSchemaServiceImplTest
+{
+    private AnnotationSchemaServiceImpl sut;
+    private Project project;
+    private CasStorageSession casStorageSession;
+
+    @TempDir
+    File repositoryDir;
+
+    @BeforeEach
+    public void setup()
+    {
+        MDC.put(Logging.KEY_REPOSITORY_PATH, repositoryDir.toString());
+
+        project = new Project();
+        project.setId(1l);
+        project.setName("test");
+
+        sut = spy(new AnnotationSchemaServiceImpl());
+        doReturn(emptyList()).when(sut).listSupportedLayers(any());
+        doReturn(emptyList()).when(sut).listSupportedFeatures(any(Project.class));
+
+        casStorageSession = CasStorageSession.open();
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        casStorageSession.close();
+        MDC.remove(Logging.KEY_REPOSITORY_PATH);
+    }
+
+    @Test
+    public void thatCompiledTypeSystemIsSharedUntilLayerConfigurationChanges() throws Exception
+    {
+        long version = sut.getLayerConfigurationVersion(project);
+        TypeSystem ts = sut.getCompiledProjectTypeSystem(project);
+
+        assertThat(sut.getCompiledProjectTypeSystem(project)).isSameAs(ts);
+        verify(sut, times(1)).listSupportedLayers(project);
+
+        sut.onLayerConfigurationChanged(new LayerConfigurationChangedEvent(this, project));
+
+        assertThat(sut.getLayerConfigurationVersion(project)).isGreaterThan(version);
+        sut.getCompiledProjectTypeSystem(project);
+        verify(sut, times(2)).listSupportedLayers(project);
+    }
+
+    @Test
+    public void thatProjectRemovalForgetsLayerConfigurationVersion() throws Exception
+    {
+        sut.onLayerConfigurationChanged(new LayerConfigurationChangedEvent(this, project));
+        sut.getCompiledProjectTypeSystem(project);
+        assertThat(sut.getLayerConfigurationVersion(project)).isGreaterThan(0);
+
+        sut.onBeforeProjectRemoved(new BeforeProjectRemovedEvent(this, project));
+
+        assertThat(sut.getLayerConfigurationVersion(project)).isEqualTo(0);
+        sut.getCompiledProjectTypeSystem(project);
+        verify(sut, times(2)).listSupportedLayers(project);
+    }
+
+    @Test
+    public void thatFullProjectTypeSystemCanBeModifiedByCaller() throws Exception
+    {
+        TypeSystemDescription tsd = sut.getFullProjectTypeSystem(project);
+        tsd.addType("my.Type", "", CAS.TYPE_NAME_ANNOTATION);
+
+        assertThat(sut.getFullProjectTypeSystem(project).getType("my.Type")).isNull();
+        assertThat(sut.getCompiledProjectTypeSystem(project).getType("my.Type")).isNull();
+    }
+
+    @Test
+    public void thatUpgradedCasUsesCompiledTypeSystem() throws Exception
+    {
+        CAS outdatedCas = CasFactory.createCas(createTypeSystemDescription());
+        casStorageSession.add("outdated", EXCLUSIVE_WRITE_ACCESS, outdatedCas);
+
+        assertThat(sut.upgradeCasIfRequired(List.of(outdatedCas), project)).isTrue();
+        assertThat(outdatedCas.getTypeSystem())
+                .isSameAs(sut.getCompiledProjectTypeSystem(project));
+        assertThat(outdatedCas.getTypeSystem().getType(CASMetadata.class.getName())).isNotNull();
+
+        CAS currentCas = CasCreationUtils.createCas(sut.getCompiledProjectTypeSystem(project),
+                null, null, null);
+        casStorageSession.add("current", EXCLUSIVE_WRITE_ACCESS, currentCas);
+
+        assertThat(sut.upgradeCasIfRequired(List.of(currentCas), project)).isFalse();
+    }
+}
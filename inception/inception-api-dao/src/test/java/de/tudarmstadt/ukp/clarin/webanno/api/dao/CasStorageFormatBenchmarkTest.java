@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.api.dao;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasMetadataUtils.getInternalTypeSystem;
+import static java.util.Arrays.asList;
+import static org.apache.commons.io.FileUtils.sizeOfDirectory;
+import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+import static org.apache.uima.util.CasCreationUtils.mergeTypeSystems;
+
+import java.io.File;
+import java.util.Random;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.fit.factory.CasFactory;
+import org.apache.uima.resource.metadata.TypeDescription;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageFormat;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.FileSystemCasStorageDriver;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.config.BackupProperties;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.config.CasStorageDriverProperties;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+
+/**
+ * Compares read/write latency and size on disk of the {@link CasStorageFormat storage formats}.
+ */
+@Tag("slow")
+public class CasStorageFormatBenchmarkTest
+{
+    private static final int LAYERS = 40;
+    private static final int DOCUMENTS = 50;
+    private static final int ANNOTATIONS_PER_LAYER = 50;
+    private static final int ROUNDS = 5;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @TempDir
+    File testFolder;
+
+    @Test
+    public void benchmarkStorageFormats() throws Exception
+    {
+        CAS template = makeCas();
+
+        for (CasStorageFormat format : CasStorageFormat.values()) {
+            RepositoryProperties repositoryProperties = new RepositoryProperties();
+            repositoryProperties.setPath(new File(testFolder, format.name()));
+            CasStorageDriverProperties driverProperties = new CasStorageDriverProperties();
+            driverProperties.setFormat(format);
+            FileSystemCasStorageDriver driver = new FileSystemCasStorageDriver(
+                    repositoryProperties, new BackupProperties(), driverProperties);
+
+            Project project = new Project();
+            project.setId(1l);
+            project.setName("benchmark");
+
+            long writeTime = 0;
+            long readTime = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int n = 0; n < DOCUMENTS; n++) {
+                    SourceDocument doc = new SourceDocument();
+                    doc.setProject(project);
+                    doc.setId((long) n);
+                    doc.setName("doc" + n);
+
+                    long start = System.nanoTime();
+                    driver.writeCas(doc, "user" + round, template);
+                    writeTime += System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    driver.readCas(doc, "user" + round);
+                    readTime += System.nanoTime() - start;
+                }
+            }
+
+            long bytesOnDisk = sizeOfDirectory(repositoryProperties.getPath());
+            int files = DOCUMENTS * ROUNDS;
+            log.info("{}: write {} us/doc  read {} us/doc  {} bytes on disk ({} bytes/doc)",
+                    format, writeTime / files / 1000, readTime / files / 1000, bytesOnDisk,
+                    bytesOnDisk / files);
+        }
+    }
+
+    private CAS makeCas() throws Exception
+    {
+        TypeSystemDescription tsd = mergeTypeSystems(
+                asList(createTypeSystemDescription(), getInternalTypeSystem()));
+        for (int i = 0; i < LAYERS; i++) {
+            TypeDescription td = tsd.addType("custom.Layer" + i, "", CAS.TYPE_NAME_ANNOTATION);
+            td.addFeature("value", "", CAS.TYPE_NAME_STRING);
+            td.addFeature("score", "", CAS.TYPE_NAME_DOUBLE);
+        }
+
+        CAS cas = CasFactory.createCas(tsd);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ANNOTATIONS_PER_LAYER; i++) {
+            text.append("This is sentence number ").append(i).append(". ");
+        }
+        cas.setDocumentText(text.toString());
+
+        Random rnd = new Random(0);
+        for (int i = 0; i < LAYERS; i++) {
+            Type type = cas.getTypeSystem().getType("custom.Layer" + i);
+            for (int n = 0; n < ANNOTATIONS_PER_LAYER; n++) {
+                int begin = rnd.nextInt(text.length() - 10);
+                var ann = cas.createAnnotation(type, begin, begin + rnd.nextInt(10));
+                ann.setStringValue(type.getFeatureByBaseName("value"), "label" + rnd.nextInt(5));
+                ann.setDoubleValue(type.getFeatureByBaseName("score"), rnd.nextDouble());
+                cas.addFsToIndexes(ann);
+            }
+        }
+
+        return cas;
+    }
+}
@@ -61,6 +61,7 @@ import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.springframework.util.unit.DataSize;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.CasProvider;
 import de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasSessionException;
@@ -229,6 +230,54 @@ public class CasStorageServiceImplTest
                 .isNotEqualTo(casIdentity3);
     }
 
+    @Test
+    public void testThatOffHeapCacheMaterializesSharedCas() throws Exception
+    {
+        CasStoragePropertiesImpl properties = new CasStoragePropertiesImpl();
+        properties.setSharedCasOffHeapCacheSize(DataSize.ofMegabytes(1));
+        sut = new CasStorageServiceImpl(driver, null, null, properties);
+
+        // Setup fixture
+        SourceDocument doc = makeSourceDocument(7l, 7l, "test");
+        String user = "test";
+        String text = "This is a test";
+        try (CasStorageSession session = openNested(true)) {
+            createCasFile(doc, user, text);
+        }
+
+        // Actual test
+        CAS cas1;
+        try (CasStorageSession session = openNested(true)) {
+            cas1 = sut.readCas(doc, user, SHARED_READ_ONLY_ACCESS);
+        }
+
+        CAS cas2;
+        try (CasStorageSession session = openNested(true)) {
+            cas2 = sut.readCas(doc, user, SHARED_READ_ONLY_ACCESS);
+        }
+
+        assertThat(cas2).as("Every access materializes a new CAS instance").isNotSameAs(cas1);
+        assertThat(cas2.getDocumentText()).isEqualTo(text);
+        assertThat(sut.getSharedAccessOffHeapCacheStats().missCount()).isEqualTo(1);
+        assertThat(sut.getSharedAccessOffHeapCacheStats().hitCount()).isEqualTo(1);
+        assertThat(sut.getSharedAccessOffHeapCacheBytes()).isPositive();
+        assertThat(sut.getSharedAccessCacheSize())
+                .as("No CAS instances are kept in the on-heap cache").isZero();
+
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = sut.readCas(doc, user, EXCLUSIVE_WRITE_ACCESS);
+            cas.setDocumentLanguage("de");
+            sut.writeCas(doc, cas, user);
+        }
+
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas3 = sut.readCas(doc, user, SHARED_READ_ONLY_ACCESS);
+            assertThat(cas3.getDocumentLanguage())
+                    .as("Writing the CAS invalidates the off-heap cache").isEqualTo("de");
+        }
+        assertThat(sut.getSharedAccessOffHeapCacheStats().missCount()).isEqualTo(2);
+    }
+
     @Test
     public void testConcurrentAccess() throws Exception
     {
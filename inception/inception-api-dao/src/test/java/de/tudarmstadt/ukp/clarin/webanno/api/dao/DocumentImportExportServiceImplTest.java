@@ -30,6 +30,8 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.openMocks;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.util.ArrayList;
@@ -37,6 +39,7 @@ import java.util.List;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.impl.XmiCasDeserializer;
 import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.jcas.JCas;
@@ -64,8 +67,10 @@ import de.tudarmstadt.ukp.clarin.webanno.api.type.CASMetadata;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
 import de.tudarmstadt.ukp.clarin.webanno.support.logging.Logging;
+import de.tudarmstadt.ukp.clarin.webanno.xmi.XmiFormatCodec;
 import de.tudarmstadt.ukp.clarin.webanno.xmi.XmiFormatSupport;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 
 public class DocumentImportExportServiceImplTest
 {
@@ -170,6 +175,76 @@ public class DocumentImportExportServiceImplTest
         assertThat(result).hasSize(0);
     }
 
+    @Test
+    public void thatStreamedExportCanBeImportedFromStream() throws Exception
+    {
+        SourceDocument sd = makeSourceDocument(1L, 1L);
+
+        List<TypeSystemDescription> typeSystems = new ArrayList<>();
+        typeSystems.add(createTypeSystemDescription());
+        typeSystems.add(CasMetadataUtils.getInternalTypeSystem());
+        TypeSystemDescription ts = mergeTypeSystems(typeSystems);
+
+        JCas jcas = JCasFactory.createJCas(ts);
+        casStorageSession.add("jcas", EXCLUSIVE_WRITE_ACCESS, jcas.getCas());
+        jcas.setDocumentText("This is a test .");
+        DocumentMetaData.create(jcas);
+
+        // XMI is exported as a ZIP containing the XMI file and the type system, just like when
+        // exporting to a file
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        String fileName = sut.exportCasToStream(jcas.getCas(), sd, "testfile.txt",
+                sut.getFormatById(XmiFormatSupport.ID).get(), true, exported, null);
+        assertThat(fileName).isEqualTo("testfile.zip");
+
+        List<String> entries = new ArrayList<>();
+        CAS imported = null;
+        try (ZipArchiveInputStream zipInput = new ZipArchiveInputStream(
+                new ByteArrayInputStream(exported.toByteArray()))) {
+            ZipArchiveEntry entry;
+            while ((entry = zipInput.getNextZipEntry()) != null) {
+                entries.add(entry.getName());
+                if (entry.getName().endsWith(".xmi")) {
+                    imported = sut.importCasFromStream(zipInput, entry.getName(), sd.getProject(),
+                            XmiFormatSupport.ID, ts);
+                }
+            }
+        }
+
+        assertThat(entries).containsExactly("testfile.xmi", XmiFormatCodec.TYPE_SYSTEM_FILE);
+        assertThat(imported).isNotNull();
+        assertThat(imported.getDocumentText()).isEqualTo("This is a test .");
+        assertThat(DocumentMetaData.get(imported).getDocumentId()).isEqualTo("testfile.txt");
+        assertThat(select(imported.getJCas(), Token.class)).hasSize(5);
+    }
+
+    @Test
+    public void thatStreamedXmiExportCanBeImportedAsIs() throws Exception
+    {
+        SourceDocument sd = makeSourceDocument(1L, 1L);
+
+        List<TypeSystemDescription> typeSystems = new ArrayList<>();
+        typeSystems.add(createTypeSystemDescription());
+        typeSystems.add(CasMetadataUtils.getInternalTypeSystem());
+        TypeSystemDescription ts = mergeTypeSystems(typeSystems);
+
+        JCas jcas = JCasFactory.createJCas(ts);
+        casStorageSession.add("jcas", EXCLUSIVE_WRITE_ACCESS, jcas.getCas());
+        jcas.setDocumentText("This is a test .");
+        DocumentMetaData.create(jcas);
+
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        String fileName = sut.exportCasToStream(jcas.getCas(), sd, "testfile.txt",
+                sut.getFormatById(XmiFormatSupport.ID).get(), true, exported, null);
+
+        // The ZIP produced by the export can be imported again without unpacking it first
+        CAS imported = sut.importCasFromStream(new ByteArrayInputStream(exported.toByteArray()),
+                fileName, sd.getProject(), XmiFormatSupport.ID, ts);
+
+        assertThat(imported.getDocumentText()).isEqualTo("This is a test .");
+        assertThat(select(imported.getJCas(), Token.class)).hasSize(5);
+    }
+
     private SourceDocument makeSourceDocument(long aProjectId, long aDocumentId)
     {
         Project project = new Project();
@@ -19,10 +19,16 @@ package de.tudarmstadt.ukp.clarin.webanno.api.dao;
 
 import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentStateChangeFlag.EXPLICIT_ANNOTATOR_USER_ACTION;
 import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.ANNOTATOR;
+import static de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState.ANNOTATION_FINISHED;
+import static de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState.ANNOTATION_IN_PROGRESS;
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.h2.util.IOUtils.getInputStreamFromString;
 
 import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -49,6 +55,7 @@ import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.model.ProjectPermission;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.project.config.ProjectServiceAutoConfiguration;
 import de.tudarmstadt.ukp.clarin.webanno.security.UserDao;
 import de.tudarmstadt.ukp.clarin.webanno.security.config.SecurityAutoConfiguration;
@@ -215,6 +222,67 @@ public class DocumentServiceImplDatabaseTest
                 .isNull();
     }
 
+    @Test
+    public void thatProjectWideAnnotationDocumentStatsMatchPerDocumentStats()
+    {
+        projectService.createProjectPermission(
+                new ProjectPermission(project, annotator2.getUsername(), ANNOTATOR));
+
+        SourceDocument doc1 = sut.createSourceDocument(new SourceDocument("doc1", project, "text"));
+        SourceDocument doc2 = sut.createSourceDocument(new SourceDocument("doc2", project, "text"));
+        SourceDocument doc3 = sut.createSourceDocument(new SourceDocument("doc3", project, "text"));
+
+        createAnnotationDocument(doc1, annotator1, AnnotationDocumentState.FINISHED);
+        createAnnotationDocument(doc1, annotator2, AnnotationDocumentState.IN_PROGRESS);
+        createAnnotationDocument(doc2, annotator1, AnnotationDocumentState.IGNORE);
+
+        Map<SourceDocument, Map<AnnotationDocumentState, Long>> stats = sut
+                .getAnnotationDocumentStats(project);
+
+        assertThat(stats).containsOnlyKeys(doc1, doc2, doc3);
+        for (SourceDocument doc : asList(doc1, doc2, doc3)) {
+            assertThat(stats.get(doc)) //
+                    .as("Stats for %s", doc.getName()) //
+                    .isEqualTo(sut.getAnnotationDocumentStats(doc));
+        }
+        assertThat(stats.get(doc1)) //
+                .containsEntry(AnnotationDocumentState.FINISHED, 1l) //
+                .containsEntry(AnnotationDocumentState.IN_PROGRESS, 1l) //
+                .containsEntry(AnnotationDocumentState.NEW, 0l);
+        assertThat(stats.get(doc3)) //
+                .containsEntry(AnnotationDocumentState.NEW, 2l);
+    }
+
+    @Test
+    public void thatBulkSetSourceDocumentStateUpdatesDocuments()
+    {
+        SourceDocument doc1 = sut.createSourceDocument(new SourceDocument("doc1", project, "text"));
+        SourceDocument doc2 = sut.createSourceDocument(new SourceDocument("doc2", project, "text"));
+        SourceDocument doc3 = sut.createSourceDocument(new SourceDocument("doc3", project, "text"));
+
+        Map<SourceDocument, SourceDocumentState> states = new LinkedHashMap<>();
+        states.put(doc1, ANNOTATION_FINISHED);
+        states.put(doc2, ANNOTATION_IN_PROGRESS);
+        states.put(doc3, SourceDocumentState.NEW);
+        sut.bulkSetSourceDocumentState(states);
+
+        assertThat(sut.listSourceDocuments(project)) //
+                .extracting(SourceDocument::getName, SourceDocument::getState) //
+                .containsExactly( //
+                        tuple("doc1", ANNOTATION_FINISHED), //
+                        tuple("doc2", ANNOTATION_IN_PROGRESS), //
+                        tuple("doc3", SourceDocumentState.NEW));
+        assertThat(doc1.getState()).isEqualTo(ANNOTATION_FINISHED);
+    }
+
+    private void createAnnotationDocument(SourceDocument aDocument, User aUser,
+            AnnotationDocumentState aState)
+    {
+        AnnotationDocument ann = new AnnotationDocument(aUser.getUsername(), aDocument);
+        ann.setState(aState);
+        sut.createAnnotationDocument(ann);
+    }
+
     @SpringBootConfiguration
     public static class TestContext
     {
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.api.dao;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasMetadataUtils.getInternalTypeSystem;
+import static de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.FileSystemCasStorageDriver.COMPACT_CAS_EXTENSION;
+import static de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.FileSystemCasStorageDriver.SER_CAS_EXTENSION;
+import static de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.FileSystemCasStorageDriver.TYPE_SYSTEM_FOLDER;
+import static java.util.Arrays.asList;
+import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+import static org.apache.uima.util.CasCreationUtils.mergeTypeSystems;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.CasFactory;
+import org.apache.uima.jcas.JCas;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasPersistenceUtils;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageFormat;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.FileSystemCasStorageDriver;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.config.BackupProperties;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.config.CasStorageDriverProperties;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+public class FileSystemCasStorageDriverTest
+{
+    private RepositoryProperties repositoryProperties;
+    private FileSystemCasStorageDriver serializedDriver;
+    private FileSystemCasStorageDriver compactDriver;
+
+    @TempDir
+    File testFolder;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        repositoryProperties = new RepositoryProperties();
+        repositoryProperties.setPath(testFolder);
+
+        serializedDriver = new FileSystemCasStorageDriver(repositoryProperties,
+                new BackupProperties());
+
+        CasStorageDriverProperties compactProperties = new CasStorageDriverProperties();
+        compactProperties.setFormat(CasStorageFormat.COMPACT);
+        compactDriver = new FileSystemCasStorageDriver(repositoryProperties,
+                new BackupProperties(), compactProperties);
+    }
+
+    @Test
+    public void thatCompactCasCanBeWrittenAndRead() throws Exception
+    {
+        SourceDocument doc = makeSourceDocument(1l, 1l, "test");
+
+        compactDriver.writeCas(doc, "user", makeCas());
+
+        assertThat(compactDriver.getCasFile(doc, "user")).hasName("user" + COMPACT_CAS_EXTENSION);
+        assertThat(compactDriver.existsCas(doc, "user")).isTrue();
+
+        JCas cas = compactDriver.readCas(doc, "user").getJCas();
+        assertThat(cas.getDocumentText()).isEqualTo("John lives in London.");
+        assertThat(cas.select(Token.class).asList()).hasSize(5);
+        assertThat(cas.select(NamedEntity.class).asList()) //
+                .extracting(NamedEntity::getValue) //
+                .containsExactly("PER", "LOC");
+
+        assertThat(compactDriver.deleteCas(doc, "user")).isTrue();
+        assertThat(compactDriver.existsCas(doc, "user")).isFalse();
+    }
+
+    @Test
+    public void thatTypeSystemIsStoredOncePerProject() throws Exception
+    {
+        for (long docId = 1; docId <= 3; docId++) {
+            SourceDocument doc = makeSourceDocument(2l, docId, "test" + docId);
+            compactDriver.writeCas(doc, "user1", makeCas());
+            compactDriver.writeCas(doc, "user2", makeCas());
+        }
+
+        File typeSystemFolder = new File(testFolder, "project/2/" + TYPE_SYSTEM_FOLDER);
+        assertThat(typeSystemFolder.listFiles()).hasSize(1);
+    }
+
+    @Test
+    public void thatSerializedCasIsMigratedOnRead() throws Exception
+    {
+        SourceDocument doc = makeSourceDocument(3l, 3l, "test");
+
+        serializedDriver.writeCas(doc, "user", makeCas());
+        File serFile = serializedDriver.getCasFile(doc, "user");
+        long timestamp = serFile.lastModified();
+        assertThat(serFile).hasName("user" + SER_CAS_EXTENSION);
+
+        JCas cas = compactDriver.readCas(doc, "user").getJCas();
+        assertThat(cas.select(NamedEntity.class).asList()).hasSize(2);
+
+        File compactFile = compactDriver.getCasFile(doc, "user");
+        assertThat(compactFile).hasName("user" + COMPACT_CAS_EXTENSION).exists();
+        assertThat(compactFile.lastModified()).isEqualTo(timestamp);
+        assertThat(serFile).doesNotExist();
+
+        // Writing back the migrated CAS must not be detected as a concurrent modification
+        compactDriver.writeCas(doc, "user", cas.getCas());
+        assertThat(compactDriver.readCas(doc, "user").getDocumentText())
+                .isEqualTo("John lives in London.");
+    }
+
+    @Test
+    public void thatCompactCasIsExportedInSerializedFormat() throws Exception
+    {
+        SourceDocument doc = makeSourceDocument(4l, 4l, "test");
+
+        compactDriver.writeCas(doc, "user", makeCas());
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        compactDriver.exportCas(doc, "user", bos);
+
+        File exportFile = new File(testFolder, "export" + SER_CAS_EXTENSION);
+        FileUtils.writeByteArrayToFile(exportFile, bos.toByteArray());
+        CAS exported = CasFactory.createCas();
+        CasPersistenceUtils.readSerializedCas(exported, exportFile);
+        assertThat(exported.getDocumentText()).isEqualTo("John lives in London.");
+
+        compactDriver.importCas(doc, "user2", new ByteArrayInputStream(bos.toByteArray()));
+        assertThat(compactDriver.readCas(doc, "user2").getDocumentText())
+                .isEqualTo("John lives in London.");
+    }
+
+    @Test
+    public void thatHistoryInPreviousFormatIsPruned() throws Exception
+    {
+        BackupProperties backupProperties = new BackupProperties();
+        backupProperties.setInterval(1);
+        backupProperties.getKeep().setNumber(1);
+        CasStorageDriverProperties compactProperties = new CasStorageDriverProperties();
+        compactProperties.setFormat(CasStorageFormat.COMPACT);
+        FileSystemCasStorageDriver driver = new FileSystemCasStorageDriver(repositoryProperties,
+                backupProperties, compactProperties);
+
+        SourceDocument doc = makeSourceDocument(5l, 5l, "test");
+        File annotationFolder = driver.getAnnotationFolder(doc);
+        long past = System.currentTimeMillis() - 60_000;
+        for (int i = 0; i < 3; i++) {
+            File oldHistory = new File(annotationFolder,
+                    "user" + SER_CAS_EXTENSION + "." + (past + i) + ".bak");
+            FileUtils.writeByteArrayToFile(oldHistory, new byte[] { 0 });
+            oldHistory.setLastModified(past + i * 1000);
+        }
+
+        driver.writeCas(doc, "user", makeCas());
+
+        assertThat(annotationFolder.list((dir, name) -> name.endsWith(".bak"))) //
+                .hasSize(1) //
+                .allMatch(name -> name.startsWith("user" + COMPACT_CAS_EXTENSION + "."));
+    }
+
+    private CAS makeCas() throws Exception
+    {
+        CAS cas = CasFactory.createCas(
+                mergeTypeSystems(asList(createTypeSystemDescription(), getInternalTypeSystem())));
+        cas.setDocumentText("John lives in London.");
+
+        JCas jcas = cas.getJCas();
+        new Token(jcas, 0, 4).addToIndexes();
+        new Token(jcas, 5, 10).addToIndexes();
+        new Token(jcas, 11, 13).addToIndexes();
+        new Token(jcas, 14, 20).addToIndexes();
+        new Token(jcas, 20, 21).addToIndexes();
+
+        NamedEntity per = new NamedEntity(jcas, 0, 4);
+        per.setValue("PER");
+        per.addToIndexes();
+        NamedEntity loc = new NamedEntity(jcas, 14, 20);
+        loc.setValue("LOC");
+        loc.addToIndexes();
+
+        return cas;
+    }
+
+    private SourceDocument makeSourceDocument(long aProjectId, long aDocumentId, String aDocName)
+    {
+        Project project = new Project();
+        project.setId(aProjectId);
+        project.setName("project");
+
+        SourceDocument doc = new SourceDocument();
+        doc.setProject(project);
+        doc.setId(aDocumentId);
+        doc.setName(aDocName);
+
+        return doc;
+    }
+}
@@ -18,17 +18,27 @@
 package de.tudarmstadt.ukp.clarin.webanno.api.dao.export.exporters;
 
 import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.INITIAL_CAS_PSEUDO_USER;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static org.apache.commons.io.FilenameUtils.removeExtension;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.openMocks;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.BeforeEach;
@@ -48,11 +58,17 @@ import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.config.CasStoragePro
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.docimexport.config.DocumentImportExportServiceProperties;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.docimexport.config.DocumentImportExportServicePropertiesImpl;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.export.ProjectExportServiceImpl;
+import de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectExportRequest;
+import de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectExportTaskMonitor;
 import de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectImportRequest;
 import de.tudarmstadt.ukp.clarin.webanno.export.model.ExportedProject;
 import de.tudarmstadt.ukp.clarin.webanno.export.model.ExportedSourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.UserDao;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.clarin.webanno.xmi.XmiFormatSupport;
 
 public class AnnotationDocumentsExporterTest
@@ -66,6 +82,7 @@ public class AnnotationDocumentsExporterTest
 
     private @Mock DocumentService documentService;
     private @Mock AnnotationSchemaService schemaService;
+    private @Mock UserDao userRepository;
 
     private Project project;
     private File workFolder;
@@ -115,6 +132,78 @@ public class AnnotationDocumentsExporterTest
                 .containsExactlyInAnyOrder(INITIAL_CAS_PSEUDO_USER, "admin");
     }
 
+    @Test
+    public void thatStreamedExportWritesEntriesInDocumentOrder() throws Exception
+    {
+        List<SourceDocument> docs = new ArrayList<>();
+        List<AnnotationDocument> annDocs = new ArrayList<>();
+        for (long i = 1; i <= 20; i++) {
+            SourceDocument doc = new SourceDocument();
+            doc.setId(i);
+            doc.setName("doc" + i + ".txt");
+            doc.setProject(project);
+            doc.setFormat(XmiFormatSupport.ID);
+            docs.add(doc);
+
+            AnnotationDocument annDoc = new AnnotationDocument("user", doc);
+            annDoc.setState(AnnotationDocumentState.IN_PROGRESS);
+            annDocs.add(annDoc);
+        }
+
+        when(documentService.listSourceDocuments(any())).thenReturn(docs);
+        when(documentService.listAnnotationDocuments(any(Project.class))).thenReturn(annDocs);
+        when(documentService.existsCas(any(AnnotationDocument.class))).thenReturn(true);
+        when(documentService.existsInitialCas(any())).thenReturn(true);
+        User user = new User();
+        user.setUsername("user");
+        when(userRepository.get("user")).thenReturn(user);
+
+        // Convert the documents with different delays so that they complete out of order
+        DocumentImportExportService importExportService = mock(DocumentImportExportService.class);
+        when(importExportService.getWritableFormatById(any()))
+                .thenReturn(Optional.of(new XmiFormatSupport()));
+        when(importExportService.exportAnnotationDocumentToStream(any(), any(), any(), any(),
+                any(), anyBoolean(), any(), any())).then(invocation -> {
+                    SourceDocument doc = invocation.getArgument(0);
+                    Thread.sleep((doc.getId() * 7) % 5);
+                    invocation.getArgument(6, OutputStream.class)
+                            .write(doc.getName().getBytes(UTF_8));
+                    return invocation.getArgument(3, String.class) + ".xmi";
+                });
+
+        sut = new AnnotationDocumentExporter(documentService, userRepository, importExportService,
+                repositoryProperties);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(buffer)) {
+            sut.exportData(new ProjectExportRequest(project, ProjectExportRequest.FORMAT_AUTO,
+                    true), new ProjectExportTaskMonitor(), new ExportedProject(), zip);
+        }
+
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(
+                new ByteArrayInputStream(buffer.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.getName().startsWith("annotation/")) {
+                    assertThat(new String(zip.readAllBytes(), UTF_8))
+                            .isEqualTo(entry.getName().split("/")[1]);
+                }
+                entries.add(entry.getName());
+            }
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (SourceDocument doc : docs) {
+            expected.add("annotation_ser/" + doc.getName() + "/" + INITIAL_CAS_PSEUDO_USER
+                    + ".ser");
+            expected.add("annotation_ser/" + doc.getName() + "/user.ser");
+            expected.add("annotation/" + doc.getName() + "/user.xmi");
+        }
+
+        assertThat(entries).containsExactlyElementsOf(expected);
+    }
+
     private List<Pair<SourceDocument, String>> runImportAndFetchDocuments(ZipFile aZipFile)
         throws Exception
     {
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.api.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.uima.cas.CAS;
+
+/**
+ * Reads and writes a format directly from/to streams. Unlike the UIMA reader and writer
+ * descriptions provided by {@link FormatSupport}, a codec does not require the data to be on disk
+ * and does not require a reader or writer component to be instantiated for every document. A
+ * codec is obtained once from its {@link FormatSupport} and is then re-used, so implementations
+ * must be thread-safe.
+ */
+public interface FormatCodec
+{
+    /**
+     * @return whether the codec can read (i.e. {@link #read} is implemented).
+     */
+    default boolean isReadable()
+    {
+        return false;
+    }
+
+    /**
+     * @return whether the codec can write (i.e. {@link #write} is implemented).
+     */
+    default boolean isWritable()
+    {
+        return false;
+    }
+
+    /**
+     * Reads the data from the given stream into the given CAS. The CAS must be empty and must be
+     * set up with the type system of the project. The stream is not closed.
+     * 
+     * @param aCas
+     *            the target CAS.
+     * @param aInputStream
+     *            the stream to read from.
+     * @throws IOException
+     *             if the data cannot be read.
+     */
+    default void read(CAS aCas, InputStream aInputStream) throws IOException
+    {
+        throw new UnsupportedOperationException("The codec cannot read");
+    }
+
+    /**
+     * @param aBaseName
+     *            the document name without extension.
+     * @return the name of the file produced by {@link #write}.
+     */
+    default String getFileName(String aBaseName)
+    {
+        throw new UnsupportedOperationException("The codec cannot write");
+    }
+
+    /**
+     * Writes the given CAS to the given stream. The stream is not closed.
+     * 
+     * @param aCas
+     *            the source CAS.
+     * @param aBaseName
+     *            the document name without extension. Codecs producing multiple files use it to
+     *            name the individual files.
+     * @param aOutputStream
+     *            the stream to write to.
+     * @throws IOException
+     *             if the data cannot be written.
+     */
+    default void write(CAS aCas, String aBaseName, OutputStream aOutputStream) throws IOException
+    {
+        throw new UnsupportedOperationException("The codec cannot write");
+    }
+}
@@ -17,6 +17,8 @@
  */
 package de.tudarmstadt.ukp.clarin.webanno.api.format;
 
+import java.util.Optional;
+
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.collection.CollectionReaderDescription;
@@ -75,4 +77,14 @@ public interface FormatSupport
     {
         throw new UnsupportedOperationException("The format [" + getName() + "] cannot be written");
     }
+
+    /**
+     * @return a codec which reads/writes the format directly from/to streams. Callers fall back to
+     *         {@link #getReaderDescription} and {@link #getWriterDescription} if the format does
+     *         not provide a codec or if the codec does not support the desired direction.
+     */
+    default Optional<FormatCodec> getCodec()
+    {
+        return Optional.empty();
+    }
 }
@@ -19,9 +19,12 @@ package de.tudarmstadt.ukp.clarin.webanno.api;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.Pair;
@@ -29,6 +32,7 @@ import org.apache.uima.UIMAException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 
+import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatCodec;
 import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatSupport;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.Mode;
@@ -131,6 +135,32 @@ public interface DocumentImportExportService
             TypeSystemDescription aFullProjectTypeSystem)
         throws UIMAException, IOException;
 
+    /**
+     * Convert the data read from a stream to a CAS. If the format provides a {@link FormatCodec}
+     * which can read, the data is read directly from the stream. Otherwise, it is spooled to a
+     * temporary file and imported using {@link #importCasFromFile}. The stream is not closed.
+     *
+     * @param aInputStream
+     *            the stream to read from.
+     * @param aDocumentName
+     *            the name of the document which is read.
+     * @param aProject
+     *            the project to which the document belongs (required to get the type system).
+     * @param aFormatId
+     *            ID of a supported file format
+     * @param aFullProjectTypeSystem
+     *            the project type system. If this parameter is {@code null}, then the method will
+     *            try to resolve the type system itself.
+     * @return the CAS.
+     * @throws UIMAException
+     *             if a conversion error occurs.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    CAS importCasFromStream(InputStream aInputStream, String aDocumentName, Project aProject,
+            String aFormatId, TypeSystemDescription aFullProjectTypeSystem)
+        throws UIMAException, IOException;
+
     /**
      * Exports the given CAS to a file on disk.
      * 
@@ -153,6 +183,18 @@ public interface DocumentImportExportService
             boolean aStripExtension, Map<Pair<Project, String>, Object> aBulkOperationContext)
         throws IOException, UIMAException;
 
+    /**
+     * Exports the given CAS to the given stream. If the format provides a {@link FormatCodec}
+     * which can write, the data is written directly to the stream. Otherwise, it is exported to a
+     * temporary file first which is then copied to the stream. The stream is not closed.
+     *
+     * @return the name of the exported file.
+     */
+    String exportCasToStream(CAS aCas, SourceDocument aDocument, String aFileName,
+            FormatSupport aFormat, boolean aStripExtension, OutputStream aOutputStream,
+            Map<Pair<Project, String>, Object> aBulkOperationContext)
+        throws IOException, UIMAException;
+
     /**
      * Exports an {@link AnnotationDocument } CAS Object as TCF/TXT/XMI... file formats.
      *
@@ -187,4 +229,39 @@ public interface DocumentImportExportService
             String fileName, Mode mode, boolean stripExtension,
             Map<Pair<Project, String>, Object> aBulkOperationContext)
         throws UIMAException, IOException, ClassNotFoundException;
+
+    /**
+     * Exports an {@link AnnotationDocument} to the given stream.
+     * 
+     * @return the name of the exported file.
+     * @see #exportCasToStream
+     */
+    String exportAnnotationDocumentToStream(SourceDocument document, String user,
+            FormatSupport aFormat, String fileName, Mode mode, boolean stripExtension,
+            OutputStream aOutputStream, Map<Pair<Project, String>, Object> aBulkOperationContext)
+        throws UIMAException, IOException;
+
+    /**
+     * Exports multiple {@link AnnotationDocument}s. The documents are converted on a bounded pool
+     * of threads with only a single CAS conversion in flight per thread. The converted data is
+     * passed to the given sink in the order of the given documents and in the calling thread. Only
+     * a limited number of converted documents is held in memory waiting for the sink.
+     *
+     * @param aDocuments
+     *            the annotation documents to export.
+     * @param aFormat
+     *            the format to use for a given source document.
+     * @param aSink
+     *            receives the exported data.
+     */
+    void exportAnnotationDocumentsToStream(List<AnnotationDocument> aDocuments,
+            Function<SourceDocument, FormatSupport> aFormat, ExportedAnnotationDocumentSink aSink)
+        throws UIMAException, IOException;
+
+    @FunctionalInterface
+    interface ExportedAnnotationDocumentSink
+    {
+        void write(AnnotationDocument aDocument, String aFileName, byte[] aData)
+            throws IOException;
+    }
 }
@@ -197,6 +197,16 @@ public interface DocumentService
     SourceDocumentState setSourceDocumentState(SourceDocument aDocument,
             SourceDocumentState aState);
 
+    /**
+     * Sets the states of multiple source documents at once. Instead of updating every document
+     * individually, one bulk update is issued per target state. A {@code DocumentStateChangedEvent}
+     * is published for every document whose state actually changed.
+     * 
+     * @param aStates
+     *            the new states of the source documents.
+     */
+    void bulkSetSourceDocumentState(Map<SourceDocument, SourceDocumentState> aStates);
+
     // --------------------------------------------------------------------------------------------
     // Methods related to AnnotationDocuments
     // --------------------------------------------------------------------------------------------
@@ -705,5 +715,16 @@ public interface DocumentService
 
     Map<AnnotationDocumentState, Long> getAnnotationDocumentStats(SourceDocument aDocument);
 
+    /**
+     * Obtains the same counts as {@link #getAnnotationDocumentStats(SourceDocument)} for all
+     * source documents in the given project using a single aggregate query.
+     * 
+     * @param aProject
+     *            the project.
+     * @return the annotation document state counts per source document.
+     */
+    Map<SourceDocument, Map<AnnotationDocumentState, Long>> getAnnotationDocumentStats(
+            Project aProject);
+
     SourceDocumentStateStats getSourceDocumentStats(Project aProject);
 }
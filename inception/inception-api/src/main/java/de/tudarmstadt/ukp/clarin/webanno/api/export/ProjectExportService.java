@@ -19,6 +19,7 @@ package de.tudarmstadt.ukp.clarin.webanno.api.export;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.zip.ZipFile;
 
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
@@ -31,6 +32,14 @@ public interface ProjectExportService
     File exportProject(ProjectExportRequest aRequest, ProjectExportTaskMonitor aMonitor)
         throws ProjectExportException, IOException;
 
+    /**
+     * Exports the project as a ZIP file directly to the given stream without staging the data on
+     * disk first. The stream is not closed.
+     */
+    void exportProject(ProjectExportRequest aRequest, ProjectExportTaskMonitor aMonitor,
+            OutputStream aOutputStream)
+        throws ProjectExportException, IOException;
+
     ProjectExportTaskHandle startProjectExportTask(ProjectExportRequest aModel, String aUsername);
 
     ProjectExportRequest getExportRequest(ProjectExportTaskHandle aHandle);
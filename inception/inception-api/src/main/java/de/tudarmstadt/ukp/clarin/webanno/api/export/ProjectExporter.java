@@ -18,13 +18,19 @@
 package de.tudarmstadt.ukp.clarin.webanno.api.export;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import de.tudarmstadt.ukp.clarin.webanno.export.model.ExportedProject;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.support.ZipUtils;
 
 public interface ProjectExporter
 {
@@ -42,6 +48,29 @@ public interface ProjectExporter
             ExportedProject aExProject, File aStage)
         throws Exception;
 
+    /**
+     * Exports the data directly into the ZIP file of the exported project. The default
+     * implementation exports the data into a temporary stage folder using
+     * {@link #exportData(ProjectExportRequest, ProjectExportTaskMonitor, ExportedProject, File)}
+     * and then adds the contents of the folder to the ZIP file. Exporters which write large amounts
+     * of data should override this method to avoid the temporary copy.
+     */
+    default void exportData(ProjectExportRequest aRequest, ProjectExportTaskMonitor aMonitor,
+            ExportedProject aExProject, ZipOutputStream aStage)
+        throws Exception
+    {
+        Path stage = Files.createTempDirectory("webanno-project-export");
+        try {
+            exportData(aRequest, aMonitor, aExProject, stage.toFile());
+            ZipUtils.zipFolder(stage.toFile(), aStage);
+        }
+        finally {
+            try (Stream<Path> paths = Files.walk(stage)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
     void importData(ProjectImportRequest aRequest, Project aProject, ExportedProject aExProject,
             ZipFile aZip)
         throws Exception;
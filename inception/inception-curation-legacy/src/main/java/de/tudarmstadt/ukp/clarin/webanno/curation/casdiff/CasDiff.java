@@ -24,6 +24,7 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUt
 import static de.tudarmstadt.ukp.clarin.webanno.model.LinkMode.NONE;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
+import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.StringUtils.abbreviateMiddle;
 import static org.apache.uima.fit.util.CasUtil.select;
@@ -31,6 +32,7 @@ import static org.apache.uima.fit.util.CasUtil.selectCovered;
 
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -42,6 +44,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
@@ -90,6 +93,13 @@ public class CasDiff
 
     private boolean recurseIntoLinkFeatures = false;
 
+    /**
+     * Label features considered by {@link #fingerprint} for each type. Types from different CASes
+     * may be different objects (e.g. if the CASes are at different upgrade levels), so this is
+     * keyed by the type object itself.
+     */
+    private final Map<Type, List<Feature>> fingerprintFeatures = new HashMap<>();
+
     private CasDiff(int aBegin, int aEnd, Iterable<? extends DiffAdapter> aAdapters,
             LinkCompareBehavior aLinkCompareBehavior)
     {
@@ -195,6 +205,47 @@ public class CasDiff
         return diff;
     }
 
+    /**
+     * Calculate the differences between the CASes of a single document that is part of a larger
+     * collection of documents. The positions in the diff carry the given CAS ID, so the results
+     * obtained for the different documents of the collection can be combined using
+     * {@link DiffResult#merge(Collection)} without having to keep the CASes of all documents in
+     * memory at the same time. {@link #getCasMap()} returns lists in which only the given CAS ID is
+     * occupied.
+     * 
+     * @param aAdapters
+     *            a set of diff adapters telling how the diff algorithm should handle different
+     *            features
+     * @param aLinkCompareBehavior
+     *            whether links are compared by their target or by their role
+     * @param aCasMap
+     *            the CASes of the document, each associated with an ID. A {@code null} value
+     *            indicates that the given CAS group has no CAS for the document.
+     * @param aCasId
+     *            the CAS ID of the document, i.e. its index in the document collection.
+     * @return a diff.
+     */
+    public static CasDiff doDiffDocument(Iterable<? extends DiffAdapter> aAdapters,
+            LinkCompareBehavior aLinkCompareBehavior, Map<String, CAS> aCasMap, int aCasId)
+    {
+        CasDiff diff = new CasDiff(-1, -1, aAdapters, aLinkCompareBehavior);
+
+        for (Entry<String, CAS> e : aCasMap.entrySet()) {
+            diff.cases.put(e.getKey(), new SparseCasList(aCasId, e.getValue()));
+
+            // null values can occur if a user has never worked on a CAS
+            if (e.getValue() == null) {
+                continue;
+            }
+
+            for (DiffAdapter adapter : aAdapters) {
+                diff.processCas(e.getKey(), aCasId, e.getValue(), adapter.getType());
+            }
+        }
+
+        return diff;
+    }
+
     /**
      * Sanity check - all CASes should have the same text.
      */
@@ -298,6 +349,11 @@ public class CasDiff
             return;
         }
 
+        processCas(aCasGroupId, aCasId, aCas, aType);
+    }
+
+    private void processCas(String aCasGroupId, int aCasId, CAS aCas, String aType)
+    {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Processing CAS group [" + aCasGroupId + "] CAS [" + aCasId + "].");
 
@@ -343,6 +399,9 @@ public class CasDiff
         LOG.debug("Positions before: [" + posBefore + "]");
 
         for (AnnotationFS fs : annotations) {
+            // Calculated once per FS and shared by all the positions the FS contributes to
+            int fingerprint = fingerprint(fs);
+
             List<Position> positions = new ArrayList<>();
 
             // Get/create configuration set at the current position
@@ -368,7 +427,7 @@ public class CasDiff
                         + pos.getClass() + "] vs [" + configSet.position.getClass() + "]";
 
                 // Merge FS into current set
-                addConfiguration(configSet, aCasGroupId, fs);
+                addConfiguration(configSet, aCasGroupId, fs, fingerprint);
             }
         }
 
@@ -380,16 +439,18 @@ public class CasDiff
         // entryTypes.add(aType);
     }
 
-    private void addConfiguration(ConfigurationSet aSet, String aCasGroupId, FeatureStructure aFS)
+    private void addConfiguration(ConfigurationSet aSet, String aCasGroupId, FeatureStructure aFS,
+            int aFingerprint)
     {
         if (aFS instanceof SofaFS) {
             return;
         }
 
         if (aSet.position.getFeature() == null) {
-            // Check if this configuration is already present
+            // Check if this configuration is already present - only configurations with the same
+            // fingerprint can be equal, so we only need to compare against these
             Configuration configuration = null;
-            for (Configuration cfg : aSet.configurations) {
+            for (Configuration cfg : aSet.getCandidates(aFingerprint)) {
                 // Handle main positions
                 if (equalsFS(cfg.getRepresentative(cases), aFS)) {
                     configuration = cfg;
@@ -400,7 +461,7 @@ public class CasDiff
             // Not found, add new one
             if (configuration == null) {
                 configuration = new Configuration(aSet.position);
-                aSet.configurations.add(configuration);
+                aSet.addConfiguration(aFingerprint, configuration);
             }
 
             configuration.add(aCasGroupId, aFS);
@@ -424,6 +485,7 @@ public class CasDiff
 
                 // Check if this configuration is already present
                 Configuration configuration = null;
+                int linkFingerprint;
                 switch (aSet.position.getLinkCompareBehavior()) {
                 case LINK_TARGET_AS_LABEL: {
                     String role = link.getStringValue(
@@ -435,7 +497,8 @@ public class CasDiff
                     AnnotationFS target = (AnnotationFS) link.getFeatureValue(
                             link.getType().getFeatureByBaseName(decl.getTargetFeature()));
 
-                    cfgLoop: for (Configuration cfg : aSet.configurations) {
+                    linkFingerprint = targetFingerprint(target);
+                    cfgLoop: for (Configuration cfg : aSet.getCandidates(linkFingerprint)) {
                         FeatureStructure repFS = cfg.getRepresentative(cases);
                         AID repAID = cfg.getRepresentativeAID();
                         FeatureStructure repLink = ((ArrayFS) repFS.getFeatureValue(
@@ -463,7 +526,8 @@ public class CasDiff
                     String role = link.getStringValue(
                             link.getType().getFeatureByBaseName(decl.getRoleFeature()));
 
-                    cfgLoop: for (Configuration cfg : aSet.configurations) {
+                    linkFingerprint = Objects.hashCode(role);
+                    cfgLoop: for (Configuration cfg : aSet.getCandidates(linkFingerprint)) {
                         FeatureStructure repFS = cfg.getRepresentative(cases);
                         AID repAID = cfg.getRepresentativeAID();
                         FeatureStructure repLink = ((ArrayFS) repFS.getFeatureValue(
@@ -488,7 +552,7 @@ public class CasDiff
                 // Not found, add new one
                 if (configuration == null) {
                     configuration = new Configuration(aSet.position);
-                    aSet.configurations.add(configuration);
+                    aSet.addConfiguration(linkFingerprint, configuration);
                 }
 
                 configuration.add(aCasGroupId, aFS, aSet.position.getFeature(), i);
@@ -510,11 +574,38 @@ public class CasDiff
         private List<Configuration> configurations = new ArrayList<>();
         private Set<String> casGroupIds = new LinkedHashSet<>();
 
+        /**
+         * Configurations by fingerprint. Only used while the diff is being built, so it does not
+         * need to survive serialization.
+         */
+        private transient Map<Integer, List<Configuration>> configurationsByFingerprint;
+
         public ConfigurationSet(Position aPosition)
         {
             position = aPosition;
         }
 
+        private List<Configuration> getCandidates(int aFingerprint)
+        {
+            if (configurationsByFingerprint == null) {
+                return Collections.emptyList();
+            }
+
+            return configurationsByFingerprint.getOrDefault(aFingerprint,
+                    Collections.emptyList());
+        }
+
+        private void addConfiguration(int aFingerprint, Configuration aConfiguration)
+        {
+            if (configurationsByFingerprint == null) {
+                configurationsByFingerprint = new HashMap<>();
+            }
+
+            configurations.add(aConfiguration);
+            configurationsByFingerprint.computeIfAbsent(aFingerprint, k -> new ArrayList<>(1))
+                    .add(aConfiguration);
+        }
+
         /**
          * Gets the total number of configurations recorded in this set. If a configuration has been
          * seen in multiple CASes, it will be counted multiple times.
@@ -792,6 +883,103 @@ public class CasDiff
         return true;
     }
 
+    /**
+     * Calculates a fingerprint of the label features of the given feature structure. Feature
+     * structures considered equal by {@link #equalsFS} always have the same fingerprint, so
+     * configurations with a different fingerprint need not be compared at all. To remain consistent
+     * with {@link #equalsFS} across CASes at different upgrade levels, features holding their
+     * default value do not contribute to the fingerprint and neither do non-primitive features
+     * which are only checked by the full comparison.
+     * 
+     * @param aFS
+     *            a feature structure.
+     * @return the fingerprint.
+     */
+    private int fingerprint(FeatureStructure aFS)
+    {
+        Type type = aFS.getType();
+        int hash = type.getName().hashCode();
+
+        for (Feature f : fingerprintFeatures.computeIfAbsent(type, this::getFingerprintFeatures)) {
+            int valueHash;
+            switch (f.getRange().getName()) {
+            case CAS.TYPE_NAME_BOOLEAN:
+                valueHash = aFS.getBooleanValue(f) ? 1 : 0;
+                break;
+            case CAS.TYPE_NAME_BYTE:
+                valueHash = aFS.getByteValue(f);
+                break;
+            case CAS.TYPE_NAME_SHORT:
+                valueHash = aFS.getShortValue(f);
+                break;
+            case CAS.TYPE_NAME_INTEGER:
+                valueHash = aFS.getIntValue(f);
+                break;
+            case CAS.TYPE_NAME_LONG:
+                valueHash = Long.hashCode(aFS.getLongValue(f));
+                break;
+            case CAS.TYPE_NAME_FLOAT: {
+                float value = aFS.getFloatValue(f);
+                // Avoid distinguishing between 0.0 and -0.0 which equalsFS considers the same
+                valueHash = value == 0.0f ? 0 : Float.hashCode(value);
+                break;
+            }
+            case CAS.TYPE_NAME_DOUBLE: {
+                double value = aFS.getDoubleValue(f);
+                valueHash = value == 0.0d ? 0 : Double.hashCode(value);
+                break;
+            }
+            case CAS.TYPE_NAME_STRING:
+                valueHash = Objects.hashCode(aFS.getStringValue(f));
+                break;
+            default:
+                valueHash = 0;
+                break;
+            }
+
+            // Default values do not contribute, a missing feature is treated as the default value
+            if (valueHash != 0) {
+                hash = 31 * hash + (f.getShortName().hashCode() ^ valueHash);
+            }
+        }
+
+        return hash;
+    }
+
+    private List<Feature> getFingerprintFeatures(Type aType)
+    {
+        DiffAdapter adapter = typeAdapters.get(aType.getName());
+
+        if (adapter == null) {
+            return Collections.emptyList();
+        }
+
+        Set<String> labelFeatures = adapter.getLabelFeatures();
+        return aType.getFeatures().stream() //
+                .filter(f -> labelFeatures.contains(f.getShortName())) //
+                .filter(f -> f.getRange().isPrimitive()) //
+                .sorted(comparing(Feature::getShortName)) //
+                .collect(toList());
+    }
+
+    /**
+     * Calculates a fingerprint of a link target consistent with {@link #equalsAnnotationFS}. Only
+     * for span targets the offsets are known to be part of the position.
+     */
+    private int targetFingerprint(AnnotationFS aTarget)
+    {
+        if (aTarget == null) {
+            return 0;
+        }
+
+        String typeName = aTarget.getType().getName();
+        if (getAdapter(typeName) instanceof SpanDiffAdapter) {
+            return Objects.hash(typeName, aTarget.getBegin(), aTarget.getEnd());
+        }
+
+        return typeName.hashCode();
+    }
+
     private boolean equalsAnnotationFS(AnnotationFS aFS1, AnnotationFS aFS2)
     {
         // Null check
@@ -970,11 +1158,40 @@ public class CasDiff
 
         private DiffResult(CasDiff aDiff)
         {
-            data = Collections.unmodifiableMap(aDiff.configSets);
-            casGroupIds = new LinkedHashSet<>(aDiff.cases.keySet());
+            this(aDiff.configSets, aDiff.cases.keySet());
+        }
+
+        private DiffResult(Map<Position, ConfigurationSet> aData, Set<String> aCasGroupIds)
+        {
+            data = Collections.unmodifiableMap(aData);
+            casGroupIds = new LinkedHashSet<>(aCasGroupIds);
             cachedHasDifferences = !getDifferingConfigurationSets().isEmpty();
         }
 
+        /**
+         * Combines the diff results obtained for different CASes, e.g. via
+         * {@link CasDiff#doDiffDocument}, into a single result. The positions in the given results
+         * must not overlap, i.e. each result must have been obtained with a different CAS ID.
+         * 
+         * @param aResults
+         *            the results to combine.
+         * @return the combined result.
+         */
+        public static DiffResult merge(Collection<DiffResult> aResults)
+        {
+            Map<Position, ConfigurationSet> data = new TreeMap<>();
+            Set<String> casGroupIds = new LinkedHashSet<>();
+            for (DiffResult result : aResults) {
+                assert Collections.disjoint(data.keySet(), result.data.keySet()) //
+                        : "Positions of merged diff results must not overlap";
+
+                data.putAll(result.data);
+                casGroupIds.addAll(result.casGroupIds);
+            }
+
+            return new DiffResult(data, casGroupIds);
+        }
+
         public Set<String> getCasGroupIds()
         {
             return casGroupIds;
@@ -1212,6 +1429,40 @@ public class CasDiff
         return new DiffResult(this);
     }
 
+    /**
+     * List view in which only a single CAS ID is occupied. Used by
+     * {@link CasDiff#doDiffDocument} such that {@link Configuration#getFs} can look up feature
+     * structures via their CAS ID without having to materialize a list for the whole collection.
+     */
+    private static class SparseCasList
+        extends AbstractList<CAS>
+    {
+        private final int casId;
+        private final CAS cas;
+
+        public SparseCasList(int aCasId, CAS aCas)
+        {
+            casId = aCasId;
+            cas = aCas;
+        }
+
+        @Override
+        public CAS get(int aIndex)
+        {
+            if (aIndex < 0 || aIndex > casId) {
+                throw new IndexOutOfBoundsException("Index: " + aIndex + ", Size: " + size());
+            }
+
+            return aIndex == casId ? cas : null;
+        }
+
+        @Override
+        public int size()
+        {
+            return casId + 1;
+        }
+    }
+
     // private Set<String> entryTypes = new LinkedHashSet<>();
 
     // /**
@@ -19,6 +19,7 @@ package de.tudarmstadt.ukp.clarin.webanno.curation.storage;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.apache.uima.UIMAException;
@@ -86,4 +87,40 @@ public interface CurationDocumentService
      * @throws IOException
      */
     boolean existsCurationCas(SourceDocument aDocument) throws IOException;
+
+    /**
+     * @return the CAS timestamps of all annotators who have finished the given document, ordered
+     *         by user name. Annotators whose CAS does not exist are skipped.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    Map<String, Long> getFinishedAnnotatorCasTimestamps(SourceDocument aDocument)
+        throws IOException;
+
+    /**
+     * Stores the summary of a background merge of the given document, replacing any previous
+     * summary.
+     * 
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    void writeMergeSummary(SourceDocument aDocument, CurationMergeSummary aSummary)
+        throws IOException;
+
+    /**
+     * @return the summary of the last background merge of the given document, if any - even if it
+     *         is outdated.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    Optional<CurationMergeSummary> readMergeSummary(SourceDocument aDocument) throws IOException;
+
+    /**
+     * @return the summary of the last background merge of the given document if neither the
+     *         curation CAS nor any of the finished annotator CASes has changed since.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    Optional<CurationMergeSummary> readCurrentMergeSummary(SourceDocument aDocument)
+        throws IOException;
 }
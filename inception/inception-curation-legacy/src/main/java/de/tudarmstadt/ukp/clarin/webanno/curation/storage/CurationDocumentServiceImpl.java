@@ -17,15 +17,24 @@
  */
 package de.tudarmstadt.ukp.clarin.webanno.curation.storage;
 
+import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.DOCUMENT_FOLDER;
+import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.PROJECT_FOLDER;
 import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.CURATION_USER;
 import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.ANNOTATOR;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.util.stream.Collectors.toList;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import javax.persistence.EntityManager;
@@ -40,12 +49,14 @@ import org.springframework.transaction.annotation.Transactional;
 import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
 import de.tudarmstadt.ukp.clarin.webanno.api.CasStorageService;
 import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
+import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
 import de.tudarmstadt.ukp.clarin.webanno.curation.storage.config.CurationDocumentServiceAutoConfiguration;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
 
 /**
  * <p>
@@ -56,20 +67,24 @@ import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 public class CurationDocumentServiceImpl
     implements CurationDocumentService
 {
+    private static final String MERGE_SUMMARY_FILE = "curation-merge-summary.json";
+
     private final EntityManager entityManager;
     private final CasStorageService casStorageService;
     private final AnnotationSchemaService annotationService;
     private final ProjectService projectService;
+    private final RepositoryProperties repositoryProperties;
 
     @Autowired
     public CurationDocumentServiceImpl(CasStorageService aCasStorageService,
             AnnotationSchemaService aAnnotationService, ProjectService aProjectService,
-            EntityManager aEntityManager)
+            EntityManager aEntityManager, RepositoryProperties aRepositoryProperties)
     {
         casStorageService = aCasStorageService;
         annotationService = aAnnotationService;
         entityManager = aEntityManager;
         projectService = aProjectService;
+        repositoryProperties = aRepositoryProperties;
     }
 
     @Override
@@ -176,4 +191,95 @@ public class CurationDocumentServiceImpl
     {
         return casStorageService.existsCas(aDocument, CURATION_USER);
     }
+
+    @Override
+    @Transactional
+    public Map<String, Long> getFinishedAnnotatorCasTimestamps(SourceDocument aDocument)
+        throws IOException
+    {
+        Validate.notNull(aDocument, "Source document must be specified");
+
+        String query = String.join("\n", //
+                "SELECT adoc.user", //
+                "FROM AnnotationDocument AS adoc", //
+                "WHERE adoc.document = :document", //
+                "AND adoc.state = :state", //
+                "ORDER BY adoc.user ASC");
+
+        List<String> users = entityManager.createQuery(query, String.class) //
+                .setParameter("document", aDocument) //
+                .setParameter("state", AnnotationDocumentState.FINISHED) //
+                .getResultList();
+
+        Map<String, Long> timestamps = new LinkedHashMap<>();
+        for (String user : users) {
+            Optional<Long> timestamp = casStorageService.getCasTimestamp(aDocument, user);
+            if (timestamp.isPresent()) {
+                timestamps.put(user, timestamp.get());
+            }
+        }
+        return timestamps;
+    }
+
+    @Override
+    public void writeMergeSummary(SourceDocument aDocument, CurationMergeSummary aSummary)
+        throws IOException
+    {
+        Validate.notNull(aDocument, "Source document must be specified");
+        Validate.notNull(aSummary, "Summary must be specified");
+
+        // Write to a temporary file first so readers never see a partially written summary
+        Path summaryFile = getMergeSummaryFile(aDocument);
+        Files.createDirectories(summaryFile.getParent());
+        Path tempFile = Files.createTempFile(summaryFile.getParent(), MERGE_SUMMARY_FILE, ".tmp");
+        try {
+            Files.writeString(tempFile, JSONUtil.toJsonString(aSummary), UTF_8);
+            Files.move(tempFile, summaryFile, REPLACE_EXISTING, ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public Optional<CurationMergeSummary> readMergeSummary(SourceDocument aDocument)
+        throws IOException
+    {
+        Validate.notNull(aDocument, "Source document must be specified");
+
+        Path summaryFile = getMergeSummaryFile(aDocument);
+        if (!Files.exists(summaryFile)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(JSONUtil.fromJsonString(CurationMergeSummary.class,
+                Files.readString(summaryFile, UTF_8)));
+    }
+
+    @Override
+    public Optional<CurationMergeSummary> readCurrentMergeSummary(SourceDocument aDocument)
+        throws IOException
+    {
+        Optional<CurationMergeSummary> summary = readMergeSummary(aDocument);
+        if (summary.isEmpty()) {
+            return Optional.empty();
+        }
+
+        if (!summary.get().isUpToDate(getCurationCasTimestamp(aDocument),
+                getFinishedAnnotatorCasTimestamps(aDocument))) {
+            return Optional.empty();
+        }
+
+        return summary;
+    }
+
+    private Path getMergeSummaryFile(SourceDocument aDocument)
+    {
+        return repositoryProperties.getPath().toPath() //
+                .resolve(PROJECT_FOLDER) //
+                .resolve(String.valueOf(aDocument.getProject().getId())) //
+                .resolve(DOCUMENT_FOLDER) //
+                .resolve(String.valueOf(aDocument.getId())) //
+                .resolve(MERGE_SUMMARY_FILE);
+    }
 }
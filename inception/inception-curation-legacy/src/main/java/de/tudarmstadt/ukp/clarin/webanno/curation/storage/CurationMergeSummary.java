@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.curation.storage;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Result of merging the annotations of all finished annotators of a document into its curation
+ * CAS in the background. Records the CAS timestamps the merge was based on - the summary is only
+ * valid as long as none of these CASes has changed - and the positions at which the annotators
+ * did not agree and which were therefore left for the curator.
+ */
+public class CurationMergeSummary
+    implements Serializable
+{
+    private static final long serialVersionUID = -2381519587467359318L;
+
+    public enum ConflictKind
+    {
+        /**
+         * The annotators created different annotations at the position.
+         */
+        DISAGREE,
+
+        /**
+         * Not all annotators created an annotation at the position.
+         */
+        INCOMPLETE,
+
+        /**
+         * At least one annotator created multiple annotations at the position.
+         */
+        STACKED
+    }
+
+    private long documentId;
+    private long created;
+    private Long curationTimestamp;
+    private Map<String, Long> annotatorTimestamps = new LinkedHashMap<>();
+    private int positionCount;
+    private List<Conflict> conflicts = new ArrayList<>();
+
+    public long getDocumentId()
+    {
+        return documentId;
+    }
+
+    public void setDocumentId(long aDocumentId)
+    {
+        documentId = aDocumentId;
+    }
+
+    public long getCreated()
+    {
+        return created;
+    }
+
+    public void setCreated(long aCreated)
+    {
+        created = aCreated;
+    }
+
+    public Long getCurationTimestamp()
+    {
+        return curationTimestamp;
+    }
+
+    public void setCurationTimestamp(Long aCurationTimestamp)
+    {
+        curationTimestamp = aCurationTimestamp;
+    }
+
+    public Map<String, Long> getAnnotatorTimestamps()
+    {
+        return annotatorTimestamps;
+    }
+
+    public void setAnnotatorTimestamps(Map<String, Long> aAnnotatorTimestamps)
+    {
+        annotatorTimestamps = aAnnotatorTimestamps;
+    }
+
+    public int getPositionCount()
+    {
+        return positionCount;
+    }
+
+    public void setPositionCount(int aPositionCount)
+    {
+        positionCount = aPositionCount;
+    }
+
+    public List<Conflict> getConflicts()
+    {
+        return conflicts;
+    }
+
+    public void setConflicts(List<Conflict> aConflicts)
+    {
+        conflicts = aConflicts;
+    }
+
+    /**
+     * @param aAnnotatorTimestamps
+     *            the current CAS timestamps of the finished annotators of the document.
+     * @return whether the annotator CASes are the same as when the summary was created.
+     */
+    public boolean isBasedOn(Map<String, Long> aAnnotatorTimestamps)
+    {
+        return annotatorTimestamps.equals(aAnnotatorTimestamps);
+    }
+
+    /**
+     * @param aCurationTimestamp
+     *            the current timestamp of the curation CAS.
+     * @param aAnnotatorTimestamps
+     *            the current CAS timestamps of the finished annotators of the document.
+     * @return whether the summary still describes the curation CAS, i.e. neither the curation CAS
+     *         nor any of the annotator CASes has changed since the merge.
+     */
+    public boolean isUpToDate(Optional<Long> aCurationTimestamp,
+            Map<String, Long> aAnnotatorTimestamps)
+    {
+        return aCurationTimestamp.isPresent()
+                && aCurationTimestamp.get().equals(curationTimestamp)
+                && isBasedOn(aAnnotatorTimestamps);
+    }
+
+    /**
+     * A position which has not been merged because the annotators did not agree on it.
+     */
+    public static class Conflict
+        implements Serializable
+    {
+        private static final long serialVersionUID = 3402637004364346127L;
+
+        private String type;
+        private int begin;
+        private int end;
+        private ConflictKind kind;
+
+        public Conflict()
+        {
+            // Required for deserialization
+        }
+
+        public Conflict(String aType, int aBegin, int aEnd, ConflictKind aKind)
+        {
+            type = aType;
+            begin = aBegin;
+            end = aEnd;
+            kind = aKind;
+        }
+
+        public String getType()
+        {
+            return type;
+        }
+
+        public void setType(String aType)
+        {
+            type = aType;
+        }
+
+        public int getBegin()
+        {
+            return begin;
+        }
+
+        public void setBegin(int aBegin)
+        {
+            begin = aBegin;
+        }
+
+        public int getEnd()
+        {
+            return end;
+        }
+
+        public void setEnd(int aEnd)
+        {
+            end = aEnd;
+        }
+
+        public ConflictKind getKind()
+        {
+            return kind;
+        }
+
+        public void setKind(ConflictKind aKind)
+        {
+            kind = aKind;
+        }
+
+        /**
+         * @return whether the conflict is covered by the given range - the same criterion the
+         *         {@code CasDiff} uses to decide if an annotation is part of a range.
+         */
+        public boolean isCoveredBy(int aBegin, int aEnd)
+        {
+            return aBegin <= begin && end <= aEnd;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Conflict other = (Conflict) o;
+            return begin == other.begin && end == other.end && Objects.equals(type, other.type)
+                    && kind == other.kind;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(type, begin, end, kind);
+        }
+    }
+}
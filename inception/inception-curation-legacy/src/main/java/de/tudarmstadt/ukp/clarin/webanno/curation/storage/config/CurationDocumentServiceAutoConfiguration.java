@@ -25,6 +25,7 @@ import org.springframework.context.annotation.Configuration;
 import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
 import de.tudarmstadt.ukp.clarin.webanno.api.CasStorageService;
 import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
+import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
 import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationDocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationDocumentServiceImpl;
 
@@ -34,9 +35,9 @@ public class CurationDocumentServiceAutoConfiguration
     @Bean(CurationDocumentService.SERVICE_NAME)
     public CurationDocumentService curationDocumentService(CasStorageService aCasStorageService,
             AnnotationSchemaService aAnnotationService, ProjectService aProjectService,
-            EntityManager aEntityManager)
+            EntityManager aEntityManager, RepositoryProperties aRepositoryProperties)
     {
         return new CurationDocumentServiceImpl(aCasStorageService, aAnnotationService,
-                aProjectService, aEntityManager);
+                aProjectService, aEntityManager, aRepositoryProperties);
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.curation.casdiff;
+
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior.LINK_TARGET_AS_LABEL;
+import static java.util.Arrays.asList;
+import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.CasFactory;
+import org.apache.uima.resource.metadata.TypeDescription;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.span.SpanDiffAdapter;
+
+/**
+ * Measures the time needed to calculate a {@link CasDiff} depending on the number of annotators and
+ * on the number of annotations stacked at each position.
+ */
+@Tag("slow")
+public class CasDiffBenchmarkTest
+{
+    private static final String TYPE = "custom.Span";
+    private static final int POSITIONS = 2_000;
+    private static final int LABELS = 50;
+    private static final int ROUNDS = 3;
+
+    private static final int[] ANNOTATORS = { 2, 5, 10, 20 };
+    private static final int[] DENSITIES = { 1, 5, 20 };
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Test
+    public void benchmarkDiff() throws Exception
+    {
+        List<SpanDiffAdapter> adapters = asList(new SpanDiffAdapter(TYPE, "value"));
+
+        // Warm up
+        CasDiff.doDiff(adapters, LINK_TARGET_AS_LABEL, makeCases(2, 1));
+
+        for (int density : DENSITIES) {
+            for (int annotators : ANNOTATORS) {
+                Map<String, List<CAS>> casByUser = makeCases(annotators, density);
+
+                long time = 0;
+                int positions = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    CasDiff diff = CasDiff.doDiff(adapters, LINK_TARGET_AS_LABEL, casByUser);
+                    time += System.nanoTime() - start;
+                    positions = diff.getPositions().size();
+                }
+
+                log.info("annotators: {}  density: {}  positions: {}  diff: {} ms", annotators,
+                        density, positions, time / ROUNDS / 1_000_000);
+            }
+        }
+    }
+
+    private Map<String, List<CAS>> makeCases(int aAnnotators, int aDensity) throws Exception
+    {
+        TypeSystemDescription tsd = createTypeSystemDescription();
+        TypeDescription td = tsd.addType(TYPE, "", CAS.TYPE_NAME_ANNOTATION);
+        td.addFeature("value", "", CAS.TYPE_NAME_STRING);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < POSITIONS; i++) {
+            text.append("word ");
+        }
+
+        Map<String, List<CAS>> casByUser = new LinkedHashMap<>();
+        for (int a = 0; a < aAnnotators; a++) {
+            CAS cas = CasFactory.createCas(tsd);
+            cas.setDocumentText(text.toString());
+
+            Type type = cas.getTypeSystem().getType(TYPE);
+            Feature value = type.getFeatureByBaseName("value");
+            Random rnd = new Random(a);
+            for (int p = 0; p < POSITIONS; p++) {
+                for (int n = 0; n < aDensity; n++) {
+                    AnnotationFS fs = cas.createAnnotation(type, p * 5, p * 5 + 4);
+                    fs.setStringValue(value, "label" + rnd.nextInt(LABELS));
+                    cas.addFsToIndexes(fs);
+                }
+            }
+
+            casByUser.put("user" + a, asList(cas));
+        }
+        return casByUser;
+    }
+}
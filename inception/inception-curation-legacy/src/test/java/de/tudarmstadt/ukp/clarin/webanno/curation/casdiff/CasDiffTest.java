@@ -24,16 +24,19 @@ import static de.tudarmstadt.ukp.clarin.webanno.curation.CurationTestUtils.loadW
 import static de.tudarmstadt.ukp.clarin.webanno.curation.CurationTestUtils.makeLinkFS;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.CurationTestUtils.makeLinkHostFS;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.doDiff;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.doDiffDocument;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior.LINK_ROLE_AS_LABEL;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior.LINK_TARGET_AS_LABEL;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.relation.RelationDiffAdapter.DEPENDENCY_DIFF_ADAPTER;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.span.SpanDiffAdapter.POS_DIFF_ADAPTER;
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static org.apache.uima.fit.factory.JCasFactory.createJCas;
 import static org.apache.uima.fit.util.JCasUtil.select;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -47,11 +50,14 @@ import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
 import org.apache.uima.fit.testing.factory.TokenBuilder;
 import org.apache.uima.fit.util.FSUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeDescription;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.apache.uima.util.CasCreationUtils;
 import org.junit.jupiter.api.Test;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.Configuration;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.ConfigurationSet;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.DiffResult;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.relation.RelationDiffAdapter;
@@ -652,4 +658,91 @@ public class CasDiffTest
         //
         // assertEquals(0.0, agreement.getAgreement(), 0.00001d);
     }
+
+    @Test
+    public void stackedSpansAtDifferentUpgradeLevelsTest() throws Exception
+    {
+        // user1 has a CAS that was not yet upgraded to include the "score" feature, user2 has one
+        // that includes it but at its default value - the configurations must still match
+        TypeSystemDescription tsd1 = TypeSystemDescriptionFactory.createTypeSystemDescription();
+        tsd1.addType("custom.Span", "", CAS.TYPE_NAME_ANNOTATION) //
+                .addFeature("value", "", CAS.TYPE_NAME_STRING);
+        TypeSystemDescription tsd2 = TypeSystemDescriptionFactory.createTypeSystemDescription();
+        TypeDescription td2 = tsd2.addType("custom.Span", "", CAS.TYPE_NAME_ANNOTATION);
+        td2.addFeature("value", "", CAS.TYPE_NAME_STRING);
+        td2.addFeature("score", "", CAS.TYPE_NAME_DOUBLE);
+
+        Map<String, List<CAS>> casByUser = new LinkedHashMap<>();
+        for (TypeSystemDescription tsd : asList(tsd1, tsd2)) {
+            CAS cas = createJCas(tsd).getCas();
+            cas.setDocumentText("Test");
+            Type type = cas.getTypeSystem().getType("custom.Span");
+            for (String value : asList("A", "B", "C")) {
+                AnnotationFS fs = cas.createAnnotation(type, 0, 4);
+                FSUtil.setFeature(fs, "value", value);
+                cas.addFsToIndexes(fs);
+            }
+            casByUser.put("user" + (casByUser.size() + 1), asList(cas));
+        }
+
+        List<SpanDiffAdapter> diffAdapters = asList(
+                new SpanDiffAdapter("custom.Span", "value", "score"));
+
+        DiffResult result = doDiff(diffAdapters, LINK_TARGET_AS_LABEL, casByUser).toResult();
+
+        assertEquals(1, result.size());
+        ConfigurationSet cfgSet = result.getConfigurationSets().iterator().next();
+        assertEquals(3, cfgSet.getConfigurations().size());
+        for (Configuration cfg : cfgSet.getConfigurations()) {
+            assertEquals(2, cfg.getCasGroupIds().size());
+        }
+    }
+
+    @Test
+    public void perDocumentDiffsMergeIntoCollectionDiffTest() throws Exception
+    {
+        JCas user1Doc1 = JCasFactory.createText("This is a test .");
+        new POS(user1Doc1, 0, 4).addToIndexes();
+        new POS(user1Doc1, 5, 7).addToIndexes();
+
+        JCas user2Doc1 = JCasFactory.createText("This is a test .");
+        new POS(user2Doc1, 0, 4).addToIndexes();
+
+        JCas user2Doc2 = JCasFactory.createText("Another test .");
+        new POS(user2Doc2, 0, 7).addToIndexes();
+
+        List<SpanDiffAdapter> diffAdapters = asList(POS_DIFF_ADAPTER);
+
+        Map<String, List<CAS>> casByUser = new LinkedHashMap<>();
+        casByUser.put("user1", asList(user1Doc1.getCas(), null));
+        casByUser.put("user2", asList(user2Doc1.getCas(), user2Doc2.getCas()));
+        DiffResult expected = doDiff(diffAdapters, LINK_TARGET_AS_LABEL, casByUser).toResult();
+
+        Map<String, CAS> doc1 = new LinkedHashMap<>();
+        doc1.put("user1", user1Doc1.getCas());
+        doc1.put("user2", user2Doc1.getCas());
+        Map<String, CAS> doc2 = new LinkedHashMap<>();
+        doc2.put("user1", null);
+        doc2.put("user2", user2Doc2.getCas());
+
+        CasDiff diff2 = doDiffDocument(diffAdapters, LINK_TARGET_AS_LABEL, doc2, 1);
+        DiffResult actual = DiffResult.merge(asList(
+                doDiffDocument(diffAdapters, LINK_TARGET_AS_LABEL, doc1, 0).toResult(),
+                diff2.toResult()));
+
+        assertEquals(3, actual.size());
+        assertEquals(toStrings(expected.getPositions()), toStrings(actual.getPositions()));
+        assertEquals(expected.getCasGroupIds(), actual.getCasGroupIds());
+        assertEquals(toStrings(expected.getIncompleteConfigurationSets().keySet()),
+                toStrings(actual.getIncompleteConfigurationSets().keySet()));
+
+        // The CAS of a document diff is only visible at the CAS ID of the document
+        assertEquals(asList(null, user2Doc2.getCas()), diff2.getCasMap().get("user2"));
+        assertEquals(asList(null, null), diff2.getCasMap().get("user1"));
+    }
+
+    private static List<String> toStrings(Collection<?> aObjects)
+    {
+        return aObjects.stream().map(String::valueOf).collect(toList());
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.curation.storage;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.CURATION_USER;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary.ConflictKind.DISAGREE;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.CasStorageService;
+import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary.Conflict;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+
+public class CurationDocumentServiceImplTest
+{
+    @TempDir
+    public File repositoryDir;
+
+    private CasStorageService casStorageService;
+    private SourceDocument document;
+    private CurationDocumentServiceImpl sut;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        Project project = new Project("project");
+        project.setId(1L);
+        document = new SourceDocument("doc.txt", project, "text");
+        document.setId(2L);
+
+        @SuppressWarnings("unchecked")
+        TypedQuery<String> query = mock(TypedQuery.class);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(asList("anno1", "anno2"));
+        EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.createQuery(anyString(), eq(String.class))).thenReturn(query);
+
+        casStorageService = mock(CasStorageService.class);
+        when(casStorageService.getCasTimestamp(document, "anno1")).thenReturn(Optional.of(10L));
+        when(casStorageService.getCasTimestamp(document, "anno2")).thenReturn(Optional.of(20L));
+        when(casStorageService.getCasTimestamp(document, CURATION_USER))
+                .thenReturn(Optional.of(30L));
+
+        RepositoryProperties repositoryProperties = new RepositoryProperties();
+        repositoryProperties.setPath(repositoryDir);
+
+        sut = new CurationDocumentServiceImpl(casStorageService, null, null, entityManager,
+                repositoryProperties);
+    }
+
+    @Test
+    public void thatMergeSummaryCanBeWrittenAndRead() throws Exception
+    {
+        assertThat(sut.readMergeSummary(document)).isEmpty();
+
+        sut.writeMergeSummary(document, createSummary());
+
+        CurationMergeSummary summary = sut.readMergeSummary(document).get();
+        assertThat(summary.getDocumentId()).isEqualTo(2L);
+        assertThat(summary.getCurationTimestamp()).isEqualTo(30L);
+        assertThat(summary.getAnnotatorTimestamps()).containsExactly(Map.entry("anno1", 10L),
+                Map.entry("anno2", 20L));
+        assertThat(summary.getConflicts()).containsExactly(new Conflict("NE", 5, 10, DISAGREE));
+        assertThat(new File(repositoryDir, "project/1/document/2/curation-merge-summary.json"))
+                .isFile();
+    }
+
+    @Test
+    public void thatMergeSummaryIsCurrentWhileNothingChanges() throws Exception
+    {
+        sut.writeMergeSummary(document, createSummary());
+
+        assertThat(sut.readCurrentMergeSummary(document)).isPresent();
+    }
+
+    @Test
+    public void thatMergeSummaryIsOutdatedWhenAnnotatorCasChanges() throws Exception
+    {
+        sut.writeMergeSummary(document, createSummary());
+
+        when(casStorageService.getCasTimestamp(document, "anno2")).thenReturn(Optional.of(21L));
+
+        assertThat(sut.readCurrentMergeSummary(document)).isEmpty();
+        assertThat(sut.readMergeSummary(document)).isPresent();
+    }
+
+    @Test
+    public void thatMergeSummaryIsOutdatedWhenCurationCasChanges() throws Exception
+    {
+        sut.writeMergeSummary(document, createSummary());
+
+        when(casStorageService.getCasTimestamp(document, CURATION_USER))
+                .thenReturn(Optional.of(31L));
+
+        assertThat(sut.readCurrentMergeSummary(document)).isEmpty();
+    }
+
+    private CurationMergeSummary createSummary()
+    {
+        Map<String, Long> annotatorTimestamps = new LinkedHashMap<>();
+        annotatorTimestamps.put("anno1", 10L);
+        annotatorTimestamps.put("anno2", 20L);
+
+        CurationMergeSummary summary = new CurationMergeSummary();
+        summary.setDocumentId(document.getId());
+        summary.setCurationTimestamp(30L);
+        summary.setAnnotatorTimestamps(annotatorTimestamps);
+        summary.setPositionCount(3);
+        summary.getConflicts().add(new Conflict("NE", 5, 10, DISAGREE));
+        return summary;
+    }
+}
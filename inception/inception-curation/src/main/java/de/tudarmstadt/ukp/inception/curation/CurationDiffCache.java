@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.curation;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.SHARED_READ_ONLY_ACCESS;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.doDiffSingle;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.getDiffAdapters;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior.LINK_ROLE_AS_LABEL;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.uima.cas.CAS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.event.EventListener;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
+import de.tudarmstadt.ukp.clarin.webanno.api.CasStorageService;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.AnnotatorState;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterCasWrittenEvent;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.DiffResult;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.inception.curation.config.CurationServiceAutoConfiguration;
+
+/**
+ * Caches the results of the window-scoped {@link CasDiff diffs} computed by the
+ * {@link CurationRenderer}. A result is cached under the document, the window, the visible layers
+ * and the CAS timestamp of every user taking part in the diff, so it is only reused as long as none
+ * of the CASes has been written. Entries for a document and user are additionally dropped as soon
+ * as the CAS is written. Only the {@link DiffResult} is cached - unlike the {@link CasDiff}, it
+ * does not hold on to the CASes.
+ * <p>
+ * The diffs of neighbouring windows can be computed in the background via {@link #prefetch} so
+ * that they are available when the curator pages through the document.
+ * </p>
+ * <p>
+ * This class is exposed as a Spring Component via
+ * {@link CurationServiceAutoConfiguration#curationDiffCache}.
+ * </p>
+ */
+public class CurationDiffCache
+    implements DisposableBean
+{
+    private static final int MAX_CACHED_DIFFS = 64;
+    private static final int MAX_PENDING_PREFETCHES = 8;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final DocumentService documentService;
+    private final CasStorageService casStorageService;
+    private final AnnotationSchemaService annotationService;
+
+    private final Cache<DiffKey, DiffResult> diffs;
+    private final Set<DiffKey> pendingPrefetches;
+    private final ThreadPoolExecutor prefetchExecutor;
+
+    public CurationDiffCache(DocumentService aDocumentService,
+            CasStorageService aCasStorageService, AnnotationSchemaService aAnnotationService)
+    {
+        documentService = aDocumentService;
+        casStorageService = aCasStorageService;
+        annotationService = aAnnotationService;
+
+        diffs = Caffeine.newBuilder() //
+                .maximumSize(MAX_CACHED_DIFFS) //
+                .expireAfterAccess(10, MINUTES) //
+                .build();
+        pendingPrefetches = ConcurrentHashMap.newKeySet();
+
+        // Prefetching is best-effort - if the curator pages faster than we can prefetch, we drop
+        // the oldest requests which are most likely no longer relevant
+        prefetchExecutor = new ThreadPoolExecutor(1, 1, 60L, SECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_PREFETCHES), new BasicThreadFactory.Builder() //
+                        .daemon(true) //
+                        .namingPattern("curation-diff-prefetch-%d") //
+                        .build(),
+                new ThreadPoolExecutor.DiscardOldestPolicy());
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void destroy()
+    {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the result of the diff between the CAS of the current user and the CASes of the given
+     * users in the given window.
+     *
+     * @param aState
+     *            the annotator state providing the document, the current user and the visible
+     *            layers.
+     * @param aCas
+     *            the CAS of the current user.
+     * @param aUsers
+     *            the users whose annotations are to be compared to the current user's.
+     * @param aWindowBegin
+     *            the begin of the window.
+     * @param aWindowEnd
+     *            the end of the window.
+     * @return the diff result.
+     */
+    public DiffResult getDiff(AnnotatorState aState, CAS aCas, List<String> aUsers,
+            int aWindowBegin, int aWindowEnd)
+    {
+        SourceDocument doc = aState.getDocument();
+        String currentUser = aState.getUser().getUsername();
+        List<AnnotationLayer> layers = aState.getAnnotationLayers();
+        Optional<DiffKey> key = createKey(doc, currentUser, aUsers, layers, aWindowBegin,
+                aWindowEnd);
+
+        if (key.isEmpty()) {
+            return computeDiff(doc, layers, currentUser, aCas, aUsers, aWindowBegin, aWindowEnd,
+                    false);
+        }
+
+        return diffs.get(key.get(), k -> computeDiff(doc, layers, currentUser, aCas, aUsers,
+                aWindowBegin, aWindowEnd, false));
+    }
+
+    /**
+     * Schedules computing the diff for the given window in the background unless it is already
+     * cached.
+     */
+    public void prefetch(AnnotatorState aState, List<String> aUsers, int aWindowBegin,
+            int aWindowEnd)
+    {
+        SourceDocument doc = aState.getDocument();
+        String currentUser = aState.getUser().getUsername();
+        List<AnnotationLayer> layers = new ArrayList<>(aState.getAnnotationLayers());
+        List<String> users = new ArrayList<>(aUsers);
+
+        prefetchExecutor.execute(() -> {
+            Optional<DiffKey> key = createKey(doc, currentUser, users, layers, aWindowBegin,
+                    aWindowEnd);
+            if (key.isEmpty() || diffs.getIfPresent(key.get()) != null
+                    || !pendingPrefetches.add(key.get())) {
+                return;
+            }
+
+            try (CasStorageSession session = CasStorageSession.openNested()) {
+                CAS cas = documentService.readAnnotationCas(doc, currentUser,
+                        SHARED_READ_ONLY_ACCESS);
+                diffs.put(key.get(), computeDiff(doc, layers, currentUser, cas, users,
+                        aWindowBegin, aWindowEnd, true));
+                log.trace("Prefetched curation diff for window [{}-{}] of document [{}]({})",
+                        aWindowBegin, aWindowEnd, doc.getName(), doc.getId());
+            }
+            catch (Exception e) {
+                log.debug("Unable to prefetch curation diff for document [{}]({})", doc.getName(),
+                        doc.getId(), e);
+            }
+            finally {
+                pendingPrefetches.remove(key.get());
+            }
+        });
+    }
+
+    @EventListener
+    public void onAfterCasWritten(AfterCasWrittenEvent aEvent)
+    {
+        long docId = aEvent.getDocument().getDocument().getId();
+        String user = aEvent.getDocument().getUser();
+        diffs.asMap().keySet()
+                .removeIf(key -> key.documentId == docId && key.users.contains(user));
+    }
+
+    int size()
+    {
+        diffs.cleanUp();
+        return (int) diffs.estimatedSize();
+    }
+
+    private DiffResult computeDiff(SourceDocument aDocument, List<AnnotationLayer> aLayers,
+            String aCurrentUser, CAS aCas, List<String> aUsers, int aWindowBegin, int aWindowEnd,
+            boolean aShared)
+    {
+        Map<String, CAS> casses = new LinkedHashMap<>();
+
+        // This is the CAS that the user can actively edit
+        casses.put(aCurrentUser, aCas);
+
+        for (String user : aUsers) {
+            try {
+                CAS userCas = aShared
+                        ? documentService.readAnnotationCas(aDocument, user,
+                                SHARED_READ_ONLY_ACCESS)
+                        : documentService.readAnnotationCas(aDocument, user);
+                casses.put(user, userCas);
+            }
+            catch (IOException e) {
+                log.error("Could not retrieve CAS for user [{}] and project [{}]({})", user,
+                        aDocument.getProject().getName(), aDocument.getProject().getId(), e);
+            }
+        }
+
+        return doDiffSingle(getDiffAdapters(annotationService, aLayers), LINK_ROLE_AS_LABEL,
+                casses, aWindowBegin, aWindowEnd).toResult();
+    }
+
+    private Optional<DiffKey> createKey(SourceDocument aDocument, String aCurrentUser,
+            List<String> aUsers, List<AnnotationLayer> aLayers, int aWindowBegin, int aWindowEnd)
+    {
+        List<String> users = new ArrayList<>();
+        users.add(aCurrentUser);
+        users.addAll(aUsers);
+
+        List<Long> timestamps = new ArrayList<>();
+        for (String user : users) {
+            try {
+                Optional<Long> timestamp = casStorageService.getCasTimestamp(aDocument, user);
+                if (timestamp.isEmpty()) {
+                    // The CAS has not been written yet - we cannot tell if it changes
+                    return Optional.empty();
+                }
+                timestamps.add(timestamp.get());
+            }
+            catch (IOException e) {
+                return Optional.empty();
+            }
+        }
+
+        List<Long> layerIds = aLayers.stream().map(AnnotationLayer::getId).collect(toList());
+        long layerConfigurationVersion = annotationService
+                .getLayerConfigurationVersion(aDocument.getProject());
+
+        return Optional.of(new DiffKey(aDocument.getId(), aWindowBegin, aWindowEnd, users,
+                timestamps, layerIds, layerConfigurationVersion));
+    }
+
+    private static final class DiffKey
+    {
+        private final long documentId;
+        private final int windowBegin;
+        private final int windowEnd;
+        private final List<String> users;
+        private final List<Long> timestamps;
+        private final List<Long> layerIds;
+        private final long layerConfigurationVersion;
+
+        DiffKey(long aDocumentId, int aWindowBegin, int aWindowEnd, List<String> aUsers,
+                List<Long> aTimestamps, List<Long> aLayerIds, long aLayerConfigurationVersion)
+        {
+            documentId = aDocumentId;
+            windowBegin = aWindowBegin;
+            windowEnd = aWindowEnd;
+            users = aUsers;
+            timestamps = aTimestamps;
+            layerIds = aLayerIds;
+            layerConfigurationVersion = aLayerConfigurationVersion;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            DiffKey other = (DiffKey) o;
+            return documentId == other.documentId && windowBegin == other.windowBegin
+                    && windowEnd == other.windowEnd
+                    && layerConfigurationVersion == other.layerConfigurationVersion
+                    && users.equals(other.users) && timestamps.equals(other.timestamps)
+                    && layerIds.equals(other.layerIds);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(documentId, windowBegin, windowEnd, users, timestamps, layerIds,
+                    layerConfigurationVersion);
+        }
+    }
+}
@@ -17,16 +17,14 @@
  */
 package de.tudarmstadt.ukp.inception.curation;
 
-import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.doDiffSingle;
-import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.getDiffAdapters;
-import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior.LINK_ROLE_AS_LABEL;
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.selectFsByAddr;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -44,6 +42,8 @@ import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.layer.LayerSupportRegistry;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.AnnotatorState;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.VID;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.paging.PagingStrategy;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.paging.Unit;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.RenderStep;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.Renderer;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.model.VArc;
@@ -51,11 +51,9 @@ import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.model.VComment
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.model.VCommentType;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.model.VDocument;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.model.VObject;
-import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.Configuration;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.ConfigurationSet;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.DiffResult;
-import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.Position;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.internal.AID;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
@@ -77,19 +75,22 @@ public class CurationRenderer
 
     private final CurationService curationService;
     private final LayerSupportRegistry layerSupportRegistry;
-    private final DocumentService documentService;
     private final UserDao userRepository;
     private final AnnotationSchemaService annotationService;
+    private final DocumentService documentService;
+    private final CurationDiffCache diffCache;
 
     public CurationRenderer(CurationService aCurationService,
-            LayerSupportRegistry aLayerSupportRegistry, DocumentService aDocumentService,
-            UserDao aUserRepository, AnnotationSchemaService aAnnotationService)
+            LayerSupportRegistry aLayerSupportRegistry, UserDao aUserRepository,
+            AnnotationSchemaService aAnnotationService, DocumentService aDocumentService,
+            CurationDiffCache aDiffCache)
     {
         curationService = aCurationService;
         layerSupportRegistry = aLayerSupportRegistry;
-        documentService = aDocumentService;
         userRepository = aUserRepository;
         annotationService = aAnnotationService;
+        documentService = aDocumentService;
+        diffCache = aDiffCache;
     }
 
     @Override
@@ -104,29 +105,25 @@ public class CurationRenderer
             return;
         }
 
-        Map<String, CAS> casses = new LinkedHashMap<>();
+        List<String> selectedUsernames = selectedUsers.stream() //
+                .map(User::getUsername) //
+                .collect(toList());
 
-        // This is the CAS that the user can actively edit
+        DiffResult diff = diffCache.getDiff(aState, aCas, selectedUsernames, aWindowBeginOffset,
+                aWindowEndOffset);
+
+        // The diff result does not hold on to the CASes, so the CAS of an annotator is only read
+        // once one of their annotations needs to be rendered
+        Map<String, CAS> casses = new HashMap<>();
         casses.put(aState.getUser().getUsername(), aCas);
 
-        for (User user : selectedUsers) {
-            try {
-                CAS userCas = documentService.readAnnotationCas(aState.getDocument(),
-                        user.getUsername());
-                casses.put(user.getUsername(), userCas);
-            }
-            catch (IOException e) {
-                log.error("Could not retrieve CAS for user [{}] and project [{}]({})",
-                        user.getUsername(), aState.getProject().getName(),
-                        aState.getProject().getId(), e);
-            }
+        try {
+            prefetchNeighbourPages(aState, aCas, selectedUsernames);
+        }
+        catch (Exception e) {
+            // Prefetching is only an optimization and must not break rendering
+            log.debug("Unable to prefetch curation diffs for neighbouring pages", e);
         }
-
-        List<DiffAdapter> adapters = getDiffAdapters(annotationService,
-                aState.getAnnotationLayers());
-        CasDiff casDiff = doDiffSingle(adapters, LINK_ROLE_AS_LABEL, casses, aWindowBeginOffset,
-                aWindowEndOffset);
-        DiffResult diff = casDiff.toResult();
 
         // Listing the features once is faster than repeatedly hitting the DB to list features for
         // every layer.
@@ -160,8 +157,17 @@ public class CurationRenderer
                     .collect(toList());
 
             for (Configuration cfg : cfgSet.getConfigurations()) {
-                FeatureStructure fs = cfg.getRepresentative(casDiff.getCasMap());
                 String user = cfg.getRepresentativeCasGroupId();
+                FeatureStructure fs;
+                try {
+                    fs = selectFsByAddr(getCas(casses, aState, user),
+                            cfg.getRepresentativeAID().addr);
+                }
+                catch (IOException e) {
+                    log.error("Could not retrieve CAS for user [{}] and project [{}]({})", user,
+                            aState.getProject().getName(), aState.getProject().getId(), e);
+                    continue;
+                }
 
                 // We need to pass in *all* the annotation features here because we also to that in
                 // other places where we create renderers - and the set of features must always be
@@ -204,6 +210,56 @@ public class CurationRenderer
         }
     }
 
+    private CAS getCas(Map<String, CAS> aCasses, AnnotatorState aState, String aUser)
+        throws IOException
+    {
+        CAS cas = aCasses.get(aUser);
+        if (cas == null) {
+            cas = documentService.readAnnotationCas(aState.getDocument(), aUser);
+            aCasses.put(aUser, cas);
+        }
+        return cas;
+    }
+
+    /**
+     * Trigger computing the diffs for the previous and next page in the background so they are
+     * ready when the curator pages through the document. Only the units of the neighbouring pages
+     * are obtained from the paging strategy - not those of the whole document.
+     */
+    void prefetchNeighbourPages(AnnotatorState aState, CAS aCas, List<String> aUsers)
+    {
+        PagingStrategy pagingStrategy = aState.getPagingStrategy();
+        int windowSize = aState.getPreferences().getWindowSize();
+        if (pagingStrategy == null || windowSize < 1) {
+            return;
+        }
+
+        // Unit indexes are 1-based - pages beyond the start or end of the document do not exist
+        int first = aState.getFirstVisibleUnitIndex();
+        int rangeBegin = Math.max(1, first - windowSize);
+        int rangeEnd = first + 2 * windowSize - 1;
+
+        // Not all paging strategies honour the requested range exactly, so we ask for a slightly
+        // larger range and pick the units of each page by their index
+        List<Unit> units = pagingStrategy.units(aCas, rangeBegin - 1, rangeEnd);
+        for (int pageBegin : new int[] { first + windowSize, first - windowSize }) {
+            if (pageBegin < 1) {
+                continue;
+            }
+
+            int pageEnd = pageBegin + windowSize - 1;
+            List<Unit> page = units.stream() //
+                    .filter(unit -> pageBegin <= unit.getIndex() && unit.getIndex() <= pageEnd) //
+                    .collect(toList());
+            if (page.isEmpty()) {
+                continue;
+            }
+
+            diffCache.prefetch(aState, aUsers, page.get(0).getBegin(),
+                    page.get(page.size() - 1).getEnd());
+        }
+    }
+
     /**
      * Find and return the rendered VID which is equivalent to the given VID. E.g. if the given VID
      * belongs to an already curated annotation, then locate the VID for the rendered annotation of
@@ -30,10 +30,13 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import javax.persistence.EntityManager;
@@ -56,6 +59,7 @@ import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.AnnotatorState;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.AnnotatorStateUtils;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
@@ -75,6 +79,8 @@ import de.tudarmstadt.ukp.inception.curation.merge.MergeStrategy;
 public class CurationServiceImpl
     implements CurationService
 {
+    private static final int WRITE_LOCK_STRIPE_BITS = 6;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     // stores info on which users are selected and which doc is the curation-doc
@@ -87,6 +93,10 @@ public class CurationServiceImpl
     private final UserDao userRegistry;
     private final CasStorageService casStorageService;
 
+    // Serializes writes to the same curation CAS while writes to different curation CASes may run
+    // in parallel. Each lock guards all (document, curator) pairs that hash to its stripe.
+    private final Lock[] writeLocks;
+
     @Autowired
     public CurationServiceImpl(EntityManager aEntityManager, DocumentService aDocumentService,
             SessionRegistry aSessionRegistry, ProjectService aProjectService, UserDao aUserRegistry,
@@ -99,6 +109,11 @@ public class CurationServiceImpl
         projectService = aProjectService;
         userRegistry = aUserRegistry;
         casStorageService = aCasStorageService;
+
+        writeLocks = new Lock[1 << WRITE_LOCK_STRIPE_BITS];
+        for (int i = 0; i < writeLocks.length; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
     }
 
     /**
@@ -307,33 +322,68 @@ public class CurationServiceImpl
     }
 
     @Override
-    public synchronized void writeCurationCas(CAS aTargetCas, AnnotatorState aState,
-            long aProjectId)
+    public void writeCurationCas(CAS aTargetCas, AnnotatorState aState, long aProjectId)
     {
         SourceDocument doc = aState.getDocument();
-        String curatorName = getCurationState(aState.getUser().getUsername(), aProjectId)
-                .getCurationName();
+        String curatorName;
+        synchronized (curationStates) {
+            curatorName = getCurationState(aState.getUser().getUsername(), aProjectId)
+                    .getCurationName();
+        }
+
+        // Callers usually pass a CAS which they have read with exclusive access. That access
+        // already serializes all writers of the curation CAS, including batch merges which write
+        // the curation CAS directly through the CAS storage. Only writers without exclusive access
+        // need the write lock. Since writers holding exclusive access never wait for a write lock,
+        // the write lock and the exclusive access can not deadlock each other.
+        if (CasStorageSession.get().hasExclusiveAccess(doc, curatorName)) {
+            doWriteCurationCas(aTargetCas, aState, doc, curatorName);
+            return;
+        }
+
+        // Writers of different curation CASes only contend if they happen to share a stripe
+        Lock lock = getWriteLock(doc, curatorName);
+        lock.lock();
+        try {
+            doWriteCurationCas(aTargetCas, aState, doc, curatorName);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void doWriteCurationCas(CAS aTargetCas, AnnotatorState aState, SourceDocument aDoc,
+            String aCuratorName)
+    {
         try {
             User curator;
-            if (curatorName.equals(CURATION_USER)) {
+            if (aCuratorName.equals(CURATION_USER)) {
                 curator = new User(CURATION_USER);
             }
             else {
-                curator = userRegistry.get(curatorName);
+                curator = userRegistry.get(aCuratorName);
             }
-            AnnotationDocument annoDoc = documentService.createOrGetAnnotationDocument(doc,
+            AnnotationDocument annoDoc = documentService.createOrGetAnnotationDocument(aDoc,
                     curator);
             documentService.writeAnnotationCas(aTargetCas, annoDoc, true);
             AnnotatorStateUtils.updateDocumentTimestampAfterWrite(aState,
-                    casStorageService.getCasTimestamp(doc, curatorName));
+                    casStorageService.getCasTimestamp(aDoc, aCuratorName));
         }
         catch (IOException e) {
-            log.warn(String.format("Could not write CAS for user %s and document %d", curatorName,
-                    doc.getId()));
+            log.warn(String.format("Could not write CAS for user %s and document %d", aCuratorName,
+                    aDoc.getId()));
             e.printStackTrace();
         }
     }
 
+    private Lock getWriteLock(SourceDocument aDocument, String aCurator)
+    {
+        // Document IDs and curator names are often sequential which leaves the low bits of the
+        // plain hash poorly distributed, so we spread the hash and use its high bits instead
+        int hash = Objects.hash(aDocument.getId(), aCurator) * 0x9E3779B9;
+        return writeLocks[hash >>> (Integer.SIZE - WRITE_LOCK_STRIPE_BITS)];
+    }
+
     @Override
     public void updateUsersSelectedForCuration(String aCurrentUser, long aProjectId,
             Collection<User> aSelectedUsers)
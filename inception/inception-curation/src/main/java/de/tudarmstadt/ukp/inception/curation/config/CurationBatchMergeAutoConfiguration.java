@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.curation.config;
+
+import java.time.Duration;
+import java.time.LocalTime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
+import de.tudarmstadt.ukp.inception.curation.merge.BatchMergeScheduler;
+import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
+
+@Configuration
+@ConditionalOnProperty(prefix = "curation.batch-merge", name = "enabled", havingValue = "true")
+public class CurationBatchMergeAutoConfiguration
+{
+    @Bean
+    public BatchMergeScheduler batchMergeScheduler(SchedulingService aSchedulingService,
+            ProjectService aProjectService,
+            @Value("${curation.batch-merge.start-time:02:00}") String aStartTime,
+            @Value("${curation.batch-merge.interval:1d}") Duration aInterval,
+            @Value("${curation.batch-merge.min-annotators:2}") int aMinAnnotators,
+            @Value("${curation.batch-merge.parallelism:2}") int aParallelism)
+    {
+        return new BatchMergeScheduler(aSchedulingService, aProjectService,
+                LocalTime.parse(aStartTime), aInterval, aMinAnnotators, aParallelism);
+    }
+}
@@ -30,6 +30,7 @@ import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.layer.LayerSupportRegistry;
 import de.tudarmstadt.ukp.clarin.webanno.security.UserDao;
+import de.tudarmstadt.ukp.inception.curation.CurationDiffCache;
 import de.tudarmstadt.ukp.inception.curation.CurationEditorExtension;
 import de.tudarmstadt.ukp.inception.curation.CurationRenderer;
 import de.tudarmstadt.ukp.inception.curation.CurationService;
@@ -66,13 +67,21 @@ public class CurationServiceAutoConfiguration
         return new CurationSidebarFactory(aProjectService);
     }
 
+    @Bean
+    public CurationDiffCache curationDiffCache(DocumentService aDocumentService,
+            CasStorageService aCasStorageService, AnnotationSchemaService aAnnotationService)
+    {
+        return new CurationDiffCache(aDocumentService, aCasStorageService, aAnnotationService);
+    }
+
     @Bean
     public CurationRenderer curationRenderer(CurationService aCurationService,
-            LayerSupportRegistry aLayerSupportRegistry, DocumentService aDocumentService,
-            UserDao aUserRepository, AnnotationSchemaService aAnnotationService)
+            LayerSupportRegistry aLayerSupportRegistry, UserDao aUserRepository,
+            AnnotationSchemaService aAnnotationService, DocumentService aDocumentService,
+            CurationDiffCache aCurationDiffCache)
     {
-        return new CurationRenderer(aCurationService, aLayerSupportRegistry, aDocumentService,
-                aUserRepository, aAnnotationService);
+        return new CurationRenderer(aCurationService, aLayerSupportRegistry, aUserRepository,
+                aAnnotationService, aDocumentService, aCurationDiffCache);
     }
 
     @Bean(AutomaticMergeStrategy.BEAN_NAME)
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.curation.merge;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.inception.curation.config.CurationBatchMergeAutoConfiguration;
+import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
+
+/**
+ * Periodically schedules a {@link BatchMergeTask} for every project with finished annotations,
+ * by default once per night.
+ * <p>
+ * This class is exposed as a Spring Component via
+ * {@link CurationBatchMergeAutoConfiguration#batchMergeScheduler}.
+ * </p>
+ */
+public class BatchMergeScheduler
+    implements DisposableBean
+{
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SchedulingService schedulingService;
+    private final ProjectService projectService;
+    private final int minAnnotators;
+    private final int parallelism;
+
+    private final ScheduledExecutorService timer;
+
+    public BatchMergeScheduler(SchedulingService aSchedulingService,
+            ProjectService aProjectService, LocalTime aStartTime, Duration aInterval,
+            int aMinAnnotators, int aParallelism)
+    {
+        schedulingService = aSchedulingService;
+        projectService = aProjectService;
+        minAnnotators = aMinAnnotators;
+        parallelism = aParallelism;
+
+        timer = new ScheduledThreadPoolExecutor(0);
+        long initialDelay = getDelayUntil(LocalDateTime.now(), aStartTime).toMillis();
+        timer.scheduleAtFixedRate(this::scheduleBatchMerges, initialDelay,
+                aInterval.toMillis(), MILLISECONDS);
+    }
+
+    @Override
+    public void destroy()
+    {
+        timer.shutdownNow();
+    }
+
+    public void scheduleBatchMerge(Project aProject, String aTrigger)
+    {
+        schedulingService
+                .enqueue(new BatchMergeTask(aProject, aTrigger, minAnnotators, parallelism));
+    }
+
+    private void scheduleBatchMerges()
+    {
+        // An exception escaping from here would cancel all further runs of the timer
+        try {
+            for (Project project : projectService.listProjectsWithFinishedAnnos()) {
+                scheduleBatchMerge(project, "Batch merge timer");
+            }
+        }
+        catch (Exception e) {
+            log.error("Unable to schedule batch merges", e);
+        }
+    }
+
+    static Duration getDelayUntil(LocalDateTime aNow, LocalTime aStartTime)
+    {
+        LocalDateTime start = aNow.toLocalDate().atTime(aStartTime);
+        if (start.isBefore(aNow)) {
+            start = start.plusDays(1);
+        }
+        return Duration.between(aNow, start);
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.curation.merge;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.CasUpgradeMode.AUTO_CAS_UPGRADE;
+import static de.tudarmstadt.ukp.clarin.webanno.api.CasUpgradeMode.FORCE_CAS_UPGRADE;
+import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.CURATION_USER;
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.EXCLUSIVE_WRITE_ACCESS;
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.UNMANAGED_ACCESS;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.doDiffSingle;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.getDiffAdapters;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior.LINK_ROLE_AS_LABEL;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary.ConflictKind.DISAGREE;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary.ConflictKind.INCOMPLETE;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary.ConflictKind.STACKED;
+import static de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState.CURATION_FINISHED;
+import static de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState.CURATION_IN_PROGRESS;
+import static de.tudarmstadt.ukp.clarin.webanno.support.logging.MDCContext.withCallerContext;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
+import de.tudarmstadt.ukp.clarin.webanno.api.CasStorageService;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.ConfigurationSet;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.DiffResult;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casmerge.CasMerge;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationDocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary.Conflict;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary.ConflictKind;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.inception.scheduling.Task;
+
+/**
+ * Merges the annotations of all finished annotators into the curation CAS for every document of a
+ * project which has enough finished annotators and which is not being curated yet. Positions on
+ * which the annotators do not agree are not merged but recorded in a {@link CurationMergeSummary}
+ * which the curation page can use instead of diffing the document again.
+ * <p>
+ * Documents are processed in parallel. Each worker loads the CASes of only one document at a
+ * time, so the number of CASes in memory is bounded by the parallelism. Documents whose annotator
+ * CASes have not changed since the last merge are skipped.
+ */
+public class BatchMergeTask
+    extends Task
+{
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private @Autowired DocumentService documentService;
+    private @Autowired CurationDocumentService curationDocumentService;
+    private @Autowired CasStorageService casStorageService;
+    private @Autowired AnnotationSchemaService annotationService;
+
+    private final int minAnnotators;
+    private final int parallelism;
+
+    public BatchMergeTask(Project aProject, String aTrigger, int aMinAnnotators, int aParallelism)
+    {
+        super(aProject, aTrigger);
+        minAnnotators = aMinAnnotators;
+        parallelism = Math.max(1, aParallelism);
+    }
+
+    @Override
+    public void execute()
+    {
+        Project project = getProject();
+        List<AnnotationLayer> layers = annotationService.listAnnotationLayer(project).stream() //
+                .filter(AnnotationLayer::isEnabled) //
+                .collect(toList());
+        Queue<SourceDocument> pendingDocuments = new ConcurrentLinkedQueue<>(
+                curationDocumentService.listCuratableSourceDocuments(project));
+        AtomicInteger mergedDocuments = new AtomicInteger();
+        int workerCount = Math.min(parallelism, pendingDocuments.size());
+
+        long startTime = System.currentTimeMillis();
+
+        // The task thread takes part in the merge as well, so we only need additional workers
+        int poolSize = Math.max(1, workerCount - 1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 1, SECONDS,
+                new LinkedBlockingQueue<>(), new BasicThreadFactory.Builder() //
+                        .daemon(true) //
+                        .namingPattern("curation-batch-merge-" + project.getId() + "-%d") //
+                        .build());
+        executor.allowCoreThreadTimeOut(true);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 1; i < workerCount; i++) {
+                // The workers need the logging context of the task, e.g. for the repository path
+                workers.add(executor.submit(withCallerContext(
+                        () -> mergeDocuments(layers, pendingDocuments, mergedDocuments))));
+            }
+
+            mergeDocuments(layers, pendingDocuments, mergedDocuments);
+
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                catch (ExecutionException e) {
+                    log.error("Batch merge worker failed", e.getCause());
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        log.info("Batch merge of {} merged {} documents in {}ms (parallelism {})", project,
+                mergedDocuments.get(), System.currentTimeMillis() - startTime, workerCount);
+    }
+
+    private void mergeDocuments(List<AnnotationLayer> aLayers, Queue<SourceDocument> aDocuments,
+            AtomicInteger aMergedDocuments)
+    {
+        SourceDocument doc;
+        while ((doc = aDocuments.poll()) != null) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            // Use a session per document so that the CASes of the document can be released
+            // before the next document is loaded
+            try (CasStorageSession session = CasStorageSession.open()) {
+                if (mergeDocument(doc, aLayers)) {
+                    aMergedDocuments.incrementAndGet();
+                }
+            }
+            catch (Exception e) {
+                log.error("Unable to merge {} in {}", doc, getProject(), e);
+            }
+        }
+    }
+
+    /**
+     * @return whether the document has been merged, {@code false} if it has been skipped.
+     */
+    boolean mergeDocument(SourceDocument aDocument, List<AnnotationLayer> aLayers)
+        throws Exception
+    {
+        // The documents were listed when the task started - a curator may have started working on
+        // the document since
+        SourceDocument document = documentService
+                .getSourceDocument(aDocument.getProject().getId(), aDocument.getId());
+        if (isCurationStarted(document)) {
+            return false;
+        }
+
+        Map<String, Long> annotatorTimestamps = curationDocumentService
+                .getFinishedAnnotatorCasTimestamps(document);
+        if (annotatorTimestamps.size() < minAnnotators) {
+            return false;
+        }
+
+        // Cheap check to skip most documents without waiting for exclusive access - it is
+        // repeated once exclusive access has been obtained
+        if (!isCurationCasReplaceable(document, annotatorTimestamps)) {
+            return false;
+        }
+
+        // Exclusive access to the curation CAS is held from here until the session of the document
+        // is closed, so a curator cannot write the curation CAS between the checks below and the
+        // merged CAS being written. If there is no curation CAS yet, it is initialized from a copy
+        // of some annotation document - same as when the curation page initializes the curation
+        // CAS.
+        String templateUser = annotatorTimestamps.keySet().iterator().next();
+        AtomicBoolean created = new AtomicBoolean();
+        CAS targetCas = casStorageService.readOrCreateCas(document, CURATION_USER,
+                FORCE_CAS_UPGRADE, () -> {
+                    created.set(true);
+                    return documentService.readAnnotationCas(document, templateUser,
+                            FORCE_CAS_UPGRADE, UNMANAGED_ACCESS);
+                }, EXCLUSIVE_WRITE_ACCESS);
+
+        boolean merged = false;
+        try {
+            merged = mergeDocument(document, aLayers, annotatorTimestamps, targetCas,
+                    created.get());
+            return merged;
+        }
+        finally {
+            // Do not leave behind a curation CAS which we created but did not merge into
+            if (created.get() && !merged) {
+                casStorageService.deleteCas(document, CURATION_USER);
+            }
+        }
+    }
+
+    private boolean mergeDocument(SourceDocument aDocument, List<AnnotationLayer> aLayers,
+            Map<String, Long> aAnnotatorTimestamps, CAS aTargetCas, boolean aCreated)
+        throws Exception
+    {
+        // Check again now that nobody else can write the curation CAS
+        if (isCurationStarted(documentService.getSourceDocument(aDocument.getProject().getId(),
+                aDocument.getId()))) {
+            return false;
+        }
+
+        if (!aCreated && !isCurationCasReplaceable(aDocument, aAnnotatorTimestamps)) {
+            return false;
+        }
+
+        Map<String, CAS> casses = new LinkedHashMap<>();
+        for (String user : aAnnotatorTimestamps.keySet()) {
+            casses.put(user, documentService.readAnnotationCas(aDocument, user, AUTO_CAS_UPGRADE,
+                    UNMANAGED_ACCESS));
+        }
+
+        List<DiffAdapter> adapters = getDiffAdapters(annotationService, aLayers);
+        CasDiff casDiff = doDiffSingle(adapters, LINK_ROLE_AS_LABEL, casses, 0,
+                aTargetCas.getDocumentText().length());
+        DiffResult diff = casDiff.toResult();
+
+        CasMerge casMerge = new CasMerge(annotationService);
+        casMerge.setMergeIncompleteAnnotations(false);
+        casMerge.reMergeCas(diff, aDocument, CURATION_USER, aTargetCas, casses);
+
+        // Writing through the CAS storage directly since the curation document service requires
+        // an authenticated user
+        casStorageService.writeCas(aDocument, aTargetCas, CURATION_USER);
+
+        CurationMergeSummary summary = new CurationMergeSummary();
+        summary.setDocumentId(aDocument.getId());
+        summary.setCreated(System.currentTimeMillis());
+        summary.setCurationTimestamp(curationDocumentService.getCurationCasTimestamp(aDocument)
+                .orElse(null));
+        summary.setAnnotatorTimestamps(aAnnotatorTimestamps);
+        summary.setPositionCount(diff.getPositions().size());
+        summary.setConflicts(collectConflicts(casDiff, diff));
+        curationDocumentService.writeMergeSummary(aDocument, summary);
+
+        log.debug("Merged {} from {} annotators ({} positions, {} conflicts)", aDocument,
+                casses.size(), summary.getPositionCount(), summary.getConflicts().size());
+
+        return true;
+    }
+
+    private boolean isCurationCasReplaceable(SourceDocument aDocument,
+            Map<String, Long> aAnnotatorTimestamps)
+        throws IOException
+    {
+        Optional<Long> curationTimestamp = curationDocumentService
+                .getCurationCasTimestamp(aDocument);
+        if (curationTimestamp.isEmpty()) {
+            return true;
+        }
+
+        // A curation CAS which we did not create ourselves must not be overwritten
+        Optional<CurationMergeSummary> lastSummary = curationDocumentService
+                .readMergeSummary(aDocument);
+        if (lastSummary.isEmpty() || !Objects.equals(curationTimestamp.get(),
+                lastSummary.get().getCurationTimestamp())) {
+            return false;
+        }
+
+        if (lastSummary.get().isBasedOn(aAnnotatorTimestamps)) {
+            log.trace("Skipping unchanged {}", aDocument);
+            return false;
+        }
+
+        return true;
+    }
+
+    private static boolean isCurationStarted(SourceDocument aDocument)
+    {
+        // Never touch the curation CAS once a curator has started working on the document
+        return CURATION_IN_PROGRESS.equals(aDocument.getState())
+                || CURATION_FINISHED.equals(aDocument.getState());
+    }
+
+    static List<Conflict> collectConflicts(CasDiff aCasDiff, DiffResult aDiff)
+    {
+        List<Conflict> conflicts = new ArrayList<>();
+        for (ConfigurationSet cfgSet : aDiff.getConfigurationSets()) {
+            ConflictKind kind = getConflictKind(aDiff, cfgSet);
+            if (kind == null) {
+                continue;
+            }
+
+            FeatureStructure fs = cfgSet.getConfigurations().get(0)
+                    .getRepresentative(aCasDiff.getCasMap());
+            if (!(fs instanceof AnnotationFS)) {
+                continue;
+            }
+
+            AnnotationFS ann = (AnnotationFS) fs;
+            conflicts.add(new Conflict(cfgSet.getPosition().getType(), ann.getBegin(),
+                    ann.getEnd(), kind));
+        }
+        return conflicts;
+    }
+
+    /**
+     * Classifies a configuration set in the same order of precedence as the curation page does
+     * when calculating the state of a curation unit.
+     * 
+     * @return the kind of conflict or {@code null} if all annotators agree.
+     */
+    private static ConflictKind getConflictKind(DiffResult aDiff, ConfigurationSet aCfgSet)
+    {
+        for (String user : aCfgSet.getCasGroupIds()) {
+            if (aCfgSet.getConfigurations(user).size() > 1) {
+                return STACKED;
+            }
+        }
+
+        if (!aDiff.isComplete(aCfgSet)) {
+            return INCOMPLETE;
+        }
+
+        if (!aDiff.isAgreement(aCfgSet)) {
+            return DISAGREE;
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BatchMergeTask task = (BatchMergeTask) o;
+        return getProject().equals(task.getProject());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(getProject());
+    }
+}
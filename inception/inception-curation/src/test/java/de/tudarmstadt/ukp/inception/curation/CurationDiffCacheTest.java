@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.curation;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
+import de.tudarmstadt.ukp.clarin.webanno.api.CasStorageService;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.AnnotatorState;
+import de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterCasWrittenEvent;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.DiffResult;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class CurationDiffCacheTest
+{
+    private static final String CURATOR = "curator";
+    private static final List<String> ANNOTATORS = asList("anno1", "anno2");
+
+    private @Mock DocumentService documentService;
+    private @Mock CasStorageService casStorageService;
+    private @Mock AnnotationSchemaService annotationService;
+    private @Mock AnnotatorState state;
+
+    private SourceDocument document;
+    private CAS cas;
+    private CurationDiffCache sut;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        Project project = new Project("project");
+        project.setId(1L);
+        document = new SourceDocument("doc.txt", project, "text");
+        document.setId(1L);
+
+        cas = CasCreationUtils.createCas((TypeSystemDescription) null, null, null);
+        cas.setDocumentText("This is a test.");
+
+        when(state.getDocument()).thenReturn(document);
+        when(state.getUser()).thenReturn(new User(CURATOR));
+        when(state.getAnnotationLayers()).thenReturn(Collections.emptyList());
+        when(documentService.readAnnotationCas(any(SourceDocument.class), anyString()))
+                .thenReturn(cas);
+        when(documentService.readAnnotationCas(any(SourceDocument.class), anyString(),
+                any(CasAccessMode.class))).thenReturn(cas);
+        when(casStorageService.getCasTimestamp(any(SourceDocument.class), anyString()))
+                .thenReturn(Optional.of(1L));
+
+        sut = new CurationDiffCache(documentService, casStorageService, annotationService);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        sut.destroy();
+    }
+
+    @Test
+    public void thatDiffIsReusedWhileCasesAreUnchanged() throws Exception
+    {
+        DiffResult first = sut.getDiff(state, cas, ANNOTATORS, 0, 15);
+        DiffResult second = sut.getDiff(state, cas, ANNOTATORS, 0, 15);
+
+        assertThat(second).isSameAs(first);
+        assertThat(sut.size()).isEqualTo(1);
+        verify(documentService, times(ANNOTATORS.size())).readAnnotationCas(
+                any(SourceDocument.class), anyString());
+    }
+
+    @Test
+    public void thatDiffIsScopedToWindow()
+    {
+        DiffResult first = sut.getDiff(state, cas, ANNOTATORS, 0, 4);
+        DiffResult second = sut.getDiff(state, cas, ANNOTATORS, 5, 15);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(sut.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void thatDiffIsRecomputedWhenTimestampChanges() throws Exception
+    {
+        DiffResult first = sut.getDiff(state, cas, ANNOTATORS, 0, 15);
+
+        when(casStorageService.getCasTimestamp(document, "anno2")).thenReturn(Optional.of(2L));
+        DiffResult second = sut.getDiff(state, cas, ANNOTATORS, 0, 15);
+
+        assertThat(second).isNotSameAs(first);
+    }
+
+    @Test
+    public void thatDiffIsNotCachedWithoutTimestamp() throws Exception
+    {
+        when(casStorageService.getCasTimestamp(document, "anno1")).thenReturn(Optional.empty());
+
+        sut.getDiff(state, cas, ANNOTATORS, 0, 15);
+
+        assertThat(sut.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void thatWritingCasInvalidatesDiff()
+    {
+        sut.getDiff(state, cas, ANNOTATORS, 0, 15);
+        sut.getDiff(state, cas, asList("anno1"), 0, 15);
+        assertThat(sut.size()).isEqualTo(2);
+
+        AnnotationDocument annDoc = new AnnotationDocument("anno2", document);
+        sut.onAfterCasWritten(new AfterCasWrittenEvent(this, annDoc, cas));
+
+        assertThat(sut.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void thatPrefetchedDiffIsReused() throws Exception
+    {
+        sut.prefetch(state, ANNOTATORS, 0, 15);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (sut.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(sut.size()).isEqualTo(1);
+
+        sut.getDiff(state, cas, ANNOTATORS, 0, 15);
+
+        assertThat(sut.size()).isEqualTo(1);
+        verify(documentService, never()).readAnnotationCas(any(SourceDocument.class),
+                anyString());
+    }
+}
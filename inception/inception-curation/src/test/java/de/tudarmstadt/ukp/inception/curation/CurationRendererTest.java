@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.curation;
+
+import static java.util.Arrays.asList;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.layer.LayerSupportRegistry;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.AnnotationPreference;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.AnnotatorState;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.paging.LineOrientedPagingStrategy;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.paging.PagingStrategy;
+import de.tudarmstadt.ukp.clarin.webanno.security.UserDao;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class CurationRendererTest
+{
+    private static final List<String> ANNOTATORS = asList("anno1", "anno2");
+
+    private @Mock CurationService curationService;
+    private @Mock LayerSupportRegistry layerSupportRegistry;
+    private @Mock UserDao userRepository;
+    private @Mock AnnotationSchemaService annotationService;
+    private @Mock DocumentService documentService;
+    private @Mock CurationDiffCache diffCache;
+    private @Mock AnnotatorState state;
+
+    private PagingStrategy pagingStrategy;
+    private CAS cas;
+    private CurationRenderer sut;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        // Ten lines of six characters each (including the line break)
+        cas = CasCreationUtils.createCas((TypeSystemDescription) null, null, null);
+        cas.setDocumentText("line1\nline2\nline3\nline4\nline5\nline6\nline7\nline8\nline9\nlinea");
+
+        AnnotationPreference preferences = new AnnotationPreference();
+        preferences.setWindowSize(3);
+
+        pagingStrategy = spy(new LineOrientedPagingStrategy());
+        when(state.getPagingStrategy()).thenReturn(pagingStrategy);
+        when(state.getPreferences()).thenReturn(preferences);
+
+        sut = new CurationRenderer(curationService, layerSupportRegistry, userRepository,
+                annotationService, documentService, diffCache);
+    }
+
+    @Test
+    public void thatNeighbourPagesArePrefetched()
+    {
+        when(state.getFirstVisibleUnitIndex()).thenReturn(4);
+
+        sut.prefetchNeighbourPages(state, cas, ANNOTATORS);
+
+        // Lines 1-3 and lines 7-9
+        verify(diffCache).prefetch(state, ANNOTATORS, 0, 17);
+        verify(diffCache).prefetch(state, ANNOTATORS, 36, 53);
+        verify(pagingStrategy, never()).units(cas);
+    }
+
+    @Test
+    public void thatPagesBeyondDocumentAreNotPrefetched()
+    {
+        when(state.getFirstVisibleUnitIndex()).thenReturn(1);
+
+        sut.prefetchNeighbourPages(state, cas, ANNOTATORS);
+
+        verify(diffCache).prefetch(state, ANNOTATORS, 18, 35);
+        verify(diffCache, never()).prefetch(eq(state), anyList(), eq(0), anyInt());
+    }
+
+    @Test
+    public void thatShortLastPageIsPrefetched()
+    {
+        when(state.getFirstVisibleUnitIndex()).thenReturn(7);
+
+        sut.prefetchNeighbourPages(state, cas, ANNOTATORS);
+
+        // Lines 4-6 and line 10
+        verify(diffCache).prefetch(state, ANNOTATORS, 18, 35);
+        verify(diffCache).prefetch(state, ANNOTATORS, 54, 59);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.curation;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.EXCLUSIVE_WRITE_ACCESS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.apache.uima.cas.CAS;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.CasStorageService;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.AnnotatorState;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.UserDao;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+
+public class CurationServiceImplConcurrencyTest
+{
+    private static final int THREADS = 8;
+    private static final int WRITES_PER_THREAD = 25;
+
+    private Project project;
+    private SourceDocument document;
+    private DocumentService documentService;
+    private CurationServiceImpl sut;
+
+    // Number of writers currently inside writeAnnotationCas per curation CAS
+    private final Map<String, AtomicInteger> activeWriters = new ConcurrentHashMap<>();
+    private final AtomicInteger maxActivePerCas = new AtomicInteger();
+    private final AtomicInteger maxActiveTotal = new AtomicInteger();
+    private final AtomicInteger activeTotal = new AtomicInteger();
+    // Each write waits until this many writes are in progress or until a timeout
+    private final CountDownLatch rendezvous = new CountDownLatch(THREADS);
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        project = new Project("project");
+        project.setId(1L);
+        document = new SourceDocument("doc.txt", project, "text");
+        document.setId(1L);
+
+        // No curation settings are stored, so each user curates into their own CAS
+        @SuppressWarnings("unchecked")
+        TypedQuery<CurationSettings> query = mock(TypedQuery.class);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.setMaxResults(anyInt())).thenReturn(query);
+        when(query.getResultList()).thenReturn(Collections.emptyList());
+        EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.createQuery(anyString(), eq(CurationSettings.class)))
+                .thenReturn(query);
+
+        UserDao userDao = mock(UserDao.class, withSettings().stubOnly());
+        when(userDao.get(anyString())).thenAnswer(inv -> new User(inv.getArgument(0)));
+
+        CasStorageService casStorageService = mock(CasStorageService.class,
+                withSettings().stubOnly());
+        when(casStorageService.getCasTimestamp(any(), anyString())).thenReturn(Optional.of(1L));
+
+        documentService = mock(DocumentService.class, withSettings().stubOnly());
+        when(documentService.createOrGetAnnotationDocument(any(), any()))
+                .thenAnswer(inv -> new AnnotationDocument(inv.<User> getArgument(1).getUsername(),
+                        inv.getArgument(0)));
+        doAnswer(inv -> {
+            AnnotationDocument annDoc = inv.getArgument(1);
+            String key = annDoc.getDocument().getId() + "/" + annDoc.getUser();
+            AtomicInteger active = activeWriters.computeIfAbsent(key, k -> new AtomicInteger());
+            maxActivePerCas.accumulateAndGet(active.incrementAndGet(), Math::max);
+            maxActiveTotal.accumulateAndGet(activeTotal.incrementAndGet(), Math::max);
+            try {
+                // Simulate serializing the CAS - with a global lock, the writers would only
+                // proceed one by one as the wait times out
+                rendezvous.countDown();
+                rendezvous.await(100, MILLISECONDS);
+            }
+            finally {
+                activeTotal.decrementAndGet();
+                active.decrementAndGet();
+            }
+            return null;
+        }).when(documentService).writeAnnotationCas(any(), any(AnnotationDocument.class),
+                anyBoolean());
+
+        sut = new CurationServiceImpl(entityManager, documentService, null, null, userDao,
+                casStorageService);
+    }
+
+    @Test
+    public void thatWritesToSameCurationCasAreSerialized() throws Exception
+    {
+        runWriters(i -> "curator");
+
+        assertThat(maxActivePerCas.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void thatWritesToDifferentCurationCasesRunInParallel() throws Exception
+    {
+        runWriters(i -> "curator" + i);
+
+        assertThat(maxActivePerCas.get()).isEqualTo(1);
+        assertThat(maxActiveTotal.get()).isEqualTo(THREADS);
+    }
+
+    @Test
+    public void thatWriterWithExclusiveAccessDoesNotWaitForWriteLock() throws Exception
+    {
+        CountDownLatch blockedWriterEntered = new CountDownLatch(1);
+        CountDownLatch exclusiveWriteDone = new CountDownLatch(1);
+        doAnswer(inv -> {
+            if (CasStorageSession.get().hasExclusiveAccess(document, "curator")) {
+                exclusiveWriteDone.countDown();
+            }
+            else {
+                // Keep holding the write lock until the writer with exclusive access is done
+                blockedWriterEntered.countDown();
+                exclusiveWriteDone.await(1, MINUTES);
+            }
+            return null;
+        }).when(documentService).writeAnnotationCas(any(), any(AnnotationDocument.class),
+                anyBoolean());
+
+        CAS cas = mock(CAS.class);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> lockHolder = executor.submit(() -> {
+            try (CasStorageSession session = CasStorageSession.open()) {
+                sut.writeCurationCas(cas, createState("curator"), project.getId());
+            }
+            return null;
+        });
+        assertThat(blockedWriterEntered.await(10, SECONDS)).isTrue();
+
+        Future<?> exclusiveWriter = executor.submit(() -> {
+            try (CasStorageSession session = CasStorageSession.open()) {
+                session.add(document.getId(), "curator", EXCLUSIVE_WRITE_ACCESS, cas);
+                sut.writeCurationCas(cas, createState("curator"), project.getId());
+            }
+            return null;
+        });
+
+        assertThat(exclusiveWriteDone.await(10, SECONDS)).isTrue();
+        exclusiveWriter.get(1, MINUTES);
+        lockHolder.get(1, MINUTES);
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, SECONDS)).isTrue();
+    }
+
+    private void runWriters(IntFunction<String> aCurator) throws Exception
+    {
+        CAS cas = mock(CAS.class);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            AnnotatorState state = createState(aCurator.apply(t));
+            results.add(executor.submit(() -> {
+                startSignal.await();
+                try (CasStorageSession session = CasStorageSession.open()) {
+                    for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                        sut.writeCurationCas(cas, state, project.getId());
+                    }
+                }
+                return null;
+            }));
+        }
+
+        startSignal.countDown();
+        for (Future<?> result : results) {
+            result.get(1, MINUTES);
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, SECONDS)).isTrue();
+    }
+
+    private AnnotatorState createState(String aUsername)
+    {
+        AnnotatorState state = mock(AnnotatorState.class, withSettings().stubOnly());
+        when(state.getDocument()).thenReturn(document);
+        when(state.getUser()).thenReturn(new User(aUsername));
+        return state;
+    }
+}
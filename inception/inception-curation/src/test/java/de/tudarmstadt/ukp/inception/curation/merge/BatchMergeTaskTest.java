@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.curation.merge;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.CasUpgradeMode.AUTO_CAS_UPGRADE;
+import static de.tudarmstadt.ukp.clarin.webanno.api.CasUpgradeMode.FORCE_CAS_UPGRADE;
+import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.CURATION_USER;
+import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.SPAN_TYPE;
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.EXCLUSIVE_WRITE_ACCESS;
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.UNMANAGED_ACCESS;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary.ConflictKind.DISAGREE;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnchoringMode.TOKENS;
+import static de.tudarmstadt.ukp.clarin.webanno.model.OverlapMode.OVERLAP_ONLY;
+import static de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState.ANNOTATION_IN_PROGRESS;
+import static de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState.CURATION_IN_PROGRESS;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.CasFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
+import de.tudarmstadt.ukp.clarin.webanno.api.CasProvider;
+import de.tudarmstadt.ukp.clarin.webanno.api.CasStorageService;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.feature.FeatureSupportRegistryImpl;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.feature.StringFeatureSupport;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.layer.LayerBehaviorRegistryImpl;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.layer.LayerSupportRegistryImpl;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.layer.SpanLayerSupport;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationDocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class BatchMergeTaskTest
+{
+    private @Mock DocumentService documentService;
+    private @Mock CurationDocumentService curationDocumentService;
+    private @Mock CasStorageService casStorageService;
+    private @Mock AnnotationSchemaService annotationService;
+
+    private static final String TEXT = "John likes Mary";
+
+    private Map<String, Long> annotatorTimestamps;
+    private Project project;
+    private SourceDocument document;
+    private BatchMergeTask sut;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        project = new Project("project");
+        project.setId(1L);
+        document = new SourceDocument("doc.txt", project, "text");
+        document.setId(1L);
+        document.setState(ANNOTATION_IN_PROGRESS);
+
+        annotatorTimestamps = new LinkedHashMap<>();
+        annotatorTimestamps.put("anno1", 10L);
+        annotatorTimestamps.put("anno2", 20L);
+        when(documentService.getSourceDocument(project.getId(), document.getId()))
+                .thenReturn(document);
+        when(curationDocumentService.getFinishedAnnotatorCasTimestamps(document))
+                .thenReturn(annotatorTimestamps);
+        when(curationDocumentService.readMergeSummary(document)).thenReturn(Optional.empty());
+        when(curationDocumentService.getCurationCasTimestamp(document))
+                .thenReturn(Optional.empty());
+
+        sut = new BatchMergeTask(project, "test", 2, 1);
+        ReflectionTestUtils.setField(sut, "documentService", documentService);
+        ReflectionTestUtils.setField(sut, "curationDocumentService", curationDocumentService);
+        ReflectionTestUtils.setField(sut, "casStorageService", casStorageService);
+        ReflectionTestUtils.setField(sut, "annotationService", annotationService);
+    }
+
+    @Test
+    public void thatDocumentInCurationIsSkipped() throws Exception
+    {
+        document.setState(CURATION_IN_PROGRESS);
+
+        assertThat(sut.mergeDocument(document, emptyList())).isFalse();
+        assertNothingMerged();
+    }
+
+    @Test
+    public void thatDocumentWithTooFewAnnotatorsIsSkipped() throws Exception
+    {
+        annotatorTimestamps.remove("anno2");
+
+        assertThat(sut.mergeDocument(document, emptyList())).isFalse();
+        assertNothingMerged();
+    }
+
+    @Test
+    public void thatDocumentStateIsReadFromDatabase() throws Exception
+    {
+        SourceDocument current = new SourceDocument("doc.txt", project, "text");
+        current.setId(document.getId());
+        current.setState(CURATION_IN_PROGRESS);
+        when(documentService.getSourceDocument(project.getId(), document.getId()))
+                .thenReturn(current);
+
+        assertThat(sut.mergeDocument(document, emptyList())).isFalse();
+        assertNothingMerged();
+    }
+
+    @Test
+    public void thatCurationCasNotCreatedByBatchMergeIsKept() throws Exception
+    {
+        when(curationDocumentService.getCurationCasTimestamp(document))
+                .thenReturn(Optional.of(30L));
+
+        assertThat(sut.mergeDocument(document, emptyList())).isFalse();
+        assertNothingMerged();
+    }
+
+    @Test
+    public void thatUnchangedDocumentIsSkipped() throws Exception
+    {
+        CurationMergeSummary summary = new CurationMergeSummary();
+        summary.setCurationTimestamp(30L);
+        summary.setAnnotatorTimestamps(new LinkedHashMap<>(annotatorTimestamps));
+        when(curationDocumentService.readMergeSummary(document)).thenReturn(Optional.of(summary));
+        when(curationDocumentService.getCurationCasTimestamp(document))
+                .thenReturn(Optional.of(30L));
+
+        assertThat(sut.mergeDocument(document, emptyList())).isFalse();
+        assertNothingMerged();
+    }
+
+    @Test
+    public void thatAgreeingAnnotationsAreMerged() throws Exception
+    {
+        AnnotationLayer neLayer = new AnnotationLayer(NamedEntity.class.getName(), "Named Entity",
+                SPAN_TYPE, project, false, TOKENS, OVERLAP_ONLY);
+        AnnotationFeature neFeature = new AnnotationFeature();
+        neFeature.setName("value");
+        neFeature.setEnabled(true);
+        neFeature.setType(CAS.TYPE_NAME_STRING);
+        neFeature.setUiName("value");
+        neFeature.setLayer(neLayer);
+        neFeature.setProject(project);
+        neFeature.setVisible(true);
+        setUpSchema(neLayer, neFeature);
+
+        // Both annotators agree on "John" but not on "Mary"
+        CAS anno1 = createCas("PER", "PER");
+        CAS anno2 = createCas("PER", "LOC");
+        CAS template = createCas("PER", "PER");
+        when(documentService.readAnnotationCas(document, "anno1", AUTO_CAS_UPGRADE,
+                UNMANAGED_ACCESS)).thenReturn(anno1);
+        when(documentService.readAnnotationCas(document, "anno2", AUTO_CAS_UPGRADE,
+                UNMANAGED_ACCESS)).thenReturn(anno2);
+        when(documentService.readAnnotationCas(document, "anno1", FORCE_CAS_UPGRADE,
+                UNMANAGED_ACCESS)).thenReturn(template);
+        when(casStorageService.readOrCreateCas(eq(document), eq(CURATION_USER),
+                eq(FORCE_CAS_UPGRADE), any(), eq(EXCLUSIVE_WRITE_ACCESS)))
+                        .thenAnswer(call -> call.getArgument(3, CasProvider.class).get());
+        // The curation CAS does not exist before the merge
+        when(curationDocumentService.getCurationCasTimestamp(document))
+                .thenReturn(Optional.empty(), Optional.of(30L));
+
+        assertThat(sut.mergeDocument(document, asList(neLayer))).isTrue();
+
+        ArgumentCaptor<CAS> writtenCas = ArgumentCaptor.forClass(CAS.class);
+        verify(casStorageService).writeCas(eq(document), writtenCas.capture(), eq(CURATION_USER));
+        assertThat(writtenCas.getValue()).isSameAs(template);
+        assertThat(writtenCas.getValue().select(NamedEntity.class).asList()) //
+                .extracting(NamedEntity::getCoveredText, NamedEntity::getValue) //
+                .containsExactly(tuple("John", "PER"));
+        verify(casStorageService, never()).deleteCas(any(), any());
+
+        ArgumentCaptor<CurationMergeSummary> summary = ArgumentCaptor
+                .forClass(CurationMergeSummary.class);
+        verify(curationDocumentService).writeMergeSummary(eq(document), summary.capture());
+        assertThat(summary.getValue().getCurationTimestamp()).isEqualTo(30L);
+        assertThat(summary.getValue().isBasedOn(annotatorTimestamps)).isTrue();
+        assertThat(summary.getValue().getPositionCount()).isEqualTo(2);
+        assertThat(summary.getValue().getConflicts()) //
+                .extracting(c -> c.getBegin(), c -> c.getEnd(), c -> c.getKind()) //
+                .containsExactly(tuple(11, 15, DISAGREE));
+    }
+
+    private void setUpSchema(AnnotationLayer aLayer, AnnotationFeature aFeature)
+    {
+        FeatureSupportRegistryImpl featureSupportRegistry = new FeatureSupportRegistryImpl(
+                asList(new StringFeatureSupport()));
+        featureSupportRegistry.init();
+        LayerBehaviorRegistryImpl layerBehaviorRegistry = new LayerBehaviorRegistryImpl(asList());
+        layerBehaviorRegistry.init();
+        LayerSupportRegistryImpl layerSupportRegistry = new LayerSupportRegistryImpl(
+                asList(new SpanLayerSupport(featureSupportRegistry, null, layerBehaviorRegistry)));
+        layerSupportRegistry.init();
+
+        when(annotationService.findLayer(project, aLayer.getName())).thenReturn(aLayer);
+        when(annotationService.listSupportedFeatures(aLayer)).thenReturn(asList(aFeature));
+        when(annotationService.listAnnotationFeature(aLayer)).thenReturn(asList(aFeature));
+        when(annotationService.getAdapter(aLayer)).thenAnswer(call -> layerSupportRegistry
+                .getLayerSupport(aLayer).createAdapter(aLayer, () -> asList(aFeature)));
+    }
+
+    private CAS createCas(String aJohnLabel, String aMaryLabel) throws Exception
+    {
+        CAS cas = CasFactory.createText(TEXT);
+        Type neType = cas.getTypeSystem().getType(NamedEntity.class.getName());
+        Feature valueFeature = neType.getFeatureByBaseName("value");
+        AnnotationFS john = cas.createAnnotation(neType, 0, 4);
+        john.setFeatureValueFromString(valueFeature, aJohnLabel);
+        cas.addFsToIndexes(john);
+        AnnotationFS mary = cas.createAnnotation(neType, 11, 15);
+        mary.setFeatureValueFromString(valueFeature, aMaryLabel);
+        cas.addFsToIndexes(mary);
+        return cas;
+    }
+
+    private void assertNothingMerged() throws Exception
+    {
+        verify(documentService, never()).readAnnotationCas(any(SourceDocument.class), any(),
+                any(), any());
+        verify(casStorageService, never()).writeCas(any(), any(), any());
+        verify(curationDocumentService, never()).writeMergeSummary(any(), any());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.FeatureDescription;
+import org.apache.uima.resource.metadata.TypeDescription;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.resource.metadata.impl.TypeSystemDescription_impl;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.TypeSystemUtil;
+import org.xml.sax.SAXException;
+
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
+
+/**
+ * Support for exchanging CASes with the external recommender in the UIMA compressed binary
+ * format (form 6). Only the types which are relevant to the recommender are sent.
+ */
+public final class BinaryCasSupport
+{
+    private static final String UIMA_PREFIX = "uima.";
+
+    private BinaryCasSupport()
+    {
+        // No instances
+    }
+
+    /**
+     * Creates a type system which contains only the given types, their supertypes and those of
+     * their features which can be represented in the reduced type system.
+     */
+    public static FilteredTypeSystem filterTypeSystem(TypeSystem aTypeSystem,
+            Set<String> aTypeNames)
+        throws RecommendationException
+    {
+        TypeSystemDescription fullTsd = TypeSystemUtil
+                .typeSystem2TypeSystemDescription(aTypeSystem);
+        Map<String, TypeDescription> typesByName = new HashMap<>();
+        for (TypeDescription td : fullTsd.getTypes()) {
+            typesByName.put(td.getName(), td);
+        }
+
+        Set<String> keep = new HashSet<>();
+        for (String typeName : aTypeNames) {
+            String name = typeName;
+            while (name != null && !name.startsWith(UIMA_PREFIX) && keep.add(name)) {
+                TypeDescription td = typesByName.get(name);
+                name = td != null ? td.getSupertypeName() : null;
+            }
+        }
+
+        List<TypeDescription> filteredTypes = new ArrayList<>();
+        for (TypeDescription td : fullTsd.getTypes()) {
+            if (!keep.contains(td.getName()) && !td.getName().startsWith(UIMA_PREFIX)) {
+                continue;
+            }
+
+            List<FeatureDescription> features = new ArrayList<>();
+            for (FeatureDescription fd : td.getFeatures()) {
+                if (isAvailable(fd.getRangeTypeName(), keep)
+                        && isAvailable(fd.getElementType(), keep)) {
+                    features.add(fd);
+                }
+            }
+            td.setFeatures(features.toArray(FeatureDescription[]::new));
+            filteredTypes.add(td);
+        }
+
+        TypeSystemDescription filteredTsd = new TypeSystemDescription_impl();
+        filteredTsd.setTypes(filteredTypes.toArray(TypeDescription[]::new));
+
+        try (StringWriter out = new StringWriter()) {
+            TypeSystem filteredTs = CasCreationUtils.createCas(filteredTsd, null, null)
+                    .getTypeSystem();
+            filteredTsd.toXML(out);
+            return new FilteredTypeSystem(filteredTs, out.toString());
+        }
+        catch (ResourceInitializationException | SAXException | IOException e) {
+            throw new RecommendationException("Could not create filtered type system", e);
+        }
+    }
+
+    private static boolean isAvailable(String aTypeName, Set<String> aKeep)
+    {
+        return aTypeName == null || aTypeName.startsWith(UIMA_PREFIX) || aKeep.contains(aTypeName);
+    }
+
+    /**
+     * Serializes the CAS using the given filtered type system.
+     *
+     * @return the Base64-encoded CAS.
+     */
+    public static String serialize(CAS aCas, FilteredTypeSystem aTypeSystem)
+        throws RecommendationException
+    {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Serialization.serializeWithCompression(aCas, out, aTypeSystem.getTypeSystem());
+            return Base64.getEncoder().encodeToString(out.toByteArray());
+        }
+        catch (ResourceInitializationException | IOException e) {
+            throw new RecommendationException("Error while serializing CAS!", e);
+        }
+    }
+
+    /**
+     * Deserializes a Base64-encoded CAS which uses the given filtered type system into the given
+     * CAS. Any previous content of the CAS is replaced.
+     */
+    public static void deserialize(CAS aCas, String aData, FilteredTypeSystem aTypeSystem)
+        throws RecommendationException
+    {
+        try (InputStream is = new ByteArrayInputStream(Base64.getDecoder().decode(aData))) {
+            Serialization.deserializeCAS(aCas, is, aTypeSystem.getTypeSystem(), null);
+        }
+        catch (ResourceInitializationException | IOException | IllegalArgumentException e) {
+            throw new RecommendationException("Error while deserializing CAS!", e);
+        }
+    }
+
+    public static class FilteredTypeSystem
+    {
+        private final TypeSystem typeSystem;
+        private final String xml;
+
+        public FilteredTypeSystem(TypeSystem aTypeSystem, String aXml)
+        {
+            typeSystem = aTypeSystem;
+            xml = aXml;
+        }
+
+        public TypeSystem getTypeSystem()
+        {
+            return typeSystem;
+        }
+
+        public String getXml()
+        {
+            return xml;
+        }
+    }
+}
@@ -20,43 +20,42 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.external;
 import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getRealCas;
 import static de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineCapability.TRAINING_NOT_SUPPORTED;
 import static de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineCapability.TRAINING_REQUIRED;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat.BINARY;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat.XMI;
 import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static org.apache.commons.lang3.StringUtils.appendIfMissing;
-import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static java.util.Arrays.asList;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
 import org.apache.uima.cas.CASRuntimeException;
+import org.apache.uima.cas.TypeSystem;
 import org.apache.uima.cas.impl.XmiCasDeserializer;
 import org.apache.uima.cas.impl.XmiCasSerializer;
 import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.CasCreationUtils;
 import org.apache.uima.util.TypeSystemUtil;
 import org.apache.uima.util.XMLSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpHeaders;
 import org.xml.sax.SAXException;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil;
 import de.tudarmstadt.ukp.clarin.webanno.api.type.CASMetadata;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
-import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
@@ -65,8 +64,9 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext.Key;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.BinaryCasSupport.FilteredTypeSystem;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.ExternalRecommenderClient.CasFormatRejectedException;
 import de.tudarmstadt.ukp.inception.recommendation.imls.external.config.ExternalRecommenderProperties;
-import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.PredictionRequest;
 import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.PredictionResponse;
 import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.TrainingRequest;
 import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Document;
@@ -82,18 +82,33 @@ public class ExternalRecommender
     private static final int HTTP_TOO_MANY_REQUESTS = 429;
     private static final int HTTP_BAD_REQUEST = 400;
 
-    private final ExternalRecommenderProperties properties;
     private final ExternalRecommenderTraits traits;
-    private final HttpClient client;
+    private final ExternalRecommenderClient client;
+    private final Long layerConfigurationVersion;
 
     public ExternalRecommender(ExternalRecommenderProperties aProperties, Recommender aRecommender,
             ExternalRecommenderTraits aTraits)
+    {
+        this(new ExternalRecommenderClient(aProperties, aTraits.getRemoteUrl()), aRecommender,
+                aTraits, null);
+    }
+
+    /**
+     * @param aClient
+     *            client shared by all recommenders talking to the same server.
+     * @param aLayerConfigurationVersion
+     *            version of the layer configuration of the recommender's project. It is used to
+     *            cache the serialized type system. If {@code null}, the type system is serialized
+     *            for every prediction.
+     */
+    public ExternalRecommender(ExternalRecommenderClient aClient, Recommender aRecommender,
+            ExternalRecommenderTraits aTraits, Long aLayerConfigurationVersion)
     {
         super(aRecommender);
 
-        properties = aProperties;
+        client = aClient;
         traits = aTraits;
-        client = HttpClient.newBuilder().connectTimeout(properties.getConnectTimeout()).build();
+        layerConfigurationVersion = aLayerConfigurationVersion;
     }
 
     @Override
@@ -132,13 +147,7 @@ public class ExternalRecommender
 
         trainingRequest.setDocuments(documents);
 
-        HttpRequest request = HttpRequest.newBuilder() //
-                .uri(URI.create(appendIfMissing(traits.getRemoteUrl(), "/")).resolve("train")) //
-                .header(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON_VALUE) //
-                .timeout(properties.getReadTimeout())
-                .POST(BodyPublishers.ofString(toJson(trainingRequest), UTF_8)).build();
-
-        HttpResponse<String> response = sendRequest(request);
+        HttpResponse<String> response = client.send("train", trainingRequest);
         if (response.statusCode() == HTTP_TOO_MANY_REQUESTS) {
             LOG.info("External recommender is already training");
         }
@@ -157,34 +166,115 @@ public class ExternalRecommender
     @Override
     public void predict(RecommenderContext aContext, CAS aCas) throws RecommendationException
     {
-        String typeSystem = serializeTypeSystem(aCas);
+        if (client.getCasFormat() == BINARY) {
+            try {
+                predictBinary(aCas);
+                return;
+            }
+            catch (CasFormatRejectedException e) {
+                // The client has switched to XMI - try again below
+                LOG.debug("Retrying prediction in XMI format", e);
+            }
+        }
+
+        predictXmi(aCas);
+    }
 
-        PredictionRequest predictionRequest = new PredictionRequest();
-        predictionRequest.setTypeSystem(typeSystem);
-        predictionRequest.setDocument(buildDocument(aCas));
+    private void predictXmi(CAS aCas) throws RecommendationException
+    {
+        Metadata metadata = buildMetadata(aCas);
 
-        // Fill in metadata
-        predictionRequest.setMetadata(buildMetadata(aCas));
+        String typeSystem;
+        if (layerConfigurationVersion != null) {
+            typeSystem = client.getTypeSystem(metadata.getProjectId(), layerConfigurationVersion,
+                    "", () -> serializeTypeSystem(aCas));
+        }
+        else {
+            typeSystem = serializeTypeSystem(aCas);
+        }
 
-        HttpRequest request = HttpRequest.newBuilder() //
-                .uri(URI.create(appendIfMissing(traits.getRemoteUrl(), "/")).resolve("predict")) //
-                .header(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON_VALUE) //
-                .timeout(properties.getReadTimeout()) //
-                .POST(BodyPublishers.ofString(toJson(predictionRequest), UTF_8)).build();
+        PredictionResponse response = client.predict(typeSystem, metadata, buildDocument(aCas),
+                XMI, client.isDeltaResponse());
 
-        HttpResponse<String> response = sendRequest(request);
-        // If the response indicates that the request was not successful,
-        // then it does not make sense to go on and try to decode the XMI
-        if (response.statusCode() >= HTTP_BAD_REQUEST) {
-            String responseBody = getResponseBody(response);
-            String msg = format("Request was not successful: [%d] - [%s]", response.statusCode(),
-                    responseBody);
-            throw new RecommendationException(msg);
+        if (response.isDelta()) {
+            CAS delta = createCas(aCas.getTypeSystem());
+            deserializeXmi(delta, response);
+            mergeDelta(delta, aCas);
+        }
+        else {
+            deserializeXmi(aCas, response);
+        }
+    }
+
+    private void predictBinary(CAS aCas) throws RecommendationException
+    {
+        Metadata metadata = buildMetadata(aCas);
+
+        FilteredTypeSystem typeSystem;
+        if (layerConfigurationVersion != null) {
+            typeSystem = client.getTypeSystem(metadata.getProjectId(), layerConfigurationVersion,
+                    recommender.getLayer().getName(), () -> filterTypeSystem(aCas));
+        }
+        else {
+            typeSystem = filterTypeSystem(aCas);
+        }
+
+        CASMetadata casMetadata = getCasMetadata(aCas);
+        Document document = new Document(null,
+                BinaryCasSupport.serialize(getRealCas(aCas), typeSystem),
+                casMetadata.getSourceDocumentId(), casMetadata.getUsername());
+
+        PredictionResponse response = client.predict(typeSystem.getXml(), metadata, document,
+                BINARY, client.isDeltaResponse());
+
+        // A full response replaces the CAS, a delta response is merged into it
+        CAS target = response.isDelta() ? createCas(typeSystem.getTypeSystem()) : aCas;
+        if (response.getCasFormat() == BINARY) {
+            BinaryCasSupport.deserialize(getRealCas(target), response.getDocument(), typeSystem);
+        }
+        else {
+            deserializeXmi(target, response);
+        }
+
+        if (response.isDelta()) {
+            mergeDelta(target, aCas);
         }
+    }
+
+    private void mergeDelta(CAS aDelta, CAS aCas)
+    {
+        int merged = PredictionDeltaMerger.merge(aDelta, getRealCas(aCas),
+                recommender.getLayer().getName());
+        LOG.trace("Merged {} predictions from delta response", merged);
+    }
+
+    private CAS createCas(TypeSystem aTypeSystem) throws RecommendationException
+    {
+        try {
+            return CasCreationUtils.createCas(aTypeSystem, null, null, null);
+        }
+        catch (ResourceInitializationException e) {
+            throw new RecommendationException("Error while creating CAS!", e);
+        }
+    }
 
-        PredictionResponse predictionResponse = deserializePredictionResponse(response);
+    private FilteredTypeSystem filterTypeSystem(CAS aCas) throws RecommendationException
+    {
+        AnnotationLayer layer = recommender.getLayer();
+        Set<String> types = new HashSet<>(asList(CAS.TYPE_NAME_DOCUMENT_ANNOTATION,
+                CASMetadata.class.getName(), Token.class.getName(),
+                Sentence.class.getName(), layer.getName()));
+        if (layer.getAttachType() != null) {
+            types.add(layer.getAttachType().getName());
+        }
 
-        try (InputStream is = IOUtils.toInputStream(predictionResponse.getDocument(), UTF_8)) {
+        return BinaryCasSupport.filterTypeSystem(aCas.getTypeSystem(), types);
+    }
+
+    private void deserializeXmi(CAS aCas, PredictionResponse aResponse)
+        throws RecommendationException
+    {
+        try (InputStream is = IOUtils.toInputStream(aResponse.getDocument(), UTF_8)) {
             XmiCasDeserializer.deserialize(is, WebAnnoCasUtil.getRealCas(aCas), true);
         }
         catch (SAXException | IOException e) {
@@ -248,38 +338,6 @@ public class ExternalRecommender
                 layer.isCrossSentence());
     }
 
-    private PredictionResponse deserializePredictionResponse(HttpResponse<String> response)
-        throws RecommendationException
-    {
-        ObjectMapper objectMapper = new ObjectMapper();
-        try {
-            return objectMapper.readValue(response.body(), PredictionResponse.class);
-        }
-        catch (IOException e) {
-            throw new RecommendationException("Error while deserializing prediction response!", e);
-        }
-    }
-
-    private String toJson(Object aObject) throws RecommendationException
-    {
-        try {
-            return JSONUtil.toJsonString(aObject);
-        }
-        catch (IOException e) {
-            throw new RecommendationException("Error while serializing JSON!", e);
-        }
-    }
-
-    private HttpResponse<String> sendRequest(HttpRequest aRequest) throws RecommendationException
-    {
-        try {
-            return client.send(aRequest, BodyHandlers.ofString(UTF_8));
-        }
-        catch (IOException | InterruptedException e) {
-            throw new RecommendationException("Error while sending request!", e);
-        }
-    }
-
     private String getResponseBody(HttpResponse<String> response) throws RecommendationException
     {
         if (response.body() != null) {
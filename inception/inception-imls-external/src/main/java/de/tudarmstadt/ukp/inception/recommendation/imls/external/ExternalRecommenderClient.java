@@ -0,0 +1,515 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat.XMI;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.lang3.StringUtils.appendIfMissing;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.config.ExternalRecommenderProperties;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.BatchPredictionRequest;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.BatchPredictionResponse;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.PredictionRequest;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.PredictionResponse;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Document;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Metadata;
+
+/**
+ * Connection to a single external recommender server. The client is meant to be shared by all
+ * {@link ExternalRecommender} instances talking to the same server so that they re-use the same
+ * HTTP connections.
+ * <p>
+ * Prediction requests are queued and sent by whichever thread finds a free request slot (up to
+ * {@link ExternalRecommenderProperties#getMaxConcurrentRequests()}). Documents that are waiting in
+ * the queue at that time and that share the same type system and metadata are sent together in a
+ * single {@code predict-batch} request (up to
+ * {@link ExternalRecommenderProperties#getPredictionBatchSize()} documents). Thus, batches form
+ * naturally when many documents are predicted at the same time while a single document is sent
+ * immediately. If the server does not support batch requests, the client falls back to sending
+ * each document via {@code predict}.
+ * <p>
+ * The client also negotiates the {@link CasFormat} used for predictions. It starts with
+ * {@link ExternalRecommenderProperties#getCasFormat()} and falls back to {@link CasFormat#XMI} for
+ * the remaining lifetime of the client if the server rejects a request in another format.
+ */
+public class ExternalRecommenderClient
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ExternalRecommenderClient.class);
+
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final int HTTP_UNPROCESSABLE_ENTITY = 422;
+    private static final int HTTP_NOT_IMPLEMENTED = 501;
+
+    private final String remoteUrl;
+    private final ExternalRecommenderProperties properties;
+    private final HttpClient client;
+    private final Semaphore requestSlots;
+    private final Deque<PendingPrediction> queue = new ArrayDeque<>();
+    private final Map<TypeSystemKey, Object> typeSystemCache = new ConcurrentHashMap<>();
+
+    private volatile boolean batchingSupported;
+    private volatile CasFormat casFormat;
+
+    public ExternalRecommenderClient(ExternalRecommenderProperties aProperties, String aRemoteUrl)
+    {
+        properties = aProperties;
+        remoteUrl = aRemoteUrl;
+        client = HttpClient.newBuilder() //
+                .version(HttpClient.Version.HTTP_2) //
+                .connectTimeout(properties.getConnectTimeout()) //
+                .build();
+        requestSlots = new Semaphore(Math.max(1, properties.getMaxConcurrentRequests()));
+        batchingSupported = properties.getPredictionBatchSize() > 1;
+        casFormat = properties.getCasFormat() != null ? properties.getCasFormat() : XMI;
+    }
+
+    public String getRemoteUrl()
+    {
+        return remoteUrl;
+    }
+
+    /**
+     * @return the CAS format to use for the next prediction request.
+     */
+    public CasFormat getCasFormat()
+    {
+        return casFormat;
+    }
+
+    public boolean isDeltaResponse()
+    {
+        return properties.isDeltaResponse();
+    }
+
+    /**
+     * Returns the type system for the given project and layer configuration version, creating it
+     * only if it has not been cached yet.
+     *
+     * @param aVariant
+     *            distinguishes different type systems derived from the same layer configuration,
+     *            e.g. type systems filtered for different layers.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getTypeSystem(long aProjectId, long aLayerConfigurationVersion, String aVariant,
+            TypeSystemFactory<T> aFactory)
+        throws RecommendationException
+    {
+        TypeSystemKey key = new TypeSystemKey(aProjectId, aLayerConfigurationVersion, aVariant);
+        T typeSystem = (T) typeSystemCache.get(key);
+        if (typeSystem == null) {
+            typeSystem = aFactory.create();
+            // Older versions of the layer configuration will not be requested again
+            typeSystemCache.keySet().removeIf(k -> k.projectId == aProjectId
+                    && k.layerConfigurationVersion != aLayerConfigurationVersion);
+            typeSystemCache.put(key, typeSystem);
+        }
+        return typeSystem;
+    }
+
+    public HttpResponse<String> send(String aPath, Object aBody) throws RecommendationException
+    {
+        try {
+            return client.send(buildRequest(aPath, aBody), BodyHandlers.ofString(UTF_8));
+        }
+        catch (IOException e) {
+            throw new RecommendationException("Error while sending request!", e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecommendationException("Error while sending request!", e);
+        }
+    }
+
+    /**
+     * Predicts the given document. The calling thread blocks until the prediction is available.
+     *
+     * @param aCasFormat
+     *            format in which the document has been encoded.
+     * @param aDeltaResponse
+     *            whether the server may respond with only the added annotations.
+     * @return the predicted document. The server may respond in a different format than the one
+     *         used for the request.
+     * @throws CasFormatRejectedException
+     *             if the server rejected a request which was not in {@link CasFormat#XMI} as
+     *             invalid (status 400, 415 or 422). The client falls back to XMI afterwards, so the
+     *             caller should re-encode the document and try again.
+     */
+    public PredictionResponse predict(String aTypeSystem, Metadata aMetadata,
+            Document aDocument, CasFormat aCasFormat, boolean aDeltaResponse)
+        throws RecommendationException
+    {
+        PendingPrediction pending = new PendingPrediction(aTypeSystem, aMetadata, aDocument,
+                aCasFormat, aDeltaResponse);
+        synchronized (queue) {
+            queue.addLast(pending);
+        }
+
+        dispatch();
+
+        try {
+            return pending.result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecommendationException("Interrupted while waiting for prediction", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RecommendationException) {
+                throw (RecommendationException) e.getCause();
+            }
+            throw new RecommendationException("Error while sending request!", e.getCause());
+        }
+    }
+
+    private void dispatch()
+    {
+        // Whoever releases a request slot calls this method again, so a document that is queued
+        // while all slots are taken is picked up as soon as a running request completes.
+        while (hasQueuedPredictions() && requestSlots.tryAcquire()) {
+            List<PendingPrediction> batch = takeBatch();
+            if (batch.isEmpty()) {
+                requestSlots.release();
+                continue;
+            }
+
+            CompletableFuture<Void> request;
+            try {
+                request = batch.size() == 1 ? sendSingle(batch.get(0)) : sendBatch(batch);
+            }
+            catch (Exception e) {
+                request = CompletableFuture.failedFuture(e);
+            }
+
+            request.whenComplete((v, e) -> {
+                if (e != null) {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    batch.forEach(p -> p.result.completeExceptionally(cause));
+                }
+                requestSlots.release();
+                dispatch();
+            });
+        }
+    }
+
+    private boolean hasQueuedPredictions()
+    {
+        synchronized (queue) {
+            return !queue.isEmpty();
+        }
+    }
+
+    private List<PendingPrediction> takeBatch()
+    {
+        int batchSize = batchingSupported ? Math.max(1, properties.getPredictionBatchSize()) : 1;
+
+        List<PendingPrediction> batch = new ArrayList<>();
+        synchronized (queue) {
+            PendingPrediction first = queue.pollFirst();
+            if (first == null) {
+                return batch;
+            }
+            batch.add(first);
+
+            Iterator<PendingPrediction> i = queue.iterator();
+            while (batch.size() < batchSize && i.hasNext()) {
+                PendingPrediction candidate = i.next();
+                if (first.isCompatible(candidate)) {
+                    batch.add(candidate);
+                    i.remove();
+                }
+            }
+        }
+        return batch;
+    }
+
+    private CompletableFuture<Void> sendSingle(PendingPrediction aPending)
+        throws RecommendationException
+    {
+        PredictionRequest predictionRequest = new PredictionRequest();
+        predictionRequest.setTypeSystem(aPending.typeSystem);
+        predictionRequest.setDocument(aPending.document);
+        predictionRequest.setMetadata(aPending.metadata);
+        predictionRequest.setCasFormat(aPending.casFormat);
+        predictionRequest.setDeltaResponse(aPending.deltaResponse);
+
+        HttpRequest request = buildRequest("predict", predictionRequest);
+        long start = System.currentTimeMillis();
+        return client.sendAsync(request, BodyHandlers.ofString(UTF_8)).thenAccept(response -> {
+            logExchange(request, response, aPending.casFormat, 1, start);
+            try {
+                checkResponse(response, aPending.casFormat);
+                aPending.result.complete(
+                        JSONUtil.fromJsonString(PredictionResponse.class, response.body()));
+            }
+            catch (Exception e) {
+                aPending.result.completeExceptionally(e);
+            }
+        });
+    }
+
+    private CompletableFuture<Void> sendBatch(List<PendingPrediction> aBatch)
+        throws RecommendationException
+    {
+        PendingPrediction first = aBatch.get(0);
+        List<Document> documents = new ArrayList<>();
+        for (PendingPrediction pending : aBatch) {
+            documents.add(pending.document);
+        }
+
+        BatchPredictionRequest batchRequest = new BatchPredictionRequest();
+        batchRequest.setTypeSystem(first.typeSystem);
+        batchRequest.setDocuments(documents);
+        batchRequest.setMetadata(first.metadata);
+        batchRequest.setCasFormat(first.casFormat);
+        batchRequest.setDeltaResponse(first.deltaResponse);
+
+        HttpRequest request = buildRequest("predict-batch", batchRequest);
+        long start = System.currentTimeMillis();
+        return client.sendAsync(request, BodyHandlers.ofString(UTF_8)) //
+                .thenAccept(response -> {
+                    logExchange(request, response, first.casFormat, aBatch.size(), start);
+                    if (isBatchingUnsupported(response)) {
+                        LOG.info("External recommender at [{}] does not support batch prediction "
+                                + "- sending documents individually", remoteUrl);
+                        batchingSupported = false;
+                        requeue(aBatch);
+                        return;
+                    }
+
+                    try {
+                        checkResponse(response, first.casFormat);
+                        BatchPredictionResponse batchResponse = JSONUtil
+                                .fromJsonString(BatchPredictionResponse.class, response.body());
+                        List<String> results = batchResponse.getDocuments();
+                        if (results == null || results.size() != aBatch.size()) {
+                            throw new RecommendationException(format(
+                                    "Expected [%d] documents in batch prediction response but got "
+                                            + "[%d]",
+                                    aBatch.size(), results != null ? results.size() : 0));
+                        }
+
+                        for (int i = 0; i < aBatch.size(); i++) {
+                            PredictionResponse result = new PredictionResponse();
+                            result.setDocument(results.get(i));
+                            result.setCasFormat(batchResponse.getCasFormat());
+                            result.setDelta(batchResponse.isDelta());
+                            aBatch.get(i).result.complete(result);
+                        }
+                    }
+                    catch (Exception e) {
+                        aBatch.forEach(p -> p.result.completeExceptionally(e));
+                    }
+                });
+    }
+
+    private void requeue(List<PendingPrediction> aBatch)
+    {
+        synchronized (queue) {
+            for (int i = aBatch.size() - 1; i >= 0; i--) {
+                queue.addFirst(aBatch.get(i));
+            }
+        }
+    }
+
+    private static boolean isBatchingUnsupported(HttpResponse<String> aResponse)
+    {
+        int status = aResponse.statusCode();
+        return status == HTTP_NOT_FOUND || status == HTTP_METHOD_NOT_ALLOWED
+                || status == HTTP_NOT_IMPLEMENTED;
+    }
+
+    private void checkResponse(HttpResponse<String> aResponse, CasFormat aCasFormat)
+        throws RecommendationException
+    {
+        // If the response indicates that the request was not successful,
+        // then it does not make sense to go on and try to decode the XMI
+        if (aResponse.statusCode() >= HTTP_BAD_REQUEST) {
+            String responseBody = aResponse.body() != null ? aResponse.body() : "";
+            String msg = format("Request was not successful: [%d] - [%s]",
+                    aResponse.statusCode(), responseBody);
+
+            // Servers which do not support the requested format reject the request as invalid.
+            // Server errors (5xx) may be temporary and have nothing to do with the format, so
+            // they do not cause a fallback to XMI.
+            if (aCasFormat != XMI && isFormatRejected(aResponse)) {
+                if (casFormat != XMI) {
+                    LOG.info("External recommender at [{}] rejected request in format [{}] - "
+                            + "falling back to [{}]", remoteUrl, aCasFormat, XMI);
+                    casFormat = XMI;
+                }
+                throw new CasFormatRejectedException(msg);
+            }
+
+            throw new RecommendationException(msg);
+        }
+    }
+
+    private static boolean isFormatRejected(HttpResponse<String> aResponse)
+    {
+        int status = aResponse.statusCode();
+        return status == HTTP_BAD_REQUEST || status == HTTP_UNSUPPORTED_MEDIA_TYPE
+                || status == HTTP_UNPROCESSABLE_ENTITY;
+    }
+
+    private void logExchange(HttpRequest aRequest, HttpResponse<String> aResponse,
+            CasFormat aCasFormat, int aDocuments, long aStart)
+    {
+        if (!LOG.isDebugEnabled()) {
+            return;
+        }
+
+        long requestSize = aRequest.bodyPublisher().map(p -> p.contentLength()).orElse(-1L);
+        long responseSize = aResponse.body() != null ? aResponse.body().length() : 0;
+        LOG.debug("[{}] [{}] document(s) in format [{}]: request {} bytes, response {} chars, "
+                + "{}ms", aRequest.uri(), aDocuments, aCasFormat, requestSize, responseSize,
+                System.currentTimeMillis() - aStart);
+    }
+
+    private HttpRequest buildRequest(String aPath, Object aBody) throws RecommendationException
+    {
+        String body;
+        try {
+            body = JSONUtil.toJsonString(aBody);
+        }
+        catch (IOException e) {
+            throw new RecommendationException("Error while serializing JSON!", e);
+        }
+
+        return HttpRequest.newBuilder() //
+                .uri(URI.create(appendIfMissing(remoteUrl, "/")).resolve(aPath)) //
+                .header(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON_VALUE) //
+                .timeout(properties.getReadTimeout()) //
+                .POST(BodyPublishers.ofString(body, UTF_8)) //
+                .build();
+    }
+
+    @FunctionalInterface
+    public interface TypeSystemFactory<T>
+    {
+        T create() throws RecommendationException;
+    }
+
+    /**
+     * Thrown if the server rejected a prediction request which was not encoded as
+     * {@link CasFormat#XMI}.
+     */
+    public static class CasFormatRejectedException
+        extends RecommendationException
+    {
+        private static final long serialVersionUID = -2407437146380455839L;
+
+        public CasFormatRejectedException(String aMessage)
+        {
+            super(aMessage);
+        }
+    }
+
+    private static class PendingPrediction
+    {
+        private final String typeSystem;
+        private final Metadata metadata;
+        private final Document document;
+        private final CasFormat casFormat;
+        private final boolean deltaResponse;
+        private final CompletableFuture<PredictionResponse> result = new CompletableFuture<>();
+
+        PendingPrediction(String aTypeSystem, Metadata aMetadata, Document aDocument,
+                CasFormat aCasFormat, boolean aDeltaResponse)
+        {
+            typeSystem = aTypeSystem;
+            metadata = aMetadata;
+            document = aDocument;
+            casFormat = aCasFormat;
+            deltaResponse = aDeltaResponse;
+        }
+
+        boolean isCompatible(PendingPrediction aOther)
+        {
+            return casFormat == aOther.casFormat && deltaResponse == aOther.deltaResponse
+                    && Objects.equals(metadata, aOther.metadata)
+                    && Objects.equals(typeSystem, aOther.typeSystem);
+        }
+    }
+
+    private static class TypeSystemKey
+    {
+        private final long projectId;
+        private final long layerConfigurationVersion;
+        private final String variant;
+
+        TypeSystemKey(long aProjectId, long aLayerConfigurationVersion, String aVariant)
+        {
+            projectId = aProjectId;
+            layerConfigurationVersion = aLayerConfigurationVersion;
+            variant = aVariant;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            TypeSystemKey other = (TypeSystemKey) o;
+            return projectId == other.projectId
+                    && layerConfigurationVersion == other.layerConfigurationVersion
+                    && Objects.equals(variant, other.variant);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(projectId, layerConfigurationVersion, variant);
+        }
+    }
+}
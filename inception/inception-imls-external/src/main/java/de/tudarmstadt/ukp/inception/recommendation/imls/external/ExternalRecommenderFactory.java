@@ -19,9 +19,14 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.external;
 
 import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.RELATION_TYPE;
 import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.SPAN_TYPE;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
 import org.apache.wicket.model.IModel;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
@@ -44,10 +49,23 @@ public class ExternalRecommenderFactory
     public static final String ID = "de.tudarmstadt.ukp.inception.recommendation.imls.external.ExternalClassificationTool";
 
     private final ExternalRecommenderProperties properties;
+    private final AnnotationSchemaService schemaService;
+
+    // Clients are shared by all recommenders using the same remote URL so that connections and
+    // cached type systems are re-used across the engines built for the individual documents.
+    // The cache is bounded so that clients for URLs which are no longer used (e.g. because a
+    // recommender was changed or deleted) are eventually dropped. Engines keep a reference to
+    // their client, so evicting a client that is still in use is harmless.
+    private final Cache<String, ExternalRecommenderClient> clients = Caffeine.newBuilder() //
+            .expireAfterAccess(30, MINUTES) //
+            .maximumSize(256) //
+            .build();
 
-    public ExternalRecommenderFactory(ExternalRecommenderProperties aProperties)
+    public ExternalRecommenderFactory(ExternalRecommenderProperties aProperties,
+            AnnotationSchemaService aSchemaService)
     {
         properties = aProperties;
+        schemaService = aSchemaService;
     }
 
     @Override
@@ -60,7 +78,11 @@ public class ExternalRecommenderFactory
     public RecommendationEngine build(Recommender aRecommender)
     {
         ExternalRecommenderTraits traits = readTraits(aRecommender);
-        return new ExternalRecommender(properties, aRecommender, traits);
+        ExternalRecommenderClient client = clients.get(traits.getRemoteUrl(),
+                url -> new ExternalRecommenderClient(properties, url));
+        long layerConfigurationVersion = schemaService
+                .getLayerConfigurationVersion(aRecommender.getProject());
+        return new ExternalRecommender(client, aRecommender, traits, layerConfigurationVersion);
     }
 
     @Override
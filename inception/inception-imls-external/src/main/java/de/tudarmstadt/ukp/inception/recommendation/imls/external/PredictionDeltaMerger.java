@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import static org.apache.uima.fit.util.CasUtil.select;
+import static org.apache.uima.fit.util.CasUtil.selectAt;
+
+import java.util.List;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+
+/**
+ * Merges a delta response of the external recommender into the CAS that was sent for prediction.
+ * A delta response is a CAS which contains only the annotations added by the recommender. The
+ * annotations of the recommender's layer are copied into the target CAS. Features pointing to
+ * other annotations (e.g. the governor and dependent of a relation) are resolved to the
+ * annotations of the same type at the same position in the target CAS.
+ */
+public final class PredictionDeltaMerger
+{
+    private PredictionDeltaMerger()
+    {
+        // No instances
+    }
+
+    /**
+     * @return the number of merged annotations.
+     */
+    public static int merge(CAS aDelta, CAS aTarget, String aLayerTypeName)
+    {
+        Type sourceType = aDelta.getTypeSystem().getType(aLayerTypeName);
+        Type targetType = aTarget.getTypeSystem().getType(aLayerTypeName);
+        if (sourceType == null || targetType == null) {
+            return 0;
+        }
+
+        int count = 0;
+        for (AnnotationFS source : select(aDelta, sourceType)) {
+            AnnotationFS target = aTarget.createAnnotation(targetType, source.getBegin(),
+                    source.getEnd());
+
+            for (Feature sourceFeature : sourceType.getFeatures()) {
+                Feature targetFeature = targetType
+                        .getFeatureByBaseName(sourceFeature.getShortName());
+                if (targetFeature == null || isBuiltIn(sourceFeature)) {
+                    continue;
+                }
+
+                if (sourceFeature.getRange().isPrimitive()) {
+                    target.setFeatureValueFromString(targetFeature,
+                            source.getFeatureValueAsString(sourceFeature));
+                }
+                else {
+                    FeatureStructure value = source.getFeatureValue(sourceFeature);
+                    if (value instanceof AnnotationFS) {
+                        target.setFeatureValue(targetFeature,
+                                resolve(aTarget, (AnnotationFS) value));
+                    }
+                }
+            }
+
+            aTarget.addFsToIndexes(target);
+            count++;
+        }
+
+        return count;
+    }
+
+    private static boolean isBuiltIn(Feature aFeature)
+    {
+        String name = aFeature.getShortName();
+        return CAS.FEATURE_BASE_NAME_SOFA.equals(name) || CAS.FEATURE_BASE_NAME_BEGIN.equals(name)
+                || CAS.FEATURE_BASE_NAME_END.equals(name);
+    }
+
+    private static AnnotationFS resolve(CAS aTarget, AnnotationFS aSource)
+    {
+        Type type = aTarget.getTypeSystem().getType(aSource.getType().getName());
+        if (type == null) {
+            return null;
+        }
+
+        List<AnnotationFS> candidates = selectAt(aTarget, type, aSource.getBegin(),
+                aSource.getEnd());
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+}
@@ -22,6 +22,7 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
 import de.tudarmstadt.ukp.inception.recommendation.imls.external.ExternalRecommenderFactory;
 
 @Configuration
@@ -31,8 +32,8 @@ public class ExternalRecommenderAutoConfiguration
 {
     @Bean
     public ExternalRecommenderFactory externalRecommenderFactory(
-            ExternalRecommenderProperties aProperties)
+            ExternalRecommenderProperties aProperties, AnnotationSchemaService aSchemaService)
     {
-        return new ExternalRecommenderFactory(aProperties);
+        return new ExternalRecommenderFactory(aProperties, aSchemaService);
     }
 }
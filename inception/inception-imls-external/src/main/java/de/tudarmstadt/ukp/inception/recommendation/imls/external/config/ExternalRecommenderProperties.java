@@ -19,9 +19,35 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.external.config;
 
 import java.time.Duration;
 
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat;
+
 public interface ExternalRecommenderProperties
 {
     Duration getConnectTimeout();
 
     Duration getReadTimeout();
+
+    /**
+     * @return maximum number of documents sent to the external recommender in a single prediction
+     *         request. A value of {@code 1} disables batching.
+     */
+    int getPredictionBatchSize();
+
+    /**
+     * @return maximum number of prediction requests that may be in flight to the same external
+     *         recommender at any time.
+     */
+    int getMaxConcurrentRequests();
+
+    /**
+     * @return preferred format for exchanging CASes during prediction. If the external recommender
+     *         rejects a request in this format, {@link CasFormat#XMI} is used instead.
+     */
+    CasFormat getCasFormat();
+
+    /**
+     * @return whether the external recommender may send back only the annotations it added
+     *         instead of the full CAS.
+     */
+    boolean isDeltaResponse();
 }
@@ -23,6 +23,8 @@ import java.time.Duration;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat;
+
 /**
  * <p>
  * This class is exposed as a Spring Component via {@link ExternalRecommenderAutoConfiguration}.
@@ -34,6 +36,10 @@ public class ExternalRecommenderPropertiesImpl
 {
     private Duration connectTimeout = Duration.of(30, SECONDS);
     private Duration readTimeout = Duration.of(30, SECONDS);
+    private int predictionBatchSize = 10;
+    private int maxConcurrentRequests = 4;
+    private CasFormat casFormat = CasFormat.XMI;
+    private boolean deltaResponse = true;
 
     @Override
     public Duration getConnectTimeout()
@@ -57,4 +63,47 @@ public class ExternalRecommenderPropertiesImpl
         readTimeout = aReadTimeout;
     }
 
+    @Override
+    public int getPredictionBatchSize()
+    {
+        return predictionBatchSize;
+    }
+
+    public void setPredictionBatchSize(int aPredictionBatchSize)
+    {
+        predictionBatchSize = aPredictionBatchSize;
+    }
+
+    @Override
+    public int getMaxConcurrentRequests()
+    {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int aMaxConcurrentRequests)
+    {
+        maxConcurrentRequests = aMaxConcurrentRequests;
+    }
+
+    @Override
+    public CasFormat getCasFormat()
+    {
+        return casFormat;
+    }
+
+    public void setCasFormat(CasFormat aCasFormat)
+    {
+        casFormat = aCasFormat;
+    }
+
+    @Override
+    public boolean isDeltaResponse()
+    {
+        return deltaResponse;
+    }
+
+    public void setDeltaResponse(boolean aDeltaResponse)
+    {
+        deltaResponse = aDeltaResponse;
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external.messages;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Document;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Metadata;
+
+/**
+ * Prediction request carrying multiple documents which share the same type system and metadata.
+ * The server is expected to answer with a {@link BatchPredictionResponse} containing the
+ * predicted documents in the same order as in the request.
+ */
+public class BatchPredictionRequest
+{
+    @JsonProperty("typeSystem")
+    private String typeSystem;
+
+    @JsonProperty("documents")
+    private List<Document> documents;
+
+    @JsonProperty("metadata")
+    private Metadata metadata;
+
+    @JsonProperty("casFormat")
+    private CasFormat casFormat = CasFormat.XMI;
+
+    @JsonProperty("deltaResponse")
+    private boolean deltaResponse;
+
+    public String getTypeSystem()
+    {
+        return typeSystem;
+    }
+
+    public void setTypeSystem(String aTypeSystem)
+    {
+        typeSystem = aTypeSystem;
+    }
+
+    public List<Document> getDocuments()
+    {
+        return documents;
+    }
+
+    public void setDocuments(List<Document> aDocuments)
+    {
+        documents = aDocuments;
+    }
+
+    public Metadata getMetadata()
+    {
+        return metadata;
+    }
+
+    public void setMetadata(Metadata aMetadata)
+    {
+        metadata = aMetadata;
+    }
+
+    public CasFormat getCasFormat()
+    {
+        return casFormat;
+    }
+
+    public void setCasFormat(CasFormat aCasFormat)
+    {
+        casFormat = aCasFormat;
+    }
+
+    public boolean isDeltaResponse()
+    {
+        return deltaResponse;
+    }
+
+    public void setDeltaResponse(boolean aDeltaResponse)
+    {
+        deltaResponse = aDeltaResponse;
+    }
+}
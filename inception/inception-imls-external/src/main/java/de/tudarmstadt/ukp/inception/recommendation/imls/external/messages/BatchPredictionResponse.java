@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external.messages;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat;
+
+public class BatchPredictionResponse
+{
+    @JsonProperty("documents")
+    private List<String> documents;
+
+    // Servers which do not know about CAS formats do not send this and always answer in XMI
+    @JsonProperty("casFormat")
+    private CasFormat casFormat = CasFormat.XMI;
+
+    // Set if the response only contains the annotations added by the external recommender
+    @JsonProperty("delta")
+    private boolean delta;
+
+    public List<String> getDocuments()
+    {
+        return documents;
+    }
+
+    public void setDocuments(List<String> aDocuments)
+    {
+        documents = aDocuments;
+    }
+
+    public CasFormat getCasFormat()
+    {
+        return casFormat;
+    }
+
+    public void setCasFormat(CasFormat aCasFormat)
+    {
+        casFormat = aCasFormat;
+    }
+
+    public boolean isDelta()
+    {
+        return delta;
+    }
+
+    public void setDelta(boolean aDelta)
+    {
+        delta = aDelta;
+    }
+}
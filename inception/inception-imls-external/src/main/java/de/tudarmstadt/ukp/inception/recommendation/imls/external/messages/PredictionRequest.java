@@ -19,6 +19,7 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.external.messages;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat;
 import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Document;
 import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Metadata;
 
@@ -33,6 +34,12 @@ public class PredictionRequest
     @JsonProperty("metadata")
     private Metadata metadata;
 
+    @JsonProperty("casFormat")
+    private CasFormat casFormat = CasFormat.XMI;
+
+    @JsonProperty("deltaResponse")
+    private boolean deltaResponse;
+
     public String getTypeSystem()
     {
         return typeSystem;
@@ -62,4 +69,24 @@ public class PredictionRequest
     {
         metadata = aMetadata;
     }
+
+    public CasFormat getCasFormat()
+    {
+        return casFormat;
+    }
+
+    public void setCasFormat(CasFormat aCasFormat)
+    {
+        casFormat = aCasFormat;
+    }
+
+    public boolean isDeltaResponse()
+    {
+        return deltaResponse;
+    }
+
+    public void setDeltaResponse(boolean aDeltaResponse)
+    {
+        deltaResponse = aDeltaResponse;
+    }
 }
@@ -19,11 +19,21 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.external.messages;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat;
+
 public class PredictionResponse
 {
     @JsonProperty("document")
     private String document;
 
+    // Servers which do not know about CAS formats do not send this and always answer in XMI
+    @JsonProperty("casFormat")
+    private CasFormat casFormat = CasFormat.XMI;
+
+    // Set if the response only contains the annotations added by the external recommender
+    @JsonProperty("delta")
+    private boolean delta;
+
     public String getDocument()
     {
         return document;
@@ -33,4 +43,24 @@ public class PredictionResponse
     {
         document = aDocument;
     }
+
+    public CasFormat getCasFormat()
+    {
+        return casFormat;
+    }
+
+    public void setCasFormat(CasFormat aCasFormat)
+    {
+        casFormat = aCasFormat;
+    }
+
+    public boolean isDelta()
+    {
+        return delta;
+    }
+
+    public void setDelta(boolean aDelta)
+    {
+        delta = aDelta;
+    }
 }
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Encoding of the CASes exchanged with the external recommender.
+ */
+public enum CasFormat
+{
+    /**
+     * CAS encoded as XMI in the {@code xmi} field of the document.
+     */
+    @JsonProperty("xmi")
+    XMI,
+
+    /**
+     * CAS encoded in the UIMA compressed binary format (form 6) using the type system sent along
+     * with the request. The Base64-encoded data is stored in the {@code binaryCas} field of the
+     * document.
+     */
+    @JsonProperty("binary")
+    BINARY;
+}
@@ -23,14 +23,22 @@ public class Document
 {
 
     private final String xmi;
+    private final String binaryCas;
     private final long documentId;
     private final String userId;
 
-    public Document(@JsonProperty(value = "xmi", required = true) String aXmi,
+    public Document(String aXmi, long aDocumentId, String aUserId)
+    {
+        this(aXmi, null, aDocumentId, aUserId);
+    }
+
+    public Document(@JsonProperty(value = "xmi") String aXmi,
+            @JsonProperty(value = "binaryCas") String aBinaryCas,
             @JsonProperty(value = "documentId", required = true) long aDocumentId,
             @JsonProperty(value = "userId", required = true) String aUserId)
     {
         xmi = aXmi;
+        binaryCas = aBinaryCas;
         documentId = aDocumentId;
         userId = aUserId;
     }
@@ -40,6 +48,11 @@ public class Document
         return xmi;
     }
 
+    public String getBinaryCas()
+    {
+        return binaryCas;
+    }
+
     public Long getDocumentId()
     {
         return documentId;
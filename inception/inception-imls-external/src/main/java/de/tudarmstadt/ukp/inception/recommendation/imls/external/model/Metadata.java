@@ -17,6 +17,8 @@
  */
 package de.tudarmstadt.ukp.inception.recommendation.imls.external.model;
 
+import java.util.Objects;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class Metadata
@@ -65,4 +67,25 @@ public class Metadata
     {
         return crossSentence;
     }
+
+    @Override
+    public boolean equals(Object aOther)
+    {
+        if (this == aOther) {
+            return true;
+        }
+        if (aOther == null || getClass() != aOther.getClass()) {
+            return false;
+        }
+        Metadata other = (Metadata) aOther;
+        return projectId == other.projectId && crossSentence == other.crossSentence
+                && Objects.equals(layer, other.layer) && Objects.equals(feature, other.feature)
+                && Objects.equals(anchoringMode, other.anchoringMode);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(layer, feature, projectId, anchoringMode, crossSentence);
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.ExternalRecommenderCasFormatTest.NAMED_ENTITY;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.ExternalRecommenderCasFormatTest.buildRecommender;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.ExternalRecommenderCasFormatTest.createCas;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat.BINARY;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat.XMI;
+import static org.apache.uima.fit.util.CasUtil.getType;
+import static org.apache.uima.fit.util.CasUtil.select;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.uima.cas.CAS;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.ExternalRecommenderCasFormatTest.NamedEntityPredictionHandler;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.config.ExternalRecommenderPropertiesImpl;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat;
+
+/**
+ * Measures payload sizes and round-trip times of a prediction on a long document for each
+ * {@link CasFormat} with and without delta responses.
+ */
+@Tag("slow")
+public class ExternalRecommenderCasFormatBenchmarkTest
+{
+    private static final int TOKENS = 50_000;
+    private static final int ROUNDS = 5;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Test
+    public void benchmarkCasFormats() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < TOKENS; i++) {
+            text.append(i % 10 == 9 ? "." : (i % 7 == 3 ? "Name" : "word") + i).append(' ');
+        }
+        String documentText = text.toString().trim();
+
+        Result xmi = run(documentText, XMI, false);
+        Result xmiDelta = run(documentText, XMI, true);
+        Result binary = run(documentText, BINARY, false);
+        Result binaryDelta = run(documentText, BINARY, true);
+
+        for (Result result : new Result[] { xmi, xmiDelta, binary, binaryDelta }) {
+            log.info("{}", result);
+        }
+
+        assertThat(binary.requestSize).isLessThan(xmi.requestSize);
+        assertThat(xmiDelta.responseSize).isLessThan(xmi.responseSize);
+        assertThat(binaryDelta.responseSize).isLessThan(binary.responseSize);
+    }
+
+    private Result run(String aText, CasFormat aFormat, boolean aDelta) throws Exception
+    {
+        ExternalRecommenderPropertiesImpl properties = new ExternalRecommenderPropertiesImpl();
+        properties.setCasFormat(aFormat);
+        properties.setDeltaResponse(aDelta);
+
+        NamedEntityPredictionHandler handler = new NamedEntityPredictionHandler(true);
+        try (StubExternalRecommenderServer server = new StubExternalRecommenderServer(true, 0,
+                handler)) {
+            ExternalRecommenderClient client = new ExternalRecommenderClient(properties,
+                    server.getUrl());
+            ExternalRecommenderTraits traits = new ExternalRecommenderTraits();
+            traits.setRemoteUrl(server.getUrl());
+            ExternalRecommender sut = new ExternalRecommender(client, buildRecommender(), traits,
+                    1L);
+
+            long total = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                CAS cas = createCas(aText);
+                long start = System.currentTimeMillis();
+                sut.predict(new RecommenderContext(), cas);
+                total += System.currentTimeMillis() - start;
+                assertThat(select(cas, getType(cas, NAMED_ENTITY))).isNotEmpty();
+            }
+
+            return new Result(aFormat, aDelta, handler.getRequestSizes().get(0),
+                    handler.getResponseSizes().get(0), total / ROUNDS);
+        }
+    }
+
+    private static class Result
+    {
+        private final CasFormat format;
+        private final boolean delta;
+        private final int requestSize;
+        private final int responseSize;
+        private final long millis;
+
+        Result(CasFormat aFormat, boolean aDelta, int aRequestSize, int aResponseSize,
+                long aMillis)
+        {
+            format = aFormat;
+            delta = aDelta;
+            requestSize = aRequestSize;
+            responseSize = aResponseSize;
+            millis = aMillis;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%-6s delta=%-5s request=%,10d chars response=%,10d chars %6dms",
+                    format, delta, requestSize, responseSize, millis);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat.BINARY;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat.XMI;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+import static org.apache.uima.fit.util.CasUtil.getType;
+import static org.apache.uima.fit.util.CasUtil.select;
+import static org.apache.uima.util.CasCreationUtils.mergeTypeSystems;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.cas.impl.XmiCasDeserializer;
+import org.apache.uima.cas.impl.XmiCasSerializer;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.XMLInputSource;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasMetadataUtils;
+import de.tudarmstadt.ukp.clarin.webanno.api.type.CASMetadata;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnchoringMode;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.config.ExternalRecommenderPropertiesImpl;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Document;
+
+public class ExternalRecommenderCasFormatTest
+{
+    static final String NAMED_ENTITY = "de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity";
+    static final String TOKEN = "de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token";
+    static final String SENTENCE = "de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence";
+    static final String UNRELATED = "webanno.custom.Unrelated";
+
+    @Test
+    public void thatXmiPredictionWorks() throws Exception
+    {
+        CAS cas = predict(XMI, false, true);
+
+        assertThat(select(cas, getType(cas, NAMED_ENTITY))).hasSize(2);
+        assertThat(select(cas, getType(cas, UNRELATED))).hasSize(9);
+    }
+
+    @Test
+    public void thatBinaryPredictionWorks() throws Exception
+    {
+        CAS cas = predict(BINARY, false, true);
+
+        assertThat(select(cas, getType(cas, NAMED_ENTITY))) //
+                .extracting(AnnotationFS::getCoveredText) //
+                .containsExactly("John", "Berlin");
+        assertThat(select(cas, getType(cas, TOKEN))).hasSize(9);
+        // A full response only contains the layers that have been sent to the recommender
+        assertThat(select(cas, getType(cas, UNRELATED))).isEmpty();
+    }
+
+    @Test
+    public void thatXmiDeltaPredictionWorks() throws Exception
+    {
+        CAS cas = predict(XMI, true, true);
+
+        assertThat(select(cas, getType(cas, NAMED_ENTITY))) //
+                .extracting(AnnotationFS::getCoveredText) //
+                .containsExactly("John", "Berlin");
+        assertThat(select(cas, getType(cas, UNRELATED))).hasSize(9);
+    }
+
+    @Test
+    public void thatBinaryDeltaPredictionRetainsUnrelatedLayers() throws Exception
+    {
+        CAS cas = predict(BINARY, true, true);
+
+        assertThat(select(cas, getType(cas, NAMED_ENTITY))) //
+                .extracting(AnnotationFS::getCoveredText) //
+                .containsExactly("John", "Berlin");
+        assertThat(select(cas, getType(cas, TOKEN))).hasSize(9);
+        assertThat(select(cas, getType(cas, UNRELATED))).hasSize(9);
+    }
+
+    @Test
+    public void thatClientFallsBackToXmiIfBinaryIsRejected() throws Exception
+    {
+        CAS cas = predict(BINARY, true, false);
+
+        assertThat(select(cas, getType(cas, NAMED_ENTITY))).hasSize(2);
+        assertThat(select(cas, getType(cas, UNRELATED))).hasSize(9);
+    }
+
+    @Test
+    public void thatClientKeepsFormatOnServerError() throws Exception
+    {
+        ExternalRecommenderPropertiesImpl properties = new ExternalRecommenderPropertiesImpl();
+        properties.setCasFormat(BINARY);
+
+        try (StubExternalRecommenderServer server = new StubExternalRecommenderServer(true, 0,
+                (aTypeSystem, aFormat, aDelta, aDocument) -> {
+                    throw new IllegalStateException("Server failure");
+                })) {
+            ExternalRecommenderClient client = new ExternalRecommenderClient(properties,
+                    server.getUrl());
+            ExternalRecommenderTraits traits = new ExternalRecommenderTraits();
+            traits.setRemoteUrl(server.getUrl());
+            ExternalRecommender sut = new ExternalRecommender(client, buildRecommender(), traits,
+                    1L);
+
+            CAS cas = createCas("John lives in Berlin .");
+            assertThatThrownBy(() -> sut.predict(new RecommenderContext(), cas))
+                    .isInstanceOf(RecommendationException.class);
+            assertThat(client.getCasFormat()).isEqualTo(BINARY);
+        }
+    }
+
+    private CAS predict(CasFormat aFormat, boolean aDelta, boolean aBinarySupported)
+        throws Exception
+    {
+        ExternalRecommenderPropertiesImpl properties = new ExternalRecommenderPropertiesImpl();
+        properties.setCasFormat(aFormat);
+        properties.setDeltaResponse(aDelta);
+
+        try (StubExternalRecommenderServer server = new StubExternalRecommenderServer(true, 0,
+                new NamedEntityPredictionHandler(aBinarySupported))) {
+            ExternalRecommenderClient client = new ExternalRecommenderClient(properties,
+                    server.getUrl());
+            Recommender recommender = buildRecommender();
+            ExternalRecommenderTraits traits = new ExternalRecommenderTraits();
+            traits.setRemoteUrl(server.getUrl());
+            ExternalRecommender sut = new ExternalRecommender(client, recommender, traits, 1L);
+
+            CAS cas = createCas("John lives in Berlin . He likes it .");
+            sut.predict(new RecommenderContext(), cas);
+
+            if (!aBinarySupported) {
+                assertThat(client.getCasFormat()).isEqualTo(XMI);
+            }
+
+            return cas;
+        }
+    }
+
+    static Recommender buildRecommender()
+    {
+        AnnotationLayer layer = new AnnotationLayer();
+        layer.setName(NAMED_ENTITY);
+        layer.setCrossSentence(false);
+        layer.setAnchoringMode(AnchoringMode.TOKENS);
+
+        AnnotationFeature feature = new AnnotationFeature();
+        feature.setName("value");
+
+        Recommender recommender = new Recommender();
+        recommender.setLayer(layer);
+        recommender.setFeature(feature);
+        return recommender;
+    }
+
+    /**
+     * Creates a CAS containing the given whitespace-tokenized text with tokens, sentences (ending
+     * at each {@code .}) and an annotation of an unrelated layer on every token.
+     */
+    static CAS createCas(String aText) throws Exception
+    {
+        TypeSystemDescription unrelated = createTypeSystemDescription();
+        unrelated.addType(UNRELATED, "", CAS.TYPE_NAME_ANNOTATION).addFeature("value", "",
+                CAS.TYPE_NAME_STRING);
+        CAS cas = JCasFactory.createJCas(mergeTypeSystems(asList(createTypeSystemDescription(),
+                CasMetadataUtils.getInternalTypeSystem(), unrelated))).getCas();
+        cas.setDocumentText(aText);
+
+        Type tokenType = getType(cas, TOKEN);
+        Type sentenceType = getType(cas, SENTENCE);
+        Type unrelatedType = getType(cas, UNRELATED);
+        int sentenceBegin = 0;
+        int begin = 0;
+        for (String token : aText.split(" ")) {
+            int end = begin + token.length();
+            cas.addFsToIndexes(cas.createAnnotation(tokenType, begin, end));
+            AnnotationFS other = cas.createAnnotation(unrelatedType, begin, end);
+            other.setFeatureValueFromString(unrelatedType.getFeatureByBaseName("value"), "x");
+            cas.addFsToIndexes(other);
+            if (".".equals(token)) {
+                cas.addFsToIndexes(cas.createAnnotation(sentenceType, sentenceBegin, end));
+                sentenceBegin = end + 1;
+            }
+            begin = end + 1;
+        }
+
+        CASMetadata cmd = new CASMetadata(cas.getJCas());
+        cmd.setUsername("user");
+        cmd.setProjectId(42L);
+        cmd.setSourceDocumentId(1L);
+        cmd.addToIndexes();
+
+        return cas;
+    }
+
+    /**
+     * Marks every capitalized token which does not start a sentence as well as the first token of
+     * the document as a named entity.
+     */
+    static class NamedEntityPredictionHandler
+        implements StubExternalRecommenderServer.PredictionHandler
+    {
+        private final boolean binarySupported;
+        private final List<Integer> requestSizes = new ArrayList<>();
+        private final List<Integer> responseSizes = new ArrayList<>();
+
+        NamedEntityPredictionHandler(boolean aBinarySupported)
+        {
+            binarySupported = aBinarySupported;
+        }
+
+        List<Integer> getRequestSizes()
+        {
+            return requestSizes;
+        }
+
+        List<Integer> getResponseSizes()
+        {
+            return responseSizes;
+        }
+
+        @Override
+        public synchronized String predict(String aTypeSystem, CasFormat aFormat, boolean aDelta,
+                Document aDocument)
+            throws Exception
+        {
+            TypeSystemDescription tsd = UIMAFramework.getXMLParser().parseTypeSystemDescription(
+                    new XMLInputSource(new ByteArrayInputStream(aTypeSystem.getBytes(UTF_8)),
+                            null));
+            CAS cas = CasCreationUtils.createCas(tsd, null, null);
+
+            if (aFormat == BINARY) {
+                if (!binarySupported) {
+                    throw new IllegalArgumentException("Binary CAS not supported");
+                }
+
+                requestSizes.add(aDocument.getBinaryCas().length());
+                Serialization.deserializeCAS(cas, new ByteArrayInputStream(
+                        Base64.getDecoder().decode(aDocument.getBinaryCas())));
+            }
+            else {
+                requestSizes.add(aDocument.getXmi().length());
+                XmiCasDeserializer.deserialize(
+                        new ByteArrayInputStream(aDocument.getXmi().getBytes(UTF_8)), cas, true);
+            }
+
+            CAS result = cas;
+            if (aDelta) {
+                result = CasCreationUtils.createCas(tsd, null, null);
+                result.setDocumentText(cas.getDocumentText());
+            }
+
+            annotate(cas, result);
+
+            try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+                if (aFormat == BINARY) {
+                    Serialization.serializeWithCompression(result, out, (TypeSystem) null);
+                    String response = Base64.getEncoder().encodeToString(out.toByteArray());
+                    responseSizes.add(response.length());
+                    return response;
+                }
+
+                XmiCasSerializer.serialize(result, out);
+                String response = new String(out.toByteArray(), UTF_8);
+                responseSizes.add(response.length());
+                return response;
+            }
+        }
+
+        private void annotate(CAS aCas, CAS aResult)
+        {
+            Type neType = getType(aResult, NAMED_ENTITY);
+            boolean sentenceStart = true;
+            boolean first = true;
+            for (AnnotationFS token : select(aCas, getType(aCas, TOKEN))) {
+                String text = token.getCoveredText();
+                if (first || (!sentenceStart && Character.isUpperCase(text.charAt(0)))) {
+                    AnnotationFS ne = aResult.createAnnotation(neType, token.getBegin(),
+                            token.getEnd());
+                    ne.setFeatureValueFromString(neType.getFeatureByBaseName("value"), "ENT");
+                    aResult.addFsToIndexes(ne);
+                }
+                sentenceStart = ".".equals(text);
+                first = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.ExternalRecommenderClientTest.predictConcurrently;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.ExternalRecommenderClientTest.properties;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares sending each document in its own request with sending batches against a
+ * {@link StubExternalRecommenderServer} which adds a fixed latency to every request.
+ */
+@Tag("slow")
+public class ExternalRecommenderClientBenchmarkTest
+{
+    private static final int DOCUMENTS = 200;
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+    private static final long LATENCY_MILLIS = 20;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Test
+    public void benchmarkBatchedPrediction() throws Exception
+    {
+        long unbatched = run(1);
+        long batched = run(10);
+
+        log.info("{} documents without batching: {}ms, with batching: {}ms", DOCUMENTS, unbatched,
+                batched);
+
+        assertThat(batched).isLessThan(unbatched);
+    }
+
+    private long run(int aBatchSize) throws Exception
+    {
+        try (StubExternalRecommenderServer server = new StubExternalRecommenderServer(true,
+                LATENCY_MILLIS)) {
+            ExternalRecommenderClient client = new ExternalRecommenderClient(
+                    properties(aBatchSize, MAX_CONCURRENT_REQUESTS), server.getUrl());
+
+            long start = System.currentTimeMillis();
+            assertThat(predictConcurrently(client, DOCUMENTS)).hasSize(DOCUMENTS);
+            long duration = System.currentTimeMillis() - start;
+
+            log.info("Batch size {}: {} requests, max in flight {}", aBatchSize,
+                    server.getRequestCount("/predict") + server.getRequestCount("/predict-batch"),
+                    server.getMaxInFlight());
+
+            return duration;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.StubExternalRecommenderServer.PREDICTED_PREFIX;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat.XMI;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.config.ExternalRecommenderPropertiesImpl;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Document;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Metadata;
+
+public class ExternalRecommenderClientTest
+{
+    private static final String TYPE_SYSTEM = "<typeSystemDescription/>";
+    private static final Metadata METADATA = new Metadata("layer", "feature", 42L, "tokens",
+            false);
+
+    @Test
+    public void thatSingleDocumentIsSentAsRegularPrediction() throws Exception
+    {
+        try (StubExternalRecommenderServer server = new StubExternalRecommenderServer(true, 0)) {
+            ExternalRecommenderClient sut = new ExternalRecommenderClient(properties(10, 4),
+                    server.getUrl());
+
+            String result = sut
+                    .predict(TYPE_SYSTEM, METADATA, new Document("doc", 1L, "user"), XMI, false)
+                    .getDocument();
+
+            assertThat(result).isEqualTo(PREDICTED_PREFIX + "doc");
+            assertThat(server.getRequestCount("/predict")).isEqualTo(1);
+            assertThat(server.getRequestCount("/predict-batch")).isZero();
+        }
+    }
+
+    @Test
+    public void thatConcurrentPredictionsAreBatched() throws Exception
+    {
+        try (StubExternalRecommenderServer server = new StubExternalRecommenderServer(true, 50)) {
+            ExternalRecommenderClient sut = new ExternalRecommenderClient(properties(10, 2),
+                    server.getUrl());
+
+            List<String> results = predictConcurrently(sut, 40);
+
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i)).isEqualTo(PREDICTED_PREFIX + "doc-" + i);
+            }
+            assertThat(server.getRequestCount("/predict-batch")).isPositive();
+            assertThat(server.getBatchSizes()).allMatch(size -> size <= 10);
+            assertThat(server.getRequestCount("/predict")
+                    + server.getRequestCount("/predict-batch")).isLessThan(40);
+            assertThat(server.getMaxInFlight()).isLessThanOrEqualTo(2);
+        }
+    }
+
+    @Test
+    public void thatDocumentsAreSentIndividuallyIfServerDoesNotSupportBatching() throws Exception
+    {
+        try (StubExternalRecommenderServer server = new StubExternalRecommenderServer(false, 20)) {
+            ExternalRecommenderClient sut = new ExternalRecommenderClient(properties(10, 2),
+                    server.getUrl());
+
+            List<String> results = predictConcurrently(sut, 20);
+
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i)).isEqualTo(PREDICTED_PREFIX + "doc-" + i);
+            }
+            assertThat(server.getRequestCount("/predict")).isEqualTo(20);
+            // Once the client noticed that batching is not supported, it stops trying
+            assertThat(server.getRequestCount("/predict-batch")).isLessThanOrEqualTo(2);
+        }
+    }
+
+    @Test
+    public void thatTypeSystemIsSerializedOncePerLayerConfigurationVersion() throws Exception
+    {
+        ExternalRecommenderClient sut = new ExternalRecommenderClient(properties(10, 2),
+                "http://localhost");
+        AtomicInteger serializations = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            sut.getTypeSystem(42L, 1L, "", () -> "ts-" + serializations.incrementAndGet());
+        }
+        assertThat(sut.getTypeSystem(42L, 1L, "", () -> "other")).isEqualTo("ts-1");
+        assertThat(sut.getTypeSystem(42L, 1L, "layer", () -> "layer-ts")).isEqualTo("layer-ts");
+
+        assertThat(sut.getTypeSystem(42L, 2L, "",
+                () -> "ts-" + serializations.incrementAndGet())).isEqualTo("ts-2");
+        assertThat(serializations).hasValue(2);
+    }
+
+    @Test
+    public void thatFailedRequestIsReported() throws Exception
+    {
+        try (StubExternalRecommenderServer server = new StubExternalRecommenderServer(true, 0)) {
+            ExternalRecommenderClient sut = new ExternalRecommenderClient(properties(10, 2),
+                    server.getUrl() + "unknown/");
+
+            assertThatThrownBy(() -> sut.predict(TYPE_SYSTEM, METADATA,
+                    new Document("doc", 1L, "user"), XMI, false))
+                            .isInstanceOf(RecommendationException.class)
+                            .hasMessageContaining("404");
+        }
+    }
+
+    static List<String> predictConcurrently(ExternalRecommenderClient aClient, int aDocuments)
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(aDocuments);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < aDocuments; i++) {
+                Document document = new Document("doc-" + i, i, "user");
+                futures.add(executor.submit(() -> aClient
+                        .predict(TYPE_SYSTEM, METADATA, document, XMI, false).getDocument()));
+            }
+
+            List<String> results = new ArrayList<>();
+            for (Future<String> future : futures) {
+                results.add(future.get(1, MINUTES));
+            }
+            return results;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static ExternalRecommenderPropertiesImpl properties(int aBatchSize, int aMaxConcurrentRequests)
+    {
+        ExternalRecommenderPropertiesImpl properties = new ExternalRecommenderPropertiesImpl();
+        properties.setPredictionBatchSize(aBatchSize);
+        properties.setMaxConcurrentRequests(aMaxConcurrentRequests);
+        return properties;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external;
+
+import static de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil.fromJsonString;
+import static de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil.toJsonString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.BatchPredictionRequest;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.BatchPredictionResponse;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.PredictionRequest;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.messages.PredictionResponse;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.CasFormat;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.model.Document;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Local stand-in for an external recommender. By default, predictions simply echo the XMI of each
+ * document prefixed with {@link #PREDICTED_PREFIX}. A custom {@link PredictionHandler} can be used
+ * to actually process the CASes. Each request takes at least the configured latency to simulate
+ * the cost of a round trip to a real server.
+ */
+public class StubExternalRecommenderServer
+    implements AutoCloseable
+{
+    public static final String PREDICTED_PREFIX = "predicted:";
+
+    private final MockWebServer server = new MockWebServer();
+    private final boolean batchingSupported;
+    private final long latencyMillis;
+    private final PredictionHandler handler;
+
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    public StubExternalRecommenderServer(boolean aBatchingSupported, long aLatencyMillis)
+        throws IOException
+    {
+        this(aBatchingSupported, aLatencyMillis, StubExternalRecommenderServer::echo);
+    }
+
+    public StubExternalRecommenderServer(boolean aBatchingSupported, long aLatencyMillis,
+            PredictionHandler aHandler)
+        throws IOException
+    {
+        batchingSupported = aBatchingSupported;
+        latencyMillis = aLatencyMillis;
+        handler = aHandler;
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest aRequest)
+            {
+                int current = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet(current, Math::max);
+                try {
+                    Thread.sleep(latencyMillis);
+                    return handle(aRequest);
+                }
+                catch (IllegalArgumentException e) {
+                    // The handler could not process the request
+                    return new MockResponse().setResponseCode(400).setBody(e.getMessage());
+                }
+                catch (Exception e) {
+                    return new MockResponse().setResponseCode(500).setBody(e.getMessage());
+                }
+                finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        });
+        server.start();
+    }
+
+    public String getUrl()
+    {
+        return server.url("/").toString();
+    }
+
+    public int getRequestCount(String aPath)
+    {
+        AtomicInteger count = requestCounts.get(aPath);
+        return count != null ? count.get() : 0;
+    }
+
+    public List<Integer> getBatchSizes()
+    {
+        return batchSizes;
+    }
+
+    public int getMaxInFlight()
+    {
+        return maxInFlight.get();
+    }
+
+    private MockResponse handle(RecordedRequest aRequest) throws Exception
+    {
+        String path = aRequest.getPath();
+        requestCounts.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        String body = aRequest.getBody().readUtf8();
+
+        if ("/predict".equals(path)) {
+            PredictionRequest request = fromJsonString(PredictionRequest.class, body);
+            PredictionResponse response = new PredictionResponse();
+            response.setCasFormat(request.getCasFormat());
+            response.setDelta(request.isDeltaResponse());
+            response.setDocument(handler.predict(request.getTypeSystem(), request.getCasFormat(),
+                    request.isDeltaResponse(), request.getDocument()));
+            return new MockResponse().setResponseCode(200).setBody(toJsonString(response));
+        }
+
+        if ("/predict-batch".equals(path) && batchingSupported) {
+            BatchPredictionRequest request = fromJsonString(BatchPredictionRequest.class, body);
+            batchSizes.add(request.getDocuments().size());
+            List<String> documents = new ArrayList<>();
+            for (Document document : request.getDocuments()) {
+                documents.add(handler.predict(request.getTypeSystem(), request.getCasFormat(),
+                        request.isDeltaResponse(), document));
+            }
+            BatchPredictionResponse response = new BatchPredictionResponse();
+            response.setCasFormat(request.getCasFormat());
+            response.setDelta(request.isDeltaResponse());
+            response.setDocuments(documents);
+            return new MockResponse().setResponseCode(200).setBody(toJsonString(response));
+        }
+
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private static String echo(String aTypeSystem, CasFormat aFormat, boolean aDelta,
+            Document aDocument)
+    {
+        if (aFormat != CasFormat.XMI) {
+            throw new IllegalArgumentException("Unsupported format: " + aFormat);
+        }
+        return PREDICTED_PREFIX + aDocument.getXmi();
+    }
+
+    @FunctionalInterface
+    public interface PredictionHandler
+    {
+        /**
+         * @return the predicted document encoded in the same format as the request. If a delta
+         *         has been requested, the document must only contain the added annotations.
+         */
+        String predict(String aTypeSystem, CasFormat aFormat, boolean aDelta, Document aDocument)
+            throws Exception;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        server.shutdown();
+    }
+}
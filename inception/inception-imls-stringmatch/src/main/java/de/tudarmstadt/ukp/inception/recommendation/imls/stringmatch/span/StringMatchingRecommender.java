@@ -20,6 +20,7 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span;
 import static de.tudarmstadt.ukp.clarin.webanno.model.AnchoringMode.CHARACTERS;
 import static de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult.toEvaluationResult;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 import static java.util.Comparator.comparingInt;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
@@ -32,16 +33,21 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Feature;
 import org.apache.uima.cas.Type;
@@ -63,6 +69,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderCo
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.GazeteerService;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.model.Gazeteer;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.model.GazeteerEntry;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie.CompactTrie;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie.Trie;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie.WhitespaceNormalizingSanitizer;
 
@@ -70,6 +77,9 @@ public class StringMatchingRecommender
     extends RecommendationEngine
 {
     public static final Key<Trie<DictEntry>> KEY_MODEL = new Key<>("model");
+    public static final Key<List<CompactTrie>> KEY_GAZETEERS = new Key<>("gazeteers");
+    public static final Key<Map<String, List<Pair<String, String>>>> KEY_TRAINING_DATA = //
+            new Key<>("trainingData");
 
     private static final String UNKNOWN_LABEL = "unknown";
     private static final String NO_LABEL = "O";
@@ -108,12 +118,16 @@ public class StringMatchingRecommender
     {
         Trie<DictEntry> dict = aContext.get(KEY_MODEL)
                 .orElseThrow(() -> new IOException("No model trained yet."));
+        List<CompactTrie> gazeteers = aContext.get(KEY_GAZETEERS).orElse(emptyList());
+
+        Set<String> keys = new TreeSet<>(dict.keys());
+        for (CompactTrie gaz : gazeteers) {
+            keys.addAll(gaz.keys());
+        }
 
         OutputStreamWriter out = new OutputStreamWriter(aOutput);
-        List<String> sortedKeys = new ArrayList<>(dict.keys());
-        Collections.sort(sortedKeys);
-        for (String key : sortedKeys) {
-            DictEntry value = dict.get(key);
+        for (String key : keys) {
+            DictEntry value = lookup(dict, gazeteers, key);
             for (int i = 0; i < value.labels.length; i++) {
                 out.append(key);
                 out.append("\t");
@@ -147,11 +161,95 @@ public class StringMatchingRecommender
     @Override
     public void train(RecommenderContext aContext, List<CAS> aCasses) throws RecommendationException
     {
-        // Pre-load the gazeteers into the model
+        pretrainGazeteers(aContext);
+
+        Trie<DictEntry> dict = aContext.get(KEY_MODEL).orElseGet(this::createTrie);
+
+        for (CAS cas : aCasses) {
+            for (Pair<String, String> mention : extractMentions(cas)) {
+                learn(dict, mention.getKey(), mention.getValue());
+            }
+        }
+
+        aContext.put(KEY_MODEL, dict);
+
+        log.debug("Learned dictionary model with {} entries on {} documents", dict.size(),
+                aCasses.size());
+    }
+
+    @Override
+    public boolean isIncrementalTrainingSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public RecommenderContext newContext(RecommenderContext aCurrentContext)
+    {
+        RecommenderContext context = new RecommenderContext();
+        Optional<Map<String, List<Pair<String, String>>>> trainingData = aCurrentContext
+                .get(KEY_TRAINING_DATA);
+        Optional<Trie<DictEntry>> dict = aCurrentContext.get(KEY_MODEL);
+        // The model can only be updated incrementally if we know which documents it was learned
+        // from. The copy of the dictionary shares its nodes with the current one until they are
+        // changed, so the current model can still be used for predictions during the training.
+        if (trainingData.isPresent() && dict.isPresent()) {
+            context.put(KEY_TRAINING_DATA, new LinkedHashMap<>(trainingData.get()));
+            context.put(KEY_MODEL, dict.get().copy());
+        }
+        return context;
+    }
+
+    @Override
+    public void trainIncrementally(RecommenderContext aContext, Map<String, CAS> aChangedCasses,
+            Set<String> aRemovedDocuments)
+        throws RecommendationException
+    {
+        Map<String, List<Pair<String, String>>> trainingData = aContext.get(KEY_TRAINING_DATA)
+                .orElseGet(LinkedHashMap::new);
+        Trie<DictEntry> dict = aContext.get(KEY_MODEL).orElseGet(this::createTrie);
+
+        // Take back what was learned from the removed documents and from the previous version of
+        // the changed documents, then learn from the new version of the changed documents. This
+        // way, only the mentions of the affected documents are processed.
+        Set<String> affectedDocuments = new HashSet<>(aRemovedDocuments);
+        affectedDocuments.addAll(aChangedCasses.keySet());
+        for (String documentId : affectedDocuments) {
+            List<Pair<String, String>> mentions = trainingData.remove(documentId);
+            if (mentions != null) {
+                for (Pair<String, String> mention : mentions) {
+                    unlearn(dict, mention.getKey(), mention.getValue());
+                }
+            }
+        }
+
+        for (Map.Entry<String, CAS> e : aChangedCasses.entrySet()) {
+            List<Pair<String, String>> mentions = extractMentions(e.getValue());
+            trainingData.put(e.getKey(), mentions);
+            for (Pair<String, String> mention : mentions) {
+                learn(dict, mention.getKey(), mention.getValue());
+            }
+        }
+
+        aContext.put(KEY_TRAINING_DATA, trainingData);
+        aContext.put(KEY_MODEL, dict);
+
+        pretrainGazeteers(aContext);
+
+        log.debug("Learned dictionary model with {} entries on {} documents ({} changed)",
+                dict.size(), trainingData.size(), aChangedCasses.size());
+    }
+
+    private void pretrainGazeteers(RecommenderContext aContext)
+    {
+        // The gazeteers are not copied into the model - instead, their pre-built tries are
+        // consulted alongside the model. This avoids re-parsing large gazeteers on every training.
+        List<CompactTrie> gazeteers = new ArrayList<>();
         if (gazeteerService != null) {
+            boolean ignoreCase = traits != null && traits.isIgnoreCase();
             for (Gazeteer gaz : gazeteerService.listGazeteers(recommender)) {
                 try {
-                    pretrain(gazeteerService.readGazeteerFile(gaz), aContext);
+                    gazeteers.add(gazeteerService.loadGazeteerTrie(gaz, ignoreCase));
                 }
                 catch (IOException e) {
                     log.info(
@@ -163,22 +261,20 @@ public class StringMatchingRecommender
                 }
             }
         }
+        aContext.put(KEY_GAZETEERS, gazeteers);
+    }
 
-        Trie<DictEntry> dict = aContext.get(KEY_MODEL).orElseGet(this::createTrie);
-
-        for (CAS cas : aCasses) {
-            Type predictedType = getPredictedType(cas);
-            Feature predictedFeature = getPredictedFeature(cas);
+    private List<Pair<String, String>> extractMentions(CAS aCas)
+    {
+        Type predictedType = getPredictedType(aCas);
+        Feature predictedFeature = getPredictedFeature(aCas);
 
-            for (AnnotationFS ann : select(cas, predictedType)) {
-                learn(dict, ann.getCoveredText(), ann.getFeatureValueAsString(predictedFeature));
-            }
+        List<Pair<String, String>> mentions = new ArrayList<>();
+        for (AnnotationFS ann : select(aCas, predictedType)) {
+            mentions.add(
+                    Pair.of(ann.getCoveredText(), ann.getFeatureValueAsString(predictedFeature)));
         }
-
-        aContext.put(KEY_MODEL, dict);
-
-        log.debug("Learned dictionary model with {} entries on {} documents", dict.size(),
-                aCasses.size());
+        return mentions;
     }
 
     @Override
@@ -192,7 +288,8 @@ public class StringMatchingRecommender
         Feature isPredictionFeature = getIsPredictionFeature(aCas);
         Feature scoreFeature = getScoreFeature(aCas);
 
-        List<Sample> data = predict(0, aCas, dict);
+        List<Sample> data = predict(0, aCas, dict,
+                aContext.get(KEY_GAZETEERS).orElse(emptyList()));
 
         for (Sample sample : data) {
             for (Span span : sample.getSpans()) {
@@ -206,7 +303,8 @@ public class StringMatchingRecommender
         }
     }
 
-    private List<Sample> predict(int aDocNo, CAS aCas, Trie<DictEntry> aDict)
+    private List<Sample> predict(int aDocNo, CAS aCas, Trie<DictEntry> aDict,
+            List<CompactTrie> aGazeteers)
     {
         boolean requireEndAtTokenBoundary = !CHARACTERS
                 .equals(getRecommender().getLayer().getAnchoringMode());
@@ -227,7 +325,7 @@ public class StringMatchingRecommender
             List<Annotation> tokens = aCas.<Annotation> select(tokenType).coveredBy(sampleUnit)
                     .asList();
             for (Annotation token : tokens) {
-                Trie<DictEntry>.MatchedNode match = aDict.getNode(text, token.getBegin());
+                Match match = match(aDict, aGazeteers, text, token.getBegin());
                 if (match != null) {
                     int begin = token.getBegin();
                     int end = begin + match.matchLength;
@@ -243,7 +341,7 @@ public class StringMatchingRecommender
                         continue;
                     }
 
-                    for (LabelStats lc : match.node.value.getBest(maxRecommendations)) {
+                    for (LabelStats lc : match.entry.getBest(maxRecommendations)) {
                         String label = lc.getLabel();
                         // check instance equality to avoid collision with user labels
                         if (label == UNKNOWN_LABEL) {
@@ -367,23 +465,110 @@ public class StringMatchingRecommender
                 SAMPLE_UNIT.getSimpleName(), trainingSetSize, testSetSize, trainRatio, NO_LABEL));
     }
 
+    /**
+     * Finds the longest match at the given offset in the model and the gazeteers. If the model
+     * and/or several gazeteers have a match of the same length, their label counts are combined.
+     */
+    private Match match(Trie<DictEntry> aDict, List<CompactTrie> aGazeteers, String aText,
+            int aOffset)
+    {
+        Trie<DictEntry>.MatchedNode dictMatch = aDict.getNode(aText, aOffset);
+
+        if (aGazeteers.isEmpty()) {
+            return dictMatch != null ? new Match(dictMatch.matchLength, dictMatch.node.value)
+                    : null;
+        }
+
+        List<CompactTrie.MatchedNode> gazMatches = new ArrayList<>();
+        int length = dictMatch != null ? dictMatch.matchLength : 0;
+        for (CompactTrie gaz : aGazeteers) {
+            CompactTrie.MatchedNode gazMatch = gaz.getNode(aText, aOffset);
+            if (gazMatch == null || gazMatch.matchLength < length) {
+                continue;
+            }
+
+            if (gazMatch.matchLength > length) {
+                gazMatches.clear();
+                length = gazMatch.matchLength;
+            }
+            gazMatches.add(gazMatch);
+        }
+
+        if (gazMatches.isEmpty()) {
+            return dictMatch != null ? new Match(dictMatch.matchLength, dictMatch.node.value)
+                    : null;
+        }
+
+        // Gazeteer entries come first as they used to be loaded into the model before training
+        DictEntry entry = new DictEntry(aText.substring(aOffset, aOffset + length));
+        for (CompactTrie.MatchedNode gazMatch : gazMatches) {
+            entry.putAll(gazMatch.getLabels(), gazMatch.getCounts());
+        }
+        if (dictMatch != null && dictMatch.matchLength == length) {
+            entry.putAll(dictMatch.node.value.labels, dictMatch.node.value.counts);
+        }
+
+        return new Match(length, entry);
+    }
+
+    private DictEntry lookup(Trie<DictEntry> aDict, List<CompactTrie> aGazeteers, String aKey)
+    {
+        DictEntry entry = new DictEntry(aKey);
+        for (CompactTrie gaz : aGazeteers) {
+            CompactTrie.MatchedNode gazMatch = gaz.getNode(aKey);
+            if (gazMatch != null) {
+                entry.putAll(gazMatch.getLabels(), gazMatch.getCounts());
+            }
+        }
+
+        DictEntry dictEntry = aDict.get(aKey);
+        if (dictEntry != null) {
+            entry.putAll(dictEntry.labels, dictEntry.counts);
+        }
+
+        return entry;
+    }
+
     private void learn(Trie<DictEntry> aDict, String aText, String aLabel)
     {
         String label = isBlank(aLabel) ? UNKNOWN_LABEL : aLabel;
+        String text = normalizeKey(aText);
 
-        String text = aText;
-        if (traits != null && traits.isIgnoreCase()) {
-            text = text.toLowerCase(Locale.ROOT);
-        }
+        // Entries may be shared with a copy of the dictionary (cf. newContext), so they are not
+        // modified in place
+        DictEntry entry = aDict.get(text);
+        entry = entry != null ? new DictEntry(entry) : new DictEntry(text);
+        entry.put(label);
+        aDict.put(text, entry);
+    }
+
+    private void unlearn(Trie<DictEntry> aDict, String aText, String aLabel)
+    {
+        String label = isBlank(aLabel) ? UNKNOWN_LABEL : aLabel;
+        String text = normalizeKey(aText);
 
         DictEntry entry = aDict.get(text);
         if (entry == null) {
-            entry = new DictEntry(text);
+            return;
+        }
+
+        entry = new DictEntry(entry);
+        entry.remove(label);
+        if (entry.isEmpty()) {
+            aDict.remove(text);
+        }
+        else {
             aDict.put(text, entry);
         }
+    }
 
-        entry.put(label);
+    private String normalizeKey(String aText)
+    {
+        if (traits != null && traits.isIgnoreCase()) {
+            return aText.toLowerCase(Locale.ROOT);
+        }
 
+        return aText;
     }
 
     private List<Sample> extractData(List<CAS> aCasses, String aLayerName, String aFeatureName)
@@ -540,6 +725,18 @@ public class StringMatchingRecommender
         }
     }
 
+    private static class Match
+    {
+        private final int matchLength;
+        private final DictEntry entry;
+
+        public Match(int aMatchLength, DictEntry aEntry)
+        {
+            matchLength = aMatchLength;
+            entry = aEntry;
+        }
+    }
+
     private static class Span
     {
         private final int begin;
@@ -603,12 +800,31 @@ public class StringMatchingRecommender
             key = aKey;
         }
 
+        public DictEntry(DictEntry aOther)
+        {
+            key = aOther.key;
+            labels = aOther.labels != null ? aOther.labels.clone() : null;
+            counts = aOther.counts != null ? aOther.counts.clone() : null;
+        }
+
         public void put(String aLabel)
+        {
+            put(aLabel, 1);
+        }
+
+        public void putAll(String[] aLabels, int[] aCounts)
+        {
+            for (int i = 0; i < aLabels.length; i++) {
+                put(aLabels[i], aCounts[i]);
+            }
+        }
+
+        private void put(String aLabel, int aCount)
         {
             // No data yet - create it
             if (labels == null) {
                 labels = new String[] { aLabel };
-                counts = new int[] { 1 };
+                counts = new int[] { aCount };
                 return;
             }
 
@@ -617,7 +833,7 @@ public class StringMatchingRecommender
 
             // Label already exists
             if (i != -1) {
-                counts[i]++;
+                counts[i] += aCount;
                 return;
             }
 
@@ -631,7 +847,42 @@ public class StringMatchingRecommender
             counts = newCounts;
 
             labels[labels.length - 1] = aLabel;
-            counts[counts.length - 1] = 1;
+            counts[counts.length - 1] = aCount;
+        }
+
+        /**
+         * Decrements the count of the given label and drops the label once its count reaches zero.
+         */
+        public void remove(String aLabel)
+        {
+            if (labels == null) {
+                return;
+            }
+
+            int i = asList(labels).indexOf(aLabel);
+            if (i == -1) {
+                return;
+            }
+
+            if (counts[i] > 1) {
+                counts[i]--;
+                return;
+            }
+
+            String[] newLabels = new String[labels.length - 1];
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(labels, i + 1, newLabels, i, labels.length - i - 1);
+            labels = newLabels;
+
+            int[] newCounts = new int[counts.length - 1];
+            System.arraycopy(counts, 0, newCounts, 0, i);
+            System.arraycopy(counts, i + 1, newCounts, i, counts.length - i - 1);
+            counts = newCounts;
+        }
+
+        public boolean isEmpty()
+        {
+            return labels == null || labels.length == 0;
         }
 
         public List<LabelStats> getBest(int aN)
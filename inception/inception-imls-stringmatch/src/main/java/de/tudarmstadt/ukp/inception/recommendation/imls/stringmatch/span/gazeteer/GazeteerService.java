@@ -29,6 +29,7 @@ import java.util.List;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.model.Gazeteer;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.model.GazeteerEntry;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie.CompactTrie;
 
 public interface GazeteerService
 {
@@ -63,5 +64,17 @@ public interface GazeteerService
      */
     List<GazeteerEntry> readGazeteerFile(Gazeteer aGaz) throws IOException;
 
+    /**
+     * Loads the gazeteer as a compact trie. The trie is built once from the gazeteer file, stored
+     * next to it and memory-mapped on subsequent calls. It is rebuilt if the gazeteer file changes.
+     * 
+     * @param aGaz
+     *            the gazeteer.
+     * @param aIgnoreCase
+     *            whether the keys should be lower-cased.
+     * @return the trie.
+     */
+    CompactTrie loadGazeteerTrie(Gazeteer aGaz, boolean aIgnoreCase) throws IOException;
+
     boolean existsGazeteer(Recommender aRecommender, String aName);
 }
@@ -23,6 +23,7 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazete
 
 import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.withProjectLogger;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static org.apache.commons.lang3.StringUtils.trimToNull;
 
 import java.io.File;
@@ -31,8 +32,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityManager;
 
@@ -49,6 +56,8 @@ import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.config.StringMatchingRecommenderAutoConfiguration;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.model.Gazeteer;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.model.GazeteerEntry;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie.CompactTrie;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie.WhitespaceNormalizingSanitizer;
 
 /**
  * <p>
@@ -118,9 +127,19 @@ public class GazeteerServiceImpl
             gazFile.getParentFile().mkdirs();
         }
 
+        long previousVersion = gazFile.lastModified();
+
         try (OutputStream os = new FileOutputStream(gazFile)) {
             IOUtils.copyLarge(aStream, os);
         }
+
+        // The modification time identifies the tries built from the file. Make sure that it
+        // changes even if the file system only has a coarse timestamp resolution.
+        if (gazFile.lastModified() <= previousVersion) {
+            gazFile.setLastModified(previousVersion + 1000);
+        }
+
+        deleteGazeteerTries(aGazeteer, null);
     }
 
     @Override
@@ -144,6 +163,8 @@ public class GazeteerServiceImpl
                 gaz.delete();
             }
 
+            deleteGazeteerTries(aGazeteer, null);
+
             log.info("Removed gazeteer [{}] for recommender {} in project {}", aGazeteer.getName(),
                     aGazeteer.getRecommender(), aGazeteer.getRecommender().getProject());
         }
@@ -163,8 +184,115 @@ public class GazeteerServiceImpl
         return data;
     }
 
+    @Override
+    public CompactTrie loadGazeteerTrie(Gazeteer aGaz, boolean aIgnoreCase) throws IOException
+    {
+        File gazFile = getGazeteerFile(aGaz);
+        File trieFile = getGazeteerTrieFile(aGaz, aIgnoreCase, gazFile.lastModified());
+
+        if (!trieFile.exists()) {
+            long start = System.currentTimeMillis();
+
+            CompactTrie.Builder builder = CompactTrie
+                    .builder(WhitespaceNormalizingSanitizer.factory());
+            try (InputStream is = new FileInputStream(gazFile)) {
+                parseGazeteer(aGaz, is, entry -> builder.add(
+                        aIgnoreCase ? entry.text.toLowerCase(Locale.ROOT) : entry.text,
+                        entry.label));
+            }
+            CompactTrie trie = builder.build();
+
+            // Write to a temporary file first so that concurrent readers never map a partially
+            // written trie. If another thread has built the same trie in the meantime, we use
+            // that one because it may already be mapped (which e.g. on Windows prevents replacing
+            // it). If both threads get to the move at the same time, the move replaces the file.
+            // On POSIX systems, this is harmless because both tries have the same content and
+            // existing mappings keep referring to the replaced file. On Windows, the move fails
+            // while the file is mapped and we use the existing file.
+            Path tmpFile = Files.createTempFile(trieFile.getParentFile().toPath(),
+                    trieFile.getName(), ".tmp");
+            try {
+                trie.write(tmpFile);
+                if (!trieFile.exists()) {
+                    Files.move(tmpFile, trieFile.toPath(), ATOMIC_MOVE);
+                }
+            }
+            catch (FileAlreadyExistsException | AccessDeniedException e) {
+                // Built concurrently by another thread
+                if (!trieFile.exists()) {
+                    throw e;
+                }
+            }
+            finally {
+                Files.deleteIfExists(tmpFile);
+            }
+
+            log.info("Built trie for gazeteer [{}] with {} entries ({} bytes) in {}ms",
+                    aGaz.getName(), trie.size(), trie.getSizeInBytes(),
+                    System.currentTimeMillis() - start);
+
+            deleteGazeteerTries(aGaz, gazFile.lastModified());
+        }
+
+        return CompactTrie.map(trieFile.toPath(), WhitespaceNormalizingSanitizer.factory());
+    }
+
+    /**
+     * The trie files are versioned by the modification time of the gazeteer file. Thus, a trie
+     * that is still memory-mapped never needs to be replaced or deleted in place.
+     */
+    private File getGazeteerTrieFile(Gazeteer aGazeteer, boolean aIgnoreCase, long aVersion)
+        throws IOException
+    {
+        File gazFile = getGazeteerFile(aGazeteer);
+        return new File(gazFile.getParentFile(), aGazeteer.getId() + (aIgnoreCase ? "-lc" : "")
+                + "-" + Long.toHexString(aVersion) + ".trie");
+    }
+
+    /**
+     * Deletes the trie files of the given gazeteer except for those of the given version (may be
+     * {@code null}).
+     * Java cannot reliably unmap a memory-mapped file while the trie may still be in use, and on
+     * some platforms (e.g. Windows), a mapped file cannot be deleted. Such files are deleted on
+     * the next attempt or on exit once the trie has been garbage collected.
+     */
+    private void deleteGazeteerTries(Gazeteer aGazeteer, Long aKeepVersion) throws IOException
+    {
+        File dir = getGazeteerFile(aGazeteer).getParentFile();
+        String prefix = aGazeteer.getId() + "-";
+        File[] tries = dir.listFiles((d, name) -> name.endsWith(".trie")
+                && (name.startsWith(prefix) || name.equals(aGazeteer.getId() + ".trie")));
+
+        if (tries == null) {
+            return;
+        }
+
+        for (File trie : tries) {
+            if (aKeepVersion != null
+                    && trie.getName().endsWith("-" + Long.toHexString(aKeepVersion) + ".trie")) {
+                continue;
+            }
+
+            try {
+                Files.deleteIfExists(trie.toPath());
+            }
+            catch (IOException e) {
+                log.debug("Unable to delete trie file [{}] - it is probably still in use", trie,
+                        e);
+                trie.deleteOnExit();
+            }
+        }
+    }
+
     public void parseGazeteer(Gazeteer aGaz, InputStream aStream, List<GazeteerEntry> aTarget)
         throws IOException
+    {
+        parseGazeteer(aGaz, aStream, aTarget::add);
+    }
+
+    private void parseGazeteer(Gazeteer aGaz, InputStream aStream,
+            Consumer<GazeteerEntry> aTarget)
+        throws IOException
     {
         int lineNumber = 0;
         LineIterator i = IOUtils.lineIterator(aStream, UTF_8);
@@ -182,7 +310,7 @@ public class GazeteerServiceImpl
                 String text = trimToNull(fields[0]);
                 String label = trimToNull(fields[1]);
                 if (label != null && text != null) {
-                    aTarget.add(new GazeteerEntry(text, label));
+                    aTarget.accept(new GazeteerEntry(text, label));
                 }
             }
             else {
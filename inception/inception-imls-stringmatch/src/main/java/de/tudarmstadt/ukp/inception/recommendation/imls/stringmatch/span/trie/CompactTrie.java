@@ -0,0 +1,563 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An immutable trie which stores its structure in primitive arrays instead of a map per node. The
+ * nodes are numbered in breadth-first order, so the children of a node are contiguous and the
+ * edge {@code e} always leads to the node {@code e + 1}. The children of a node are sorted by
+ * character and are looked up using binary search.
+ * <p>
+ * Every key maps to a list of labels with counts, which is what the string matching recommender
+ * needs for its dictionary entries. A trie can be {@link #write written} to a file and later be
+ * {@link #map memory-mapped} from that file without having to rebuild it.
+ * <p>
+ * Zero-length or null keys are not allowed.
+ */
+public class CompactTrie
+{
+    private static final int MAGIC = 0x54524945; // TRIE
+    private static final int VERSION = 1;
+
+    private final KeySanitizerFactory sanitizerFactory;
+    private final int size;
+    private final String[] labels;
+
+    // Children of node n are the edges firstEdge[n] until firstEdge[n + 1] (exclusive)
+    private final IntBuffer firstEdge;
+    private final CharBuffer edgeChars;
+
+    // Values of node n are the entries firstValue[n] until firstValue[n + 1] (exclusive)
+    private final IntBuffer firstValue;
+    private final IntBuffer valueLabels;
+    private final IntBuffer valueCounts;
+
+    private CompactTrie(KeySanitizerFactory aSanitizerFactory, int aSize, String[] aLabels,
+            IntBuffer aFirstEdge, CharBuffer aEdgeChars, IntBuffer aFirstValue,
+            IntBuffer aValueLabels, IntBuffer aValueCounts)
+    {
+        sanitizerFactory = aSanitizerFactory;
+        size = aSize;
+        labels = aLabels;
+        firstEdge = aFirstEdge;
+        edgeChars = aEdgeChars;
+        firstValue = aFirstValue;
+        valueLabels = aValueLabels;
+        valueCounts = aValueCounts;
+    }
+
+    /**
+     * @return the number of keys in the trie.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of nodes in the trie, including the root node.
+     */
+    public int getNodeCount()
+    {
+        return firstEdge.limit() - 1;
+    }
+
+    /**
+     * @return the approximate number of bytes used by the trie data. If the trie has been
+     *         memory-mapped, this memory is not part of the Java heap.
+     */
+    public long getSizeInBytes()
+    {
+        long bytes = (long) firstEdge.limit() * Integer.BYTES;
+        bytes += (long) edgeChars.limit() * Character.BYTES;
+        bytes += (long) firstValue.limit() * Integer.BYTES;
+        bytes += (long) valueLabels.limit() * Integer.BYTES * 2;
+        for (String label : labels) {
+            bytes += label.length() * Character.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Finds the longest key which matches the given text starting at the given offset.
+     *
+     * @param aText
+     *            the text.
+     * @param aOffset
+     *            the offset in the text at which the match must start.
+     * @return the node of the longest key matching or {@code null} if no key matches.
+     */
+    public MatchedNode getNode(CharSequence aText, int aOffset)
+    {
+        if (aOffset > aText.length() - 1) {
+            return null;
+        }
+
+        KeySanitizer sanitizer = sanitizerFactory != null ? sanitizerFactory.create() : null;
+
+        int node = 0;
+        int match = -1;
+        int matchEnd = aOffset;
+        for (int i = aOffset; i < aText.length(); i++) {
+            char c = aText.charAt(i);
+
+            if (sanitizer != null) {
+                c = sanitizer.map(c);
+                if (c == KeySanitizer.SKIP_CHAR) {
+                    continue;
+                }
+            }
+
+            node = child(node, c);
+            if (node == -1) {
+                break;
+            }
+
+            if (hasValue(node)) {
+                match = node;
+                matchEnd = i + 1;
+            }
+        }
+
+        return match != -1 ? new MatchedNode(match, matchEnd - aOffset) : null;
+    }
+
+    /**
+     * @param aKey
+     *            the key.
+     * @return the node of the given key or {@code null} if the key is not in the trie.
+     */
+    public MatchedNode getNode(CharSequence aKey)
+    {
+        if (aKey == null || aKey.length() == 0) {
+            return null;
+        }
+
+        KeySanitizer sanitizer = sanitizerFactory != null ? sanitizerFactory.create() : null;
+
+        int node = 0;
+        for (int i = 0; i < aKey.length() && node != -1; i++) {
+            char c = aKey.charAt(i);
+
+            if (sanitizer != null) {
+                c = sanitizer.map(c);
+                if (c == KeySanitizer.SKIP_CHAR) {
+                    continue;
+                }
+            }
+
+            node = child(node, c);
+        }
+
+        return node > 0 && hasValue(node) ? new MatchedNode(node, aKey.length()) : null;
+    }
+
+    public boolean containsKey(CharSequence aKey)
+    {
+        return getNode(aKey) != null;
+    }
+
+    /**
+     * @return all the keys in the trie. Mind that these are the sanitized keys.
+     */
+    public Set<String> keys()
+    {
+        Set<String> keys = new TreeSet<>();
+        keys(0, new StringBuilder(), keys);
+        return keys;
+    }
+
+    private void keys(int aNode, StringBuilder aPrefix, Set<String> aKeys)
+    {
+        if (aNode > 0 && hasValue(aNode)) {
+            aKeys.add(aPrefix.toString());
+        }
+
+        int length = aPrefix.length();
+        for (int e = firstEdge.get(aNode); e < firstEdge.get(aNode + 1); e++) {
+            aPrefix.append(edgeChars.get(e));
+            keys(e + 1, aPrefix, aKeys);
+            aPrefix.setLength(length);
+        }
+    }
+
+    private boolean hasValue(int aNode)
+    {
+        return firstValue.get(aNode) != firstValue.get(aNode + 1);
+    }
+
+    private int child(int aNode, char aChar)
+    {
+        int lo = firstEdge.get(aNode);
+        int hi = firstEdge.get(aNode + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char c = edgeChars.get(mid);
+            if (c < aChar) {
+                lo = mid + 1;
+            }
+            else if (c > aChar) {
+                hi = mid - 1;
+            }
+            else {
+                return mid + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the trie to the given file so it can later be loaded using {@link #map}.
+     *
+     * @param aFile
+     *            the target file.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    public void write(Path aFile) throws IOException
+    {
+        try (OutputStream os = Files.newOutputStream(aFile)) {
+            write(os);
+        }
+    }
+
+    private void write(OutputStream aStream) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(aStream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(size);
+        out.writeInt(labels.length);
+        out.writeInt(firstEdge.limit());
+        out.writeInt(edgeChars.limit());
+        out.writeInt(valueLabels.limit());
+        for (String label : labels) {
+            byte[] bytes = label.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        for (int i = 0; i < firstEdge.limit(); i++) {
+            out.writeInt(firstEdge.get(i));
+        }
+        for (int i = 0; i < edgeChars.limit(); i++) {
+            out.writeChar(edgeChars.get(i));
+        }
+        for (int i = 0; i < firstValue.limit(); i++) {
+            out.writeInt(firstValue.get(i));
+        }
+        for (int i = 0; i < valueLabels.limit(); i++) {
+            out.writeInt(valueLabels.get(i));
+        }
+        for (int i = 0; i < valueCounts.limit(); i++) {
+            out.writeInt(valueCounts.get(i));
+        }
+        out.flush();
+    }
+
+    /**
+     * Memory-maps a trie previously {@link #write written} to the given file. Only the labels are
+     * loaded onto the heap, the trie structure itself remains in the mapped file.
+     *
+     * @param aFile
+     *            the file.
+     * @param aSanitizerFactory
+     *            the sanitizer which was used when building the trie (may be {@code null}).
+     * @return the trie.
+     * @throws IOException
+     *             if the file cannot be read or is not a trie file.
+     */
+    public static CompactTrie map(Path aFile, KeySanitizerFactory aSanitizerFactory)
+        throws IOException
+    {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(aFile, READ)) {
+            // The mapping remains valid after the channel has been closed
+            buf = channel.map(READ_ONLY, 0, channel.size());
+        }
+
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("Not a trie file: [" + aFile + "]");
+        }
+
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException(
+                    "Unsupported trie file version [" + version + "] in [" + aFile + "]");
+        }
+
+        int size = buf.getInt();
+        String[] labels = new String[buf.getInt()];
+        int nodeBoundaries = buf.getInt();
+        int edges = buf.getInt();
+        int values = buf.getInt();
+        for (int i = 0; i < labels.length; i++) {
+            byte[] bytes = new byte[buf.getInt()];
+            buf.get(bytes);
+            labels[i] = new String(bytes, UTF_8);
+        }
+
+        IntBuffer firstEdge = slice(buf, nodeBoundaries * Integer.BYTES).asIntBuffer();
+        CharBuffer edgeChars = slice(buf, edges * Character.BYTES).asCharBuffer();
+        IntBuffer firstValue = slice(buf, nodeBoundaries * Integer.BYTES).asIntBuffer();
+        IntBuffer valueLabels = slice(buf, values * Integer.BYTES).asIntBuffer();
+        IntBuffer valueCounts = slice(buf, values * Integer.BYTES).asIntBuffer();
+
+        return new CompactTrie(aSanitizerFactory, size, labels, firstEdge, edgeChars, firstValue,
+                valueLabels, valueCounts);
+    }
+
+    private static ByteBuffer slice(ByteBuffer aBuffer, int aLength)
+    {
+        ByteBuffer slice = aBuffer.slice();
+        slice.limit(aLength);
+        aBuffer.position(aBuffer.position() + aLength);
+        return slice;
+    }
+
+    public static Builder builder(KeySanitizerFactory aSanitizerFactory)
+    {
+        return new Builder(aSanitizerFactory);
+    }
+
+    /**
+     * A node matched in the trie.
+     */
+    public class MatchedNode
+    {
+        private final int node;
+        public final int matchLength;
+
+        private MatchedNode(int aNode, int aMatchLength)
+        {
+            node = aNode;
+            matchLength = aMatchLength;
+        }
+
+        /**
+         * @return the labels of the matched key in the order they were first added.
+         */
+        public String[] getLabels()
+        {
+            int from = firstValue.get(node);
+            String[] result = new String[firstValue.get(node + 1) - from];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = labels[valueLabels.get(from + i)];
+            }
+            return result;
+        }
+
+        /**
+         * @return how often each of the {@link #getLabels() labels} was added for the matched key.
+         */
+        public int[] getCounts()
+        {
+            int from = firstValue.get(node);
+            int[] result = new int[firstValue.get(node + 1) - from];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = valueCounts.get(from + i);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Collects keys and labels and builds a {@link CompactTrie} from them. Adding the same label
+     * multiple times for the same key increases its count.
+     */
+    public static class Builder
+    {
+        private final KeySanitizerFactory sanitizerFactory;
+        private final Map<String, Integer> labelIds = new LinkedHashMap<>();
+        private final List<String> keys = new ArrayList<>();
+        private int[] keyLabels = new int[1024];
+
+        private Builder(KeySanitizerFactory aSanitizerFactory)
+        {
+            sanitizerFactory = aSanitizerFactory;
+        }
+
+        public Builder add(CharSequence aKey, String aLabel)
+        {
+            CharSequence key = aKey;
+
+            if (sanitizerFactory != null) {
+                key = sanitizerFactory.create().sanitize(key);
+            }
+
+            if (key.length() == 0) {
+                throw new IllegalArgumentException("Zero-length keys are illegal");
+            }
+
+            if (keys.size() == keyLabels.length) {
+                keyLabels = Arrays.copyOf(keyLabels, keyLabels.length * 2);
+            }
+
+            keyLabels[keys.size()] = labelIds.computeIfAbsent(aLabel, l -> labelIds.size());
+            keys.add(key.toString());
+            return this;
+        }
+
+        public CompactTrie build()
+        {
+            // Sort the entries by key. The sort is stable, so the labels of a key remain in the
+            // order in which they were added.
+            Integer[] order = new Integer[keys.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(keys::get));
+
+            String[] sortedKeys = new String[order.length];
+            int[] sortedLabels = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedKeys[i] = keys.get(order[i]);
+                sortedLabels[i] = keyLabels[order[i]];
+            }
+
+            IntArray firstEdge = new IntArray();
+            StringBuilder edgeChars = new StringBuilder();
+            IntArray firstValue = new IntArray();
+            IntArray valueLabels = new IntArray();
+            IntArray valueCounts = new IntArray();
+            int size = 0;
+
+            // Each queue entry is a node given as the range of sorted keys starting with the
+            // prefix represented by the node. Nodes are numbered in the order they are queued.
+            Deque<int[]> queue = new ArrayDeque<>();
+            queue.add(new int[] { 0, sortedKeys.length, 0 });
+            while (!queue.isEmpty()) {
+                int[] node = queue.poll();
+                int from = node[0];
+                int to = node[1];
+                int depth = node[2];
+
+                // Keys ending at this node sort before all longer keys sharing the prefix
+                firstValue.add(valueLabels.size());
+                int valuesStart = valueLabels.size();
+                while (from < to && sortedKeys[from].length() == depth) {
+                    addValue(valueLabels, valueCounts, valuesStart, sortedLabels[from]);
+                    from++;
+                }
+                if (valueLabels.size() > valuesStart) {
+                    size++;
+                }
+
+                // Remaining keys are grouped by their next character into the child nodes
+                firstEdge.add(edgeChars.length());
+                while (from < to) {
+                    char c = sortedKeys[from].charAt(depth);
+                    int childTo = from + 1;
+                    while (childTo < to && sortedKeys[childTo].charAt(depth) == c) {
+                        childTo++;
+                    }
+                    edgeChars.append(c);
+                    queue.add(new int[] { from, childTo, depth + 1 });
+                    from = childTo;
+                }
+            }
+            firstEdge.add(edgeChars.length());
+            firstValue.add(valueLabels.size());
+
+            char[] chars = new char[edgeChars.length()];
+            edgeChars.getChars(0, chars.length, chars, 0);
+
+            return new CompactTrie(sanitizerFactory, size,
+                    labelIds.keySet().toArray(new String[labelIds.size()]),
+                    IntBuffer.wrap(firstEdge.toArray()), CharBuffer.wrap(chars),
+                    IntBuffer.wrap(firstValue.toArray()), IntBuffer.wrap(valueLabels.toArray()),
+                    IntBuffer.wrap(valueCounts.toArray()));
+        }
+
+        private static void addValue(IntArray aLabels, IntArray aCounts, int aStart, int aLabel)
+        {
+            for (int i = aStart; i < aLabels.size(); i++) {
+                if (aLabels.get(i) == aLabel) {
+                    aCounts.set(i, aCounts.get(i) + 1);
+                    return;
+                }
+            }
+
+            aLabels.add(aLabel);
+            aCounts.add(1);
+        }
+    }
+
+    private static class IntArray
+    {
+        private int[] data = new int[1024];
+        private int size = 0;
+
+        void add(int aValue)
+        {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = aValue;
+        }
+
+        int get(int aIndex)
+        {
+            return data[aIndex];
+        }
+
+        void set(int aIndex, int aValue)
+        {
+            data[aIndex] = aValue;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        int[] toArray()
+        {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -38,6 +38,9 @@ public class Trie<V>
 {
     private int size = 0;
     private KeySanitizerFactory sanitizerFactory;
+    // Nodes created by this trie may be modified in place. Nodes with another owner may be shared
+    // with a trie created by copy() and are copied before they are modified.
+    private Object owner = new Object();
 
     public class MatchedNode
     {
@@ -57,12 +60,23 @@ public class Trie<V>
         public V value;
         public final int level;
         boolean set;
+        final Object nodeOwner;
 
         Node(final int l)
         {
             children = new TreeMap<Character, Node>();
             level = l;
             set = false;
+            nodeOwner = owner;
+        }
+
+        Node(final Node aOther)
+        {
+            children = new TreeMap<Character, Node>(aOther.children);
+            value = aOther.value;
+            level = aOther.level;
+            set = aOther.set;
+            nodeOwner = owner;
         }
     }
 
@@ -85,6 +99,28 @@ public class Trie<V>
         sanitizerFactory = aSanitizer;
     }
 
+    /**
+     * Creates a copy of this trie which initially shares all its nodes with this trie. A node is
+     * only copied when it is modified through either of the two tries. Thus, creating a copy and
+     * changing a few keys in it is cheap even for large tries and does not affect this trie.
+     * 
+     * @return the copy.
+     */
+    public Trie<V> copy()
+    {
+        Trie<V> copy = new Trie<>(sanitizerFactory);
+        copy.root = root;
+        copy.size = size;
+        // From now on, this trie must not modify the shared nodes in place either
+        owner = new Object();
+        return copy;
+    }
+
+    private Node own(Node aNode)
+    {
+        return aNode.nodeOwner == owner ? aNode : new Node(aNode);
+    }
+
     /**
      * @see Map#clear()
      */
@@ -120,6 +156,7 @@ public class Trie<V>
         // return oldval;
         // }
 
+        root = own(root);
         Node last = root;
         int level = 1;
         for (int i = 0; i < key.length(); i++) {
@@ -129,6 +166,10 @@ public class Trie<V>
                 cur = new Node(level);
                 last.children.put(k, cur);
             }
+            else if (cur.nodeOwner != owner) {
+                cur = new Node(cur);
+                last.children.put(k, cur);
+            }
             last = cur;
             level++;
         }
@@ -143,6 +184,66 @@ public class Trie<V>
         return oldval;
     }
 
+    /**
+     * @param aKey
+     *            the key.
+     * @return the old value or {@code null} if the key was not in the trie.
+     * @see java.util.Map#remove(java.lang.Object)
+     */
+    public V remove(final CharSequence aKey)
+    {
+        CharSequence key = aKey;
+
+        if (sanitizerFactory != null) {
+            key = sanitizerFactory.create().sanitize(key);
+        }
+
+        if (key.length() == 0) {
+            return null;
+        }
+
+        // Look up the path first, so nothing is copied if the key is not in the trie
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        Node cur = root;
+        path.add(cur);
+        for (int i = 0; i < key.length(); i++) {
+            cur = cur.children.get(key.charAt(i));
+            if (cur == null) {
+                return null;
+            }
+            path.add(cur);
+        }
+
+        if (!cur.set) {
+            return null;
+        }
+
+        root = own(root);
+        path.set(0, root);
+        for (int i = 1; i < path.size(); i++) {
+            Node node = own(path.get(i));
+            path.get(i - 1).children.put(key.charAt(i - 1), node);
+            path.set(i, node);
+        }
+
+        Node last = path.get(path.size() - 1);
+        final V oldval = last.value;
+        last.value = null;
+        last.set = false;
+        size--;
+
+        // Drop nodes which no longer lead to any key
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node node = path.get(i);
+            if (node.set || !node.children.isEmpty()) {
+                break;
+            }
+            path.get(i - 1).children.remove(key.charAt(i - 1));
+        }
+
+        return oldval;
+    }
+
     /**
      * Try to match the character sequence given in key against the trie starting at the given
      * offset in the key string.
@@ -21,18 +21,25 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.EXC
 import static de.tudarmstadt.ukp.clarin.webanno.model.AnchoringMode.CHARACTERS;
 import static de.tudarmstadt.ukp.inception.support.test.recommendation.RecommenderTestHelper.getPredictions;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toList;
 import static org.apache.uima.fit.factory.CollectionReaderFactory.createReader;
 import static org.apache.uima.fit.util.JCasUtil.select;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assumptions.assumeThat;
 import static org.dkpro.core.api.datasets.DatasetValidationPolicy.CONTINUE;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.CAS;
@@ -64,7 +71,11 @@ import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.IncrementalSpl
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.PercentageBasedSplitter;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.GazeteerService;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.model.Gazeteer;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.model.GazeteerEntry;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie.CompactTrie;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie.WhitespaceNormalizingSanitizer;
 import de.tudarmstadt.ukp.inception.support.test.recommendation.DkproTestHelper;
 import de.tudarmstadt.ukp.inception.support.test.recommendation.RecommenderTestHelper;
 
@@ -344,6 +355,113 @@ public class StringMatchingRecommenderTest
         assertThat(result.computeF1Score()).as("correct f1").isEqualTo((2.0 / 9) / (2.0 / 3));
     }
 
+    @Test
+    public void thatIncrementalTrainingReplacesChangedDocuments() throws Exception
+    {
+        StringMatchingRecommender sut = new StringMatchingRecommender(recommender, traits);
+
+        CAS doc1 = getTestNECas("Hans lebt hier.", new String[] { "PER" },
+                new int[][] { { 0, 4 } }, new int[][] { { 0, 15 } },
+                new int[][] { { 0, 4 }, { 5, 9 }, { 10, 14 }, { 14, 15 } }).get(0);
+        CAS doc2 = getTestNECas("Darmstadt ist schön.", new String[] { "LOC" },
+                new int[][] { { 0, 9 } }, new int[][] { { 0, 20 } },
+                new int[][] { { 0, 9 }, { 10, 13 }, { 14, 19 }, { 19, 20 } }).get(0);
+        CAS doc2Changed = getTestNECas("Darmstadt ist schön.", new String[] { "ORG" },
+                new int[][] { { 0, 9 } }, new int[][] { { 0, 20 } },
+                new int[][] { { 0, 9 }, { 10, 13 }, { 14, 19 }, { 19, 20 } }).get(0);
+
+        RecommenderContext ctx1 = sut.newContext(RecommenderContext.EMPTY_CONTEXT);
+        sut.trainIncrementally(ctx1, Map.of("1", doc1, "2", doc2), emptySet());
+        ctx1.close();
+
+        assertThat(exportModel(sut, ctx1)).containsExactly("Darmstadt\tLOC\t1", "Hans\tPER\t1");
+
+        RecommenderContext ctx2 = sut.newContext(ctx1);
+        sut.trainIncrementally(ctx2, Map.of("2", doc2Changed), emptySet());
+        ctx2.close();
+
+        assertThat(exportModel(sut, ctx2)).containsExactly("Darmstadt\tORG\t1", "Hans\tPER\t1");
+        assertThat(exportModel(sut, ctx1)) //
+                .as("Previous model is not affected") //
+                .containsExactly("Darmstadt\tLOC\t1", "Hans\tPER\t1");
+
+        RecommenderContext ctx3 = sut.newContext(ctx2);
+        sut.trainIncrementally(ctx3, Map.of(), Set.of("1"));
+        ctx3.close();
+
+        assertThat(exportModel(sut, ctx3)).containsExactly("Darmstadt\tORG\t1");
+    }
+
+    @Test
+    public void thatIncrementalTrainingTakesBackMentionsOfRemovedDocuments() throws Exception
+    {
+        StringMatchingRecommender sut = new StringMatchingRecommender(recommender, traits);
+
+        CAS doc1 = getTestNECas("Hans lebt hier.", new String[] { "PER" },
+                new int[][] { { 0, 4 } }, new int[][] { { 0, 15 } },
+                new int[][] { { 0, 4 }, { 5, 9 }, { 10, 14 }, { 14, 15 } }).get(0);
+        CAS doc2 = getTestNECas("Hans ist hier.", new String[] { "ORG" },
+                new int[][] { { 0, 4 } }, new int[][] { { 0, 14 } },
+                new int[][] { { 0, 4 }, { 5, 8 }, { 9, 13 }, { 13, 14 } }).get(0);
+
+        RecommenderContext ctx1 = sut.newContext(RecommenderContext.EMPTY_CONTEXT);
+        sut.trainIncrementally(ctx1, Map.of("1", doc1, "2", doc2, "3", doc1), emptySet());
+        ctx1.close();
+
+        assertThat(exportModel(sut, ctx1)) //
+                .containsExactlyInAnyOrder("Hans\tPER\t2", "Hans\tORG\t1");
+
+        RecommenderContext ctx2 = sut.newContext(ctx1);
+        sut.trainIncrementally(ctx2, Map.of(), Set.of("2", "3"));
+        ctx2.close();
+
+        assertThat(exportModel(sut, ctx2)).containsExactly("Hans\tPER\t1");
+
+        RecommenderContext ctx3 = sut.newContext(ctx2);
+        sut.trainIncrementally(ctx3, Map.of(), Set.of("1"));
+        ctx3.close();
+
+        assertThat(exportModel(sut, ctx3)).isEmpty();
+        assertThat(exportModel(sut, ctx1)) //
+                .as("Previous model is not affected") //
+                .containsExactlyInAnyOrder("Hans\tPER\t2", "Hans\tORG\t1");
+    }
+
+    @Test
+    public void thatGazeteerTriesAreCombinedWithModel() throws Exception
+    {
+        CompactTrie gazTrie = CompactTrie.builder(WhitespaceNormalizingSanitizer.factory()) //
+                .add("Darmstadt", "LOC") //
+                .add("Darmstadt", "LOC") //
+                .add("Darmstadt ist", "MISC") //
+                .build();
+
+        GazeteerService gazeteerService = mock(GazeteerService.class);
+        Gazeteer gaz = new Gazeteer("gaz", recommender);
+        when(gazeteerService.listGazeteers(recommender)).thenReturn(List.of(gaz));
+        when(gazeteerService.loadGazeteerTrie(gaz, false)).thenReturn(gazTrie);
+
+        StringMatchingRecommender sut = new StringMatchingRecommender(recommender, traits,
+                gazeteerService);
+
+        CAS doc = getTestNECas("Darmstadt ist schön.", new String[] { "ORG" },
+                new int[][] { { 0, 9 } }, new int[][] { { 0, 20 } },
+                new int[][] { { 0, 9 }, { 10, 13 }, { 14, 19 }, { 19, 20 } }).get(0);
+
+        sut.train(context, List.of(doc));
+
+        assertThat(exportModel(sut, context)).containsExactly("Darmstadt\tLOC\t2",
+                "Darmstadt\tORG\t1", "Darmstadt ist\tMISC\t1");
+    }
+
+    private List<String> exportModel(StringMatchingRecommender aSut, RecommenderContext aContext)
+        throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        aSut.exportModel(aContext, buf);
+        return buf.toString("UTF-8").lines().collect(toList());
+    }
+
     private List<CAS> getTestNECas(String aText, String[] aVals, int[][] aNEIndices,
             int[][] aSentIndices, int[][] aTokenIndices)
         throws Exception
@@ -62,6 +62,7 @@ import de.tudarmstadt.ukp.clarin.webanno.support.logging.Logging;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.model.Gazeteer;
 import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.gazeteer.model.GazeteerEntry;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie.CompactTrie;
 
 @DataJpaTest(excludeAutoConfiguration = LiquibaseAutoConfiguration.class)
 @Transactional
@@ -193,6 +194,18 @@ public class GazeteerServiceImplTest
                 new GazeteerEntry("London", "LOC"), new GazeteerEntry("London", "GPE"),
                 new GazeteerEntry("ACME", "ORG"));
 
+        // Check that the trie is built from the imported file
+        CompactTrie trie = sut.loadGazeteerTrie(gaz, false);
+        assertThat(trie.keys()).containsExactly("ACME", "John", "London");
+        assertThat(trie.getNode("London").getLabels()).containsExactly("LOC", "GPE");
+        assertThat(sut.loadGazeteerTrie(gaz, true).keys()).containsExactly("acme", "john",
+                "london");
+
+        // Check that re-importing while the previous trie is still mapped builds a new trie
+        sut.importGazeteerFile(gaz, toInputStream("Paris\tLOC", UTF_8));
+        assertThat(sut.loadGazeteerTrie(gaz, false).keys()).containsExactly("Paris");
+        assertThat(trie.keys()).containsExactly("ACME", "John", "London");
+
         // Check that gazeteer file has been deleted along with the entity
         sut.deleteGazeteers(gaz);
 
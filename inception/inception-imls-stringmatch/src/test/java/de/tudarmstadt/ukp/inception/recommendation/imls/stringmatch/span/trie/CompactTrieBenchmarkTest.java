@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.StringMatchingRecommender.DictEntry;
+
+/**
+ * Compares build time, lookup throughput and footprint of the {@link Trie} and the
+ * {@link CompactTrie}.
+ */
+@Tag("slow")
+public class CompactTrieBenchmarkTest
+{
+    private static final int ENTRIES = 500_000;
+    private static final int LOOKUPS = 2_000_000;
+    private static final String[] LABELS = { "PER", "LOC", "ORG", "MISC" };
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @TempDir
+    File temporaryFolder;
+
+    @Test
+    public void benchmarkTries() throws Exception
+    {
+        Random rnd = new Random(0);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            keys.add(randomPhrase(rnd));
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            text.append(rnd.nextInt(4) == 0 ? keys.get(rnd.nextInt(keys.size()))
+                    : randomPhrase(rnd)).append(' ');
+        }
+
+        // Trie
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        Trie<DictEntry> trie = new Trie<>(WhitespaceNormalizingSanitizer.factory());
+        for (int i = 0; i < keys.size(); i++) {
+            DictEntry entry = trie.get(keys.get(i));
+            if (entry == null) {
+                entry = new DictEntry(keys.get(i));
+                trie.put(keys.get(i), entry);
+            }
+            entry.put(LABELS[i % LABELS.length]);
+        }
+        long trieBuild = System.nanoTime() - start;
+        long trieHeap = usedHeap() - heapBefore;
+
+        start = System.nanoTime();
+        int trieHits = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (trie.getNode(text, i % text.length()) != null) {
+                trieHits++;
+            }
+        }
+        long trieLookup = System.nanoTime() - start;
+
+        log.info("Trie:        build {} ms  lookups {}/s  heap ~{} MB  hits {}",
+                trieBuild / 1_000_000, LOOKUPS * 1_000_000_000L / trieLookup, trieHeap >> 20,
+                trieHits);
+        trie = null;
+
+        // Compact trie
+        heapBefore = usedHeap();
+        start = System.nanoTime();
+        CompactTrie.Builder builder = CompactTrie.builder(WhitespaceNormalizingSanitizer.factory());
+        for (int i = 0; i < keys.size(); i++) {
+            builder.add(keys.get(i), LABELS[i % LABELS.length]);
+        }
+        CompactTrie compactTrie = builder.build();
+        long compactBuild = System.nanoTime() - start;
+        builder = null;
+        long compactHeap = usedHeap() - heapBefore;
+
+        Path file = temporaryFolder.toPath().resolve("benchmark.trie");
+        start = System.nanoTime();
+        compactTrie.write(file);
+        long compactWrite = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        CompactTrie mappedTrie = CompactTrie.map(file, WhitespaceNormalizingSanitizer.factory());
+        long compactMap = System.nanoTime() - start;
+
+        for (CompactTrie sut : new CompactTrie[] { compactTrie, mappedTrie }) {
+            start = System.nanoTime();
+            int hits = 0;
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (sut.getNode(text, i % text.length()) != null) {
+                    hits++;
+                }
+            }
+            long lookup = System.nanoTime() - start;
+
+            log.info("CompactTrie: {}  lookups {}/s  hits {}",
+                    sut == mappedTrie ? "mapped" : "heap  ", LOOKUPS * 1_000_000_000L / lookup,
+                    hits);
+        }
+
+        log.info("CompactTrie: build {} ms  write {} ms  map {} ms  heap ~{} MB  data {} MB",
+                compactBuild / 1_000_000, compactWrite / 1_000_000, compactMap / 1_000_000,
+                compactHeap >> 20, compactTrie.getSizeInBytes() >> 20);
+    }
+
+    private static String randomPhrase(Random aRnd)
+    {
+        StringBuilder sb = new StringBuilder();
+        int words = 1 + aRnd.nextInt(3);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                sb.append(' ');
+            }
+            int length = 3 + aRnd.nextInt(8);
+            for (int c = 0; c < length; c++) {
+                sb.append((char) ('a' + aRnd.nextInt(26)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long usedHeap()
+    {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.trie;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CompactTrieTest
+{
+    @TempDir
+    File temporaryFolder;
+
+    @Test
+    public void thatElementsCanBeAddedAndRetrieved()
+    {
+        List<String> keys = asList("1", "asf", "asf sadf", "dsjkla sfasd kj92");
+
+        CompactTrie.Builder builder = CompactTrie.builder(null);
+        for (String key : keys) {
+            builder.add(key, "label");
+        }
+        CompactTrie sut = builder.build();
+
+        assertThat(sut.size()).isEqualTo(keys.size());
+        assertThat(sut.keys()).containsExactlyInAnyOrderElementsOf(keys);
+
+        for (String key : keys) {
+            assertThat(sut.getNode(key)).isNotNull();
+        }
+
+        assertThat(sut.getNode("029332")).isNull();
+        assertThat(sut.getNode("as")).isNull();
+    }
+
+    @Test
+    public void thatLabelsAreCountedInInsertionOrder()
+    {
+        CompactTrie sut = CompactTrie.builder(null) //
+                .add("London", "LOC") //
+                .add("London", "GPE") //
+                .add("London", "LOC") //
+                .build();
+
+        assertThat(sut.size()).isEqualTo(1);
+        assertThat(sut.getNode("London").getLabels()).containsExactly("LOC", "GPE");
+        assertThat(sut.getNode("London").getCounts()).containsExactly(2, 1);
+    }
+
+    @Test
+    public void thatLongestMatchIsFound()
+    {
+        CompactTrie sut = CompactTrie.builder(null) //
+                .add("New", "A") //
+                .add("New York", "B") //
+                .add("New York City Hall", "C") //
+                .build();
+
+        assertThat(sut.getNode("New York City", 0).matchLength).isEqualTo(8);
+        assertThat(sut.getNode("in New Yorkshire", 3).matchLength).isEqualTo(8);
+        assertThat(sut.getNode("in Newcastle", 3).matchLength).isEqualTo(3);
+        assertThat(sut.getNode("in Ne", 3)).isNull();
+        assertThat(sut.getNode("New", 5)).isNull();
+    }
+
+    @Test
+    public void testThatKeySanitizerWorks()
+    {
+        CompactTrie sut = CompactTrie.builder(WhitespaceNormalizingSanitizer.factory()) //
+                .add("  this is\ta test\n  .", "exists") //
+                .build();
+
+        assertThat(sut.keys()).containsExactly("this is a test .");
+        assertThat(sut.getNode("this is a test .", 0).matchLength).isEqualTo(16);
+        assertThat(sut.getNode("  this is\ta test  .", 0).matchLength).isEqualTo(19);
+    }
+
+    @Test
+    public void thatZeroLengthKeysAreRejected()
+    {
+        assertThatThrownBy(() -> CompactTrie.builder(WhitespaceNormalizingSanitizer.factory())
+                .add("  ", "label")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void thatTrieCanBeWrittenAndMapped() throws Exception
+    {
+        CompactTrie trie = CompactTrie.builder(null) //
+                .add("Darmstadt", "LOC") //
+                .add("Darmstadt", "ORG") //
+                .add("Dar", "LOC") //
+                .add("Übersee", "LOC") //
+                .build();
+
+        Path file = temporaryFolder.toPath().resolve("test.trie");
+        trie.write(file);
+
+        CompactTrie sut = CompactTrie.map(file, null);
+
+        assertThat(sut.size()).isEqualTo(3);
+        assertThat(sut.getNodeCount()).isEqualTo(trie.getNodeCount());
+        assertThat(sut.keys()).containsExactlyElementsOf(trie.keys());
+        assertThat(sut.getNode("Darmstadt").getLabels()).containsExactly("LOC", "ORG");
+        assertThat(sut.getNode("Übersee").getCounts()).containsExactly(1);
+        assertThat(sut.getNode("Darmstädter", 0).matchLength).isEqualTo(3);
+    }
+
+    @Test
+    public void thatEmptyTrieCanBeWrittenAndMapped() throws Exception
+    {
+        Path file = temporaryFolder.toPath().resolve("empty.trie");
+        CompactTrie.builder(null).build().write(file);
+
+        CompactTrie sut = CompactTrie.map(file, null);
+
+        assertThat(sut.isEmpty()).isTrue();
+        assertThat(sut.getNode("foo", 0)).isNull();
+    }
+}
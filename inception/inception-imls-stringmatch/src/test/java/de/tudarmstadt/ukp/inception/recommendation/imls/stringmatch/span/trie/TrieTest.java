@@ -65,6 +65,41 @@ public class TrieTest
         assertThat(sut.get("initially")).isNull();
     }
 
+    @Test
+    public void thatElementsCanBeRemoved()
+    {
+        sut.put("in", new DictEntry("in"));
+        sut.put("inside", new DictEntry("inside"));
+
+        assertThat(sut.remove("in")).isNotNull();
+        assertThat(sut.remove("in")).isNull();
+        assertThat(sut.remove("out")).isNull();
+        assertThat(sut.size()).isEqualTo(1);
+        assertThat(sut.get("in")).isNull();
+        assertThat(sut.keys()).containsExactly("inside");
+
+        assertThat(sut.remove("inside")).isNotNull();
+        assertThat(sut.isEmpty()).isTrue();
+        assertThat(sut.containsPrefix("in")).isFalse();
+    }
+
+    @Test
+    public void thatCopiesAreIndependent()
+    {
+        sut.put("in", new DictEntry("in"));
+        sut.put("inside", new DictEntry("inside"));
+
+        Trie<DictEntry> copy = sut.copy();
+        copy.put("into", new DictEntry("into"));
+        copy.remove("inside");
+        sut.put("out", new DictEntry("out"));
+
+        assertThat(sut.keys()).containsExactlyInAnyOrder("in", "inside", "out");
+        assertThat(sut.size()).isEqualTo(3);
+        assertThat(copy.keys()).containsExactlyInAnyOrder("in", "into");
+        assertThat(copy.size()).isEqualTo(2);
+    }
+
     @Test
     public void testThatKeySanitizerWorks()
     {
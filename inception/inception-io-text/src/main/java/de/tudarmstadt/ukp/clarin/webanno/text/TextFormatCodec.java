@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.text;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BOMInputStream;
+import org.apache.uima.cas.CAS;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatCodec;
+
+/**
+ * Reads and writes plain text (UTF-8) from/to streams. Like the {@code TextReader}, a byte order
+ * mark at the start of the input is skipped.
+ */
+public class TextFormatCodec
+    implements FormatCodec
+{
+    @Override
+    public boolean isReadable()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isWritable()
+    {
+        return true;
+    }
+
+    @Override
+    public void read(CAS aCas, InputStream aInputStream) throws IOException
+    {
+        aCas.setDocumentText(IOUtils.toString(new BOMInputStream(aInputStream), UTF_8));
+    }
+
+    @Override
+    public String getFileName(String aBaseName)
+    {
+        return aBaseName + ".txt";
+    }
+
+    @Override
+    public void write(CAS aCas, String aBaseName, OutputStream aOutputStream) throws IOException
+    {
+        aOutputStream.write(aCas.getDocumentText().getBytes(UTF_8));
+        aOutputStream.flush();
+    }
+}
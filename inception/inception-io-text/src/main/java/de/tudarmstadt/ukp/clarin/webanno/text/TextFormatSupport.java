@@ -20,6 +20,8 @@ package de.tudarmstadt.ukp.clarin.webanno.text;
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 import static org.apache.uima.fit.factory.CollectionReaderFactory.createReaderDescription;
 
+import java.util.Optional;
+
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.collection.CollectionReaderDescription;
@@ -28,6 +30,7 @@ import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.dkpro.core.io.text.TextReader;
 import org.dkpro.core.io.text.TextWriter;
 
+import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatCodec;
 import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatSupport;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.text.config.TextFormatsAutoConfiguration;
@@ -44,6 +47,8 @@ public class TextFormatSupport
     public static final String ID = "text";
     public static final String NAME = "Plain text";
 
+    private final TextFormatCodec codec = new TextFormatCodec();
+
     @Override
     public String getId()
     {
@@ -82,4 +87,10 @@ public class TextFormatSupport
     {
         return createEngineDescription(TextWriter.class, aTSD);
     }
+
+    @Override
+    public Optional<FormatCodec> getCodec()
+    {
+        return Optional.of(codec);
+    }
 }
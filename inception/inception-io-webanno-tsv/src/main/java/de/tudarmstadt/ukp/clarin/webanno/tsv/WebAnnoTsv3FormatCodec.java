@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.tsv;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.jcas.JCas;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatCodec;
+import de.tudarmstadt.ukp.clarin.webanno.tsv.internal.tsv3x.Tsv3XCasDocumentBuilder;
+import de.tudarmstadt.ukp.clarin.webanno.tsv.internal.tsv3x.Tsv3XCasSchemaAnalyzer;
+import de.tudarmstadt.ukp.clarin.webanno.tsv.internal.tsv3x.Tsv3XDeserializer;
+import de.tudarmstadt.ukp.clarin.webanno.tsv.internal.tsv3x.Tsv3XSerializer;
+import de.tudarmstadt.ukp.clarin.webanno.tsv.internal.tsv3x.model.TsvDocument;
+import de.tudarmstadt.ukp.clarin.webanno.tsv.internal.tsv3x.model.TsvSchema;
+
+/**
+ * Reads and writes the WebAnno TSV v3.x format from/to streams. The (thread-safe) serializer and
+ * deserializer are shared across all calls.
+ */
+public class WebAnnoTsv3FormatCodec
+    implements FormatCodec
+{
+    private final Tsv3XDeserializer deserializer = new Tsv3XDeserializer();
+    private final Tsv3XSerializer serializer = new Tsv3XSerializer();
+
+    @Override
+    public boolean isReadable()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isWritable()
+    {
+        return true;
+    }
+
+    @Override
+    public void read(CAS aCas, InputStream aInputStream) throws IOException
+    {
+        // Not closing the reader because that would close the stream
+        LineNumberReader br = new LineNumberReader(new InputStreamReader(aInputStream, UTF_8));
+        deserializer.read(br, getJCas(aCas));
+    }
+
+    @Override
+    public String getFileName(String aBaseName)
+    {
+        return aBaseName + ".tsv";
+    }
+
+    @Override
+    public void write(CAS aCas, String aBaseName, OutputStream aOutputStream) throws IOException
+    {
+        JCas jcas = getJCas(aCas);
+        TsvSchema schema = Tsv3XCasSchemaAnalyzer.analyze(jcas.getTypeSystem());
+        TsvDocument doc = Tsv3XCasDocumentBuilder.of(schema, jcas);
+
+        // Not closing the writer because that would close the stream
+        PrintWriter docOS = new PrintWriter(
+                new BufferedWriter(new OutputStreamWriter(aOutputStream, UTF_8)));
+        serializer.write(docOS, doc);
+        docOS.flush();
+        if (docOS.checkError()) {
+            throw new IOException("Unable to write TSV data");
+        }
+    }
+
+    private static JCas getJCas(CAS aCas) throws IOException
+    {
+        try {
+            return aCas.getJCas();
+        }
+        catch (CASException e) {
+            throw new IOException(e);
+        }
+    }
+}
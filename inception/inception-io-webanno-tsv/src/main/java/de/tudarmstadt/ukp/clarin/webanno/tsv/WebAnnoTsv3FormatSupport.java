@@ -20,6 +20,8 @@ package de.tudarmstadt.ukp.clarin.webanno.tsv;
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 import static org.apache.uima.fit.factory.CollectionReaderFactory.createReaderDescription;
 
+import java.util.Optional;
+
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.collection.CollectionReaderDescription;
@@ -27,6 +29,7 @@ import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.springframework.stereotype.Component;
 
+import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatCodec;
 import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatSupport;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 
@@ -37,6 +40,8 @@ public class WebAnnoTsv3FormatSupport
     public static final String ID = "ctsv3";
     public static final String NAME = "WebAnno TSV v3.3 (WebAnno v3.x)";
 
+    private final WebAnnoTsv3FormatCodec codec = new WebAnnoTsv3FormatCodec();
+
     @Override
     public String getId()
     {
@@ -75,4 +80,10 @@ public class WebAnnoTsv3FormatSupport
     {
         return createEngineDescription(WebannoTsv3XWriter.class, aTSD);
     }
+
+    @Override
+    public Optional<FormatCodec> getCodec()
+    {
+        return Optional.of(codec);
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.tsv;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.PrefixFileFilter;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.CasFactory;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatCodec;
+
+public class WebAnnoTsv3FormatCodecTest
+{
+    private FormatCodec sut = new WebAnnoTsv3FormatSupport().getCodec().get();
+
+    public static Iterable<File> tsvFiles()
+    {
+        return asList(new File("src/test/resources/tsv3-suite/").listFiles(
+                (FilenameFilter) new PrefixFileFilter(asList("test", "issue", "sample"))));
+    }
+
+    @Test
+    public void thatFileNameUsesTsvExtension()
+    {
+        assertThat(sut.getFileName("document")).isEqualTo("document.tsv");
+    }
+
+    @ParameterizedTest(name = "{index}: running on file {0}")
+    @MethodSource("tsvFiles")
+    public void thatCodecRoundTrips(File aReferenceFolder) throws Exception
+    {
+        // TODO With UIMAv3 the order seems to change between read and write - REC
+        assumeFalse(aReferenceFolder.getName().equals("testStackedChain"),
+                "This test is known to fail.");
+
+        TypeSystemDescription global = TypeSystemDescriptionFactory.createTypeSystemDescription();
+        TypeSystemDescription local;
+        if (new File(aReferenceFolder, "typesystem.xml").exists()) {
+            local = TypeSystemDescriptionFactory.createTypeSystemDescriptionFromPath(
+                    new File(aReferenceFolder, "typesystem.xml").toString());
+        }
+        else {
+            local = TypeSystemDescriptionFactory.createTypeSystemDescriptionFromPath(
+                    "src/test/resources/desc/type/webannoTestTypes.xml");
+        }
+
+        TypeSystemDescription merged = CasCreationUtils.mergeTypeSystems(asList(global, local));
+
+        File referenceFile = new File(aReferenceFolder, "reference.tsv");
+
+        CAS cas = CasFactory.createCas(merged);
+        try (InputStream is = new FileInputStream(referenceFile)) {
+            sut.read(cas, is);
+        }
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        sut.write(cas, "reference", os);
+
+        assertThat(FileUtils.readFileToString(referenceFile, UTF_8))
+                .isEqualToNormalizingNewlines(new String(os.toByteArray(), UTF_8));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.xmi;
+
+import static org.apache.uima.util.TypeSystemUtil.typeSystem2TypeSystemDescription;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.impl.XmiCasDeserializer;
+import org.apache.uima.cas.impl.XmiCasSerializer;
+import org.apache.uima.internal.util.XMLUtils;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatCodec;
+
+/**
+ * Reads and writes UIMA CAS XMI (XML 1.0) from/to streams.
+ * <p>
+ * Reading is lenient like the {@code XmiReader} used by {@link XmiFormatSupport}. The XML readers
+ * are pooled per thread. Writing produces the same ZIP file containing the XMI file and the type
+ * system as the {@code XmiWriter}. Reading accepts such a ZIP file as well as a plain XMI file.
+ * </p>
+ */
+public class XmiFormatCodec
+    implements FormatCodec
+{
+    public static final String TYPE_SYSTEM_FILE = "TypeSystem.xml";
+
+    private static final byte[] ZIP_SIGNATURE = { 'P', 'K', 3, 4 };
+
+    private final ThreadLocal<XMLReader> xmlReaders = ThreadLocal.withInitial(() -> {
+        try {
+            return XMLUtils.createXMLReader();
+        }
+        catch (SAXException e) {
+            throw new IllegalStateException("Unable to create XML reader", e);
+        }
+    });
+
+    @Override
+    public boolean isReadable()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isWritable()
+    {
+        return true;
+    }
+
+    /**
+     * Reads either a plain XMI file or a ZIP file as produced by {@link #write}. In the latter
+     * case, the type system in the ZIP file is ignored because the CAS is already set up with the
+     * type system of the project.
+     */
+    @Override
+    public void read(CAS aCas, InputStream aInputStream) throws IOException
+    {
+        BufferedInputStream is = new BufferedInputStream(aInputStream);
+        if (!isZip(is)) {
+            readXmi(aCas, is);
+            return;
+        }
+
+        ZipInputStream zipIn = new ZipInputStream(is);
+        ZipEntry entry;
+        while ((entry = zipIn.getNextEntry()) != null) {
+            if (entry.getName().endsWith(".xmi")) {
+                readXmi(aCas, zipIn);
+                return;
+            }
+        }
+
+        throw new IOException("ZIP file does not contain an XMI file");
+    }
+
+    private boolean isZip(InputStream aInputStream) throws IOException
+    {
+        aInputStream.mark(ZIP_SIGNATURE.length);
+        try {
+            byte[] header = aInputStream.readNBytes(ZIP_SIGNATURE.length);
+            return Arrays.equals(header, ZIP_SIGNATURE);
+        }
+        finally {
+            aInputStream.reset();
+        }
+    }
+
+    private void readXmi(CAS aCas, InputStream aInputStream) throws IOException
+    {
+        XMLReader xmlReader = xmlReaders.get();
+        XmiCasDeserializer deserializer = new XmiCasDeserializer(aCas.getTypeSystem());
+        xmlReader.setContentHandler(deserializer.getXmiCasHandler(aCas, true));
+        // The XML parser closes the stream when it is done, so we need to protect it from that.
+        InputStream is = new FilterInputStream(aInputStream)
+        {
+            @Override
+            public void close()
+            {
+                // Do nothing
+            }
+        };
+
+        try {
+            xmlReader.parse(new InputSource(is));
+        }
+        catch (SAXException e) {
+            throw new IOException(e);
+        }
+        finally {
+            // Do not hold on to the CAS via the handler
+            xmlReader.setContentHandler(null);
+        }
+    }
+
+    @Override
+    public String getFileName(String aBaseName)
+    {
+        return aBaseName + ".zip";
+    }
+
+    @Override
+    public void write(CAS aCas, String aBaseName, OutputStream aOutputStream) throws IOException
+    {
+        ZipOutputStream zipOut = new ZipOutputStream(aOutputStream);
+        // The XML serializers close the stream when they are done, so we need to protect the ZIP
+        // stream from that.
+        OutputStream entryOut = new FilterOutputStream(zipOut)
+        {
+            @Override
+            public void write(byte[] aBuffer, int aOffset, int aLength) throws IOException
+            {
+                out.write(aBuffer, aOffset, aLength);
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                flush();
+            }
+        };
+
+        try {
+            zipOut.putNextEntry(new ZipEntry(aBaseName + ".xmi"));
+            XmiCasSerializer.serialize(aCas, null, entryOut, true, null);
+            zipOut.closeEntry();
+
+            zipOut.putNextEntry(new ZipEntry(TYPE_SYSTEM_FILE));
+            typeSystem2TypeSystemDescription(aCas.getTypeSystem()).toXML(entryOut);
+            zipOut.closeEntry();
+        }
+        catch (SAXException e) {
+            throw new IOException(e);
+        }
+
+        zipOut.finish();
+    }
+}
@@ -20,6 +20,8 @@ package de.tudarmstadt.ukp.clarin.webanno.xmi;
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 import static org.apache.uima.fit.factory.CollectionReaderFactory.createReaderDescription;
 
+import java.util.Optional;
+
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.collection.CollectionReaderDescription;
@@ -28,6 +30,7 @@ import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.dkpro.core.io.xmi.XmiReader;
 import org.dkpro.core.io.xmi.XmiWriter;
 
+import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatCodec;
 import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatSupport;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.xmi.config.UimaFormatsAutoConfiguration;
@@ -44,6 +47,8 @@ public class XmiFormatSupport
     public static final String ID = "xmi";
     public static final String NAME = "UIMA CAS XMI (XML 1.0)";
 
+    private final XmiFormatCodec codec = new XmiFormatCodec();
+
     @Override
     public String getId()
     {
@@ -82,4 +87,10 @@ public class XmiFormatSupport
     {
         return createEngineDescription(XmiWriter.class, aTSD, XmiWriter.PARAM_VERSION, "1.0");
     }
+
+    @Override
+    public Optional<FormatCodec> getCodec()
+    {
+        return Optional.of(codec);
+    }
 }
@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import de.tudarmstadt.ukp.inception.log.config.EventLogOverflowPolicy;
+import de.tudarmstadt.ukp.inception.log.config.EventLoggingAutoConfiguration;
+import de.tudarmstadt.ukp.inception.log.config.EventLoggingProperties;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+import de.tudarmstadt.ukp.inception.log.store.EventStore;
+import de.tudarmstadt.ukp.inception.log.store.FileSegmentEventStore;
+
+/**
+ * Writes logged events asynchronously to an {@link EventStore}. Events are collected in a bounded
+ * queue and written in batches by a single background thread. A batch is written when it is full
+ * or when the oldest event in it has waited for the flush interval. What happens while the queue
+ * is full is controlled by the {@link EventLogOverflowPolicy}.
+ * <p>
+ * This class is exposed as a Spring Component via
+ * {@link EventLoggingAutoConfiguration#eventLogWriter}.
+ * </p>
+ */
+public class EventLogWriter
+    implements DisposableBean
+{
+    private static final long MAINTENANCE_RETRY_DELAY = SECONDS.toNanos(60);
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final EventStore store;
+    private final FileSegmentEventStore spillStore;
+    private final BlockingQueue<LoggedEvent> queue;
+    private final Thread writerThread;
+
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long blockTimeoutMillis;
+    private final EventLogOverflowPolicy overflowPolicy;
+
+    private final LongAdder writtenEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder spilledEvents = new LongAdder();
+    private final LongAdder failedEvents = new LongAdder();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong totalFlushTime = new AtomicLong();
+    private final AtomicLong maxFlushTime = new AtomicLong();
+    private volatile long lastFlushTime;
+
+    private volatile boolean running = true;
+    private long maintenanceSuspendedUntil;
+
+    /**
+     * @param aStore
+     *            the store to write the events to.
+     * @param aSpillStore
+     *            the store receiving events which do not fit into the queue or which could not be
+     *            written to the main store. Required only for
+     *            {@link EventLogOverflowPolicy#SPILL_TO_DISK}.
+     * @param aProperties
+     *            the configuration.
+     */
+    public EventLogWriter(EventStore aStore, FileSegmentEventStore aSpillStore,
+            EventLoggingProperties aProperties)
+    {
+        store = aStore;
+        overflowPolicy = aProperties.getOverflowPolicy();
+        spillStore = overflowPolicy == EventLogOverflowPolicy.SPILL_TO_DISK ? aSpillStore : null;
+        batchSize = Math.max(1, aProperties.getBatchSize());
+        flushIntervalNanos = aProperties.getFlushInterval().toNanos();
+        blockTimeoutMillis = aProperties.getBlockTimeout().toMillis();
+        queue = new ArrayBlockingQueue<>(Math.max(1, aProperties.getQueueSize()));
+
+        if (overflowPolicy == EventLogOverflowPolicy.SPILL_TO_DISK && spillStore == null) {
+            throw new IllegalArgumentException(
+                    "Overflow policy [" + overflowPolicy + "] requires a spill store");
+        }
+
+        writerThread = new Thread(this::run, "event-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Adds the given event to the queue. If the queue is full, the overflow policy applies.
+     */
+    public void enqueue(LoggedEvent aEvent)
+    {
+        switch (overflowPolicy) {
+        case DROP_OLDEST:
+            while (!queue.offer(aEvent)) {
+                if (queue.poll() != null) {
+                    droppedEvents.increment();
+                }
+            }
+            break;
+        case SPILL_TO_DISK:
+            if (!queue.offer(aEvent)) {
+                spill(List.of(aEvent));
+            }
+            break;
+        case BLOCK: // fall-through
+        default:
+            try {
+                if (!queue.offer(aEvent, blockTimeoutMillis, MILLISECONDS)) {
+                    droppedEvents.increment();
+                    log.warn("Event log queue full for {}ms - dropping event {}",
+                            blockTimeoutMillis, aEvent);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                droppedEvents.increment();
+            }
+            break;
+        }
+    }
+
+    /**
+     * Writes all queued and spilled events in the calling thread.
+     */
+    public void flush()
+    {
+        List<LoggedEvent> batch = new ArrayList<>();
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+
+        transferSpilledEvents();
+    }
+
+    private void run()
+    {
+        while (running) {
+            try {
+                LoggedEvent first = queue.poll(flushIntervalNanos, NANOSECONDS);
+
+                if (first != null) {
+                    write(collectBatch(first));
+                }
+
+                // Only move spilled events back when we are not busy with live events
+                if (queue.isEmpty()) {
+                    transferSpilledEvents();
+                }
+
+                while (queue.isEmpty() && running && maintainStore()) {
+                    // Continue until the store has no more work or events come in
+                }
+            }
+            catch (InterruptedException e) {
+                // Shutting down
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (Exception e) {
+                log.error("Unexpected error in the event log writer", e);
+            }
+        }
+    }
+
+    private List<LoggedEvent> collectBatch(LoggedEvent aFirst) throws InterruptedException
+    {
+        List<LoggedEvent> batch = new ArrayList<>();
+        batch.add(aFirst);
+        queue.drainTo(batch, batchSize - batch.size());
+
+        // Wait for more events until the batch is full or the first event has waited long enough
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize && running) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+
+            LoggedEvent next = queue.poll(remaining, NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+
+        return batch;
+    }
+
+    private void write(List<LoggedEvent> aBatch)
+    {
+        if (aBatch.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            store.write(aBatch);
+            writtenEvents.add(aBatch.size());
+        }
+        catch (Exception e) {
+            if (spillStore != null) {
+                log.error("Unable to write {} events - spilling them to disk", aBatch.size(), e);
+                spill(aBatch);
+            }
+            else {
+                log.error("Unable to write {} events - dropping them", aBatch.size(), e);
+                failedEvents.add(aBatch.size());
+            }
+        }
+        finally {
+            long duration = System.nanoTime() - start;
+            lastFlushTime = duration;
+            flushCount.incrementAndGet();
+            totalFlushTime.addAndGet(duration);
+            maxFlushTime.accumulateAndGet(duration, Math::max);
+        }
+    }
+
+    private void spill(List<LoggedEvent> aEvents)
+    {
+        try {
+            spillStore.write(aEvents);
+            spilledEvents.add(aEvents.size());
+        }
+        catch (IOException e) {
+            log.error("Unable to spill {} events to disk - dropping them", aEvents.size(), e);
+            droppedEvents.add(aEvents.size());
+        }
+    }
+
+    private void transferSpilledEvents()
+    {
+        if (spillStore == null || spillStore.isEmpty()) {
+            return;
+        }
+
+        try {
+            long count = spillStore.transferTo(store, batchSize);
+            writtenEvents.add(count);
+            log.info("Wrote {} spilled events", count);
+        }
+        catch (Exception e) {
+            log.error("Unable to write spilled events - will try again later", e);
+        }
+    }
+
+    private boolean maintainStore()
+    {
+        if (System.nanoTime() < maintenanceSuspendedUntil) {
+            return false;
+        }
+
+        try {
+            return store.maintain();
+        }
+        catch (Exception e) {
+            log.error("Event store maintenance failed - will try again later", e);
+            maintenanceSuspendedUntil = System.nanoTime() + MAINTENANCE_RETRY_DELAY;
+            return false;
+        }
+    }
+
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    public int getQueueCapacity()
+    {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public long getWrittenEvents()
+    {
+        return writtenEvents.sum();
+    }
+
+    public long getDroppedEvents()
+    {
+        return droppedEvents.sum();
+    }
+
+    public long getSpilledEvents()
+    {
+        return spilledEvents.sum();
+    }
+
+    public long getFailedEvents()
+    {
+        return failedEvents.sum();
+    }
+
+    /**
+     * @return duration of the most recent write to the store in milliseconds.
+     */
+    public double getLastFlushLatency()
+    {
+        return lastFlushTime / 1_000_000.0;
+    }
+
+    /**
+     * @return average duration of a write to the store in milliseconds.
+     */
+    public double getAverageFlushLatency()
+    {
+        long count = flushCount.get();
+        return count == 0 ? 0.0 : totalFlushTime.get() / (double) count / 1_000_000.0;
+    }
+
+    /**
+     * @return longest duration of a write to the store in milliseconds.
+     */
+    public double getMaxFlushLatency()
+    {
+        return maxFlushTime.get() / 1_000_000.0;
+    }
+
+    @Override
+    public void destroy() throws Exception
+    {
+        // Stop the writer thread - it notices this at the latest after one flush interval. We
+        // only interrupt it if it is stuck, e.g. in a hanging database call.
+        running = false;
+        writerThread.join(NANOSECONDS.toMillis(flushIntervalNanos) + 10_000);
+        if (writerThread.isAlive()) {
+            writerThread.interrupt();
+        }
+
+        // Make sure any pending events are written before the application shuts down
+        flush();
+
+        store.close();
+        if (spillStore != null) {
+            spillStore.close();
+        }
+    }
+}
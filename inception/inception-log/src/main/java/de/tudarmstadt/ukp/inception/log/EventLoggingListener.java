@@ -20,20 +20,14 @@ package de.tudarmstadt.ukp.inception.log;
 import static java.util.Collections.unmodifiableList;
 
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.collections4.map.HashedMap;
 import org.apache.commons.lang3.ClassUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.annotation.Lazy;
@@ -55,7 +49,6 @@ import de.tudarmstadt.ukp.inception.support.spring.StartupProgressInfoEvent;
  * </p>
  */
 public class EventLoggingListener
-    implements DisposableBean
 {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -64,29 +57,18 @@ public class EventLoggingListener
 
     private final Map<Class<?>, EventLoggingAdapter<?>> adapterCache;
 
-    private final EventRepository repo;
-
-    private final ScheduledExecutorService scheduler;
-
-    private final Deque<LoggedEvent> queue;
+    private final EventLogWriter writer;
 
     private final EventLoggingProperties properties;
 
-    private volatile boolean flushing = false;
-
-    public EventLoggingListener(@Autowired EventRepository aRepo,
+    public EventLoggingListener(@Autowired EventLogWriter aWriter,
             @Lazy @Autowired(required = false) List<EventLoggingAdapter<?>> aAdapters,
             EventLoggingProperties aProperties)
     {
-        repo = aRepo;
+        writer = aWriter;
         adapterProxy = aAdapters;
         adapterCache = new HashedMap<>();
         properties = aProperties;
-
-        queue = new ConcurrentLinkedDeque<>();
-
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        scheduler.scheduleAtFixedRate(() -> flush(), 1, 1, TimeUnit.SECONDS);
     }
 
     @EventListener
@@ -165,51 +147,13 @@ public class EventLoggingListener
                 return;
             }
 
-            // Add to the writing queue which gets flushed regularly by a timer
-            queue.add(e);
-
-            // If the queue gets too large, force a flush even if the timer is not there yet
-            if (queue.size() > 1000) {
-                flush();
-            }
+            // Hand the event to the writer which stores it asynchronously
+            writer.enqueue(e);
         }
     }
 
     public void flush()
     {
-        // If a flushing process is already in progress, we can abort here already. No need to
-        // wait for obtaining a synchronize lock. This also avoids a deadlock situation that was
-        // observed when importing huge tagsets with HSQLDB.
-        if (flushing) {
-            return;
-        }
-
-        synchronized (queue) {
-            try {
-                flushing = true;
-
-                // Fetch all items that are currently in the queue
-                List<LoggedEvent> batch = new ArrayList<>();
-                while (!queue.isEmpty()) {
-                    batch.add(queue.pop());
-                }
-
-                // And dump them into the database
-                repo.create(batch.toArray(new LoggedEvent[batch.size()]));
-            }
-            finally {
-                flushing = false;
-            }
-        }
-    }
-
-    @Override
-    public void destroy() throws Exception
-    {
-        // Kill the flush scheduler
-        scheduler.shutdownNow();
-
-        // Make sure and pending events are flushed before the application shuts down
-        flush();
+        writer.flush();
     }
 }
@@ -18,11 +18,13 @@
 package de.tudarmstadt.ukp.inception.log;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.function.Consumer;
 
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEventRollup;
 
 public interface EventRepository
 {
@@ -30,6 +32,27 @@ public interface EventRepository
 
     void create(LoggedEvent... aEvents);
 
+    /**
+     * Stores the given events using batched JDBC inserts. Unlike {@link #create}, this does not
+     * go through the persistence context, so the IDs of the given events are not updated.
+     */
+    void createBatch(List<LoggedEvent> aEvents);
+
+    /**
+     * Adds the given events to the hourly {@link LoggedEventRollup rollups}. This is done
+     * automatically by {@link #create} and {@link #createBatch} and only needs to be called for
+     * events which are stored elsewhere.
+     */
+    void updateRollups(List<LoggedEvent> aEvents);
+
+    /**
+     * Adds up to the given number of events which were logged before the rollups were introduced to
+     * the rollups.
+     * 
+     * @return whether there are further events left to be added.
+     */
+    boolean backfillRollups(int aMaxEvents);
+
     /**
      * Get the aMaxSize amount of logged events of the given type, user name, project and
      * recommender id from the db.
@@ -53,8 +76,26 @@ public interface EventRepository
     List<LoggedEvent> listLoggedEventsForDetail(Project aProject, String aUsername,
             String aEventType, int aMaxSize, String aDetail);
 
-    List<LoggedEvent> listRecentActivity(Project aProject, String aUsername,
+    /**
+     * Get the most recent activity of the given user in the given project for up to aMaxSize
+     * documents. There is at most one rollup per document and annotator, the one with the latest
+     * event.
+     */
+    List<LoggedEventRollup> listRecentActivity(Project aProject, String aUsername,
             Collection<String> aEventTypes, int aMaxSize);
+
+    /**
+     * Get the hourly rollups of the given event types for the given user and project in the given
+     * time range. The same hour may be covered by more than one rollup for the same document and
+     * annotator - callers should add up the counts.
+     * 
+     * @param aFrom
+     *            start of the time range (inclusive).
+     * @param aTo
+     *            end of the time range (exclusive).
+     */
+    List<LoggedEventRollup> listActivityRollups(Project aProject, String aUsername,
+            Collection<String> aEventTypes, Date aFrom, Date aTo);
     
     /**
      * List recently logged events that are not of the given types 
@@ -17,14 +17,28 @@
  */
 package de.tudarmstadt.ukp.inception.log;
 
+import static de.tudarmstadt.ukp.inception.log.model.LoggedEventRollup.MAX_EVENT_LENGTH;
+import static de.tudarmstadt.ukp.inception.log.model.LoggedEventRollup.NO_ANNOTATOR;
 import static java.lang.String.join;
+import static java.time.temporal.ChronoUnit.HOURS;
+import static org.apache.commons.lang3.StringUtils.startsWith;
+import static org.apache.commons.lang3.StringUtils.truncate;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -35,6 +49,7 @@ import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
 
 import org.apache.commons.lang3.tuple.Pair;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,6 +58,8 @@ import org.springframework.transaction.annotation.Transactional;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.inception.log.config.EventLoggingAutoConfiguration;
 import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEventRollup;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEventRollupState;
 
 /**
  * <p>
@@ -55,8 +72,24 @@ public class EventRepositoryImpl
 {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
+    private static final String INSERT_EVENT = "INSERT INTO logged_event "
+            + "(event, created, user, project, document, annotator, details) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_ROLLUP = "UPDATE logged_event_rollup "
+            + "SET event_count = event_count + ?, "
+            + "last_created = CASE WHEN last_created < ? THEN ? ELSE last_created END "
+            + "WHERE project = ? AND user = ? AND document = ? AND annotator = ? "
+            + "AND event = ? AND bucket = ?";
+
+    private static final String INSERT_ROLLUP = "INSERT INTO logged_event_rollup "
+            + "(project, user, document, annotator, event, bucket, event_count, last_created) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
     private @PersistenceContext EntityManager entityManager;
 
+    private volatile boolean backfillComplete = false;
+
     @Autowired
     public EventRepositoryImpl(EntityManager aEntityManager)
     {
@@ -72,6 +105,7 @@ public class EventRepositoryImpl
             log.trace("{}", event);
             entityManager.persist(event);
         }
+        updateRollups(Arrays.asList(aEvents));
         long duration = System.currentTimeMillis() - start;
 
         if (aEvents.length > 0 && !log.isTraceEnabled()) {
@@ -79,6 +113,209 @@ public class EventRepositoryImpl
         }
     }
 
+    @Override
+    @Transactional
+    public void createBatch(List<LoggedEvent> aEvents)
+    {
+        if (aEvents.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        // Make sure anything persisted via the entity manager in this transaction is written
+        // before we go around it
+        entityManager.flush();
+
+        Session session = entityManager.unwrap(Session.class);
+        session.doWork(connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(INSERT_EVENT)) {
+                for (LoggedEvent event : aEvents) {
+                    log.trace("{}", event);
+                    stmt.setString(1, event.getEvent());
+                    stmt.setTimestamp(2, new Timestamp(event.getCreated().getTime()));
+                    stmt.setString(3, event.getUser());
+                    stmt.setLong(4, event.getProject());
+                    stmt.setLong(5, event.getDocument());
+                    stmt.setString(6, event.getAnnotator());
+                    stmt.setString(7, event.getDetails());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        });
+
+        // Update the rollups in the same transaction so they never count events which have not
+        // been stored or miss events which have
+        updateRollups(aEvents);
+
+        long duration = System.currentTimeMillis() - start;
+
+        if (!log.isTraceEnabled()) {
+            log.debug("... {} events stored in batch ... ({}ms)", aEvents.size(), duration);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void updateRollups(List<LoggedEvent> aEvents)
+    {
+        if (aEvents.isEmpty()) {
+            return;
+        }
+
+        // Aggregate in memory first - the events in a batch usually fall into only a few rollups
+        Map<RollupKey, LoggedEventRollup> increments = new LinkedHashMap<>();
+        for (LoggedEvent event : aEvents) {
+            RollupKey key = new RollupKey(event);
+            LoggedEventRollup increment = increments.computeIfAbsent(key, RollupKey::newRollup);
+            increment.setEventCount(increment.getEventCount() + 1);
+            if (increment.getLastCreated() == null
+                    || event.getCreated().after(increment.getLastCreated())) {
+                increment.setLastCreated(event.getCreated());
+            }
+        }
+
+        // Make sure anything persisted via the entity manager in this transaction is written
+        // before we go around it
+        entityManager.flush();
+
+        // The rollups are incremented atomically in the database, so concurrent transactions
+        // updating the same rollup do not lose each others' counts. If the rollup does not exist
+        // yet, it is inserted. If another transaction inserts it concurrently, the unique
+        // constraint on the rollup key rejects our insert and we update the rollup instead.
+        Session session = entityManager.unwrap(Session.class);
+        session.doWork(connection -> {
+            try (PreparedStatement update = connection.prepareStatement(UPDATE_ROLLUP);
+                    PreparedStatement insert = connection.prepareStatement(INSERT_ROLLUP)) {
+                for (LoggedEventRollup increment : increments.values()) {
+                    if (incrementRollup(update, increment)) {
+                        continue;
+                    }
+
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        insertRollup(insert, increment);
+                    }
+                    catch (SQLException e) {
+                        if (!isUniqueConstraintViolation(e)) {
+                            throw e;
+                        }
+
+                        connection.rollback(savepoint);
+                        if (!incrementRollup(update, increment)) {
+                            throw e;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private boolean incrementRollup(PreparedStatement aStmt, LoggedEventRollup aIncrement)
+        throws SQLException
+    {
+        Timestamp lastCreated = new Timestamp(aIncrement.getLastCreated().getTime());
+        aStmt.setLong(1, aIncrement.getEventCount());
+        aStmt.setTimestamp(2, lastCreated);
+        aStmt.setTimestamp(3, lastCreated);
+        aStmt.setLong(4, aIncrement.getProject());
+        aStmt.setString(5, aIncrement.getUser());
+        aStmt.setLong(6, aIncrement.getDocument());
+        aStmt.setString(7, annotatorColumnValue(aIncrement));
+        aStmt.setString(8, aIncrement.getEvent());
+        aStmt.setTimestamp(9, new Timestamp(aIncrement.getBucket().getTime()));
+        return aStmt.executeUpdate() > 0;
+    }
+
+    private void insertRollup(PreparedStatement aStmt, LoggedEventRollup aIncrement)
+        throws SQLException
+    {
+        aStmt.setLong(1, aIncrement.getProject());
+        aStmt.setString(2, aIncrement.getUser());
+        aStmt.setLong(3, aIncrement.getDocument());
+        aStmt.setString(4, annotatorColumnValue(aIncrement));
+        aStmt.setString(5, aIncrement.getEvent());
+        aStmt.setTimestamp(6, new Timestamp(aIncrement.getBucket().getTime()));
+        aStmt.setLong(7, aIncrement.getEventCount());
+        aStmt.setTimestamp(8, new Timestamp(aIncrement.getLastCreated().getTime()));
+        aStmt.executeUpdate();
+    }
+
+    private static String annotatorColumnValue(LoggedEventRollup aRollup)
+    {
+        return aRollup.getAnnotator() != null ? aRollup.getAnnotator() : NO_ANNOTATOR;
+    }
+
+    private static boolean isUniqueConstraintViolation(SQLException aException)
+    {
+        // SQL state class 23 is "integrity constraint violation" - not all drivers use the
+        // dedicated exception class for it
+        return aException instanceof SQLIntegrityConstraintViolationException
+                || startsWith(aException.getSQLState(), "23");
+    }
+
+    @Override
+    @Transactional
+    public boolean backfillRollups(int aMaxEvents)
+    {
+        if (backfillComplete) {
+            return false;
+        }
+
+        LoggedEventRollupState state = entityManager.find(LoggedEventRollupState.class,
+                LoggedEventRollupState.ID);
+
+        if (state == null || state.isComplete()) {
+            backfillComplete = true;
+            return false;
+        }
+
+        // Only fetch the columns we need for the rollups - in particular not the details
+        String query = join("\n", //
+                "SELECT id, event, created, user, project, document, annotator", //
+                "FROM  LoggedEvent", //
+                "WHERE id > :from AND id <= :to", //
+                "ORDER BY id");
+
+        List<Object[]> rows = entityManager.createQuery(query, Object[].class) //
+                .setParameter("from", state.getBackfillNext()) //
+                .setParameter("to", state.getBackfillLast()) //
+                .setMaxResults(aMaxEvents) //
+                .getResultList();
+
+        if (rows.isEmpty()) {
+            state.setBackfillNext(state.getBackfillLast());
+        }
+        else {
+            List<LoggedEvent> events = new ArrayList<>();
+            for (Object[] row : rows) {
+                LoggedEvent event = new LoggedEvent();
+                event.setEvent((String) row[1]);
+                event.setCreated((Date) row[2]);
+                event.setUser((String) row[3]);
+                event.setProject((Long) row[4]);
+                event.setDocument((Long) row[5]);
+                event.setAnnotator((String) row[6]);
+                events.add(event);
+            }
+
+            updateRollups(events);
+            state.setBackfillNext((Long) rows.get(rows.size() - 1)[0]);
+        }
+
+        if (state.isComplete()) {
+            log.info("Activity rollups are complete");
+            backfillComplete = true;
+        }
+        else {
+            log.debug("Activity rollups complete up to event {} of {}", state.getBackfillNext(),
+                    state.getBackfillLast());
+        }
+
+        return !state.isComplete();
+    }
+
     @Override
     @Transactional
     public List<LoggedEvent> listLoggedEventsForRecommender(Project aProject, String aUsername,
@@ -144,43 +381,66 @@ public class EventRepositoryImpl
 
     @Override
     @Transactional
-    public List<LoggedEvent> listRecentActivity(Project aProject, String aUsername,
+    public List<LoggedEventRollup> listRecentActivity(Project aProject, String aUsername,
             Collection<String> aEventTypes, int aMaxSize)
     {
         String query = join("\n", //
-                "FROM  LoggedEvent", //
+                "FROM  LoggedEventRollup", //
                 "WHERE user = :user", //
                 "  AND project = :project", //
                 "  AND event in (:eventTypes)", //
-                "ORDER BY created DESC");
+                "ORDER BY lastCreated DESC");
+
+        List<LoggedEventRollup> reducedResults = new ArrayList<>();
+        Set<Pair<Long, String>> documentsSeen = new HashSet<>();
 
-        List<LoggedEvent> result = entityManager.createQuery(query, LoggedEvent.class) //
+        try (Stream<LoggedEventRollup> rollups = entityManager
+                .createQuery(query, LoggedEventRollup.class) //
                 .setParameter("user", aUsername) //
                 .setParameter("project", aProject.getId()) //
                 .setParameter("eventTypes", aEventTypes) //
-                .setMaxResults(3500) //
-                .getResultList();
-
-        List<LoggedEvent> reducedResults = new ArrayList<>();
-        Set<Pair<Long, String>> documentsSeen = new HashSet<>();
+                .getResultStream()) {
+            Iterator<LoggedEventRollup> i = rollups.iterator();
+            while (i.hasNext() && reducedResults.size() < aMaxSize) {
+                LoggedEventRollup rollup = i.next();
 
-        Iterator<LoggedEvent> i = result.iterator();
-        while (i.hasNext() && reducedResults.size() < aMaxSize) {
-            LoggedEvent event = i.next();
+                // Check if we already have the latest rollup of this doc/annotator combination
+                Pair<Long, String> doc = Pair.of(rollup.getDocument(), rollup.getAnnotator());
+                if (documentsSeen.contains(doc)) {
+                    continue;
+                }
 
-            // Check if we already have the latest event of this doc/annotator combination
-            Pair<Long, String> doc = Pair.of(event.getDocument(), event.getAnnotator());
-            if (documentsSeen.contains(doc)) {
-                continue;
+                reducedResults.add(rollup);
+                documentsSeen.add(doc);
             }
-
-            reducedResults.add(event);
-            documentsSeen.add(doc);
         }
 
         return reducedResults;
     }
-    
+
+    @Override
+    @Transactional
+    public List<LoggedEventRollup> listActivityRollups(Project aProject, String aUsername,
+            Collection<String> aEventTypes, Date aFrom, Date aTo)
+    {
+        String query = join("\n", //
+                "FROM  LoggedEventRollup", //
+                "WHERE user = :user", //
+                "  AND project = :project", //
+                "  AND event in (:eventTypes)", //
+                "  AND bucket >= :from", //
+                "  AND bucket < :to", //
+                "ORDER BY bucket, document, annotator, event");
+
+        return entityManager.createQuery(query, LoggedEventRollup.class) //
+                .setParameter("user", aUsername) //
+                .setParameter("project", aProject.getId()) //
+                .setParameter("eventTypes", aEventTypes) //
+                .setParameter("from", aFrom) //
+                .setParameter("to", aTo) //
+                .getResultList();
+    }
+
     @Override
     @Transactional
     public List<LoggedEvent> listFilteredRecentActivity(Collection<String> aEventTypes, int aMaxSize)
@@ -220,4 +480,58 @@ public class EventRepositoryImpl
             eventStream.forEach(aConsumer);
         }
     }
+
+    private static final class RollupKey
+    {
+        private final long project;
+        private final String user;
+        private final long document;
+        private final String annotator;
+        private final String event;
+        private final Date bucket;
+
+        private RollupKey(LoggedEvent aEvent)
+        {
+            project = aEvent.getProject();
+            user = aEvent.getUser();
+            document = aEvent.getDocument();
+            annotator = aEvent.getAnnotator();
+            event = truncate(aEvent.getEvent(), MAX_EVENT_LENGTH);
+            bucket = Date.from(aEvent.getCreated().toInstant().truncatedTo(HOURS));
+        }
+
+        private LoggedEventRollup newRollup()
+        {
+            LoggedEventRollup rollup = new LoggedEventRollup();
+            rollup.setProject(project);
+            rollup.setUser(user);
+            rollup.setDocument(document);
+            rollup.setAnnotator(annotator);
+            rollup.setEvent(event);
+            rollup.setBucket(bucket);
+            return rollup;
+        }
+
+        @Override
+        public boolean equals(Object aOther)
+        {
+            if (this == aOther) {
+                return true;
+            }
+            if (!(aOther instanceof RollupKey)) {
+                return false;
+            }
+            RollupKey other = (RollupKey) aOther;
+            return project == other.project && document == other.document
+                    && Objects.equals(user, other.user)
+                    && Objects.equals(annotator, other.annotator)
+                    && Objects.equals(event, other.event) && Objects.equals(bucket, other.bucket);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(project, user, document, annotator, event, bucket);
+        }
+    }
 }
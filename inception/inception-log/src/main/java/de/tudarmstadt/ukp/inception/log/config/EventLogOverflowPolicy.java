@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log.config;
+
+/**
+ * What the event log writer does with new events while its queue is full.
+ */
+public enum EventLogOverflowPolicy
+{
+    /**
+     * Wait for free space in the queue. If no space becomes available within the configured
+     * timeout, the event is dropped.
+     */
+    BLOCK,
+
+    /**
+     * Drop the oldest event from the queue to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Write the event to a file on disk. The spilled events are written to the store once the
+     * queue has drained.
+     */
+    SPILL_TO_DISK;
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log.config;
+
+/**
+ * Where logged events are written to.
+ */
+public enum EventLogStoreType
+{
+    /**
+     * The {@code logged_event} database table.
+     */
+    DATABASE,
+
+    /**
+     * Append-only segment files in the {@code event-log} folder of the repository. The activity
+     * rollups are still maintained in the database, but queries of the
+     * {@link de.tudarmstadt.ukp.inception.log.EventRepository} which access individual events only
+     * see events stored in the database.
+     */
+    FILE;
+}
@@ -17,6 +17,7 @@
  */
 package de.tudarmstadt.ukp.inception.log.config;
 
+import java.io.File;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -28,10 +29,17 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
 
+import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
+import de.tudarmstadt.ukp.inception.log.EventLogWriter;
 import de.tudarmstadt.ukp.inception.log.EventLoggingListener;
 import de.tudarmstadt.ukp.inception.log.EventRepository;
 import de.tudarmstadt.ukp.inception.log.EventRepositoryImpl;
 import de.tudarmstadt.ukp.inception.log.adapter.EventLoggingAdapter;
+import de.tudarmstadt.ukp.inception.log.metrics.EventLoggingMetricsImpl;
+import de.tudarmstadt.ukp.inception.log.store.EventStore;
+import de.tudarmstadt.ukp.inception.log.store.FileSegmentEventStore;
+import de.tudarmstadt.ukp.inception.log.store.RelationalEventStore;
+import de.tudarmstadt.ukp.inception.log.store.RollupUpdatingEventStore;
 
 /**
  * Provides support event logging.
@@ -41,6 +49,9 @@ import de.tudarmstadt.ukp.inception.log.adapter.EventLoggingAdapter;
 @EnableConfigurationProperties(EventLoggingPropertiesImpl.class)
 public class EventLoggingAutoConfiguration
 {
+    private static final String EVENT_LOG_FOLDER = "event-log";
+    private static final String EVENT_LOG_SPILL_FOLDER = "event-log-spill";
+
     @Bean
     @Autowired
     public EventRepository eventRepository(EntityManager aEntityManager)
@@ -50,10 +61,43 @@ public class EventLoggingAutoConfiguration
 
     @Bean
     @Autowired
-    public EventLoggingListener eventLoggingListener(EventRepository aRepo,
+    public EventLogWriter eventLogWriter(EventRepository aRepo,
+            RepositoryProperties aRepositoryProperties, EventLoggingProperties aProperties)
+    {
+        EventStore store;
+        switch (aProperties.getStore()) {
+        case FILE:
+            store = new RollupUpdatingEventStore(
+                    new FileSegmentEventStore(
+                            new File(aRepositoryProperties.getPath(), EVENT_LOG_FOLDER)),
+                    aRepo);
+            break;
+        case DATABASE: // fall-through
+        default:
+            store = new RelationalEventStore(aRepo);
+            break;
+        }
+
+        FileSegmentEventStore spillStore = new FileSegmentEventStore(
+                new File(aRepositoryProperties.getPath(), EVENT_LOG_SPILL_FOLDER));
+
+        return new EventLogWriter(store, spillStore, aProperties);
+    }
+
+    @Bean
+    @Autowired
+    public EventLoggingListener eventLoggingListener(EventLogWriter aWriter,
             @Lazy @Autowired(required = false) List<EventLoggingAdapter<?>> aAdapters,
             EventLoggingProperties aProperties)
     {
-        return new EventLoggingListener(aRepo, aAdapters, aProperties);
+        return new EventLoggingListener(aWriter, aAdapters, aProperties);
+    }
+
+    @Bean
+    @Autowired
+    @ConditionalOnProperty(prefix = "monitoring.metrics", name = "enabled", havingValue = "true")
+    public EventLoggingMetricsImpl eventLoggingMetrics(EventLogWriter aWriter)
+    {
+        return new EventLoggingMetricsImpl(aWriter);
     }
 }
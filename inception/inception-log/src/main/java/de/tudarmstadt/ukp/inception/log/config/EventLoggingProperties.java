@@ -17,6 +17,7 @@
  */
 package de.tudarmstadt.ukp.inception.log.config;
 
+import java.time.Duration;
 import java.util.Set;
 
 public interface EventLoggingProperties
@@ -32,4 +33,35 @@ public interface EventLoggingProperties
      *            events never to be written to the event log.
      */
     void setExcludeEvents(Set<String> aExcludeEvents);
+
+    /**
+     * @return maximum number of events waiting to be written.
+     */
+    int getQueueSize();
+
+    /**
+     * @return maximum number of events written in one batch.
+     */
+    int getBatchSize();
+
+    /**
+     * @return maximum time an event waits in the queue before a batch is written.
+     */
+    Duration getFlushInterval();
+
+    /**
+     * @return what to do with new events while the queue is full.
+     */
+    EventLogOverflowPolicy getOverflowPolicy();
+
+    /**
+     * @return how long to wait for free space in the queue when using
+     *         {@link EventLogOverflowPolicy#BLOCK} before the event is dropped.
+     */
+    Duration getBlockTimeout();
+
+    /**
+     * @return where the events are written to.
+     */
+    EventLogStoreType getStore();
 }
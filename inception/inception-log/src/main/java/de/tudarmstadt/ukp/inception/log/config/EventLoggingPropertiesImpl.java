@@ -17,6 +17,7 @@
  */
 package de.tudarmstadt.ukp.inception.log.config;
 
+import java.time.Duration;
 import java.util.Set;
 
 import org.springframework.boot.availability.AvailabilityChangeEvent;
@@ -35,6 +36,13 @@ public class EventLoggingPropertiesImpl
             AfterCasWrittenEvent.class.getSimpleName(),
             AvailabilityChangeEvent.class.getSimpleName());
 
+    private int queueSize = 10_000;
+    private int batchSize = 500;
+    private Duration flushInterval = Duration.ofSeconds(1);
+    private EventLogOverflowPolicy overflowPolicy = EventLogOverflowPolicy.BLOCK;
+    private Duration blockTimeout = Duration.ofSeconds(10);
+    private EventLogStoreType store = EventLogStoreType.DATABASE;
+
     @Override
     public boolean isEnabled()
     {
@@ -58,4 +66,70 @@ public class EventLoggingPropertiesImpl
     {
         excludeEvents = aExcludeEvents;
     }
+
+    @Override
+    public int getQueueSize()
+    {
+        return queueSize;
+    }
+
+    public void setQueueSize(int aQueueSize)
+    {
+        queueSize = aQueueSize;
+    }
+
+    @Override
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public void setBatchSize(int aBatchSize)
+    {
+        batchSize = aBatchSize;
+    }
+
+    @Override
+    public Duration getFlushInterval()
+    {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration aFlushInterval)
+    {
+        flushInterval = aFlushInterval;
+    }
+
+    @Override
+    public EventLogOverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(EventLogOverflowPolicy aOverflowPolicy)
+    {
+        overflowPolicy = aOverflowPolicy;
+    }
+
+    @Override
+    public Duration getBlockTimeout()
+    {
+        return blockTimeout;
+    }
+
+    public void setBlockTimeout(Duration aBlockTimeout)
+    {
+        blockTimeout = aBlockTimeout;
+    }
+
+    @Override
+    public EventLogStoreType getStore()
+    {
+        return store;
+    }
+
+    public void setStore(EventLogStoreType aStore)
+    {
+        store = aStore;
+    }
 }
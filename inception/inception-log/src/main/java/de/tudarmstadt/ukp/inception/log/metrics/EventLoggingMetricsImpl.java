@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import de.tudarmstadt.ukp.inception.log.EventLogWriter;
+import de.tudarmstadt.ukp.inception.log.config.EventLoggingAutoConfiguration;
+
+/**
+ * <p>
+ * This class is exposed as a Spring Component via
+ * {@link EventLoggingAutoConfiguration#eventLoggingMetrics}.
+ * </p>
+ */
+@ManagedResource
+public class EventLoggingMetricsImpl
+    implements EventLoggingMetrics
+{
+    private final EventLogWriter writer;
+
+    @Autowired
+    public EventLoggingMetricsImpl(EventLogWriter aWriter)
+    {
+        writer = aWriter;
+    }
+
+    @Override
+    @ManagedAttribute
+    public int getQueueDepth()
+    {
+        return writer.getQueueDepth();
+    }
+
+    @Override
+    @ManagedAttribute
+    public int getQueueCapacity()
+    {
+        return writer.getQueueCapacity();
+    }
+
+    @Override
+    @ManagedAttribute
+    public long getWrittenEvents()
+    {
+        return writer.getWrittenEvents();
+    }
+
+    @Override
+    @ManagedAttribute
+    public long getDroppedEvents()
+    {
+        return writer.getDroppedEvents();
+    }
+
+    @Override
+    @ManagedAttribute
+    public long getSpilledEvents()
+    {
+        return writer.getSpilledEvents();
+    }
+
+    @Override
+    @ManagedAttribute
+    public long getFailedEvents()
+    {
+        return writer.getFailedEvents();
+    }
+
+    @Override
+    @ManagedAttribute
+    public double getLastFlushLatency()
+    {
+        return writer.getLastFlushLatency();
+    }
+
+    @Override
+    @ManagedAttribute
+    public double getAverageFlushLatency()
+    {
+        return writer.getAverageFlushLatency();
+    }
+
+    @Override
+    @ManagedAttribute
+    public double getMaxFlushLatency()
+    {
+        return writer.getMaxFlushLatency();
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log.model;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Number of events of a given type per project, user, document and annotator within one hour. The
+ * rollups are maintained when events are written and allow dashboards to look at the activity
+ * without having to scan the raw events.
+ */
+@Entity
+@Table(name = "logged_event_rollup", uniqueConstraints = {
+        @UniqueConstraint(name = "UK_logged_event_rollup", columnNames = { "project", "user",
+                "document", "annotator", "event", "bucket" }) })
+public class LoggedEventRollup
+{
+    /**
+     * Value stored in the annotator column if the events have no annotator. The column is not
+     * nullable so that the unique constraint also applies to these rollups.
+     */
+    public static final String NO_ANNOTATOR = "";
+
+    /**
+     * Maximum length of the event name.
+     */
+    public static final int MAX_EVENT_LENGTH = 128;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private long project;
+
+    @Column(nullable = false)
+    private String user;
+
+    @Column(nullable = false)
+    private long document;
+
+    @Column(nullable = false)
+    private String annotator = NO_ANNOTATOR;
+
+    @Column(nullable = false, length = MAX_EVENT_LENGTH)
+    private String event;
+
+    /**
+     * The start of the hour covered by this rollup.
+     */
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date bucket;
+
+    @Column(name = "event_count", nullable = false)
+    private long eventCount;
+
+    /**
+     * The time of the most recent event in this rollup.
+     */
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "last_created", nullable = false)
+    private Date lastCreated;
+
+    public LoggedEventRollup()
+    {
+        // Needed by JPA
+    }
+
+    public Long getId()
+    {
+        return id;
+    }
+
+    public long getProject()
+    {
+        return project;
+    }
+
+    public void setProject(long aProject)
+    {
+        project = aProject;
+    }
+
+    public String getUser()
+    {
+        return user;
+    }
+
+    public void setUser(String aUser)
+    {
+        user = aUser;
+    }
+
+    public long getDocument()
+    {
+        return document;
+    }
+
+    public void setDocument(long aDocument)
+    {
+        document = aDocument;
+    }
+
+    public String getAnnotator()
+    {
+        return NO_ANNOTATOR.equals(annotator) ? null : annotator;
+    }
+
+    public void setAnnotator(String aAnnotator)
+    {
+        annotator = aAnnotator != null ? aAnnotator : NO_ANNOTATOR;
+    }
+
+    public String getEvent()
+    {
+        return event;
+    }
+
+    public void setEvent(String aEvent)
+    {
+        event = aEvent;
+    }
+
+    public Date getBucket()
+    {
+        return bucket;
+    }
+
+    public void setBucket(Date aBucket)
+    {
+        bucket = aBucket;
+    }
+
+    public long getEventCount()
+    {
+        return eventCount;
+    }
+
+    public void setEventCount(long aEventCount)
+    {
+        eventCount = aEventCount;
+    }
+
+    public Date getLastCreated()
+    {
+        return lastCreated;
+    }
+
+    public void setLastCreated(Date aLastCreated)
+    {
+        lastCreated = aLastCreated;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("LoggedEventRollup [project=");
+        builder.append(project);
+        builder.append(", user=");
+        builder.append(user);
+        builder.append(", document=");
+        builder.append(document);
+        builder.append(", annotator=");
+        builder.append(annotator);
+        builder.append(", event=");
+        builder.append(event);
+        builder.append(", bucket=");
+        builder.append(bucket);
+        builder.append(", eventCount=");
+        builder.append(eventCount);
+        builder.append(", lastCreated=");
+        builder.append(lastCreated);
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Progress of building the {@link LoggedEventRollup rollups} for events which were logged before
+ * the rollups were introduced. The row is created by the database migration which introduces the
+ * rollups and records the last event ID at that time. All later events are rolled up when they
+ * are written.
+ */
+@Entity
+@Table(name = "logged_event_rollup_state")
+public class LoggedEventRollupState
+{
+    public static final long ID = 1;
+
+    @Id
+    private long id;
+
+    /**
+     * The ID of the last event which has already been rolled up.
+     */
+    @Column(name = "backfill_next", nullable = false)
+    private long backfillNext;
+
+    /**
+     * The ID of the last event which needs to be rolled up.
+     */
+    @Column(name = "backfill_last", nullable = false)
+    private long backfillLast;
+
+    public LoggedEventRollupState()
+    {
+        // Needed by JPA
+    }
+
+    public LoggedEventRollupState(long aBackfillNext, long aBackfillLast)
+    {
+        id = ID;
+        backfillNext = aBackfillNext;
+        backfillLast = aBackfillLast;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public long getBackfillNext()
+    {
+        return backfillNext;
+    }
+
+    public void setBackfillNext(long aBackfillNext)
+    {
+        backfillNext = aBackfillNext;
+    }
+
+    public long getBackfillLast()
+    {
+        return backfillLast;
+    }
+
+    public void setBackfillLast(long aBackfillLast)
+    {
+        backfillLast = aBackfillLast;
+    }
+
+    public boolean isComplete()
+    {
+        return backfillNext >= backfillLast;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+
+/**
+ * Persistent storage for logged events used by the
+ * {@link de.tudarmstadt.ukp.inception.log.EventLogWriter}.
+ */
+public interface EventStore
+    extends Closeable
+{
+    /**
+     * Writes the given events to the store. Implementations must be safe to be called from
+     * multiple threads.
+     */
+    void write(List<LoggedEvent> aEvents) throws IOException;
+
+    /**
+     * Performs background maintenance work. Called by the writer while there are no events to
+     * write. Implementations should only do a small amount of work per call.
+     * 
+     * @return whether there is further work to be done.
+     */
+    default boolean maintain() throws IOException
+    {
+        return false;
+    }
+
+    @Override
+    default void close() throws IOException
+    {
+        // Nothing to do by default
+    }
+}
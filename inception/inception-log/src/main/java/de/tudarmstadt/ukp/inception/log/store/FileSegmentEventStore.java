@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log.store;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+
+/**
+ * Append-only event store writing one JSON object per line into segment files. When the current
+ * segment exceeds the maximum segment size, a new segment is started. Segments are named by a
+ * running number, so listing them by name yields them in the order they were written.
+ */
+public class FileSegmentEventStore
+    implements EventStore
+{
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".ndjson";
+
+    private static final String FIELD_EVENT = "event";
+    private static final String FIELD_CREATED = "created";
+    private static final String FIELD_USER = "user";
+    private static final String FIELD_PROJECT = "project";
+    private static final String FIELD_DOCUMENT = "document";
+    private static final String FIELD_ANNOTATOR = "annotator";
+    private static final String FIELD_DETAILS = "details";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFactory jsonFactory = mapper.getFactory();
+
+    private final File folder;
+    private final long maxSegmentSize;
+
+    /**
+     * Serializes transfers. A transfer does not hold the monitor of the store while writing to
+     * the target store, so events can still be written while a transfer is running.
+     */
+    private final Object transferLock = new Object();
+
+    private long nextSegment;
+    private File currentSegment;
+    private Writer currentWriter;
+    private volatile boolean empty;
+
+    public FileSegmentEventStore(File aFolder)
+    {
+        this(aFolder, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    public FileSegmentEventStore(File aFolder, long aMaxSegmentSize)
+    {
+        folder = aFolder;
+        maxSegmentSize = aMaxSegmentSize;
+
+        List<File> segments = listSegments();
+        empty = segments.isEmpty();
+        nextSegment = segments.isEmpty() ? 0
+                : getSegmentNumber(segments.get(segments.size() - 1)) + 1;
+    }
+
+    @Override
+    public synchronized void write(List<LoggedEvent> aEvents) throws IOException
+    {
+        if (aEvents.isEmpty()) {
+            return;
+        }
+
+        if (currentWriter == null) {
+            openSegment();
+        }
+
+        for (LoggedEvent event : aEvents) {
+            try (JsonGenerator jg = jsonFactory.createGenerator(currentWriter)) {
+                jg.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                jg.writeStartObject();
+                jg.writeStringField(FIELD_EVENT, event.getEvent());
+                jg.writeNumberField(FIELD_CREATED, event.getCreated().getTime());
+                jg.writeStringField(FIELD_USER, event.getUser());
+                jg.writeNumberField(FIELD_PROJECT, event.getProject());
+                jg.writeNumberField(FIELD_DOCUMENT, event.getDocument());
+                if (event.getAnnotator() != null) {
+                    jg.writeStringField(FIELD_ANNOTATOR, event.getAnnotator());
+                }
+                if (event.getDetails() != null) {
+                    jg.writeStringField(FIELD_DETAILS, event.getDetails());
+                }
+                jg.writeEndObject();
+            }
+            currentWriter.write('\n');
+        }
+        currentWriter.flush();
+        empty = false;
+
+        if (currentSegment.length() >= maxSegmentSize) {
+            closeSegment();
+        }
+    }
+
+    /**
+     * @return whether the store does not contain any events.
+     */
+    public boolean isEmpty()
+    {
+        return empty;
+    }
+
+    /**
+     * Reads all events from the store in the order in which they were written.
+     */
+    public synchronized void forEachEvent(Consumer<LoggedEvent> aConsumer) throws IOException
+    {
+        if (currentWriter != null) {
+            currentWriter.flush();
+        }
+
+        for (File segment : listSegments()) {
+            readSegment(segment, aConsumer::accept);
+        }
+    }
+
+    /**
+     * Moves all events from this store to the given store in batches of the given size. Each
+     * segment is deleted once it has been written to the target store. If writing to the target
+     * fails, the segment is kept - the events of the segment which were already written may then
+     * be transferred a second time later.
+     * <p>
+     * Only the segments that exist when the transfer starts are transferred. Events written while
+     * the transfer is running go to a new segment and are not blocked by the transfer.
+     *
+     * @return the number of events transferred.
+     */
+    public long transferTo(EventStore aTarget, int aBatchSize) throws IOException
+    {
+        synchronized (transferLock) {
+            List<File> segments;
+            synchronized (this) {
+                closeSegment();
+                segments = listSegments();
+            }
+
+            long count = 0;
+            for (File segment : segments) {
+                count += transferSegment(segment, aTarget, aBatchSize);
+            }
+
+            synchronized (this) {
+                empty = listSegments().isEmpty();
+            }
+
+            return count;
+        }
+    }
+
+    private long transferSegment(File aSegment, EventStore aTarget, int aBatchSize)
+        throws IOException
+    {
+        List<LoggedEvent> batch = new ArrayList<>();
+        long[] count = { 0 };
+        readSegment(aSegment, event -> {
+            count[0]++;
+            batch.add(event);
+            if (batch.size() >= aBatchSize) {
+                aTarget.write(batch);
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            aTarget.write(batch);
+        }
+
+        // Do not delete the segment while it is being read by forEachEvent
+        synchronized (this) {
+            if (!aSegment.delete()) {
+                log.warn("Unable to delete event log segment [{}]", aSegment);
+            }
+        }
+
+        return count[0];
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        closeSegment();
+    }
+
+    private void openSegment() throws IOException
+    {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Unable to create event log folder [" + folder + "]");
+        }
+
+        currentSegment = new File(folder,
+                String.format("%s%012d%s", SEGMENT_PREFIX, nextSegment, SEGMENT_SUFFIX));
+        nextSegment++;
+        currentWriter = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(currentSegment, true), UTF_8));
+    }
+
+    private void closeSegment() throws IOException
+    {
+        if (currentWriter != null) {
+            currentWriter.close();
+            currentWriter = null;
+            currentSegment = null;
+        }
+    }
+
+    private List<File> listSegments()
+    {
+        File[] files = folder.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX)
+                && name.endsWith(SEGMENT_SUFFIX));
+
+        if (files == null) {
+            return new ArrayList<>();
+        }
+
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private static long getSegmentNumber(File aSegment)
+    {
+        String name = aSegment.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void readSegment(File aSegment, EventConsumer aConsumer) throws IOException
+    {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(aSegment), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                JsonNode node;
+                try {
+                    node = mapper.readTree(line);
+                }
+                catch (IOException e) {
+                    // A partially written line at the end of a segment, e.g. after a crash
+                    log.warn("Skipping unreadable event in segment [{}]: {}", aSegment,
+                            e.getMessage());
+                    continue;
+                }
+
+                LoggedEvent event = new LoggedEvent();
+                event.setEvent(node.path(FIELD_EVENT).asText());
+                event.setCreated(new Date(node.path(FIELD_CREATED).asLong()));
+                event.setUser(node.path(FIELD_USER).asText());
+                event.setProject(node.path(FIELD_PROJECT).asLong(-1));
+                event.setDocument(node.path(FIELD_DOCUMENT).asLong(-1));
+                event.setAnnotator(node.path(FIELD_ANNOTATOR).textValue());
+                event.setDetails(node.path(FIELD_DETAILS).textValue());
+                aConsumer.accept(event);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private static interface EventConsumer
+    {
+        void accept(LoggedEvent aEvent) throws IOException;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log.store;
+
+import java.util.List;
+
+import de.tudarmstadt.ukp.inception.log.EventRepository;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+
+/**
+ * Writes events to the {@code logged_event} table using batched inserts. The activity rollups are
+ * updated in the same transaction.
+ */
+public class RelationalEventStore
+    implements EventStore
+{
+    private static final int BACKFILL_CHUNK_SIZE = 10_000;
+
+    private final EventRepository repository;
+
+    public RelationalEventStore(EventRepository aRepository)
+    {
+        repository = aRepository;
+    }
+
+    @Override
+    public void write(List<LoggedEvent> aEvents)
+    {
+        repository.createBatch(aEvents);
+    }
+
+    @Override
+    public boolean maintain()
+    {
+        return repository.backfillRollups(BACKFILL_CHUNK_SIZE);
+    }
+}
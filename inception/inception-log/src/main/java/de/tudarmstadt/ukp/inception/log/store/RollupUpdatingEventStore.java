@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log.store;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.inception.log.EventRepository;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+
+/**
+ * Writes events to a store outside the database and adds them to the activity rollups in the
+ * database, so the dashboards keep working.
+ */
+public class RollupUpdatingEventStore
+    implements EventStore
+{
+    private static final int BACKFILL_CHUNK_SIZE = 10_000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final EventStore delegate;
+    private final EventRepository repository;
+
+    public RollupUpdatingEventStore(EventStore aDelegate, EventRepository aRepository)
+    {
+        delegate = aDelegate;
+        repository = aRepository;
+    }
+
+    @Override
+    public void write(List<LoggedEvent> aEvents) throws IOException
+    {
+        delegate.write(aEvents);
+
+        // The events are safely stored at this point. If the rollups cannot be updated, we must
+        // not report a failure because the writer would then try to write them again.
+        try {
+            repository.updateRollups(aEvents);
+        }
+        catch (RuntimeException e) {
+            log.error("Unable to add {} events to the activity rollups", aEvents.size(), e);
+        }
+    }
+
+    @Override
+    public boolean maintain() throws IOException
+    {
+        boolean more = delegate.maintain();
+        return repository.backfillRollups(BACKFILL_CHUNK_SIZE) || more;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        delegate.close();
+    }
+}
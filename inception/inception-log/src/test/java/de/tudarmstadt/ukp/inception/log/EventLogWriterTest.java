@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tudarmstadt.ukp.inception.log.config.EventLogOverflowPolicy;
+import de.tudarmstadt.ukp.inception.log.config.EventLoggingPropertiesImpl;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+import de.tudarmstadt.ukp.inception.log.store.EventStore;
+import de.tudarmstadt.ukp.inception.log.store.FileSegmentEventStore;
+
+public class EventLogWriterTest
+{
+    public @TempDir File folder;
+
+    private EventLogWriter sut;
+
+    private boolean stopped;
+
+    @AfterEach
+    public void tearDown() throws Exception
+    {
+        if (sut != null && !stopped) {
+            sut.destroy();
+        }
+    }
+
+    /**
+     * Stops the writer which writes all pending events. The counters remain accessible.
+     */
+    private void shutdown() throws Exception
+    {
+        sut.destroy();
+        stopped = true;
+    }
+
+    @Test
+    public void thatEventsAreWrittenInBatches() throws Exception
+    {
+        BlockingStore store = new BlockingStore();
+        sut = new EventLogWriter(store, null, properties(EventLogOverflowPolicy.BLOCK, 100, 10));
+
+        for (int i = 0; i < 95; i++) {
+            sut.enqueue(event(i));
+        }
+        shutdown();
+
+        assertThat(store.events()).hasSize(95);
+        assertThat(store.batchSizes()).allSatisfy(size -> assertThat(size).isLessThanOrEqualTo(10));
+        assertThat(sut.getWrittenEvents()).isEqualTo(95);
+    }
+
+    @Test
+    public void thatBackgroundWriterFlushesAfterInterval() throws Exception
+    {
+        BlockingStore store = new BlockingStore();
+        sut = new EventLogWriter(store, null, properties(EventLogOverflowPolicy.BLOCK, 100, 10));
+
+        sut.enqueue(event(1));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (store.events().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(store.events()).hasSize(1);
+    }
+
+    @Test
+    public void thatDropOldestKeepsNewestEvents() throws Exception
+    {
+        BlockingStore store = new BlockingStore();
+        store.block();
+        sut = new EventLogWriter(store, null,
+                properties(EventLogOverflowPolicy.DROP_OLDEST, 5, 1));
+
+        // The first event gets stuck in the blocked store, the rest fills the queue
+        sut.enqueue(event(0));
+        store.awaitWriteStarted();
+        for (int i = 1; i <= 10; i++) {
+            sut.enqueue(event(i));
+        }
+
+        assertThat(sut.getQueueDepth()).isEqualTo(5);
+        assertThat(sut.getDroppedEvents()).isEqualTo(5);
+
+        store.unblock();
+        shutdown();
+
+        assertThat(store.events()) //
+                .extracting(LoggedEvent::getDocument) //
+                .containsExactlyInAnyOrder(0L, 6L, 7L, 8L, 9L, 10L);
+    }
+
+    @Test
+    public void thatBlockDropsEventsAfterTimeout() throws Exception
+    {
+        BlockingStore store = new BlockingStore();
+        store.block();
+        EventLoggingPropertiesImpl props = properties(EventLogOverflowPolicy.BLOCK, 2, 1);
+        props.setBlockTimeout(Duration.ofMillis(10));
+        sut = new EventLogWriter(store, null, props);
+
+        sut.enqueue(event(0));
+        store.awaitWriteStarted();
+        for (int i = 1; i <= 3; i++) {
+            sut.enqueue(event(i));
+        }
+
+        assertThat(sut.getDroppedEvents()).isEqualTo(1);
+
+        store.unblock();
+        shutdown();
+
+        assertThat(store.events()) //
+                .extracting(LoggedEvent::getDocument) //
+                .containsExactlyInAnyOrder(0L, 1L, 2L);
+    }
+
+    @Test
+    public void thatSpillToDiskKeepsAllEvents() throws Exception
+    {
+        BlockingStore store = new BlockingStore();
+        store.block();
+        FileSegmentEventStore spill = new FileSegmentEventStore(folder);
+        sut = new EventLogWriter(store, spill,
+                properties(EventLogOverflowPolicy.SPILL_TO_DISK, 2, 1));
+
+        sut.enqueue(event(0));
+        store.awaitWriteStarted();
+        for (int i = 1; i <= 10; i++) {
+            sut.enqueue(event(i));
+        }
+
+        assertThat(sut.getDroppedEvents()).isZero();
+        assertThat(sut.getSpilledEvents()).isEqualTo(8);
+        assertThat(spill.isEmpty()).isFalse();
+
+        store.unblock();
+        shutdown();
+
+        assertThat(store.events()) //
+                .extracting(LoggedEvent::getDocument) //
+                .containsExactlyInAnyOrder(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+        assertThat(spill.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void thatFailedWritesAreSpilledToDisk() throws Exception
+    {
+        EventStore failingStore = batch -> {
+            throw new IOException("Database unavailable");
+        };
+        FileSegmentEventStore spill = new FileSegmentEventStore(folder);
+        sut = new EventLogWriter(failingStore, spill,
+                properties(EventLogOverflowPolicy.SPILL_TO_DISK, 10, 10));
+
+        for (int i = 0; i < 3; i++) {
+            sut.enqueue(event(i));
+        }
+        shutdown();
+
+        assertThat(sut.getSpilledEvents()).isEqualTo(3);
+        assertThat(sut.getWrittenEvents()).isZero();
+
+        List<LoggedEvent> spilled = new ArrayList<>();
+        spill.forEachEvent(spilled::add);
+        assertThat(spilled).extracting(LoggedEvent::getDocument).containsExactly(0L, 1L, 2L);
+    }
+
+    private static EventLoggingPropertiesImpl properties(EventLogOverflowPolicy aPolicy,
+            int aQueueSize, int aBatchSize)
+    {
+        EventLoggingPropertiesImpl props = new EventLoggingPropertiesImpl();
+        props.setOverflowPolicy(aPolicy);
+        props.setQueueSize(aQueueSize);
+        props.setBatchSize(aBatchSize);
+        props.setFlushInterval(Duration.ofMillis(50));
+        return props;
+    }
+
+    private static LoggedEvent event(long aDocument)
+    {
+        LoggedEvent e = new LoggedEvent();
+        e.setEvent("SpanCreatedEvent");
+        e.setCreated(new Date());
+        e.setUser("user");
+        e.setProject(1);
+        e.setDocument(aDocument);
+        return e;
+    }
+
+    private static class BlockingStore
+        implements EventStore
+    {
+        private final List<LoggedEvent> events = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch writeStarted = new CountDownLatch(1);
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public void write(List<LoggedEvent> aEvents) throws IOException
+        {
+            writeStarted.countDown();
+            try {
+                gate.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            events.addAll(aEvents);
+            batchSizes.add(aEvents.size());
+        }
+
+        void block()
+        {
+            gate = new CountDownLatch(1);
+        }
+
+        void unblock()
+        {
+            gate.countDown();
+        }
+
+        void awaitWriteStarted() throws InterruptedException
+        {
+            assertThat(writeStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+
+        List<LoggedEvent> events()
+        {
+            return new ArrayList<>(events);
+        }
+
+        List<Integer> batchSizes()
+        {
+            return new ArrayList<>(batchSizes);
+        }
+    }
+}
@@ -17,15 +17,19 @@
  */
 package de.tudarmstadt.ukp.inception.log;
 
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -40,10 +44,14 @@ import org.springframework.transaction.annotation.Transactional;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEventRollup;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEventRollupState;
 
 @ContextConfiguration(classes = SpringConfig.class)
 @Transactional
-@DataJpaTest(excludeAutoConfiguration = LiquibaseAutoConfiguration.class)
+@DataJpaTest(excludeAutoConfiguration = LiquibaseAutoConfiguration.class, properties = {
+        // The background writer would otherwise add events to the table while the tests run
+        "event-logging.enabled=false" })
 public class EventRepositoryImplIntegrationTest
 {
     private static final String PROJECT_NAME = "Test project";
@@ -264,7 +272,163 @@ public class EventRepositoryImplIntegrationTest
         assertThat(loggedEvents).contains(spanEvent);
     }
 
+    @Test
+    public void thatCreateBatchStoresAllEvents()
+    {
+        List<LoggedEvent> events = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            events.add(buildLoggedEvent(project, user.getUsername(), SPAN_CREATED_EVENT,
+                    new Date(), i, i % 2 == 0 ? null : DETAIL_JSON));
+        }
+
+        sut.createBatch(events);
+        testEntityManager.clear();
+
+        List<LoggedEvent> loggedEvents = new ArrayList<>();
+        sut.forEachLoggedEvent(project, loggedEvents::add);
+
+        assertThat(loggedEvents).hasSize(25);
+        assertThat(loggedEvents).extracting(LoggedEvent::getDocument)
+                .containsExactlyInAnyOrder(events.stream().mapToLong(LoggedEvent::getDocument)
+                        .boxed().toArray(Long[]::new));
+    }
+
+    @Test
+    public void thatRollupsCountEventsPerHour() throws Exception
+    {
+        Date hour1 = parse("2021-06-01 10:15:00");
+        Date hour1Later = parse("2021-06-01 10:45:00");
+        Date hour2 = parse("2021-06-01 11:05:00");
+
+        sut.createBatch(asList( //
+                buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT, hour1, 1, null), //
+                buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT, hour1Later, 1, null), //
+                buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT, hour2, 1, null), //
+                buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT, hour2, 2, null)));
+        sut.createBatch(asList( //
+                buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT, hour2, 1, null)));
+
+        List<LoggedEventRollup> rollups = sut.listActivityRollups(project, USERNAME,
+                asList(SPAN_CREATED_EVENT), parse("2021-06-01 00:00:00"),
+                parse("2021-06-02 00:00:00"));
+
+        assertThat(rollups) //
+                .extracting(r -> r.getBucket().getTime(), LoggedEventRollup::getDocument,
+                        LoggedEventRollup::getEventCount, r -> r.getLastCreated().getTime()) //
+                .containsExactly( //
+                        tuple(parse("2021-06-01 10:00:00").getTime(), 1L, 2L,
+                                hour1Later.getTime()), //
+                        tuple(parse("2021-06-01 11:00:00").getTime(), 1L, 2L, hour2.getTime()), //
+                        tuple(parse("2021-06-01 11:00:00").getTime(), 2L, 1L, hour2.getTime()));
+    }
+
+    @Test
+    public void thatRollupsAreKeptPerAnnotator() throws Exception
+    {
+        Date time = parse("2021-06-01 10:15:00");
+
+        LoggedEvent withAnnotator = buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT, time,
+                1, null);
+        withAnnotator.setAnnotator("annotator");
+        sut.create(withAnnotator);
+        sut.create(buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT, time, 1, null));
+        sut.createBatch(asList(withAnnotator,
+                buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT, time, 1, null)));
+
+        List<LoggedEventRollup> rollups = sut.listActivityRollups(project, USERNAME,
+                asList(SPAN_CREATED_EVENT), parse("2021-06-01 00:00:00"),
+                parse("2021-06-02 00:00:00"));
+
+        assertThat(rollups) //
+                .extracting(LoggedEventRollup::getAnnotator, LoggedEventRollup::getEventCount) //
+                .containsExactlyInAnyOrder( //
+                        tuple(null, 2L), //
+                        tuple("annotator", 2L));
+    }
+
+    @Test
+    public void thatRecentActivityReturnsLatestRollupPerDocumentAndAnnotator() throws Exception
+    {
+        LoggedEvent doc1Old = buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT,
+                parse("2021-06-01 10:00:00"), 1, null);
+        LoggedEvent doc1New = buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT,
+                parse("2021-06-02 10:00:00"), 1, null);
+        LoggedEvent doc2 = buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT,
+                parse("2021-06-01 12:00:00"), 2, null);
+        LoggedEvent doc3Excluded = buildLoggedEvent(project, USERNAME,
+                EVENT_TYPE_RECOMMENDER_EVALUATION_EVENT, parse("2021-06-03 12:00:00"), 3, null);
+        sut.createBatch(asList(doc1Old, doc1New, doc2, doc3Excluded));
+
+        List<LoggedEventRollup> activity = sut.listRecentActivity(project, USERNAME,
+                asList(SPAN_CREATED_EVENT), 10);
+
+        assertThat(activity) //
+                .extracting(LoggedEventRollup::getDocument, r -> r.getLastCreated().getTime()) //
+                .containsExactly( //
+                        tuple(1L, doc1New.getCreated().getTime()), //
+                        tuple(2L, doc2.getCreated().getTime()));
+    }
+
+    @Test
+    public void thatBackfillRollsUpExistingEvents() throws Exception
+    {
+        // Events persisted directly do not get rolled up - just as those which were logged before
+        // the rollups were introduced
+        Date created = parse("2021-06-01 10:15:00");
+        long firstId = -1;
+        long lastId = -1;
+        for (int i = 0; i < 5; i++) {
+            LoggedEvent event = testEntityManager.persist(
+                    buildLoggedEvent(project, USERNAME, SPAN_CREATED_EVENT, created, 1, null));
+            firstId = firstId == -1 ? event.getId() : firstId;
+            lastId = event.getId();
+        }
+        testEntityManager.persist(new LoggedEventRollupState(firstId - 1, lastId));
+
+        assertThat(sut.listRecentActivity(project, USERNAME, asList(SPAN_CREATED_EVENT), 10))
+                .isEmpty();
+
+        assertThat(sut.backfillRollups(3)).isTrue();
+        assertThat(sut.backfillRollups(3)).isFalse();
+        assertThat(sut.backfillRollups(3)).isFalse();
+
+        assertThat(sut.listRecentActivity(project, USERNAME, asList(SPAN_CREATED_EVENT), 10))
+                .extracting(LoggedEventRollup::getEventCount) //
+                .containsExactly(5L);
+    }
+
+    @Test
+    public void thatRecommenderEventsOutsideRollupWindowAreFound() throws Exception
+    {
+        // Many evaluations of another recommender in the most recent hour
+        for (int i = 0; i < 10; i++) {
+            sut.create(buildLoggedEvent(project, USERNAME, EVENT_TYPE_RECOMMENDER_EVALUATION_EVENT,
+                    parse("2021-06-02 10:00:00"), -1, "{\"recommenderId\":99}"));
+        }
+        // ... and only older evaluations of the recommender we are interested in
+        for (int i = 0; i < 3; i++) {
+            sut.create(buildLoggedEvent(project, USERNAME, EVENT_TYPE_RECOMMENDER_EVALUATION_EVENT,
+                    parse("2021-06-01 1" + i + ":00:00"), -1, DETAIL_JSON));
+        }
+
+        List<LoggedEvent> loggedEvents = sut.listLoggedEventsForRecommender(project, USERNAME,
+                EVENT_TYPE_RECOMMENDER_EVALUATION_EVENT, 2, RECOMMENDER_ID);
+
+        assertThat(loggedEvents) //
+                .extracting(e -> e.getCreated().getTime()) //
+                .containsExactly(parse("2021-06-01 12:00:00").getTime(),
+                        parse("2021-06-01 11:00:00").getTime());
+    }
+
     // Helper
+    private static Date parse(String aDate) throws ParseException
+    {
+        // Rollups are bucketed by UTC hours
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        df.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return df.parse(aDate);
+    }
+
     private Project createProject(String aName)
     {
         Project project = new Project();
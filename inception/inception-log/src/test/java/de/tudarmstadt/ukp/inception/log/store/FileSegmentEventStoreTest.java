@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.log.store;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+
+public class FileSegmentEventStoreTest
+{
+    public @TempDir File folder;
+
+    @Test
+    public void thatEventsCanBeReadBack() throws Exception
+    {
+        List<LoggedEvent> events = events(10);
+
+        try (var sut = new FileSegmentEventStore(folder)) {
+            assertThat(sut.isEmpty()).isTrue();
+            sut.write(events);
+            assertThat(sut.isEmpty()).isFalse();
+        }
+
+        // Re-open to make sure the events survive a restart
+        try (var sut = new FileSegmentEventStore(folder)) {
+            List<LoggedEvent> read = new ArrayList<>();
+            sut.forEachEvent(read::add);
+
+            assertThat(read) //
+                    .usingRecursiveFieldByFieldElementComparator() //
+                    .containsExactlyElementsOf(events);
+        }
+    }
+
+    @Test
+    public void thatSegmentsAreRolledOver() throws Exception
+    {
+        try (var sut = new FileSegmentEventStore(folder, 200)) {
+            for (LoggedEvent event : events(10)) {
+                sut.write(List.of(event));
+            }
+        }
+
+        assertThat(folder.listFiles()).hasSizeGreaterThan(1);
+    }
+
+    @Test
+    public void thatTransferMovesAllEventsAndRemovesSegments() throws Exception
+    {
+        List<LoggedEvent> events = events(25);
+        List<List<LoggedEvent>> batches = new ArrayList<>();
+
+        try (var sut = new FileSegmentEventStore(folder, 500)) {
+            sut.write(events);
+
+            long count = sut.transferTo(batch -> batches.add(new ArrayList<>(batch)), 10);
+
+            assertThat(count).isEqualTo(25);
+            assertThat(sut.isEmpty()).isTrue();
+        }
+
+        assertThat(batches).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(10));
+        assertThat(batches.stream().flatMap(List::stream)) //
+                .usingRecursiveFieldByFieldElementComparator() //
+                .containsExactlyElementsOf(events);
+        assertThat(folder.listFiles()).isEmpty();
+    }
+
+    @Test
+    public void thatWritesAreNotBlockedByTransfer() throws Exception
+    {
+        CountDownLatch transferStarted = new CountDownLatch(1);
+        CountDownLatch writeDone = new CountDownLatch(1);
+        List<LoggedEvent> transferred = new ArrayList<>();
+
+        try (var sut = new FileSegmentEventStore(folder)) {
+            sut.write(events(5));
+
+            Thread transfer = new Thread(() -> {
+                try {
+                    sut.transferTo(batch -> {
+                        transferStarted.countDown();
+                        // Hold the target busy until the concurrent write has completed
+                        try {
+                            assertThat(writeDone.await(10, SECONDS)).isTrue();
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        transferred.addAll(batch);
+                    }, 10);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            transfer.start();
+
+            assertThat(transferStarted.await(10, SECONDS)).isTrue();
+            sut.write(events(1));
+            writeDone.countDown();
+            transfer.join(10_000);
+
+            assertThat(transferred).hasSize(5);
+            assertThat(sut.isEmpty()).isFalse();
+
+            List<LoggedEvent> remaining = new ArrayList<>();
+            sut.forEachEvent(remaining::add);
+            assertThat(remaining).hasSize(1);
+        }
+    }
+
+    private List<LoggedEvent> events(int aCount)
+    {
+        List<LoggedEvent> events = new ArrayList<>();
+        for (int i = 0; i < aCount; i++) {
+            LoggedEvent e = new LoggedEvent();
+            e.setEvent("SpanCreatedEvent");
+            e.setCreated(new Date(1_600_000_000_000L + i));
+            e.setUser("user");
+            e.setProject(1);
+            e.setDocument(i);
+            e.setAnnotator(i % 2 == 0 ? "annotator" : null);
+            e.setDetails(i % 3 == 0 ? "{\"index\":" + i + "}" : null);
+            events.add(e);
+        }
+        return events;
+    }
+}
@@ -36,6 +36,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.model.Predictions;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Preferences;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Progress;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.RecommenderEvaluationScore;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.RelationSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.SpanSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.SuggestionGroup;
@@ -97,6 +98,21 @@ public interface RecommendationService
 
     Optional<EvaluatedRecommender> getEvaluatedRecommender(User aUser, Recommender aRecommender);
 
+    /**
+     * Get the scores of the most recent evaluations of the given recommender on the data of the
+     * given user, the most recent first.
+     * 
+     * @param aRecommender
+     *            the recommender.
+     * @param aUser
+     *            the user on whose data the recommender was evaluated.
+     * @param aMaxSize
+     *            the maximum number of scores to return.
+     * @return the scores.
+     */
+    List<RecommenderEvaluationScore> listEvaluationScores(Recommender aRecommender, String aUser,
+            int aMaxSize);
+
     List<EvaluatedRecommender> getActiveRecommenders(User aUser, AnnotationLayer aLayer);
 
     void setPreferences(User aUser, Project aProject, Preferences aPreferences);
@@ -195,5 +211,15 @@ public interface RecommendationService
      */
     long countEnabledRecommenders();
 
+    /**
+     * @return the total number of documents for which predictions have been computed.
+     */
+    long getPredictedDocumentsTotal();
+
+    /**
+     * @return the prediction throughput (documents per second) of the last prediction run.
+     */
+    double getPredictionDocumentsPerSecond();
+
     Progress getProgressTowardsNextEvaluation(User aUser, Project aProject);
 }
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.api.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * In-memory index of the learning records of a user on a layer, keyed by document, offsets and
+ * label. It is used to check whether a suggestion has been rejected or skipped before without
+ * scanning the whole learning history for every suggestion. It is meant to be built from
+ * {@code LearningRecordService.listRecords} which does not return records with the action
+ * {@link LearningRecordType#SHOWN}.
+ */
+public class LearningRecordIndex
+    implements Serializable
+{
+    private static final long serialVersionUID = 2787958180939981052L;
+
+    // Records at the same key are ordered from newest to oldest
+    private final Map<Key, List<LearningRecord>> records = new HashMap<>();
+
+    public LearningRecordIndex(Collection<LearningRecord> aRecords)
+    {
+        for (LearningRecord record : aRecords) {
+            add(record);
+        }
+    }
+
+    /**
+     * @return the action of the most recent record matching the position and label of the given
+     *         suggestion.
+     */
+    public Optional<LearningRecordType> getUserAction(SpanSuggestion aSuggestion)
+    {
+        return getUserAction(new Key(aSuggestion.getDocumentName(), aSuggestion.getBegin(),
+                aSuggestion.getEnd(), -1, -1, aSuggestion.getLabel()));
+    }
+
+    /**
+     * @return the action of the most recent record matching the position and label of the given
+     *         suggestion.
+     */
+    public Optional<LearningRecordType> getUserAction(RelationSuggestion aSuggestion)
+    {
+        RelationPosition pos = aSuggestion.getPosition();
+        return getUserAction(new Key(aSuggestion.getDocumentName(), pos.getSourceBegin(),
+                pos.getSourceEnd(), pos.getTargetBegin(), pos.getTargetEnd(),
+                aSuggestion.getLabel()));
+    }
+
+    private synchronized Optional<LearningRecordType> getUserAction(Key aKey)
+    {
+        List<LearningRecord> candidates = records.get(aKey);
+        if (candidates == null || candidates.isEmpty()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(candidates.get(0).getUserAction());
+    }
+
+    public synchronized void add(LearningRecord aRecord)
+    {
+        List<LearningRecord> candidates = records.computeIfAbsent(Key.of(aRecord),
+                k -> new ArrayList<>(1));
+        int i = 0;
+        while (i < candidates.size() && isNewer(candidates.get(i), aRecord)) {
+            i++;
+        }
+        candidates.add(i, aRecord);
+    }
+
+    /**
+     * Removes the given record. Records are compared by ID.
+     */
+    public void remove(LearningRecord aRecord)
+    {
+        Key key = Key.of(aRecord);
+        removeIf(key, r -> Objects.equals(r.getId(), aRecord.getId()));
+    }
+
+    /**
+     * Removes all records which would be considered duplicates of the given record when it is
+     * logged, i.e. records at the same position with the same label, feature and suggestion type.
+     */
+    public void removeDuplicates(LearningRecord aRecord)
+    {
+        removeIf(Key.of(aRecord), r -> Objects.equals(r.getAnnotationFeature(),
+                aRecord.getAnnotationFeature())
+                && r.getSuggestionType() == aRecord.getSuggestionType());
+    }
+
+    public synchronized void removeIf(Predicate<LearningRecord> aFilter)
+    {
+        Iterator<List<LearningRecord>> i = records.values().iterator();
+        while (i.hasNext()) {
+            List<LearningRecord> candidates = i.next();
+            candidates.removeIf(aFilter);
+            if (candidates.isEmpty()) {
+                i.remove();
+            }
+        }
+    }
+
+    public synchronized int size()
+    {
+        return records.values().stream().mapToInt(List::size).sum();
+    }
+
+    private synchronized void removeIf(Key aKey, Predicate<LearningRecord> aFilter)
+    {
+        List<LearningRecord> candidates = records.get(aKey);
+        if (candidates == null) {
+            return;
+        }
+
+        candidates.removeIf(aFilter);
+        if (candidates.isEmpty()) {
+            records.remove(aKey);
+        }
+    }
+
+    private static boolean isNewer(LearningRecord aRecord, LearningRecord aOther)
+    {
+        // Records which have not been persisted yet are the newest
+        if (aOther.getId() == null) {
+            return false;
+        }
+        if (aRecord.getId() == null) {
+            return true;
+        }
+        return aRecord.getId() > aOther.getId();
+    }
+
+    private static final class Key
+        implements Serializable
+    {
+        private static final long serialVersionUID = -3405395185651838337L;
+
+        private final String documentName;
+        private final int begin;
+        private final int end;
+        private final int begin2;
+        private final int end2;
+        private final String label;
+
+        Key(String aDocumentName, int aBegin, int aEnd, int aBegin2, int aEnd2, String aLabel)
+        {
+            documentName = aDocumentName;
+            begin = aBegin;
+            end = aEnd;
+            begin2 = aBegin2;
+            end2 = aEnd2;
+            label = aLabel;
+        }
+
+        static Key of(LearningRecord aRecord)
+        {
+            String documentName = aRecord.getSourceDocument() != null
+                    ? aRecord.getSourceDocument().getName()
+                    : null;
+            return new Key(documentName, aRecord.getOffsetBegin(), aRecord.getOffsetEnd(),
+                    aRecord.getOffsetBegin2(), aRecord.getOffsetEnd2(), aRecord.getAnnotation());
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key other = (Key) o;
+            return begin == other.begin && end == other.end && begin2 == other.begin2
+                    && end2 == other.end2 && Objects.equals(documentName, other.documentName)
+                    && Objects.equals(label, other.label);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(documentName, begin, end, begin2, end2, label);
+        }
+    }
+}
@@ -23,15 +23,13 @@ import static java.util.stream.Collectors.toList;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.Validate;
 
@@ -48,15 +46,16 @@ import de.tudarmstadt.ukp.clarin.webanno.support.logging.LogMessage;
  * Stores references to the recommendationService, the currently used JCas and the annotatorState.
  * This class is widely used in the recommendation module.
  * 
- * If the prediction task has run it stores the predicted annotations for an annotation layer in the
- * predictions map.
+ * If the prediction task has run it stores the predicted annotations for an annotation layer in a
+ * {@link SuggestionStore} which is indexed by document, layer and offsets as well as by recommender
+ * and suggestion ID.
  */
 public class Predictions
     implements Serializable
 {
     private static final long serialVersionUID = -1598768729246662885L;
 
-    private Map<ExtendedId, AnnotationSuggestion> predictions = new ConcurrentHashMap<>();
+    private final SuggestionStore predictions = new SuggestionStore();
     private Set<String> seenDocumentsForPrediction = newSetFromMap(new ConcurrentHashMap<>());
 
     private final Project project;
@@ -72,7 +71,7 @@ public class Predictions
         user = aUser;
 
         if (aPredictions != null) {
-            predictions = new ConcurrentHashMap<>(aPredictions);
+            aPredictions.values().forEach(predictions::put);
         }
     }
 
@@ -127,18 +126,8 @@ public class Predictions
     private <T extends AnnotationSuggestion> List<T> getFlattenedPredictions(Class<T> type,
             String aDocumentName, AnnotationLayer aLayer, int aWindowBegin, int aWindowEnd)
     {
-        return predictions.entrySet().stream().filter(f -> type.isInstance(f.getValue()))
-                .map(f -> (Entry<ExtendedId, T>) (Entry) f)
-                .filter(f -> f.getKey().getDocumentName().equals(aDocumentName))
-                .filter(f -> f.getKey().getLayerId() == aLayer.getId())
-                // .filter(f -> overlapping(f.getValue().getWindowBegin(),
-                // f.getValue().getWindowEnd(),
-                // aWindowBegin == -1 ? 0 : aWindowBegin,
-                // aWindowEnd == -1 ? MAX_VALUE : aWindowEnd))
-                .filter(f -> aWindowBegin == -1 || (f.getValue().getWindowBegin() >= aWindowBegin))
-                .filter(f -> aWindowEnd == -1 || (f.getValue().getWindowEnd() <= aWindowEnd))
-                .sorted(Comparator.comparingInt(e2 -> e2.getValue().getWindowBegin()))
-                .map(Map.Entry::getValue).collect(toList());
+        return predictions.getInWindow(type, aDocumentName, aLayer.getId(), aWindowBegin,
+                aWindowEnd);
     }
 
     /**
@@ -147,10 +136,7 @@ public class Predictions
      */
     public Optional<AnnotationSuggestion> getPredictionByVID(SourceDocument aDocument, VID aVID)
     {
-        return predictions.values().stream()
-                .filter(f -> f.getDocumentName().equals(aDocument.getName()))
-                .filter(f -> f.getId() == aVID.getSubId())
-                .filter(f -> f.getRecommenderId() == aVID.getId()).findFirst();
+        return predictions.get(aDocument.getName(), aVID.getId(), aVID.getSubId());
     }
 
     /**
@@ -159,10 +145,7 @@ public class Predictions
      */
     public void putPredictions(List<AnnotationSuggestion> aPredictions)
     {
-        aPredictions.forEach(prediction -> predictions.put(new ExtendedId(user.getUsername(),
-                project.getId(), prediction.getDocumentName(), prediction.getLayerId(),
-                prediction.getPosition(), prediction.getRecommenderId(), prediction.getId(), -1),
-                prediction));
+        aPredictions.forEach(predictions::put);
     }
 
     public Project getProject()
@@ -175,9 +158,20 @@ public class Predictions
         return !predictions.isEmpty();
     }
 
+    /**
+     * @return a snapshot of all predictions. Prefer the indexed accessors which do not need to
+     *         visit every prediction.
+     */
     public Map<ExtendedId, AnnotationSuggestion> getGroupedPredictions()
     {
-        return predictions;
+        Map<ExtendedId, AnnotationSuggestion> result = new LinkedHashMap<>();
+        for (AnnotationSuggestion prediction : predictions.getAll()) {
+            result.put(new ExtendedId(user.getUsername(), project.getId(),
+                    prediction.getDocumentName(), prediction.getLayerId(),
+                    prediction.getPosition(), prediction.getRecommenderId(), prediction.getId(),
+                    -1), prediction);
+        }
+        return result;
     }
 
     public void clearPredictions()
@@ -188,7 +182,7 @@ public class Predictions
 
     public void removePredictions(Long recommenderId)
     {
-        predictions.entrySet().removeIf((p) -> p.getKey().getRecommenderId() == recommenderId);
+        predictions.removeByRecommender(recommenderId);
     }
 
     /**
@@ -211,30 +205,23 @@ public class Predictions
     public List<SpanSuggestion> getPredictionsByTokenAndFeature(String aDocumentName,
             AnnotationLayer aLayer, int aBegin, int aEnd, String aFeature)
     {
-        return predictions.entrySet().stream().filter(f -> f.getValue() instanceof SpanSuggestion)
-                .map(f -> (Entry<ExtendedId, SpanSuggestion>) (Entry) f)
-                .filter(f -> f.getKey().getDocumentName().equals(aDocumentName))
-                .filter(f -> f.getKey().getLayerId() == aLayer.getId())
-                .filter(f -> f.getValue().getBegin() == aBegin)
-                .filter(f -> f.getValue().getEnd() == aEnd)
-                .filter(f -> f.getValue().getFeature().equals(aFeature)).map(Map.Entry::getValue)
-                .collect(Collectors.toList());
+        return predictions.getAt(aDocumentName, aLayer.getId(), aBegin).stream()
+                .filter(f -> f instanceof SpanSuggestion) //
+                .map(f -> (SpanSuggestion) f) //
+                .filter(f -> f.getEnd() == aEnd) //
+                .filter(f -> f.getFeature().equals(aFeature)) //
+                .collect(toList());
     }
 
     public List<AnnotationSuggestion> getPredictionsByRecommenderAndDocument(
             Recommender aRecommender, String aDocument)
     {
-        return predictions.entrySet().stream()
-                .filter(f -> f.getKey().getRecommenderId() == (long) aRecommender.getId()
-                        && f.getKey().getDocumentName().equals(aDocument))
-                .map(Map.Entry::getValue).collect(Collectors.toList());
+        return predictions.getByRecommenderAndDocument(aRecommender.getId(), aDocument);
     }
 
     public List<AnnotationSuggestion> getPredictionsByDocument(String aDocument)
     {
-        return predictions.entrySet().stream()
-                .filter(f -> f.getKey().getDocumentName().equals(aDocument))
-                .map(Map.Entry::getValue).collect(Collectors.toList());
+        return predictions.getByDocument(aDocument);
     }
 
     public void markDocumentAsPredictionCompleted(SourceDocument aDocument)
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.api.model;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+/**
+ * The scores of one evaluation of a recommender on the data of a user. These are the data points
+ * of the learning curve. Scores which could not be computed (e.g. because the test set was empty)
+ * are {@code null}.
+ */
+@Entity
+@Table(name = "recommender_evaluation_score", indexes = {
+        @Index(name = "IDX_recommender_evaluation_score", columnList = "recommender,user,created") })
+public class RecommenderEvaluationScore
+{
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ManyToOne
+    @JoinColumn(name = "recommender", nullable = false)
+    private Recommender recommender;
+
+    @Column(nullable = false)
+    private String user;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date created;
+
+    @Column(name = "accuracy_score")
+    private Double accuracy;
+
+    @Column(name = "precision_score")
+    private Double precision;
+
+    @Column(name = "recall_score")
+    private Double recall;
+
+    @Column(name = "f1_score")
+    private Double f1;
+
+    public RecommenderEvaluationScore()
+    {
+        // Needed by JPA
+    }
+
+    public Long getId()
+    {
+        return id;
+    }
+
+    public Recommender getRecommender()
+    {
+        return recommender;
+    }
+
+    public void setRecommender(Recommender aRecommender)
+    {
+        recommender = aRecommender;
+    }
+
+    public String getUser()
+    {
+        return user;
+    }
+
+    public void setUser(String aUser)
+    {
+        user = aUser;
+    }
+
+    public Date getCreated()
+    {
+        return created;
+    }
+
+    public void setCreated(Date aCreated)
+    {
+        created = aCreated;
+    }
+
+    public Double getAccuracy()
+    {
+        return accuracy;
+    }
+
+    public void setAccuracy(Double aAccuracy)
+    {
+        accuracy = aAccuracy;
+    }
+
+    public Double getPrecision()
+    {
+        return precision;
+    }
+
+    public void setPrecision(Double aPrecision)
+    {
+        precision = aPrecision;
+    }
+
+    public Double getRecall()
+    {
+        return recall;
+    }
+
+    public void setRecall(Double aRecall)
+    {
+        recall = aRecall;
+    }
+
+    public Double getF1()
+    {
+        return f1;
+    }
+
+    public void setF1(Double aF1)
+    {
+        f1 = aF1;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("RecommenderEvaluationScore [recommender=");
+        builder.append(recommender != null ? recommender.getId() : null);
+        builder.append(", user=");
+        builder.append(user);
+        builder.append(", created=");
+        builder.append(created);
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.api.model;
+
+import static java.util.Collections.emptyList;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Suggestions of a user indexed for the access patterns of the recommendation UI:
+ * <ul>
+ * <li>by document, layer and window begin offset for rendering a window of a document;</li>
+ * <li>by document, recommender and suggestion ID for resolving the VID of a suggestion and for
+ * removing all suggestions of a recommender.</li>
+ * </ul>
+ * All methods are synchronized and return copies, so results can be used while predictions are
+ * still being added from other threads.
+ */
+class SuggestionStore
+    implements Serializable
+{
+    private static final long serialVersionUID = -6086785432963893458L;
+
+    // document name -> layer ID -> window begin -> suggestions
+    private final Map<String, Map<Long, NavigableMap<Integer, List<AnnotationSuggestion>>>> //
+            byLocation = new HashMap<>();
+
+    // document name -> recommender ID -> suggestion ID -> suggestion
+    private final Map<String, Map<Long, Map<Integer, AnnotationSuggestion>>> byRecommender = //
+            new HashMap<>();
+
+    private int size;
+
+    /**
+     * Adds the given suggestion, replacing any suggestion with the same document, recommender and
+     * ID.
+     */
+    public synchronized void put(AnnotationSuggestion aSuggestion)
+    {
+        AnnotationSuggestion replaced = byRecommender
+                .computeIfAbsent(aSuggestion.getDocumentName(), k -> new HashMap<>())
+                .computeIfAbsent(aSuggestion.getRecommenderId(), k -> new HashMap<>())
+                .put(aSuggestion.getId(), aSuggestion);
+
+        if (replaced != null) {
+            removeLocation(replaced);
+        }
+        else {
+            size++;
+        }
+
+        byLocation.computeIfAbsent(aSuggestion.getDocumentName(), k -> new HashMap<>())
+                .computeIfAbsent(aSuggestion.getLayerId(), k -> new TreeMap<>())
+                .computeIfAbsent(aSuggestion.getWindowBegin(), k -> new ArrayList<>(1))
+                .add(aSuggestion);
+    }
+
+    public synchronized Optional<AnnotationSuggestion> get(String aDocumentName,
+            long aRecommenderId, int aId)
+    {
+        Map<Long, Map<Integer, AnnotationSuggestion>> byRec = byRecommender.get(aDocumentName);
+        if (byRec == null) {
+            return Optional.empty();
+        }
+
+        Map<Integer, AnnotationSuggestion> byId = byRec.get(aRecommenderId);
+        if (byId == null) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(byId.get(aId));
+    }
+
+    /**
+     * Returns the suggestions of the given type on the given layer of the given document which lie
+     * within the given window, ordered by their window begin offset. A window boundary of
+     * {@code -1} is ignored.
+     */
+    public synchronized <T extends AnnotationSuggestion> List<T> getInWindow(Class<T> aType,
+            String aDocumentName, long aLayerId, int aWindowBegin, int aWindowEnd)
+    {
+        NavigableMap<Integer, List<AnnotationSuggestion>> index = getLocationIndex(aDocumentName,
+                aLayerId);
+        if (index == null) {
+            return emptyList();
+        }
+
+        // A suggestion cannot begin after the window end if it also ends before the window end
+        NavigableMap<Integer, List<AnnotationSuggestion>> window = index;
+        if (aWindowBegin != -1) {
+            window = window.tailMap(aWindowBegin, true);
+        }
+        if (aWindowEnd != -1) {
+            window = window.headMap(aWindowEnd, true);
+        }
+
+        List<T> result = new ArrayList<>();
+        for (List<AnnotationSuggestion> suggestions : window.values()) {
+            for (AnnotationSuggestion suggestion : suggestions) {
+                if (aType.isInstance(suggestion)
+                        && (aWindowEnd == -1 || suggestion.getWindowEnd() <= aWindowEnd)) {
+                    result.add(aType.cast(suggestion));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the suggestions on the given layer of the given document whose window starts at the
+     * given offset.
+     */
+    public synchronized List<AnnotationSuggestion> getAt(String aDocumentName, long aLayerId,
+            int aWindowBegin)
+    {
+        NavigableMap<Integer, List<AnnotationSuggestion>> index = getLocationIndex(aDocumentName,
+                aLayerId);
+        if (index == null) {
+            return emptyList();
+        }
+
+        List<AnnotationSuggestion> suggestions = index.get(aWindowBegin);
+        return suggestions != null ? new ArrayList<>(suggestions) : emptyList();
+    }
+
+    public synchronized List<AnnotationSuggestion> getByDocument(String aDocumentName)
+    {
+        Map<Long, Map<Integer, AnnotationSuggestion>> byRec = byRecommender.get(aDocumentName);
+        if (byRec == null) {
+            return emptyList();
+        }
+
+        List<AnnotationSuggestion> result = new ArrayList<>();
+        for (Map<Integer, AnnotationSuggestion> byId : byRec.values()) {
+            result.addAll(byId.values());
+        }
+        return result;
+    }
+
+    public synchronized List<AnnotationSuggestion> getByRecommenderAndDocument(
+            long aRecommenderId, String aDocumentName)
+    {
+        Map<Long, Map<Integer, AnnotationSuggestion>> byRec = byRecommender.get(aDocumentName);
+        if (byRec == null) {
+            return emptyList();
+        }
+
+        Map<Integer, AnnotationSuggestion> byId = byRec.get(aRecommenderId);
+        return byId != null ? new ArrayList<>(byId.values()) : emptyList();
+    }
+
+    public synchronized List<AnnotationSuggestion> getAll()
+    {
+        List<AnnotationSuggestion> result = new ArrayList<>(size);
+        for (Map<Long, Map<Integer, AnnotationSuggestion>> byRec : byRecommender.values()) {
+            for (Map<Integer, AnnotationSuggestion> byId : byRec.values()) {
+                result.addAll(byId.values());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all suggestions of the given recommender from all documents.
+     */
+    public synchronized void removeByRecommender(long aRecommenderId)
+    {
+        Iterator<Map<Long, Map<Integer, AnnotationSuggestion>>> i = byRecommender.values()
+                .iterator();
+        while (i.hasNext()) {
+            Map<Long, Map<Integer, AnnotationSuggestion>> byRec = i.next();
+            Map<Integer, AnnotationSuggestion> removed = byRec.remove(aRecommenderId);
+            if (removed == null) {
+                continue;
+            }
+
+            removed.values().forEach(this::removeLocation);
+            size -= removed.size();
+
+            if (byRec.isEmpty()) {
+                i.remove();
+            }
+        }
+    }
+
+    public synchronized void clear()
+    {
+        byLocation.clear();
+        byRecommender.clear();
+        size = 0;
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    private NavigableMap<Integer, List<AnnotationSuggestion>> getLocationIndex(
+            String aDocumentName, long aLayerId)
+    {
+        Map<Long, NavigableMap<Integer, List<AnnotationSuggestion>>> byLayer = byLocation
+                .get(aDocumentName);
+        return byLayer != null ? byLayer.get(aLayerId) : null;
+    }
+
+    private void removeLocation(AnnotationSuggestion aSuggestion)
+    {
+        Map<Long, NavigableMap<Integer, List<AnnotationSuggestion>>> byLayer = byLocation
+                .get(aSuggestion.getDocumentName());
+        if (byLayer == null) {
+            return;
+        }
+
+        NavigableMap<Integer, List<AnnotationSuggestion>> index = byLayer
+                .get(aSuggestion.getLayerId());
+        if (index == null) {
+            return;
+        }
+
+        List<AnnotationSuggestion> suggestions = index.get(aSuggestion.getWindowBegin());
+        if (suggestions == null) {
+            return;
+        }
+
+        // Compare by identity since a replacement is equal to the suggestion it replaces
+        suggestions.removeIf(s -> s == aSuggestion);
+
+        if (suggestions.isEmpty()) {
+            index.remove(aSuggestion.getWindowBegin());
+            if (index.isEmpty()) {
+                byLayer.remove(aSuggestion.getLayerId());
+                if (byLayer.isEmpty()) {
+                    byLocation.remove(aSuggestion.getDocumentName());
+                }
+            }
+        }
+    }
+}
@@ -25,6 +25,8 @@ import static org.apache.uima.fit.util.CasUtil.getType;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Feature;
@@ -68,6 +70,28 @@ public abstract class RecommendationEngine
     public abstract void train(RecommenderContext aContext, List<CAS> aCasses)
         throws RecommendationException;
 
+    /**
+     * Incrementally update the model using only the training documents which have changed since
+     * the last training. This method is only called if {@link #isIncrementalTrainingSupported()}
+     * returns {@code true}. The given context has been created from the previous context using
+     * {@link #newContext}, so engines supporting incremental training must carry over any
+     * per-document training data there. This method must not mutate {@code aChangedCasses} in any
+     * way.
+     * 
+     * @param aContext
+     *            The context of the recommender
+     * @param aChangedCasses
+     *            The added or changed training documents, keyed by a stable document identifier
+     * @param aRemovedDocuments
+     *            The identifiers of documents which are no longer part of the training data
+     */
+    public void trainIncrementally(RecommenderContext aContext, Map<String, CAS> aChangedCasses,
+            Set<String> aRemovedDocuments)
+        throws RecommendationException
+    {
+        throw new UnsupportedOperationException("Incremental training not supported");
+    }
+
     /**
      * Given text in {@code aCas}, predict target annotations. These should be written into
      * {@code aCas}. In order to restore data from e.g. previous training, the {@code aContext} can
@@ -122,6 +146,16 @@ public abstract class RecommendationEngine
         return RecommendationEngineCapability.TRAINING_SUPPORTED;
     }
 
+    /**
+     * @return whether the engine supports {@link #trainIncrementally}. If this is the case, the
+     *         training only receives the documents which changed since the last training instead of
+     *         all training documents.
+     */
+    public boolean isIncrementalTrainingSupported()
+    {
+        return false;
+    }
+
     /**
      * Create a new context given the previous context. This allows incrementally training
      * recommenders to salvage information from the current context for a new iteration. By default,
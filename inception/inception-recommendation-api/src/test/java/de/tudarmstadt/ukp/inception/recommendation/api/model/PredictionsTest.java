@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.api.model;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.VID;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+
+public class PredictionsTest
+{
+    private Project project;
+    private AnnotationLayer layer;
+    private SourceDocument doc1;
+    private Predictions sut;
+
+    @BeforeEach
+    public void setup()
+    {
+        project = new Project("test");
+        project.setId(1L);
+        layer = new AnnotationLayer();
+        layer.setId(1L);
+        doc1 = new SourceDocument("doc1", project, "text");
+        sut = new Predictions(new User("user"), project);
+    }
+
+    @Test
+    public void thatWindowQueryReturnsSuggestionsInWindow()
+    {
+        SpanSuggestion s1 = span(1, 1, "doc1", 20, 25);
+        SpanSuggestion s2 = span(2, 1, "doc1", 0, 5);
+        SpanSuggestion s3 = span(3, 1, "doc1", 8, 30);
+        SpanSuggestion s4 = span(4, 1, "doc1", 10, 12);
+        SpanSuggestion otherDoc = span(5, 1, "doc2", 10, 12);
+        SpanSuggestion otherLayer = new SpanSuggestion(6, 1, "rec", 2, "value", "doc1", 10, 12,
+                "x", "X", "X", 0.1, null);
+        RelationSuggestion relation = new RelationSuggestion(7, 1, "rec", 1, "value", "doc1", 20,
+                25, 10, 12, "R", "R", 0.1, null);
+        sut.putPredictions(asList(s1, s2, s3, s4, otherDoc, otherLayer, relation));
+
+        assertThat(sut.getGroupedPredictions(SpanSuggestion.class, "doc1", layer, -1, -1)
+                .stream().flatMap(g -> g.stream())) //
+                        .containsExactlyInAnyOrder(s2, s3, s4, s1);
+
+        assertThat(sut.getGroupedPredictions(SpanSuggestion.class, "doc1", layer, 5, 25)
+                .stream().flatMap(g -> g.stream())) //
+                        .as("Suggestions must lie completely within the window") //
+                        .containsExactlyInAnyOrder(s4, s1);
+
+        assertThat(sut.getGroupedPredictions(RelationSuggestion.class, "doc1", layer, 10, 25)
+                .stream().flatMap(g -> g.stream())) //
+                        .containsExactly(relation);
+        assertThat(sut.getGroupedPredictions(RelationSuggestion.class, "doc1", layer, 15, 25))
+                .isEmpty();
+    }
+
+    @Test
+    public void thatSuggestionsCanBeLookedUpByVid()
+    {
+        SpanSuggestion s1 = span(1, 1, "doc1", 0, 5);
+        SpanSuggestion s2 = span(1, 2, "doc1", 0, 5);
+        SpanSuggestion s3 = span(1, 1, "doc2", 0, 5);
+        sut.putPredictions(asList(s1, s2, s3));
+
+        assertThat(sut.getPredictionByVID(doc1, s1.getVID())).containsSame(s1);
+        assertThat(sut.getPredictionByVID(doc1, s2.getVID())).containsSame(s2);
+        assertThat(sut.getPredictionByVID(doc1, new VID(1L, 3, 1))).isEmpty();
+    }
+
+    @Test
+    public void thatPuttingASuggestionWithTheSameIdReplacesIt()
+    {
+        SpanSuggestion s1 = span(1, 1, "doc1", 0, 5);
+        SpanSuggestion s1b = span(1, 1, "doc1", 10, 15);
+        sut.putPredictions(asList(s1));
+        sut.putPredictions(asList(s1b));
+
+        assertThat(sut.getPredictionByVID(doc1, s1.getVID())).containsSame(s1b);
+        assertThat(sut.getPredictionsByDocument("doc1")).containsExactly(s1b);
+        assertThat(sut.getPredictionsByTokenAndFeature("doc1", layer, 0, 5, "value")).isEmpty();
+        assertThat(sut.getPredictionsByTokenAndFeature("doc1", layer, 10, 15, "value"))
+                .containsExactly(s1b);
+    }
+
+    @Test
+    public void thatRemovingPredictionsOfRecommenderUpdatesAllIndexes()
+    {
+        Recommender rec1 = new Recommender();
+        rec1.setId(1L);
+        SpanSuggestion s1 = span(1, 1, "doc1", 0, 5);
+        SpanSuggestion s2 = span(2, 1, "doc2", 0, 5);
+        SpanSuggestion s3 = span(1, 2, "doc1", 0, 5);
+        sut.putPredictions(asList(s1, s2, s3));
+
+        sut.removePredictions(1L);
+
+        assertThat(sut.getPredictionByVID(doc1, s1.getVID())).isEmpty();
+        assertThat(sut.getPredictionsByRecommenderAndDocument(rec1, "doc1")).isEmpty();
+        assertThat(sut.getPredictionsByDocument("doc2")).isEmpty();
+        assertThat(sut.getPredictionsByTokenAndFeature("doc1", layer, 0, 5, "value"))
+                .containsExactly(s3);
+        assertThat(sut.getGroupedPredictions()).hasSize(1);
+
+        sut.removePredictions(2L);
+
+        assertThat(sut.hasPredictions()).isFalse();
+    }
+
+    private static SpanSuggestion span(int aId, long aRecommenderId, String aDocument, int aBegin,
+            int aEnd)
+    {
+        return new SpanSuggestion(aId, aRecommenderId, "rec" + aRecommenderId, 1, "value",
+                aDocument, aBegin, aEnd, "x", "X", "X", 0.1, null);
+    }
+}
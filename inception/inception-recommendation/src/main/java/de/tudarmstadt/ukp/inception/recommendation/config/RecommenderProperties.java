@@ -22,4 +22,14 @@ public interface RecommenderProperties
     boolean isActionButtonsEnabled();
 
     boolean isEnabled();
+
+    /**
+     * @return the number of documents for which predictions are computed in parallel.
+     */
+    int getPredictionParallelism();
+
+    /**
+     * @return the maximum number of worker threads shared by all prediction runs.
+     */
+    int getPredictionPoolSize();
 }
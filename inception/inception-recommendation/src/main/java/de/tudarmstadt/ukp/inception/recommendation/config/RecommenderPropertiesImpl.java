@@ -30,6 +30,8 @@ public class RecommenderPropertiesImpl
 {
     private boolean enabled;
     private boolean actionButtonsEnabled;
+    private int predictionParallelism = 1;
+    private int predictionPoolSize = Runtime.getRuntime().availableProcessors();
 
     @Override
     public boolean isEnabled()
@@ -52,4 +54,26 @@ public class RecommenderPropertiesImpl
     {
         actionButtonsEnabled = aActionButtonsEnabled;
     }
+
+    @Override
+    public int getPredictionParallelism()
+    {
+        return predictionParallelism;
+    }
+
+    public void setPredictionParallelism(int aPredictionParallelism)
+    {
+        predictionParallelism = aPredictionParallelism;
+    }
+
+    @Override
+    public int getPredictionPoolSize()
+    {
+        return predictionPoolSize;
+    }
+
+    public void setPredictionPoolSize(int aPredictionPoolSize)
+    {
+        predictionPoolSize = aPredictionPoolSize;
+    }
 }
@@ -72,11 +72,13 @@ public class RecommenderServiceAutoConfiguration
             UserDao aUserRepository, RecommenderFactoryRegistry aRecommenderFactoryRegistry,
             SchedulingService aSchedulingService, AnnotationSchemaService aAnnoService,
             DocumentService aDocumentService, LearningRecordService aLearningRecordService,
-            ProjectService aProjectService, ApplicationEventPublisher aApplicationEventPublisher)
+            ProjectService aProjectService, ApplicationEventPublisher aApplicationEventPublisher,
+            RecommenderProperties aProperties)
     {
         return new RecommendationServiceImpl(aSessionRegistry, aUserRepository,
                 aRecommenderFactoryRegistry, aSchedulingService, aAnnoService, aDocumentService,
-                aLearningRecordService, aProjectService, entityManager, aApplicationEventPublisher);
+                aLearningRecordService, aProjectService, entityManager, aApplicationEventPublisher,
+                aProperties);
     }
 
     @Bean
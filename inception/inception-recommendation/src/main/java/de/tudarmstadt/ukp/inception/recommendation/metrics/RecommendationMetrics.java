@@ -27,4 +27,14 @@ public interface RecommendationMetrics
      * Retrieve the total number of currently enabled recommenders
      */
     public long getEnabledRecommendersTotal();
+
+    /**
+     * Retrieve the total number of documents for which predictions have been computed
+     */
+    public long getPredictedDocumentsTotal();
+
+    /**
+     * Retrieve the prediction throughput (documents per second) of the last prediction run
+     */
+    public double getPredictionDocumentsPerSecond();
 }
@@ -52,4 +52,18 @@ public class RecommendationMetricsImpl
         return recService.countEnabledRecommenders();
     }
 
+    @Override
+    @ManagedAttribute
+    public long getPredictedDocumentsTotal()
+    {
+        return recService.getPredictedDocumentsTotal();
+    }
+
+    @Override
+    @ManagedAttribute
+    public double getPredictionDocumentsPerSecond()
+    {
+        return recService.getPredictionDocumentsPerSecond();
+    }
+
 }
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.migration;
+
+import static java.lang.String.format;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
+import de.tudarmstadt.ukp.inception.recommendation.log.RecommenderEvaluationResultEventAdapter.Details;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * INCEpTION 0.21.0 stores the scores of the recommender evaluations in a dedicated table instead of
+ * reading them back from the event log for the learning curve. This copies the scores which have
+ * been logged before, skipping events of recommenders which no longer exist.
+ */
+public class CopyEvaluationScoresFromEventLog
+    implements CustomTaskChange
+{
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private int changed = 0;
+
+    @Override
+    public String getConfirmationMessage()
+    {
+        return format("[%d] recommender evaluation scores were copied.", changed);
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor aArg0)
+    {
+        // Nothing to do
+    }
+
+    @Override
+    public void setUp() throws SetupException
+    {
+        changed = 0;
+    }
+
+    @Override
+    public ValidationErrors validate(Database aArg0)
+    {
+        // Nothing to do
+        return null;
+    }
+
+    @Override
+    public void execute(Database aDatabase) throws CustomChangeException
+    {
+        JdbcConnection dbConn = (JdbcConnection) aDatabase.getConnection();
+        try {
+            PreparedStatement selection = dbConn.prepareStatement(String.join("\n", //
+                    "SELECT user, created, details", //
+                    "FROM logged_event", //
+                    "WHERE event = 'RecommenderEvaluationResultEvent'"));
+
+            // Only copy the score if the recommender still exists
+            PreparedStatement insertion = dbConn.prepareStatement(String.join("\n", //
+                    "INSERT INTO recommender_evaluation_score", //
+                    "(recommender, user, created, accuracy_score, precision_score, "
+                            + "recall_score, f1_score)", //
+                    "SELECT id, ?, ?, ?, ?, ?, ? FROM recommender WHERE id = ?"));
+
+            try (ResultSet events = selection.executeQuery()) {
+                while (events.next()) {
+                    Details details;
+                    try {
+                        details = JSONUtil.fromJsonString(Details.class, events.getString(3));
+                    }
+                    catch (Exception e) {
+                        log.debug("Unable to parse evaluation event details - skipping", e);
+                        continue;
+                    }
+
+                    if (details == null || details.recommenderId == null) {
+                        continue;
+                    }
+
+                    insertion.setString(1, events.getString(1));
+                    insertion.setTimestamp(2, events.getTimestamp(2));
+                    setScore(insertion, 3, details.accuracy);
+                    setScore(insertion, 4, details.precision);
+                    setScore(insertion, 5, details.recall);
+                    setScore(insertion, 6, details.f1);
+                    insertion.setLong(7, details.recommenderId);
+                    changed += insertion.executeUpdate();
+                }
+            }
+
+            if (changed > 0) {
+                log.info("DATABASE UPGRADE PERFORMED: [{}] recommender evaluation scores were "
+                        + "copied from the event log.", changed);
+            }
+        }
+        catch (Exception e) {
+            // The scores are only used for the learning curve - failing to copy them must not
+            // prevent the application from starting
+            log.warn("Unable to copy recommender evaluation scores from the event log", e);
+        }
+    }
+
+    private static void setScore(PreparedStatement aStmt, int aIndex, double aScore)
+        throws SQLException
+    {
+        if (Double.isFinite(aScore)) {
+            aStmt.setDouble(aIndex, aScore);
+        }
+        else {
+            aStmt.setNull(aIndex, Types.DOUBLE);
+        }
+    }
+}
@@ -19,23 +19,39 @@ package de.tudarmstadt.ukp.inception.recommendation.service;
 
 import static de.tudarmstadt.ukp.inception.recommendation.api.model.SuggestionType.RELATION;
 import static de.tudarmstadt.ukp.inception.recommendation.api.model.SuggestionType.SPAN;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 
 import org.springframework.context.event.EventListener;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterDocumentResetEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeDocumentRemovedEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeProjectRemovedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
 import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.inception.recommendation.api.LearningRecordService;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecord;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordChangeLocation;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordIndex;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordType;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.RelationPosition;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.RelationSuggestion;
@@ -54,9 +70,21 @@ public class LearningRecordServiceImpl
 {
     private final EntityManager entityManager;
 
+    // Indexes are only updated while they are cached - otherwise they are loaded fresh from the
+    // database on the next access. Changes are applied once they have been committed.
+    private final Cache<IndexKey, LearningRecordIndex> recordIndexes;
+
+    // Applying a change to an index bumps its generation. An index which is loaded while a change
+    // is committed may or may not contain the change, so it is only cached if the generation did
+    // not change while it was loaded.
+    private final ConcurrentMap<IndexKey, AtomicLong> loadGenerations = new ConcurrentHashMap<>();
+
     public LearningRecordServiceImpl(EntityManager aEntityManager)
     {
         entityManager = aEntityManager;
+        recordIndexes = Caffeine.newBuilder() //
+                .expireAfterWrite(30, MINUTES) //
+                .build();
     }
 
     @Transactional
@@ -68,6 +96,28 @@ public class LearningRecordServiceImpl
         deleteRecords(currentDocument, currentUser);
     }
 
+    @EventListener
+    public void beforeDocumentRemoved(BeforeDocumentRemovedEvent aEvent)
+    {
+        // The index refers to documents by name, so the records of a removed document must not
+        // remain in the index - otherwise they would apply to a new document with the same name.
+        // The records themselves are removed from the database along with the document.
+        SourceDocument document = aEvent.getDocument();
+        Long projectId = getProjectId(document.getProject());
+        updateRecordIndexes(key -> Objects.equals(key.projectId, projectId),
+                index -> index.removeIf(r -> isInDocument(r, document)));
+    }
+
+    @EventListener
+    public void beforeProjectRemoved(BeforeProjectRemovedEvent aEvent)
+    {
+        // The indexes of a removed project are never accessed again
+        Long projectId = getProjectId(aEvent.getProject());
+        Predicate<IndexKey> keys = key -> Objects.equals(key.projectId, projectId);
+        recordIndexes.asMap().keySet().removeIf(keys);
+        loadGenerations.keySet().removeIf(keys);
+    }
+
     @Transactional
     @Override
     public void logSpanRecord(SourceDocument aDocument, String aUsername,
@@ -162,6 +212,8 @@ public class LearningRecordServiceImpl
         record.setChangeLocation(aLocation);
         record.setAnnotationFeature(aFeature);
 
+        updateRecordIndex(aUsername, aLayer, index -> index.removeDuplicates(record));
+
         create(record);
     }
 
@@ -192,6 +244,34 @@ public class LearningRecordServiceImpl
         return listRecords(aUsername, aLayer, 0);
     }
 
+    @Transactional
+    @Override
+    public LearningRecordIndex getRecordIndex(String aUsername, AnnotationLayer aLayer)
+    {
+        IndexKey key = IndexKey.of(aUsername, aLayer);
+
+        LearningRecordIndex index = recordIndexes.getIfPresent(key);
+        if (index != null) {
+            return index;
+        }
+
+        AtomicLong generation = loadGenerations.computeIfAbsent(key, k -> new AtomicLong());
+        long loadGeneration = generation.get();
+
+        LearningRecordIndex loadedIndex = new LearningRecordIndex(listRecords(aUsername, aLayer));
+
+        LearningRecordIndex cachedIndex = recordIndexes.asMap().compute(key,
+                (k, existingIndex) -> {
+                    if (existingIndex != null) {
+                        return existingIndex;
+                    }
+
+                    return generation.get() == loadGeneration ? loadedIndex : null;
+                });
+
+        return cachedIndex != null ? cachedIndex : loadedIndex;
+    }
+
     @Transactional
     @Override
     public LearningRecord getRecordById(long recordId)
@@ -211,6 +291,11 @@ public class LearningRecordServiceImpl
                 + "= :user";
         entityManager.createQuery(sql).setParameter("document", document).setParameter("user", user)
                 .executeUpdate();
+
+        Long projectId = getProjectId(document.getProject());
+        updateRecordIndexes(
+                key -> key.user.equals(user) && Objects.equals(key.projectId, projectId),
+                index -> index.removeIf(r -> isInDocument(r, document)));
     }
 
     @Override
@@ -219,6 +304,12 @@ public class LearningRecordServiceImpl
     {
         entityManager.persist(learningRecord);
         entityManager.flush();
+
+        // The index may already contain the record if it was loaded in this transaction
+        updateRecordIndex(learningRecord.getUser(), learningRecord.getLayer(), index -> {
+            index.remove(learningRecord);
+            index.add(learningRecord);
+        });
     }
 
     @Override
@@ -227,6 +318,11 @@ public class LearningRecordServiceImpl
     {
         entityManager.merge(learningRecord);
         entityManager.flush();
+
+        updateRecordIndex(learningRecord.getUser(), learningRecord.getLayer(), index -> {
+            index.remove(learningRecord);
+            index.add(learningRecord);
+        });
     }
 
     @Override
@@ -235,6 +331,9 @@ public class LearningRecordServiceImpl
     {
         entityManager.remove(entityManager.contains(learningRecord) ? learningRecord
                 : entityManager.merge(learningRecord));
+
+        updateRecordIndex(learningRecord.getUser(), learningRecord.getLayer(),
+                index -> index.remove(learningRecord));
     }
 
     @Override
@@ -278,5 +377,115 @@ public class LearningRecordServiceImpl
                 .setParameter("layer", aLayer) //
                 .setParameter("action", LearningRecordType.SKIPPED) //
                 .executeUpdate();
+
+        updateRecordIndex(aUser.getUsername(), aLayer,
+                index -> index.removeIf(r -> r.getUserAction() == LearningRecordType.SKIPPED));
+    }
+
+    private void updateRecordIndex(String aUsername, AnnotationLayer aLayer,
+            Consumer<LearningRecordIndex> aUpdate)
+    {
+        if (aUsername == null || aLayer == null || aLayer.getId() == null) {
+            return;
+        }
+
+        IndexKey key = IndexKey.of(aUsername, aLayer);
+        updateRecordIndexes(key::equals, aUpdate);
+    }
+
+    private void updateRecordIndexes(Predicate<IndexKey> aKeys,
+            Consumer<LearningRecordIndex> aUpdate)
+    {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applyRecordIndexUpdate(aKeys, aUpdate);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+        {
+            @Override
+            public void afterCommit()
+            {
+                applyRecordIndexUpdate(aKeys, aUpdate);
+            }
+
+            @Override
+            public void afterCompletion(int aStatus)
+            {
+                // An index loaded in this transaction may contain changes which did not go through
+                if (aStatus != STATUS_COMMITTED) {
+                    recordIndexes.asMap().keySet().removeIf(aKeys);
+                }
+            }
+        });
+    }
+
+    private void applyRecordIndexUpdate(Predicate<IndexKey> aKeys,
+            Consumer<LearningRecordIndex> aUpdate)
+    {
+        // Every index which is cached or being loaded has a generation
+        loadGenerations.forEach((key, generation) -> {
+            if (!aKeys.test(key)) {
+                return;
+            }
+
+            // Bump the generation first so that an index which is being loaded is not cached
+            // after we checked whether the index is cached
+            generation.incrementAndGet();
+            recordIndexes.asMap().computeIfPresent(key, (k, index) -> {
+                aUpdate.accept(index);
+                return index;
+            });
+        });
+    }
+
+    private static boolean isInDocument(LearningRecord aRecord, SourceDocument aDocument)
+    {
+        return aRecord.getSourceDocument() != null
+                && Objects.equals(aRecord.getSourceDocument().getId(), aDocument.getId());
+    }
+
+    private static Long getProjectId(Project aProject)
+    {
+        return aProject != null ? aProject.getId() : null;
+    }
+
+    private static final class IndexKey
+    {
+        private final String user;
+        private final Long projectId;
+        private final long layerId;
+
+        IndexKey(String aUser, Long aProjectId, long aLayerId)
+        {
+            user = aUser;
+            projectId = aProjectId;
+            layerId = aLayerId;
+        }
+
+        static IndexKey of(String aUser, AnnotationLayer aLayer)
+        {
+            return new IndexKey(aUser, getProjectId(aLayer.getProject()), aLayer.getId());
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            IndexKey other = (IndexKey) o;
+            return layerId == other.layerId && user.equals(other.user)
+                    && Objects.equals(projectId, other.projectId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(user, projectId, layerId);
+        }
     }
 }
@@ -25,11 +25,13 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUt
 import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.isEquivalentSpanAnnotation;
 import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.EXCLUSIVE_WRITE_ACCESS;
 import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.SHARED_READ_ONLY_ACCESS;
+import static de.tudarmstadt.ukp.clarin.webanno.support.logging.MDCContext.withCallerContext;
 import static de.tudarmstadt.ukp.inception.recommendation.api.model.AnnotationSuggestion.FLAG_OVERLAP;
 import static de.tudarmstadt.ukp.inception.recommendation.api.model.AnnotationSuggestion.FLAG_REJECTED;
 import static de.tudarmstadt.ukp.inception.recommendation.api.model.AnnotationSuggestion.FLAG_SKIPPED;
 import static de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineCapability.TRAINING_NOT_SUPPORTED;
 import static java.util.Comparator.comparingInt;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.toList;
 import static org.apache.uima.fit.util.CasUtil.getType;
 import static org.apache.uima.fit.util.CasUtil.select;
@@ -39,16 +41,28 @@ import static org.apache.uima.fit.util.CasUtil.selectCovered;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -60,6 +74,7 @@ import org.apache.commons.collections4.multimap.HashSetValuedHashMap;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Feature;
@@ -78,6 +93,7 @@ import org.apache.wicket.request.cycle.PageRequestHandlerTracker;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
@@ -121,9 +137,10 @@ import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.inception.recommendation.api.LearningRecordService;
 import de.tudarmstadt.ukp.inception.recommendation.api.RecommendationService;
 import de.tudarmstadt.ukp.inception.recommendation.api.RecommenderFactoryRegistry;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.AnnotationSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.EvaluatedRecommender;
-import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecord;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordIndex;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordType;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Offset;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Position;
@@ -131,6 +148,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.model.Predictions;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Preferences;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Progress;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.RecommenderEvaluationScore;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.RelationPosition;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.RelationSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.SpanSuggestion;
@@ -140,8 +158,10 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineFactory;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderProperties;
 import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderServiceAutoConfiguration;
 import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderDeletedEvent;
+import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderEvaluationResultEvent;
 import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderUpdatedEvent;
 import de.tudarmstadt.ukp.inception.recommendation.tasks.PredictionTask;
 import de.tudarmstadt.ukp.inception.recommendation.tasks.SelectionTask;
@@ -158,7 +178,7 @@ import de.tudarmstadt.ukp.inception.scheduling.Task;
  * </p>
  */
 public class RecommendationServiceImpl
-    implements RecommendationService
+    implements RecommendationService, DisposableBean
 {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -177,6 +197,13 @@ public class RecommendationServiceImpl
     private final LearningRecordService learningRecordService;
     private final ProjectService projectService;
     private final ApplicationEventPublisher applicationEventPublisher;
+    private final RecommenderProperties properties;
+
+    private final ExecutorService predictionExecutor;
+    private final Deque<CAS> predictionCasPool;
+    private final int predictionCasPoolLimit;
+    private final AtomicLong predictedDocumentsTotal = new AtomicLong();
+    private volatile double predictionDocumentsPerSecond;
 
     private final ConcurrentMap<RecommendationStateKey, AtomicInteger> trainingTaskCounter;
     private final ConcurrentMap<RecommendationStateKey, RecommendationState> states;
@@ -205,7 +232,8 @@ public class RecommendationServiceImpl
             SchedulingService aSchedulingService, AnnotationSchemaService aAnnoService,
             DocumentService aDocumentService, LearningRecordService aLearningRecordService,
             ProjectService aProjectService, EntityManager aEntityManager,
-            ApplicationEventPublisher aApplicationEventPublisher)
+            ApplicationEventPublisher aApplicationEventPublisher,
+            RecommenderProperties aProperties)
     {
         sessionRegistry = aSessionRegistry;
         userRepository = aUserRepository;
@@ -217,6 +245,17 @@ public class RecommendationServiceImpl
         projectService = aProjectService;
         entityManager = aEntityManager;
         applicationEventPublisher = aApplicationEventPublisher;
+        properties = aProperties;
+
+        int poolSize = Math.max(1, properties != null ? properties.getPredictionPoolSize() : 1);
+        predictionExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60L, SECONDS,
+                new LinkedBlockingQueue<>(), new BasicThreadFactory.Builder() //
+                        .daemon(true) //
+                        .namingPattern("prediction-worker-%d") //
+                        .build());
+        ((ThreadPoolExecutor) predictionExecutor).allowCoreThreadTimeOut(true);
+        predictionCasPool = new ConcurrentLinkedDeque<>();
+        predictionCasPoolLimit = poolSize + 1;
 
         trainingTaskCounter = new ConcurrentHashMap<>();
         states = new ConcurrentHashMap<>();
@@ -230,12 +269,19 @@ public class RecommendationServiceImpl
     {
         this(aSessionRegistry, aUserRepository, aRecommenderFactoryRegistry, aSchedulingService,
                 aAnnoService, aDocumentService, aLearningRecordService, (ProjectService) null,
-                aEntityManager, null);
+                aEntityManager, null, null);
     }
 
     public RecommendationServiceImpl(EntityManager aEntityManager)
     {
-        this(null, null, null, null, null, null, null, (ProjectService) null, aEntityManager, null);
+        this(null, null, null, null, null, null, null, (ProjectService) null, aEntityManager, null,
+                null);
+    }
+
+    @Override
+    public void destroy()
+    {
+        predictionExecutor.shutdownNow();
     }
 
     @Override
@@ -470,6 +516,24 @@ public class RecommendationServiceImpl
                 .getResultList();
     }
 
+    @Override
+    @Transactional
+    public List<RecommenderEvaluationScore> listEvaluationScores(Recommender aRecommender,
+            String aUser, int aMaxSize)
+    {
+        String query = String.join("\n", //
+                "FROM RecommenderEvaluationScore WHERE ", //
+                "recommender = :recommender AND", //
+                "user = :user", //
+                "ORDER BY created DESC, id DESC");
+
+        return entityManager.createQuery(query, RecommenderEvaluationScore.class) //
+                .setParameter("recommender", aRecommender) //
+                .setParameter("user", aUser) //
+                .setMaxResults(aMaxSize) //
+                .getResultList();
+    }
+
     @EventListener
     public void onDocumentOpened(DocumentOpenedEvent aEvent)
     {
@@ -590,6 +654,35 @@ public class RecommendationServiceImpl
         removePredictions(aEvent.getRecommender());
     }
 
+    @EventListener
+    @Transactional
+    public void onRecommenderEvaluationResult(RecommenderEvaluationResultEvent aEvent)
+    {
+        // The recommender may have been deleted while it was being evaluated
+        Recommender recommender = entityManager.find(Recommender.class,
+                aEvent.getRecommender().getId());
+        if (recommender == null) {
+            return;
+        }
+
+        EvaluationResult result = aEvent.getResult();
+
+        RecommenderEvaluationScore score = new RecommenderEvaluationScore();
+        score.setRecommender(recommender);
+        score.setUser(aEvent.getUser());
+        score.setCreated(new Date(aEvent.getTimestamp()));
+        score.setAccuracy(finiteOrNull(result.computeAccuracyScore()));
+        score.setPrecision(finiteOrNull(result.computePrecisionScore()));
+        score.setRecall(finiteOrNull(result.computeRecallScore()));
+        score.setF1(finiteOrNull(result.computeF1Score()));
+        entityManager.persist(score);
+    }
+
+    private static Double finiteOrNull(double aValue)
+    {
+        return Double.isFinite(aValue) ? aValue : null;
+    }
+
     @EventListener
     public void onDocumentCreated(AfterDocumentCreatedEvent aEvent)
     {
@@ -1164,246 +1257,378 @@ public class RecommendationServiceImpl
     public Predictions computePredictions(User aUser, Project aProject,
             List<SourceDocument> aDocuments, List<SourceDocument> aInherit)
     {
-        CAS predictionCas = null;
-        try {
-            String username = aUser.getUsername();
+        String username = aUser.getUsername();
+
+        Predictions activePredictions = getPredictions(aUser, aProject);
+        Predictions predictions = new Predictions(aUser, aProject);
+
+        // Inherit at the document level. If inheritance at a recommender level is possible,
+        // this is done below.
+        if (activePredictions != null) {
+            for (SourceDocument document : aInherit) {
+                if (activePredictions.hasRunPredictionOnDocument(document)) {
+                    List<AnnotationSuggestion> suggestions = inheritSuggestions(aProject,
+                            activePredictions, document, username);
+                    predictions.putPredictions(suggestions);
+                    predictions.markDocumentAsPredictionCompleted(document);
+                }
+            }
+        }
+
+        List<AnnotationLayer> layers = annoService.listAnnotationLayer(aProject);
+        Queue<SourceDocument> pendingDocuments = new ConcurrentLinkedQueue<>(aDocuments);
+        AtomicInteger completedDocuments = new AtomicInteger();
+        int parallelism = Math.max(1,
+                Math.min(getPredictionParallelism(), aDocuments.size()));
+
+        long startTime = System.currentTimeMillis();
+
+        // Generate new predictions or inherit at the recommender level. Additional workers pull
+        // documents from the shared queue. The calling thread always takes part as well, so the
+        // run makes progress even if all pooled workers are busy with the runs of other users.
+        // The workers need the logging context of the caller, e.g. for the repository path
+        List<Future<?>> workers = new ArrayList<>();
+        List<AtomicBoolean> workerClaims = new ArrayList<>();
+        for (int i = 1; i < parallelism; i++) {
+            AtomicBoolean claim = new AtomicBoolean();
+            workerClaims.add(claim);
+            workers.add(predictionExecutor.submit(withCallerContext(() -> {
+                if (!claim.compareAndSet(false, true)) {
+                    return;
+                }
+
+                try (CasStorageSession session = CasStorageSession.open()) {
+                    predictDocuments(aUser, aProject, layers, pendingDocuments, activePredictions,
+                            predictions, completedDocuments);
+                }
+            })));
+        }
+
+        boolean ok = predictDocuments(aUser, aProject, layers, pendingDocuments,
+                activePredictions, predictions, completedDocuments);
+
+        for (int i = 0; i < workers.size(); i++) {
+            Future<?> worker = workers.get(i);
 
-            Predictions activePredictions = getPredictions(aUser, aProject);
-            Predictions predictions = new Predictions(aUser, aProject);
+            // Workers which did not even start yet are no longer needed because the calling
+            // thread has already drained the queue. Note that we cannot rely on the result of
+            // Future.cancel() here because it also succeeds for a worker which is still running.
+            if (workerClaims.get(i).compareAndSet(false, true)) {
+                worker.cancel(false);
+                continue;
+            }
 
             try {
-                predictionCas = WebAnnoCasUtil.createCas();
-                CasStorageSession.get().add(PREDICTION_CAS, EXCLUSIVE_WRITE_ACCESS, predictionCas);
+                worker.get();
             }
-            catch (ResourceInitializationException e) {
-                predictions.log(LogMessage.error(this,
-                        "Cannot create prediction CAS, stopping predictions!"));
-                log.error("Cannot create prediction CAS, stopping predictions!");
-                return predictions;
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("[{}]: Interrupted while waiting for prediction worker", username);
+                ok = false;
             }
+            catch (ExecutionException e) {
+                predictions.log(LogMessage.error(this, "Prediction worker failed: %s",
+                        e.getCause().getMessage()));
+                log.error("[{}]: Prediction worker failed", username, e.getCause());
+                ok = false;
+            }
+        }
 
-            // Inherit at the document level. If inheritance at a recommender level is possible,
-            // this is done below.
-            if (activePredictions != null) {
-                for (SourceDocument document : aInherit) {
-                    if (activePredictions.hasRunPredictionOnDocument(document)) {
-                        List<AnnotationSuggestion> suggestions = inheritSuggestions(aProject,
-                                activePredictions, document, username);
-                        predictions.putPredictions(suggestions);
-                        predictions.markDocumentAsPredictionCompleted(document);
-                    }
-                }
+        if (!ok) {
+            predictions.log(LogMessage.warn(this,
+                    "Prediction incomplete (%d of %d documents)", completedDocuments.get(),
+                    aDocuments.size()));
+            log.warn("[{}]: Prediction incomplete ({} of {} documents) in project [{}]({})",
+                    username, completedDocuments.get(), aDocuments.size(), aProject.getName(),
+                    aProject.getId());
+            return predictions;
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        double documentsPerSecond = duration > 0 ? completedDocuments.get() * 1000.0 / duration
+                : completedDocuments.get();
+        predictedDocumentsTotal.addAndGet(completedDocuments.get());
+        predictionDocumentsPerSecond = documentsPerSecond;
+
+        predictions.log(LogMessage.info(this,
+                "Prediction complete (%d documents, %.1f documents/sec, parallelism %d)",
+                completedDocuments.get(), documentsPerSecond, parallelism));
+        log.debug("Prediction complete ({} documents, {} documents/sec, parallelism {})",
+                completedDocuments.get(), String.format("%.1f", documentsPerSecond),
+                parallelism);
+
+        return predictions;
+    }
+
+    private int getPredictionParallelism()
+    {
+        if (properties == null) {
+            return 1;
+        }
+
+        return properties.getPredictionParallelism();
+    }
+
+    /**
+     * Computes predictions for documents from the given queue until the queue is empty. Each
+     * worker uses its own prediction CAS which is borrowed from a pool.
+     * 
+     * @return {@code false} if the worker could not obtain a prediction CAS.
+     */
+    private boolean predictDocuments(User aUser, Project aProject, List<AnnotationLayer> aLayers,
+            Queue<SourceDocument> aDocuments, Predictions aActivePredictions,
+            Predictions aPredictions, AtomicInteger aCompletedDocuments)
+    {
+        CAS predictionCas;
+        try {
+            predictionCas = borrowPredictionCas();
+        }
+        catch (ResourceInitializationException e) {
+            aPredictions.log(
+                    LogMessage.error(this, "Cannot create prediction CAS, stopping predictions!"));
+            log.error("Cannot create prediction CAS, stopping predictions!");
+            return false;
+        }
+
+        CasStorageSession.get().add(PREDICTION_CAS, EXCLUSIVE_WRITE_ACCESS, predictionCas);
+        try {
+            SourceDocument document;
+            while ((document = aDocuments.poll()) != null) {
+                predictDocument(aUser, aProject, aLayers, document, predictionCas,
+                        aActivePredictions, aPredictions);
+                aCompletedDocuments.incrementAndGet();
             }
+            return true;
+        }
+        finally {
+            CasStorageSession.get().remove(predictionCas);
+            returnPredictionCas(predictionCas);
+        }
+    }
 
-            // Generate new predictions or inherit at the recommender level
-            nextDocument: for (SourceDocument document : aDocuments) {
-                Optional<CAS> originalCas = Optional.empty();
-                nextLayer: for (AnnotationLayer layer : annoService
-                        .listAnnotationLayer(document.getProject())) {
-                    if (!layer.isEnabled()) {
-                        continue nextLayer;
-                    }
+    private CAS borrowPredictionCas() throws ResourceInitializationException
+    {
+        CAS cas = predictionCasPool.pollFirst();
 
-                    List<EvaluatedRecommender> recommenders = getActiveRecommenders(aUser, layer);
+        if (cas == null) {
+            return WebAnnoCasUtil.createCas();
+        }
 
-                    if (recommenders.isEmpty()) {
-                        predictions.log(LogMessage.info(this,
-                                "No active recommenders on layer [%s]", layer.getUiName()));
-                        log.trace("[{}]: No active recommenders on layer [{}]", username,
-                                layer.getUiName());
-                        continue;
-                    }
+        // The pooled CAS may have been used by another worker thread before
+        WebAnnoCasUtil.transferCasOwnershipToCurrentThread(cas);
+        return cas;
+    }
 
-                    nextRecommender: for (EvaluatedRecommender r : recommenders) {
+    private void returnPredictionCas(CAS aCas)
+    {
+        aCas.reset();
 
-                        // Make sure we have the latest recommender config from the DB - the one
-                        // from the active recommenders list may be outdated
-                        Recommender recommender;
+        if (predictionCasPool.size() < predictionCasPoolLimit) {
+            predictionCasPool.offerFirst(aCas);
+        }
+    }
 
-                        try {
-                            recommender = getRecommender(r.getRecommender().getId());
-                        }
-                        catch (NoResultException e) {
-                            predictions.log(LogMessage.info(r.getRecommender().getName(),
-                                    "Recommender no longer available... skipping"));
-                            log.info("[{}][{}]: Recommender no longer available... skipping",
-                                    username, r.getRecommender().getName());
-                            continue nextRecommender;
-                        }
+    private void predictDocument(User aUser, Project aProject, List<AnnotationLayer> aLayers,
+            SourceDocument aDocument, CAS aPredictionCas, Predictions aActivePredictions,
+            Predictions aPredictions)
+    {
+        String username = aUser.getUsername();
+        Optional<CAS> originalCas = Optional.empty();
+        nextLayer: for (AnnotationLayer layer : aLayers) {
+            if (!layer.isEnabled()) {
+                continue nextLayer;
+            }
 
-                        if (!recommender.isEnabled()) {
-                            predictions.log(LogMessage.info(r.getRecommender().getName(),
-                                    "Recommender disabled... skipping"));
-                            log.debug("[{}][{}]: Disabled - skipping", username,
-                                    r.getRecommender().getName());
-                            continue nextRecommender;
-                        }
+            List<EvaluatedRecommender> recommenders = getActiveRecommenders(aUser, layer);
 
-                        Optional<RecommenderContext> context = getContext(aUser, recommender);
-
-                        if (!context.isPresent()) {
-                            predictions.log(LogMessage.info(r.getRecommender().getName(),
-                                    "Recommender has no context... skipping"));
-                            log.info("No context available for recommender [{}]({}) for user [{}] "
-                                    + "on document [{}]({}) in project [{}]({}) - skipping recommender",
-                                    recommender.getName(), recommender.getId(), username,
-                                    document.getName(), document.getId(),
-                                    document.getProject().getName(), document.getProject().getId());
-                            continue nextRecommender;
-                        }
+            if (recommenders.isEmpty()) {
+                aPredictions.log(LogMessage.info(this,
+                        "No active recommenders on layer [%s]", layer.getUiName()));
+                log.trace("[{}]: No active recommenders on layer [{}]", username,
+                        layer.getUiName());
+                continue;
+            }
 
-                        RecommenderContext ctx = context.get();
-                        ctx.setUser(aUser);
+            nextRecommender: for (EvaluatedRecommender r : recommenders) {
 
-                        Optional<RecommendationEngineFactory<?>> maybeFactory = getRecommenderFactory(
-                                recommender);
+                // Make sure we have the latest recommender config from the DB - the one
+                // from the active recommenders list may be outdated
+                Recommender recommender;
 
-                        if (maybeFactory.isEmpty()) {
-                            log.warn("[{}][{}]: No factory found - skipping recommender", username,
-                                    r.getRecommender().getName());
-                            continue nextRecommender;
-                        }
+                try {
+                    recommender = getRecommender(r.getRecommender().getId());
+                }
+                catch (NoResultException e) {
+                    aPredictions.log(LogMessage.info(r.getRecommender().getName(),
+                            "Recommender no longer available... skipping"));
+                    log.info("[{}][{}]: Recommender no longer available... skipping",
+                            username, r.getRecommender().getName());
+                    continue nextRecommender;
+                }
 
-                        RecommendationEngineFactory<?> factory = maybeFactory.get();
-
-                        // Check that configured layer and feature are accepted
-                        // by this type of recommender
-                        if (!factory.accepts(recommender.getLayer(), recommender.getFeature())) {
-                            predictions.log(LogMessage.info(r.getRecommender().getName(),
-                                    "Recommender configured with invalid layer or feature... skipping"));
-                            log.info(
-                                    "[{}][{}]: Recommender configured with invalid layer or feature "
-                                            + "- skipping recommender",
-                                    username, r.getRecommender().getName());
-                            continue nextRecommender;
-                        }
+                if (!recommender.isEnabled()) {
+                    aPredictions.log(LogMessage.info(r.getRecommender().getName(),
+                            "Recommender disabled... skipping"));
+                    log.debug("[{}][{}]: Disabled - skipping", username,
+                            r.getRecommender().getName());
+                    continue nextRecommender;
+                }
 
-                        // We lazily load the CAS only at this point because that allows us to skip
-                        // loading the CAS entirely if there is no enabled layer or recommender.
-                        // If the CAS cannot be loaded, then we skip to the next document.
-                        if (originalCas.isEmpty()) {
-                            try {
-                                originalCas = Optional
-                                        .of(documentService.readAnnotationCas(document, username,
-                                                AUTO_CAS_UPGRADE, SHARED_READ_ONLY_ACCESS));
-                            }
-                            catch (IOException e) {
-                                predictions.log(LogMessage.error(this,
-                                        "Cannot read annotation CAS... skipping"));
-                                log.error("Cannot read annotation CAS for user [{}] of document "
-                                        + "[{}]({}) in project [{}]({}) - skipping document",
-                                        username, document.getName(), document.getId(),
-                                        document.getProject().getName(),
-                                        document.getProject().getId(), e);
-                                continue nextDocument;
-                            }
-                        }
+                Optional<RecommenderContext> context = getContext(aUser, recommender);
+
+                if (!context.isPresent()) {
+                    aPredictions.log(LogMessage.info(r.getRecommender().getName(),
+                            "Recommender has no context... skipping"));
+                    log.info("No context available for recommender [{}]({}) for user [{}] "
+                            + "on document [{}]({}) in project [{}]({}) - skipping recommender",
+                            recommender.getName(), recommender.getId(), username,
+                            aDocument.getName(), aDocument.getId(),
+                            aDocument.getProject().getName(), aDocument.getProject().getId());
+                    continue nextRecommender;
+                }
 
-                        try {
-                            RecommendationEngine engine = factory.build(recommender);
-
-                            if (!engine.isReadyForPrediction(ctx)) {
-                                predictions.log(LogMessage.info(r.getRecommender().getName(),
-                                        "Recommender context is not ready... skipping"));
-                                log.info("Recommender context [{}]({}) for user [{}] in project "
-                                        + "[{}]({}) is not ready for prediction - skipping recommender",
-                                        recommender.getName(), recommender.getId(), username,
-                                        document.getProject().getName(),
-                                        document.getProject().getId());
-
-                                // If possible, we inherit recommendations from a previous run while
-                                // the recommender is still busy
-                                if (activePredictions != null) {
-                                    List<AnnotationSuggestion> suggestions = inheritSuggestions(
-                                            originalCas.get(), recommender, activePredictions,
-                                            document, username);
-                                    if (!suggestions.isEmpty()) {
-                                        predictions.putPredictions(suggestions);
-                                    }
-
-                                    predictions.log(LogMessage.info(r.getRecommender().getName(),
-                                            "Inherited [%d] predictions from previous run",
-                                            suggestions.size()));
-                                }
+                RecommenderContext ctx = context.get();
+                ctx.setUser(aUser);
 
-                                continue nextRecommender;
-                            }
+                Optional<RecommendationEngineFactory<?>> maybeFactory = getRecommenderFactory(
+                        recommender);
 
-                            predictions.log(LogMessage.info(r.getRecommender().getName(),
-                                    "Generating predictions for layer [%s]...", layer.getUiName()));
-                            log.trace("[{}][{}]: Generating predictions for layer [{}]", username,
-                                    r.getRecommender().getName(), layer.getUiName());
-
-                            cloneAndMonkeyPatchCAS(aProject, originalCas.get(), predictionCas);
-
-                            List<AnnotationSuggestion> suggestions;
-
-                            // If the recommender is not trainable and not sensitive to annotations,
-                            // we can actually re-use the predictions.
-                            if (TRAINING_NOT_SUPPORTED.equals(engine.getTrainingCapability())
-                                    && activePredictions != null
-                                    && activePredictions.hasRunPredictionOnDocument(document)) {
-                                suggestions = inheritSuggestions(originalCas.get(),
-                                        engine.getRecommender(), activePredictions, document,
-                                        username);
-                                predictions.log(LogMessage.info(r.getRecommender().getName(),
-                                        "Inherited [%d] predictions from previous run",
-                                        suggestions.size()));
-                            }
-                            else {
-                                suggestions = generateSuggestions(ctx, engine, activePredictions,
-                                        document, originalCas.get(), predictionCas, username);
-                                predictions.log(LogMessage.info(r.getRecommender().getName(),
-                                        "Generated [%d] predictions", suggestions.size()));
-                            }
+                if (maybeFactory.isEmpty()) {
+                    log.warn("[{}][{}]: No factory found - skipping recommender", username,
+                            r.getRecommender().getName());
+                    continue nextRecommender;
+                }
 
-                            predictions.putPredictions(suggestions);
-                        }
-                        // Catching Throwable is intentional here as we want to continue the
-                        // execution even if a particular recommender fails.
-                        catch (Throwable e) {
-                            predictions.log(LogMessage.error(r.getRecommender().getName(),
-                                    "Failed: %s", e.getMessage()));
-                            log.error(
-                                    "Error applying recommender [{}]({}) for user [{}] to document "
-                                            + "[{}]({}) in project [{}]({}) - skipping recommender",
-                                    recommender.getName(), recommender.getId(), username,
-                                    document.getName(), document.getId(),
-                                    document.getProject().getName(), document.getProject().getId(),
-                                    e);
-
-                            // If there was a previous successful run of the recommender, inherit
-                            // its suggestions to avoid that all the suggestions of the recommender
-                            // simply disappear.
-                            if (activePredictions != null) {
-                                List<AnnotationSuggestion> suggestions = inheritSuggestions(
-                                        originalCas.get(), recommender, activePredictions, document,
-                                        username);
-                                if (!suggestions.isEmpty()) {
-                                    predictions.putPredictions(suggestions);
-                                }
-                                predictions.log(LogMessage.info(r.getRecommender().getName(),
-                                        "Inherited [%d] predictions from previous run",
-                                        suggestions.size()));
+                RecommendationEngineFactory<?> factory = maybeFactory.get();
+
+                // Check that configured layer and feature are accepted
+                // by this type of recommender
+                if (!factory.accepts(recommender.getLayer(), recommender.getFeature())) {
+                    aPredictions.log(LogMessage.info(r.getRecommender().getName(),
+                            "Recommender configured with invalid layer or feature... skipping"));
+                    log.info(
+                            "[{}][{}]: Recommender configured with invalid layer or feature "
+                                    + "- skipping recommender",
+                            username, r.getRecommender().getName());
+                    continue nextRecommender;
+                }
+
+                // We lazily load the CAS only at this point because that allows us to skip
+                // loading the CAS entirely if there is no enabled layer or recommender.
+                // If the CAS cannot be loaded, then we skip to the next document.
+                if (originalCas.isEmpty()) {
+                    try {
+                        originalCas = Optional
+                                .of(documentService.readAnnotationCas(aDocument, username,
+                                        AUTO_CAS_UPGRADE, SHARED_READ_ONLY_ACCESS));
+                    }
+                    catch (IOException e) {
+                        aPredictions.log(LogMessage.error(this,
+                                "Cannot read annotation CAS... skipping"));
+                        log.error("Cannot read annotation CAS for user [{}] of document "
+                                + "[{}]({}) in project [{}]({}) - skipping document",
+                                username, aDocument.getName(), aDocument.getId(),
+                                aDocument.getProject().getName(),
+                                aDocument.getProject().getId(), e);
+                        return;
+                    }
+                }
+
+                try {
+                    RecommendationEngine engine = factory.build(recommender);
+
+                    if (!engine.isReadyForPrediction(ctx)) {
+                        aPredictions.log(LogMessage.info(r.getRecommender().getName(),
+                                "Recommender context is not ready... skipping"));
+                        log.info("Recommender context [{}]({}) for user [{}] in project "
+                                + "[{}]({}) is not ready for prediction - skipping recommender",
+                                recommender.getName(), recommender.getId(), username,
+                                aDocument.getProject().getName(),
+                                aDocument.getProject().getId());
+
+                        // If possible, we inherit recommendations from a previous run while
+                        // the recommender is still busy
+                        if (aActivePredictions != null) {
+                            List<AnnotationSuggestion> suggestions = inheritSuggestions(
+                                    originalCas.get(), recommender, aActivePredictions,
+                                    aDocument, username);
+                            if (!suggestions.isEmpty()) {
+                                aPredictions.putPredictions(suggestions);
                             }
 
-                            continue nextRecommender;
+                            aPredictions.log(LogMessage.info(r.getRecommender().getName(),
+                                    "Inherited [%d] predictions from previous run",
+                                    suggestions.size()));
                         }
+
+                        continue nextRecommender;
                     }
-                }
 
-                // When all recommenders have completed on the document, we mark it as "complete"
-                predictions.markDocumentAsPredictionCompleted(document);
-            }
+                    aPredictions.log(LogMessage.info(r.getRecommender().getName(),
+                            "Generating predictions for layer [%s]...", layer.getUiName()));
+                    log.trace("[{}][{}]: Generating predictions for layer [{}]", username,
+                            r.getRecommender().getName(), layer.getUiName());
+
+                    cloneAndMonkeyPatchCAS(aProject, originalCas.get(), aPredictionCas);
+
+                    List<AnnotationSuggestion> suggestions;
+
+                    // If the recommender is not trainable and not sensitive to annotations,
+                    // we can actually re-use the predictions.
+                    if (TRAINING_NOT_SUPPORTED.equals(engine.getTrainingCapability())
+                            && aActivePredictions != null
+                            && aActivePredictions.hasRunPredictionOnDocument(aDocument)) {
+                        suggestions = inheritSuggestions(originalCas.get(),
+                                engine.getRecommender(), aActivePredictions, aDocument,
+                                username);
+                        aPredictions.log(LogMessage.info(r.getRecommender().getName(),
+                                "Inherited [%d] predictions from previous run",
+                                suggestions.size()));
+                    }
+                    else {
+                        suggestions = generateSuggestions(ctx, engine, aActivePredictions,
+                                aDocument, originalCas.get(), aPredictionCas, username);
+                        aPredictions.log(LogMessage.info(r.getRecommender().getName(),
+                                "Generated [%d] predictions", suggestions.size()));
+                    }
 
-            predictions.log(LogMessage.info(this, "Prediction complete"));
-            log.debug("Prediction complete");
+                    aPredictions.putPredictions(suggestions);
+                }
+                // Catching Throwable is intentional here as we want to continue the
+                // execution even if a particular recommender fails.
+                catch (Throwable e) {
+                    aPredictions.log(LogMessage.error(r.getRecommender().getName(),
+                            "Failed: %s", e.getMessage()));
+                    log.error(
+                            "Error applying recommender [{}]({}) for user [{}] to document "
+                                    + "[{}]({}) in project [{}]({}) - skipping recommender",
+                            recommender.getName(), recommender.getId(), username,
+                            aDocument.getName(), aDocument.getId(),
+                            aDocument.getProject().getName(), aDocument.getProject().getId(),
+                            e);
+
+                    // If there was a previous successful run of the recommender, inherit
+                    // its suggestions to avoid that all the suggestions of the recommender
+                    // simply disappear.
+                    if (aActivePredictions != null) {
+                        List<AnnotationSuggestion> suggestions = inheritSuggestions(
+                                originalCas.get(), recommender, aActivePredictions, aDocument,
+                                username);
+                        if (!suggestions.isEmpty()) {
+                            aPredictions.putPredictions(suggestions);
+                        }
+                        aPredictions.log(LogMessage.info(r.getRecommender().getName(),
+                                "Inherited [%d] predictions from previous run",
+                                suggestions.size()));
+                    }
 
-            return predictions;
-        }
-        finally {
-            CasStorageSession.get().remove(predictionCas);
+                    continue nextRecommender;
+                }
+            }
         }
+
+        // When all recommenders have completed on the document, we mark it as "complete"
+        aPredictions.markDocumentAsPredictionCompleted(aDocument);
     }
 
     /**
@@ -1715,7 +1940,8 @@ public class RecommendationServiceImpl
                 .collect(toList());
 
         // Get all the skipped/rejected entries for the current layer
-        List<LearningRecord> recordedAnnotations = learningRecordService.listRecords(aUser, aLayer);
+        LearningRecordIndex recordedAnnotations = learningRecordService.getRecordIndex(aUser,
+                aLayer);
 
         for (AnnotationFeature feature : annoService.listSupportedFeatures(aLayer)) {
             Feature feat = type.getFeatureByBaseName(feature.getName());
@@ -1878,14 +2104,8 @@ public class RecommendationServiceImpl
                 .collect(toList());
 
         // Get previously rejected suggestions
-        MultiValuedMap<Position, LearningRecord> groupedRecordedAnnotations = new ArrayListValuedHashMap<>();
-        for (LearningRecord learningRecord : learningRecordService.listRecords(aUser, aLayer)) {
-            RelationPosition relationPosition = new RelationPosition(
-                    learningRecord.getOffsetSourceBegin(), learningRecord.getOffsetSourceEnd(),
-                    learningRecord.getOffsetTargetBegin(), learningRecord.getOffsetTargetEnd());
-
-            groupedRecordedAnnotations.put(relationPosition, learningRecord);
-        }
+        LearningRecordIndex recordedAnnotations = learningRecordService.getRecordIndex(aUser,
+                aLayer);
 
         for (AnnotationFeature feature : annoService.listSupportedFeatures(aLayer)) {
             Feature feat = type.getFeatureByBaseName(feature.getName());
@@ -1915,13 +2135,9 @@ public class RecommendationServiceImpl
                 }
 
                 // Hide previously rejected suggestions
-                for (LearningRecord learningRecord : groupedRecordedAnnotations.get(position)) {
-                    for (RelationSuggestion suggestion : group) {
-                        if (suggestion.labelEquals(learningRecord.getAnnotation())) {
-                            hideSuggestion(suggestion, learningRecord.getUserAction());
-                        }
-
-                    }
+                for (RelationSuggestion suggestion : group) {
+                    recordedAnnotations.getUserAction(suggestion)
+                            .ifPresent(action -> hideSuggestion(suggestion, action));
                 }
             }
         }
@@ -1946,17 +2162,11 @@ public class RecommendationServiceImpl
     }
 
     private void hideSuggestionsRejectedOrSkipped(SpanSuggestion aSuggestion,
-            List<LearningRecord> aRecordedRecommendations)
+            LearningRecordIndex aRecordedRecommendations)
     {
         // If it was rejected or skipped, hide it
-        for (LearningRecord record : aRecordedRecommendations) {
-            boolean isAtTheSamePlace = record.getOffsetBegin() == aSuggestion.getBegin()
-                    && record.getOffsetEnd() == aSuggestion.getEnd();
-            if (isAtTheSamePlace && aSuggestion.labelEquals(record.getAnnotation())) {
-                hideSuggestion(aSuggestion, record.getUserAction());
-                return;
-            }
-        }
+        aRecordedRecommendations.getUserAction(aSuggestion)
+                .ifPresent(action -> hideSuggestion(aSuggestion, action));
     }
 
     @Nullable
@@ -2093,6 +2303,18 @@ public class RecommendationServiceImpl
                 .count();
     }
 
+    @Override
+    public long getPredictedDocumentsTotal()
+    {
+        return predictedDocumentsTotal.get();
+    }
+
+    @Override
+    public double getPredictionDocumentsPerSecond()
+    {
+        return predictionDocumentsPerSecond;
+    }
+
     @Override
     public Progress getProgressTowardsNextEvaluation(User aUser, Project aProject)
     {
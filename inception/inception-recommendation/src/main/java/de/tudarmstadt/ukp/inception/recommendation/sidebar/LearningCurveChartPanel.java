@@ -17,17 +17,13 @@
  */
 package de.tudarmstadt.ukp.inception.recommendation.sidebar;
 
-import static de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil.fromJsonString;
 import static org.apache.commons.lang3.StringUtils.substring;
 
-import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -46,11 +42,9 @@ import org.wicketstuff.event.annotation.OnEvent;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.model.AnnotatorState;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.event.RenderAnnotationsEvent;
-import de.tudarmstadt.ukp.inception.log.EventRepository;
-import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
 import de.tudarmstadt.ukp.inception.recommendation.api.RecommendationService;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
-import de.tudarmstadt.ukp.inception.recommendation.log.RecommenderEvaluationResultEventAdapter.Details;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.RecommenderEvaluationScore;
 import de.tudarmstadt.ukp.inception.recommendation.model.LearningCurve;
 import de.tudarmstadt.ukp.inception.recommendation.model.RecommenderEvaluationScoreMetricEnum;
 
@@ -65,7 +59,6 @@ public class LearningCurveChartPanel
     private static final int MAX_POINTS_TO_PLOT = 50;
     private static final Logger LOG = LoggerFactory.getLogger(LearningCurveChartPanel.class);
 
-    private @SpringBean EventRepository eventRepo;
     private @SpringBean RecommendationService recommendationService;
 
     private final ChartPanel chartPanel;
@@ -163,17 +156,13 @@ public class LearningCurveChartPanel
 
     /**
      * Fetches a number of latest evaluation scores from the database and save it in the map
-     * corresponding to each recommender for which the scores have been logged in the database
+     * corresponding to each recommender for which scores have been stored in the database
      * 
      * @return
      */
     private MultiValuedMap<String, Double> getLatestScores()
     {
-        // we want to plot RecommenderEvaluationResultEvent for the learning curve. The
-        // value of the event
-        String eventType = "RecommenderEvaluationResultEvent";
-
-        List<LoggedEvent> loggedEvents = new ArrayList<LoggedEvent>();
+        MultiValuedMap<String, Double> recommenderScoreMap = new ArrayListValuedHashMap<>();
 
         List<Recommender> listEnabledRecommenders = recommendationService
                 .listEnabledRecommenders(model.getObject().getProject());
@@ -183,74 +172,42 @@ public class LearningCurveChartPanel
         }
 
         for (Recommender recommender : listEnabledRecommenders) {
-            List<LoggedEvent> tempLoggedEvents = eventRepo.listLoggedEventsForRecommender(
-                    model.getObject().getProject(), model.getObject().getUser().getUsername(),
-                    eventType, MAX_POINTS_TO_PLOT, recommender.getId());
+            List<RecommenderEvaluationScore> scores = recommendationService.listEvaluationScores(
+                    recommender, model.getObject().getUser().getUsername(), MAX_POINTS_TO_PLOT);
 
             // we want to show the latest record on the right side of the graph
-            Collections.reverse(tempLoggedEvents);
+            Collections.reverse(scores);
 
-            loggedEvents.addAll(tempLoggedEvents);
-        }
-
-        if (CollectionUtils.isEmpty(loggedEvents)) {
-            return new ArrayListValuedHashMap<String, Double>();
-        }
-
-        MultiValuedMap<String, Double> recommenderScoreMap = new ArrayListValuedHashMap<>();
-
-        // iterate over the logged events to extract the scores and map it against its corresponding
-        // recommender.
-        for (LoggedEvent loggedEvent : loggedEvents) {
-            String detailJson = loggedEvent.getDetails();
-            try {
-                Details detail = fromJsonString(Details.class, detailJson);
-
-                // If the log is inconsistent and we do not have an ID for some reason, then we
-                // have to skip it
-                if (detail.recommenderId == null) {
-                    continue;
-                }
-
-                // do not include the scores from disabled recommenders
-                Optional<Recommender> recommenderIfActive = recommendationService
-                        .getEnabledRecommender(detail.recommenderId);
-                if (!recommenderIfActive.isPresent()) {
-                    continue;
-                }
-
-                // sometimes score values NaN. Can result into error while rendering the graph on UI
-                double score;
+            for (RecommenderEvaluationScore evaluationScore : scores) {
+                Double score;
 
                 switch (selectedMetric) {
                 case Accuracy:
-                    score = detail.accuracy;
+                    score = evaluationScore.getAccuracy();
                     break;
                 case Precision:
-                    score = detail.precision;
+                    score = evaluationScore.getPrecision();
                     break;
                 case Recall:
-                    score = detail.recall;
+                    score = evaluationScore.getRecall();
                     break;
                 case F1:
-                    score = detail.f1;
+                    score = evaluationScore.getF1();
                     break;
                 default:
-                    score = detail.accuracy;
+                    score = evaluationScore.getAccuracy();
                 }
 
-                if (!Double.isFinite(score)) {
+                // Scores which could not be computed are not stored. They would result in an
+                // error while rendering the graph on UI
+                if (score == null) {
                     continue;
                 }
 
-                // recommenderIfActive only has one member
-                recommenderScoreMap.put(recommenderIfActive.get().getName(), score);
-            }
-            catch (IOException e) {
-                LOG.error("Invalid logged Event detail. Skipping record with logged event id: "
-                        + loggedEvent.getId(), e);
+                recommenderScoreMap.put(recommender.getName(), score);
             }
         }
+
         return recommenderScoreMap;
     }
 }
@@ -57,6 +57,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderEvaluationResultEvent;
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
 import de.tudarmstadt.ukp.inception.scheduling.Task;
+import de.tudarmstadt.ukp.inception.scheduling.TaskPriority;
 
 /**
  * This task evaluates all available classification tools for all annotation layers of the current
@@ -84,6 +85,12 @@ public class SelectionTask
         currentDocument = aCurrentDocument;
     }
 
+    @Override
+    public TaskPriority getPriority()
+    {
+        return TaskPriority.EVALUATION;
+    }
+
     @Override
     public void execute()
     {
@@ -28,17 +28,24 @@ import static de.tudarmstadt.ukp.clarin.webanno.support.logging.LogMessage.info;
 import static de.tudarmstadt.ukp.clarin.webanno.support.logging.LogMessage.warn;
 import static de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineCapability.TRAINING_NOT_SUPPORTED;
 import static de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineCapability.TRAINING_REQUIRED;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
 import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCauseMessage;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import javax.persistence.NoResultException;
 
+import org.apache.commons.lang3.concurrent.ConcurrentException;
 import org.apache.commons.lang3.concurrent.LazyInitializer;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Type;
@@ -63,9 +70,12 @@ import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineCapability;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineFactory;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext.Key;
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
 import de.tudarmstadt.ukp.inception.scheduling.Task;
+import de.tudarmstadt.ukp.inception.scheduling.TaskPriority;
 
 /**
  * This consumer trains a new classifier model, if a classification tool was selected before.
@@ -73,6 +83,19 @@ import de.tudarmstadt.ukp.inception.scheduling.Task;
 public class TrainingTask
     extends Task
 {
+    /**
+     * Timestamps of the annotation CASes used in the last incremental training, keyed by document
+     * ID.
+     */
+    private static final Key<Map<String, Long>> KEY_TRAINED_DOCUMENTS = //
+            new Key<>("trainedDocuments");
+
+    /**
+     * IDs of the documents which contributed training data to the last incremental training.
+     */
+    private static final Key<Set<String>> KEY_TRAINING_DATA_DOCUMENTS = //
+            new Key<>("trainingDataDocuments");
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private @Autowired AnnotationSchemaService annoService;
@@ -90,6 +113,12 @@ public class TrainingTask
         currentDocument = aCurrentDocument;
     }
 
+    @Override
+    public TaskPriority getPriority()
+    {
+        return TaskPriority.TRAINING;
+    }
+
     @Override
     public void execute()
     {
@@ -104,15 +133,28 @@ public class TrainingTask
             // Read the CASes only when they are accessed the first time. This allows us to skip
             // reading the CASes in case that no layer / recommender is available or if no
             // recommender requires evaluation.
+            LazyInitializer<Map<SourceDocument, AnnotationDocument>> documents = //
+                    new LazyInitializer<Map<SourceDocument, AnnotationDocument>>()
+                    {
+                        @Override
+                        protected Map<SourceDocument, AnnotationDocument> initialize()
+                        {
+                            return documentService.listAllDocuments(project, user);
+                        }
+                    };
+
             LazyInitializer<List<TrainingDocument>> casses = new LazyInitializer<List<TrainingDocument>>()
             {
                 @Override
-                protected List<TrainingDocument> initialize()
+                protected List<TrainingDocument> initialize() throws ConcurrentException
                 {
-                    return readCasses(project, user);
+                    return readCasses(documents.get(), user);
                 }
             };
 
+            // CASes read for incremental training - shared between the recommenders
+            Map<SourceDocument, Optional<CAS>> changedCasses = new HashMap<>();
+
             boolean seenSuccessfulTraining = false;
             boolean seenNonTrainingRecommender = false;
 
@@ -180,9 +222,10 @@ public class TrainingTask
 
                         RecommendationEngine recommendationEngine = factory.build(recommender);
 
-                        RecommenderContext ctx = recommendationEngine
-                                .newContext(recommendationService.getContext(user, recommender)
-                                        .orElse(RecommenderContext.EMPTY_CONTEXT));
+                        RecommenderContext previousCtx = recommendationService
+                                .getContext(user, recommender)
+                                .orElse(RecommenderContext.EMPTY_CONTEXT);
+                        RecommenderContext ctx = recommendationEngine.newContext(previousCtx);
                         ctx.setUser(user);
 
                         RecommendationEngineCapability capability = recommendationEngine
@@ -199,6 +242,40 @@ public class TrainingTask
                             continue;
                         }
 
+                        if (recommendationEngine.isIncrementalTrainingSupported()) {
+                            // Without information about the previously trained documents, we
+                            // start from scratch so that no stale per-document data survives
+                            RecommenderContext baseCtx = previousCtx;
+                            if (previousCtx.get(KEY_TRAINED_DOCUMENTS).isEmpty()
+                                    || previousCtx.get(KEY_TRAINING_DATA_DOCUMENTS).isEmpty()) {
+                                baseCtx = RecommenderContext.EMPTY_CONTEXT;
+                                ctx = recommendationEngine.newContext(baseCtx);
+                                ctx.setUser(user);
+                            }
+
+                            switch (trainIncrementally(recommender, recommendationEngine,
+                                    baseCtx, ctx, documents.get(), changedCasses, startTime)) {
+                            case SUCCESSFUL:
+                                seenSuccessfulTraining = true;
+                                ctx.close();
+                                recommendationService.putContext(user, recommender, ctx);
+                                break;
+                            case FAILED:
+                                ctx.close();
+                                recommendationService.putContext(user, recommender, ctx);
+                                break;
+                            case UNCHANGED:
+                                // The model from the previous training remains valid
+                                seenSuccessfulTraining = true;
+                                break;
+                            case NO_TRAINING_DATA:
+                                // Like the full training, keep the previous context
+                                break;
+                            }
+
+                            continue;
+                        }
+
                         List<CAS> cassesForTraining = casses.get().stream() //
                                 .filter(e -> !recommender.getStatesIgnoredForTraining()
                                         .contains(e.state))
@@ -277,12 +354,135 @@ public class TrainingTask
         }
     }
 
-    private List<TrainingDocument> readCasses(Project aProject, User aUser)
+    /**
+     * Trains the given engine only on those documents which changed since the last training. The
+     * last modification timestamp of the annotation CAS of each document that was used in the
+     * previous training is recorded in the context. Documents which still have the same timestamp
+     * are not read again.
+     * 
+     * @return the outcome of the training.
+     */
+    private IncrementalTrainingResult trainIncrementally(Recommender aRecommender,
+            RecommendationEngine aEngine, RecommenderContext aPreviousContext,
+            RecommenderContext aContext,
+            Map<SourceDocument, AnnotationDocument> aDocuments,
+            Map<SourceDocument, Optional<CAS>> aCasCache, long aStartTime)
+        throws RecommendationException, IOException
+    {
+        User user = getUser();
+        Map<String, Long> previouslyTrained = aPreviousContext.get(KEY_TRAINED_DOCUMENTS)
+                .orElse(emptyMap());
+
+        Map<String, Long> trained = new HashMap<>();
+        Map<String, CAS> changed = new LinkedHashMap<>();
+        Set<String> removed = new HashSet<>(previouslyTrained.keySet());
+        Set<String> withTrainingData = new HashSet<>(
+                aPreviousContext.get(KEY_TRAINING_DATA_DOCUMENTS).orElse(emptySet()));
+
+        for (Map.Entry<SourceDocument, AnnotationDocument> entry : aDocuments.entrySet()) {
+            SourceDocument document = entry.getKey();
+            AnnotationDocumentState state = entry.getValue() != null
+                    ? entry.getValue().getState()
+                    : AnnotationDocumentState.NEW;
+
+            if (aRecommender.getStatesIgnoredForTraining().contains(state)) {
+                continue;
+            }
+
+            String documentId = String.valueOf(document.getId());
+
+            // The timestamp must be obtained before reading the CAS - if the CAS is changed in
+            // between, we rather read it again next time than missing the change.
+            Optional<Long> timestamp = documentService.getAnnotationCasTimestamp(document,
+                    user.getUsername());
+            timestamp.ifPresent(ts -> trained.put(documentId, ts));
+
+            if (timestamp.isPresent()
+                    && timestamp.get().equals(previouslyTrained.get(documentId))) {
+                removed.remove(documentId);
+                continue;
+            }
+
+            Optional<CAS> cas = aCasCache.computeIfAbsent(document,
+                    doc -> readCas(doc, user));
+
+            if (cas.isPresent() && containsTargetTypeAndFeature(aRecommender, cas.get())) {
+                removed.remove(documentId);
+                changed.put(documentId, cas.get());
+                withTrainingData.add(documentId);
+            }
+            else {
+                // Make sure data from a previous version of the document is dropped
+                removed.add(documentId);
+                withTrainingData.remove(documentId);
+            }
+        }
+
+        withTrainingData.removeAll(removed);
+
+        // If no data for training is available, but the engine requires training, do not mark
+        // as ready - this is the same as for the full training
+        if (withTrainingData.isEmpty() && aEngine.getTrainingCapability() == TRAINING_REQUIRED) {
+            log.debug("[{}][{}][{}]: There are no annotations available to train on", getId(),
+                    user.getUsername(), aRecommender.getName());
+            logMessages.add(warn(this, "There are no [%s] annotations available to train on.",
+                    aRecommender.getLayer().getUiName()));
+            return IncrementalTrainingResult.NO_TRAINING_DATA;
+        }
+
+        if (changed.isEmpty() && removed.isEmpty()
+                && aEngine.isReadyForPrediction(aPreviousContext)) {
+            log.debug("[{}][{}][{}]: No changes since the last training", getId(),
+                    user.getUsername(), aRecommender.getName());
+            logMessages.add(info(this, "No changes for [%s] since the last training.",
+                    aRecommender.getLayer().getUiName()));
+            return IncrementalTrainingResult.UNCHANGED;
+        }
+
+        log.debug("[{}][{}][{}]: Training model incrementally on [{}] changed and [{}] removed "
+                + "out of [{}] documents ...", getId(), user.getUsername(), aRecommender.getName(),
+                changed.size(), removed.size(), aDocuments.size());
+        logMessages.add(info(this,
+                "Training model for [%s] incrementally on [%d] changed out of [%d] documents ...",
+                aRecommender.getLayer().getUiName(), changed.size(), aDocuments.size()));
+
+        aEngine.trainIncrementally(aContext, changed, removed);
+        aContext.put(KEY_TRAINED_DOCUMENTS, trained);
+        aContext.put(KEY_TRAINING_DATA_DOCUMENTS, withTrainingData);
+
+        long duration = System.currentTimeMillis() - aStartTime;
+
+        if (!aEngine.isReadyForPrediction(aContext)) {
+            log.debug("[{}][{}][{}]: Incremental training failed ({} ms)", getId(),
+                    user.getUsername(), aRecommender.getName(), duration);
+            logMessages.add(error(this, "Training failed (%d ms).", duration));
+            return IncrementalTrainingResult.FAILED;
+        }
+
+        log.debug("[{}][{}][{}]: Incremental training successful on [{}] changed documents ({} ms)",
+                getId(), user.getUsername(), aRecommender.getName(), changed.size(), duration);
+        logMessages.add(info(this, "Training successful on [%d] changed documents (%d ms)",
+                changed.size(), duration));
+        return IncrementalTrainingResult.SUCCESSFUL;
+    }
+
+    private Optional<CAS> readCas(SourceDocument aDocument, User aUser)
+    {
+        try {
+            return Optional.of(documentService.readAnnotationCas(aDocument, aUser.getUsername(),
+                    AUTO_CAS_UPGRADE, SHARED_READ_ONLY_ACCESS));
+        }
+        catch (IOException e) {
+            log.error("Cannot read annotation CAS.", e);
+            return Optional.empty();
+        }
+    }
+
+    private List<TrainingDocument> readCasses(Map<SourceDocument, AnnotationDocument> aDocuments,
+            User aUser)
     {
         List<TrainingDocument> casses = new ArrayList<>();
-        Map<SourceDocument, AnnotationDocument> allDocuments = documentService
-                .listAllDocuments(aProject, aUser);
-        for (Map.Entry<SourceDocument, AnnotationDocument> entry : allDocuments.entrySet()) {
+        for (Map.Entry<SourceDocument, AnnotationDocument> entry : aDocuments.entrySet()) {
             try {
                 SourceDocument sourceDocument = entry.getKey();
                 AnnotationDocument annotationDocument = entry.getValue();
@@ -329,6 +529,11 @@ public class TrainingTask
         logMessages.addAll(aLogMessages);
     }
 
+    private enum IncrementalTrainingResult
+    {
+        SUCCESSFUL, FAILED, UNCHANGED, NO_TRAINING_DATA;
+    }
+
     private static class TrainingDocument
     {
         private final CAS cas;
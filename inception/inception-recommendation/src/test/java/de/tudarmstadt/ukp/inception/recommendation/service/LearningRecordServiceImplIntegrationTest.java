@@ -24,6 +24,9 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import java.util.List;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
 import org.apache.uima.cas.CAS;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -32,8 +35,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.transaction.TestTransaction;
 import org.springframework.transaction.annotation.Transactional;
 
+import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeDocumentRemovedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
@@ -41,6 +46,7 @@ import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.inception.recommendation.api.LearningRecordService;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecord;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordIndex;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordType;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.RelationSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.SpanSuggestion;
@@ -55,13 +61,16 @@ public class LearningRecordServiceImplIntegrationTest
     private static final String PROJECT_NAME = "Test project";
 
     private @Autowired TestEntityManager testEntityManager;
+    private @PersistenceContext EntityManager entityManager;
 
     private LearningRecordService sut;
 
     @BeforeEach
     public void setUp() throws Exception
     {
-        sut = new LearningRecordServiceImpl(testEntityManager.getEntityManager());
+        // Use the shared entity manager so that the service keeps working when a test commits
+        // the test transaction and starts a new one
+        sut = new LearningRecordServiceImpl(entityManager);
     }
 
     @AfterEach
@@ -143,8 +152,147 @@ public class LearningRecordServiceImplIntegrationTest
                 .hasFieldOrPropertyWithValue("suggestionType", SuggestionType.RELATION);
     }
 
+    @Test
+    public void thatRecordIndexIsUpdatedInPlaceAfterCommit()
+    {
+        SourceDocument sourceDoc = createSourceDocument();
+        AnnotationLayer layer = createAnnotationLayer();
+        AnnotationFeature feature = createAnnotationFeature(layer, FEATURE_NAME);
+        User user = new User(USER_NAME);
+        commit();
+
+        SpanSuggestion span = new SpanSuggestion(42, 1337, "testRecommender", layer.getId(),
+                feature.getName(), sourceDoc.getName(), 7, 14, "aCoveredText", "testLabel",
+                "testUiLabel", 0.42, "Test confidence");
+        RelationSuggestion relation = new RelationSuggestion(43, 1337, "testRecommender",
+                layer.getId(), feature.getName(), sourceDoc.getName(), 7, 14, 21, 28, "testLabel",
+                "testUiLabel", 0.42, "Test confidence");
+
+        LearningRecordIndex index = sut.getRecordIndex(USER_NAME, layer);
+        assertThat(index.getUserAction(span)).isEmpty();
+        assertThat(sut.getRecordIndex(USER_NAME, layer)).isSameAs(index);
+
+        sut.logSpanRecord(sourceDoc, USER_NAME, span, layer, feature, LearningRecordType.REJECTED,
+                MAIN_EDITOR);
+        assertThat(index.getUserAction(span)).isEmpty();
+        commit();
+        assertThat(index.getUserAction(span)).contains(LearningRecordType.REJECTED);
+
+        sut.logSpanRecord(sourceDoc, USER_NAME, span, layer, feature, LearningRecordType.SKIPPED,
+                MAIN_EDITOR);
+        commit();
+        assertThat(index.getUserAction(span)).contains(LearningRecordType.SKIPPED);
+        assertThat(index.size()).isEqualTo(1);
+
+        sut.deleteSkippedSuggestions(user, layer);
+        commit();
+        assertThat(index.getUserAction(span)).isEmpty();
+
+        sut.logRelationRecord(sourceDoc, USER_NAME, relation, layer, feature,
+                LearningRecordType.REJECTED, DETAIL_EDITOR);
+        commit();
+        assertThat(index.getUserAction(relation)).contains(LearningRecordType.REJECTED);
+        assertThat(index.getUserAction(span)).isEmpty();
+
+        sut.delete(sut.listRecords(USER_NAME, layer).get(0));
+        commit();
+        assertThat(index.getUserAction(relation)).isEmpty();
+
+        sut.logSpanRecord(sourceDoc, USER_NAME, span, layer, feature, LearningRecordType.REJECTED,
+                MAIN_EDITOR);
+        sut.deleteRecords(sourceDoc, USER_NAME);
+        commit();
+        assertThat(index.size()).isZero();
+
+        assertThat(sut.getRecordIndex(USER_NAME, layer)).isSameAs(index);
+
+        deleteCommittedData();
+    }
+
+    @Test
+    public void thatRecordIndexIsDroppedOnRollback()
+    {
+        SourceDocument sourceDoc = createSourceDocument();
+        AnnotationLayer layer = createAnnotationLayer();
+        AnnotationFeature feature = createAnnotationFeature(layer, FEATURE_NAME);
+        commit();
+
+        SpanSuggestion span = new SpanSuggestion(42, 1337, "testRecommender", layer.getId(),
+                feature.getName(), sourceDoc.getName(), 7, 14, "aCoveredText", "testLabel",
+                "testUiLabel", 0.42, "Test confidence");
+
+        // An index loaded in the transaction includes the changes made in the transaction
+        sut.logSpanRecord(sourceDoc, USER_NAME, span, layer, feature, LearningRecordType.REJECTED,
+                MAIN_EDITOR);
+        assertThat(sut.getRecordIndex(USER_NAME, layer).getUserAction(span))
+                .contains(LearningRecordType.REJECTED);
+        rollback();
+
+        assertThat(sut.getRecordIndex(USER_NAME, layer).getUserAction(span)).isEmpty();
+
+        deleteCommittedData();
+    }
+
+    @Test
+    public void thatRecordsOfRemovedDocumentAreRemovedFromIndex()
+    {
+        SourceDocument sourceDoc = createSourceDocument();
+        AnnotationLayer layer = createAnnotationLayer();
+        AnnotationFeature feature = createAnnotationFeature(layer, FEATURE_NAME);
+        commit();
+
+        SpanSuggestion span = new SpanSuggestion(42, 1337, "testRecommender", layer.getId(),
+                feature.getName(), sourceDoc.getName(), 7, 14, "aCoveredText", "testLabel",
+                "testUiLabel", 0.42, "Test confidence");
+
+        sut.logSpanRecord(sourceDoc, USER_NAME, span, layer, feature, LearningRecordType.REJECTED,
+                MAIN_EDITOR);
+        commit();
+        assertThat(sut.getRecordIndex(USER_NAME, layer).getUserAction(span))
+                .contains(LearningRecordType.REJECTED);
+
+        // Removing a document removes its learning records without going through the service
+        ((LearningRecordServiceImpl) sut)
+                .beforeDocumentRemoved(new BeforeDocumentRemovedEvent(this, sourceDoc));
+        testEntityManager.getEntityManager()
+                .createQuery("DELETE FROM LearningRecord WHERE sourceDocument = :document")
+                .setParameter("document", sourceDoc) //
+                .executeUpdate();
+        testEntityManager.remove(testEntityManager.merge(sourceDoc));
+        commit();
+
+        // A new document with the same name must not inherit the records of the removed one
+        createSourceDocument();
+        assertThat(sut.getRecordIndex(USER_NAME, layer).getUserAction(span)).isEmpty();
+
+        deleteCommittedData();
+    }
+
     // Helper
 
+    private void commit()
+    {
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        TestTransaction.start();
+    }
+
+    private void rollback()
+    {
+        TestTransaction.flagForRollback();
+        TestTransaction.end();
+        TestTransaction.start();
+    }
+
+    private void deleteCommittedData()
+    {
+        for (String entity : List.of("LearningRecord", "AnnotationFeature", "AnnotationLayer",
+                "SourceDocument")) {
+            entityManager.createQuery("DELETE FROM " + entity).executeUpdate();
+        }
+        commit();
+    }
+
     private SourceDocument createSourceDocument()
     {
         SourceDocument doc = new SourceDocument();
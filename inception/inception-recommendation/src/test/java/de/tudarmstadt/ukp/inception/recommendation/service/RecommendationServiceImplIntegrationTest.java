@@ -30,6 +30,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.openMocks;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -59,8 +60,12 @@ import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.inception.recommendation.api.RecommenderFactoryRegistry;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.LabelPair;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.RecommenderEvaluationScore;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineFactory;
+import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderEvaluationResultEvent;
 
 @ContextConfiguration(classes = SpringConfig.class)
 @Transactional
@@ -68,6 +73,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 public class RecommendationServiceImplIntegrationTest
 {
     private static final String PROJECT_NAME = "Test project";
+    private static final String USER = "testUser";
 
     private @Autowired TestEntityManager testEntityManager;
 
@@ -176,6 +182,37 @@ public class RecommendationServiceImplIntegrationTest
         assertThat(enabledRecommenders).as("Check that no recommender is found").isEmpty();
     }
 
+    @Test
+    public void thatEvaluationScoresAreListedMostRecentFirst()
+    {
+        sut.onRecommenderEvaluationResult(new RecommenderEvaluationResultEvent(this, rec, USER,
+                evaluationResult("PER", "PER", "PER", "ORG"), 0, true));
+        sut.onRecommenderEvaluationResult(new RecommenderEvaluationResultEvent(this, rec, USER,
+                evaluationResult("PER", "PER", "ORG", "ORG"), 0, true));
+        sut.onRecommenderEvaluationResult(new RecommenderEvaluationResultEvent(this, rec,
+                "otherUser", evaluationResult("PER", "ORG"), 0, true));
+
+        assertThat(sut.listEvaluationScores(rec, USER, 10)) //
+                .extracting(RecommenderEvaluationScore::getAccuracy) //
+                .containsExactly(1.0, 0.5);
+        assertThat(sut.listEvaluationScores(rec, USER, 1)) //
+                .extracting(RecommenderEvaluationScore::getAccuracy) //
+                .containsExactly(1.0);
+    }
+
+    @Test
+    public void thatEvaluationScoresOfDeletedRecommenderAreNotStored()
+    {
+        sut.deleteRecommender(rec);
+
+        sut.onRecommenderEvaluationResult(new RecommenderEvaluationResultEvent(this, rec, USER,
+                evaluationResult("PER", "PER"), 0, true));
+
+        assertThat(testEntityManager.getEntityManager()
+                .createQuery("FROM RecommenderEvaluationScore", RecommenderEvaluationScore.class)
+                .getResultList()).isEmpty();
+    }
+
     @Test
     public void monkeyPatchTypeSystem_WithNer_CreatesScoreFeatures() throws Exception
     {
@@ -238,6 +275,15 @@ public class RecommendationServiceImplIntegrationTest
         return recommender;
     }
 
+    private static EvaluationResult evaluationResult(String... aGoldAndPredictedLabels)
+    {
+        List<LabelPair> pairs = new ArrayList<>();
+        for (int i = 0; i < aGoldAndPredictedLabels.length; i += 2) {
+            pairs.add(new LabelPair(aGoldAndPredictedLabels[i], aGoldAndPredictedLabels[i + 1]));
+        }
+        return pairs.stream().collect(EvaluationResult.toEvaluationResult());
+    }
+
     private AnnotationFeature createAnnotationFeature(AnnotationLayer aLayer, String aName)
     {
         AnnotationFeature feature = new AnnotationFeature();
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.service;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.CasUpgradeMode.AUTO_CAS_UPGRADE;
+import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.SPAN_TYPE;
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getRealCas;
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.SHARED_READ_ONLY_ACCESS;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnchoringMode.CHARACTERS;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static org.apache.uima.cas.impl.Serialization.deserializeCASComplete;
+import static org.apache.uima.cas.impl.Serialization.serializeCASComplete;
+import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.openMocks;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.LongStream;
+
+import javax.persistence.EntityManager;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.impl.CASImpl;
+import org.apache.uima.fit.factory.CasFactory;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.inception.recommendation.api.RecommenderFactoryRegistry;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.AnnotationSuggestion;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.EvaluatedRecommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Predictions;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineFactory;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderPropertiesImpl;
+
+public class RecommendationServiceImplPredictionTest
+{
+    private @Mock AnnotationSchemaService annoService;
+    private @Mock DocumentService documentService;
+    private @Mock RecommenderFactoryRegistry recommenderFactoryRegistry;
+    private @Mock RecommendationEngineFactory<Object> engineFactory;
+    private @Mock EntityManager entityManager;
+
+    private AutoCloseable mocks;
+    private RecommenderPropertiesImpl properties;
+    private RecommendationServiceImpl sut;
+    private CasStorageSession casStorageSession;
+    private User user;
+    private Project project;
+    private AnnotationLayer layer;
+
+    @BeforeEach
+    public void setUp() throws Exception
+    {
+        mocks = openMocks(this);
+
+        user = new User("testUser");
+
+        project = new Project();
+        project.setId(1l);
+        project.setName("Test Project");
+
+        layer = new AnnotationLayer();
+        layer.setId(42l);
+        layer.setProject(project);
+        layer.setEnabled(true);
+        layer.setUiName("Named entity");
+        layer.setName(NamedEntity.class.getName());
+        layer.setType(SPAN_TYPE);
+        layer.setAnchoringMode(CHARACTERS);
+        when(annoService.listAnnotationLayer(project)).thenReturn(List.of(layer));
+
+        properties = new RecommenderPropertiesImpl();
+        properties.setPredictionPoolSize(4);
+
+        sut = new RecommendationServiceImpl(null, null, recommenderFactoryRegistry, null,
+                annoService, documentService, null, null, entityManager, null, properties);
+
+        casStorageSession = CasStorageSession.open();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception
+    {
+        casStorageSession.close();
+        sut.destroy();
+        mocks.close();
+    }
+
+    @Test
+    public void thatParallelPredictionCompletesAllDocuments()
+    {
+        properties.setPredictionParallelism(4);
+
+        List<SourceDocument> documents = createDocuments(50);
+
+        Predictions predictions = sut.computePredictions(user, project, documents, emptyList());
+
+        assertThat(documents) //
+                .allMatch(predictions::hasRunPredictionOnDocument);
+        assertThat(sut.getPredictedDocumentsTotal()).isEqualTo(documents.size());
+        assertThat(sut.getPredictionDocumentsPerSecond()).isPositive();
+    }
+
+    @Test
+    public void thatSequentialPredictionCompletesAllDocuments()
+    {
+        List<SourceDocument> documents = createDocuments(5);
+
+        Predictions predictions = sut.computePredictions(user, project, documents, emptyList());
+
+        assertThat(documents) //
+                .allMatch(predictions::hasRunPredictionOnDocument);
+        assertThat(sut.getPredictedDocumentsTotal()).isEqualTo(documents.size());
+    }
+
+    @Test
+    public void thatParallelPredictionRunsRecommenderOnAllDocuments() throws Exception
+    {
+        properties.setPredictionParallelism(4);
+
+        AnnotationFeature feature = new AnnotationFeature();
+        feature.setName("value");
+        feature.setLayer(layer);
+
+        Recommender recommender = new Recommender("recommender", layer);
+        recommender.setId(7l);
+        recommender.setProject(project);
+        recommender.setFeature(feature);
+        recommender.setTool("stub");
+        recommender.setEnabled(true);
+
+        RecommenderContext context = new RecommenderContext();
+        context.close();
+
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        when(entityManager.find(Recommender.class, recommender.getId())).thenReturn(recommender);
+        when(recommenderFactoryRegistry.getFactory("stub")).thenReturn(engineFactory);
+        when(engineFactory.accepts(layer, feature)).thenReturn(true);
+        when(engineFactory.build(recommender))
+                .thenAnswer(call -> new StubRecommendationEngine(recommender, threads));
+        when(annoService.getFullProjectTypeSystem(project))
+                .thenAnswer(call -> createTypeSystemDescription());
+        when(documentService.readAnnotationCas(any(SourceDocument.class), eq(user.getUsername()),
+                eq(AUTO_CAS_UPGRADE), eq(SHARED_READ_ONLY_ACCESS)))
+                        .thenAnswer(call -> CasFactory.createText("John lives here."));
+        doAnswer(call -> {
+            upgradeCas(call.getArgument(0), call.getArgument(1), call.getArgument(2));
+            return null;
+        }).when(annoService).upgradeCas(any(CAS.class), any(CAS.class),
+                any(TypeSystemDescription.class));
+
+        sut.setEvaluatedRecommenders(user, layer,
+                List.of(EvaluatedRecommender.makeActiveWithoutEvaluation(recommender)));
+        sut.putContext(user, recommender, context);
+
+        List<SourceDocument> documents = createDocuments(50);
+
+        Predictions predictions = sut.computePredictions(user, project, documents, emptyList());
+
+        assertThat(documents) //
+                .allMatch(predictions::hasRunPredictionOnDocument);
+        for (SourceDocument document : documents) {
+            assertThat(predictions.getPredictionsByDocument(document.getName())) //
+                    .as("predictions for %s", document.getName()) //
+                    .extracting(AnnotationSuggestion::getLabel,
+                            AnnotationSuggestion::getRecommenderId) //
+                    .containsExactly(tuple("PER", 7l));
+        }
+        assertThat(threads).hasSizeGreaterThan(1);
+    }
+
+    /**
+     * Minimal stand-in for the real CAS upgrade: re-initializes the target CAS with the given
+     * type system and copies over the document text.
+     */
+    private static void upgradeCas(CAS aSource, CAS aTarget, TypeSystemDescription aTsd)
+        throws Exception
+    {
+        CAS tempCas = CasFactory.createCas(aTsd);
+        deserializeCASComplete(serializeCASComplete((CASImpl) tempCas),
+                (CASImpl) getRealCas(aTarget));
+        aTarget.setDocumentText(aSource.getDocumentText());
+    }
+
+    private List<SourceDocument> createDocuments(int aCount)
+    {
+        return LongStream.range(0, aCount) //
+                .mapToObj(i -> {
+                    SourceDocument doc = new SourceDocument("doc" + i, project, "text");
+                    doc.setId(i);
+                    return doc;
+                }) //
+                .collect(toList());
+    }
+
+    private static class StubRecommendationEngine
+        extends RecommendationEngine
+    {
+        private final Set<String> threads;
+
+        public StubRecommendationEngine(Recommender aRecommender, Set<String> aThreads)
+        {
+            super(aRecommender);
+            threads = aThreads;
+        }
+
+        @Override
+        public void train(RecommenderContext aContext, List<CAS> aCasses)
+        {
+            // Nothing to do
+        }
+
+        @Override
+        public void predict(RecommenderContext aContext, CAS aCas)
+        {
+            threads.add(Thread.currentThread().getName());
+
+            Annotation prediction = (Annotation) aCas.createAnnotation(getPredictedType(aCas), 0,
+                    4);
+            prediction.setStringValue(getPredictedFeature(aCas), "PER");
+            prediction.setDoubleValue(getScoreFeature(aCas), 1.0);
+            prediction.setBooleanValue(getIsPredictionFeature(aCas), true);
+            aCas.addFsToIndexes(prediction);
+        }
+
+        @Override
+        public EvaluationResult evaluate(List<CAS> aCasses, DataSplitter aDataSplitter)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isReadyForPrediction(RecommenderContext aContext)
+        {
+            return true;
+        }
+
+        @Override
+        public int estimateSampleCount(List<CAS> aCasses)
+        {
+            return 0;
+        }
+    }
+}
@@ -39,10 +39,12 @@ import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.inception.recommendation.api.LearningRecordService;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.AnnotationSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecord;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordIndex;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordType;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.SpanSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.SuggestionDocumentGroup;
@@ -99,7 +101,8 @@ public class SpanSuggestionVisibilityCalculationTests
     @Test
     public void testCalculateVisibilityNoRecordsAllHidden() throws Exception
     {
-        when(recordService.listRecords(user, layer)).thenReturn(new ArrayList<>());
+        when(recordService.getRecordIndex(user, layer))
+                .thenReturn(new LearningRecordIndex(new ArrayList<>()));
 
         CAS cas = getTestCas();
         SuggestionDocumentGroup<SpanSuggestion> suggestions = getSuggestionGroup(
@@ -124,7 +127,8 @@ public class SpanSuggestionVisibilityCalculationTests
     @Test
     public void testCalculateVisibilityNoRecordsNotHidden() throws Exception
     {
-        when(recordService.listRecords(user, layer)).thenReturn(new ArrayList<>());
+        when(recordService.getRecordIndex(user, layer))
+                .thenReturn(new LearningRecordIndex(new ArrayList<>()));
 
         CAS cas = getTestCas();
         SuggestionDocumentGroup<SpanSuggestion> suggestions = getSuggestionGroup(
@@ -147,8 +151,10 @@ public class SpanSuggestionVisibilityCalculationTests
         rejectedRecord.setUserAction(LearningRecordType.REJECTED);
         rejectedRecord.setOffsetBegin(5);
         rejectedRecord.setOffsetEnd(10);
+        rejectedRecord.setSourceDocument(new SourceDocument(DOC_NAME, project, "text"));
         records.add(rejectedRecord);
-        when(recordService.listRecords(user, layer)).thenReturn(records);
+        when(recordService.getRecordIndex(user, layer))
+                .thenReturn(new LearningRecordIndex(records));
 
         CAS cas = getTestCas();
         SuggestionDocumentGroup<SpanSuggestion> suggestions = getSuggestionGroup(
@@ -165,6 +171,26 @@ public class SpanSuggestionVisibilityCalculationTests
                 .containsExactly("rejected");
     }
 
+    @Test
+    public void testCalculateVisibilityRejectedInOtherDocument() throws Exception
+    {
+        LearningRecord rejectedRecord = new LearningRecord();
+        rejectedRecord.setUserAction(LearningRecordType.REJECTED);
+        rejectedRecord.setOffsetBegin(5);
+        rejectedRecord.setOffsetEnd(10);
+        rejectedRecord.setSourceDocument(new SourceDocument("OtherDocument", project, "text"));
+        when(recordService.getRecordIndex(user, layer))
+                .thenReturn(new LearningRecordIndex(List.of(rejectedRecord)));
+
+        CAS cas = getTestCas();
+        SuggestionDocumentGroup<SpanSuggestion> suggestions = getSuggestionGroup(
+                new int[][] { { 1, 5, 10 } });
+        sut.calculateSpanSuggestionVisibility(cas, user, layer, suggestions, 0, 25);
+
+        assertThat(getInvisibleSuggestions(suggestions)).isEmpty();
+        assertThat(getVisibleSuggestions(suggestions)).hasSize(1);
+    }
+
     private List<SpanSuggestion> getInvisibleSuggestions(
             Collection<SuggestionGroup<SpanSuggestion>> aSuggestions)
     {
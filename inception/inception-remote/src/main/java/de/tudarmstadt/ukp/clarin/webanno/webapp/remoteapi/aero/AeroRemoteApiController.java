@@ -21,6 +21,8 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUt
 import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.selectTokens;
 import static de.tudarmstadt.ukp.clarin.webanno.webapp.remoteapi.aero.model.RMessageLevel.ERROR;
 import static de.tudarmstadt.ukp.clarin.webanno.webapp.remoteapi.aero.model.RMessageLevel.INFO;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.ALL_VALUE;
@@ -30,8 +32,8 @@ import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE;
 import static org.springframework.http.MediaType.MULTIPART_FORM_DATA_VALUE;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -41,33 +43,40 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import javax.persistence.NoResultException;
+import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.commons.lang3.reflect.MethodUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.jcas.cas.Sofa;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -81,6 +90,7 @@ import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
 import de.tudarmstadt.ukp.clarin.webanno.api.DocumentImportExportService;
 import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
@@ -89,6 +99,7 @@ import de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectExportRequest;
 import de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectExportService;
 import de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectExportTaskMonitor;
 import de.tudarmstadt.ukp.clarin.webanno.api.export.ProjectImportRequest;
+import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatCodec;
 import de.tudarmstadt.ukp.clarin.webanno.api.format.FormatSupport;
 import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationDocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.export.ImportUtil;
@@ -156,12 +167,23 @@ public class AeroRemoteApiController
 
     private static final String FORMAT_DEFAULT = "text";
 
+    private static final String ZIP_STREAMING_NOTE = "The ZIP file is streamed to the client "
+            + "while it is being created. Errors detected before streaming starts are reported "
+            + "with an error status. If an error occurs while streaming, the download is aborted "
+            + "and the ZIP file is incomplete.";
+
+    private static final String ZIP_UPLOAD_NOTE = "The names of all entries in the ZIP file and "
+            + "the documents and users they refer to are checked before any annotations are "
+            + "stored. If the conversion of an entry fails, the annotations of the preceding "
+            + "entries have already been stored. In this case, the error response lists them.";
+
     private final Logger LOG = LoggerFactory.getLogger(getClass());
 
     private @Autowired DocumentService documentService;
     private @Autowired CurationDocumentService curationService;
     private @Autowired ProjectService projectService;
     private @Autowired DocumentImportExportService importExportService;
+    private @Autowired AnnotationSchemaService annotationService;
     private @Autowired UserDao userRepository;
     private @Autowired ProjectExportService exportService;
 
@@ -398,10 +420,10 @@ public class AeroRemoteApiController
         return ResponseEntity.ok(new RResponse<>(new RProject(importedProject)));
     }
 
-    @Operation(summary = "Export a project to a ZIP file")
+    @Operation(summary = "Export a project to a ZIP file", description = ZIP_STREAMING_NOTE)
     @GetMapping(value = ("/" + PROJECTS + "/{" + PARAM_PROJECT_ID + "}/" + EXPORT), produces = {
             "application/zip", APPLICATION_JSON_VALUE })
-    public ResponseEntity<InputStreamResource> projectExport(
+    public void projectExport(HttpServletResponse aResponse,
             @PathVariable(PARAM_PROJECT_ID) long aProjectId,
             @RequestParam(value = PARAM_FORMAT) Optional<String> aFormat)
         throws Exception
@@ -423,27 +445,43 @@ public class AeroRemoteApiController
         ProjectExportRequest request = new ProjectExportRequest(project,
                 aFormat.orElse(WebAnnoTsv3FormatSupport.ID), true);
         ProjectExportTaskMonitor monitor = new ProjectExportTaskMonitor();
-        File exportedFile = exportService.exportProject(request, monitor);
-
-        // Turn the file into a resource and auto-delete the file when the resource closes the
-        // stream.
-        InputStreamResource result = new InputStreamResource(new FileInputStream(exportedFile)
-        {
-            @Override
-            public void close() throws IOException
-            {
-                super.close();
-                FileUtils.forceDelete(exportedFile);
-            }
-        });
 
-        HttpHeaders httpHeaders = new HttpHeaders();
-        httpHeaders.setContentType(MediaType.valueOf("application/zip"));
-        httpHeaders.setContentLength(exportedFile.length());
-        httpHeaders.set("Content-Disposition",
-                "attachment; filename=\"" + exportedFile.getName() + "\"");
+        // Stream the ZIP entries directly into the response instead of staging the export in a
+        // temporary file first. The request thread performs the export, so the security and
+        // logging context remain available to the exporters.
+        startZipDownload(aResponse, project.getName() + ".zip");
+        try {
+            exportService.exportProject(request, monitor, aResponse.getOutputStream());
+            aResponse.flushBuffer();
+        }
+        catch (Exception e) {
+            abortZipDownload(aResponse);
+            throw e;
+        }
+    }
 
-        return new ResponseEntity<>(result, httpHeaders, HttpStatus.OK);
+    /**
+     * Sets the headers of a streamed ZIP download. Everything that can be validated must be
+     * validated before calling this, because once the first bytes of the ZIP have been sent, an
+     * error can no longer be reported to the client via the HTTP status.
+     */
+    private void startZipDownload(HttpServletResponse aResponse, String aFilename)
+    {
+        aResponse.setContentType("application/zip");
+        aResponse.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition
+                .builder("attachment").filename(aFilename, UTF_8).build().toString());
+    }
+
+    /**
+     * Called when a streamed ZIP download fails. If nothing has been sent to the client yet, the
+     * response is reset so that the error can be reported as usual. Otherwise, the ZIP is left
+     * incomplete - it lacks the central directory and is rejected by ZIP readers.
+     */
+    private void abortZipDownload(HttpServletResponse aResponse)
+    {
+        if (!aResponse.isCommitted()) {
+            aResponse.reset();
+        }
     }
 
     @Operation(summary = "List documents in a project")
@@ -577,8 +615,8 @@ public class AeroRemoteApiController
                     OK);
         }
         else {
-            // Export a converted file - here we first export to a local temporary file and then
-            // send that back to the client
+            // Export a converted file - the export is buffered in memory and then sent back to
+            // the client
 
             // Check if the format is supported
             FormatSupport format = importExportService.getWritableFormatById(formatId)
@@ -591,26 +629,18 @@ public class AeroRemoteApiController
             // Create a temporary export file from the annotations
             CAS cas = documentService.createOrReadInitialCas(doc);
 
-            File exportedFile = null;
-            try {
-                // Load the converted file into memory
-                exportedFile = importExportService.exportCasToFile(cas, doc, doc.getName(), format,
-                        true);
-                byte[] resource = FileUtils.readFileToByteArray(exportedFile);
-
-                // Send it back to the client
-                HttpHeaders httpHeaders = new HttpHeaders();
-                httpHeaders.setContentLength(resource.length);
-                httpHeaders.set("Content-Disposition",
-                        "attachment; filename=\"" + exportedFile.getName() + "\"");
-
-                return new ResponseEntity<>(resource, httpHeaders, OK);
-            }
-            finally {
-                if (exportedFile != null) {
-                    FileUtils.forceDelete(exportedFile);
-                }
-            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            String exportedFileName = importExportService.exportCasToStream(cas, doc,
+                    doc.getName(), format, true, buffer, null);
+            byte[] resource = buffer.toByteArray();
+
+            // Send it back to the client
+            HttpHeaders httpHeaders = new HttpHeaders();
+            httpHeaders.setContentLength(resource.length);
+            httpHeaders.set("Content-Disposition",
+                    "attachment; filename=\"" + exportedFileName + "\"");
+
+            return new ResponseEntity<>(resource, httpHeaders, OK);
         }
     }
 
@@ -773,6 +803,190 @@ public class AeroRemoteApiController
                         + aDocumentId + "] deleted from project [" + aProjectId + "]."));
     }
 
+    @Operation(summary = "Get annotations of multiple documents in a project as a ZIP file "
+            + "(non-AERO)", description = ZIP_STREAMING_NOTE)
+    @GetMapping( //
+            value = "/" + PROJECTS + "/{" + PARAM_PROJECT_ID + "}/" + ANNOTATIONS + "/" + EXPORT, //
+            produces = { "application/zip", APPLICATION_JSON_VALUE })
+    public void annotationsBulkRead(HttpServletResponse aResponse,
+            @PathVariable(PARAM_PROJECT_ID) long aProjectId,
+            @RequestParam(value = PARAM_DOCUMENT_ID) Optional<List<Long>> aDocumentIds,
+            @RequestParam(value = PARAM_ANNOTATOR_ID) Optional<List<String>> aAnnotatorIds,
+            @RequestParam(value = PARAM_FORMAT) Optional<String> aFormat)
+        throws Exception
+    {
+        // Get project (this also ensures that it exists and that the current user can access it
+        Project project = getProject(aProjectId);
+
+        // Make sure that all the requested documents and users exist
+        Set<Long> documentIds = new HashSet<>();
+        for (long documentId : aDocumentIds.orElse(emptyList())) {
+            documentIds.add(getDocument(project, documentId).getId());
+        }
+        Set<String> annotatorIds = new HashSet<>();
+        for (String annotatorId : aAnnotatorIds.orElse(emptyList())) {
+            annotatorIds.add(getUser(annotatorId).getUsername());
+        }
+
+        List<AnnotationDocument> annotations = new ArrayList<>();
+        for (AnnotationDocument anno : documentService.listAnnotationDocuments(project)) {
+            if ((documentIds.isEmpty() || documentIds.contains(anno.getDocument().getId()))
+                    && (annotatorIds.isEmpty() || annotatorIds.contains(anno.getUser()))
+                    && documentService.existsCas(anno)) {
+                annotations.add(anno);
+            }
+        }
+
+        // Resolve the formats before starting the response, so we can still report errors
+        Map<String, FormatSupport> formats = new HashMap<>();
+        for (AnnotationDocument anno : annotations) {
+            String formatId = getExportFormatId(anno.getDocument(), aFormat);
+            if (!formats.containsKey(formatId)) {
+                formats.put(formatId, getWritableFormat(formatId));
+            }
+        }
+
+        // Stream the annotations as ZIP entries <document name>/<user>.<extension> directly
+        // into the response - there is only a limited number of converted documents held in
+        // memory at any time.
+        startZipDownload(aResponse, project.getName() + "-annotations.zip");
+        try {
+            ZipOutputStream zip = new ZipOutputStream(aResponse.getOutputStream());
+            importExportService.exportAnnotationDocumentsToStream(annotations,
+                    doc -> formats.get(getExportFormatId(doc, aFormat)),
+                    (anno, fileName, data) -> {
+                        zip.putNextEntry(new ZipEntry(anno.getDocument().getName() + "/"
+                                + anno.getUser() + "." + FilenameUtils.getExtension(fileName)));
+                        zip.write(data);
+                        zip.closeEntry();
+                    });
+            zip.finish();
+            aResponse.flushBuffer();
+        }
+        catch (Exception e) {
+            abortZipDownload(aResponse);
+            throw e;
+        }
+    }
+
+    @Operation(summary = "Create or update annotations for multiple documents in a project from "
+            + "a ZIP file (non-AERO)", description = ZIP_UPLOAD_NOTE)
+    @PostMapping( //
+            value = "/" + PROJECTS + "/{" + PARAM_PROJECT_ID + "}/" + ANNOTATIONS + "/" + IMPORT, //
+            consumes = MULTIPART_FORM_DATA_VALUE, //
+            produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<RResponse<List<RAnnotation>>> annotationsBulkCreate(
+            @PathVariable(PARAM_PROJECT_ID) long aProjectId,
+            @RequestPart(PARAM_FILE) MultipartFile aFile,
+            @RequestParam(PARAM_FORMAT) Optional<String> aFormat,
+            @RequestParam(PARAM_STATE) Optional<String> aState)
+        throws Exception
+    {
+        // Get project (this also ensures that it exists and that the current user can access it
+        Project project = getProject(aProjectId);
+
+        // Check if the format is supported
+        String formatId = aFormat.orElse(FORMAT_DEFAULT);
+        FormatSupport format = getReadableFormat(formatId);
+
+        Optional<AnnotationDocumentState> state = aState
+                .map(AeroRemoteApiController::parseAnnotationDocumentState);
+
+        // All uploaded files share the same project type system. Formats that can be read from a
+        // stream use the compiled project type system. For the others, we build the type system
+        // description only once here.
+        TypeSystemDescription tsd = null;
+        if (!format.getCodec().filter(FormatCodec::isReadable).isPresent()) {
+            tsd = annotationService.getFullProjectTypeSystem(project);
+        }
+
+        // The ZIP is expected to contain entries <document name>/<user>.<extension> as produced
+        // by the bulk download. Before storing anything, we make sure that all the entries refer
+        // to existing documents and users.
+        try (ZipInputStream zip = new ZipInputStream(
+                new BufferedInputStream(aFile.getInputStream()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                Pair<String, String> target = getBulkEntryTarget(entry.getName());
+                if (!documentService.existsSourceDocument(project, target.getKey())) {
+                    throw new ObjectNotFoundException("Document [" + target.getKey()
+                            + "] in project [" + project.getId() + "] not found.");
+                }
+                getUser(target.getValue());
+            }
+        }
+
+        // The entries are converted and stored one at a time.
+        List<RAnnotation> annotations = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(
+                new BufferedInputStream(aFile.getInputStream()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                String entryName = entry.getName();
+                Pair<String, String> target = getBulkEntryTarget(entryName);
+                User annotator = getUser(target.getValue());
+                SourceDocument document = documentService.getSourceDocument(project,
+                        target.getKey());
+                AnnotationDocument anno = getAnnotation(document, target.getValue(), true);
+
+                try {
+                    CAS annotationCas = createCompatibleCas(project, document, zip, entryName,
+                            formatId, tsd);
+                    documentService.writeAnnotationCas(annotationCas, document, annotator,
+                            false);
+                }
+                catch (Exception e) {
+                    if (annotations.isEmpty()) {
+                        throw e;
+                    }
+
+                    // Let the client know which annotations have been stored nevertheless
+                    LOG.error(e.getMessage(), e);
+                    RResponse<List<RAnnotation>> response = new RResponse<>(annotations);
+                    response.addMessage(ERROR, "Unable to import ZIP entry [" + entryName
+                            + "]: " + e.getMessage() + " - the annotations of the preceding "
+                            + annotations.size() + " entries have been imported.");
+                    return ResponseEntity.status(e instanceof RemoteApiException
+                            ? ((RemoteApiException) e).getStatus()
+                            : INTERNAL_SERVER_ERROR).contentType(APPLICATION_JSON)
+                            .body(response);
+                }
+
+                if (state.isPresent()) {
+                    anno.setState(state.get());
+                    documentService.createAnnotationDocument(anno);
+                }
+
+                annotations.add(new RAnnotation(anno));
+            }
+        }
+
+        return ResponseEntity.ok(new RResponse<>(annotations));
+    }
+
+    private static Pair<String, String> getBulkEntryTarget(String aEntryName)
+        throws IllegalObjectStateException
+    {
+        int sep = aEntryName.lastIndexOf('/');
+        if (sep < 1) {
+            throw new IllegalObjectStateException(
+                    "ZIP entry [%s] does not match the pattern "
+                            + "[<document name>/<user>.<extension>].",
+                    aEntryName);
+        }
+
+        return Pair.of(aEntryName.substring(0, sep),
+                FilenameUtils.removeExtension(aEntryName.substring(sep + 1)));
+    }
+
     @Operation(summary = "Create curation for a document in a project")
     @PostMapping(//
             value = "/" + PROJECTS + "/{" + PARAM_PROJECT_ID + "}/" + DOCUMENTS + //
@@ -886,27 +1100,8 @@ public class AeroRemoteApiController
 
         SourceDocument doc = getDocument(project, aDocumentId);
 
-        // Check format
-        String formatId;
-        if (aFormat.isPresent()) {
-            if (VAL_ORIGINAL.equals(aFormat.get())) {
-                formatId = doc.getFormat();
-            }
-            else {
-                formatId = aFormat.get();
-            }
-        }
-        else {
-            formatId = doc.getFormat();
-        }
-
         // Determine the format
-        FormatSupport format = importExportService.getWritableFormatById(formatId)
-                .orElseThrow(() -> new UnsupportedFormatException(
-                        "Format [%s] is not writable. Acceptable formats are %s.", formatId,
-                        importExportService.getWritableFormats().stream() //
-                                .map(FormatSupport::getId) //
-                                .sorted().collect(Collectors.toList())));
+        FormatSupport format = getWritableFormat(getExportFormatId(doc, aFormat));
 
         // In principle we don't need this call - but it makes sure that we check that the
         // annotation document entry is actually properly set up in the database.
@@ -914,24 +1109,15 @@ public class AeroRemoteApiController
             getAnnotation(doc, aAnnotatorId, false);
         }
 
-        // Create a temporary export file from the annotations
-        File exportedAnnoFile = null;
-        byte[] resource;
-        try {
-            exportedAnnoFile = importExportService.exportAnnotationDocument(doc, aAnnotatorId,
-                    format, doc.getName(), Mode.ANNOTATION);
-            resource = FileUtils.readFileToByteArray(exportedAnnoFile);
-        }
-        finally {
-            if (exportedAnnoFile != null) {
-                FileUtils.forceDelete(exportedAnnoFile);
-            }
-        }
+        // Export the annotations into memory
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        String exportedFileName = importExportService.exportAnnotationDocumentToStream(doc,
+                aAnnotatorId, format, doc.getName(), Mode.ANNOTATION, true, buffer, null);
+        byte[] resource = buffer.toByteArray();
 
         String filename = FilenameUtils.removeExtension(doc.getName());
         filename += "-" + aAnnotatorId;
-        // Actually, exportedAnnoFile cannot be null here - the warning can be ignored.
-        filename += "." + FilenameUtils.getExtension(exportedAnnoFile.getName());
+        filename += "." + FilenameUtils.getExtension(exportedFileName);
 
         HttpHeaders httpHeaders = new HttpHeaders();
         httpHeaders.setContentLength(resource.length);
@@ -940,6 +1126,35 @@ public class AeroRemoteApiController
         return new ResponseEntity<>(resource, httpHeaders, OK);
     }
 
+    private static String getExportFormatId(SourceDocument aDocument, Optional<String> aFormat)
+    {
+        if (!aFormat.isPresent() || VAL_ORIGINAL.equals(aFormat.get())) {
+            return aDocument.getFormat();
+        }
+
+        return aFormat.get();
+    }
+
+    private FormatSupport getWritableFormat(String aFormatId) throws UnsupportedFormatException
+    {
+        return importExportService.getWritableFormatById(aFormatId)
+                .orElseThrow(() -> new UnsupportedFormatException(
+                        "Format [%s] is not writable. Acceptable formats are %s.", aFormatId,
+                        importExportService.getWritableFormats().stream() //
+                                .map(FormatSupport::getId) //
+                                .sorted().collect(Collectors.toList())));
+    }
+
+    private FormatSupport getReadableFormat(String aFormatId) throws UnsupportedFormatException
+    {
+        return importExportService.getReadableFormatById(aFormatId)
+                .orElseThrow(() -> new UnsupportedFormatException(
+                        "Format [%s] not supported. Acceptable formats are %s.", aFormatId,
+                        importExportService.getReadableFormats().stream()
+                                .map(FormatSupport::getId).sorted()
+                                .collect(Collectors.toList())));
+    }
+
     private CAS createCompatibleCas(long aProjectId, long aDocumentId, MultipartFile aFile,
             Optional<String> aFormatId)
         throws RemoteApiException, ClassNotFoundException, IOException, UIMAException
@@ -949,31 +1164,27 @@ public class AeroRemoteApiController
 
         // Check if the format is supported
         String format = aFormatId.orElse(FORMAT_DEFAULT);
-        if (!importExportService.getReadableFormatById(format).isPresent()) {
-            throw new UnsupportedFormatException(
-                    "Format [%s] not supported. Acceptable formats are %s.", format,
-                    importExportService.getReadableFormats().stream().map(FormatSupport::getId)
-                            .sorted().collect(Collectors.toList()));
+        getReadableFormat(format);
+
+        try (InputStream is = aFile.getInputStream()) {
+            return createCompatibleCas(project, document, is, aFile.getOriginalFilename(), format,
+                    null);
         }
+    }
 
+    private CAS createCompatibleCas(Project aProject, SourceDocument aDocument,
+            InputStream aInputStream, String aFileName, String aFormatId,
+            TypeSystemDescription aFullProjectTypeSystem)
+        throws RemoteApiException, IOException, UIMAException
+    {
         // Convert the uploaded annotation document into a CAS
-        File tmpFile = null;
-        CAS annotationCas;
-        try {
-            tmpFile = File.createTempFile("upload", ".bin");
-            aFile.transferTo(tmpFile);
-            annotationCas = importExportService.importCasFromFile(tmpFile, project, format);
-        }
-        finally {
-            if (tmpFile != null) {
-                FileUtils.forceDelete(tmpFile);
-            }
-        }
+        CAS annotationCas = importExportService.importCasFromStream(aInputStream, aFileName,
+                aProject, aFormatId, aFullProjectTypeSystem);
 
         // Check if the uploaded file is compatible with the source document. They are compatible
         // if the text is the same and if all the token and sentence annotations have the same
         // offsets.
-        CAS initialCas = documentService.createOrReadInitialCas(document);
+        CAS initialCas = documentService.createOrReadInitialCas(aDocument);
         String initialText = initialCas.getDocumentText();
         String annotationText = annotationCas.getDocumentText();
 
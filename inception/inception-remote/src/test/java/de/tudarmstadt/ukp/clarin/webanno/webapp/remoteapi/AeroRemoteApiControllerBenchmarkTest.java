@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.webapp.remoteapi;
+
+import static de.tudarmstadt.ukp.clarin.webanno.security.model.Role.ROLE_ADMIN;
+import static de.tudarmstadt.ukp.clarin.webanno.webapp.remoteapi.aero.AeroRemoteApiController.API_BASE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.MULTIPART_FORM_DATA;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import com.jayway.jsonpath.JsonPath;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.annotationservice.config.AnnotationSchemaServiceAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.OpenCasStorageSessionForRequestFilter;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.config.CasStorageServiceAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.docimexport.config.DocumentImportExportServiceAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.documentservice.config.DocumentServiceAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.export.config.ProjectExportServiceAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.config.CurationDocumentServiceAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.project.config.ProjectServiceAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.security.UserDao;
+import de.tudarmstadt.ukp.clarin.webanno.security.config.SecurityAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.clarin.webanno.support.logging.LoggingFilter;
+import de.tudarmstadt.ukp.clarin.webanno.text.config.TextFormatsAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.webapp.remoteapi.config.RemoteApiAutoConfiguration;
+
+/**
+ * Load test comparing the per-document annotation endpoints with the bulk endpoints of the AERO
+ * remote API. The requests go over HTTP to a server running on a random port, so the measured
+ * times include the serialization of the requests and responses.
+ */
+@Tag("slow")
+@EnableAutoConfiguration(exclude = LiquibaseAutoConfiguration.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, //
+        properties = { //
+                "spring.main.banner-mode=off", //
+                "remote-api.enabled=true", //
+                "repository.path=" + AeroRemoteApiControllerBenchmarkTest.TEST_OUTPUT_FOLDER })
+@EnableWebSecurity
+@Import({ //
+        ProjectExportServiceAutoConfiguration.class, //
+        CurationDocumentServiceAutoConfiguration.class, //
+        TextFormatsAutoConfiguration.class, //
+        DocumentImportExportServiceAutoConfiguration.class, //
+        DocumentServiceAutoConfiguration.class, //
+        ProjectServiceAutoConfiguration.class, //
+        CasStorageServiceAutoConfiguration.class, //
+        RepositoryAutoConfiguration.class, //
+        AnnotationSchemaServiceAutoConfiguration.class, //
+        SecurityAutoConfiguration.class, //
+        RemoteApiAutoConfiguration.class })
+@EntityScan({ //
+        "de.tudarmstadt.ukp.clarin.webanno.model", //
+        "de.tudarmstadt.ukp.clarin.webanno.security.model" })
+public class AeroRemoteApiControllerBenchmarkTest
+{
+    static final String TEST_OUTPUT_FOLDER = "target/test-output/AeroRemoteApiControllerBenchmarkTest";
+
+    private static final String USERNAME = "admin";
+    private static final String PASSWORD = "admin";
+
+    private static final int DOCUMENTS = 200;
+    private static final int SENTENCES = 50;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private @Autowired TestRestTemplate restTemplate;
+    private @Autowired UserDao userRepository;
+    private @Autowired PasswordEncoder passwordEncoder;
+
+    private TestRestTemplate client;
+
+    @BeforeAll
+    public static void setupClass()
+    {
+        FileSystemUtils.deleteRecursively(new File(TEST_OUTPUT_FOLDER));
+    }
+
+    @BeforeEach
+    public void setup()
+    {
+        User admin = new User(USERNAME, ROLE_ADMIN);
+        admin.setEncodedPassword(passwordEncoder.encode(PASSWORD));
+        userRepository.create(admin);
+
+        client = restTemplate.withBasicAuth(USERNAME, PASSWORD);
+    }
+
+    @Test
+    public void benchmarkBulkEndpoints() throws Exception
+    {
+        MultiValueMap<String, Object> projectForm = new LinkedMultiValueMap<>();
+        projectForm.add("name", "benchmark");
+        ResponseEntity<String> response = client.postForEntity(API_BASE + "/projects",
+                multipart(projectForm), String.class);
+        assertThat(response.getStatusCode()).isEqualTo(CREATED);
+        int projectId = JsonPath.read(response.getBody(), "$.body.id");
+        String projectUrl = API_BASE + "/projects/" + projectId;
+
+        // Create the documents and an upload containing annotations for all of them
+        ByteArrayOutputStream upload = new ByteArrayOutputStream();
+        int[] documentIds = new int[DOCUMENTS];
+        try (ZipOutputStream zip = new ZipOutputStream(upload)) {
+            for (int n = 0; n < DOCUMENTS; n++) {
+                byte[] text = makeText(n).getBytes(UTF_8);
+
+                MultiValueMap<String, Object> documentForm = new LinkedMultiValueMap<>();
+                documentForm.add("content", file("doc" + n + ".txt", text));
+                documentForm.add("name", "doc" + n + ".txt");
+                documentForm.add("format", "text");
+                response = client.postForEntity(projectUrl + "/documents",
+                        multipart(documentForm), String.class);
+                assertThat(response.getStatusCode()).isEqualTo(CREATED);
+                documentIds[n] = JsonPath.read(response.getBody(), "$.body.id");
+
+                zip.putNextEntry(new ZipEntry("doc" + n + ".txt/" + USERNAME + ".txt"));
+                zip.write(text);
+                zip.closeEntry();
+            }
+        }
+
+        // Bulk upload
+        MultiValueMap<String, Object> uploadForm = new LinkedMultiValueMap<>();
+        uploadForm.add("file", file("annotations.zip", upload.toByteArray()));
+        uploadForm.add("format", "text");
+        long start = System.currentTimeMillis();
+        response = client.postForEntity(projectUrl + "/annotations/import",
+                multipart(uploadForm), String.class);
+        long bulkUploadTime = System.currentTimeMillis() - start;
+        assertThat(response.getStatusCode()).isEqualTo(OK);
+
+        // Per-document download
+        start = System.currentTimeMillis();
+        for (int documentId : documentIds) {
+            ResponseEntity<byte[]> download = client.getForEntity(projectUrl + "/documents/"
+                    + documentId + "/annotations/" + USERNAME + "?format=text", byte[].class);
+            assertThat(download.getStatusCode()).isEqualTo(OK);
+        }
+        long singleDownloadTime = System.currentTimeMillis() - start;
+
+        // Bulk download
+        start = System.currentTimeMillis();
+        ResponseEntity<byte[]> download = client
+                .getForEntity(projectUrl + "/annotations/export.zip?format=text", byte[].class);
+        long bulkDownloadTime = System.currentTimeMillis() - start;
+        assertThat(download.getStatusCode()).isEqualTo(OK);
+
+        int entries = 0;
+        try (ZipInputStream zip = new ZipInputStream(
+                new ByteArrayInputStream(download.getBody()))) {
+            while (zip.getNextEntry() != null) {
+                entries++;
+            }
+        }
+        assertThat(entries).isEqualTo(DOCUMENTS);
+
+        log.info("{} documents: bulk upload {} ms, per-document download {} ms, bulk download "
+                + "{} ms", DOCUMENTS, bulkUploadTime, singleDownloadTime, bulkDownloadTime);
+    }
+
+    private static HttpEntity<MultiValueMap<String, Object>> multipart(
+            MultiValueMap<String, Object> aForm)
+    {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MULTIPART_FORM_DATA);
+        return new HttpEntity<>(aForm, headers);
+    }
+
+    private static ByteArrayResource file(String aFileName, byte[] aContent)
+    {
+        return new ByteArrayResource(aContent)
+        {
+            @Override
+            public String getFilename()
+            {
+                return aFileName;
+            }
+        };
+    }
+
+    private static String makeText(int aDocument)
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < SENTENCES; i++) {
+            text.append("This is sentence ").append(i).append(" of document ").append(aDocument)
+                    .append(". ");
+        }
+        return text.toString();
+    }
+
+    @SpringBootConfiguration
+    public static class TestContext
+    {
+        @Bean
+        public LoggingFilter loggingFilter(RepositoryProperties aRepositoryProperties)
+        {
+            return new LoggingFilter(aRepositoryProperties.getPath().toString());
+        }
+
+        @Bean
+        public OpenCasStorageSessionForRequestFilter openCasStorageSessionForRequestFilter()
+        {
+            return new OpenCasStorageSessionForRequestFilter();
+        }
+    }
+
+    /**
+     * Like the remote API security of the application: stateless HTTP basic authentication
+     * against the user database without CSRF protection.
+     */
+    @Configuration
+    public static class RemoteApiSecurity
+        extends WebSecurityConfigurerAdapter
+    {
+        private @Autowired PasswordEncoder passwordEncoder;
+        private @Autowired UserDao userRepository;
+
+        @Override
+        protected void configure(AuthenticationManagerBuilder aAuth) throws Exception
+        {
+            aAuth.userDetailsService(username -> {
+                User user = userRepository.get(username);
+                if (user == null) {
+                    throw new UsernameNotFoundException(username);
+                }
+                return org.springframework.security.core.userdetails.User //
+                        .withUsername(user.getUsername()) //
+                        .password(user.getPassword()) //
+                        .roles("ADMIN") //
+                        .build();
+            }).passwordEncoder(passwordEncoder);
+        }
+
+        @Override
+        protected void configure(HttpSecurity aHttp) throws Exception
+        {
+            // @formatter:off
+            aHttp
+                .csrf().disable()
+                .authorizeRequests()
+                    .anyRequest().authenticated()
+                .and()
+                .httpBasic();
+            // @formatter:on
+        }
+    }
+}
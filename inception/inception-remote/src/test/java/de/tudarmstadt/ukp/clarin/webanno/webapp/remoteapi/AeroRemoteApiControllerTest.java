@@ -19,6 +19,9 @@ package de.tudarmstadt.ukp.clarin.webanno.webapp.remoteapi;
 
 import static de.tudarmstadt.ukp.clarin.webanno.security.model.Role.ROLE_ADMIN;
 import static de.tudarmstadt.ukp.clarin.webanno.webapp.remoteapi.aero.AeroRemoteApiController.API_BASE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
@@ -28,10 +31,18 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -50,6 +61,7 @@ import org.springframework.http.MediaType;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.util.FileSystemUtils;
 import org.springframework.web.context.WebApplicationContext;
@@ -70,6 +82,7 @@ import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.clarin.webanno.support.logging.LoggingFilter;
 import de.tudarmstadt.ukp.clarin.webanno.text.config.TextFormatsAutoConfiguration;
 import de.tudarmstadt.ukp.clarin.webanno.webapp.remoteapi.config.RemoteApiAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.xmi.config.UimaFormatsAutoConfiguration;
 
 @EnableAutoConfiguration(exclude = LiquibaseAutoConfiguration.class)
 @SpringBootTest(webEnvironment = WebEnvironment.MOCK, //
@@ -82,6 +95,7 @@ import de.tudarmstadt.ukp.clarin.webanno.webapp.remoteapi.config.RemoteApiAutoCo
         ProjectExportServiceAutoConfiguration.class, //
         CurationDocumentServiceAutoConfiguration.class, //
         TextFormatsAutoConfiguration.class, //
+        UimaFormatsAutoConfiguration.class, //
         DocumentImportExportServiceAutoConfiguration.class, //
         DocumentServiceAutoConfiguration.class, //
         ProjectServiceAutoConfiguration.class, //
@@ -294,6 +308,118 @@ public class AeroRemoteApiControllerTest
         // @formatter:on
     }
 
+    @Test
+    public void t006_testAnnotationsBulkReadAndCreate() throws Exception
+    {
+        // @formatter:off
+        MvcResult result = mvc.perform(get(API_BASE + "/projects/1/annotations/export.zip")
+                .with(csrf().asHeader())
+                .with(user("admin").roles("ADMIN"))
+                .param("format", "text"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/zip"))
+            .andExpect(header().string(CONTENT_DISPOSITION,
+                    "attachment; filename*=UTF-8''project1-annotations.zip"))
+            .andReturn();
+        // @formatter:on
+
+        byte[] zip = result.getResponse().getContentAsByteArray();
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                entries.add(entry.getName());
+                assertThat(new String(zis.readAllBytes(), UTF_8)).startsWith("This is a test.");
+            }
+        }
+        assertThat(entries).containsExactly("test.txt/admin.txt");
+
+        // @formatter:off
+        mvc.perform(multipart(API_BASE + "/projects/1/annotations/import")
+                .file("file", zip)
+                .with(csrf().asHeader())
+                .with(user("admin").roles("ADMIN"))
+                .param("format", "text")
+                .param("state", "COMPLETE"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.body[0].user").value("admin"))
+            .andExpect(jsonPath("$.body[0].state").value("COMPLETE"));
+
+        mvc.perform(get(API_BASE + "/projects/1/documents/1/annotations")
+                .with(csrf().asHeader())
+                .with(user("admin").roles("ADMIN")))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.body[0].user").value("admin"))
+            .andExpect(jsonPath("$.body[0].state").value("COMPLETE"));
+        // @formatter:on
+    }
+
+    @Test
+    public void t007_testAnnotationsBulkReadAndCreateXmi() throws Exception
+    {
+        // @formatter:off
+        MvcResult result = mvc.perform(get(API_BASE + "/projects/1/annotations/export.zip")
+                .with(csrf().asHeader())
+                .with(user("admin").roles("ADMIN"))
+                .param("format", "xmi"))
+            .andExpect(status().isOk())
+            .andReturn();
+        // @formatter:on
+
+        byte[] zip = result.getResponse().getContentAsByteArray();
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                entries.add(entry.getName());
+            }
+        }
+        assertThat(entries).containsExactly("test.txt/admin.zip");
+
+        // The bulk download can be uploaded again as-is
+        // @formatter:off
+        mvc.perform(multipart(API_BASE + "/projects/1/annotations/import")
+                .file("file", zip)
+                .with(csrf().asHeader())
+                .with(user("admin").roles("ADMIN"))
+                .param("format", "xmi"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.body[0].user").value("admin"));
+        // @formatter:on
+    }
+
+    @Test
+    public void t008_testAnnotationsBulkCreateWithMissingDocument() throws Exception
+    {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(zip)) {
+            zos.putNextEntry(new ZipEntry("test.txt/admin.txt"));
+            zos.write("This is a test.".getBytes(UTF_8));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("missing.txt/admin.txt"));
+            zos.write("This is a test.".getBytes(UTF_8));
+            zos.closeEntry();
+        }
+
+        // @formatter:off
+        mvc.perform(multipart(API_BASE + "/projects/1/annotations/import")
+                .file("file", zip.toByteArray())
+                .with(csrf().asHeader())
+                .with(user("admin").roles("ADMIN"))
+                .param("format", "text")
+                .param("state", "IN-PROGRESS"))
+            .andExpect(status().isNotFound());
+
+        // Nothing has been stored since the ZIP is checked before any entry is imported
+        mvc.perform(get(API_BASE + "/projects/1/documents/1/annotations")
+                .with(csrf().asHeader())
+                .with(user("admin").roles("ADMIN")))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.body[0].state").value("COMPLETE"));
+        // @formatter:on
+    }
+
     @SpringBootConfiguration
     public static class TestContext
     {
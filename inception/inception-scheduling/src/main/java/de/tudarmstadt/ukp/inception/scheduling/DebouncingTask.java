@@ -49,4 +49,12 @@ public abstract class DebouncingTask
     {
         return System.currentTimeMillis() > runnableAfter;
     }
+
+    /**
+     * @return the time (ms since the epoch) after which the task becomes ready to start.
+     */
+    public long getRunnableAfter()
+    {
+        return runnableAfter;
+    }
 }
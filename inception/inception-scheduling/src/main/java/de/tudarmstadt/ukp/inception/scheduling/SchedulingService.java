@@ -18,6 +18,7 @@
 package de.tudarmstadt.ukp.inception.scheduling;
 
 import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
 
 public interface SchedulingService
@@ -41,6 +42,12 @@ public interface SchedulingService
 
     List<Task> getAllTasks();
 
+    /**
+     * @return queue depth, active tasks as well as accumulated wait and run times per task
+     *         priority class.
+     */
+    Map<TaskPriority, TaskStatistics> getStatistics();
+
     /**
      * Enqueue a task. This may not immediately schedule or run the task. If an equivalent task
      * (i.e. one that {@link Object#equals} the given task) has already been scheduled or started,
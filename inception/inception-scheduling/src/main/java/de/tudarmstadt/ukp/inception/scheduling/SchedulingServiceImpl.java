@@ -20,16 +20,27 @@ package de.tudarmstadt.ukp.inception.scheduling;
 import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.DISCARD_OR_QUEUE_THIS;
 import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.NO_MATCH;
 import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.UNQUEUE_EXISTING_AND_QUEUE_THIS;
-import static java.util.concurrent.TimeUnit.SECONDS;
+import static de.tudarmstadt.ukp.inception.scheduling.TaskPriority.PREDICTION;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 import org.slf4j.Logger;
@@ -39,10 +50,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.ApplicationContext;
 
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.inception.scheduling.config.SchedulingProperties;
 import de.tudarmstadt.ukp.inception.scheduling.config.SchedulingServiceAutoConfiguration;
 
 /**
+ * Scheduler which dispatches tasks to a fixed number of workers.
+ * <ul>
+ * <li>Tasks are picked by {@link TaskPriority priority class} first. If there is more than one
+ * worker, one worker is always kept available for {@link TaskPriority#PREDICTION prediction}
+ * tasks.</li>
+ * <li>Within a priority class, the users are served round-robin so that a user enqueuing many
+ * tasks cannot starve the others.</li>
+ * <li>Enqueued and active tasks are indexed by project, so matching an incoming task against the
+ * existing tasks only needs to look at the tasks of the same project.</li>
+ * <li>Tasks are dispatched when they are enqueued and whenever a task completes. Tasks which are
+ * not ready to start yet are re-checked once they become ready.</li>
+ * </ul>
  * <p>
  * This class is exposed as a Spring Component via
  * {@link SchedulingServiceAutoConfiguration#schedulingService}.
@@ -53,36 +77,91 @@ public class SchedulingServiceImpl
 {
     private static final Logger log = LoggerFactory.getLogger(SchedulingService.class);
 
+    /**
+     * Delay after which tasks that are not ready to start are re-checked if the task does not
+     * tell us when it becomes ready.
+     */
+    private static final long NOT_READY_RECHECK_DELAY = 1000;
+
+    private static final String SYSTEM_USER = "";
+
     private final ApplicationContext applicationContext;
     private final ThreadPoolExecutor executor;
     private final ScheduledExecutorService watchdog;
-
-    private final List<Task> runningTasks;
-    private final List<Task> enqueuedTasks;
+    private final int numberOfThreads;
+
+    // The following fields are guarded by "this"
+    private final Map<TaskPriority, LinkedHashMap<String, Deque<Task>>> queues;
+    private final Map<Object, List<Task>> enqueuedTasksByProject;
+    private final Map<Object, List<Task>> activeTasksByProject;
+    private final Set<Task> scheduledTasks;
+    private final Set<Task> runningTasks;
+    private final Map<Task, Long> enqueueTimes;
+    private final Map<Task, Long> startTimes;
+    private int activeNonPredictionTasks;
+    private ScheduledFuture<?> wakeUp;
+    private long wakeUpTime;
+
+    private final Map<TaskPriority, Counters> counters;
 
     @Autowired
     public SchedulingServiceImpl(ApplicationContext aApplicationContext,
             SchedulingProperties aConfig)
     {
         applicationContext = aApplicationContext;
-        executor = new InspectableThreadPoolExecutor(aConfig.getNumberOfThreads(),
-                aConfig.getQueueSize(), this::beforeExecute, this::afterExecute);
-        runningTasks = Collections.synchronizedList(new ArrayList<>());
-        enqueuedTasks = Collections.synchronizedList(new ArrayList<>());
+        numberOfThreads = aConfig.getNumberOfThreads();
+        executor = new InspectableThreadPoolExecutor(numberOfThreads, aConfig.getQueueSize(),
+                this::beforeExecute, this::afterExecute);
         watchdog = Executors.newScheduledThreadPool(1);
-        watchdog.scheduleAtFixedRate(this::scheduleEligibleTasks, 5, 5, SECONDS);
+
+        queues = new EnumMap<>(TaskPriority.class);
+        counters = new EnumMap<>(TaskPriority.class);
+        for (TaskPriority priority : TaskPriority.values()) {
+            queues.put(priority, new LinkedHashMap<>());
+            counters.put(priority, new Counters());
+        }
+
+        enqueuedTasksByProject = new HashMap<>();
+        activeTasksByProject = new HashMap<>();
+        scheduledTasks = newIdentitySet();
+        runningTasks = newIdentitySet();
+        enqueueTimes = new IdentityHashMap<>();
+        startTimes = new IdentityHashMap<>();
     }
 
-    private void beforeExecute(Thread aThread, Runnable aRunnable)
+    private synchronized void beforeExecute(Thread aThread, Runnable aRunnable)
     {
-        runningTasks.add((Task) aRunnable);
+        Task task = (Task) aRunnable;
+        scheduledTasks.remove(task);
+        runningTasks.add(task);
+
+        startTimes.put(task, System.currentTimeMillis());
+
         log.debug("Starting task [{}]", aRunnable);
     }
 
     private void afterExecute(Runnable aRunnable, Throwable aThrowable)
     {
-        runningTasks.remove(aRunnable);
+        Task task = (Task) aRunnable;
+
+        synchronized (this) {
+            runningTasks.remove(task);
+            removeActive(task);
+
+            Long enqueueTime = enqueueTimes.remove(task);
+            Long startTime = startTimes.remove(task);
+            Counters c = counters.get(task.getPriority());
+            c.completed.incrementAndGet();
+            if (startTime != null) {
+                c.totalRunTime.addAndGet(System.currentTimeMillis() - startTime);
+                if (enqueueTime != null) {
+                    c.totalWaitTime.addAndGet(startTime - enqueueTime);
+                }
+            }
+        }
+
         log.debug("Completed task [{}]", aRunnable);
+
         scheduleEligibleTasks();
     }
 
@@ -90,18 +169,22 @@ public class SchedulingServiceImpl
      * @return tasks which have not been handed to the executor yet.
      */
     @Override
-    public List<Task> getEnqueuedTasks()
+    public synchronized List<Task> getEnqueuedTasks()
     {
         // We return copy here, as else the list the receiver sees might be updated
         // when new tasks are running or existing ones stopped.
-        return new ArrayList<>(enqueuedTasks);
+        List<Task> result = new ArrayList<>();
+        for (Map<String, Deque<Task>> userQueues : queues.values()) {
+            userQueues.values().forEach(result::addAll);
+        }
+        return result;
     }
 
     /**
      * @return tasks which have been handed to the executor but have not yet been started.
      */
     @Override
-    public List<Task> getScheduledTasks()
+    public synchronized List<Task> getScheduledTasks()
     {
         List<Task> result = new ArrayList<>();
         executor.getQueue().forEach(r -> result.add((Task) r));
@@ -112,7 +195,7 @@ public class SchedulingServiceImpl
      * @return tasks which have been already been started.
      */
     @Override
-    public List<Task> getRunningTasks()
+    public synchronized List<Task> getRunningTasks()
     {
         // We return copy here, as else the list the receiver sees might be updated
         // when new tasks are running or existing ones stopped.
@@ -120,7 +203,7 @@ public class SchedulingServiceImpl
     }
 
     @Override
-    public List<Task> getScheduledAndRunningTasks()
+    public synchronized List<Task> getScheduledAndRunningTasks()
     {
         List<Task> result = new ArrayList<>();
         result.addAll(getScheduledTasks());
@@ -129,7 +212,7 @@ public class SchedulingServiceImpl
     }
 
     @Override
-    public List<Task> getAllTasks()
+    public synchronized List<Task> getAllTasks()
     {
         List<Task> result = new ArrayList<>();
         result.addAll(getEnqueuedTasks());
@@ -138,6 +221,30 @@ public class SchedulingServiceImpl
         return result;
     }
 
+    @Override
+    public synchronized Map<TaskPriority, TaskStatistics> getStatistics()
+    {
+        Map<TaskPriority, Integer> active = new EnumMap<>(TaskPriority.class);
+        for (Task t : scheduledTasks) {
+            active.merge(t.getPriority(), 1, Integer::sum);
+        }
+        for (Task t : runningTasks) {
+            active.merge(t.getPriority(), 1, Integer::sum);
+        }
+
+        Map<TaskPriority, TaskStatistics> result = new EnumMap<>(TaskPriority.class);
+        for (TaskPriority priority : TaskPriority.values()) {
+            int queueDepth = queues.get(priority).values().stream() //
+                    .mapToInt(Deque::size) //
+                    .sum();
+            Counters c = counters.get(priority);
+            result.put(priority,
+                    new TaskStatistics(queueDepth, active.getOrDefault(priority, 0),
+                            c.completed.get(), c.totalWaitTime.get(), c.totalRunTime.get()));
+        }
+        return result;
+    }
+
     /**
      * Enqueue a task. This may not immediately schedule or run the task. If an equivalent task
      * (i.e. one that {@link Object#equals} the given task) has already been scheduled or started,
@@ -153,50 +260,44 @@ public class SchedulingServiceImpl
      *            the task to be enqueued.
      */
     @Override
-    public synchronized void enqueue(Task aTask)
+    public void enqueue(Task aTask)
     {
-        // Check if the incoming task should be discarded
-        for (Task enqueuedTask : enqueuedTasks) {
-            if (matchTask(aTask, enqueuedTask) == DISCARD_OR_QUEUE_THIS) {
-                log.debug("Matching task already queued - keeping existing: [{}] and discarding "
-                        + "incoming [{}]", enqueuedTask, aTask);
-                return;
+        synchronized (this) {
+            List<Task> enqueuedTasks = enqueuedTasksByProject.getOrDefault(projectKey(aTask),
+                    Collections.emptyList());
+
+            // Check if the incoming task should be discarded
+            for (Task enqueuedTask : enqueuedTasks) {
+                if (matchTask(aTask, enqueuedTask) == DISCARD_OR_QUEUE_THIS) {
+                    log.debug("Matching task already queued - keeping existing: [{}] and "
+                            + "discarding incoming [{}]", enqueuedTask, aTask);
+                    return;
+                }
             }
-        }
 
-        // Check if any existing tasks should be replaced with the new incoming task (i.e. the
-        // incoming task supersedes them).
-        List<Task> tasksToUnqueue = new ArrayList<>();
-        for (Task enqueuedTask : enqueuedTasks) {
-            if (matchTask(aTask, enqueuedTask) == UNQUEUE_EXISTING_AND_QUEUE_THIS) {
-                tasksToUnqueue.add(enqueuedTask);
-                log.debug("Matching task already queued - unqueuing exsting: [{}] in favor of "
-                        + "incoming [{}]", enqueuedTask, aTask);
+            // Check if any existing tasks should be replaced with the new incoming task (i.e. the
+            // incoming task supersedes them).
+            List<Task> tasksToUnqueue = new ArrayList<>();
+            for (Task enqueuedTask : enqueuedTasks) {
+                if (matchTask(aTask, enqueuedTask) == UNQUEUE_EXISTING_AND_QUEUE_THIS) {
+                    tasksToUnqueue.add(enqueuedTask);
+                    log.debug("Matching task already queued - unqueuing exsting: [{}] in favor of "
+                            + "incoming [{}]", enqueuedTask, aTask);
+                }
             }
-        }
-        enqueuedTasks.removeAll(tasksToUnqueue);
-
-        if (containsMatchingTask(getScheduledTasks(), aTask)) {
-            log.debug("Matching task already scheduled - adding to queue: [{}]", aTask);
-            enqueuedTasks.add(aTask);
-            return;
-        }
+            tasksToUnqueue.forEach(this::removeEnqueued);
 
-        if (containsMatchingTask(getRunningTasks(), aTask)) {
-            log.debug("Matching task already running - adding to queue: [{}]", aTask);
-            enqueuedTasks.add(aTask);
-            return;
-        }
+            queues.get(aTask.getPriority()) //
+                    .computeIfAbsent(userKey(aTask), k -> new ArrayDeque<>()) //
+                    .add(aTask);
+            enqueuedTasksByProject.computeIfAbsent(projectKey(aTask), k -> new ArrayList<>())
+                    .add(aTask);
+            enqueueTimes.put(aTask, System.currentTimeMillis());
 
-        if (!aTask.isReadyToStart()) {
-            log.debug("Task not yet ready to start - adding to queue: [{}]", aTask);
-            enqueuedTasks.add(aTask);
-            return;
+            log.debug("Enqueued task [{}]", aTask);
         }
 
-        schedule(aTask);
-
-        logState();
+        scheduleEligibleTasks();
     }
 
     private MatchResult matchTask(Task aTask, Task aEnqueueTask)
@@ -232,24 +333,182 @@ public class SchedulingServiceImpl
         factory.autowireBean(aTask);
         factory.initializeBean(aTask, "transientTask");
 
+        scheduledTasks.add(aTask);
+        activeTasksByProject.computeIfAbsent(projectKey(aTask), k -> new ArrayList<>())
+                .add(aTask);
+        if (aTask.getPriority() != PREDICTION) {
+            activeNonPredictionTasks++;
+        }
+
         executor.execute(aTask);
     }
 
     private synchronized void scheduleEligibleTasks()
     {
-        Iterator<Task> i = enqueuedTasks.iterator();
+        if (executor.isShutdown()) {
+            return;
+        }
 
-        while (i.hasNext()) {
-            Task t = i.next();
-            if (!getScheduledAndRunningTasks().contains(t) && t.isReadyToStart()) {
-                i.remove();
-                schedule(t);
+        long nextReadyTime = Long.MAX_VALUE;
+        while (scheduledTasks.size() + runningTasks.size() < numberOfThreads) {
+            NextTask next = findNextEligibleTask();
+            nextReadyTime = next.nextReadyTime;
+
+            if (next.task == null) {
+                break;
             }
+
+            unqueue(next.task);
+            schedule(next.task);
         }
 
+        armWakeUp(nextReadyTime);
+
         logState();
     }
 
+    /**
+     * Looks for the next task to run. The priority classes are checked in order. Within a class,
+     * the users are served round-robin and the tasks of each user in the order they were enqueued.
+     * A task is eligible if it is ready to start and no matching task is scheduled or running.
+     */
+    private NextTask findNextEligibleTask()
+    {
+        long now = System.currentTimeMillis();
+        long nextReadyTime = Long.MAX_VALUE;
+
+        for (TaskPriority priority : TaskPriority.values()) {
+            // Always keep one worker available for interactive predictions
+            if (priority != PREDICTION && numberOfThreads > 1
+                    && activeNonPredictionTasks >= numberOfThreads - 1) {
+                break;
+            }
+
+            LinkedHashMap<String, Deque<Task>> userQueues = queues.get(priority);
+            for (Map.Entry<String, Deque<Task>> userQueue : userQueues.entrySet()) {
+                for (Task task : userQueue.getValue()) {
+                    if (!task.isReadyToStart()) {
+                        nextReadyTime = Math.min(nextReadyTime, readyTime(task, now));
+                        continue;
+                    }
+
+                    List<Task> active = activeTasksByProject.get(projectKey(task));
+                    if (active != null && containsMatchingTask(active, task)) {
+                        // Will be re-checked when the matching task completes
+                        continue;
+                    }
+
+                    // Move the user to the end of the round-robin order
+                    Deque<Task> tasks = userQueues.remove(userQueue.getKey());
+                    userQueues.put(userQueue.getKey(), tasks);
+
+                    return new NextTask(task, nextReadyTime);
+                }
+            }
+        }
+
+        return new NextTask(null, nextReadyTime);
+    }
+
+    private long readyTime(Task aTask, long aNow)
+    {
+        if (aTask instanceof DebouncingTask) {
+            return Math.max(((DebouncingTask) aTask).getRunnableAfter() + 1, aNow + 1);
+        }
+
+        return aNow + NOT_READY_RECHECK_DELAY;
+    }
+
+    private void armWakeUp(long aTime)
+    {
+        if (aTime == Long.MAX_VALUE) {
+            return;
+        }
+
+        // There is already a wake-up scheduled early enough
+        if (wakeUp != null && !wakeUp.isDone() && wakeUpTime <= aTime) {
+            return;
+        }
+
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+        }
+
+        wakeUpTime = aTime;
+        wakeUp = watchdog.schedule(this::scheduleEligibleTasks,
+                Math.max(0, aTime - System.currentTimeMillis()), MILLISECONDS);
+    }
+
+    /**
+     * Removes a task which is not going to be run from the queues, e.g. because it has been
+     * superseded or stopped.
+     */
+    private void removeEnqueued(Task aTask)
+    {
+        unqueue(aTask);
+        enqueueTimes.remove(aTask);
+    }
+
+    /**
+     * Removes a task from the queues. The enqueue time is retained so that the waiting time can be
+     * recorded once the task has run.
+     */
+    private void unqueue(Task aTask)
+    {
+        Map<String, Deque<Task>> userQueues = queues.get(aTask.getPriority());
+        String user = userKey(aTask);
+        Deque<Task> userQueue = userQueues.get(user);
+        if (userQueue != null) {
+            userQueue.removeIf(t -> t == aTask);
+            if (userQueue.isEmpty()) {
+                userQueues.remove(user);
+            }
+        }
+
+        List<Task> projectTasks = enqueuedTasksByProject.get(projectKey(aTask));
+        if (projectTasks != null) {
+            projectTasks.removeIf(t -> t == aTask);
+            if (projectTasks.isEmpty()) {
+                enqueuedTasksByProject.remove(projectKey(aTask));
+            }
+        }
+    }
+
+    private void removeActive(Task aTask)
+    {
+        List<Task> projectTasks = activeTasksByProject.get(projectKey(aTask));
+        if (projectTasks != null) {
+            projectTasks.removeIf(t -> t == aTask);
+            if (projectTasks.isEmpty()) {
+                activeTasksByProject.remove(projectKey(aTask));
+            }
+        }
+
+        if (aTask.getPriority() != PREDICTION) {
+            activeNonPredictionTasks--;
+        }
+    }
+
+    /**
+     * Tasks only ever match other tasks from the same project, so we use the project as the key
+     * for indexing the tasks. Prefer the ID because the matchers compare projects by ID.
+     */
+    private static Object projectKey(Task aTask)
+    {
+        Project project = aTask.getProject();
+        return project.getId() != null ? project.getId() : project;
+    }
+
+    private static String userKey(Task aTask)
+    {
+        return aTask.getUser() != null ? aTask.getUser().getUsername() : SYSTEM_USER;
+    }
+
+    private static Set<Task> newIdentitySet()
+    {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
     /**
      * Removes all task for the user with name {@code aUsername} from the scheduler's queue.
      * 
@@ -259,14 +518,29 @@ public class SchedulingServiceImpl
     @Override
     public void stopAllTasksForUser(String aUserName)
     {
-        stopAllTasksMatching(t -> t.getUser().getUsername().equals(aUserName));
+        stopAllTasksMatching(
+                t -> t.getUser() != null && t.getUser().getUsername().equals(aUserName));
     }
 
     @Override
     public synchronized void stopAllTasksMatching(Predicate<Task> aPredicate)
     {
-        enqueuedTasks.removeIf(aPredicate);
-        executor.getQueue().removeIf(runnable -> aPredicate.test((Task) runnable));
+        for (Task task : getEnqueuedTasks()) {
+            if (aPredicate.test(task)) {
+                removeEnqueued(task);
+            }
+        }
+
+        Iterator<Runnable> i = executor.getQueue().iterator();
+        while (i.hasNext()) {
+            Task task = (Task) i.next();
+            if (aPredicate.test(task)) {
+                i.remove();
+                scheduledTasks.remove(task);
+                enqueueTimes.remove(task);
+                removeActive(task);
+            }
+        }
 
         // TODO: Stop the running tasks as well
     }
@@ -275,16 +549,42 @@ public class SchedulingServiceImpl
     public void destroy()
     {
         log.info("Shutting down scheduling service!");
-        enqueuedTasks.clear();
-        executor.getQueue().clear();
-        watchdog.shutdownNow();
-        executor.shutdownNow();
+        synchronized (this) {
+            queues.values().forEach(Map::clear);
+            enqueuedTasksByProject.clear();
+            executor.getQueue().clear();
+            executor.shutdownNow();
+            watchdog.shutdownNow();
+        }
     }
 
     private void logState()
     {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+
         getEnqueuedTasks().forEach(t -> log.debug("Queued   : {}", t));
         getScheduledTasks().forEach(t -> log.debug("Scheduled: {}", t));
         getRunningTasks().forEach(t -> log.debug("Running  : {}", t));
     }
+
+    private static class NextTask
+    {
+        private final Task task;
+        private final long nextReadyTime;
+
+        private NextTask(Task aTask, long aNextReadyTime)
+        {
+            task = aTask;
+            nextReadyTime = aNextReadyTime;
+        }
+    }
+
+    private static class Counters
+    {
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong totalWaitTime = new AtomicLong();
+        private final AtomicLong totalRunTime = new AtomicLong();
+    }
 }
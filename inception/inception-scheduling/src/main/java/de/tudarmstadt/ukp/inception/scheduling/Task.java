@@ -90,6 +90,15 @@ public abstract class Task
         return true;
     }
 
+    /**
+     * @return the priority class of the task. The scheduler prefers tasks from higher priority
+     *         classes when a worker becomes available.
+     */
+    public TaskPriority getPriority()
+    {
+        return TaskPriority.MAINTENANCE;
+    }
+
     @Override
     public void run()
     {
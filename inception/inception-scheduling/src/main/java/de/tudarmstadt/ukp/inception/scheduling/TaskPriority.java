@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.scheduling;
+
+/**
+ * Priority classes of tasks. When a worker becomes available, the scheduler picks the next task
+ * from the highest priority class which has an eligible task. The order of the constants defines
+ * the priority (highest first).
+ */
+public enum TaskPriority
+{
+    /**
+     * Predictions that users are waiting for interactively.
+     */
+    PREDICTION,
+
+    /**
+     * Training of recommenders.
+     */
+    TRAINING,
+
+    /**
+     * Evaluation and selection of recommenders.
+     */
+    EVALUATION,
+
+    /**
+     * Short maintenance tasks such as updating project or document states.
+     */
+    MAINTENANCE,
+
+    /**
+     * Building or updating search indexes.
+     */
+    INDEXING;
+}
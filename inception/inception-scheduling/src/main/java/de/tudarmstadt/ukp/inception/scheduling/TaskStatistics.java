@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.scheduling;
+
+/**
+ * Snapshot of the scheduler statistics for a {@link TaskPriority priority class}.
+ */
+public class TaskStatistics
+{
+    private final int queueDepth;
+    private final int activeCount;
+    private final long completedCount;
+    private final long totalWaitTime;
+    private final long totalRunTime;
+
+    public TaskStatistics(int aQueueDepth, int aActiveCount, long aCompletedCount,
+            long aTotalWaitTime, long aTotalRunTime)
+    {
+        queueDepth = aQueueDepth;
+        activeCount = aActiveCount;
+        completedCount = aCompletedCount;
+        totalWaitTime = aTotalWaitTime;
+        totalRunTime = aTotalRunTime;
+    }
+
+    /**
+     * @return number of tasks waiting to be scheduled.
+     */
+    public int getQueueDepth()
+    {
+        return queueDepth;
+    }
+
+    /**
+     * @return number of tasks currently scheduled or running.
+     */
+    public int getActiveCount()
+    {
+        return activeCount;
+    }
+
+    /**
+     * @return number of tasks which have completed.
+     */
+    public long getCompletedCount()
+    {
+        return completedCount;
+    }
+
+    /**
+     * @return accumulated time (ms) completed tasks spent between being enqueued and being started.
+     */
+    public long getTotalWaitTime()
+    {
+        return totalWaitTime;
+    }
+
+    /**
+     * @return accumulated time (ms) completed tasks spent running.
+     */
+    public long getTotalRunTime()
+    {
+        return totalRunTime;
+    }
+
+    public double getAverageWaitTime()
+    {
+        return completedCount > 0 ? (double) totalWaitTime / completedCount : 0.0;
+    }
+
+    public double getAverageRunTime()
+    {
+        return completedCount > 0 ? (double) totalRunTime / completedCount : 0.0;
+    }
+}
@@ -17,6 +17,8 @@
  */
 package de.tudarmstadt.ukp.inception.scheduling.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
@@ -24,6 +26,7 @@ import org.springframework.context.annotation.Configuration;
 
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingServiceImpl;
+import de.tudarmstadt.ukp.inception.scheduling.metrics.SchedulingMetricsImpl;
 
 @Configuration
 @EnableConfigurationProperties({ SchedulingProperties.class })
@@ -35,4 +38,12 @@ public class SchedulingServiceAutoConfiguration
     {
         return new SchedulingServiceImpl(aApplicationContext, aConfig);
     }
+
+    @Bean
+    @Autowired
+    @ConditionalOnProperty(prefix = "monitoring.metrics", name = "enabled", havingValue = "true")
+    public SchedulingMetricsImpl schedulingMetricsImpl(SchedulingService aSchedulingService)
+    {
+        return new SchedulingMetricsImpl(aSchedulingService);
+    }
 }
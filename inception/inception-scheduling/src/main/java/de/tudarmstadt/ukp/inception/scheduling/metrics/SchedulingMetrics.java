@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.scheduling.metrics;
+
+import java.util.List;
+
+public interface SchedulingMetrics
+{
+    /**
+     * Retrieve the names of the task priority classes
+     */
+    public List<String> getTaskClasses();
+
+    /**
+     * Retrieve the number of tasks of the given class waiting to be scheduled
+     */
+    public int getQueueDepth(String aTaskClass);
+
+    /**
+     * Retrieve the number of tasks of the given class which are scheduled or running
+     */
+    public int getActiveCount(String aTaskClass);
+
+    /**
+     * Retrieve the total number of completed tasks of the given class
+     */
+    public long getCompletedCount(String aTaskClass);
+
+    /**
+     * Retrieve the average time (ms) tasks of the given class waited before being started
+     */
+    public double getAverageWaitTime(String aTaskClass);
+
+    /**
+     * Retrieve the average time (ms) tasks of the given class took to run
+     */
+    public double getAverageRunTime(String aTaskClass);
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.scheduling.metrics;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
+import de.tudarmstadt.ukp.inception.scheduling.TaskPriority;
+import de.tudarmstadt.ukp.inception.scheduling.TaskStatistics;
+
+@ManagedResource
+/**
+ * <p>
+ * This class is exposed as a Spring Component via
+ * {@link SchedulingServiceAutoConfiguration#schedulingMetricsImpl}.
+ * </p>
+ */
+public class SchedulingMetricsImpl
+    implements SchedulingMetrics
+{
+    private final SchedulingService schedulingService;
+
+    @Autowired
+    public SchedulingMetricsImpl(SchedulingService aSchedulingService)
+    {
+        schedulingService = aSchedulingService;
+    }
+
+    @Override
+    @ManagedAttribute
+    public List<String> getTaskClasses()
+    {
+        return Stream.of(TaskPriority.values()).map(TaskPriority::name).collect(toList());
+    }
+
+    @Override
+    @ManagedOperation
+    public int getQueueDepth(String aTaskClass)
+    {
+        return getStatistics(aTaskClass).getQueueDepth();
+    }
+
+    @Override
+    @ManagedOperation
+    public int getActiveCount(String aTaskClass)
+    {
+        return getStatistics(aTaskClass).getActiveCount();
+    }
+
+    @Override
+    @ManagedOperation
+    public long getCompletedCount(String aTaskClass)
+    {
+        return getStatistics(aTaskClass).getCompletedCount();
+    }
+
+    @Override
+    @ManagedOperation
+    public double getAverageWaitTime(String aTaskClass)
+    {
+        return getStatistics(aTaskClass).getAverageWaitTime();
+    }
+
+    @Override
+    @ManagedOperation
+    public double getAverageRunTime(String aTaskClass)
+    {
+        return getStatistics(aTaskClass).getAverageRunTime();
+    }
+
+    private TaskStatistics getStatistics(String aTaskClass)
+    {
+        return schedulingService.getStatistics().get(TaskPriority.valueOf(aTaskClass));
+    }
+}
@@ -24,7 +24,10 @@ import static org.awaitility.Awaitility.await;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -114,13 +117,77 @@ public class SchedulingServiceTest
         return new User(aUsername);
     }
 
-    private Project buildProject(String aProjectName)
+    private static Project buildProject(String aProjectName)
     {
         Project project = new Project();
         project.setName(aProjectName);
         return project;
     }
 
+    @Test
+    public void thatHigherPriorityTasksAreStartedFirst()
+    {
+        SchedulingProperties properties = new SchedulingProperties();
+        properties.setNumberOfThreads(1);
+        sut.destroy();
+        sut = new SchedulingServiceImpl(mockContext, properties);
+
+        List<String> executionOrder = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        sut.enqueue(new RecordingTask("user1", "project0", TaskPriority.MAINTENANCE, "blocker",
+                executionOrder, blocker));
+        await().atMost(15, SECONDS).until(() -> sut.getRunningTasks().size() == 1);
+
+        sut.enqueue(new RecordingTask("user1", "project1", TaskPriority.INDEXING, "indexing",
+                executionOrder, null));
+        sut.enqueue(new RecordingTask("user1", "project2", TaskPriority.TRAINING, "training",
+                executionOrder, null));
+        sut.enqueue(new RecordingTask("user1", "project3", TaskPriority.PREDICTION, "prediction",
+                executionOrder, null));
+
+        blocker.countDown();
+
+        await().atMost(15, SECONDS).until(() -> executionOrder.size() == 4);
+        assertThat(executionOrder) //
+                .containsExactly("blocker", "prediction", "training", "indexing");
+        assertThat(sut.getStatistics().get(TaskPriority.PREDICTION).getCompletedCount())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void thatUsersAreServedRoundRobin()
+    {
+        SchedulingProperties properties = new SchedulingProperties();
+        properties.setNumberOfThreads(1);
+        sut.destroy();
+        sut = new SchedulingServiceImpl(mockContext, properties);
+
+        List<String> executionOrder = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        sut.enqueue(new RecordingTask("user0", "project0", TaskPriority.TRAINING, "blocker",
+                executionOrder, blocker));
+        await().atMost(15, SECONDS).until(() -> sut.getRunningTasks().size() == 1);
+
+        sut.enqueue(new RecordingTask("user1", "project1", TaskPriority.TRAINING, "user1-1",
+                executionOrder, null));
+        sut.enqueue(new RecordingTask("user1", "project2", TaskPriority.TRAINING, "user1-2",
+                executionOrder, null));
+        sut.enqueue(new RecordingTask("user1", "project3", TaskPriority.TRAINING, "user1-3",
+                executionOrder, null));
+        sut.enqueue(new RecordingTask("user2", "project1", TaskPriority.TRAINING, "user2-1",
+                executionOrder, null));
+
+        assertThat(sut.getStatistics().get(TaskPriority.TRAINING).getQueueDepth()).isEqualTo(4);
+
+        blocker.countDown();
+
+        await().atMost(15, SECONDS).until(() -> executionOrder.size() == 5);
+        assertThat(executionOrder) //
+                .containsExactly("blocker", "user1-1", "user2-1", "user1-2", "user1-3");
+    }
+
     private Task buildDummyTask(String aUsername, String aProjectName)
     {
         return new DummyTask(buildUser(aUsername), buildProject(aProjectName));
@@ -151,4 +218,48 @@ public class SchedulingServiceTest
             }
         }
     }
+
+    /**
+     * RecordingTask records its name when it is executed. If a latch is given, it waits for the
+     * latch to be released before finishing.
+     */
+    private static class RecordingTask
+        extends Task
+    {
+        private final TaskPriority priority;
+        private final String label;
+        private final List<String> executionOrder;
+        private final CountDownLatch latch;
+
+        RecordingTask(String aUsername, String aProjectName, TaskPriority aPriority,
+                String aLabel, List<String> aExecutionOrder, CountDownLatch aLatch)
+        {
+            super(new User(aUsername), buildProject(aProjectName), "JUnit");
+            priority = aPriority;
+            label = aLabel;
+            executionOrder = aExecutionOrder;
+            latch = aLatch;
+        }
+
+        @Override
+        public TaskPriority getPriority()
+        {
+            return priority;
+        }
+
+        @Override
+        public void execute()
+        {
+            executionOrder.add(label);
+
+            if (latch != null) {
+                try {
+                    latch.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
 }
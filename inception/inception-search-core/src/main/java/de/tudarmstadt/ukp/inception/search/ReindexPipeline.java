@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.search;
+
+import static de.tudarmstadt.ukp.clarin.webanno.support.logging.MDCContext.withCallerContext;
+import static de.tudarmstadt.ukp.inception.search.SearchCasUtils.casToByteArray;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.inception.search.config.SearchServiceProperties;
+import de.tudarmstadt.ukp.inception.search.index.BulkIndexer;
+
+/**
+ * Re-indexes the documents of a project in two stages. A pool of loader threads reads and
+ * serializes the CASes. The serialized CASes are passed through a bounded queue to a pool of
+ * indexer threads which add them to the index in batches. The queue bound keeps the loaders from
+ * running ahead of the indexers and filling up the memory.
+ * <p>
+ * The progress is committed periodically. Documents already indexed by an interrupted previous run
+ * are skipped unless they have been modified since. Documents which are no longer part of the
+ * project are removed from the index.
+ */
+class ReindexPipeline
+{
+    private static final long POLL_INTERVAL = 500;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final DocumentService documentService;
+    private final SearchServiceProperties properties;
+    private final Project project;
+    private final BulkIndexer indexer;
+    private final BooleanSupplier cancelled;
+
+    private final AtomicBoolean stop = new AtomicBoolean();
+    private final AtomicInteger indexedCount = new AtomicInteger();
+
+    public ReindexPipeline(DocumentService aDocumentService, SearchServiceProperties aProperties,
+            Project aProject, BulkIndexer aIndexer, BooleanSupplier aCancelled)
+    {
+        documentService = aDocumentService;
+        properties = aProperties;
+        project = aProject;
+        indexer = aIndexer;
+        cancelled = aCancelled;
+    }
+
+    /**
+     * @param aAnnotationDocuments
+     *            the annotation documents to index.
+     * @param aSourceDocuments
+     *            the source documents to index.
+     * @return whether all documents have been indexed. If the run has been cancelled, this is
+     *         {@code false}.
+     * @throws IOException
+     *             if a document could not be loaded or indexed.
+     */
+    public boolean run(List<AnnotationDocument> aAnnotationDocuments,
+            List<SourceDocument> aSourceDocuments)
+        throws IOException
+    {
+        // Documents indexed by an interrupted previous run may have been deleted since or their
+        // user may have lost access to the project
+        indexer.retainOnly(aSourceDocuments, aAnnotationDocuments);
+
+        Queue<WorkItem> pending = new ConcurrentLinkedQueue<>();
+        int skipped = 0;
+        for (AnnotationDocument doc : aAnnotationDocuments) {
+            if (isUpToDate(doc)) {
+                skipped++;
+                continue;
+            }
+            pending.add(new WorkItem(doc));
+        }
+        for (SourceDocument doc : aSourceDocuments) {
+            if (indexer.getIndexingTime(doc).isPresent()) {
+                skipped++;
+                continue;
+            }
+            pending.add(new WorkItem(doc));
+        }
+
+        int total = pending.size();
+        if (skipped > 0) {
+            log.info("Re-indexing project [{}]({}): skipping {} documents already indexed",
+                    project.getName(), project.getId(), skipped);
+        }
+
+        int loaderThreads = Math.max(1, properties.getReindexLoaderThreads());
+        int indexerThreads = Math.max(1, properties.getReindexIndexerThreads());
+        BlockingQueue<WorkItem> loaded = new ArrayBlockingQueue<>(2 * loaderThreads);
+        CountDownLatch loadersDone = new CountDownLatch(loaderThreads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(loaderThreads + indexerThreads,
+                new BasicThreadFactory.Builder() //
+                        .namingPattern("reindex-" + project.getId() + "-%d") //
+                        .daemon(true) //
+                        .build());
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < loaderThreads; i++) {
+                // The workers need the logging context of the caller, e.g. for the repository path
+                workers.add(executor.submit(withCallerContext(() -> {
+                    try {
+                        load(pending, loaded);
+                        return null;
+                    }
+                    finally {
+                        loadersDone.countDown();
+                    }
+                })));
+            }
+            for (int i = 0; i < indexerThreads; i++) {
+                workers.add(executor.submit(withCallerContext(() -> {
+                    index(loaded, loadersDone);
+                    return null;
+                })));
+            }
+
+            monitor(workers, total);
+
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                }
+                catch (ExecutionException e) {
+                    throw new IOException("Unable to re-index project [" + project.getName() + "]("
+                            + project.getId() + ")", e.getCause());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        finally {
+            stop.set(true);
+            executor.shutdownNow();
+        }
+
+        if (cancelled.getAsBoolean() || indexedCount.get() < total) {
+            return false;
+        }
+
+        indexer.complete();
+        return true;
+    }
+
+    /**
+     * Waits for the workers to finish while periodically committing and reporting the progress.
+     * Stops the workers if the run is cancelled or a worker fails.
+     */
+    private void monitor(List<Future<?>> aWorkers, int aTotal) throws IOException
+    {
+        long startTime = currentTimeMillis();
+        long lastCommit = startTime;
+        long commitInterval = properties.getReindexCommitInterval().toMillis();
+
+        while (!aWorkers.stream().allMatch(Future::isDone)) {
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop.set(true);
+                return;
+            }
+
+            if (cancelled.getAsBoolean() || aWorkers.stream().anyMatch(this::isFailed)) {
+                stop.set(true);
+            }
+
+            long now = currentTimeMillis();
+            if (now - lastCommit >= commitInterval) {
+                indexer.commit();
+                lastCommit = now;
+
+                int indexed = indexedCount.get();
+                log.info("Re-indexing project [{}]({}): {}/{} documents ({} docs/sec)",
+                        project.getName(), project.getId(), indexed, aTotal,
+                        String.format("%.1f", indexed * 1000.0 / Math.max(1, now - startTime)));
+            }
+        }
+    }
+
+    private boolean isFailed(Future<?> aWorker)
+    {
+        if (!aWorker.isDone()) {
+            return false;
+        }
+
+        try {
+            aWorker.get();
+            return false;
+        }
+        catch (Exception e) {
+            return true;
+        }
+    }
+
+    private boolean isUpToDate(AnnotationDocument aDocument)
+    {
+        long indexingTime = indexer.getIndexingTime(aDocument).orElse(-1L);
+        if (indexingTime < 0) {
+            return false;
+        }
+
+        try {
+            long casTime = documentService
+                    .getAnnotationCasTimestamp(aDocument.getDocument(), aDocument.getUser())
+                    .orElse(0L);
+            return casTime <= indexingTime;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void load(Queue<WorkItem> aPending, BlockingQueue<WorkItem> aLoaded)
+        throws IOException, InterruptedException
+    {
+        WorkItem item;
+        while (!stop.get() && (item = aPending.poll()) != null) {
+            // Worker threads do not inherit the CAS storage session of the caller. Using one
+            // session per document ensures that the CAS is released as soon as it is serialized.
+            try (CasStorageSession session = CasStorageSession.open()) {
+                item.load();
+            }
+
+            while (!aLoaded.offer(item, POLL_INTERVAL, MILLISECONDS)) {
+                if (stop.get()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void index(BlockingQueue<WorkItem> aLoaded, CountDownLatch aLoadersDone)
+        throws IOException, InterruptedException
+    {
+        while (!stop.get()) {
+            WorkItem item = aLoaded.poll(POLL_INTERVAL, MILLISECONDS);
+
+            if (item == null) {
+                if (aLoadersDone.getCount() == 0 && aLoaded.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+
+            item.index();
+            indexedCount.incrementAndGet();
+        }
+    }
+
+    private class WorkItem
+    {
+        private final SourceDocument sourceDocument;
+        private final AnnotationDocument annotationDocument;
+        private byte[] binaryCas;
+
+        public WorkItem(SourceDocument aSourceDocument)
+        {
+            sourceDocument = aSourceDocument;
+            annotationDocument = null;
+        }
+
+        public WorkItem(AnnotationDocument aAnnotationDocument)
+        {
+            sourceDocument = null;
+            annotationDocument = aAnnotationDocument;
+        }
+
+        public void load() throws IOException
+        {
+            if (annotationDocument != null) {
+                binaryCas = casToByteArray(documentService.readAnnotationCas(annotationDocument));
+            }
+            else {
+                binaryCas = casToByteArray(documentService.createOrReadInitialCas(sourceDocument));
+            }
+        }
+
+        public void index() throws IOException
+        {
+            if (annotationDocument != null) {
+                indexer.add(annotationDocument, binaryCas);
+            }
+            else {
+                indexer.add(sourceDocument, binaryCas);
+            }
+
+            // Allow the serialized CAS to be garbage collected
+            binaryCas = null;
+        }
+    }
+}
@@ -47,7 +47,6 @@ import org.springframework.transaction.event.TransactionalEventListener;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
-import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
 import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterCasWrittenEvent;
 import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterDocumentCreatedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeDocumentRemovedEvent;
@@ -62,6 +61,7 @@ import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
 import de.tudarmstadt.ukp.inception.search.config.SearchServiceAutoConfiguration;
 import de.tudarmstadt.ukp.inception.search.config.SearchServiceProperties;
+import de.tudarmstadt.ukp.inception.search.index.BulkIndexer;
 import de.tudarmstadt.ukp.inception.search.index.PhysicalIndexFactory;
 import de.tudarmstadt.ukp.inception.search.index.PhysicalIndexRegistry;
 import de.tudarmstadt.ukp.inception.search.model.Index;
@@ -545,48 +545,30 @@ public class SearchServiceImpl
             Index index = pooledIndex.get();
             index.setInvalid(true);
 
-            // Clear the index
-            index.getPhysicalIndex().clear();
-
-            // Index all the annotation documents
+            List<AnnotationDocument> annotationDocuments = new ArrayList<>();
             for (User user : projectService.listProjectUsersWithPermissions(aProject)) {
-                List<AnnotationDocument> annotationDocumentsForUser = documentService
-                        .listAnnotationDocuments(aProject, user);
-                for (AnnotationDocument doc : annotationDocumentsForUser) {
-                    if (isPerformNoMoreActions(pooledIndex)) {
-                        return;
-                    }
-
-                    // Because serialization is a process which modifies internal data structures of
-                    // the CAS, we need exclusive access the CAS for the time being.
-                    // This can be relaxed after upgrading to UIMA 3.2.0 which includes a fix for
-                    // for https://issues.apache.org/jira/browse/UIMA-6162
-                    byte[] casAsByteArray;
-                    try (CasStorageSession session = CasStorageSession.openNested()) {
-                        casAsByteArray = casToByteArray(documentService.readAnnotationCas(doc));
-                    }
-                    indexDocument(pooledIndex, doc, "reindex", casAsByteArray);
-                }
+                annotationDocuments.addAll(documentService.listAnnotationDocuments(aProject, user));
+            }
+            List<SourceDocument> sourceDocuments = documentService.listSourceDocuments(aProject);
+
+            // Clears the index unless an interrupted re-indexing run can be resumed
+            boolean completed;
+            try (BulkIndexer indexer = index.getPhysicalIndex()
+                    .openBulkIndexer(properties.getReindexBatchSize())) {
+                ReindexPipeline pipeline = new ReindexPipeline(documentService, properties,
+                        aProject, indexer, () -> isPerformNoMoreActions(pooledIndex));
+                completed = pipeline.run(annotationDocuments, sourceDocuments);
             }
 
-            // Index all the source documents
-            for (SourceDocument doc : documentService.listSourceDocuments(aProject)) {
-                if (isPerformNoMoreActions(pooledIndex)) {
-                    return;
-                }
-
-                // Because serialization is a process which modifies internal data structures of
-                // the CAS, we need exclusive access the CAS for the time being.
-                // This can be relaxed after upgrading to UIMA 3.2.0 which includes a fix for
-                // for https://issues.apache.org/jira/browse/UIMA-6162
-                byte[] casAsByteArray;
-                try (CasStorageSession session = CasStorageSession.openNested()) {
-                    casAsByteArray = casToByteArray(documentService.createOrReadInitialCas(doc));
-                }
-
-                indexDocument(pooledIndex, doc, casAsByteArray);
+            if (!completed) {
+                log.info("Re-indexing project [{}]({}) was interrupted - it will resume from the "
+                        + "last commit", aProject.getName(), aProject.getId());
+                return;
             }
 
+            log.info("Re-indexing project [{}]({}) complete ({} documents)", aProject.getName(),
+                    aProject.getId(), annotationDocuments.size() + sourceDocuments.size());
+
             // After re-indexing, reset the invalid flag
             index.setInvalid(false);
             entityManager.merge(index);
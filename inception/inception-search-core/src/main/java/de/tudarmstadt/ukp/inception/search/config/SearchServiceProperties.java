@@ -27,4 +27,24 @@ public interface SearchServiceProperties
      * Time to keep an index open after it has last been used.
      */
     Duration getIndexKeepOpenTime();
+
+    /**
+     * Number of threads loading documents when re-indexing a project.
+     */
+    int getReindexLoaderThreads();
+
+    /**
+     * Number of threads adding documents to the index when re-indexing a project.
+     */
+    int getReindexIndexerThreads();
+
+    /**
+     * Number of documents added to the index in a single batch when re-indexing a project.
+     */
+    int getReindexBatchSize();
+
+    /**
+     * Interval at which the progress of a re-indexing run is committed to the index.
+     */
+    Duration getReindexCommitInterval();
 }
@@ -29,6 +29,16 @@ public class SearchServicePropertiesImpl
 
     private Duration indexKeepOpenTime = Duration.ofMinutes(10);
 
+    private int reindexLoaderThreads = Math.max(1,
+            Runtime.getRuntime().availableProcessors() / 2);
+
+    private int reindexIndexerThreads = Math.max(1,
+            Runtime.getRuntime().availableProcessors() / 2);
+
+    private int reindexBatchSize = 50;
+
+    private Duration reindexCommitInterval = Duration.ofSeconds(30);
+
     @Override
     public boolean isEnabled()
     {
@@ -50,4 +60,48 @@ public class SearchServicePropertiesImpl
     {
         indexKeepOpenTime = aIndexKeepOpenTime;
     }
+
+    @Override
+    public int getReindexLoaderThreads()
+    {
+        return reindexLoaderThreads;
+    }
+
+    public void setReindexLoaderThreads(int aReindexLoaderThreads)
+    {
+        reindexLoaderThreads = aReindexLoaderThreads;
+    }
+
+    @Override
+    public int getReindexIndexerThreads()
+    {
+        return reindexIndexerThreads;
+    }
+
+    public void setReindexIndexerThreads(int aReindexIndexerThreads)
+    {
+        reindexIndexerThreads = aReindexIndexerThreads;
+    }
+
+    @Override
+    public int getReindexBatchSize()
+    {
+        return reindexBatchSize;
+    }
+
+    public void setReindexBatchSize(int aReindexBatchSize)
+    {
+        reindexBatchSize = aReindexBatchSize;
+    }
+
+    @Override
+    public Duration getReindexCommitInterval()
+    {
+        return reindexCommitInterval;
+    }
+
+    public void setReindexCommitInterval(Duration aReindexCommitInterval)
+    {
+        reindexCommitInterval = aReindexCommitInterval;
+    }
 }
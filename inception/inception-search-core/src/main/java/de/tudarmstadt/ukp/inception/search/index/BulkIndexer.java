@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.search.index;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Optional;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+
+/**
+ * Adds many documents to a physical index in one go, e.g. when re-indexing a whole project.
+ * Documents are added in batches and made durable on {@link #commit()}. If bulk indexing is
+ * interrupted before {@link #complete()} is called, the documents committed so far are retained
+ * so that the next bulk indexing run on the same index can resume instead of starting over.
+ * <p>
+ * Implementations must support adding documents concurrently from multiple threads.
+ */
+public interface BulkIndexer
+    extends AutoCloseable
+{
+    /**
+     * @param aDocument
+     *            a source document.
+     * @return the time at which the document has been indexed by an interrupted previous run, if
+     *         any.
+     */
+    Optional<Long> getIndexingTime(SourceDocument aDocument);
+
+    /**
+     * @param aDocument
+     *            an annotation document.
+     * @return the time at which the document has been indexed by an interrupted previous run, if
+     *         any.
+     */
+    Optional<Long> getIndexingTime(AnnotationDocument aDocument);
+
+    /**
+     * Removes all documents indexed by an interrupted previous run which are not among the given
+     * documents, e.g. because they have been deleted or their user has lost access to the project
+     * since. Must be called before any documents are added.
+     * 
+     * @param aSourceDocuments
+     *            the source documents which are to remain in the index.
+     * @param aAnnotationDocuments
+     *            the annotation documents which are to remain in the index.
+     * @throws IOException
+     *             if the documents could not be removed.
+     */
+    void retainOnly(Collection<SourceDocument> aSourceDocuments,
+            Collection<AnnotationDocument> aAnnotationDocuments)
+        throws IOException;
+
+    void add(SourceDocument aDocument, byte[] aBinaryCas) throws IOException;
+
+    void add(AnnotationDocument aDocument, byte[] aBinaryCas) throws IOException;
+
+    /**
+     * Makes all documents added so far durable.
+     * 
+     * @throws IOException
+     *             if the documents could not be committed.
+     */
+    void commit() throws IOException;
+
+    /**
+     * Commits all documents added so far and marks the bulk indexing as complete. The next bulk
+     * indexing run will start from scratch.
+     * 
+     * @throws IOException
+     *             if the documents could not be committed.
+     */
+    void complete() throws IOException;
+
+    /**
+     * Commits all documents added so far. If {@link #complete()} has not been called, the next
+     * bulk indexing run resumes from here.
+     */
+    @Override
+    void close() throws IOException;
+}
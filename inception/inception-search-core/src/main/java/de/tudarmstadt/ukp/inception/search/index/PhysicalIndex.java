@@ -77,4 +77,17 @@ public interface PhysicalIndex
     public Optional<String> getTimestamp(long aSrcDocId, long aAnnoDocId) throws IOException;
 
     void indexDocument(SourceDocument aSourceDocument, byte[] aBinaryCas) throws IOException;
+
+    /**
+     * Prepares the index for adding many documents at once. If the last bulk indexing run on this
+     * index has been interrupted and the index configuration has not changed since, that run is
+     * resumed. Otherwise, the index is cleared.
+     * 
+     * @param aBatchSize
+     *            the number of documents to add to the index in a single batch.
+     * @return the bulk indexer.
+     * @throws IOException
+     *             if the index could not be prepared.
+     */
+    BulkIndexer openBulkIndexer(int aBatchSize) throws IOException;
 }
@@ -31,6 +31,7 @@ import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
 import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.inception.scheduling.MatchableTask;
 import de.tudarmstadt.ukp.inception.scheduling.Task;
+import de.tudarmstadt.ukp.inception.scheduling.TaskPriority;
 
 /**
  * Abstract search task
@@ -96,6 +97,12 @@ public abstract class IndexingTask_ImplBase
         binaryCas = aBinaryCas;
     }
 
+    @Override
+    public TaskPriority getPriority()
+    {
+        return TaskPriority.INDEXING;
+    }
+
     @Override
     public String toString()
     {
@@ -23,34 +23,50 @@ package de.tudarmstadt.ukp.inception.search.index.mtas;
 
 import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.PROJECT_FOLDER;
 import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.FINISHED;
-import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.IGNORE;
 import static de.tudarmstadt.ukp.inception.search.index.mtas.MtasUimaParser.PARAM_PROJECT_ID;
 import static de.tudarmstadt.ukp.inception.search.index.mtas.MtasUimaParser.getIndexedName;
 import static de.tudarmstadt.ukp.inception.search.index.mtas.MtasUtils.decodeFSAddress;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.ZoneOffset.UTC;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonMap;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
 import static mtas.analysis.util.MtasTokenizerFactory.ARGUMENT_PARSER;
 import static mtas.analysis.util.MtasTokenizerFactory.ARGUMENT_PARSER_ARGS;
 import static mtas.codec.MtasCodec.MTAS_CODEC_NAME;
 import static org.apache.commons.io.FileUtils.deleteDirectory;
+import static org.apache.lucene.search.DocIdSetIterator.NO_MORE_DOCS;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.BreakIterator;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.function.LongPredicate;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -67,7 +83,9 @@ import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
@@ -82,6 +100,8 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.spans.SpanWeight;
 import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -102,6 +122,7 @@ import de.tudarmstadt.ukp.inception.search.FeatureIndexingSupportRegistry;
 import de.tudarmstadt.ukp.inception.search.PrimitiveUimaIndexingSupport;
 import de.tudarmstadt.ukp.inception.search.SearchQueryRequest;
 import de.tudarmstadt.ukp.inception.search.SearchResult;
+import de.tudarmstadt.ukp.inception.search.index.BulkIndexer;
 import de.tudarmstadt.ukp.inception.search.index.PhysicalIndex;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
@@ -151,9 +172,21 @@ public class MtasDocumentIndex
     /** The Constant FIELD_TIMESTAMP. */
     private static final String FIELD_TIMESTAMP = "timestamp";
 
+    /** Format of {@link #FIELD_TIMESTAMP} as written by {@link DateTools} (in UTC). */
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter
+            .ofPattern("yyyyMMddHHmmssSSS");
+
+    private static final Set<String> TITLE_FIELD = singleton(FIELD_TITLE);
+
     // Default prefix for CQL queries
     private static final String DEFAULT_PREFIX = "Token";
 
+    /**
+     * Commit data key marking that bulk indexing is in progress. The value is the configuration
+     * fingerprint at the time the bulk indexing was started.
+     */
+    private static final String COMMIT_DATA_BULK_INDEXING = "bulkIndexing";
+
     private static final int RESULT_WINDOW_SIZE = 3;
 
     private static final String EMPTY_FEATURE_VALUE_KEY = "<Empty>";
@@ -167,6 +200,7 @@ public class MtasDocumentIndex
     private final Project project;
     private final File repositoryDir;
     private final ScheduledExecutorService schedulerService;
+    private final SegmentFilterCache filterCache = new SegmentFilterCache();
 
     private IndexWriter _indexWriter;
     private ReferenceManager<IndexSearcher> _searcherManager;
@@ -485,6 +519,13 @@ public class MtasDocumentIndex
         Map<Long, Long> annotatableDocuments = listAnnotatableDocuments(aRequest.getProject(),
                 aRequest.getUser());
 
+        // Results from annotation documents are only counted for the querying user. Results
+        // from a source document are skipped in favor of the user's annotation document.
+        LongPredicate limit = limitedToDocument(aRequest);
+        LongPredicate annotationDocumentFilter = limit;
+        LongPredicate sourceDocumentFilter = limit
+                .and(srcId -> !annotatableDocuments.containsKey(srcId));
+
         final float boost = 0;
         SpanWeight spanweight = q.rewrite(searcher.getIndexReader()).createWeight(searcher, false,
                 boost);
@@ -494,71 +535,22 @@ public class MtasDocumentIndex
         while (leafReaderContextIterator.hasNext()) {
             LeafReaderContext leafReaderContext = leafReaderContextIterator.next();
             try {
-                Spans spans = spanweight.getSpans(leafReaderContext, SpanWeight.Postings.POSITIONS);
-                SegmentReader segmentReader = (SegmentReader) leafReaderContext.reader();
-                if (spans != null) {
-                    while (spans.nextDoc() != Spans.NO_MORE_DOCS) {
-                        if (segmentReader.numDocs() == segmentReader.maxDoc()
-                                || segmentReader.getLiveDocs().get(spans.docID())) {
-                            Document document = segmentReader.document(spans.docID());
-
-                            // Retrieve user
-                            String user = document.get(FIELD_USER);
-
-                            // Retrieve source and annotation document ids
-                            String rawSourceDocumentId = document.get(FIELD_SOURCE_DOCUMENT_ID);
-                            String rawAnnotationDocumentId = document
-                                    .get(FIELD_ANNOTATION_DOCUMENT_ID);
-                            if (rawSourceDocumentId == null || rawAnnotationDocumentId == null) {
-                                log.trace(
-                                        "Indexed document lacks source/annotation document IDs"
-                                                + " - source: {}, annotation: {}",
-                                        rawSourceDocumentId, rawAnnotationDocumentId);
-                                continue;
-
-                            }
-                            long sourceDocumentId = Long.valueOf(rawSourceDocumentId);
-                            long annotationDocumentId = Long.valueOf(rawAnnotationDocumentId);
-
-                            // If the query is limited to a given document, skip any results
-                            // which are not in the given document
-                            Optional<SourceDocument> limitedToDocument = aRequest
-                                    .getLimitedToDocument();
-                            if (limitedToDocument.isPresent() && !Objects
-                                    .equals(limitedToDocument.get().getId(), sourceDocumentId)) {
-                                log.trace(
-                                        "Query limited to document {}, skipping results for "
-                                                + "document {}",
-                                        limitedToDocument.get().getId(), sourceDocumentId);
-                                continue;
-                            }
+                FixedBitSet accepted = getAcceptedDocuments(leafReaderContext.reader(),
+                        aRequest.getUser().getUsername(), annotationDocumentFilter,
+                        sourceDocumentFilter);
+                if (accepted.cardinality() == 0) {
+                    continue;
+                }
 
-                            if (annotatableDocuments.containsKey(sourceDocumentId)
-                                    && annotationDocumentId == -1) {
-                                // Exclude result if the retrieved document is a sourcedocument
-                                // (that is, has annotationDocument = -1) AND it has a
-                                // corresponding annotation document for this user
-                                log.trace("Skipping results from indexed source document {} in"
-                                        + "favor of results from the corresponding annotation "
-                                        + "document", sourceDocumentId);
-                                continue;
-                            }
-                            else if (annotationDocumentId != -1
-                                    && !aRequest.getUser().getUsername().equals(user)) {
-                                // Exclude result if the retrieved document is an annotation
-                                // document (that is, annotationDocument != -1 and its username
-                                // is different from the quering user
-                                log.trace(
-                                        "Skipping results from annotation document for user {} "
-                                                + "which does not match the requested user {}",
-                                        user, aRequest.getUser().getUsername());
-                                continue;
-                            }
+                Spans spans = spanweight.getSpans(leafReaderContext, SpanWeight.Postings.POSITIONS);
+                if (spans == null) {
+                    continue;
+                }
 
-                            while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
-                                numResults++;
-                            }
-                        }
+                for (int doc = nextAcceptedDoc(spans, accepted); doc != NO_MORE_DOCS; //
+                        doc = nextAcceptedDoc(spans, accepted)) {
+                    while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+                        numResults++;
                     }
                 }
             }
@@ -580,6 +572,100 @@ public class MtasDocumentIndex
         return annotateableDocuments;
     }
 
+    /**
+     * @return a filter accepting only the source document the query is limited to, if any.
+     */
+    private LongPredicate limitedToDocument(SearchQueryRequest aRequest)
+    {
+        Optional<SourceDocument> limitedToDocument = aRequest.getLimitedToDocument();
+        if (!limitedToDocument.isPresent()) {
+            return srcId -> true;
+        }
+
+        long limitedToDocumentId = limitedToDocument.get().getId();
+        return srcId -> srcId == limitedToDocumentId;
+    }
+
+    /**
+     * Determines the documents in a segment which may contribute results for the given user. This
+     * only uses indexed fields and cached per-segment information, so documents which do not
+     * qualify are never scored or loaded.
+     * 
+     * @param aReader
+     *            the segment reader.
+     * @param aUser
+     *            the querying user.
+     * @param aAnnotationDocumentFilter
+     *            decides by source document ID whether to accept the user's annotation documents.
+     * @param aSourceDocumentFilter
+     *            decides by source document ID whether to accept source documents.
+     * @return the accepted documents.
+     */
+    private FixedBitSet getAcceptedDocuments(LeafReader aReader, String aUser,
+            LongPredicate aAnnotationDocumentFilter, LongPredicate aSourceDocumentFilter)
+        throws IOException
+    {
+        long[] sourceDocumentIds = filterCache.getLongValues(aReader, FIELD_SOURCE_DOCUMENT_ID);
+        FixedBitSet sourceDocuments = filterCache.getDocuments(aReader,
+                new Term(FIELD_ANNOTATION_DOCUMENT_ID, "-1"));
+        FixedBitSet userDocuments = filterCache.getDocuments(aReader, new Term(FIELD_USER, aUser));
+        Bits liveDocs = aReader.getLiveDocs();
+
+        FixedBitSet accepted = new FixedBitSet(aReader.maxDoc());
+        for (int doc = nextSetBit(userDocuments, 0); doc != NO_MORE_DOCS; //
+                doc = nextSetBit(userDocuments, doc + 1)) {
+            if (!sourceDocuments.get(doc)) {
+                acceptDocument(accepted, doc, sourceDocumentIds, liveDocs,
+                        aAnnotationDocumentFilter);
+            }
+        }
+        for (int doc = nextSetBit(sourceDocuments, 0); doc != NO_MORE_DOCS; //
+                doc = nextSetBit(sourceDocuments, doc + 1)) {
+            acceptDocument(accepted, doc, sourceDocumentIds, liveDocs, aSourceDocumentFilter);
+        }
+        return accepted;
+    }
+
+    private void acceptDocument(FixedBitSet aAccepted, int aDoc, long[] aSourceDocumentIds,
+            Bits aLiveDocs, LongPredicate aFilter)
+    {
+        if (aLiveDocs != null && !aLiveDocs.get(aDoc)) {
+            return;
+        }
+
+        long sourceDocumentId = aSourceDocumentIds[aDoc];
+        if (sourceDocumentId == SegmentFilterCache.MISSING) {
+            log.trace("Indexed document lacks source document ID");
+            return;
+        }
+
+        if (aFilter.test(sourceDocumentId)) {
+            aAccepted.set(aDoc);
+        }
+    }
+
+    private static int nextSetBit(FixedBitSet aBits, int aIndex)
+    {
+        return aIndex < aBits.length() ? aBits.nextSetBit(aIndex) : NO_MORE_DOCS;
+    }
+
+    /**
+     * Advances the spans to the next document which is accepted. Documents which are not accepted
+     * are skipped without looking at their positions.
+     */
+    private static int nextAcceptedDoc(Spans aSpans, FixedBitSet aAccepted) throws IOException
+    {
+        int doc = aSpans.nextDoc();
+        while (doc != NO_MORE_DOCS && !aAccepted.get(doc)) {
+            int next = nextSetBit(aAccepted, doc + 1);
+            if (next == NO_MORE_DOCS) {
+                return NO_MORE_DOCS;
+            }
+            doc = aSpans.advance(next);
+        }
+        return doc;
+    }
+
     private Map<String, List<SearchResult>> doQuery(IndexSearcher searcher,
             SearchQueryRequest aRequest, MtasSpanQuery q)
         throws IOException
@@ -595,6 +681,15 @@ public class MtasDocumentIndex
         sourceAnnotationDocPairs.entrySet().stream()
                 .forEach(e -> sourceDocumentIndex.put(e.getKey().getId(), e.getKey()));
 
+        // Only documents annotatable by the user are considered. Results from annotation
+        // documents are only included for the querying user. Results from a source document are
+        // skipped in favor of the user's annotation document.
+        LongPredicate limit = limitedToDocument(aRequest);
+        LongPredicate annotationDocumentFilter = limit.and(sourceDocumentIndex::containsKey);
+        LongPredicate sourceDocumentFilter = limit.and(sourceDocumentIndex::containsKey)
+                .and(srcId -> sourceAnnotationDocPairs
+                        .get(sourceDocumentIndex.get(srcId)) == null);
+
         final float boost = 0;
         SpanWeight spanweight = q.rewrite(searcher.getIndexReader()).createWeight(searcher, false,
                 boost);
@@ -606,196 +701,133 @@ public class MtasDocumentIndex
         resultIteration: while (leafReaderContextIterator.hasNext()) {
             LeafReaderContext leafReaderContext = leafReaderContextIterator.next();
             try {
-                Spans spans = spanweight.getSpans(leafReaderContext, SpanWeight.Postings.POSITIONS);
                 SegmentReader segmentReader = (SegmentReader) leafReaderContext.reader();
+                FixedBitSet accepted = getAcceptedDocuments(segmentReader,
+                        aRequest.getUser().getUsername(), annotationDocumentFilter,
+                        sourceDocumentFilter);
+                if (accepted.cardinality() == 0) {
+                    continue;
+                }
+
+                Spans spans = spanweight.getSpans(leafReaderContext, SpanWeight.Postings.POSITIONS);
+                if (spans == null) {
+                    continue;
+                }
+
+                long[] sourceDocumentIds = filterCache.getLongValues(segmentReader,
+                        FIELD_SOURCE_DOCUMENT_ID);
                 Terms terms = segmentReader.terms(FIELD_CONTENT);
                 CodecInfo mtasCodecInfo = CodecInfo.getCodecInfoFromTerms(terms);
-                if (spans != null) {
-                    while (spans.nextDoc() != Spans.NO_MORE_DOCS) {
-                        if (segmentReader.numDocs() == segmentReader.maxDoc()
-                                || segmentReader.getLiveDocs().get(spans.docID())) {
-                            Document document = segmentReader.document(spans.docID());
-
-                            // Retrieve user
-                            String user = document.get(FIELD_USER);
-
-                            // Retrieve source and annotation document ids
-                            String rawSourceDocumentId = document.get(FIELD_SOURCE_DOCUMENT_ID);
-                            String rawAnnotationDocumentId = document
-                                    .get(FIELD_ANNOTATION_DOCUMENT_ID);
-                            if (rawSourceDocumentId == null || rawAnnotationDocumentId == null) {
-                                log.trace(
-                                        "Indexed document lacks source/annotation document IDs"
-                                                + " - source: {}, annotation: {}",
-                                        rawSourceDocumentId, rawAnnotationDocumentId);
-                                continue;
 
-                            }
+                for (int doc = nextAcceptedDoc(spans, accepted); doc != NO_MORE_DOCS; //
+                        doc = nextAcceptedDoc(spans, accepted)) {
+                    long sourceDocumentId = sourceDocumentIds[doc];
+                    AnnotationDocument annotationDocument = sourceAnnotationDocPairs
+                            .get(sourceDocumentIndex.get(sourceDocumentId));
 
-                            long sourceDocumentId = Long.valueOf(rawSourceDocumentId);
-                            long annotationDocumentId = Long.valueOf(rawAnnotationDocumentId);
-                            boolean matchInSourceDocument = annotationDocumentId == -1;
+                    // Retrieve document title
+                    String documentTitle = segmentReader.document(doc, TITLE_FIELD)
+                            .get(FIELD_TITLE);
 
-                            SourceDocument sourceDocument = sourceDocumentIndex
-                                    .get(sourceDocumentId);
+                    while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+                        if (current < offset) {
+                            current++;
+                            continue;
+                        }
+                        if (current - offset + 1 > count) {
+                            break resultIteration;
+                        }
+                        current++;
+                        int matchStart = spans.startPosition();
+                        int matchEnd = spans.endPosition();
 
-                            if (sourceDocument == null) {
-                                // Document is not annotatable by this user, so we skip this result
-                                continue;
-                            }
+                        int windowStart = Math.max(matchStart - RESULT_WINDOW_SIZE, 0);
+                        int windowEnd = matchEnd + RESULT_WINDOW_SIZE - 1;
 
-                            AnnotationDocument annotationDocument = sourceAnnotationDocPairs
-                                    .get(sourceDocument);
+                        // Retrieve all indexed objects within the matching range
+                        List<MtasTokenString> tokens = mtasCodecInfo.getObjectsByPositions(
+                                FIELD_CONTENT, spans.docID(), windowStart, windowEnd);
 
-                            if (annotationDocument != null
-                                    && IGNORE != annotationDocument.getState()) {
-                                // Skip if the document is ignored for this user
-                                log.trace("Skipping results from ignored document {}",
-                                        sourceDocumentId);
-                            }
+                        tokens.sort(Comparator.comparing(MtasTokenString::getOffsetStart));
 
-                            // If the query is limited to a given document, skip any results
-                            // which are not in the given document
-                            Optional<SourceDocument> limitedToDocument = aRequest
-                                    .getLimitedToDocument();
-                            if (limitedToDocument.isPresent() && !Objects
-                                    .equals(limitedToDocument.get().getId(), sourceDocumentId)) {
-                                log.trace(
-                                        "Query limited to document {}, skipping results for "
-                                                + "document {}",
-                                        limitedToDocument.get().getId(), sourceDocumentId);
-                                continue;
-                            }
+                        if (tokens.isEmpty()) {
+                            continue;
+                        }
 
-                            if (matchInSourceDocument && annotationDocument != null) {
-                                // Exclude result if the retrieved document is a sourcedocument
-                                // AND it has a corresponding annotation document for this user
-                                // AND the document is not ignored for this user
-                                log.trace("Skipping results from indexed source document {} in"
-                                        + "favor of results from the corresponding annotation "
-                                        + "document", sourceDocumentId);
+                        SearchResult result = new SearchResult();
+                        StringBuilder resultText = new StringBuilder();
+                        StringBuilder leftContext = new StringBuilder();
+                        StringBuilder rightContext = new StringBuilder();
+                        result.setDocumentId(sourceDocumentId);
+                        result.setDocumentTitle(documentTitle);
+                        result.setOffsetStart(tokens.stream()
+                                .filter(t -> t.getPositionStart() >= matchStart
+                                        && t.getPositionEnd() < matchEnd)
+                                .mapToInt(MtasTokenString::getOffsetStart).min()
+                                .getAsInt());
+                        result.setOffsetEnd(tokens.stream()
+                                .filter(t -> t.getPositionStart() >= matchStart
+                                        && t.getPositionEnd() < matchEnd)
+                                .mapToInt(MtasTokenString::getOffsetEnd).max().getAsInt());
+                        result.setTokenStart(matchStart);
+                        result.setTokenLength(matchEnd - matchStart);
+                        result.setReadOnly(annotationDocument != null
+                                && FINISHED.equals(annotationDocument.getState()));
+                        result.setSelectedForAnnotation(!result.isReadOnly());
+
+                        MtasTokenString prevToken = null;
+                        for (MtasTokenString token : tokens) {
+                            if (!token.getPrefix().equals(DEFAULT_PREFIX)) {
                                 continue;
                             }
-                            else if (annotationDocumentId != -1
-                                    && !aRequest.getUser().getUsername().equals(user)) {
-                                // Exclude result if the retrieved document is an annotation
-                                // document (that is, annotationDocument != -1 and its username
-                                // is different from the quering user
-                                log.trace(
-                                        "Skipping results from annotation document for user {} "
-                                                + "which does not match the requested user {}",
-                                        user, aRequest.getUser().getUsername());
+
+                            // When searching for an annotation, we don't get the matching
+                            // text back... not sure why...
+                            String tokenText = CodecUtil.termValue(token.getValue());
+                            if (tokenText == null) {
                                 continue;
                             }
 
-                            // Retrieve document title
-                            String documentTitle = document.get(FIELD_TITLE);
-
-                            // String idValue = segmentReader.document(spans.docID())
-                            // .getField(FIELD_ID).stringValue();
-                            // log.debug("******** New doc {}-{}", + spans.docID(), idValue);
-
-                            while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
-                                if (current < offset) {
-                                    current++;
-                                    continue;
-                                }
-                                if (current - offset + 1 > count) {
-                                    break resultIteration;
-                                }
-                                current++;
-                                int matchStart = spans.startPosition();
-                                int matchEnd = spans.endPosition();
-
-                                int windowStart = Math.max(matchStart - RESULT_WINDOW_SIZE, 0);
-                                int windowEnd = matchEnd + RESULT_WINDOW_SIZE - 1;
-
-                                // Retrieve all indexed objects within the matching range
-                                List<MtasTokenString> tokens = mtasCodecInfo.getObjectsByPositions(
-                                        FIELD_CONTENT, spans.docID(), windowStart, windowEnd);
-
-                                tokens.sort(Comparator.comparing(MtasTokenString::getOffsetStart));
-
-                                if (tokens.isEmpty()) {
-                                    continue;
-                                }
-
-                                SearchResult result = new SearchResult();
-                                StringBuilder resultText = new StringBuilder();
-                                StringBuilder leftContext = new StringBuilder();
-                                StringBuilder rightContext = new StringBuilder();
-                                result.setDocumentId(sourceDocumentId);
-                                result.setDocumentTitle(documentTitle);
-                                result.setOffsetStart(tokens.stream()
-                                        .filter(t -> t.getPositionStart() >= matchStart
-                                                && t.getPositionEnd() < matchEnd)
-                                        .mapToInt(MtasTokenString::getOffsetStart).min()
-                                        .getAsInt());
-                                result.setOffsetEnd(tokens.stream()
-                                        .filter(t -> t.getPositionStart() >= matchStart
-                                                && t.getPositionEnd() < matchEnd)
-                                        .mapToInt(MtasTokenString::getOffsetEnd).max().getAsInt());
-                                result.setTokenStart(matchStart);
-                                result.setTokenLength(matchEnd - matchStart);
-                                result.setReadOnly(annotationDocument != null
-                                        && FINISHED.equals(annotationDocument.getState()));
-                                result.setSelectedForAnnotation(!result.isReadOnly());
-
-                                MtasTokenString prevToken = null;
-                                for (MtasTokenString token : tokens) {
-                                    if (!token.getPrefix().equals(DEFAULT_PREFIX)) {
-                                        continue;
-                                    }
-
-                                    // When searching for an annotation, we don't get the matching
-                                    // text back... not sure why...
-                                    String tokenText = CodecUtil.termValue(token.getValue());
-                                    if (tokenText == null) {
-                                        continue;
-                                    }
-
-                                    if (token.getPositionStart() < matchStart) {
-                                        fill(leftContext, prevToken, token);
-                                        leftContext.append(tokenText);
-                                    }
-                                    else if (token.getPositionStart() >= matchEnd) {
-                                        fill(rightContext, prevToken, token);
-                                        rightContext.append(tokenText);
-                                    }
-                                    else {
-                                        // Only add the whitespace to the match if we already have
-                                        // added any text to the match - otherwise consider the
-                                        // whitespace to be part of the left contex
-                                        if (resultText.length() > 0) {
-                                            fill(resultText, prevToken, token);
-                                        }
-                                        else {
-                                            fill(leftContext, prevToken, token);
-                                        }
-                                        resultText.append(tokenText);
-                                    }
-                                    prevToken = token;
-                                }
-                                result.setText(resultText.toString());
-                                result.setLeftContext(leftContext.toString());
-                                result.setRightContext(rightContext.toString());
-
-                                AnnotationLayer groupingLayer = aRequest.getAnnoationLayer();
-                                AnnotationFeature groupingFeature = aRequest.getAnnotationFeature();
-
-                                if (groupingLayer != null && groupingFeature != null) {
-                                    List<String> featureValues = featureValuesAtMatch(tokens,
-                                            matchStart, matchEnd, groupingLayer, groupingFeature);
-                                    for (String featureValue : featureValues) {
-                                        addToResults(results, featureValue, result);
-                                    }
+                            if (token.getPositionStart() < matchStart) {
+                                fill(leftContext, prevToken, token);
+                                leftContext.append(tokenText);
+                            }
+                            else if (token.getPositionStart() >= matchEnd) {
+                                fill(rightContext, prevToken, token);
+                                rightContext.append(tokenText);
+                            }
+                            else {
+                                // Only add the whitespace to the match if we already have
+                                // added any text to the match - otherwise consider the
+                                // whitespace to be part of the left contex
+                                if (resultText.length() > 0) {
+                                    fill(resultText, prevToken, token);
                                 }
                                 else {
-                                    // if no annotation feature is specified group by document title
-                                    addToResults(results, result.getDocumentTitle(), result);
+                                    fill(leftContext, prevToken, token);
                                 }
+                                resultText.append(tokenText);
+                            }
+                            prevToken = token;
+                        }
+                        result.setText(resultText.toString());
+                        result.setLeftContext(leftContext.toString());
+                        result.setRightContext(rightContext.toString());
+
+                        AnnotationLayer groupingLayer = aRequest.getAnnoationLayer();
+                        AnnotationFeature groupingFeature = aRequest.getAnnotationFeature();
+
+                        if (groupingLayer != null && groupingFeature != null) {
+                            List<String> featureValues = featureValuesAtMatch(tokens,
+                                    matchStart, matchEnd, groupingLayer, groupingFeature);
+                            for (String featureValue : featureValues) {
+                                addToResults(results, featureValue, result);
                             }
                         }
+                        else {
+                            // if no annotation feature is specified group by document title
+                            addToResults(results, result.getDocumentTitle(), result);
+                        }
                     }
                 }
             }
@@ -880,6 +912,18 @@ public class MtasDocumentIndex
     private void indexDocument(String aDocumentTitle, long aSourceDocumentId,
             long aAnnotationDocumentId, String aUser, byte[] aBinaryCas)
         throws IOException
+    {
+        IndexWriter indexWriter = getIndexWriter();
+
+        Document doc = buildDocument(aDocumentTitle, aSourceDocumentId, aAnnotationDocumentId,
+                aUser, aBinaryCas);
+
+        // Add document to the Lucene index
+        indexWriter.addDocument(doc);
+    };
+
+    private Document buildDocument(String aDocumentTitle, long aSourceDocumentId,
+            long aAnnotationDocumentId, String aUser, byte[] aBinaryCas)
     {
         // Calculate timestamp that will be indexed
         String timestamp = DateTools.dateToString(new Date(), DateTools.Resolution.MILLISECOND);
@@ -890,8 +934,6 @@ public class MtasDocumentIndex
                 project.getName(), project.getId(), aSourceDocumentId, aAnnotationDocumentId, aUser,
                 timestamp);
 
-        IndexWriter indexWriter = getIndexWriter();
-
         // Prepare bytearray with document content to be indexed
         String encodedCAS = new String(MtasUtils.bytesToChars(aBinaryCas));
 
@@ -899,8 +941,7 @@ public class MtasDocumentIndex
         Document doc = new Document();
 
         // Add indexed fields
-        doc.add(new StringField(FIELD_ID,
-                String.valueOf(aSourceDocumentId) + "/" + String.valueOf(aAnnotationDocumentId),
+        doc.add(new StringField(FIELD_ID, documentKey(aSourceDocumentId, aAnnotationDocumentId),
                 Field.Store.YES));
         doc.add(new StringField(FIELD_SOURCE_DOCUMENT_ID, String.valueOf(aSourceDocumentId),
                 Field.Store.YES));
@@ -911,9 +952,13 @@ public class MtasDocumentIndex
         doc.add(new StringField(FIELD_TIMESTAMP, timestamp, Field.Store.YES));
         doc.add(new TextField(FIELD_CONTENT, encodedCAS, Field.Store.NO));
 
-        // Add document to the Lucene index
-        indexWriter.addDocument(doc);
-    };
+        return doc;
+    }
+
+    private static String documentKey(long aSourceDocumentId, long aAnnotationDocumentId)
+    {
+        return aSourceDocumentId + "/" + aAnnotationDocumentId;
+    }
 
     /**
      * Remove document from the index
@@ -1150,4 +1195,249 @@ public class MtasDocumentIndex
         indexDocument(aSourceDocument.getName(), aSourceDocument.getId(), -1, "", aBinaryCas);
         scheduleCommit();
     }
+
+    @Override
+    public synchronized BulkIndexer openBulkIndexer(int aBatchSize) throws IOException
+    {
+        IndexWriter indexWriter = getIndexWriter();
+        String fingerprint = getConfigurationFingerprint();
+
+        Map<String, Long> indexingTimes;
+        Map<String, String> commitData = SegmentInfos
+                .readLatestCommit(indexWriter.getDirectory()).getUserData();
+        if (fingerprint.equals(commitData.get(COMMIT_DATA_BULK_INDEXING))) {
+            indexingTimes = listIndexingTimes();
+            log.info("Resuming interrupted bulk indexing in project [{}]({}) - {} documents "
+                    + "already indexed", project.getName(), project.getId(), indexingTimes.size());
+        }
+        else {
+            indexWriter.deleteAll();
+            indexingTimes = new HashMap<>();
+        }
+
+        // Remember that bulk indexing is in progress until it is completed. This is recorded in
+        // every commit until then, so the next run can resume if this one is interrupted.
+        indexWriter.setLiveCommitData(
+                singletonMap(COMMIT_DATA_BULK_INDEXING, fingerprint).entrySet());
+        indexWriter.commit();
+
+        return new MtasBulkIndexer(indexWriter, aBatchSize, indexingTimes);
+    }
+
+    /**
+     * The fingerprint captures the parts of the project configuration that affect how documents
+     * are indexed. An interrupted bulk indexing run can only be resumed if it has not changed.
+     */
+    private String getConfigurationFingerprint()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (AnnotationLayer layer : schemaService.listAnnotationLayer(project)) {
+            sb.append(layer.getId()).append(':').append(layer.getName()).append(':')
+                    .append(layer.getType()).append(':').append(layer.isEnabled()).append(';');
+        }
+        for (AnnotationFeature feature : schemaService.listAnnotationFeature(project)) {
+            sb.append(feature.getId()).append(':').append(feature.getName()).append(':')
+                    .append(feature.getType()).append(':').append(feature.isEnabled())
+                    .append(';');
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return String.format("%064x",
+                    new BigInteger(1, digest.digest(sb.toString().getBytes(UTF_8))));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the time at which each document currently in the index has been indexed.
+     */
+    private Map<String, Long> listIndexingTimes() throws IOException
+    {
+        Map<String, Long> indexingTimes = new HashMap<>();
+        Set<String> fields = new HashSet<>(asList(FIELD_ID, FIELD_TIMESTAMP));
+
+        ReferenceManager<IndexSearcher> searchManager = getSearcherManager();
+        searchManager.maybeRefresh();
+        IndexSearcher indexSearcher = searchManager.acquire();
+        try {
+            for (LeafReaderContext leaf : indexSearcher.getIndexReader().leaves()) {
+                LeafReader reader = leaf.reader();
+                Bits liveDocs = reader.getLiveDocs();
+                for (int i = 0; i < reader.maxDoc(); i++) {
+                    if (liveDocs != null && !liveDocs.get(i)) {
+                        continue;
+                    }
+
+                    Document doc = reader.document(i, fields);
+                    String timestamp = doc.get(FIELD_TIMESTAMP);
+                    if (timestamp == null) {
+                        // Document will simply be indexed again
+                        continue;
+                    }
+
+                    try {
+                        long time = LocalDateTime.parse(timestamp, TIMESTAMP_FORMAT)
+                                .toInstant(UTC).toEpochMilli();
+                        indexingTimes.merge(doc.get(FIELD_ID), time, Math::max);
+                    }
+                    catch (DateTimeParseException e) {
+                        // Document will simply be indexed again
+                    }
+                }
+            }
+        }
+        finally {
+            searchManager.release(indexSearcher);
+        }
+
+        return indexingTimes;
+    }
+
+    private class MtasBulkIndexer
+        implements BulkIndexer
+    {
+        private final IndexWriter indexWriter;
+        private final int batchSize;
+        private final Map<String, Long> indexingTimes;
+
+        private List<Document> batch;
+        private boolean completed;
+
+        public MtasBulkIndexer(IndexWriter aIndexWriter, int aBatchSize,
+                Map<String, Long> aIndexingTimes)
+        {
+            indexWriter = aIndexWriter;
+            batchSize = aBatchSize;
+            indexingTimes = aIndexingTimes;
+            batch = new ArrayList<>(aBatchSize);
+        }
+
+        @Override
+        public Optional<Long> getIndexingTime(SourceDocument aDocument)
+        {
+            return Optional.ofNullable(indexingTimes.get(documentKey(aDocument.getId(), -1)));
+        }
+
+        @Override
+        public Optional<Long> getIndexingTime(AnnotationDocument aDocument)
+        {
+            return Optional.ofNullable(indexingTimes
+                    .get(documentKey(aDocument.getDocument().getId(), aDocument.getId())));
+        }
+
+        @Override
+        public void retainOnly(Collection<SourceDocument> aSourceDocuments,
+                Collection<AnnotationDocument> aAnnotationDocuments)
+            throws IOException
+        {
+            Set<String> keys = new HashSet<>();
+            for (SourceDocument doc : aSourceDocuments) {
+                keys.add(documentKey(doc.getId(), -1));
+            }
+            for (AnnotationDocument doc : aAnnotationDocuments) {
+                keys.add(documentKey(doc.getDocument().getId(), doc.getId()));
+            }
+
+            List<String> staleKeys = indexingTimes.keySet().stream() //
+                    .filter(key -> !keys.contains(key)) //
+                    .collect(toList());
+
+            for (String key : staleKeys) {
+                indexWriter.deleteDocuments(new Term(FIELD_ID, key));
+                indexingTimes.remove(key);
+            }
+
+            if (!staleKeys.isEmpty()) {
+                log.info("Removed {} documents from the index in project [{}]({}) which are no "
+                        + "longer part of the project", staleKeys.size(), project.getName(),
+                        project.getId());
+            }
+        }
+
+        @Override
+        public void add(SourceDocument aDocument, byte[] aBinaryCas) throws IOException
+        {
+            add(aDocument.getName(), aDocument.getId(), -1, "", aBinaryCas);
+        }
+
+        @Override
+        public void add(AnnotationDocument aDocument, byte[] aBinaryCas) throws IOException
+        {
+            add(aDocument.getName(), aDocument.getDocument().getId(), aDocument.getId(),
+                    aDocument.getUser(), aBinaryCas);
+        }
+
+        private void add(String aDocumentTitle, long aSourceDocumentId,
+                long aAnnotationDocumentId, String aUser, byte[] aBinaryCas)
+            throws IOException
+        {
+            // When resuming, we may be replacing a stale version of the document
+            String key = documentKey(aSourceDocumentId, aAnnotationDocumentId);
+            if (indexingTimes.containsKey(key)) {
+                indexWriter.deleteDocuments(new Term(FIELD_ID, key));
+            }
+
+            Document doc = buildDocument(aDocumentTitle, aSourceDocumentId,
+                    aAnnotationDocumentId, aUser, aBinaryCas);
+
+            List<Document> fullBatch = null;
+            synchronized (this) {
+                batch.add(doc);
+                if (batch.size() >= batchSize) {
+                    fullBatch = batch;
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+
+            // Adding the batch parses the documents - this is done outside the lock so that
+            // multiple batches can be parsed in parallel
+            if (fullBatch != null) {
+                indexWriter.addDocuments(fullBatch);
+            }
+        }
+
+        private void flush() throws IOException
+        {
+            List<Document> pendingBatch;
+            synchronized (this) {
+                pendingBatch = batch;
+                batch = new ArrayList<>(batchSize);
+            }
+
+            if (!pendingBatch.isEmpty()) {
+                indexWriter.addDocuments(pendingBatch);
+            }
+        }
+
+        @Override
+        public void commit() throws IOException
+        {
+            flush();
+            indexWriter.commit();
+        }
+
+        @Override
+        public void complete() throws IOException
+        {
+            flush();
+            indexWriter.setLiveCommitData(Collections.<String, String> emptyMap().entrySet());
+            indexWriter.commit();
+            completed = true;
+
+            if (_searcherManager != null) {
+                _searcherManager.maybeRefresh();
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!completed) {
+                commit();
+            }
+        }
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.search.index.mtas;
+
+import static org.apache.lucene.search.DocIdSetIterator.NO_MORE_DOCS;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Caches information derived from the indexed (non-stored) fields of a segment, so that query
+ * results can be filtered without loading the stored documents. Segments are immutable apart from
+ * deletions, so the information remains valid until the segment is closed. Deletions must be
+ * checked separately using the live docs.
+ */
+class SegmentFilterCache
+{
+    /**
+     * Value returned by {@link #getLongValues} for documents which do not have the field.
+     */
+    public static final long MISSING = Long.MIN_VALUE;
+
+    private final Map<IndexReader.CacheKey, SegmentEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @return the set of documents in the segment which contain the given term.
+     */
+    public FixedBitSet getDocuments(LeafReader aReader, Term aTerm) throws IOException
+    {
+        SegmentEntry entry = getEntry(aReader);
+        if (entry == null) {
+            return readDocuments(aReader, aTerm);
+        }
+
+        FixedBitSet docs = entry.documents.get(aTerm);
+        if (docs == null) {
+            docs = readDocuments(aReader, aTerm);
+            entry.documents.put(aTerm, docs);
+        }
+        return docs;
+    }
+
+    /**
+     * @return for each document in the segment, the numeric value of the given single-valued
+     *         field or {@link #MISSING}.
+     */
+    public long[] getLongValues(LeafReader aReader, String aField) throws IOException
+    {
+        SegmentEntry entry = getEntry(aReader);
+        if (entry == null) {
+            return readLongValues(aReader, aField);
+        }
+
+        long[] values = entry.longValues.get(aField);
+        if (values == null) {
+            values = readLongValues(aReader, aField);
+            entry.longValues.put(aField, values);
+        }
+        return values;
+    }
+
+    private SegmentEntry getEntry(LeafReader aReader)
+    {
+        IndexReader.CacheHelper cacheHelper = aReader.getCoreCacheHelper();
+        if (cacheHelper == null) {
+            return null;
+        }
+
+        return entries.computeIfAbsent(cacheHelper.getKey(), key -> {
+            cacheHelper.addClosedListener(entries::remove);
+            return new SegmentEntry();
+        });
+    }
+
+    private static FixedBitSet readDocuments(LeafReader aReader, Term aTerm) throws IOException
+    {
+        FixedBitSet docs = new FixedBitSet(aReader.maxDoc());
+        PostingsEnum postings = aReader.postings(aTerm, PostingsEnum.NONE);
+        if (postings != null) {
+            for (int doc = postings.nextDoc(); doc != NO_MORE_DOCS; doc = postings.nextDoc()) {
+                docs.set(doc);
+            }
+        }
+        return docs;
+    }
+
+    private static long[] readLongValues(LeafReader aReader, String aField) throws IOException
+    {
+        long[] values = new long[aReader.maxDoc()];
+        Arrays.fill(values, MISSING);
+
+        Terms terms = aReader.terms(aField);
+        if (terms == null) {
+            return values;
+        }
+
+        TermsEnum termsEnum = terms.iterator();
+        PostingsEnum postings = null;
+        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+            long value;
+            try {
+                value = Long.parseLong(term.utf8ToString());
+            }
+            catch (NumberFormatException e) {
+                continue;
+            }
+
+            postings = termsEnum.postings(postings, PostingsEnum.NONE);
+            for (int doc = postings.nextDoc(); doc != NO_MORE_DOCS; doc = postings.nextDoc()) {
+                values[doc] = value;
+            }
+        }
+        return values;
+    }
+
+    private static class SegmentEntry
+    {
+        private final Map<Term, FixedBitSet> documents = new ConcurrentHashMap<>();
+        private final Map<String, long[]> longValues = new ConcurrentHashMap<>();
+    }
+}
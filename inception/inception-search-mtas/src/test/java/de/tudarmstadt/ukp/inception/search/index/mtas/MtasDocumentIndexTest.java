@@ -453,6 +453,41 @@ public class MtasDocumentIndexTest
         assertThat(results).usingFieldByFieldElementComparator().containsExactly(expectedResult);
     }
 
+    @Test
+    public void testReindex() throws Exception
+    {
+        Project project = new Project();
+        project.setName("TestReindex");
+
+        createProject(project);
+
+        User user = userRepository.get("admin");
+
+        SourceDocument sourceDocument1 = new SourceDocument();
+        sourceDocument1.setName("Galicia document");
+        sourceDocument1.setProject(project);
+        sourceDocument1.setFormat("text");
+
+        SourceDocument sourceDocument2 = new SourceDocument();
+        sourceDocument2.setName("Portugal document");
+        sourceDocument2.setProject(project);
+        sourceDocument2.setFormat("text");
+
+        uploadDocument(
+                Pair.of(sourceDocument1, "The capital of Galicia is Santiago de Compostela."),
+                Pair.of(sourceDocument2, "The capital of Portugal is Lisbon."));
+
+        try (CasStorageSession casStorageSession = CasStorageSession.open()) {
+            searchService.reindex(project);
+        }
+
+        assertThat(searchService.isIndexValid(project)).isTrue();
+
+        // Documents must not be duplicated by the re-indexing
+        assertThat(searchService.query(user, project, "capital"))
+                .extracting(SearchResult::getDocumentId) //
+                .containsExactlyInAnyOrder(sourceDocument1.getId(), sourceDocument2.getId());
+    }
 
     @SpringBootConfiguration
     public static class TestContext
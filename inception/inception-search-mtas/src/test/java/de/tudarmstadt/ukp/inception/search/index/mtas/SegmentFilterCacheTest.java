@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.search.index.mtas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.jupiter.api.Test;
+
+public class SegmentFilterCacheTest
+{
+    @Test
+    public void thatDocumentsAndValuesAreReadFromIndexedFields() throws Exception
+    {
+        try (Directory dir = new ByteBuffersDirectory()) {
+            try (IndexWriter writer = new IndexWriter(dir,
+                    new IndexWriterConfig(new StandardAnalyzer()))) {
+                writer.addDocument(doc("1", "-1", ""));
+                writer.addDocument(doc("1", "10", "alice"));
+                writer.addDocument(doc("2", "11", "bob"));
+                writer.addDocument(doc("2", "12", "alice"));
+                writer.addDocument(new Document());
+            }
+
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                LeafReader leaf = reader.leaves().get(0).reader();
+
+                SegmentFilterCache sut = new SegmentFilterCache();
+
+                FixedBitSet alice = sut.getDocuments(leaf, new Term("user", "alice"));
+                assertThat(alice.get(1)).isTrue();
+                assertThat(alice.get(3)).isTrue();
+                assertThat(alice.cardinality()).isEqualTo(2);
+
+                assertThat(sut.getLongValues(leaf, "sourceDocumentId")) //
+                        .containsExactly(1, 1, 2, 2, SegmentFilterCache.MISSING);
+
+                // Repeated lookups are served from the cache
+                assertThat(sut.getDocuments(leaf, new Term("user", "alice"))).isSameAs(alice);
+                assertThat(sut.getLongValues(leaf, "sourceDocumentId"))
+                        .isSameAs(sut.getLongValues(leaf, "sourceDocumentId"));
+            }
+        }
+    }
+
+    private Document doc(String aSourceDocumentId, String aAnnotationDocumentId, String aUser)
+    {
+        Document doc = new Document();
+        doc.add(new StringField("sourceDocumentId", aSourceDocumentId, Field.Store.NO));
+        doc.add(new StringField("annotationDocumentId", aAnnotationDocumentId, Field.Store.NO));
+        doc.add(new StringField("user", aUser, Field.Store.NO));
+        return doc;
+    }
+}
@@ -86,10 +86,7 @@ public class ZipUtils
         ZipOutputStream zip = null;
         try {
             zip = new ZipOutputStream(new FileOutputStream(destZipFile));
-
-            for (File file : srcFolder.getAbsoluteFile().listFiles()) {
-                addToZip(zip, srcFolder.getAbsoluteFile(), file);
-            }
+            zipFolder(srcFolder, zip);
             zip.flush();
         }
         finally {
@@ -97,6 +94,24 @@ public class ZipUtils
         }
     }
 
+    /**
+     * Adds all files in the given folder (recursively) to the given ZIP stream. The entry names
+     * are relative to the given folder.
+     * 
+     * @param srcFolder
+     *            source folder.
+     * @param aZip
+     *            target ZIP stream. The stream is not closed.
+     * @throws IOException
+     *             if an I/O error occurs.
+     */
+    public static void zipFolder(File srcFolder, ZipOutputStream aZip) throws IOException
+    {
+        for (File file : srcFolder.getAbsoluteFile().listFiles()) {
+            addToZip(aZip, srcFolder.getAbsoluteFile(), file);
+        }
+    }
+
     private static void addToZip(ZipOutputStream zip, File aBasePath, File aPath) throws IOException
     {
         if (aPath.isDirectory()) {
@@ -20,6 +20,7 @@ package de.tudarmstadt.ukp.clarin.webanno.support.logging;
 import static java.util.Collections.emptyMap;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.slf4j.MDC;
 
@@ -33,6 +34,38 @@ public class MDCContext
         return new MDCContext();
     }
 
+    /**
+     * Wraps the given task such that it runs with the logging context of the calling thread, e.g.
+     * when it is submitted to an executor. The logging context of the thread running the task is
+     * restored afterwards.
+     */
+    public static Runnable withCallerContext(Runnable aRunnable)
+    {
+        Map<String, String> callerContext = MDC.getCopyOfContextMap();
+        return () -> {
+            try (MDCContext ctx = open()) {
+                MDC.setContextMap(callerContext != null ? callerContext : emptyMap());
+                aRunnable.run();
+            }
+        };
+    }
+
+    /**
+     * Wraps the given task such that it runs with the logging context of the calling thread, e.g.
+     * when it is submitted to an executor. The logging context of the thread running the task is
+     * restored afterwards.
+     */
+    public static <T> Callable<T> withCallerContext(Callable<T> aCallable)
+    {
+        Map<String, String> callerContext = MDC.getCopyOfContextMap();
+        return () -> {
+            try (MDCContext ctx = open()) {
+                MDC.setContextMap(callerContext != null ? callerContext : emptyMap());
+                return aCallable.call();
+            }
+        };
+    }
+
     private MDCContext()
     {
         context = MDC.getCopyOfContextMap();
@@ -17,9 +17,6 @@
  */
 package de.tudarmstadt.ukp.inception.ui.agreement.page;
 
-import static de.tudarmstadt.ukp.clarin.webanno.api.CasUpgradeMode.AUTO_CAS_UPGRADE;
-import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.SHARED_READ_ONLY_ACCESS;
-import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.FINISHED;
 import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.ANNOTATOR;
 import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.CURATOR;
 import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.MANAGER;
@@ -30,16 +27,13 @@ import static de.tudarmstadt.ukp.clarin.webanno.ui.core.page.ProjectPageBase.PAG
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.uima.cas.CAS;
-import org.apache.uima.cas.FeatureStructure;
-import org.apache.uima.fit.util.FSUtil;
 import org.apache.wicket.Component;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.feedback.IFeedback;
@@ -55,11 +49,10 @@ import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.model.Model;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.spring.injection.annot.SpringBean;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.wicketstuff.annotation.mount.MountPath;
 
 import de.agilecoders.wicket.extensions.markup.html.bootstrap.form.select.BootstrapSelect;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.AgreementService;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasureSupport;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasureSupportRegistry;
@@ -68,7 +61,6 @@ import de.tudarmstadt.ukp.clarin.webanno.api.AnnotationSchemaService;
 import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
 import de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst;
-import de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
@@ -88,8 +80,6 @@ public class AgreementPage
 {
     private static final long serialVersionUID = 5333662917247971912L;
 
-    private static final Logger LOG = LoggerFactory.getLogger(AgreementPage.class);
-
     private static final String MID_TRAITS_CONTAINER = "traitsContainer";
     private static final String MID_TRAITS = "traits";
     private static final String MID_RESULTS = "results";
@@ -99,6 +89,7 @@ public class AgreementPage
     private @SpringBean AnnotationSchemaService annotationService;
     private @SpringBean UserDao userRepository;
     private @SpringBean AgreementMeasureSupportRegistry agreementRegistry;
+    private @SpringBean AgreementService agreementService;
 
     private AgreementForm agreementForm;
     private WebMarkupContainer resultsContainer;
@@ -226,23 +217,45 @@ public class AgreementPage
             AgreementMeasureSupport ams = agreementRegistry
                     .getAgreementMeasureSupport(measureDropDown.getModelObject().getKey());
 
-            AgreementMeasure measure = ams.createMeasure(feature,
-                    (DefaultAgreementTraits) traitsContainer.get(MID_TRAITS)
-                            .getDefaultModelObject());
+            DefaultAgreementTraits traits = (DefaultAgreementTraits) traitsContainer
+                    .get(MID_TRAITS).getDefaultModelObject();
+            AgreementMeasure measure = ams.createMeasure(feature, traits);
 
-            Map<String, List<CAS>> casMap = getCasMap();
+            Project project = feature.getProject();
+            List<User> users = projectService.listProjectUsersWithPermissions(project, ANNOTATOR);
+            List<SourceDocument> sourceDocuments = documentService.listSourceDocuments(project);
 
-            if (casMap.values().stream().allMatch(list -> list == null || list.isEmpty())) {
+            if (sourceDocuments.isEmpty() || !hasAnnotationDocuments(project, users,
+                    traits.isLimitToFinishedDocuments())) {
                 error("No documents with annotations were found.");
                 aTarget.addChildren(getPage(), IFeedback.class);
             }
             else {
-                Serializable result = measure.getAgreement(casMap);
+                Serializable result = agreementService.getAgreement(measure, users,
+                        sourceDocuments);
                 resultsContainer.addOrReplace(ams.createResultsPanel(MID_RESULTS, Model.of(result),
                         AgreementPage.this::getCasMap));
                 aTarget.add(resultsContainer);
             }
+        }
+
+        /**
+         * Checks if any of the given users has started annotating (or has finished) any document.
+         * This avoids calculating the agreement on nothing but empty documents.
+         */
+        private boolean hasAnnotationDocuments(Project aProject, List<User> aUsers,
+                boolean aFinishedOnly)
+        {
+            Set<String> usernames = aUsers.stream() //
+                    .map(User::getUsername) //
+                    .collect(Collectors.toSet());
+
+            List<AnnotationDocument> annotationDocuments = aFinishedOnly
+                    ? documentService.listFinishedAnnotationDocuments(aProject)
+                    : documentService.listAnnotationDocuments(aProject);
 
+            return annotationDocuments.stream() //
+                    .anyMatch(annDoc -> usernames.contains(annDoc.getUser()));
         }
 
         List<Pair<String, String>> listMeasures()
@@ -281,14 +294,11 @@ public class AgreementPage
         Pair<String, String> measure;
     }
 
-    // The CASes cannot be serialized, so we make them transient here. However, it does not matter
-    // as we do not access the field directly but via getCases() which will re-load them if
-    // necessary, e.g. if the transient field is empty after a session is restored from a
-    // persisted state.
-    private transient Map<String, List<CAS>> cachedCASes;
-    private transient Project cachedProject;
-    private transient boolean cachedLimitToFinishedDocuments;
-
+    /**
+     * Loads the CASes of all annotators for all documents. This is only used when the user requests
+     * an export of the full study - the agreement itself is calculated document by document by the
+     * {@link AgreementService}.
+     */
     public Map<String, List<CAS>> getCasMap()
     {
         if (agreementForm.featureList.getModelObject() == null) {
@@ -300,74 +310,11 @@ public class AgreementPage
         DefaultAgreementTraits traits = (DefaultAgreementTraits) agreementForm.traitsContainer
                 .get(MID_TRAITS).getDefaultModelObject();
 
-        // Avoid reloading the CASes when switching features within the same project
-        if (cachedCASes != null && project.equals(cachedProject)
-                && cachedLimitToFinishedDocuments == traits.isLimitToFinishedDocuments()) {
-            return cachedCASes;
-        }
-
         List<User> users = projectService.listProjectUsersWithPermissions(project, ANNOTATOR);
 
         List<SourceDocument> sourceDocuments = documentService.listSourceDocuments(project);
 
-        cachedCASes = new LinkedHashMap<>();
-        for (User user : users) {
-            List<CAS> cases = new ArrayList<>();
-
-            // Bulk-fetch all source documents for which there is already an annotation document for
-            // the user which is faster then checking for their existence individually
-            List<SourceDocument> docsForUser = documentService
-                    .listAnnotationDocuments(project, user).stream()
-                    .map(AnnotationDocument::getDocument).distinct().collect(Collectors.toList());
-
-            nextDocument: for (SourceDocument document : sourceDocuments) {
-                CAS cas = null;
-
-                try {
-                    if (docsForUser.contains(document)) {
-                        AnnotationDocument annotationDocument = documentService
-                                .getAnnotationDocument(document, user);
-
-                        if (traits.isLimitToFinishedDocuments()
-                                && !annotationDocument.getState().equals(FINISHED)) {
-                            // Add a skip marker (null) for the current CAS to the CAS list - this
-                            // is necessary because we expect the CAS lists for all users to have
-                            // the same size
-                            cases.add(null);
-                            continue nextDocument;
-                        }
-                    }
-
-                    // Reads the user's annotation document or the initial source document -
-                    // depending on what is available
-                    cas = documentService.readAnnotationCas(document, user.getUsername(),
-                            AUTO_CAS_UPGRADE, SHARED_READ_ONLY_ACCESS);
-                }
-                catch (Exception e) {
-                    error("Unable to load data: " + ExceptionUtils.getRootCauseMessage(e));
-                    LOG.error("Unable to load data", e);
-                }
-
-                if (cas != null) {
-                    // Set the CAS name in the DocumentMetaData so that we can pick it
-                    // up in the Diff position for the purpose of debugging / transparency.
-                    FeatureStructure dmd = WebAnnoCasUtil.getDocumentMetadata(cas);
-                    FSUtil.setFeature(dmd, "documentId", document.getName());
-                    FSUtil.setFeature(dmd, "collectionId", document.getProject().getName());
-
-                }
-
-                // The next line can enter null values into the list if a user didn't work on this
-                // source document yet.
-                cases.add(cas);
-            }
-
-            cachedCASes.put(user.getUsername(), cases);
-        }
-
-        cachedProject = project;
-        cachedLimitToFinishedDocuments = traits.isLimitToFinishedDocuments();
-
-        return cachedCASes;
+        return agreementService.getCasMap(users, sourceDocuments,
+                traits.isLimitToFinishedDocuments());
     }
 }
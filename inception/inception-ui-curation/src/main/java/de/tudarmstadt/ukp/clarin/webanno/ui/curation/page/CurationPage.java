@@ -45,6 +45,7 @@ import static de.tudarmstadt.ukp.clarin.webanno.ui.curation.overview.CurationUni
 import static de.tudarmstadt.ukp.clarin.webanno.ui.curation.overview.CurationUnitState.STACKED;
 import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
+import static java.util.stream.Collectors.toSet;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -104,6 +105,9 @@ import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.DiffResult;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casmerge.CasMerge;
 import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationDocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary.Conflict;
+import de.tudarmstadt.ukp.clarin.webanno.curation.storage.CurationMergeSummary.ConflictKind;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.model.Mode;
@@ -724,6 +728,14 @@ public class CurationPage
     private List<CurationUnit> buildUnitOverview(AnnotatorState aState)
         throws UIMAException, ClassNotFoundException, IOException, AnnotationException
     {
+        // If the document has been merged in the background and nothing has changed since, the
+        // merge summary already tells us where the annotators disagree
+        Optional<CurationMergeSummary> mergeSummary = curationDocumentService
+                .readCurrentMergeSummary(aState.getDocument());
+        if (mergeSummary.isPresent()) {
+            return buildUnitOverview(aState, mergeSummary.get());
+        }
+
         // get annotation documents
         Map<String, CAS> casses = readAllCasesSharedNoUpgrade(
                 documentService.listFinishedAnnotationDocuments(aState.getDocument()));
@@ -761,6 +773,44 @@ public class CurationPage
         return curationUnitList;
     }
 
+    private List<CurationUnit> buildUnitOverview(AnnotatorState aState,
+            CurationMergeSummary aSummary)
+        throws IOException
+    {
+        CAS editorCas = curationDocumentService.readCurationCas(aState.getDocument());
+
+        int unitIndex = 0;
+        List<CurationUnit> curationUnitList = new ArrayList<>();
+        for (Unit unit : aState.getPagingStrategy().units(editorCas)) {
+            unitIndex++;
+
+            CurationUnit curationUnit = new CurationUnit(unit.getBegin(), unit.getEnd(), unitIndex);
+
+            Set<ConflictKind> conflicts = aSummary.getConflicts().stream() //
+                    .filter(c -> c.isCoveredBy(unit.getBegin(), unit.getEnd())) //
+                    .map(Conflict::getKind) //
+                    .collect(toSet());
+
+            // Same precedence as in calculateState - agreeing positions have all been merged
+            if (conflicts.contains(ConflictKind.STACKED)) {
+                curationUnit.setState(STACKED);
+            }
+            else if (conflicts.contains(ConflictKind.INCOMPLETE)) {
+                curationUnit.setState(INCOMPLETE);
+            }
+            else if (conflicts.contains(ConflictKind.DISAGREE)) {
+                curationUnit.setState(DISAGREE);
+            }
+            else {
+                curationUnit.setState(AGREE);
+            }
+
+            curationUnitList.add(curationUnit);
+        }
+
+        return curationUnitList;
+    }
+
     private CurationUnitState calculateState(DiffResult diff)
     {
         if (!diff.hasDifferences() && diff.getIncompleteConfigurationSets().isEmpty()) {
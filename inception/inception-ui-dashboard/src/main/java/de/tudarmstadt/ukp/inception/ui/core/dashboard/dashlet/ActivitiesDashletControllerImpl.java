@@ -56,7 +56,7 @@ import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.clarin.webanno.ui.annotation.AnnotationPageMenuItem;
 import de.tudarmstadt.ukp.clarin.webanno.ui.curation.page.CurationPageMenuItem;
 import de.tudarmstadt.ukp.inception.log.EventRepository;
-import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEventRollup;
 
 @RestController
 @RequestMapping(ActivitiesDashletController.BASE_URL)
@@ -133,7 +133,7 @@ public class ActivitiesDashletControllerImpl
 
         // get last annotation events
         // return filtered by user rights and document state
-        List<LoggedEvent> recentEvents = eventRepository.listRecentActivity(project,
+        List<LoggedEventRollup> recentEvents = eventRepository.listRecentActivity(project,
                 user.getUsername(), annotationEvents, 10);
         return recentEvents.stream() //
                 .filter(Objects::nonNull) //
@@ -22,7 +22,7 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.WebAnnoConst.CURATION_USER;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
-import de.tudarmstadt.ukp.inception.log.model.LoggedEvent;
+import de.tudarmstadt.ukp.inception.log.model.LoggedEventRollup;
 
 class Activity
 {
@@ -36,7 +36,7 @@ class Activity
     public final @JsonProperty String link;
     public final @JsonProperty String type;
 
-    public Activity(LoggedEvent aEvent, SourceDocument aDocument, String aLink)
+    public Activity(LoggedEventRollup aEvent, SourceDocument aDocument, String aLink)
     {
         super();
         id = aEvent.getId();
@@ -45,7 +45,7 @@ class Activity
         documentName = aDocument.getName();
         user = aEvent.getUser();
         annotator = aEvent.getAnnotator();
-        timestamp = aEvent.getCreated().getTime();
+        timestamp = aEvent.getLastCreated().getTime();
         link = aLink;
         type = CURATION_USER.equals(aEvent.getAnnotator()) ? "Curation" : "Annotation";
     }
@@ -33,4 +33,13 @@ public interface DynamicWorkloadExtension
     Optional<SourceDocument> nextDocumentToAnnotate(Project aProject, User aUser);
 
     void updateDocumentState(SourceDocument aDocument, int aRequiredAnnotatorCount);
+
+    /**
+     * Releases documents that have been abandoned by their annotators and re-synchronizes the
+     * in-memory assignment queue of the given project with the database.
+     * 
+     * @param aProject
+     *            the project to check.
+     */
+    void checkAbandonedDocuments(Project aProject);
 }
@@ -17,6 +17,8 @@
  */
 package de.tudarmstadt.ukp.inception.workload.dynamic;
 
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.FINISHED;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.IGNORE;
 import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.IN_PROGRESS;
 import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.CURATOR;
 import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.MANAGER;
@@ -25,10 +27,13 @@ import static de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState.ANNOTA
 import static de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState.CURATION_FINISHED;
 import static de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState.CURATION_IN_PROGRESS;
 import static de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil.fromJsonString;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -37,18 +42,28 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import org.apache.uima.UIMAException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.core.session.SessionRegistry;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
 import de.tudarmstadt.ukp.clarin.webanno.api.SourceDocumentStateStats;
 import de.tudarmstadt.ukp.clarin.webanno.api.dao.casstorage.CasStorageSession;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterDocumentCreatedEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AnnotationStateChangeEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeDocumentRemovedEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeProjectRemovedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
@@ -58,6 +73,9 @@ import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.security.UserDao;
 import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
+import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
+import de.tudarmstadt.ukp.inception.workload.dynamic.assignment.AssignmentQueue;
+import de.tudarmstadt.ukp.inception.workload.dynamic.assignment.DynamicWorkloadAbandonmentCheckTask;
 import de.tudarmstadt.ukp.inception.workload.dynamic.config.DynamicWorkloadManagerAutoConfiguration;
 import de.tudarmstadt.ukp.inception.workload.dynamic.trait.DynamicWorkloadTraits;
 import de.tudarmstadt.ukp.inception.workload.dynamic.workflow.WorkflowExtension;
@@ -73,7 +91,7 @@ import de.tudarmstadt.ukp.inception.workload.model.WorkloadManager;
  * </p>
  */
 public class DynamicWorkloadExtensionImpl
-    implements DynamicWorkloadExtension
+    implements DynamicWorkloadExtension, DisposableBean
 {
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -83,11 +101,16 @@ public class DynamicWorkloadExtensionImpl
     private final ProjectService projectService;
     private final UserDao userRepository;
     private final SessionRegistry sessionRegistry;
+    private final SchedulingService schedulingService;
+
+    private final Map<Long, AssignmentQueue> assignmentQueues = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService abandonmentCheckTimer;
 
     public DynamicWorkloadExtensionImpl(WorkloadManagementService aWorkloadManagementService,
             WorkflowExtensionPoint aWorkflowExtensionPoint, DocumentService aDocumentService,
             ProjectService aProjectService, UserDao aUserRepository,
-            SessionRegistry aSessionRegistry)
+            SessionRegistry aSessionRegistry, SchedulingService aSchedulingService,
+            Duration aAbandonmentCheckInterval)
     {
         workloadManagementService = aWorkloadManagementService;
         workflowExtensionPoint = aWorkflowExtensionPoint;
@@ -95,6 +118,12 @@ public class DynamicWorkloadExtensionImpl
         projectService = aProjectService;
         userRepository = aUserRepository;
         sessionRegistry = aSessionRegistry;
+        schedulingService = aSchedulingService;
+
+        abandonmentCheckTimer = new ScheduledThreadPoolExecutor(0);
+        long interval = aAbandonmentCheckInterval.toMillis();
+        abandonmentCheckTimer.scheduleWithFixedDelay(this::scheduleAbandonmentChecks, interval,
+                interval, MILLISECONDS);
     }
 
     @Override
@@ -153,18 +182,16 @@ public class DynamicWorkloadExtensionImpl
     @Override
     public Optional<SourceDocument> nextDocumentToAnnotate(Project aProject, User aUser)
     {
+        AssignmentQueue queue = getAssignmentQueue(aProject);
+
         // First, check if there are other documents which have been in the state INPROGRESS
         // Load the first one found
-        List<AnnotationDocument> inProgressDocuments = documentService
-                .listAnnotationDocumentsWithStateForUser(aProject, aUser, IN_PROGRESS);
-        if (!inProgressDocuments.isEmpty()) {
-            return Optional.of(inProgressDocuments.get(0).getDocument());
+        Optional<SourceDocument> inProgressDocument = queue.findInProgress(aUser.getUsername());
+        if (inProgressDocument.isPresent()) {
+            return Optional.of(documentService.getSourceDocument(aProject.getId(),
+                    inProgressDocument.get().getId()));
         }
 
-        // Make sure that any documents that could be eligible for annotation due to having been
-        // abandoned by another user are available
-        freshenStatus(aProject);
-
         WorkloadManager currentWorkload = workloadManagementService
                 .loadOrCreateWorkloadManagerConfiguration(aProject);
 
@@ -175,29 +202,156 @@ public class DynamicWorkloadExtensionImpl
                 .getExtension(traits.getWorkflowType()) //
                 .orElseGet(DefaultWorkflowExtension::new);
 
-        // Get all documents for which the state is NEW, or which have not been created yet.
-        List<SourceDocument> sourceDocuments = documentService
-                .listAnnotatableDocuments(aProject, aUser).entrySet().stream()
-                .filter(entry -> entry.getValue() == null
-                        || entry.getValue().getState() == AnnotationDocumentState.NEW)
-                .map(entry -> entry.getKey()).collect(Collectors.toList());
-
-        // Rearrange list of documents according to current workflow
-        sourceDocuments = currentWorkflowExtension.rankDocuments(sourceDocuments);
-
-        for (SourceDocument doc : sourceDocuments) {
-            // FIXME: repeated query to DB should be optimized into a single query returning
-            // a map of documents / annotator counts
-
-            // Check if there are less annotators working on the selected document than
-            // the target number of annotation set by the project manager
-            if ((workloadManagementService.getNumberOfUsersWorkingOnADocument(doc)) < (traits
-                    .getDefaultNumberOfAnnotations())) {
-                return Optional.of(doc);
+        // Atomically pick a document which is not yet annotated by enough annotators and reserve
+        // a slot on it for the user. The workflow ranks the eligible documents.
+        Optional<SourceDocument> claimedDocument = queue.claim(aUser.getUsername(),
+                traits.getDefaultNumberOfAnnotations(), currentWorkflowExtension::rankDocuments);
+        if (claimedDocument.isEmpty()) {
+            return Optional.empty();
+        }
+
+        // Persist the reservation - marking the document as IN_PROGRESS for the user ensures
+        // that the other annotators as well as other cluster nodes see it. Setting the timestamp
+        // ensures that it is not immediately considered as abandoned.
+        try {
+            SourceDocument doc = documentService.getSourceDocument(aProject.getId(),
+                    claimedDocument.get().getId());
+            AnnotationDocument annDoc = documentService.createOrGetAnnotationDocument(doc, aUser);
+            annDoc.setTimestamp(new Date());
+            documentService.setAnnotationDocumentState(annDoc, IN_PROGRESS);
+            queue.confirm(doc, aUser.getUsername());
+            afterTransaction(() -> queue.touch(doc, aUser.getUsername()));
+            return Optional.of(doc);
+        }
+        catch (RuntimeException e) {
+            queue.release(claimedDocument.get(), aUser.getUsername());
+            throw e;
+        }
+    }
+
+    @Override
+    @Transactional
+    public void checkAbandonedDocuments(Project aProject)
+    {
+        // Start the reload before the transaction reads anything - the database state read
+        // below may not include changes made after this point
+        AssignmentQueue queue = assignmentQueues.get(aProject.getId());
+        long snapshot = queue != null ? queue.startReload() : 0;
+
+        freshenStatus(aProject);
+
+        if (queue != null) {
+            loadAssignmentQueue(queue, snapshot);
+        }
+    }
+
+    private AssignmentQueue getAssignmentQueue(Project aProject)
+    {
+        // The queue is registered before it is loaded, so it receives all changes made while it
+        // is loading. It is not loaded within computeIfAbsent because that would block other
+        // updates of the map while accessing the database. If multiple threads request the queue
+        // before it has been loaded, each of them loads it.
+        AssignmentQueue queue = assignmentQueues.get(aProject.getId());
+        if (queue == null) {
+            AssignmentQueue newQueue = new AssignmentQueue(aProject);
+            queue = assignmentQueues.putIfAbsent(aProject.getId(), newQueue);
+            if (queue == null) {
+                queue = newQueue;
             }
         }
 
-        return Optional.empty();
+        // Abandoned documents are not released here but by the abandonment check timer
+        if (!queue.isLoaded()) {
+            loadAssignmentQueue(queue, queue.startReload());
+        }
+
+        return queue;
+    }
+
+    private void loadAssignmentQueue(AssignmentQueue aQueue, long aSnapshot)
+    {
+        long start = currentTimeMillis();
+
+        Project project = aQueue.getProject();
+        List<SourceDocument> documents = documentService.listSourceDocuments(project);
+        List<AnnotationDocument> annotationDocuments = documentService
+                .listAnnotationDocumentsInState(project, IN_PROGRESS, FINISHED, IGNORE);
+        aQueue.reload(aSnapshot, documents, annotationDocuments);
+
+        log.debug("Loaded assignment queue for {} with {} documents in {}ms", project,
+                documents.size(), currentTimeMillis() - start);
+    }
+
+    private void scheduleAbandonmentChecks()
+    {
+        for (AssignmentQueue queue : assignmentQueues.values()) {
+            schedulingService.enqueue(new DynamicWorkloadAbandonmentCheckTask(queue.getProject(),
+                    "Abandonment check timer"));
+        }
+    }
+
+    @EventListener
+    public void onAnnotationStateChange(AnnotationStateChangeEvent aEvent)
+    {
+        AssignmentQueue queue = assignmentQueues.get(aEvent.getDocument().getProject().getId());
+        if (queue != null) {
+            SourceDocument doc = aEvent.getDocument();
+            String user = aEvent.getAnnotationDocument().getUser();
+            queue.update(doc, user, aEvent.getNewState());
+            // A reload reading the database before the change has been committed must not undo
+            // it
+            afterTransaction(() -> queue.touch(doc, user));
+        }
+    }
+
+    /**
+     * Runs the given action once the current transaction has completed. Outside of a transaction,
+     * changes are committed immediately and the action is not needed.
+     */
+    private static void afterTransaction(Runnable aAction)
+    {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+        {
+            @Override
+            public void afterCompletion(int aStatus)
+            {
+                aAction.run();
+            }
+        });
+    }
+
+    @EventListener
+    public void onAfterDocumentCreated(AfterDocumentCreatedEvent aEvent)
+    {
+        AssignmentQueue queue = assignmentQueues.get(aEvent.getDocument().getProject().getId());
+        if (queue != null) {
+            queue.addDocument(aEvent.getDocument());
+        }
+    }
+
+    @EventListener
+    public void onBeforeDocumentRemoved(BeforeDocumentRemovedEvent aEvent)
+    {
+        AssignmentQueue queue = assignmentQueues.get(aEvent.getDocument().getProject().getId());
+        if (queue != null) {
+            queue.removeDocument(aEvent.getDocument());
+        }
+    }
+
+    @EventListener
+    public void onBeforeProjectRemoved(BeforeProjectRemovedEvent aEvent)
+    {
+        assignmentQueues.remove(aEvent.getProject().getId());
+    }
+
+    @Override
+    public void destroy()
+    {
+        abandonmentCheckTimer.shutdownNow();
     }
 
     @Override
@@ -207,10 +361,10 @@ public class DynamicWorkloadExtensionImpl
         WorkloadManager currentWorkload = workloadManagementService
                 .loadOrCreateWorkloadManagerConfiguration(aProject);
         DynamicWorkloadTraits traits = readTraits(currentWorkload);
+        int requiredAnnotatorCount = traits.getDefaultNumberOfAnnotations();
 
-        for (SourceDocument doc : documentService.listSourceDocuments(aProject)) {
-            updateDocumentState(doc, traits.getDefaultNumberOfAnnotations());
-        }
+        workloadManagementService.bulkRecalculateDocumentStates(aProject,
+                stats -> calculateDocumentState(stats, requiredAnnotatorCount));
 
         // Refresh the project stats and recalculate them
         Project project = projectService.getProject(aProject.getId());
@@ -310,19 +464,26 @@ public class DynamicWorkloadExtensionImpl
     {
         Map<AnnotationDocumentState, Long> stats = documentService
                 .getAnnotationDocumentStats(aDocument);
-        long finishedCount = stats.get(AnnotationDocumentState.FINISHED);
-        long inProgressCount = stats.get(AnnotationDocumentState.IN_PROGRESS);
+        documentService.setSourceDocumentState(aDocument,
+                calculateDocumentState(stats, aRequiredAnnotatorCount));
+    }
+
+    private static SourceDocumentState calculateDocumentState(
+            Map<AnnotationDocumentState, Long> aStats, int aRequiredAnnotatorCount)
+    {
+        long finishedCount = aStats.get(AnnotationDocumentState.FINISHED);
+        long inProgressCount = aStats.get(AnnotationDocumentState.IN_PROGRESS);
 
         // If enough documents are finished, mark as finished
         if (finishedCount >= aRequiredAnnotatorCount) {
-            documentService.setSourceDocumentState(aDocument, ANNOTATION_FINISHED);
+            return ANNOTATION_FINISHED;
         }
         // ... or if nobody has started yet, mark as new
         else if (finishedCount + inProgressCount == 0) {
-            documentService.setSourceDocumentState(aDocument, SourceDocumentState.NEW);
+            return SourceDocumentState.NEW;
         }
         else {
-            documentService.setSourceDocumentState(aDocument, ANNOTATION_IN_PROGRESS);
+            return ANNOTATION_IN_PROGRESS;
         }
     }
 }
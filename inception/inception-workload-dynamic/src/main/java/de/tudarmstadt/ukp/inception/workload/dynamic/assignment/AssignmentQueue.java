@@ -0,0 +1,427 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.workload.dynamic.assignment;
+
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.FINISHED;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.IN_PROGRESS;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.NEW;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+
+/**
+ * In-memory view of the annotation states of all documents in a project that is used to hand out
+ * documents in the dynamic workload. The queue is initially populated from the database and then
+ * kept up-to-date incrementally via {@link #update}, {@link #addDocument} and
+ * {@link #removeDocument}.
+ * <p>
+ * Assigning a document to a user is done via {@link #claim} which atomically picks an eligible
+ * document and reserves a slot on it for the user. The reservation remains <i>pending</i> until
+ * the caller has persisted it and reports back via {@link #confirm} - or via {@link #release} if
+ * persisting it failed. Pending reservations survive a {@link #reload} so that a reload which
+ * happens to read the database just before the reservation is persisted does not free the slot
+ * again.
+ * <p>
+ * A reload must not undo changes which the database snapshot used for the reload may not contain
+ * yet. Every change is therefore stamped with a generation number. Before reading the database, the
+ * caller obtains the current generation via {@link #startReload}. When reloading, all changes
+ * stamped with a later generation are re-applied on top of the database state. Changes which are
+ * made within a transaction should be stamped again via {@link #touch} once the transaction has
+ * completed.
+ */
+public class AssignmentQueue
+{
+    private final Project project;
+
+    // Documents in the order in which they have been loaded (i.e. by name)
+    private final Map<Long, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, Set<Long>> inProgressByUser = new HashMap<>();
+    private final Set<Claim> pendingClaims = new HashSet<>();
+    // Generation at which documents were removed - only needed until the next reload
+    private final Map<Long, Long> removedDocuments = new HashMap<>();
+
+    private long generation;
+    private long lastReloadSnapshot = -1;
+
+    public AssignmentQueue(Project aProject)
+    {
+        project = aProject;
+    }
+
+    public Project getProject()
+    {
+        return project;
+    }
+
+    /**
+     * @return whether the queue has been loaded at least once.
+     */
+    public synchronized boolean isLoaded()
+    {
+        return lastReloadSnapshot >= 0;
+    }
+
+    /**
+     * Must be called before reading the database state which is then passed to {@link #reload}.
+     * This must happen before the transaction reading the database state performs its first read.
+     *
+     * @return the snapshot generation to pass to {@link #reload}.
+     */
+    public synchronized long startReload()
+    {
+        return generation;
+    }
+
+    /**
+     * Replace the state of the queue with the given documents and annotation documents. Changes
+     * made to the queue after the given snapshot generation are preserved. If a reload based on a
+     * more recent snapshot has already been applied, the call has no effect.
+     *
+     * @param aSnapshot
+     *            the generation obtained via {@link #startReload} before reading the database.
+     * @param aDocuments
+     *            all source documents of the project.
+     * @param aAnnotationDocuments
+     *            all annotation documents of the project that are not in state
+     *            {@link AnnotationDocumentState#NEW}.
+     */
+    public synchronized void reload(long aSnapshot, List<SourceDocument> aDocuments,
+            List<AnnotationDocument> aAnnotationDocuments)
+    {
+        if (aSnapshot < lastReloadSnapshot) {
+            return;
+        }
+        lastReloadSnapshot = aSnapshot;
+
+        Map<Long, Entry> oldEntries = new LinkedHashMap<>(entries);
+        entries.clear();
+        inProgressByUser.clear();
+
+        for (SourceDocument doc : aDocuments) {
+            if (!isRemovedSince(doc.getId(), aSnapshot)) {
+                entries.put(doc.getId(), new Entry(doc));
+            }
+        }
+
+        for (AnnotationDocument adoc : aAnnotationDocuments) {
+            long docId = adoc.getDocument().getId();
+            Entry oldEntry = oldEntries.get(docId);
+            if (isRemovedSince(docId, aSnapshot)
+                    || (oldEntry != null && oldEntry.isModifiedSince(adoc.getUser(), aSnapshot))) {
+                continue;
+            }
+
+            setState(adoc.getDocument(), adoc.getUser(), adoc.getState());
+        }
+
+        // Re-apply changes which the database state may not contain yet
+        for (Entry oldEntry : oldEntries.values()) {
+            long docId = oldEntry.document.getId();
+            if (oldEntry.added > aSnapshot) {
+                Entry entry = entries.computeIfAbsent(docId, id -> new Entry(oldEntry.document));
+                entry.added = oldEntry.added;
+            }
+
+            Entry entry = entries.get(docId);
+            if (entry == null) {
+                continue;
+            }
+
+            for (Map.Entry<String, Long> modification : oldEntry.modified.entrySet()) {
+                if (modification.getValue() > aSnapshot) {
+                    String user = modification.getKey();
+                    setState(entry.document, user, oldEntry.states.getOrDefault(user, NEW));
+                    entry.modified.put(user, modification.getValue());
+                }
+            }
+        }
+
+        removedDocuments.values().removeIf(removed -> removed <= aSnapshot);
+
+        for (Claim claim : pendingClaims) {
+            Entry entry = entries.get(claim.documentId);
+            if (entry != null && !entry.states.containsKey(claim.user)) {
+                setState(entry.document, claim.user, IN_PROGRESS);
+            }
+        }
+    }
+
+    public synchronized void addDocument(SourceDocument aDocument)
+    {
+        Entry entry = entries.computeIfAbsent(aDocument.getId(), id -> new Entry(aDocument));
+        entry.added = ++generation;
+        removedDocuments.remove(aDocument.getId());
+    }
+
+    public synchronized void removeDocument(SourceDocument aDocument)
+    {
+        removedDocuments.put(aDocument.getId(), ++generation);
+
+        Entry entry = entries.remove(aDocument.getId());
+        if (entry == null) {
+            return;
+        }
+
+        for (String user : entry.states.keySet()) {
+            untrackInProgress(aDocument.getId(), user);
+        }
+
+        pendingClaims.removeIf(claim -> claim.documentId == aDocument.getId());
+    }
+
+    public synchronized void update(SourceDocument aDocument, String aUser,
+            AnnotationDocumentState aState)
+    {
+        setState(aDocument, aUser, aState);
+        markModified(aDocument, aUser);
+    }
+
+    /**
+     * Marks the state of the given user on the given document as recently changed without changing
+     * it, so that a reload based on a database snapshot taken before this call does not overwrite
+     * it. To be called once a transaction which changed the state has completed.
+     */
+    public synchronized void touch(SourceDocument aDocument, String aUser)
+    {
+        if (entries.containsKey(aDocument.getId())) {
+            markModified(aDocument, aUser);
+        }
+    }
+
+    /**
+     * @param aUser
+     *            a user.
+     * @return a document the user is currently working on, if any.
+     */
+    public synchronized Optional<SourceDocument> findInProgress(String aUser)
+    {
+        Set<Long> docIds = inProgressByUser.get(aUser);
+        if (docIds == null || docIds.isEmpty()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(entries.get(docIds.iterator().next()).document);
+    }
+
+    /**
+     * Atomically picks the next document for the given user and reserves a slot on it.
+     *
+     * @param aUser
+     *            the user for whom to claim a document.
+     * @param aRequiredAnnotatorCount
+     *            the number of users that should annotate each document.
+     * @param aRanker
+     *            ranks the eligible documents according to the project workflow. The first
+     *            document in the ranked list is claimed.
+     * @return the claimed document, if any document was available.
+     */
+    public synchronized Optional<SourceDocument> claim(String aUser, int aRequiredAnnotatorCount,
+            UnaryOperator<List<SourceDocument>> aRanker)
+    {
+        List<SourceDocument> candidates = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.isAvailableFor(aUser, aRequiredAnnotatorCount)) {
+                candidates.add(entry.document);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return Optional.empty();
+        }
+
+        List<SourceDocument> ranked = aRanker.apply(candidates);
+        if (ranked.isEmpty()) {
+            return Optional.empty();
+        }
+
+        SourceDocument doc = ranked.get(0);
+        setState(doc, aUser, IN_PROGRESS);
+        markModified(doc, aUser);
+        pendingClaims.add(new Claim(doc.getId(), aUser));
+        return Optional.of(doc);
+    }
+
+    /**
+     * Marks a reservation obtained via {@link #claim} as persisted.
+     */
+    public synchronized void confirm(SourceDocument aDocument, String aUser)
+    {
+        if (pendingClaims.remove(new Claim(aDocument.getId(), aUser))) {
+            touch(aDocument, aUser);
+        }
+    }
+
+    /**
+     * Drops a reservation obtained via {@link #claim}, e.g. because it could not be persisted.
+     */
+    public synchronized void release(SourceDocument aDocument, String aUser)
+    {
+        if (!pendingClaims.remove(new Claim(aDocument.getId(), aUser))) {
+            return;
+        }
+
+        Entry entry = entries.get(aDocument.getId());
+        if (entry != null && entry.states.get(aUser) == IN_PROGRESS) {
+            setState(aDocument, aUser, NEW);
+            markModified(aDocument, aUser);
+        }
+    }
+
+    /**
+     * @return number of users in state {@link AnnotationDocumentState#IN_PROGRESS} or
+     *         {@link AnnotationDocumentState#FINISHED} on the given document.
+     */
+    public synchronized int getActiveAnnotatorCount(SourceDocument aDocument)
+    {
+        Entry entry = entries.get(aDocument.getId());
+        return entry != null ? entry.activeCount : 0;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    private void setState(SourceDocument aDocument, String aUser, AnnotationDocumentState aState)
+    {
+        Entry entry = entries.computeIfAbsent(aDocument.getId(), id -> new Entry(aDocument));
+
+        AnnotationDocumentState oldState = aState == NEW ? entry.states.remove(aUser)
+                : entry.states.put(aUser, aState);
+
+        if (isActive(oldState)) {
+            entry.activeCount--;
+        }
+        if (isActive(aState)) {
+            entry.activeCount++;
+        }
+
+        if (aState == IN_PROGRESS) {
+            inProgressByUser.computeIfAbsent(aUser, user -> new LinkedHashSet<>())
+                    .add(aDocument.getId());
+        }
+        else if (oldState == IN_PROGRESS) {
+            untrackInProgress(aDocument.getId(), aUser);
+        }
+    }
+
+    private void markModified(SourceDocument aDocument, String aUser)
+    {
+        Entry entry = entries.get(aDocument.getId());
+        if (entry != null) {
+            entry.modified.put(aUser, ++generation);
+        }
+    }
+
+    private boolean isRemovedSince(long aDocumentId, long aSnapshot)
+    {
+        Long removed = removedDocuments.get(aDocumentId);
+        return removed != null && removed > aSnapshot;
+    }
+
+    private void untrackInProgress(long aDocumentId, String aUser)
+    {
+        Set<Long> docIds = inProgressByUser.get(aUser);
+        if (docIds != null) {
+            docIds.remove(aDocumentId);
+            if (docIds.isEmpty()) {
+                inProgressByUser.remove(aUser);
+            }
+        }
+    }
+
+    private static boolean isActive(AnnotationDocumentState aState)
+    {
+        return aState == IN_PROGRESS || aState == FINISHED;
+    }
+
+    private static class Entry
+    {
+        private final SourceDocument document;
+        // Only non-NEW states are recorded here
+        private final Map<String, AnnotationDocumentState> states = new HashMap<>();
+        // Generation at which the state of a user was last changed - only needed until the next
+        // reload
+        private final Map<String, Long> modified = new HashMap<>();
+        private long added = -1;
+        private int activeCount;
+
+        Entry(SourceDocument aDocument)
+        {
+            document = aDocument;
+        }
+
+        boolean isModifiedSince(String aUser, long aSnapshot)
+        {
+            Long generation = modified.get(aUser);
+            return generation != null && generation > aSnapshot;
+        }
+
+        boolean isAvailableFor(String aUser, int aRequiredAnnotatorCount)
+        {
+            // Documents which the user has already touched or which have been IGNOREd for the
+            // user are not eligible
+            return !states.containsKey(aUser) && activeCount < aRequiredAnnotatorCount;
+        }
+    }
+
+    private static class Claim
+    {
+        private final long documentId;
+        private final String user;
+
+        Claim(long aDocumentId, String aUser)
+        {
+            documentId = aDocumentId;
+            user = aUser;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Claim other = (Claim) o;
+            return documentId == other.documentId && user.equals(other.user);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(documentId, user);
+        }
+    }
+}
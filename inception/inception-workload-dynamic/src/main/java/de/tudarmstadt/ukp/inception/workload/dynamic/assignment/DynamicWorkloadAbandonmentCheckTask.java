@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.workload.dynamic.assignment;
+
+import static de.tudarmstadt.ukp.inception.workload.dynamic.DynamicWorkloadExtension.DYNAMIC_WORKLOAD_MANAGER_EXTENSION_ID;
+
+import java.util.Objects;
+
+import javax.persistence.NoResultException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.inception.scheduling.Task;
+import de.tudarmstadt.ukp.inception.workload.dynamic.DynamicWorkloadExtension;
+import de.tudarmstadt.ukp.inception.workload.model.WorkloadManagementService;
+
+/**
+ * Periodically triggered task which releases documents abandoned by their annotators and
+ * re-synchronizes the assignment queue of the project with the database.
+ */
+public class DynamicWorkloadAbandonmentCheckTask
+    extends Task
+{
+    private @Autowired ProjectService projectService;
+    private @Autowired WorkloadManagementService workloadManagementService;
+    private @Autowired DynamicWorkloadExtension dynamicWorkloadExtension;
+
+    public DynamicWorkloadAbandonmentCheckTask(Project aProject, String aTrigger)
+    {
+        super(aProject, aTrigger);
+    }
+
+    @Override
+    public void execute()
+    {
+        Project project;
+        try {
+            project = projectService.getProject(getProject().getId());
+        }
+        catch (NoResultException e) {
+            // The project has been deleted in the meantime
+            return;
+        }
+
+        if (!DYNAMIC_WORKLOAD_MANAGER_EXTENSION_ID.equals(workloadManagementService
+                .loadOrCreateWorkloadManagerConfiguration(project).getType())) {
+            return;
+        }
+
+        dynamicWorkloadExtension.checkAbandonedDocuments(project);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DynamicWorkloadAbandonmentCheckTask task = (DynamicWorkloadAbandonmentCheckTask) o;
+        return getProject().equals(task.getProject());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(getProject());
+    }
+}
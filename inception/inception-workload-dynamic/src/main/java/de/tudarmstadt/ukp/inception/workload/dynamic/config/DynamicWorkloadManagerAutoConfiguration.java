@@ -17,9 +17,11 @@
  */
 package de.tudarmstadt.ukp.inception.workload.dynamic.config;
 
+import java.time.Duration;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -50,10 +52,13 @@ public class DynamicWorkloadManagerAutoConfiguration
     public DynamicWorkloadExtension dynamicWorkloadExtension(DocumentService documentService,
             WorkloadManagementService aWorkloadManagementService,
             WorkflowExtensionPoint aWorkflowExtensionPoint, ProjectService aProjectService,
-            UserDao aUserRepository, SessionRegistry aSessionRegistry)
+            UserDao aUserRepository, SessionRegistry aSessionRegistry,
+            SchedulingService aSchedulingService,
+            @Value("${workload.dynamic.abandonment-check-interval:1m}") Duration aAbandonmentCheckInterval)
     {
         return new DynamicWorkloadExtensionImpl(aWorkloadManagementService, aWorkflowExtensionPoint,
-                documentService, aProjectService, aUserRepository, aSessionRegistry);
+                documentService, aProjectService, aUserRepository, aSessionRegistry,
+                aSchedulingService, aAbandonmentCheckInterval);
     }
 
     @Bean
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.workload.dynamic.assignment;
+
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.FINISHED;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+
+/**
+ * Simulates many annotators concurrently requesting, annotating and finishing documents from a
+ * single {@link AssignmentQueue}. Checks that no document is assigned to more annotators than
+ * required and no annotator gets a document twice.
+ */
+@Tag("slow")
+public class AssignmentQueueBenchmarkTest
+{
+    private static final int ANNOTATORS = 200;
+    private static final int DOCUMENTS = 5_000;
+    private static final int REQUIRED_ANNOTATORS = 3;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Test
+    public void benchmarkConcurrentAnnotators() throws Exception
+    {
+        Project project = new Project("benchmark");
+        project.setId(1L);
+
+        List<SourceDocument> documents = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            SourceDocument doc = new SourceDocument(String.format("doc-%05d.txt", i), project,
+                    "text");
+            doc.setId((long) i);
+            documents.add(doc);
+        }
+
+        AssignmentQueue queue = new AssignmentQueue(project);
+        queue.reload(queue.startReload(), documents, Collections.emptyList());
+
+        Map<Long, Set<String>> assignments = new ConcurrentHashMap<>();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch startSignal = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(ANNOTATORS);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int a = 0; a < ANNOTATORS; a++) {
+            String user = "anno" + a;
+            Random rnd = new Random(a);
+            results.add(executor.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                startSignal.await();
+                while (true) {
+                    long start = System.nanoTime();
+                    Optional<SourceDocument> doc = queue.claim(user, REQUIRED_ANNOTATORS,
+                            docs -> {
+                                // Randomized workflow
+                                List<SourceDocument> shuffled = new ArrayList<>(docs);
+                                Collections.shuffle(shuffled, rnd);
+                                return shuffled;
+                            });
+                    latencies.add(System.nanoTime() - start);
+
+                    if (doc.isEmpty()) {
+                        break;
+                    }
+
+                    assertThat(assignments.computeIfAbsent(doc.get().getId(),
+                            id -> ConcurrentHashMap.newKeySet()).add(user))
+                                    .as("%s got %s twice", user, doc.get().getName()) //
+                                    .isTrue();
+                    maxActive.accumulateAndGet(queue.getActiveAnnotatorCount(doc.get()),
+                            Math::max);
+
+                    // Persisting the claim, annotating and finishing the document
+                    queue.confirm(doc.get(), user);
+                    Thread.yield();
+                    queue.update(doc.get(), user, FINISHED);
+                }
+                return latencies.stream().mapToLong(Long::longValue).toArray();
+            }));
+        }
+
+        long start = System.nanoTime();
+        startSignal.countDown();
+        List<Long> latencies = new ArrayList<>();
+        for (Future<long[]> result : results) {
+            for (long latency : result.get()) {
+                latencies.add(latency);
+            }
+        }
+        long duration = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, MINUTES);
+
+        Collections.sort(latencies);
+        log.info("{} annotators, {} documents x {}: {} claims in {} ms ({} claims/s)", ANNOTATORS,
+                DOCUMENTS, REQUIRED_ANNOTATORS, latencies.size(), duration / 1_000_000,
+                latencies.size() * 1_000_000_000L / duration);
+        log.info("Claim latency: p50 {} us  p99 {} us  max {} us",
+                percentile(latencies, 0.5) / 1_000, percentile(latencies, 0.99) / 1_000,
+                latencies.get(latencies.size() - 1) / 1_000);
+
+        assertThat(maxActive.get()).isLessThanOrEqualTo(REQUIRED_ANNOTATORS);
+        assertThat(assignments).hasSize(DOCUMENTS);
+        assertThat(assignments.values()).allSatisfy(
+                users -> assertThat(users).hasSize(REQUIRED_ANNOTATORS));
+    }
+
+    private static long percentile(List<Long> aSortedValues, double aPercentile)
+    {
+        return aSortedValues.get((int) Math.min(aSortedValues.size() - 1,
+                Math.round(aPercentile * aSortedValues.size())));
+    }
+}
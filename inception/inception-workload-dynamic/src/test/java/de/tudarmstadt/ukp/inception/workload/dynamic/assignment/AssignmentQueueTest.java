@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.workload.dynamic.assignment;
+
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.FINISHED;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.IGNORE;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.IN_PROGRESS;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.NEW;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.function.UnaryOperator.identity;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+
+public class AssignmentQueueTest
+{
+    private Project project;
+    private SourceDocument doc1;
+    private SourceDocument doc2;
+    private AssignmentQueue sut;
+
+    @BeforeEach
+    public void setup()
+    {
+        project = new Project("test");
+        project.setId(1L);
+        doc1 = document(1, "1.txt");
+        doc2 = document(2, "2.txt");
+
+        sut = new AssignmentQueue(project);
+        sut.reload(sut.startReload(), asList(doc1, doc2), emptyList());
+    }
+
+    @Test
+    public void thatDocumentsAreClaimedInRankedOrder()
+    {
+        assertThat(sut.claim("anno1", 1, identity())).contains(doc1);
+        assertThat(sut.claim("anno2", 1, identity())).contains(doc2);
+        assertThat(sut.claim("anno3", 1, identity())).isEmpty();
+    }
+
+    @Test
+    public void thatRankerDeterminesClaimedDocument()
+    {
+        assertThat(sut.claim("anno1", 1, docs -> {
+            List<SourceDocument> reversed = new ArrayList<>(docs);
+            reversed.sort((a, b) -> b.getName().compareTo(a.getName()));
+            return reversed;
+        })).contains(doc2);
+    }
+
+    @Test
+    public void thatUserDoesNotGetSameDocumentTwice()
+    {
+        assertThat(sut.claim("anno1", 2, identity())).contains(doc1);
+        sut.update(doc1, "anno1", FINISHED);
+
+        assertThat(sut.claim("anno1", 2, identity())).contains(doc2);
+        assertThat(sut.findInProgress("anno1")).contains(doc2);
+    }
+
+    @Test
+    public void thatIgnoredDocumentsAreNotClaimed()
+    {
+        sut.update(doc1, "anno1", IGNORE);
+
+        assertThat(sut.claim("anno1", 1, identity())).contains(doc2);
+    }
+
+    @Test
+    public void thatAbandonedDocumentsBecomeAvailableAgain()
+    {
+        sut.claim("anno1", 1, identity());
+        sut.confirm(doc1, "anno1");
+        sut.update(doc2, "anno2", IN_PROGRESS);
+        assertThat(sut.claim("anno3", 1, identity())).isEmpty();
+
+        sut.update(doc1, "anno1", NEW);
+
+        assertThat(sut.findInProgress("anno1")).isEmpty();
+        assertThat(sut.claim("anno3", 1, identity())).contains(doc1);
+    }
+
+    @Test
+    public void thatReleasedClaimFreesSlot()
+    {
+        sut.claim("anno1", 1, identity());
+        sut.release(doc1, "anno1");
+
+        assertThat(sut.getActiveAnnotatorCount(doc1)).isZero();
+        assertThat(sut.claim("anno2", 1, identity())).contains(doc1);
+    }
+
+    @Test
+    public void thatPendingClaimSurvivesReload()
+    {
+        sut.claim("anno1", 1, identity());
+
+        // Reload from a database state that does not yet contain the claim
+        sut.reload(sut.startReload(), asList(doc1, doc2), emptyList());
+
+        assertThat(sut.findInProgress("anno1")).contains(doc1);
+        assertThat(sut.getActiveAnnotatorCount(doc1)).isEqualTo(1);
+
+        // Once confirmed, the database is authoritative again
+        sut.confirm(doc1, "anno1");
+        sut.reload(sut.startReload(), asList(doc1, doc2), emptyList());
+
+        assertThat(sut.findInProgress("anno1")).isEmpty();
+    }
+
+    @Test
+    public void thatChangesAfterReloadStartAreNotLost()
+    {
+        sut.claim("anno1", 1, identity());
+        sut.confirm(doc1, "anno1");
+        long snapshot = sut.startReload();
+
+        // Changes made while the database is read
+        sut.update(doc1, "anno1", FINISHED);
+        SourceDocument doc3 = document(3, "3.txt");
+        sut.addDocument(doc3);
+        sut.removeDocument(doc2);
+
+        // The database state read does not contain these changes yet
+        sut.reload(snapshot, asList(doc1, doc2),
+                asList(annotationDocument(doc1, "anno1", IN_PROGRESS)));
+
+        assertThat(sut.findInProgress("anno1")).isEmpty();
+        assertThat(sut.getActiveAnnotatorCount(doc1)).isEqualTo(1);
+        assertThat(sut.size()).isEqualTo(2);
+        assertThat(sut.claim("anno2", 1, identity())).contains(doc3);
+    }
+
+    @Test
+    public void thatTouchedChangesSurviveReload()
+    {
+        sut.update(doc1, "anno1", FINISHED);
+        long snapshot = sut.startReload();
+
+        // The transaction making the change commits after the reload has started
+        sut.touch(doc1, "anno1");
+        sut.reload(snapshot, asList(doc1, doc2), emptyList());
+
+        assertThat(sut.getActiveAnnotatorCount(doc1)).isEqualTo(1);
+    }
+
+    @Test
+    public void thatOutdatedReloadIsIgnored()
+    {
+        long oldSnapshot = sut.startReload();
+        sut.update(doc1, "anno1", FINISHED);
+        sut.reload(sut.startReload(), asList(doc1, doc2),
+                asList(annotationDocument(doc1, "anno1", FINISHED)));
+
+        sut.reload(oldSnapshot, asList(doc1, doc2), emptyList());
+
+        assertThat(sut.getActiveAnnotatorCount(doc1)).isEqualTo(1);
+    }
+
+    @Test
+    public void thatReloadCountsActiveAnnotators()
+    {
+        sut.reload(sut.startReload(), asList(doc1, doc2), asList( //
+                annotationDocument(doc1, "anno1", FINISHED), //
+                annotationDocument(doc1, "anno2", IN_PROGRESS), //
+                annotationDocument(doc2, "anno1", IGNORE)));
+
+        assertThat(sut.getActiveAnnotatorCount(doc1)).isEqualTo(2);
+        assertThat(sut.getActiveAnnotatorCount(doc2)).isZero();
+        assertThat(sut.findInProgress("anno2")).contains(doc1);
+        assertThat(sut.claim("anno1", 2, identity())).isEmpty();
+        assertThat(sut.claim("anno3", 2, identity())).contains(doc2);
+    }
+
+    @Test
+    public void thatRemovedDocumentsAreNotClaimed()
+    {
+        sut.update(doc1, "anno1", IN_PROGRESS);
+        sut.removeDocument(doc1);
+
+        assertThat(sut.findInProgress("anno1")).isEmpty();
+        assertThat(sut.claim("anno1", 1, identity())).contains(doc2);
+        assertThat(sut.size()).isEqualTo(1);
+    }
+
+    private SourceDocument document(long aId, String aName)
+    {
+        SourceDocument doc = new SourceDocument(aName, project, "text");
+        doc.setId(aId);
+        return doc;
+    }
+
+    private AnnotationDocument annotationDocument(SourceDocument aDocument, String aUser,
+            AnnotationDocumentState aState)
+    {
+        AnnotationDocument adoc = new AnnotationDocument(aUser, aDocument);
+        adoc.setState(aState);
+        return adoc;
+    }
+}
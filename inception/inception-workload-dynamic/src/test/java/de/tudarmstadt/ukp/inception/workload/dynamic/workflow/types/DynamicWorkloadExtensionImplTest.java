@@ -200,6 +200,9 @@ public class DynamicWorkloadExtensionImplTest
 
         sleep(traits.getAbandonationTimeout().multipliedBy(2).toMillis());
 
+        // Abandoned documents are released by a periodic background check
+        dynamicWorkloadExtension.checkAbandonedDocuments(project);
+
         Optional<SourceDocument> nextDoc = dynamicWorkloadExtension.nextDocumentToAnnotate(project,
                 annotator);
 
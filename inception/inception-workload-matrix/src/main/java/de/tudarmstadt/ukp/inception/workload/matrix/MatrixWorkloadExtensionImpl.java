@@ -127,9 +127,8 @@ public class MatrixWorkloadExtensionImpl
     {
         int annotatorCount = projectService.listProjectUsersWithPermissions(aProject).size();
 
-        for (SourceDocument doc : documentService.listSourceDocuments(aProject)) {
-            updateDocumentState(doc, annotatorCount);
-        }
+        workloadManagementService.bulkRecalculateDocumentStates(aProject,
+                stats -> calculateDocumentState(stats, annotatorCount));
 
         // Refresh the project stats and recalculate them
         Project project = projectService.getProject(aProject.getId());
@@ -165,20 +164,27 @@ public class MatrixWorkloadExtensionImpl
     {
         Map<AnnotationDocumentState, Long> stats = documentService
                 .getAnnotationDocumentStats(aDocument);
-        long ignoreCount = stats.get(AnnotationDocumentState.IGNORE);
-        long finishedCount = stats.get(AnnotationDocumentState.FINISHED);
-        long newCount = stats.get(AnnotationDocumentState.NEW);
+        documentService.setSourceDocumentState(aDocument,
+                calculateDocumentState(stats, aAnnotatorCount));
+    }
+
+    private static SourceDocumentState calculateDocumentState(
+            Map<AnnotationDocumentState, Long> aStats, int aAnnotatorCount)
+    {
+        long ignoreCount = aStats.get(AnnotationDocumentState.IGNORE);
+        long finishedCount = aStats.get(AnnotationDocumentState.FINISHED);
+        long newCount = aStats.get(AnnotationDocumentState.NEW);
 
         // If all documents are ignored or finished, we set the source document to finished
         if ((finishedCount + ignoreCount) == aAnnotatorCount) {
-            documentService.setSourceDocumentState(aDocument, ANNOTATION_FINISHED);
+            return ANNOTATION_FINISHED;
         }
         // ... or we set it to new if there is at least one new document and the others are ignored
         else if ((newCount + ignoreCount) == aAnnotatorCount) {
-            documentService.setSourceDocumentState(aDocument, SourceDocumentState.NEW);
+            return SourceDocumentState.NEW;
         }
         else {
-            documentService.setSourceDocumentState(aDocument, ANNOTATION_IN_PROGRESS);
+            return ANNOTATION_IN_PROGRESS;
         }
     }
 }
@@ -26,6 +26,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
 
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
 import de.tudarmstadt.ukp.inception.workload.extension.WorkloadManagerExtension;
 import de.tudarmstadt.ukp.inception.workload.extension.WorkloadManagerExtensionPoint;
@@ -47,10 +48,10 @@ public class WorkloadManagementAutoConfiguration<T>
     @Bean
     public WorkloadManagementService workloadManagementService(EntityManager aEntityManager,
             WorkloadManagerExtensionPoint aWorkloadManagerExtensionPoint,
-            SchedulingService aSchedulingService)
+            SchedulingService aSchedulingService, DocumentService aDocumentService)
     {
         return new WorkloadManagementServiceImpl(aEntityManager, aWorkloadManagerExtensionPoint,
-                aSchedulingService);
+                aSchedulingService, aDocumentService);
     }
 
     @Bean
@@ -18,11 +18,14 @@
 package de.tudarmstadt.ukp.inception.workload.model;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState;
 import de.tudarmstadt.ukp.inception.workload.extension.WorkloadManagerExtension;
 
 /**
@@ -41,4 +44,18 @@ public interface WorkloadManagementService
             SourceDocument aSourceDocument, AnnotationDocumentState aState);
 
     Long getNumberOfUsersWorkingOnADocument(SourceDocument aDocument);
+
+    /**
+     * Recalculates the states of all source documents in the given project from the states of
+     * their annotation documents. The annotation document states are counted for all documents
+     * using a single query and the changed source document states are written in bulk.
+     * 
+     * @param aProject
+     *            the project.
+     * @param aStateFunction
+     *            derives the source document state from the annotation document state counts of
+     *            the document.
+     */
+    void bulkRecalculateDocumentStates(Project aProject,
+            Function<Map<AnnotationDocumentState, Long>, SourceDocumentState> aStateFunction);
 }
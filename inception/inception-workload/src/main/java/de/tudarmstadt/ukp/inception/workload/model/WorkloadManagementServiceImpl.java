@@ -22,7 +22,11 @@ import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.IN
 import static java.util.Arrays.asList;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Function;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -30,10 +34,12 @@ import javax.persistence.NoResultException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocumentState;
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
 import de.tudarmstadt.ukp.inception.workload.config.WorkloadManagementAutoConfiguration;
 import de.tudarmstadt.ukp.inception.workload.event.RecalculateProjectStateTask;
@@ -56,15 +62,17 @@ public class WorkloadManagementServiceImpl
     private final EntityManager entityManager;
     private final WorkloadManagerExtensionPoint workloadManagerExtensionPoint;
     private final SchedulingService schedulingService;
+    private final DocumentService documentService;
 
     @Autowired
     public WorkloadManagementServiceImpl(EntityManager aEntityManager,
             WorkloadManagerExtensionPoint aWorkloadManagerExtensionPoint,
-            SchedulingService aSchedulingService)
+            SchedulingService aSchedulingService, DocumentService aDocumentService)
     {
         entityManager = aEntityManager;
         workloadManagerExtensionPoint = aWorkloadManagerExtensionPoint;
         schedulingService = aSchedulingService;
+        documentService = aDocumentService;
     }
 
     /**
@@ -168,4 +176,18 @@ public class WorkloadManagementServiceImpl
                 .setParameter("states", asList(IN_PROGRESS, FINISHED)) //
                 .getSingleResult();
     }
+
+    @Override
+    @Transactional
+    public void bulkRecalculateDocumentStates(Project aProject,
+            Function<Map<AnnotationDocumentState, Long>, SourceDocumentState> aStateFunction)
+    {
+        Map<SourceDocument, SourceDocumentState> states = new LinkedHashMap<>();
+        for (Entry<SourceDocument, Map<AnnotationDocumentState, Long>> e : documentService
+                .getAnnotationDocumentStats(aProject).entrySet()) {
+            states.put(e.getKey(), aStateFunction.apply(e.getValue()));
+        }
+
+        documentService.bulkSetSourceDocumentState(states);
+    }
 }